@@ -43,12 +43,27 @@ public final class RodaConstants {
   public static final String CORE_SOLR_STEMMING_LANGUAGE = "core.solr.stemming.language";
   public static final String CORE_SOLR_AUTH_USERNAME = "core.solr.auth.username";
   public static final String CORE_SOLR_AUTH_PASSWORD = "core.solr.auth.password";
+  public static final String CORE_INDEX_PERMISSION_FILTER_CACHE_CLAUSES = "core.index.permission_filter.cache_clauses";
+  public static final String CORE_INDEX_PERMISSION_FILTER_MAX_CACHED_GROUPS = "core.index.permission_filter.max_cached_groups";
+  public static final String CORE_INDEX_PERMISSION_FILTER_POST_FILTER_PARSER = "core.index.permission_filter.post_filter_parser";
+
+  public static final String CORE_VALIDATION_THREADS = "core.validation.threads";
+  public static final String CORE_VALIDATION_CACHE_ENABLED = "core.validation.cache.enabled";
+
+  public static final String CORE_DISPOSAL_BIN_COPY_MODE = "core.disposal_bin.copy_mode";
+  public static final String CORE_DISPOSAL_BIN_COPY_THREADS = "core.disposal_bin.copy_threads";
+  public static final String CORE_DISPOSAL_BIN_VERIFY_CHECKSUMS = "core.disposal_bin.verify_checksums";
 
   public static final String CORE_EVENTS_ENABLED = "core.events.enabled";
   public static final String CORE_EVENTS_NOTIFIER_AND_HANDLER_ARE_THE_SAME = "core.events.notifier_and_handler_are_the_same";
   public static final String CORE_EVENTS_NOTIFIER_CLASS = "core.events.notifier_class";
   public static final String CORE_EVENTS_HANDLER_CLASS = "core.events.handler_class";
 
+  public static final String CORE_STARTUP_PARALLEL_ENABLED = "core.startup.parallel.enabled";
+  public static final String CORE_STARTUP_PARALLEL_THREADS = "core.startup.parallel.threads";
+  public static final int DEFAULT_STARTUP_PARALLEL_THREADS = 4;
+  public static final String CORE_STARTUP_BACKGROUND_ENABLED = "core.startup.background.enabled";
+
   public static final String CORE_ACTION_LOGS_PRIMARY_USER = "core.action_logs.primary.user";
   public static final String CORE_ACTION_LOGS_PRIMARY_PASS = "core.action_logs.primary.pass";
   public static final String CORE_ACTION_LOGS_PRIMARY_URL = "core.action_logs.primary.url";
@@ -192,6 +207,7 @@ public final class RodaConstants {
   public static final String RODA_OBJECT_RISK = "risk";
   public static final String RODA_OBJECT_INCIDENCE = "incidence";
   public static final String RODA_OBJECT_TRANSFERRED_RESOURCE = "transferred_resource";
+  public static final String RODA_OBJECT_TRANSFERRED_RESOURCE_UPLOAD = "transferred_resource_upload";
   public static final String RODA_OBJECT_USER = "user";
   public static final String RODA_OBJECT_GROUP = "group";
   public static final String RODA_OBJECT_DESCRIPTIVE_METADATA = "descriptive_metadata";
@@ -289,6 +305,7 @@ public final class RodaConstants {
   public static final String CORE_INGEST_FOLDER = "ingest";
   public static final String CORE_LOG_FOLDER = "log";
   public static final String CORE_SCHEMAS_FOLDER = "schemas";
+  public static final String CORE_VALIDATION_CACHE_FOLDER = "validation-cache";
   public static final String CORE_LDAP_FOLDER = "ldap";
   public static final String CORE_THEME_FOLDER = "theme";
   public static final String CORE_MARKDOWN_FOLDER = "documentation";
@@ -296,6 +313,7 @@ public final class RodaConstants {
   public static final String CORE_RISK_FOLDER = "risk";
   public static final String CORE_AGENT_FOLDER = "agent";
   public static final String CORE_NOTIFICATION_FOLDER = "notification";
+  public static final String CORE_NOTIFICATION_OUTBOX_FOLDER = "notification-outbox";
   public static final String CORE_RISKINCIDENCE_FOLDER = "riskincidence";
   public static final String CORE_MAIL_TEMPLATE_FOLDER = "mail/templates";
   public static final String CORE_CERTIFICATES_FOLDER = "certificates";
@@ -405,6 +423,8 @@ public final class RodaConstants {
   public static final String API_PATH_PARAM_METADATA_ID = "metadata_id";
   public static final String API_PATH_PARAM_TRANSFERRED_RESOURCE_ID = "transferred_resource_id";
   public static final String API_PATH_PARAM_TRANSFERRED_RESOURCE_UUID = "transferred_resource_uuid";
+  public static final String API_PATH_PARAM_UPLOAD_ID = "upload_id";
+  public static final String API_PATH_PARAM_CHUNK_INDEX = "chunk_index";
   public static final String API_PATH_PARAM_SIP_ID = "sip_id";
   public static final String API_PATH_PARAM_NOTIFICATION_ID = "notification_id";
   public static final String API_PATH_PARAM_AGENT_ID = "agent_id";
@@ -457,6 +477,9 @@ public final class RodaConstants {
   public static final String API_QUERY_PARAM_DETAILS = "details";
   public static final String API_QUERY_PARAM_ONLY_DETAILS = "onlyDetails";
   public static final String API_QUERY_PARAM_COMMIT = "commit";
+  public static final String API_QUERY_PARAM_FILE_SIZE = "file_size";
+  public static final String API_QUERY_PARAM_CHUNK_SIZE = "chunk_size";
+  public static final String API_QUERY_PARAM_CHECKSUM = "checksum";
   public static final String API_PARAM_UPLOAD = "upl";
   public static final String API_PARAM_FILE = "file";
   public static final String API_FORM_PARAM_FIND_REQUEST = "findRequest";
@@ -1283,6 +1306,7 @@ public final class RodaConstants {
   public static final String PLUGIN_PARAMS_DISPOSAL_SCHEDULE_ID = "parameter.disposal_schedule_id";
   public static final String PLUGIN_PARAMS_DISPOSAL_SCHEDULE_OVERWRITE_ALL = "parameter.disposal_schedule_overwrite_all";
   public static final String PLUGIN_PARAMS_DISPOSAL_SCHEDULE_OVERWRITE_MANUAL = "parameter.disposal_schedule_overwrite_manual";
+  public static final String PLUGIN_PARAMS_DISPOSAL_RULES_DRY_RUN = "parameter.disposal_rules_dry_run";
 
   public static final String PLUGIN_PARAMS_DISPOSAL_HOLD_ID = "parameter.disposal_hold_id";
   public static final String PLUGIN_PARAMS_DISPOSAL_HOLD_LIFT_ALL = "parameter.clear_all";
@@ -1516,6 +1540,11 @@ public final class RodaConstants {
 
   public static final String NOTIFICATION_HTTP_ENDPOINT = "ingest.http_notification.endpoint";
   public static final String NOTIFICATION_HTTP_TIMEOUT = "ingest.http_notification.timeout";
+  public static final String NOTIFICATION_OUTBOX_THREADS = "core.notification.outbox.threads";
+  public static final String NOTIFICATION_OUTBOX_MAX_PER_ENDPOINT = "core.notification.outbox.max_per_endpoint";
+  public static final String NOTIFICATION_OUTBOX_MAX_ATTEMPTS = "core.notification.outbox.max_attempts";
+  public static final String NOTIFICATION_OUTBOX_RETRY_DELAY = "core.notification.outbox.retry_delay_seconds";
+  public static final String NOTIFICATION_OUTBOX_MAX_RETRY_DELAY = "core.notification.outbox.max_retry_delay_seconds";
 
   /* DIPs */
   public static final String DIP_ID = "id";
@@ -0,0 +1,198 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.data.v2.ip;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.roda.core.data.common.RodaConstants;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * A file being uploaded into the transfer area in chunks, which may be sent in
+ * any order, at the same time and again after a failure. The file is only
+ * created in the transfer area, at once, when the upload is completed.
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+@jakarta.xml.bind.annotation.XmlRootElement(name = RodaConstants.RODA_OBJECT_TRANSFERRED_RESOURCE_UPLOAD)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TransferredResourceUpload implements Serializable {
+  private static final long serialVersionUID = -2380962148862167311L;
+
+  private String id;
+  private String username;
+  private String parentUUID;
+  private String fileName;
+  private long fileSize;
+  private long chunkSize;
+  private Date createdOn;
+  private Date expiresOn;
+  private List<Chunk> chunks = new ArrayList<>();
+
+  public TransferredResourceUpload() {
+    super();
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public void setId(String id) {
+    this.id = id;
+  }
+
+  public String getUsername() {
+    return username;
+  }
+
+  public void setUsername(String username) {
+    this.username = username;
+  }
+
+  public String getParentUUID() {
+    return parentUUID;
+  }
+
+  public void setParentUUID(String parentUUID) {
+    this.parentUUID = parentUUID;
+  }
+
+  public String getFileName() {
+    return fileName;
+  }
+
+  public void setFileName(String fileName) {
+    this.fileName = fileName;
+  }
+
+  public long getFileSize() {
+    return fileSize;
+  }
+
+  public void setFileSize(long fileSize) {
+    this.fileSize = fileSize;
+  }
+
+  public long getChunkSize() {
+    return chunkSize;
+  }
+
+  public void setChunkSize(long chunkSize) {
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * @return the number of chunks of the file, the last one possibly smaller
+   *         than the others
+   */
+  public int getNumberOfChunks() {
+    return (int) Math.min(getNumberOfChunks(fileSize, chunkSize), Integer.MAX_VALUE);
+  }
+
+  /**
+   * @return the number of chunks of a file, which can be more than fit in an
+   *         int for a small chunk size
+   */
+  public static long getNumberOfChunks(long fileSize, long chunkSize) {
+    return chunkSize > 0 ? fileSize / chunkSize + (fileSize % chunkSize == 0 ? 0 : 1) : 0;
+  }
+
+  public void setNumberOfChunks(int numberOfChunks) {
+    // derived from the file and chunk sizes
+  }
+
+  public Date getCreatedOn() {
+    return createdOn;
+  }
+
+  public void setCreatedOn(Date createdOn) {
+    this.createdOn = createdOn;
+  }
+
+  /**
+   * @return when the upload is removed, unless more chunks are received before
+   */
+  public Date getExpiresOn() {
+    return expiresOn;
+  }
+
+  public void setExpiresOn(Date expiresOn) {
+    this.expiresOn = expiresOn;
+  }
+
+  /**
+   * @return the chunks already received, by index
+   */
+  public List<Chunk> getChunks() {
+    return chunks;
+  }
+
+  public void setChunks(List<Chunk> chunks) {
+    this.chunks = chunks;
+  }
+
+  @Override
+  public String toString() {
+    return "TransferredResourceUpload [id=" + id + ", username=" + username + ", parentUUID=" + parentUUID
+      + ", fileName=" + fileName + ", fileSize=" + fileSize + ", chunkSize=" + chunkSize + ", chunks=" + chunks.size()
+      + "]";
+  }
+
+  /**
+   * A chunk received by the server, with the checksum it computed.
+   */
+  public static class Chunk implements Serializable {
+    private static final long serialVersionUID = 6147431307614728923L;
+
+    private int index;
+    private long size;
+    private String checksum;
+
+    public Chunk() {
+      super();
+    }
+
+    public Chunk(int index, long size, String checksum) {
+      super();
+      this.index = index;
+      this.size = size;
+      this.checksum = checksum;
+    }
+
+    public int getIndex() {
+      return index;
+    }
+
+    public void setIndex(int index) {
+      this.index = index;
+    }
+
+    public long getSize() {
+      return size;
+    }
+
+    public void setSize(long size) {
+      this.size = size;
+    }
+
+    /**
+     * @return the SHA-256 of the chunk, in hexadecimal
+     */
+    public String getChecksum() {
+      return checksum;
+    }
+
+    public void setChecksum(String checksum) {
+      this.checksum = checksum;
+    }
+  }
+}
@@ -59,7 +59,7 @@ public class CommandUtility {
     int exitValue = 0;
     String output;
 
-    try {
+    try (ResourceLimits.Permit permit = ResourceLimits.acquire(ResourceLimits.Resource.PROCESS)) {
       StringBuilder builder = new StringBuilder();
       for (String arg : args) {
         builder.append(arg).append(" ");
@@ -75,17 +75,15 @@ public class CommandUtility {
       // Get process output
       InputStream is = process.getInputStream();
       CaptureOutputThread captureOutputThread = new CaptureOutputThread(is);
+      captureOutputThread.start();
 
-      synchronized (is) {
-        captureOutputThread.start();
-
-        // Wait until the CaptureOutputThread notifies that is finished
-        // reading the input stream.
-        LOGGER.debug("Waiting until CaptureOutputThread notifies");
-        is.wait();
-      }
+      // Wait until the CaptureOutputThread is finished reading the input
+      // stream (joining, unlike waiting on a monitor, does not pin a virtual
+      // thread to its carrier)
+      LOGGER.debug("Waiting until CaptureOutputThread finishes");
+      captureOutputThread.join();
 
-      LOGGER.debug("CaptureOutputThread notified. Getting output...");
+      LOGGER.debug("CaptureOutputThread finished. Getting output...");
       output = captureOutputThread.output;
 
       // Get process exit value
@@ -160,9 +158,5 @@ class CaptureOutputThread extends Thread {
     }
 
     output = outputBuffer.toString();
-
-    synchronized (is) {
-      is.notify();
-    }
   }
 }
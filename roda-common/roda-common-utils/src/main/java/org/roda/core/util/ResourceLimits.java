@@ -0,0 +1,113 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.util;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limits how many virtual threads use each kind of resource at the same time.
+ *
+ * <p>
+ * Plugins may run on a virtual thread per block of objects, i.e. on many more
+ * threads than there are platform threads, so the storage, the index and the
+ * external processes would otherwise get as many concurrent requests as there
+ * are blocks being processed. Platform threads, whose number is already
+ * bounded by their pools, are never limited, and neither are the resources
+ * without a configured limit. A thread already using a resource (e.g. a copy
+ * between two storages) does not wait for it again.
+ * </p>
+ *
+ * <pre>
+ * try (ResourceLimits.Permit permit = ResourceLimits.acquire(ResourceLimits.Resource.INDEX)) {
+ *   // one request to the index
+ * }
+ * </pre>
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+public final class ResourceLimits {
+  public enum Resource {
+    STORAGE, INDEX, PROCESS
+  }
+
+  /**
+   * The use of a resource, released by {@link #close()}.
+   */
+  @FunctionalInterface
+  public interface Permit extends AutoCloseable {
+    @Override
+    void close();
+  }
+
+  private static final Permit UNLIMITED = () -> {
+    // nothing to release
+  };
+
+  // replaced, never changed, so that acquiring does not need a lock
+  private static volatile Map<Resource, Semaphore> limits = new EnumMap<>(Resource.class);
+
+  // permits held by the current thread, by resource
+  private static final ThreadLocal<int[]> HELD = ThreadLocal
+    .withInitial(() -> new int[Resource.values().length]);
+
+  private ResourceLimits() {
+    // do nothing
+  }
+
+  /**
+   * @param permits
+   *          virtual threads using the resource at the same time, or zero or
+   *          less for no limit
+   */
+  public static synchronized void setLimit(Resource resource, int permits) {
+    Map<Resource, Semaphore> newLimits = new EnumMap<>(limits);
+    if (permits > 0) {
+      newLimits.put(resource, new Semaphore(permits, true));
+    } else {
+      newLimits.remove(resource);
+    }
+    limits = newLimits;
+  }
+
+  public static synchronized void clearLimits() {
+    limits = new EnumMap<>(Resource.class);
+  }
+
+  /**
+   * Waits, if the current thread is virtual and the resource is limited, until
+   * the resource may be used.
+   */
+  public static Permit acquire(Resource resource) {
+    if (!Thread.currentThread().isVirtual()) {
+      return UNLIMITED;
+    }
+
+    Semaphore semaphore = limits.get(resource);
+    if (semaphore == null) {
+      return UNLIMITED;
+    }
+
+    int[] held = HELD.get();
+    if (held[resource.ordinal()]++ == 0) {
+      try {
+        semaphore.acquireUninterruptibly();
+      } catch (RuntimeException | Error e) {
+        held[resource.ordinal()]--;
+        throw e;
+      }
+    }
+
+    return () -> {
+      if (--held[resource.ordinal()] == 0) {
+        semaphore.release();
+      }
+    };
+  }
+}
@@ -0,0 +1,52 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.model.ModelService;
+import org.roda.core.storage.StorageService;
+import org.roda.core.storage.fs.FSUtils;
+
+/**
+ * RODA instantiated in test mode, without index, with its home in a temporary
+ * directory.
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+public final class BenchmarkEnvironment implements AutoCloseable {
+  private final Path basePath;
+
+  public BenchmarkEnvironment(Class<?> benchmarkClass) throws IOException {
+    basePath = Files.createTempDirectory("_" + benchmarkClass.getSimpleName());
+    System.setProperty(RodaConstants.INSTALL_FOLDER_SYSTEM_PROPERTY, basePath.toString());
+    RodaCoreFactory.instantiateTest(false, false, false, false, false, false, false);
+  }
+
+  public Path getBasePath() {
+    return basePath;
+  }
+
+  public ModelService getModel() {
+    return RodaCoreFactory.getModelService();
+  }
+
+  public StorageService getStorage() {
+    return RodaCoreFactory.getStorageService();
+  }
+
+  @Override
+  public void close() {
+    RodaCoreFactory.shutdown();
+    FSUtils.deletePathQuietly(basePath);
+  }
+}
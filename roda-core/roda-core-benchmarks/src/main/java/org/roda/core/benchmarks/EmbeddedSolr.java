@@ -0,0 +1,65 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
+import org.apache.solr.core.CoreContainer;
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.index.schema.SolrBootstrapUtils;
+import org.roda.core.index.schema.SolrCollectionRegistry;
+import org.roda.core.index.utils.SolrUtils;
+import org.roda.core.storage.fs.FSUtils;
+
+/**
+ * Solr running in this JVM, with a core for each RODA collection configured
+ * like in production (same solrconfig.xml and bootstrapped schemas).
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+public final class EmbeddedSolr implements AutoCloseable {
+  private final Path solrHome;
+  private final EmbeddedSolrServer client;
+
+  public EmbeddedSolr() throws IOException, GenericException {
+    solrHome = Files.createTempDirectory("_solr");
+    Files.writeString(solrHome.resolve("solr.xml"), "<solr></solr>", StandardCharsets.UTF_8);
+
+    Path commonConf = solrHome.resolve(SolrUtils.COMMON).resolve(SolrUtils.CONF);
+    RodaCoreFactory.copyFilesFromClasspath(RodaConstants.CORE_CONFIG_FOLDER + "/" + RodaConstants.CORE_INDEX_FOLDER
+      + "/" + SolrUtils.COMMON + "/" + SolrUtils.CONF + "/", commonConf, true);
+
+    // each core has its own copy of the configuration, as the schemas differ
+    for (String collection : SolrCollectionRegistry.registryIndexNames()) {
+      Path core = solrHome.resolve(collection);
+      FileUtils.copyDirectory(commonConf.toFile(), core.resolve(SolrUtils.CONF).toFile());
+      Files.writeString(core.resolve("core.properties"), "name=" + collection + "\n", StandardCharsets.UTF_8);
+    }
+
+    client = new EmbeddedSolrServer(CoreContainer.createAndLoad(solrHome), null);
+    SolrBootstrapUtils.bootstrapSchemas(client);
+  }
+
+  public SolrClient getClient() {
+    return client;
+  }
+
+  @Override
+  public void close() throws IOException {
+    client.close();
+    FSUtils.deletePathQuietly(solrHome);
+  }
+}
@@ -0,0 +1,136 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.SolrInputDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.v2.index.filter.Filter;
+import org.roda.core.data.v2.ip.AIP;
+import org.roda.core.data.v2.ip.AIPState;
+import org.roda.core.data.v2.ip.IndexedAIP;
+import org.roda.core.data.v2.ip.Permissions;
+import org.roda.core.index.schema.SolrCollectionRegistry;
+import org.roda.core.index.utils.IndexResultIterator;
+import org.roda.core.index.utils.SolrUtils;
+import org.roda.core.model.ModelService;
+import org.roda.core.model.utils.ModelUtils;
+import org.roda.core.storage.Binary;
+import org.roda.core.storage.StringContentPayload;
+
+/**
+ * Index: building Solr documents and iterating over search results, against an
+ * embedded Solr.
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class IndexBenchmark {
+  private static final String DESCRIPTIVE_METADATA_ID = "dc.xml";
+  private static final String DESCRIPTIVE_METADATA = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+    + "<simpledc xmlns:dc=\"http://purl.org/dc/elements/1.1/\">\n" + "  <title>Title</title>\n"
+    + "  <description>Description of the benchmark AIP</description>\n" + "  <creator>Creator</creator>\n"
+    + "  <publisher>Publisher</publisher>\n" + "  <identifier>Id</identifier>\n" + "  <date>2016-01-01</date>\n"
+    + "</simpledc>\n";
+
+  /** Number of AIPs in the index. */
+  @Param({"10000"})
+  private int documents;
+
+  private BenchmarkEnvironment environment;
+  private EmbeddedSolr solr;
+  private AIP aip;
+  private Binary descriptiveMetadata;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException, RODAException, SolrServerException {
+    environment = new BenchmarkEnvironment(IndexBenchmark.class);
+    ModelService model = environment.getModel();
+
+    String aipId = model.createAIP(AIPState.ACTIVE, null, "benchmark", new Permissions(), false, RodaConstants.ADMIN)
+      .getId();
+    model.createDescriptiveMetadata(aipId, DESCRIPTIVE_METADATA_ID, new StringContentPayload(DESCRIPTIVE_METADATA),
+      "dc", "SimpleDC20021212", RodaConstants.ADMIN, false);
+    aip = model.retrieveAIP(aipId);
+    descriptiveMetadata = environment.getStorage()
+      .getBinary(ModelUtils.getDescriptiveMetadataStoragePath(aipId, DESCRIPTIVE_METADATA_ID));
+
+    solr = new EmbeddedSolr();
+    String collection = SolrCollectionRegistry.getIndexName(IndexedAIP.class);
+    SolrInputDocument document = SolrCollectionRegistry.toSolrDocument(IndexedAIP.class, aip);
+    List<SolrInputDocument> batch = new ArrayList<>();
+    for (int i = 0; i < documents; i++) {
+      SolrInputDocument copy = document.deepCopy();
+      copy.setField(RodaConstants.INDEX_UUID, "aip-" + i);
+      copy.setField(RodaConstants.INDEX_ID, "aip-" + i);
+      batch.add(copy);
+      if (batch.size() == 1000) {
+        solr.getClient().add(collection, batch);
+        batch.clear();
+      }
+    }
+    if (!batch.isEmpty()) {
+      solr.getClient().add(collection, batch);
+    }
+    solr.getClient().commit(collection);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    solr.close();
+    environment.close();
+  }
+
+  @Benchmark
+  public SolrInputDocument toSolrDocument() throws RODAException {
+    return SolrCollectionRegistry.toSolrDocument(IndexedAIP.class, aip);
+  }
+
+  @Benchmark
+  public SolrInputDocument getDescriptiveMetadataFields() throws RODAException {
+    return SolrUtils.getDescriptiveMetadataFields(descriptiveMetadata, "dc", "SimpleDC20021212");
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public int iterateIndexResults() {
+    IndexResultIterator<IndexedAIP> iterator = new IndexResultIterator<>(solr.getClient(), IndexedAIP.class,
+      Filter.ALL, null, false, Collections.singletonList(RodaConstants.INDEX_UUID));
+    int count = 0;
+    while (iterator.hasNext()) {
+      iterator.next();
+      count++;
+    }
+    return count;
+  }
+}
@@ -0,0 +1,90 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.benchmarks;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.v2.ip.AIP;
+import org.roda.core.data.v2.ip.AIPState;
+import org.roda.core.data.v2.ip.File;
+import org.roda.core.data.v2.ip.Permissions;
+import org.roda.core.model.ModelService;
+import org.roda.core.storage.StringContentPayload;
+
+/**
+ * Model service: retrieving AIPs and creating files.
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class ModelBenchmark {
+  private static final String REPRESENTATION_ID = "rep1";
+
+  /** Number of representations of the retrieved AIP. */
+  @Param({"1", "20"})
+  private int representations;
+
+  private final AtomicLong counter = new AtomicLong();
+  private BenchmarkEnvironment environment;
+  private ModelService model;
+  private String aipId;
+  private String content;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException, RODAException {
+    environment = new BenchmarkEnvironment(ModelBenchmark.class);
+    model = environment.getModel();
+
+    AIP aip = model.createAIP(AIPState.ACTIVE, null, "benchmark", new Permissions(), false, RodaConstants.ADMIN);
+    aipId = aip.getId();
+    model.createRepresentation(aipId, REPRESENTATION_ID, true, "MIXED", false, RodaConstants.ADMIN);
+    for (int i = 1; i < representations; i++) {
+      model.createRepresentation(aipId, "rep" + (i + 1), false, "MIXED", false, RodaConstants.ADMIN);
+    }
+    content = "x".repeat(4096);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    environment.close();
+  }
+
+  @Benchmark
+  public AIP retrieveAIP() throws RODAException {
+    return model.retrieveAIP(aipId);
+  }
+
+  @Benchmark
+  public File createFile() throws RODAException {
+    return model.createFile(aipId, REPRESENTATION_ID, Collections.emptyList(), "file" + counter.incrementAndGet(),
+      new StringContentPayload(content), RodaConstants.ADMIN, false);
+  }
+}
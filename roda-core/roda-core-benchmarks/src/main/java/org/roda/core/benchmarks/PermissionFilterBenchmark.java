@@ -0,0 +1,180 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.GenericSolrRequest;
+import org.apache.solr.client.solrj.response.SimpleSolrResponse;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.v2.ip.AIPState;
+import org.roda.core.data.v2.ip.IndexedAIP;
+import org.roda.core.data.v2.ip.Permissions.PermissionType;
+import org.roda.core.data.v2.user.User;
+import org.roda.core.index.schema.SolrCollectionRegistry;
+import org.roda.core.index.utils.SolrUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Concurrent searches of many users, each in several of many groups, comparing
+ * the permission filter queries of {@link SolrUtils#getFilterQueries} with the
+ * single combined filter query that was used before. The filter cache
+ * statistics are logged after each iteration.
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Threads(8)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+public class PermissionFilterBenchmark {
+  private static final Logger LOGGER = LoggerFactory.getLogger(PermissionFilterBenchmark.class);
+
+  private static final int GROUPS = 500;
+  private static final int USERS = 1000;
+  private static final int MAX_GROUPS_PER_USER = 60;
+  private static final int BATCH_SIZE = 10_000;
+
+  private static final String USERS_KEY = RodaConstants.INDEX_PERMISSION_USERS_PREFIX + PermissionType.READ;
+  private static final String GROUPS_KEY = RodaConstants.INDEX_PERMISSION_GROUPS_PREFIX + PermissionType.READ;
+
+  /** Number of AIPs in the index. */
+  @Param({"1000000"})
+  private int documents;
+
+  /**
+   * combined: one filter query with permissions and state, as before; split:
+   * the filter queries of {@link SolrUtils#getFilterQueries}.
+   */
+  @Param({"combined", "split"})
+  private String mode;
+
+  private EmbeddedSolr solr;
+  private String collection;
+  private List<User> users;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException, RODAException, SolrServerException {
+    Random random = new Random(42);
+    users = new ArrayList<>();
+    for (int i = 0; i < USERS; i++) {
+      User user = new User("user" + i);
+      Set<String> groups = new HashSet<>();
+      int groupCount = 1 + random.nextInt(MAX_GROUPS_PER_USER);
+      while (groups.size() < groupCount) {
+        groups.add("group" + random.nextInt(GROUPS));
+      }
+      user.setGroups(groups);
+      users.add(user);
+    }
+
+    solr = new EmbeddedSolr();
+    collection = SolrCollectionRegistry.getIndexName(IndexedAIP.class);
+    List<SolrInputDocument> batch = new ArrayList<>();
+    for (int i = 0; i < documents; i++) {
+      SolrInputDocument document = new SolrInputDocument();
+      document.addField(RodaConstants.INDEX_UUID, "aip-" + i);
+      document.addField(RodaConstants.INDEX_STATE,
+        SolrUtils.formatEnum(random.nextInt(10) == 0 ? AIPState.INGEST_PROCESSING : AIPState.ACTIVE));
+      document.addField(USERS_KEY, "user" + random.nextInt(USERS));
+      for (int j = 1 + random.nextInt(3); j > 0; j--) {
+        document.addField(GROUPS_KEY, "group" + random.nextInt(GROUPS));
+      }
+      batch.add(document);
+      if (batch.size() == BATCH_SIZE) {
+        solr.getClient().add(collection, batch);
+        batch.clear();
+      }
+    }
+    if (!batch.isEmpty()) {
+      solr.getClient().add(collection, batch);
+    }
+    solr.getClient().commit(collection);
+  }
+
+  @TearDown(Level.Iteration)
+  public void logFilterCacheStatistics() throws IOException, SolrServerException {
+    ModifiableSolrParams params = new ModifiableSolrParams();
+    params.add("group", "core");
+    params.add("prefix", "CACHE.searcher.filterCache");
+    SimpleSolrResponse response = new GenericSolrRequest(SolrRequest.METHOD.GET, "/admin/metrics", params)
+      .process(solr.getClient());
+    LOGGER.info("filterCache ({}): {}", mode,
+      response.getResponse().findRecursive("metrics", "solr.core." + collection, "CACHE.searcher.filterCache"));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    solr.close();
+  }
+
+  @Benchmark
+  public long search() throws IOException, SolrServerException {
+    User user = users.get(ThreadLocalRandom.current().nextInt(users.size()));
+    SolrQuery query = new SolrQuery("*:*");
+    query.setRows(20);
+    query.setFields(RodaConstants.INDEX_UUID);
+    if ("combined".equals(mode)) {
+      query.addFilterQuery(combinedFilterQuery(user));
+    } else {
+      SolrUtils.getFilterQueries(user, true, IndexedAIP.class).forEach(query::addFilterQuery);
+    }
+    return solr.getClient().query(collection, query).getResults().getNumFound();
+  }
+
+  /**
+   * The filter query as it was built before permissions and state were split,
+   * with the groups in whatever order the user has them.
+   */
+  private static String combinedFilterQuery(User user) {
+    StringBuilder fq = new StringBuilder("((").append(USERS_KEY).append(": \"").append(user.getId()).append("\")");
+    StringBuilder groups = new StringBuilder();
+    for (String group : user.getGroups()) {
+      if (groups.length() > 0) {
+        groups.append(" OR ");
+      }
+      groups.append("(").append(GROUPS_KEY).append(": \"").append(group).append("\")");
+    }
+    if (groups.length() > 0) {
+      fq.append(" OR (").append(groups).append(")");
+    }
+    return fq.append(") AND (").append(RodaConstants.INDEX_STATE).append(": \"")
+      .append(SolrUtils.formatEnum(AIPState.ACTIVE)).append("\")").toString();
+  }
+}
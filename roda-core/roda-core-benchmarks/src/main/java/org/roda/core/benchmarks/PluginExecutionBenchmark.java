@@ -0,0 +1,152 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.benchmarks;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.pekko.actor.AbstractActor;
+import org.apache.pekko.actor.ActorRef;
+import org.apache.pekko.actor.ActorSystem;
+import org.apache.pekko.actor.Props;
+import org.apache.pekko.routing.RoundRobinPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.roda.core.storage.fs.FSUtils;
+import org.roda.core.util.ResourceLimits;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+import scala.concurrent.Await;
+import scala.concurrent.duration.Duration;
+
+/**
+ * Job workers executing an I/O-bound plugin, on the platform threads of the
+ * workers dispatcher (io-2-dispatcher) or on virtual threads
+ * (core.orchestrator.worker_threads = VIRTUAL), with 10, 100 and 1000 workers.
+ * Each block of objects waits 10 ms (e.g. for the index or an external tool)
+ * and reads a small file from the storage.
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class PluginExecutionBenchmark {
+  private static final int BLOCKS = 2000;
+  private static final long BLOCK_WAIT_MILLIS = 10;
+  private static final int MAX_STORAGE_OPERATIONS = 128;
+
+  // the same dispatchers as the job workers (see config/orchestrator/application.conf)
+  private static final String DISPATCHERS = String.join("\n", "io-2-dispatcher {", "  type = Dispatcher",
+    "  executor = \"thread-pool-executor\"", "  throughput = 1", "}", "virtual-io-dispatcher {",
+    "  type = Dispatcher",
+    "  executor = \"org.roda.core.plugins.orchestrate.pekko.VirtualThreadExecutorServiceConfigurator\"",
+    "  throughput = 1", "}", "pekko.loglevel = \"ERROR\"", "pekko.stdout-loglevel = \"OFF\"");
+
+  @Param({"10", "100", "1000"})
+  private int concurrency;
+
+  @Param({"PLATFORM", "VIRTUAL"})
+  private String threads;
+
+  private Path basePath;
+  private Path file;
+  private ActorSystem system;
+  private ActorRef workersRouter;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    basePath = Files.createTempDirectory("_" + PluginExecutionBenchmark.class.getSimpleName());
+    file = basePath.resolve("object");
+    byte[] content = new byte[4096];
+    new Random(concurrency).nextBytes(content);
+    Files.write(file, content);
+
+    boolean virtual = "VIRTUAL".equals(threads);
+    if (virtual) {
+      ResourceLimits.setLimit(ResourceLimits.Resource.STORAGE, MAX_STORAGE_OPERATIONS);
+    }
+
+    String dispatcher = virtual ? "virtual-io-dispatcher" : "io-2-dispatcher";
+    Config config = ConfigFactory
+      .parseString("pekko.actor.deployment.\"/WorkersRouter/*\".dispatcher = " + dispatcher + "\n" + DISPATCHERS);
+    system = ActorSystem.create("PluginExecutionBenchmark", config);
+    workersRouter = system.actorOf(new RoundRobinPool(concurrency).props(Props.create(WorkerActor.class, file)),
+      "WorkersRouter");
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws TimeoutException, InterruptedException {
+    Await.result(system.terminate(), Duration.create(1, TimeUnit.MINUTES));
+    ResourceLimits.clearLimits();
+    FSUtils.deletePathQuietly(basePath);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BLOCKS)
+  public void executeBlocks() throws InterruptedException {
+    CountDownLatch done = new CountDownLatch(BLOCKS);
+    for (int i = 0; i < BLOCKS; i++) {
+      workersRouter.tell(done, ActorRef.noSender());
+    }
+    done.await();
+  }
+
+  /**
+   * Executes one block of the synthetic plugin for each message, like the job
+   * workers, which execute the plugin in the thread of the actor.
+   */
+  public static class WorkerActor extends AbstractActor {
+    private final Path file;
+
+    public WorkerActor(Path file) {
+      this.file = file;
+    }
+
+    @Override
+    public Receive createReceive() {
+      return receiveBuilder().match(CountDownLatch.class, this::executeBlock).build();
+    }
+
+    private void executeBlock(CountDownLatch done) throws InterruptedException {
+      try {
+        Thread.sleep(BLOCK_WAIT_MILLIS);
+        try (ResourceLimits.Permit permit = ResourceLimits.acquire(ResourceLimits.Resource.STORAGE)) {
+          Files.readAllBytes(file);
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      } finally {
+        done.countDown();
+      }
+    }
+  }
+}
@@ -0,0 +1,106 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.roda.core.common.PremisV3Utils;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.utils.JsonUtils;
+import org.roda.core.data.v2.ip.AIP;
+import org.roda.core.data.v2.ip.AIPState;
+import org.roda.core.data.v2.ip.Permissions;
+import org.roda.core.model.ModelService;
+import org.roda.core.storage.ContentPayload;
+import org.roda.core.storage.InputStreamContentPayload;
+
+import gov.loc.premis.v3.Representation;
+
+/**
+ * JSON (AIP metadata) and PREMIS (XML) marshalling and unmarshalling.
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class SerializationBenchmark {
+  private BenchmarkEnvironment environment;
+  private AIP aip;
+  private String aipJson;
+  private Representation representation;
+  private byte[] representationXml;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException, RODAException {
+    environment = new BenchmarkEnvironment(SerializationBenchmark.class);
+    ModelService model = environment.getModel();
+
+    String aipId = model.createAIP(AIPState.ACTIVE, null, "benchmark", new Permissions(), false, RodaConstants.ADMIN)
+      .getId();
+    for (int i = 0; i < 10; i++) {
+      model.createRepresentation(aipId, "rep" + i, i == 0, "MIXED", false, RodaConstants.ADMIN);
+    }
+    aip = model.retrieveAIP(aipId);
+    aipJson = JsonUtils.getJsonFromObject(aip);
+
+    representation = PremisV3Utils.createBaseRepresentation(aipId, "rep0");
+    representationXml = toBytes(PremisV3Utils.representationToBinary(representation));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    environment.close();
+  }
+
+  private static byte[] toBytes(ContentPayload payload) throws IOException {
+    try (InputStream inputStream = payload.createInputStream()) {
+      return inputStream.readAllBytes();
+    }
+  }
+
+  @Benchmark
+  public String aipToJson() {
+    return JsonUtils.getJsonFromObject(aip);
+  }
+
+  @Benchmark
+  public AIP aipFromJson() throws RODAException {
+    return JsonUtils.getObjectFromJson(aipJson, AIP.class);
+  }
+
+  @Benchmark
+  public byte[] marshalPremisRepresentation() throws IOException {
+    return toBytes(PremisV3Utils.representationToBinary(representation));
+  }
+
+  @Benchmark
+  public Representation unmarshalPremisRepresentation() throws RODAException {
+    return PremisV3Utils.binaryToRepresentation(
+      new InputStreamContentPayload(() -> new ByteArrayInputStream(representationXml)), true);
+  }
+}
@@ -0,0 +1,106 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.storage.Binary;
+import org.roda.core.storage.DefaultStoragePath;
+import org.roda.core.storage.InputStreamContentPayload;
+import org.roda.core.storage.StoragePath;
+import org.roda.core.storage.fs.FSUtils;
+import org.roda.core.storage.fs.FileStorageService;
+
+/**
+ * File system storage: creating and reading binaries and computing digests.
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class StorageBenchmark {
+  private static final String CONTAINER = "benchmark";
+
+  @Param({"4096", "1048576"})
+  private int size;
+
+  private final AtomicLong counter = new AtomicLong();
+  private Path basePath;
+  private FileStorageService storage;
+  private byte[] content;
+  private StoragePath existingBinary;
+  private Path existingFile;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException, RODAException {
+    basePath = Files.createTempDirectory("_" + StorageBenchmark.class.getSimpleName());
+    storage = new FileStorageService(basePath.resolve("storage"));
+    storage.createContainer(DefaultStoragePath.parse(CONTAINER));
+
+    content = new byte[size];
+    new Random(size).nextBytes(content);
+    existingBinary = DefaultStoragePath.parse(CONTAINER, "existing");
+    storage.createBinary(existingBinary, payload(), false);
+    existingFile = basePath.resolve("existing");
+    Files.write(existingFile, content);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    FSUtils.deletePathQuietly(basePath);
+  }
+
+  private InputStreamContentPayload payload() {
+    return new InputStreamContentPayload(() -> new ByteArrayInputStream(content));
+  }
+
+  @Benchmark
+  public Binary createBinary() throws RODAException {
+    return storage.createBinary(DefaultStoragePath.parse(CONTAINER, "binary" + counter.incrementAndGet()), payload(),
+      false);
+  }
+
+  @Benchmark
+  public long getBinary() throws RODAException, IOException {
+    Binary binary = storage.getBinary(existingBinary);
+    try (InputStream inputStream = binary.getContent().createInputStream()) {
+      return inputStream.transferTo(OutputStream.nullOutputStream());
+    }
+  }
+
+  @Benchmark
+  public String computeContentDigest() throws RODAException {
+    return FSUtils.computeContentDigest(existingFile, "SHA-256");
+  }
+}
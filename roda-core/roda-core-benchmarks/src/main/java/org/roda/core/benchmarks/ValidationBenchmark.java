@@ -0,0 +1,189 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.Validator;
+
+import org.apache.commons.io.input.BOMInputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.common.RodaEntityResolver;
+import org.roda.core.common.validation.XMLValidationService;
+import org.roda.core.data.v2.validation.ValidationReport;
+import org.roda.core.storage.ContentPayload;
+import org.roda.core.storage.StringContentPayload;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+/**
+ * Validating many EAD and DC documents against their schemas: creating a
+ * reader and a validator per document (as before), reusing them, on several
+ * threads, and revalidating documents already found valid.
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class ValidationBenchmark {
+  private static final String[] DC = {"dc", "SimpleDC20021212"};
+  private static final String[] EAD = {"ead", "2002"};
+
+  /** Number of documents, half EAD and half DC. */
+  @Param({"100000"})
+  private int documents;
+
+  private BenchmarkEnvironment environment;
+  private List<ContentPayload> payloads;
+  private List<String[]> schemas;
+  private XMLValidationService sequential;
+  private XMLValidationService parallel;
+  private XMLValidationService cached;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException, InterruptedException, ExecutionException {
+    environment = new BenchmarkEnvironment(ValidationBenchmark.class);
+    payloads = new ArrayList<>();
+    schemas = new ArrayList<>();
+    for (int i = 0; i < documents; i++) {
+      if (i % 2 == 0) {
+        payloads.add(new StringContentPayload(dc(i)));
+        schemas.add(DC);
+      } else {
+        payloads.add(new StringContentPayload(ead(i)));
+        schemas.add(EAD);
+      }
+    }
+
+    int threads = Runtime.getRuntime().availableProcessors();
+    sequential = new XMLValidationService(1, null);
+    parallel = new XMLValidationService(threads, null);
+    cached = new XMLValidationService(threads, environment.getBasePath().resolve("validation-cache"));
+    // all documents are already known to be valid
+    checkAllValid(validateAll(cached));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    environment.close();
+  }
+
+  private static String dc(int i) {
+    return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" + "<simpledc xmlns:dc=\"http://purl.org/dc/elements/1.1/\">\n"
+      + "  <title>Title " + i + "</title>\n" + "  <description>Description of document " + i + "</description>\n"
+      + "  <creator>Creator</creator>\n" + "  <identifier>dc-" + i + "</identifier>\n"
+      + "  <date>2016-01-01</date>\n" + "</simpledc>\n";
+  }
+
+  private static String ead(int i) {
+    return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" + "<ead xmlns=\"urn:isbn:1-931666-22-9\">\n"
+      + "  <eadheader>\n" + "    <eadid>ead-" + i + "</eadid>\n"
+      + "    <filedesc><titlestmt><titleproper>Title " + i + "</titleproper></titlestmt></filedesc>\n"
+      + "  </eadheader>\n" + "  <archdesc level=\"fonds\">\n" + "    <did>\n" + "      <unitid>ead-" + i
+      + "</unitid>\n" + "      <unittitle>Title " + i + "</unittitle>\n" + "      <unitdate>2016</unitdate>\n"
+      + "    </did>\n" + "    <scopecontent><p>Description of document " + i + "</p></scopecontent>\n"
+      + "  </archdesc>\n" + "</ead>\n";
+  }
+
+  private List<ValidationReport> validateAll(XMLValidationService service)
+    throws InterruptedException, ExecutionException {
+    List<Future<ValidationReport>> futures = new ArrayList<>();
+    for (int i = 0; i < documents; i++) {
+      futures.add(service.submit(payloads.get(i), schemas.get(i)[0], schemas.get(i)[1], true));
+    }
+    List<ValidationReport> reports = new ArrayList<>();
+    for (Future<ValidationReport> future : futures) {
+      reports.add(future.get());
+    }
+    return reports;
+  }
+
+  private static void checkAllValid(List<ValidationReport> reports) {
+    for (ValidationReport report : reports) {
+      if (!report.isValid()) {
+        throw new IllegalStateException("Benchmark document is not valid: " + report.getIssues());
+      }
+    }
+  }
+
+  /**
+   * A new reader and validator for each document, one document at a time.
+   */
+  @Benchmark
+  public int legacy() throws IOException, SAXException {
+    int valid = 0;
+    for (int i = 0; i < documents; i++) {
+      Schema schema = RodaCoreFactory.getRodaSchema(schemas.get(i)[0], schemas.get(i)[1]).get();
+      try (InputStreamReader reader = new InputStreamReader(new BOMInputStream(payloads.get(i).createInputStream()))) {
+        XMLReader xmlReader = XMLReaderFactory.createXMLReader();
+        xmlReader.setEntityResolver(new RodaEntityResolver());
+        Validator validator = schema.newValidator();
+        validator.setErrorHandler(new DefaultHandler());
+        validator.validate(new SAXSource(xmlReader, new InputSource(reader)));
+        valid++;
+      }
+    }
+    return valid;
+  }
+
+  /**
+   * Reusing the reader and validators, one document at a time.
+   */
+  @Benchmark
+  public int reused() {
+    int valid = 0;
+    for (int i = 0; i < documents; i++) {
+      if (sequential.validate(payloads.get(i), schemas.get(i)[0], schemas.get(i)[1], true).isValid()) {
+        valid++;
+      }
+    }
+    return valid;
+  }
+
+  @Benchmark
+  public List<ValidationReport> reusedInParallel() throws InterruptedException, ExecutionException {
+    return validateAll(parallel);
+  }
+
+  /**
+   * Revalidating documents already found valid, as after changing an unrelated
+   * schema.
+   */
+  @Benchmark
+  public List<ValidationReport> cachedInParallel() throws InterruptedException, ExecutionException {
+    return validateAll(cached);
+  }
+}
@@ -0,0 +1,169 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.common.RodaConstants.NodeType;
+import org.roda.core.data.exceptions.GenericException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_DEV, RodaConstants.TEST_GROUP_TRAVIS})
+public class StartupGraphTest {
+
+  @Test
+  public void testStartupGraphHasNoCycles() throws GenericException {
+    for (NodeType nodeType : NodeType.values()) {
+      for (boolean background : new boolean[] {false, true}) {
+        StartupGraph graph = RodaCoreFactory.buildStartupGraph(nodeType, background);
+        List<String> order = graph.validate();
+        Assert.assertEquals(order.size(), graph.getSteps().size());
+
+        // plugin manager is still the last critical step to be instantiated
+        for (StartupGraph.Step step : graph.getSteps()) {
+          if (step.isCritical() && !step.getName().equals("pluginManager")
+            && !step.getName().equals("cleanUnfinishedJobs")) {
+            Assert.assertTrue(order.indexOf(step.getName()) < order.indexOf("pluginManager"));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testInvalidGraphsAreRejected() {
+    StartupGraph.Action noop = () -> {
+    };
+
+    StartupGraph cyclic = new StartupGraph().addStep("a", noop, "c").addStep("b", noop, "a").addStep("c", noop, "b")
+      .addStep("d", noop);
+    Assert.assertThrows(GenericException.class, cyclic::validate);
+
+    StartupGraph unknownDependency = new StartupGraph().addStep("a", noop, "missing");
+    Assert.assertThrows(GenericException.class, unknownDependency::validate);
+
+    StartupGraph criticalAfterBackground = new StartupGraph().addBackgroundStep("a", noop).addStep("b", noop, "a");
+    Assert.assertThrows(GenericException.class, criticalAfterBackground::validate);
+  }
+
+  @Test
+  public void testFailureOfAnyStepAbortsStartup() throws Exception {
+    StartupGraph graph = RodaCoreFactory.buildStartupGraph(NodeType.PRIMARY, true);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      for (StartupGraph.Step failing : graph.getSteps()) {
+        if (failing.isCritical()) {
+          assertAborts(graph, failing.getName(), executor, true);
+          assertAborts(graph, failing.getName(), executor, false);
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testIndependentStepsRunConcurrently() throws Exception {
+    CountDownLatch bothRunning = new CountDownLatch(2);
+    StartupGraph.Action waitForTheOther = () -> {
+      bothRunning.countDown();
+      Assert.assertTrue(bothRunning.await(10, TimeUnit.SECONDS));
+    };
+    AtomicInteger last = new AtomicInteger();
+    StartupGraph graph = new StartupGraph().addStep("a", waitForTheOther).addStep("b", waitForTheOther)
+      .addStep("c", last::incrementAndGet, "a", "b");
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      graph.run(executor, null);
+    } finally {
+      executor.shutdownNow();
+    }
+    Assert.assertEquals(last.get(), 1);
+    Assert.assertEquals(graph.getDurations().keySet(), new HashSet<>(List.of("a", "b", "c")));
+  }
+
+  /**
+   * Runs a copy of the graph where the given step fails and checks that startup
+   * fails with its error, that nothing depending on it ran and that no critical
+   * step is left running.
+   */
+  private static void assertAborts(StartupGraph graph, String failingStep, ExecutorService executor,
+    boolean parallel) throws Exception {
+    GenericException error = new GenericException("Failing " + failingStep);
+    AtomicInteger running = new AtomicInteger();
+    Set<String> executed = Collections.synchronizedSet(new HashSet<>());
+
+    StartupGraph copy = new StartupGraph();
+    for (StartupGraph.Step step : graph.getSteps()) {
+      StartupGraph.Action action = () -> {
+        if (step.isCritical()) {
+          running.incrementAndGet();
+        }
+        try {
+          executed.add(step.getName());
+          if (step.getName().equals(failingStep)) {
+            throw error;
+          }
+          Thread.sleep(1);
+        } finally {
+          if (step.isCritical()) {
+            running.decrementAndGet();
+          }
+        }
+      };
+      String[] dependencies = step.getDependencies().toArray(new String[0]);
+      if (step.isCritical()) {
+        copy.addStep(step.getName(), action, dependencies);
+      } else {
+        copy.addBackgroundStep(step.getName(), action, dependencies);
+      }
+    }
+
+    try {
+      if (parallel) {
+        copy.run(executor, null);
+      } else {
+        copy.runSequentially(null);
+      }
+      Assert.fail("Startup should have failed on step " + failingStep);
+    } catch (GenericException e) {
+      Assert.assertSame(e, error);
+    }
+
+    Assert.assertEquals(running.get(), 0, "Steps still running after " + failingStep + " failed");
+    for (String dependent : dependents(graph, failingStep)) {
+      Assert.assertFalse(executed.contains(dependent), dependent + " ran although " + failingStep + " failed");
+    }
+  }
+
+  private static Set<String> dependents(StartupGraph graph, String name) {
+    Set<String> dependents = new HashSet<>();
+    List<String> toVisit = new ArrayList<>(Collections.singletonList(name));
+    while (!toVisit.isEmpty()) {
+      String current = toVisit.remove(0);
+      for (StartupGraph.Step step : graph.getSteps()) {
+        if (step.getDependencies().contains(current) && dependents.add(step.getName())) {
+          toVisit.add(step.getName());
+        }
+      }
+    }
+    return dependents;
+  }
+}
@@ -0,0 +1,95 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import org.roda.core.TestsHelper;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.common.RodaConstants.NodeType;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.v2.ip.StoragePath;
+import org.roda.core.storage.StorageService;
+import org.roda.core.storage.StorageServiceWrapper;
+import org.roda.core.storage.StorageTestUtils;
+import org.roda.core.storage.StringContentPayload;
+import org.roda.core.storage.fs.FSUtils;
+import org.roda.core.storage.fs.FileStorageService;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Checksums handed over through {@link FixityCache} must not outlive the
+ * content they were computed from.
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_DEV, RodaConstants.TEST_GROUP_TRAVIS})
+public class FixityCacheTest {
+  private static final List<String> ALGORITHMS = Collections.singletonList("SHA-256");
+
+  private Path basePath;
+  private StorageService storage;
+  private StoragePath container;
+
+  @BeforeMethod
+  public void setUp() throws IOException, RODAException {
+    basePath = TestsHelper.createBaseTempDir(FixityCacheTest.class, false);
+    storage = new StorageServiceWrapper(new FileStorageService(basePath.resolve("storage")), NodeType.TEST);
+    container = StorageTestUtils.generateRandomContainerStoragePath();
+    storage.createContainer(container);
+    FixityCache.clear();
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    FixityCache.clear();
+    FSUtils.deletePathQuietly(basePath);
+  }
+
+  private StoragePath createBinaryWithKnownChecksum(StoragePath parent, String content) throws RODAException {
+    StoragePath path = StorageTestUtils.generateRandomResourceStoragePathUnder(parent);
+    storage.createBinary(path, new StringContentPayload(content), false);
+    FixityCache.put(path, content.length(), Collections.singletonMap("SHA-256", content));
+    return path;
+  }
+
+  @Test
+  public void testRewriteWithSameSizeDropsChecksums() throws RODAException {
+    StoragePath path = createBinaryWithKnownChecksum(container, "first");
+    Assert.assertTrue(FixityCache.contains(path, 5L, ALGORITHMS));
+
+    storage.updateBinaryContent(path, new StringContentPayload("other"), false, false);
+    Assert.assertFalse(FixityCache.contains(path, 5L, ALGORITHMS));
+    Assert.assertNull(FixityCache.take(path, 5L, ALGORITHMS));
+  }
+
+  @Test
+  public void testDeletedDirectoryDropsChecksumsUnderIt() throws RODAException {
+    StoragePath directory = StorageTestUtils.generateRandomResourceStoragePathUnder(container);
+    storage.createDirectory(directory);
+    StoragePath inside = createBinaryWithKnownChecksum(directory, "inside");
+    StoragePath outside = createBinaryWithKnownChecksum(container, "outside");
+
+    storage.deleteResource(directory);
+    Assert.assertFalse(FixityCache.contains(inside, 6L, ALGORITHMS));
+    Assert.assertTrue(FixityCache.contains(outside, 7L, ALGORITHMS));
+  }
+
+  @Test
+  public void testUnchangedBinaryKeepsChecksums() throws RODAException {
+    StoragePath path = createBinaryWithKnownChecksum(container, "first");
+    storage.getBinary(path);
+    Assert.assertEquals(FixityCache.take(path, 5L, ALGORITHMS), Collections.singletonMap("SHA-256", "first"));
+  }
+}
@@ -0,0 +1,353 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common.monitor;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.TestsHelper;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.AlreadyExistsException;
+import org.roda.core.data.exceptions.AuthorizationDeniedException;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.RequestNotValidException;
+import org.roda.core.data.v2.index.filter.Filter;
+import org.roda.core.data.v2.ip.TransferredResource;
+import org.roda.core.data.v2.ip.TransferredResourceUpload;
+import org.roda.core.index.IndexTestUtils;
+import org.roda.core.storage.fs.FSUtils;
+import org.roda.core.util.FileUtility;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_DEV, RodaConstants.TEST_GROUP_TRAVIS})
+public class TransferredResourceUploadsTest {
+  private static final String USERNAME = "uploader";
+  private static final int CHUNK_SIZE = 1000;
+
+  private static Path basePath;
+  private static Path sips;
+  private static TransferredResourceUploads uploads;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    basePath = TestsHelper.createBaseTempDir(TransferredResourceUploadsTest.class, true);
+
+    boolean deploySolr = true;
+    boolean deployLdap = false;
+    boolean deployFolderMonitor = true;
+    boolean deployOrchestrator = false;
+    boolean deployPluginManager = false;
+    boolean deployDefaultResources = false;
+    RodaCoreFactory.instantiateTest(deploySolr, deployLdap, deployFolderMonitor, deployOrchestrator,
+      deployPluginManager, deployDefaultResources, false);
+
+    sips = RodaCoreFactory.getDataPath().resolve(RodaCoreFactory.getRodaConfiguration()
+      .getString("transferredResources.folder", RodaConstants.CORE_TRANSFERREDRESOURCE_FOLDER));
+    uploads = new TransferredResourceUploads(RodaCoreFactory.getTransferredResourcesScanner(),
+      basePath.resolve("uploads"), CHUNK_SIZE * 10, TimeUnit.HOURS.toMillis(1));
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    IndexTestUtils.resetIndex();
+    RodaCoreFactory.shutdown();
+    FSUtils.deletePath(basePath);
+  }
+
+  @AfterMethod
+  public static void cleanup() throws Exception {
+    FSUtils.deletePathQuietly(sips);
+    Files.createDirectory(sips);
+    RodaCoreFactory.getIndexService().delete(TransferredResource.class, Filter.ALL);
+    RodaCoreFactory.getIndexService().commit(TransferredResource.class);
+  }
+
+  @Test
+  public void testChunksUploadedInParallel() throws Exception {
+    byte[] content = randomContent(CHUNK_SIZE * 7 + 123);
+    TransferredResourceUpload upload = uploads.createUpload(USERNAME, null, "large.bin", content.length, CHUNK_SIZE);
+    Assert.assertEquals(upload.getNumberOfChunks(), 8);
+
+    // chunks sent at the same time and in any order
+    List<Integer> indexes = new ArrayList<>();
+    for (int i = 0; i < upload.getNumberOfChunks(); i++) {
+      indexes.add(i);
+    }
+    Collections.shuffle(indexes);
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<TransferredResourceUpload.Chunk>> futures = new ArrayList<>();
+      for (int index : indexes) {
+        futures.add(executor.submit(() -> uploads.putChunk(USERNAME, upload.getId(), index,
+          chunkContent(content, index), checksum(chunk(content, index)))));
+      }
+      for (Future<TransferredResourceUpload.Chunk> future : futures) {
+        future.get(30, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    TransferredResourceUpload retrieved = uploads.retrieveUpload(USERNAME, upload.getId());
+    Assert.assertEquals(retrieved.getChunks().size(), 8);
+    Assert.assertEquals(retrieved.getChunks().get(7).getSize(), 123);
+
+    TransferredResource resource = uploads.completeUpload(USERNAME, upload.getId());
+    Assert.assertEquals(Files.readAllBytes(sips.resolve(resource.getRelativePath())), content);
+
+    RodaCoreFactory.getIndexService().commit(TransferredResource.class);
+    Assert.assertEquals(RodaCoreFactory.getIndexService().retrieve(TransferredResource.class, resource.getUUID(),
+      new ArrayList<>()).getSize(), content.length);
+
+    // the upload is gone once completed
+    try {
+      uploads.retrieveUpload(USERNAME, upload.getId());
+      Assert.fail("A completed upload should not be found");
+    } catch (NotFoundException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testChunkUploadedAgainAfterFailure() throws Exception {
+    byte[] content = randomContent(CHUNK_SIZE * 2);
+    TransferredResourceUpload upload = uploads.createUpload(USERNAME, null, "resumed.bin", content.length,
+      CHUNK_SIZE);
+
+    // connection dropped in the middle of the chunk
+    try {
+      uploads.putChunk(USERNAME, upload.getId(), 0, new ByteArrayInputStream(content, 0, CHUNK_SIZE / 2), null);
+      Assert.fail("An incomplete chunk should not be accepted");
+    } catch (RequestNotValidException e) {
+      // expected
+    }
+
+    // content damaged on the way
+    byte[] damaged = chunk(content, 1);
+    damaged[0]++;
+    try {
+      uploads.putChunk(USERNAME, upload.getId(), 1, new ByteArrayInputStream(damaged), checksum(chunk(content, 1)));
+      Assert.fail("A chunk with another checksum should not be accepted");
+    } catch (RequestNotValidException e) {
+      // expected
+    }
+
+    Assert.assertTrue(uploads.retrieveUpload(USERNAME, upload.getId()).getChunks().isEmpty());
+    try {
+      uploads.completeUpload(USERNAME, upload.getId());
+      Assert.fail("An upload without all its chunks should not be completed");
+    } catch (RequestNotValidException e) {
+      // expected
+    }
+
+    // a chunk replaced by a new version
+    uploads.putChunk(USERNAME, upload.getId(), 0, new ByteArrayInputStream(damaged), null);
+    for (int index = 0; index < 2; index++) {
+      uploads.putChunk(USERNAME, upload.getId(), index, chunkContent(content, index), null);
+    }
+    Assert.assertEquals(uploads.retrieveUpload(USERNAME, upload.getId()).getChunks().get(0).getChecksum(),
+      checksum(chunk(content, 0)));
+
+    TransferredResource resource = uploads.completeUpload(USERNAME, upload.getId());
+    Assert.assertEquals(Files.readAllBytes(sips.resolve(resource.getRelativePath())), content);
+  }
+
+  @Test
+  public void testUploadOfAnotherUser() throws Exception {
+    TransferredResourceUpload upload = uploads.createUpload(USERNAME, null, "private.bin", 10, CHUNK_SIZE);
+    try {
+      uploads.putChunk("other", upload.getId(), 0, new ByteArrayInputStream(new byte[10]), null);
+      Assert.fail("Another user should not upload chunks");
+    } catch (AuthorizationDeniedException e) {
+      // expected
+    }
+    uploads.deleteUpload(USERNAME, upload.getId());
+  }
+
+  @Test
+  public void testExpiredUploadsAreRemoved() throws Exception {
+    TransferredResourceUpload expired = uploads.createUpload(USERNAME, null, "expired.bin", 10, CHUNK_SIZE);
+    TransferredResourceUpload active = uploads.createUpload(USERNAME, null, "active.bin", 10, CHUNK_SIZE);
+    Files.setLastModifiedTime(basePath.resolve("uploads").resolve(expired.getId()),
+      FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2)));
+
+    Assert.assertEquals(uploads.removeExpiredUploads(), 1);
+    Assert.assertFalse(FSUtils.exists(basePath.resolve("uploads").resolve(expired.getId())));
+    Assert.assertEquals(uploads.retrieveUpload(USERNAME, active.getId()).getFileName(), "active.bin");
+    uploads.deleteUpload(USERNAME, active.getId());
+  }
+
+  @Test
+  public void testExpiredUploadsAreRemovedPeriodically() throws Exception {
+    Path uploadsPath = basePath.resolve("scheduled-uploads");
+    TransferredResourceUploads scheduled = new TransferredResourceUploads(
+      RodaCoreFactory.getTransferredResourcesScanner(), uploadsPath, CHUNK_SIZE, TimeUnit.HOURS.toMillis(1));
+    TransferredResourceUpload expired = scheduled.createUpload(USERNAME, null, "expired.bin", 10, CHUNK_SIZE);
+    Files.setLastModifiedTime(uploadsPath.resolve(expired.getId()),
+      FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2)));
+
+    scheduled.scheduleRemovalOfExpiredUploads(50, TimeUnit.MILLISECONDS);
+    try {
+      long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+      while (FSUtils.exists(uploadsPath.resolve(expired.getId())) && System.currentTimeMillis() < deadline) {
+        Thread.sleep(50);
+      }
+      Assert.assertFalse(FSUtils.exists(uploadsPath.resolve(expired.getId())));
+    } finally {
+      scheduled.shutdown();
+    }
+  }
+
+  @Test
+  public void testUploadWithTooManyChunks() throws Exception {
+    Assert.assertEquals(TransferredResourceUpload.getNumberOfChunks(Long.MAX_VALUE, 1), Long.MAX_VALUE);
+    try {
+      uploads.createUpload(USERNAME, null, "huge.bin", Integer.MAX_VALUE * 2L, 1);
+      Assert.fail("An upload with more chunks than fit in an int should not be created");
+    } catch (RequestNotValidException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testUploadBeingCompleted() throws Exception {
+    TransferredResourceUpload upload = uploads.createUpload(USERNAME, null, "completing.bin", 10, CHUNK_SIZE);
+    Path uploadPath = basePath.resolve("uploads").resolve(upload.getId());
+    Path completing = Files.createFile(uploadPath.resolve("completing"));
+    Files.setLastModifiedTime(uploadPath, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2)));
+
+    try {
+      uploads.putChunk(USERNAME, upload.getId(), 0, new ByteArrayInputStream(new byte[10]), null);
+      Assert.fail("Chunks should not be received while the upload is being completed");
+    } catch (RequestNotValidException e) {
+      // expected
+    }
+    try {
+      uploads.deleteUpload(USERNAME, upload.getId());
+      Assert.fail("An upload should not be deleted while it is being completed");
+    } catch (RequestNotValidException e) {
+      // expected
+    }
+    Assert.assertEquals(uploads.removeExpiredUploads(), 0);
+    Assert.assertTrue(FSUtils.exists(uploadPath));
+
+    Files.delete(completing);
+    uploads.deleteUpload(USERNAME, upload.getId());
+    Assert.assertFalse(FSUtils.exists(uploadPath));
+  }
+
+  @Test
+  public void testCompletingWaitsForChunksBeingReceived() throws Exception {
+    byte[] content = randomContent(CHUNK_SIZE * 2);
+    TransferredResourceUpload upload = uploads.createUpload(USERNAME, null, "waiting.bin", content.length,
+      CHUNK_SIZE);
+    uploads.putChunk(USERNAME, upload.getId(), 0, chunkContent(content, 0), null);
+
+    CountDownLatch receiving = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    InputStream slowChunk = new ByteArrayInputStream(chunk(content, 1)) {
+      @Override
+      public synchronized int read(byte[] b, int off, int len) {
+        receiving.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return super.read(b, off, len);
+      }
+    };
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<TransferredResourceUpload.Chunk> chunk = executor
+        .submit(() -> uploads.putChunk(USERNAME, upload.getId(), 1, slowChunk, null));
+      Assert.assertTrue(receiving.await(10, TimeUnit.SECONDS));
+
+      Future<TransferredResource> completed = executor.submit(() -> uploads.completeUpload(USERNAME, upload.getId()));
+      Path completing = basePath.resolve("uploads").resolve(upload.getId()).resolve("completing");
+      long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+      while (!FSUtils.exists(completing) && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      Assert.assertTrue(FSUtils.exists(completing));
+      Assert.assertFalse(completed.isDone());
+
+      // the chunk that was already being received is still accepted
+      release.countDown();
+      Assert.assertEquals(chunk.get(10, TimeUnit.SECONDS).getSize(), CHUNK_SIZE);
+      TransferredResource resource = completed.get(30, TimeUnit.SECONDS);
+      Assert.assertEquals(Files.readAllBytes(sips.resolve(resource.getRelativePath())), content);
+    } finally {
+      release.countDown();
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testCompletedFileDoesNotReplaceAnother() throws Exception {
+    byte[] content = randomContent(10);
+    TransferredResourceUpload upload = uploads.createUpload(USERNAME, null, "taken.bin", content.length, CHUNK_SIZE);
+    uploads.putChunk(USERNAME, upload.getId(), 0, new ByteArrayInputStream(content), null);
+
+    // created in the transfer area after the upload started
+    Files.write(sips.resolve("taken.bin"), new byte[] {1, 2, 3});
+    try {
+      uploads.completeUpload(USERNAME, upload.getId());
+      Assert.fail("A completed upload should not replace an existing file");
+    } catch (AlreadyExistsException e) {
+      // expected
+    }
+    Assert.assertEquals(Files.readAllBytes(sips.resolve("taken.bin")), new byte[] {1, 2, 3});
+    Assert.assertEquals(uploads.retrieveUpload(USERNAME, upload.getId()).getChunks().size(), 1);
+    uploads.deleteUpload(USERNAME, upload.getId());
+  }
+
+  private static byte[] randomContent(int size) {
+    byte[] content = new byte[size];
+    new Random().nextBytes(content);
+    return content;
+  }
+
+  private static byte[] chunk(byte[] content, int index) {
+    return Arrays.copyOfRange(content, index * CHUNK_SIZE, Math.min(content.length, (index + 1) * CHUNK_SIZE));
+  }
+
+  private static InputStream chunkContent(byte[] content, int index) {
+    return new ByteArrayInputStream(chunk(content, index));
+  }
+
+  private static String checksum(byte[] bytes) throws IOException {
+    try {
+      return FileUtility.byteArrayToHexString(MessageDigest.getInstance("SHA-256").digest(bytes));
+    } catch (Exception e) {
+      throw new IOException(e);
+    }
+  }
+}
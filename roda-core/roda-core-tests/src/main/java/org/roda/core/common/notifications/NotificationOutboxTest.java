@@ -0,0 +1,266 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common.notifications;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.TestsHelper;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.v2.notifications.Notification;
+import org.roda.core.data.v2.notifications.NotificationState;
+import org.roda.core.model.ModelService;
+import org.roda.core.storage.fs.FSUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_DEV, RodaConstants.TEST_GROUP_TRAVIS})
+public class NotificationOutboxTest {
+  private Path basePath;
+  private ModelService model;
+  private HttpServer httpServer;
+  private final List<String> posts = Collections.synchronizedList(new ArrayList<>());
+  private final AtomicInteger unavailable = new AtomicInteger();
+
+  @BeforeClass
+  public void setUp() throws IOException, RODAException {
+    basePath = TestsHelper.createBaseTempDir(NotificationOutboxTest.class, true);
+    RodaCoreFactory.instantiateTest(false, false, false, false, false, false, false);
+    model = RodaCoreFactory.getModelService();
+
+    httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    httpServer.createContext("/hook", exchange -> {
+      // the first requests fail, while the endpoint is "unavailable"
+      int status = unavailable.getAndDecrement() > 0 ? 503 : 200;
+      if (status == 200) {
+        posts.add(read(exchange));
+      }
+      respond(exchange, status);
+    });
+    httpServer.createContext("/gone", exchange -> respond(exchange, 404));
+    httpServer.start();
+  }
+
+  @AfterClass
+  public void cleanUp() {
+    httpServer.stop(0);
+    RodaCoreFactory.shutdown();
+    FSUtils.deletePathQuietly(basePath);
+  }
+
+  private static String read(HttpExchange exchange) throws IOException {
+    try (InputStream body = exchange.getRequestBody()) {
+      return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+
+  private static void respond(HttpExchange exchange, int status) throws IOException {
+    exchange.sendResponseHeaders(status, -1);
+    exchange.close();
+  }
+
+  private String getEndpoint(String path) {
+    return "http://localhost:" + httpServer.getAddress().getPort() + path;
+  }
+
+  private NotificationOutbox createOutbox(Path directory) {
+    return new NotificationOutbox(directory, 2, 1, 3, 50, 200, 5000);
+  }
+
+  private Notification createNotification(String recipient) throws RODAException {
+    Notification notification = new Notification();
+    notification.setSubject("Subject");
+    notification.setSentOn(new Date());
+    notification.setFromUser("Test Notification Outbox");
+    notification.setRecipientUsers(Collections.singletonList(recipient));
+    return model.createNotification(notification, null);
+  }
+
+  private NotificationState waitForDelivery(String notificationId) throws RODAException, InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(20);
+    NotificationState state = model.retrieveNotification(notificationId).getState();
+    while (NotificationState.CREATED.equals(state) && System.nanoTime() < deadline) {
+      Thread.sleep(50);
+      state = model.retrieveNotification(notificationId).getState();
+    }
+    return state;
+  }
+
+  private static List<Path> deliveries(Path directory) throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.filter(Files::isRegularFile).collect(Collectors.toList());
+    }
+  }
+
+  @Test
+  public void testDeliveriesAreRetried() throws RODAException, InterruptedException, IOException {
+    Path directory = basePath.resolve("retried");
+    NotificationOutbox outbox = createOutbox(directory);
+    outbox.start(model);
+    try {
+      unavailable.set(2);
+      Notification notification = createNotification("user@example.com");
+      outbox.enqueue(NotificationDelivery.http(notification.getId(), getEndpoint("/hook"), "{\"retried\":true}"));
+
+      Assert.assertEquals(waitForDelivery(notification.getId()), NotificationState.COMPLETED);
+      Assert.assertTrue(posts.contains("{\"retried\":true}"));
+      Assert.assertEquals(deliveries(directory).size(), 0);
+
+      Notification gone = createNotification("user@example.com");
+      outbox.enqueue(NotificationDelivery.http(gone.getId(), getEndpoint("/gone"), "{}"));
+      Assert.assertEquals(waitForDelivery(gone.getId()), NotificationState.FAILED);
+      Assert.assertEquals(deliveries(directory.resolve("failed")).size(), 1);
+    } finally {
+      outbox.shutdown();
+    }
+  }
+
+  @Test
+  public void testDeliveriesSurviveRestarts() throws RODAException, InterruptedException, IOException {
+    Path directory = basePath.resolve("restarted");
+    Notification notification = createNotification("user@example.com");
+
+    // an outbox of a node that stops before delivering
+    NotificationOutbox stopped = createOutbox(directory);
+    stopped.enqueue(NotificationDelivery.http(notification.getId(), getEndpoint("/hook"), "{\"restarted\":true}"));
+    stopped.shutdown();
+    Assert.assertEquals(deliveries(directory).size(), 1);
+    Assert.assertEquals(model.retrieveNotification(notification.getId()).getState(), NotificationState.CREATED);
+
+    NotificationOutbox restarted = createOutbox(directory);
+    restarted.start(model);
+    try {
+      Assert.assertEquals(waitForDelivery(notification.getId()), NotificationState.COMPLETED);
+      Assert.assertTrue(posts.contains("{\"restarted\":true}"));
+      Assert.assertEquals(deliveries(directory).size(), 0);
+    } finally {
+      restarted.shutdown();
+    }
+  }
+
+  @Test
+  public void testEmailsAreSentInTheBackground() throws RODAException, InterruptedException, IOException {
+    try (SmtpSink smtp = new SmtpSink()) {
+      RodaCoreFactory.getRodaConfiguration().setProperty("core.email.protocol", "smtp");
+      RodaCoreFactory.getRodaConfiguration().setProperty("core.email.host", "localhost");
+      RodaCoreFactory.getRodaConfiguration().setProperty("core.email.port", String.valueOf(smtp.getPort()));
+      RodaCoreFactory.getRodaConfiguration().setProperty("core.email.from", "roda@example.com");
+
+      Notification notification = new Notification();
+      notification.setSubject("Subject");
+      notification.setSentOn(new Date());
+      notification.setFromUser("Test Notification Outbox");
+      notification.setRecipientUsers(Collections.singletonList("recipient@example.com"));
+      Notification created = model.createNotification(notification,
+        new EmailNotificationProcessor("test-email-template.vm"));
+      Assert.assertEquals(created.getState(), NotificationState.CREATED);
+
+      Assert.assertEquals(waitForDelivery(created.getId()), NotificationState.COMPLETED);
+      Assert.assertEquals(smtp.getRecipients().size(), 1);
+      Assert.assertTrue(smtp.getRecipients().get(0).contains("recipient@example.com"));
+    } finally {
+      RodaCoreFactory.getRodaConfiguration().clearProperty("core.email.protocol");
+      RodaCoreFactory.getRodaConfiguration().clearProperty("core.email.host");
+      RodaCoreFactory.getRodaConfiguration().clearProperty("core.email.port");
+      RodaCoreFactory.getRodaConfiguration().clearProperty("core.email.from");
+    }
+  }
+
+  /**
+   * Accepts any e-mail sent to it, remembering its recipients.
+   */
+  private static class SmtpSink implements Closeable {
+    private final ServerSocket serverSocket;
+    private final List<String> recipients = Collections.synchronizedList(new ArrayList<>());
+
+    SmtpSink() throws IOException {
+      serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+      Thread thread = new Thread(this::serve, "smtp-sink");
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    int getPort() {
+      return serverSocket.getLocalPort();
+    }
+
+    List<String> getRecipients() {
+      return recipients;
+    }
+
+    private void serve() {
+      while (!serverSocket.isClosed()) {
+        try (Socket socket = serverSocket.accept();
+          BufferedReader in = new BufferedReader(
+            new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+          Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII)) {
+          reply(out, "220 sink");
+          String line;
+          while ((line = in.readLine()) != null) {
+            String command = line.toUpperCase(Locale.ROOT);
+            if (command.startsWith("RCPT TO:")) {
+              recipients.add(line.substring("RCPT TO:".length()).trim());
+              reply(out, "250 OK");
+            } else if ("DATA".equals(command)) {
+              reply(out, "354 End data with <CR><LF>.<CR><LF>");
+              while ((line = in.readLine()) != null && !".".equals(line)) {
+                // the message is not kept
+              }
+              reply(out, "250 OK");
+            } else if (command.startsWith("QUIT")) {
+              reply(out, "221 Bye");
+              break;
+            } else {
+              reply(out, "250 OK");
+            }
+          }
+        } catch (IOException e) {
+          // closed
+        }
+      }
+    }
+
+    private static void reply(Writer out, String reply) throws IOException {
+      out.write(reply + "\r\n");
+      out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      serverSocket.close();
+    }
+  }
+}
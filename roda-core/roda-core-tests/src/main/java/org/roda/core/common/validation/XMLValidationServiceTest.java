@@ -0,0 +1,135 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common.validation;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.TestsHelper;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.v2.validation.ValidationReport;
+import org.roda.core.storage.StringContentPayload;
+import org.roda.core.storage.fs.FSUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_DEV, RodaConstants.TEST_GROUP_TRAVIS})
+public class XMLValidationServiceTest {
+  private static final String DC_TYPE = "dc";
+  private static final String DC_VERSION = "SimpleDC20021212";
+
+  private Path basePath;
+
+  @BeforeClass
+  public void setUp() throws IOException, GenericException {
+    basePath = TestsHelper.createBaseTempDir(XMLValidationServiceTest.class, true);
+    RodaCoreFactory.instantiateTest(false, false, false, false, false, false, false);
+  }
+
+  @AfterClass
+  public void cleanUp() {
+    RodaCoreFactory.shutdown();
+    FSUtils.deletePathQuietly(basePath);
+  }
+
+  private static StringContentPayload dc(String title) {
+    return new StringContentPayload("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+      + "<simpledc xmlns:dc=\"http://purl.org/dc/elements/1.1/\">\n  <title>" + title + "</title>\n</simpledc>\n");
+  }
+
+  private static List<Path> remembered(Path cacheDirectory) throws IOException {
+    try (Stream<Path> files = Files.walk(cacheDirectory)) {
+      return files.filter(Files::isRegularFile).collect(Collectors.toList());
+    }
+  }
+
+  @Test
+  public void testValidDocumentsAreRemembered() throws IOException {
+    Path cacheDirectory = basePath.resolve("cache");
+    XMLValidationService service = new XMLValidationService(2, cacheDirectory);
+
+    Assert.assertTrue(service.validate(dc("title"), DC_TYPE, DC_VERSION, true).isValid());
+    Assert.assertTrue(service.validate(dc("title"), DC_TYPE, DC_VERSION, true).isValid());
+    Assert.assertTrue(service.validate(dc("other title"), DC_TYPE, DC_VERSION, true).isValid());
+
+    ValidationReport invalid = service.validate(dc("<unknown/>"), DC_TYPE, DC_VERSION, true);
+    Assert.assertFalse(invalid.isValid());
+    Assert.assertFalse(invalid.getIssues().isEmpty());
+    // invalid documents are validated again, to report their issues
+    Assert.assertEquals(service.validate(dc("<unknown/>"), DC_TYPE, DC_VERSION, true).getIssues().size(),
+      invalid.getIssues().size());
+
+    // one for each valid document
+    Assert.assertEquals(remembered(cacheDirectory).size(), 2);
+
+    // a new service, e.g. after a restart, finds what was remembered
+    XMLValidationService restarted = new XMLValidationService(2, cacheDirectory);
+    Assert.assertTrue(restarted.validate(dc("title"), DC_TYPE, DC_VERSION, true).isValid());
+    Assert.assertEquals(remembered(cacheDirectory).size(), 2);
+  }
+
+  @Test
+  public void testDocumentsOfAChangedSchemaAreValidatedAgain() throws IOException {
+    Path cacheDirectory = basePath.resolve("changed-cache");
+    ValidationResultCache cache = new ValidationResultCache(cacheDirectory);
+    cache.putValid(DC_TYPE, DC_VERSION, "fingerprint1", "digest1");
+    cache.putValid("ead", "2002", "fingerprint1", "digest2");
+    Assert.assertTrue(cache.isValid(DC_TYPE, DC_VERSION, "fingerprint1", "digest1"));
+
+    ValidationResultCache restarted = new ValidationResultCache(cacheDirectory);
+    Assert.assertFalse(restarted.isValid(DC_TYPE, DC_VERSION, "fingerprint2", "digest1"));
+    Assert.assertTrue(restarted.isValid("ead", "2002", "fingerprint1", "digest2"));
+    Assert.assertEquals(remembered(cacheDirectory).size(), 1);
+    Assert.assertFalse(restarted.isValid(DC_TYPE, DC_VERSION, "fingerprint1", "digest1"));
+  }
+
+  @Test
+  public void testDocumentsAreValidatedConcurrently() throws InterruptedException, ExecutionException {
+    XMLValidationService service = new XMLValidationService(4, null);
+    List<Future<ValidationReport>> reports = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      reports.add(service.submit(dc(i % 10 == 0 ? "<unknown/>" : "title " + i), DC_TYPE, DC_VERSION, true));
+    }
+    for (int i = 0; i < reports.size(); i++) {
+      Assert.assertEquals(reports.get(i).get().isValid(), i % 10 != 0, "document " + i);
+    }
+
+    Assert.assertFalse(service.validateSyntax(new StringContentPayload("<a><b></a>")).isValid());
+    Assert.assertTrue(service.validateSyntax(new StringContentPayload("<a><b/></a>")).isValid());
+  }
+
+  @Test
+  public void testDocumentsAreValidatedOnVirtualThreads() throws InterruptedException, ExecutionException {
+    XMLValidationService service = new XMLValidationService(2, null);
+    List<Future<ValidationReport>> reports = new ArrayList<>();
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (int i = 0; i < 200; i++) {
+        // malformed documents break off validation, dropping its reader and validator
+        StringContentPayload payload = i % 7 == 0 ? new StringContentPayload("<simpledc><title>")
+          : dc(i % 10 == 0 ? "<unknown/>" : "title " + i);
+        reports.add(executor.submit(() -> service.validate(payload, DC_TYPE, DC_VERSION, true)));
+      }
+    }
+    for (int i = 0; i < reports.size(); i++) {
+      Assert.assertEquals(reports.get(i).get().isValid(), i % 7 != 0 && i % 10 != 0, "document " + i);
+    }
+  }
+}
@@ -8,8 +8,12 @@
 package org.roda.core.disposal;
 
 import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNull;
 
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
 
 import org.roda.core.RodaCoreFactory;
 import org.roda.core.TestsHelper;
@@ -20,14 +24,24 @@ import org.roda.core.data.exceptions.GenericException;
 import org.roda.core.data.exceptions.NotFoundException;
 import org.roda.core.data.exceptions.RODAException;
 import org.roda.core.data.exceptions.RequestNotValidException;
+import org.roda.core.data.v2.index.filter.Filter;
+import org.roda.core.data.v2.index.filter.OneOfManyFilterParameter;
+import org.roda.core.data.v2.ip.AIP;
+import org.roda.core.data.v2.ip.Permissions;
+import org.roda.core.data.v2.ip.disposal.ConditionType;
 import org.roda.core.data.v2.ip.disposal.DisposalActionCode;
 import org.roda.core.data.v2.ip.disposal.DisposalRule;
+import org.roda.core.data.v2.ip.disposal.DisposalRules;
 import org.roda.core.data.v2.ip.disposal.DisposalSchedule;
 import org.roda.core.data.v2.ip.disposal.RetentionPeriodIntervalCode;
 import org.roda.core.data.v2.validation.ValidationException;
+import org.roda.core.index.IndexService;
 import org.roda.core.index.IndexTestUtils;
 import org.roda.core.model.ModelService;
+import org.roda.core.plugins.base.disposal.rules.ApplyDisposalRulesPluginUtils;
+import org.roda.core.storage.StringContentPayload;
 import org.roda.core.storage.fs.FSUtils;
+import org.roda.core.util.IdUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.testng.annotations.AfterClass;
@@ -102,6 +116,94 @@ public class DisposalRuleTest {
     assertEquals(updatedDisposalRule, retrievedDisposalRule);
   }
 
+  @Test
+  public void testDisposalRulesAreMatchedInOrder() throws RODAException {
+    AIP parent = model.createAIP(null, "fonds", new Permissions(), RodaConstants.ADMIN);
+    AIP child1 = model.createAIP(parent.getId(), "file", new Permissions(), RodaConstants.ADMIN);
+    AIP child2 = model.createAIP(parent.getId(), "file", new Permissions(), RodaConstants.ADMIN);
+    AIP other = model.createAIP(null, "special-" + IdUtils.createUUID(), new Permissions(), RodaConstants.ADMIN);
+    IndexService index = RodaCoreFactory.getIndexService();
+    index.commitAIPs();
+
+    // the second rule also matches the children, but the first one comes first
+    DisposalRules rules = new DisposalRules();
+    rules.addObject(createRule(1, ConditionType.IS_CHILD_OF, parent.getId(), null));
+    rules.addObject(createRule(2, ConditionType.METADATA_FIELD, RodaConstants.AIP_PARENT_ID, parent.getId()));
+    rules.addObject(createRule(3, ConditionType.METADATA_FIELD, RodaConstants.AIP_TYPE, other.getType()));
+
+    Filter scope = new Filter(new OneOfManyFilterParameter(RodaConstants.INDEX_UUID,
+      Arrays.asList(parent.getId(), child1.getId(), child2.getId(), other.getId())));
+    Map<DisposalRule, Long> counts = ApplyDisposalRulesPluginUtils.countRuleMatches(rules, scope, false, index);
+    assertEquals(Arrays.asList(2L, 0L, 1L), new ArrayList<>(counts.values()));
+
+    Map<String, DisposalRule> used = ApplyDisposalRulesPluginUtils
+      .applyRules(Arrays.asList(parent, child1, child2, other), rules, index);
+    assertEquals(3, used.size());
+    assertEquals(rules.getObjects().get(0), used.get(child1.getId()));
+    assertEquals(rules.getObjects().get(0), used.get(child2.getId()));
+    assertEquals(rules.getObjects().get(2), used.get(other.getId()));
+    assertEquals(rules.getObjects().get(2).getDisposalScheduleId(), other.getDisposal().getSchedule().getId());
+    assertNull(parent.getDisposal());
+  }
+
+  @Test
+  public void testMetadataFieldRulesMatchTheWholeValue() throws RODAException {
+    AIP report = createAIPWithTitle("Report");
+    AIP annualReport = createAIPWithTitle("Annual report");
+    IndexService index = RodaCoreFactory.getIndexService();
+    index.commitAIPs();
+
+    // the title is an analysed field, where "Report" also matches "Annual report"
+    DisposalRules rules = new DisposalRules();
+    rules.addObject(createRule(1, ConditionType.METADATA_FIELD, RodaConstants.AIP_TITLE, "Report"));
+    rules.addObject(createRule(2, ConditionType.METADATA_FIELD, RodaConstants.AIP_TITLE, "Annual report"));
+
+    Filter scope = new Filter(
+      new OneOfManyFilterParameter(RodaConstants.INDEX_UUID, Arrays.asList(report.getId(), annualReport.getId())));
+    Map<DisposalRule, Long> counts = ApplyDisposalRulesPluginUtils.countRuleMatches(rules, scope, false, index);
+    assertEquals(Arrays.asList(1L, 1L), new ArrayList<>(counts.values()));
+
+    Map<String, DisposalRule> used = ApplyDisposalRulesPluginUtils.applyRules(Arrays.asList(report, annualReport),
+      rules, index);
+    assertEquals(rules.getObjects().get(0), used.get(report.getId()));
+    assertEquals(rules.getObjects().get(1), used.get(annualReport.getId()));
+  }
+
+  @Test
+  public void testRulesAreAppliedBeforeAIPsAreSearchable() throws RODAException {
+    // as in an ingest, where AIPs are only committed after all steps
+    String title = "Minutes " + IdUtils.createUUID();
+    AIP aip = createAIPWithTitle(title);
+
+    DisposalRules rules = new DisposalRules();
+    rules.addObject(createRule(1, ConditionType.METADATA_FIELD, RodaConstants.AIP_TITLE, title));
+
+    Map<String, DisposalRule> used = ApplyDisposalRulesPluginUtils.applyRules(Arrays.asList(aip), rules,
+      RodaCoreFactory.getIndexService());
+    assertEquals(rules.getObjects().get(0), used.get(aip.getId()));
+    assertEquals("schedule-1", aip.getDisposal().getSchedule().getId());
+  }
+
+  private AIP createAIPWithTitle(String title) throws RODAException {
+    AIP aip = model.createAIP(null, "file", new Permissions(), RodaConstants.ADMIN);
+    model.createDescriptiveMetadata(aip.getId(), "dc.xml",
+      new StringContentPayload("<simpledc><title>" + title + "</title></simpledc>"), "dc", "SimpleDC20021212",
+      RodaConstants.ADMIN);
+    return model.retrieveAIP(aip.getId());
+  }
+
+  private DisposalRule createRule(int order, ConditionType type, String key, String value) {
+    DisposalRule rule = new DisposalRule();
+    rule.setId(IdUtils.createUUID());
+    rule.setTitle("Rule " + order);
+    rule.setOrder(order);
+    rule.setType(type);
+    rule.setConditionKey(key);
+    rule.setConditionValue(value);
+    rule.setDisposalScheduleId("schedule-" + order);
+    return rule;
+  }
+
   private DisposalRule createDisposalRule() throws AlreadyExistsException, AuthorizationDeniedException,
     GenericException, NotFoundException, RequestNotValidException {
     String title = "Normal";
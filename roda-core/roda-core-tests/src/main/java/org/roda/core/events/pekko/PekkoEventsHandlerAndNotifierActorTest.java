@@ -0,0 +1,191 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.events.pekko;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.StreamSupport;
+
+import org.apache.pekko.actor.ActorRef;
+import org.apache.pekko.actor.ActorSystem;
+import org.apache.pekko.actor.Props;
+import org.apache.pekko.cluster.Cluster;
+import org.apache.pekko.cluster.MemberStatus;
+import org.apache.pekko.cluster.ddata.DistributedData;
+import org.apache.pekko.cluster.ddata.ORMap;
+import org.apache.pekko.cluster.ddata.Replicator;
+import org.apache.pekko.testkit.javadsl.TestKit;
+import org.roda.core.common.pekko.Messages;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.common.SecureString;
+import org.roda.core.data.v2.user.Group;
+import org.roda.core.data.v2.user.User;
+import org.roda.core.events.AbstractEventsHandler;
+import org.roda.core.model.ModelService;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+/**
+ * Runs the events actor on a two node cluster, both nodes in this JVM.
+ */
+@Test(groups = {RodaConstants.TEST_GROUP_ALL})
+public class PekkoEventsHandlerAndNotifierActorTest {
+  private static final int MAX_ENTRIES = 100;
+  private static final int UPDATES = 5000;
+  private static final int BATCH_SIZE = 500;
+  private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+  private ActorSystem systemA;
+  private ActorSystem systemB;
+  private RecordingEventsHandler handlerA;
+  private RecordingEventsHandler handlerB;
+  private ActorRef actorA;
+
+  private static Config config() {
+    return ConfigFactory.parseString(String.join("\n", "pekko.actor.provider = cluster",
+      "pekko.actor.serializers.crdt = \"org.roda.core.events.pekko.CRDTSerializer\"",
+      "pekko.actor.serialization-bindings { \"org.roda.core.events.pekko.CRDTWrapper\" = crdt }",
+      "pekko.remote.artery.canonical.hostname = \"127.0.0.1\"", "pekko.remote.artery.canonical.port = 0",
+      "pekko.cluster.jmx.multi-mbeans-in-same-jvm = on",
+      "pekko.cluster.distributed-data.notify-subscribers-interval = 50ms",
+      "pekko.cluster.distributed-data.gossip-interval = 200ms", "pekko.loglevel = ERROR",
+      "pekko.stdout-loglevel = OFF")).withFallback(ConfigFactory.load());
+  }
+
+  private void startCluster(String writeConsistency, int cacheTtlInSeconds) {
+    systemA = ActorSystem.create("EventsSystem", config());
+    systemB = ActorSystem.create("EventsSystem", config());
+    Cluster.get(systemA).join(Cluster.get(systemA).selfAddress());
+    Cluster.get(systemB).join(Cluster.get(systemA).selfAddress());
+
+    TestKit probe = new TestKit(systemA);
+    probe.awaitCond(TIMEOUT, Duration.ofMillis(100), "cluster did not form",
+      () -> StreamSupport.stream(Cluster.get(systemA).state().getMembers().spliterator(), false)
+        .filter(member -> member.status().equals(MemberStatus.up())).count() == 2);
+
+    handlerA = new RecordingEventsHandler();
+    handlerB = new RecordingEventsHandler();
+    actorA = systemA.actorOf(Props.create(PekkoEventsHandlerAndNotifierActor.class, handlerA, writeConsistency, 3,
+      cacheTtlInSeconds, MAX_ENTRIES));
+    systemB.actorOf(Props.create(PekkoEventsHandlerAndNotifierActor.class, handlerB, writeConsistency, 3,
+      cacheTtlInSeconds, MAX_ENTRIES));
+  }
+
+  @AfterMethod
+  public void cleanUp() {
+    if (systemB != null) {
+      TestKit.shutdownActorSystem(systemB);
+    }
+    if (systemA != null) {
+      TestKit.shutdownActorSystem(systemA);
+    }
+  }
+
+  @Test
+  public void testChangesAreHandledOnTheOtherNode() {
+    startCluster("WriteMajority", 3600);
+    TestKit probe = new TestKit(systemB);
+
+    actorA.tell(Messages.newEventUserCreated(new User("user1"), "test"), ActorRef.noSender());
+    awaitEvents(probe, handlerB, "userCreated:user1");
+    actorA.tell(Messages.newEventUserUpdated(new User("user1"), false, "test"), ActorRef.noSender());
+    awaitEvents(probe, handlerB, "userCreated:user1", "userUpdated:user1");
+    actorA.tell(Messages.newEventUserDeleted("user1", "test"), ActorRef.noSender());
+    awaitEvents(probe, handlerB, "userCreated:user1", "userUpdated:user1", "userDeleted:user1");
+    actorA.tell(Messages.newEventGroupCreated(new Group("group1"), "test"), ActorRef.noSender());
+    awaitEvents(probe, handlerB, "userCreated:user1", "userUpdated:user1", "userDeleted:user1",
+      "groupCreated:group1");
+
+    // changes are not handled on the node that made them
+    Assert.assertTrue(handlerA.events.isEmpty(), handlerA.events.toString());
+  }
+
+  @Test
+  public void testReplicatedStateStaysBounded() {
+    startCluster("WriteLocal", 60);
+    TestKit probeA = new TestKit(systemA);
+    TestKit probeB = new TestKit(systemB);
+    int compactionThreshold = MAX_ENTRIES + MAX_ENTRIES / 10;
+
+    for (int batch = 0; batch < UPDATES / BATCH_SIZE; batch++) {
+      handlerB.groupsUpdated.clear();
+      String lastGroup = null;
+      for (int i = 0; i < BATCH_SIZE; i++) {
+        lastGroup = "group" + (batch * BATCH_SIZE + i);
+        actorA.tell(Messages.newEventGroupUpdated(new Group(lastGroup), "test"), ActorRef.noSender());
+      }
+
+      String expectedGroup = lastGroup;
+      probeB.awaitCond(TIMEOUT, Duration.ofMillis(20), "update did not reach the other node",
+        () -> handlerB.groupsUpdated.contains(expectedGroup));
+
+      // each batch is several times the maximum, so it is compacted a few times
+      int entriesA = replicatedEntries(systemA, probeA);
+      int entriesB = replicatedEntries(systemB, probeB);
+      Assert.assertTrue(entriesA <= compactionThreshold, entriesA + " entries after " + (batch + 1) * BATCH_SIZE);
+      Assert.assertTrue(entriesB <= compactionThreshold, entriesB + " entries after " + (batch + 1) * BATCH_SIZE);
+    }
+  }
+
+  private static void awaitEvents(TestKit probe, RecordingEventsHandler handler, String... events) {
+    probe.awaitCond(TIMEOUT, Duration.ofMillis(20), "events not handled: " + List.of(events),
+      () -> handler.events.equals(List.of(events)));
+  }
+
+  private static int replicatedEntries(ActorSystem system, TestKit probe) {
+    ActorRef replicator = DistributedData.get(system).replicator();
+    replicator.tell(new Replicator.Get<>(PekkoEventsHandlerAndNotifierActor.OBJECTS_KEY, Replicator.readLocal()),
+      probe.getRef());
+    Replicator.GetSuccess<ORMap<String, CRDTWrapper>> response = probe.expectMsgClass(Replicator.GetSuccess.class);
+    return response.dataValue().size();
+  }
+
+  private static class RecordingEventsHandler extends AbstractEventsHandler {
+    private static final long serialVersionUID = 1L;
+
+    final List<String> events = new CopyOnWriteArrayList<>();
+    final Set<String> groupsUpdated = ConcurrentHashMap.newKeySet();
+
+    @Override
+    public void handleUserCreated(ModelService model, User user, SecureString password) {
+      events.add("userCreated:" + user.getId());
+    }
+
+    @Override
+    public void handleUserUpdated(ModelService model, User user, SecureString password) {
+      events.add("userUpdated:" + user.getId());
+    }
+
+    @Override
+    public void handleUserDeleted(ModelService model, String id) {
+      events.add("userDeleted:" + id);
+    }
+
+    @Override
+    public void handleGroupCreated(ModelService model, Group group) {
+      events.add("groupCreated:" + group.getId());
+    }
+
+    @Override
+    public void handleGroupUpdated(ModelService model, Group group) {
+      groupsUpdated.add(group.getId());
+    }
+
+    @Override
+    public void handleGroupDeleted(ModelService model, String id) {
+      events.add("groupDeleted:" + id);
+    }
+  }
+}
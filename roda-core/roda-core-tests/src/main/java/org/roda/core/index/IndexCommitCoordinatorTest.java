@@ -0,0 +1,132 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.roda.core.data.common.RodaConstants;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_DEV, RodaConstants.TEST_GROUP_TRAVIS})
+public class IndexCommitCoordinatorTest {
+  private static final int REQUESTS = 50;
+
+  @Test
+  public void testConcurrentRequestsAreCoalesced()
+    throws InterruptedException, ExecutionException, TimeoutException {
+    CountDownLatch firstRoundStarted = new CountDownLatch(1);
+    CountDownLatch releaseFirstRound = new CountDownLatch(1);
+    AtomicInteger commits = new AtomicInteger();
+    List<String> committed = Collections.synchronizedList(new ArrayList<>());
+    IndexCommitCoordinator coordinator = new IndexCommitCoordinator(collection -> {
+      committed.add(collection);
+      if (commits.incrementAndGet() == 1) {
+        firstRoundStarted.countDown();
+        releaseFirstRound.await();
+      }
+    }, 0);
+
+    ExecutorService executor = Executors.newFixedThreadPool(REQUESTS);
+    CountDownLatch start = new CountDownLatch(1);
+    List<CompletableFuture<Void>> requests = Collections.synchronizedList(new ArrayList<>());
+    try {
+      CompletableFuture<Void> first = coordinator.requestCommit(Collections.singletonList(RodaConstants.INDEX_AIP));
+      Assert.assertTrue(firstRoundStarted.await(10, TimeUnit.SECONDS));
+
+      // all made while the first round is running
+      for (int i = 0; i < REQUESTS; i++) {
+        List<String> collections = i % 2 == 0 ? Arrays.asList(RodaConstants.INDEX_AIP, RodaConstants.INDEX_JOB)
+          : Collections.singletonList(RodaConstants.INDEX_AIP);
+        executor.execute(() -> {
+          try {
+            start.await();
+            requests.add(coordinator.requestCommit(collections));
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        });
+      }
+      start.countDown();
+      executor.shutdown();
+      Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+      Assert.assertEquals(requests.size(), REQUESTS);
+
+      releaseFirstRound.countDown();
+      first.get(10, TimeUnit.SECONDS);
+      CompletableFuture.allOf(requests.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+    } finally {
+      releaseFirstRound.countDown();
+      coordinator.shutdown();
+    }
+
+    // without coalescing there would be 76 commits; the requests are all served
+    // by the round after the first one, which commits each collection once
+    Assert.assertEquals(commits.get(), 3);
+    Assert.assertEquals(coordinator.getCommits(), 3);
+    Assert.assertEquals(committed,
+      Arrays.asList(RodaConstants.INDEX_AIP, RodaConstants.INDEX_AIP, RodaConstants.INDEX_JOB));
+  }
+
+  @Test
+  public void testRequestIsServedByRoundStartedAfterIt()
+    throws InterruptedException, ExecutionException, TimeoutException {
+    CountDownLatch firstRoundStarted = new CountDownLatch(1);
+    CountDownLatch releaseFirstRound = new CountDownLatch(1);
+    AtomicInteger commits = new AtomicInteger();
+    IndexCommitCoordinator coordinator = new IndexCommitCoordinator(collection -> {
+      if (commits.incrementAndGet() == 1) {
+        firstRoundStarted.countDown();
+        releaseFirstRound.await();
+      }
+    }, 0);
+
+    try {
+      CompletableFuture<Void> first = coordinator.requestCommit(Collections.singletonList(RodaConstants.INDEX_AIP));
+      Assert.assertTrue(firstRoundStarted.await(10, TimeUnit.SECONDS));
+
+      // made while the first round is running, so it needs another commit
+      CompletableFuture<Void> second = coordinator.requestCommit(Collections.singletonList(RodaConstants.INDEX_AIP));
+      Assert.assertFalse(second.isDone());
+
+      releaseFirstRound.countDown();
+      first.get(10, TimeUnit.SECONDS);
+      second.get(10, TimeUnit.SECONDS);
+      Assert.assertEquals(commits.get(), 2);
+    } finally {
+      coordinator.shutdown();
+    }
+  }
+
+  @Test
+  public void testFailedCommitFailsRequests() throws InterruptedException, TimeoutException {
+    IndexCommitCoordinator coordinator = new IndexCommitCoordinator(collection -> {
+      throw new IllegalStateException("Solr is down");
+    }, 0);
+
+    try {
+      coordinator.requestCommit(Collections.singletonList(RodaConstants.INDEX_AIP)).get(10, TimeUnit.SECONDS);
+      Assert.fail("Commit failure should have been propagated");
+    } catch (ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+    } finally {
+      coordinator.shutdown();
+    }
+  }
+}
@@ -24,6 +24,7 @@ import java.time.ZoneOffset;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.LinkedHashSet;
 import java.util.List;
 
 import org.apache.solr.client.solrj.SolrQuery.ORDER;
@@ -49,6 +50,8 @@ import org.roda.core.data.v2.index.filter.OneOfManyFilterParameter;
 import org.roda.core.data.v2.index.filter.SimpleFilterParameter;
 import org.roda.core.data.v2.index.sort.SortParameter;
 import org.roda.core.data.v2.index.sort.Sorter;
+import org.roda.core.data.v2.ip.IndexedAIP;
+import org.roda.core.data.v2.user.User;
 import org.roda.core.index.utils.SolrUtils;
 import org.roda.core.storage.Binary;
 import org.roda.core.storage.DefaultStoragePath;
@@ -306,6 +309,37 @@ public class SolrUtilsTest {
     assertThat(sortList.get(1).getOrder(), Matchers.equalTo(ORDER.asc));
   }
 
+  @Test
+  public void testFilterQueriesAreSplitAndCanonical() {
+    User user = new User("user1");
+    user.setGroups(new LinkedHashSet<>(Arrays.asList("groupB", "groupA", "groupC")));
+    User sameGroupsUser = new User("user1");
+    sameGroupsUser.setGroups(new LinkedHashSet<>(Arrays.asList("groupC", "groupA", "groupB", "groupA")));
+
+    List<String> filterQueries = SolrUtils.getFilterQueries(user, true, IndexedAIP.class);
+    assertThat(filterQueries, Matchers.hasSize(2));
+    assertEquals("filter((" + RodaConstants.INDEX_PERMISSION_USERS_PREFIX + "READ: \"user1\")) OR filter(("
+      + RodaConstants.INDEX_PERMISSION_GROUPS_PREFIX + "READ: \"groupA\")) OR filter(("
+      + RodaConstants.INDEX_PERMISSION_GROUPS_PREFIX + "READ: \"groupB\")) OR filter(("
+      + RodaConstants.INDEX_PERMISSION_GROUPS_PREFIX + "READ: \"groupC\"))", filterQueries.get(0));
+    assertEquals("(" + RodaConstants.INDEX_STATE + ": \"ACTIVE\")", filterQueries.get(1));
+    assertEquals(filterQueries, SolrUtils.getFilterQueries(sameGroupsUser, true, IndexedAIP.class));
+
+    assertEquals(filterQueries.subList(0, 1), SolrUtils.getFilterQueries(user, false, IndexedAIP.class));
+    assertTrue(SolrUtils.getFilterQueries(new User(RodaConstants.ADMIN), false, IndexedAIP.class).isEmpty());
+  }
+
+  @Test
+  public void testFilterQueriesOfUsersInManyGroupsAreNotCachedWhole() {
+    User user = new User("user1");
+    for (int i = 0; i < 100; i++) {
+      user.addGroup("group" + i);
+    }
+
+    String permissionFilterQuery = SolrUtils.getFilterQueries(user, false, IndexedAIP.class).get(0);
+    assertTrue(permissionFilterQuery.startsWith("{!cache=false}filter(("));
+  }
+
   @Test
   public void testDateParser() throws ParseException {
     String test1 = "2018-06-22T00:00:00Z";
@@ -0,0 +1,256 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.model;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.roda.core.common.ReturnWithExceptionsWrapper;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.ReturnWithExceptions;
+import org.roda.core.data.v2.ip.File;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_DEV, RodaConstants.TEST_GROUP_TRAVIS})
+public class ModelNotificationDispatcherTest {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ModelNotificationDispatcherTest.class);
+
+  private static final int PRODUCERS = 8;
+  private static final int AIPS_PER_PRODUCER = 4;
+  private static final int FILES_PER_AIP = 200;
+
+  /**
+   * Observer recording the id of each notified file, in delivery order.
+   */
+  private static class RecordingObserver {
+    private final List<File> notified = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger calls = new AtomicInteger();
+    private final CountDownLatch gate = new CountDownLatch(1);
+    private final String gatedAipId;
+    private final String failingAipId;
+    private final String throwingAipId;
+
+    /**
+     * @param gatedAipId
+     *          notifications about this AIP, or all if {@code *}, wait for
+     *          {@link #open()}
+     */
+    RecordingObserver(String gatedAipId, String failingAipId, String throwingAipId) {
+      this.gatedAipId = gatedAipId;
+      this.failingAipId = failingAipId;
+      this.throwingAipId = throwingAipId;
+    }
+
+    void open() {
+      gate.countDown();
+    }
+
+    @SuppressWarnings("unchecked")
+    ModelObserver create() {
+      return (ModelObserver) Proxy.newProxyInstance(ModelObserver.class.getClassLoader(),
+        new Class<?>[] {ModelObserver.class}, (proxy, method, args) -> {
+          ReturnWithExceptions<Void, ModelObserver> ret = new ReturnWithExceptions<>((ModelObserver) proxy);
+          List<File> files;
+          if ("filesCreated".equals(method.getName())) {
+            files = (List<File>) args[0];
+          } else if ("fileCreated".equals(method.getName()) || "fileUpdated".equals(method.getName())) {
+            files = Collections.singletonList((File) args[0]);
+          } else if ("hashCode".equals(method.getName())) {
+            return System.identityHashCode(proxy);
+          } else if ("equals".equals(method.getName())) {
+            return proxy == args[0];
+          } else if ("toString".equals(method.getName())) {
+            return "RecordingObserver";
+          } else {
+            return ret;
+          }
+
+          // e.g. one request to the index, whatever the number of files
+          calls.incrementAndGet();
+          String aipId = files.get(0).getAipId();
+          if ("*".equals(gatedAipId) || aipId.equals(gatedAipId)) {
+            gate.await();
+          }
+          if (aipId.equals(throwingAipId)) {
+            throw new IllegalStateException("Index unavailable");
+          }
+          for (File file : files) {
+            notified.add(file);
+            if (file.getAipId().equals(failingAipId)) {
+              ret.add(new GenericException("Could not index " + file.getId()));
+            }
+          }
+          return ret;
+        });
+    }
+  }
+
+  private static ModelObservable newObservable() {
+    return new ModelObservable(LOGGER) {
+    };
+  }
+
+  private static File file(String aipId, int sequence) {
+    return new File(String.valueOf(sequence), aipId, "rep", Collections.emptyList(), false);
+  }
+
+  private static void produce(ModelObservable observable, int producers, int aipsPerProducer, int filesPerAip)
+    throws InterruptedException {
+    ExecutorService executor = Executors.newFixedThreadPool(producers);
+    CountDownLatch start = new CountDownLatch(1);
+    for (int p = 0; p < producers; p++) {
+      final int producer = p;
+      executor.execute(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+        for (int i = 0; i < filesPerAip; i++) {
+          for (int a = 0; a < aipsPerProducer; a++) {
+            String aipId = "aip-" + producer + "-" + a;
+            if (i % 10 == 9) {
+              observable.notifyFileUpdated(file(aipId, i));
+            } else {
+              observable.notifyFileCreated(file(aipId, i));
+            }
+          }
+        }
+      });
+    }
+
+    start.countDown();
+    executor.shutdown();
+    Assert.assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testNotificationsOfEachObjectAreDeliveredInOrder() throws InterruptedException {
+    RecordingObserver recorder = new RecordingObserver(null, null, null);
+    ModelObservable observable = newObservable();
+    ModelNotificationDispatcher dispatcher = new ModelNotificationDispatcher(recorder.create(), 4, 50, 20);
+    observable.addModelObserver(dispatcher);
+
+    try {
+      produce(observable, PRODUCERS, AIPS_PER_PRODUCER, FILES_PER_AIP);
+      Assert.assertTrue(observable.flushModelObservers().hasNoExceptions());
+    } finally {
+      dispatcher.shutdown();
+    }
+
+    int total = PRODUCERS * AIPS_PER_PRODUCER * FILES_PER_AIP;
+    Assert.assertEquals(recorder.notified.size(), total);
+    Assert.assertEquals(dispatcher.getDelivered(), total);
+    Assert.assertEquals(dispatcher.getPending(), 0);
+
+    Map<String, Integer> lastByAip = new HashMap<>();
+    for (File file : recorder.notified) {
+      int sequence = Integer.parseInt(file.getId());
+      int last = lastByAip.getOrDefault(file.getAipId(), -1);
+      Assert.assertEquals(sequence, last + 1, "Notification out of order for " + file.getAipId());
+      lastByAip.put(file.getAipId(), sequence);
+    }
+    Assert.assertEquals(lastByAip.size(), PRODUCERS * AIPS_PER_PRODUCER);
+  }
+
+  @Test(timeOut = 60000)
+  public void testNotifyingDoesNotWaitForTheObserver() {
+    int files = 100;
+    RecordingObserver recorder = new RecordingObserver("*", null, null);
+    ModelObservable observable = newObservable();
+    ModelNotificationDispatcher dispatcher = new ModelNotificationDispatcher(recorder.create(), 1, files, files);
+    observable.addModelObserver(dispatcher);
+
+    try {
+      // returns while the observer is still blocked on the first notification
+      for (int i = 0; i < files; i++) {
+        observable.notifyFileCreated(file("aip", i));
+      }
+      Assert.assertTrue(recorder.notified.isEmpty());
+
+      recorder.open();
+      Assert.assertTrue(observable.flushModelObservers().hasNoExceptions());
+    } finally {
+      dispatcher.shutdown();
+    }
+
+    Assert.assertEquals(recorder.notified.size(), files);
+    // the files queued meanwhile are delivered together
+    Assert.assertTrue(recorder.calls.get() <= 2, recorder.calls.get() + " observer calls");
+  }
+
+  @Test(timeOut = 60000)
+  public void testWaitingForAKeyDoesNotWaitForOtherShards() {
+    RecordingObserver recorder = new RecordingObserver("aip-blocked", null, null);
+    ModelObservable observable = newObservable();
+    ModelNotificationDispatcher dispatcher = new ModelNotificationDispatcher(recorder.create(), 2, 10, 10);
+    observable.addModelObserver(dispatcher);
+
+    String other = "aip-0";
+    for (int i = 1; dispatcher.getShard(other) == dispatcher.getShard("aip-blocked"); i++) {
+      other = "aip-" + i;
+    }
+
+    try {
+      observable.notifyFileUpdated(file("aip-blocked", 0));
+      observable.notifyFileUpdated(file(other, 0));
+
+      observable.awaitModelObservers(other);
+      Assert.assertEquals(recorder.notified.size(), 1);
+      Assert.assertEquals(recorder.notified.get(0).getAipId(), other);
+
+      recorder.open();
+      observable.awaitModelObservers("aip-blocked");
+      Assert.assertEquals(recorder.notified.size(), 2);
+    } finally {
+      dispatcher.shutdown();
+    }
+  }
+
+  @Test
+  public void testFlushReturnsErrors() {
+    RecordingObserver recorder = new RecordingObserver(null, "aip-failing", "aip-throwing");
+    ModelObservable observable = newObservable();
+    ModelNotificationDispatcher dispatcher = new ModelNotificationDispatcher(recorder.create(), 2, 10, 10);
+    observable.addModelObserver(dispatcher);
+
+    try {
+      ReturnWithExceptionsWrapper notified = observable.notifyFileCreated(file("aip-failing", 0));
+      // errors are not known when notifying
+      Assert.assertTrue(notified.hasNoExceptions());
+      observable.notifyFileCreated(file("aip-throwing", 0));
+      observable.notifyFileCreated(file("aip-ok", 0));
+
+      // waiting does not take the errors, and each key only gets its own ones
+      observable.awaitModelObservers();
+      Assert.assertTrue(observable.flushModelObservers("aip-ok").hasNoExceptions());
+      Assert.assertFalse(observable.flushModelObservers("aip-throwing").hasNoExceptions());
+      Assert.assertEquals(recorder.notified.size(), 2);
+
+      Assert.assertFalse(observable.flushModelObservers().hasNoExceptions());
+      // errors are returned only once
+      Assert.assertTrue(observable.flushModelObservers().hasNoExceptions());
+    } finally {
+      dispatcher.shutdown();
+    }
+  }
+}
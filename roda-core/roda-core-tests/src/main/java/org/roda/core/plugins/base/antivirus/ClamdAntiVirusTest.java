@@ -0,0 +1,346 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.base.antivirus;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.apache.commons.lang3.StringUtils;
+import org.roda.core.TestsHelper;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.storage.fs.FSUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_DEV, RodaConstants.TEST_GROUP_TRAVIS})
+public class ClamdAntiVirusTest {
+
+  private static final String SIGNATURE = "EICAR-STANDARD-ANTIVIRUS-TEST-FILE";
+
+  private Path basePath;
+  private Path aip;
+  private FakeClamd clamd;
+  private ClamdAntiVirus antiVirus;
+
+  @BeforeMethod
+  public void setUp() throws IOException {
+    basePath = TestsHelper.createBaseTempDir(ClamdAntiVirusTest.class, false);
+    aip = Files.createDirectories(basePath.resolve("aip").resolve("representations").resolve("rep1"));
+    for (int i = 0; i < 50; i++) {
+      Files.write(aip.resolve("file" + i + ".txt"), ("clean content " + i).getBytes(StandardCharsets.UTF_8));
+    }
+    Files.write(aip.resolve("large.bin"), new byte[200 * 1024]);
+  }
+
+  @AfterMethod
+  public void cleanUp() throws IOException {
+    if (antiVirus != null) {
+      antiVirus.close();
+    }
+    if (clamd != null) {
+      clamd.close();
+    }
+    FSUtils.deletePathQuietly(basePath);
+  }
+
+  private void start(boolean unixSocket, int connections, long maxFileSize, boolean multiscan) throws IOException {
+    clamd = new FakeClamd(unixSocket ? basePath.resolve("clamd.ctl") : null, 1024 * 1024);
+    antiVirus = new ClamdAntiVirus(clamd.getAddress(), connections, maxFileSize, 10000, multiscan);
+  }
+
+  @Test
+  public void testCleanFilesOverTcp() throws IOException {
+    start(false, 4, 0, false);
+    VirusCheckResult result = antiVirus.checkForVirus(basePath.resolve("aip"));
+
+    Assert.assertTrue(result.isClean(), result.getReport());
+    Assert.assertTrue(result.getReport().contains("Scanned files: 51"), result.getReport());
+    Assert.assertEquals(clamd.scans.get(), 51);
+    // files are scanned in parallel over a few reused connections
+    Assert.assertTrue(clamd.connections.get() <= 4, "connections: " + clamd.connections.get());
+    Assert.assertTrue(clamd.maxConcurrentScans.get() > 1);
+  }
+
+  @Test
+  public void testInfectedFileOverUnixSocket() throws IOException {
+    start(true, 2, 0, false);
+    Files.write(aip.resolve("infected.txt"), ("X5O!P%@AP " + SIGNATURE).getBytes(StandardCharsets.UTF_8));
+    VirusCheckResult result = antiVirus.checkForVirus(basePath.resolve("aip"));
+
+    Assert.assertFalse(result.isClean());
+    Assert.assertTrue(result.getReport().contains("infected.txt: Eicar-Signature FOUND"), result.getReport());
+    Assert.assertTrue(result.getReport().contains("Infected files: 1"), result.getReport());
+  }
+
+  @Test
+  public void testFilesOverTheSizeLimitAreNotClean() throws IOException {
+    start(false, 2, 100 * 1024, false);
+    VirusCheckResult result = antiVirus.checkForVirus(basePath.resolve("aip"));
+
+    Assert.assertFalse(result.isClean());
+    Assert.assertTrue(result.getReport().contains("large.bin"), result.getReport());
+    Assert.assertEquals(clamd.scans.get(), 50);
+  }
+
+  @Test
+  public void testFilesOverTheClamdLimitAreNotClean() throws IOException {
+    start(false, 2, 0, false);
+    Files.write(aip.resolve("huge.bin"), new byte[3 * 1024 * 1024]);
+    VirusCheckResult result = antiVirus.checkForVirus(basePath.resolve("aip"));
+
+    Assert.assertFalse(result.isClean());
+    Assert.assertTrue(result.getReport().contains("huge.bin: INSTREAM size limit exceeded. ERROR"),
+      result.getReport());
+
+    // connection that got the error is not reused
+    Files.delete(aip.resolve("huge.bin"));
+    Assert.assertTrue(antiVirus.checkForVirus(basePath.resolve("aip")).isClean());
+  }
+
+  @Test
+  public void testMultiscan() throws IOException {
+    start(false, 1, 0, true);
+    Files.write(aip.resolve("infected.txt"), SIGNATURE.getBytes(StandardCharsets.UTF_8));
+    VirusCheckResult result = antiVirus.checkForVirus(basePath.resolve("aip"));
+
+    Assert.assertFalse(result.isClean());
+    Assert.assertTrue(result.getReport().contains("infected.txt: Eicar-Signature FOUND"), result.getReport());
+    Assert.assertTrue(result.getReport().contains("Scanned files: 52"), result.getReport());
+  }
+
+  private void streamFiles(String jobId) throws IOException {
+    // the content is given to clamd while it is read for something else
+    try (Stream<Path> files = Files.walk(aip)) {
+      for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+        byte[] content = Files.readAllBytes(file);
+        ClamdAntiVirus.StreamScan scan = antiVirus.startStreamScan(jobId, file, content.length);
+        scan.write(content, 0, content.length);
+        scan.end();
+      }
+    }
+  }
+
+  @Test
+  public void testStreamedVerdictsAreUsedByTheNextCheck() throws IOException {
+    start(false, 2, 0, false);
+    Files.write(aip.resolve("infected.txt"), ("X5O!P%@AP " + SIGNATURE).getBytes(StandardCharsets.UTF_8));
+
+    streamFiles("job1");
+    Assert.assertEquals(clamd.scans.get(), 52);
+
+    VirusCheckResult result = antiVirus.checkForVirus(basePath.resolve("aip"), "job1");
+    Assert.assertFalse(result.isClean());
+    Assert.assertTrue(result.getReport().contains("infected.txt: Eicar-Signature FOUND"), result.getReport());
+    Assert.assertTrue(result.getReport().contains("Scanned files: 52"), result.getReport());
+    Assert.assertEquals(clamd.scans.get(), 52);
+
+    // verdicts are used only once
+    antiVirus.checkForVirus(basePath.resolve("aip"), "job1");
+    Assert.assertEquals(clamd.scans.get(), 104);
+  }
+
+  @Test
+  public void testStreamedVerdictsAreNotUsedForOtherJobsOrChangedFiles() throws IOException {
+    start(false, 2, 0, false);
+    Path file = aip.resolve("replaced.txt");
+    Files.write(file, StringUtils.repeat('x', SIGNATURE.length()).getBytes(StandardCharsets.UTF_8));
+    streamFiles("job1");
+    Assert.assertEquals(clamd.scans.get(), 52);
+
+    // replaced by content of the same size after the clean verdict
+    FileTime streamedAt = Files.getLastModifiedTime(file);
+    Files.write(file, SIGNATURE.getBytes(StandardCharsets.UTF_8));
+    Files.setLastModifiedTime(file, FileTime.fromMillis(streamedAt.toMillis() + 1000));
+
+    VirusCheckResult result = antiVirus.checkForVirus(basePath.resolve("aip"), "job1");
+    Assert.assertFalse(result.isClean());
+    Assert.assertTrue(result.getReport().contains("replaced.txt: Eicar-Signature FOUND"), result.getReport());
+    Assert.assertEquals(clamd.scans.get(), 53);
+
+    // verdicts of a job are not used by another one, nor after the job ended
+    streamFiles("job2");
+    antiVirus.checkForVirus(basePath.resolve("aip"), "job3");
+    Assert.assertEquals(clamd.scans.get(), 53 + 52 + 52);
+    ClamdAntiVirus.clearStreamedVerdicts("job2");
+    antiVirus.checkForVirus(basePath.resolve("aip"), "job2");
+    Assert.assertEquals(clamd.scans.get(), 53 + 52 + 52 + 52);
+  }
+
+  @Test
+  public void testVersion() throws IOException {
+    start(false, 1, 0, false);
+    Assert.assertEquals(antiVirus.getVersion(), FakeClamd.VERSION);
+  }
+
+  @Test
+  public void testUnreachableClamdFails() throws IOException {
+    start(false, 1, 0, false);
+    clamd.close();
+    Assert.assertThrows(RuntimeException.class, () -> antiVirus.checkForVirus(basePath.resolve("aip")));
+  }
+
+  /**
+   * Speaks the subset of the clamd protocol used by {@link ClamdAntiVirus},
+   * reporting files that contain the EICAR test string as infected.
+   */
+  private static class FakeClamd implements AutoCloseable {
+    static final String VERSION = "ClamAV 1.0.0/27000/Mon Jan 1 00:00:00 2024";
+
+    final AtomicInteger connections = new AtomicInteger();
+    final AtomicInteger scans = new AtomicInteger();
+    final AtomicInteger maxConcurrentScans = new AtomicInteger();
+    private final AtomicInteger concurrentScans = new AtomicInteger();
+    private final ServerSocketChannel server;
+    private final SocketAddress address;
+    private final long streamMaxLength;
+
+    FakeClamd(Path unixSocket, long streamMaxLength) throws IOException {
+      this.streamMaxLength = streamMaxLength;
+      if (unixSocket != null) {
+        server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(unixSocket));
+      } else {
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+      }
+      address = server.getLocalAddress();
+
+      Thread acceptor = new Thread(() -> {
+        while (server.isOpen()) {
+          try {
+            SocketChannel client = server.accept();
+            connections.incrementAndGet();
+            Thread handler = new Thread(() -> handle(client), "fake-clamd-client");
+            handler.setDaemon(true);
+            handler.start();
+          } catch (IOException e) {
+            // closed
+          }
+        }
+      }, "fake-clamd");
+      acceptor.setDaemon(true);
+      acceptor.start();
+    }
+
+    SocketAddress getAddress() {
+      return address;
+    }
+
+    private void handle(SocketChannel client) {
+      try (SocketChannel channel = client;
+        DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+        OutputStream out = Channels.newOutputStream(channel)) {
+        boolean session = false;
+        int id = 0;
+        String command;
+        while ((command = readCommand(in)) != null) {
+          String prefix = session ? ++id + ": " : "";
+          if ("zIDSESSION".equals(command)) {
+            session = true;
+          } else if ("zEND".equals(command)) {
+            return;
+          } else if ("zVERSION".equals(command)) {
+            reply(out, prefix + VERSION);
+          } else if ("zINSTREAM".equals(command)) {
+            String verdict = instream(in);
+            reply(out, prefix + verdict);
+            if (verdict.endsWith("ERROR")) {
+              return;
+            }
+          } else if (command.startsWith("zMULTISCAN ")) {
+            try (Stream<Path> files = Files.walk(Path.of(command.substring(11)))) {
+              for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                reply(out, file + ": " + verdict(Files.readAllBytes(file)));
+              }
+            }
+            return;
+          } else {
+            reply(out, prefix + "UNKNOWN COMMAND");
+          }
+          if (!session) {
+            return;
+          }
+        }
+      } catch (IOException e) {
+        // client went away
+      }
+    }
+
+    private String instream(DataInputStream in) throws IOException {
+      int running = concurrentScans.incrementAndGet();
+      maxConcurrentScans.accumulateAndGet(running, Math::max);
+      try {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        boolean exceeded = false;
+        int length;
+        while ((length = in.readInt()) > 0) {
+          byte[] chunk = new byte[length];
+          in.readFully(chunk);
+          exceeded |= content.size() + length > streamMaxLength;
+          if (!exceeded) {
+            content.write(chunk);
+          }
+        }
+        if (exceeded) {
+          return "INSTREAM size limit exceeded. ERROR";
+        }
+        // gives the other scanners a chance to overlap
+        Thread.sleep(5);
+        scans.incrementAndGet();
+        return "stream: " + verdict(content.toByteArray());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException(e);
+      } finally {
+        concurrentScans.decrementAndGet();
+      }
+    }
+
+    private static String verdict(byte[] content) {
+      return new String(content, StandardCharsets.ISO_8859_1).contains(SIGNATURE) ? "Eicar-Signature FOUND" : "OK";
+    }
+
+    private static String readCommand(InputStream in) throws IOException {
+      ByteArrayOutputStream command = new ByteArrayOutputStream();
+      int b;
+      while ((b = in.read()) > 0) {
+        command.write(b);
+      }
+      return b < 0 && command.size() == 0 ? null : command.toString(StandardCharsets.UTF_8);
+    }
+
+    private static void reply(OutputStream out, String reply) throws IOException {
+      out.write((reply + '\0').getBytes(StandardCharsets.UTF_8));
+      out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      server.close();
+    }
+  }
+}
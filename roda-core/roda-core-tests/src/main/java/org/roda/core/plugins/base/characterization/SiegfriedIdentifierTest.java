@@ -0,0 +1,129 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.base.characterization;
+
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.roda.core.TestsHelper;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.plugins.PluginException;
+import org.roda.core.storage.fs.FSUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_DEV, RodaConstants.TEST_GROUP_TRAVIS})
+public class SiegfriedIdentifierTest {
+
+  // stub of sf answering every path with the same match and counting its runs;
+  // like sf, it takes the paths as arguments or, with -f, from a file listing
+  // one path per line
+  private static final String STUB = "#!/bin/sh\n" + "echo run >> '%s'\n" + "first=1\n" + "status=0\n" + "emit() {\n"
+    + "  [ $first -eq 1 ] || printf ','\n" + "  first=0\n"
+    + "  case \"$1\" in *fail*) status=3;; esac\n"
+    + "  printf '{\"filename\":\"%%s\",\"filesize\":1,\"errors\":\"\",\"matches\":[{\"ns\":\"pronom\","
+    + "\"id\":\"x-fmt/111\",\"format\":\"Plain Text File\",\"version\":\"\",\"mime\":\"text/plain\"}]}' \"$1\"\n"
+    + "}\n" + "printf '{\"siegfried\":\"1.11.0\",\"identifiers\":[{\"name\":\"pronom\"}],\"files\":['\n"
+    + "while [ $# -gt 0 ]; do\n" + "  case \"$1\" in\n"
+    + "    -f) shift; while IFS= read -r path; do emit \"$path\"; done < \"$1\";;\n"
+    + "    -*=*) ;;\n" + "    -) echo 'stdin is identified as a single stream' >&2; exit 1;;\n"
+    + "    *) emit \"$1\";;\n" + "  esac\n" + "  shift\n" + "done\n" + "printf ']}\\n'\n" + "exit $status\n";
+
+  private Path basePath;
+  private Path runs;
+  private SiegfriedIdentifier identifier;
+
+  @BeforeMethod
+  public void setUp() throws IOException {
+    basePath = TestsHelper.createBaseTempDir(SiegfriedIdentifierTest.class, false);
+    runs = basePath.resolve("runs");
+    Path stub = basePath.resolve("sf");
+    Files.write(stub, String.format(STUB, runs).getBytes(StandardCharsets.UTF_8));
+    Files.setPosixFilePermissions(stub, PosixFilePermissions.fromString("rwx------"));
+    identifier = new SiegfriedIdentifier(false, stub.toString(), null);
+  }
+
+  @AfterMethod
+  public void cleanUp() {
+    FSUtils.deletePathQuietly(basePath);
+  }
+
+  @Test
+  public void testManyFilesAreIdentifiedByOneProcess() throws RODAException, IOException {
+    List<Path> paths = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      paths.add(basePath.resolve("file " + i + ".txt"));
+    }
+
+    List<String> identified = new ArrayList<>();
+    identifier.identify(paths, file -> {
+      Assert.assertEquals(file.get("matches").get(0).get("id").textValue(), "x-fmt/111");
+      identified.add(file.get("filename").textValue());
+    });
+
+    Assert.assertEquals(identified.size(), paths.size());
+    for (int i = 0; i < paths.size(); i++) {
+      Assert.assertEquals(identified.get(i), paths.get(i).toAbsolutePath().toString());
+    }
+    Assert.assertEquals(Files.readAllLines(runs).size(), 1);
+  }
+
+  @Test
+  public void testProcessErrorsAreReported() {
+    Assert.assertThrows(PluginException.class,
+      () -> identifier.identify(Collections.singletonList(basePath.resolve("fail.txt")), file -> {
+      }));
+  }
+
+  @Test
+  public void testFilesAreHandledWhileOutputIsBeingRead() throws Exception {
+    PipedOutputStream output = new PipedOutputStream();
+    PipedInputStream input = new PipedInputStream(output);
+    CountDownLatch firstHandled = new CountDownLatch(1);
+    List<String> handled = Collections.synchronizedList(new ArrayList<>());
+    AtomicBoolean handledBeforeEnd = new AtomicBoolean(false);
+
+    Thread writer = new Thread(() -> {
+      try {
+        output.write("{\"siegfried\":\"1.11.0\",\"files\":[{\"filename\":\"a\",\"matches\":[]}"
+          .getBytes(StandardCharsets.UTF_8));
+        output.flush();
+        // the rest of the output is only written after the first file is handled
+        handledBeforeEnd.set(firstHandled.await(10, TimeUnit.SECONDS));
+        output.write(",{\"filename\":\"b\",\"matches\":[]}]}".getBytes(StandardCharsets.UTF_8));
+        output.close();
+      } catch (IOException | InterruptedException e) {
+        // parsing fails as the output is incomplete
+      }
+    });
+    writer.start();
+
+    SiegfriedIdentifier.parseFiles(input, file -> {
+      handled.add(file.get("filename").textValue());
+      firstHandled.countDown();
+    });
+    writer.join();
+
+    Assert.assertTrue(handledBeforeEnd.get());
+    Assert.assertEquals(handled, List.of("a", "b"));
+  }
+}
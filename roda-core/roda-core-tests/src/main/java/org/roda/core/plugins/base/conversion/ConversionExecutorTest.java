@@ -0,0 +1,131 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.base.conversion;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.roda.core.TestsHelper;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.storage.fs.FSUtils;
+import org.roda.core.util.CommandException;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_DEV, RodaConstants.TEST_GROUP_TRAVIS})
+public class ConversionExecutorTest {
+  private static final String TOOL = "cpconvert";
+
+  // converter that copies its input, failing on inputs named fail*
+  private static final String CONVERTER = "#!/bin/sh\n" + "sleep 0.1\n" + "case \"$(basename \"$1\")\" in\n"
+    + "  fail*) echo \"cannot convert $1\"; exit 3;;\n" + "esac\n" + "cp \"$1\" \"$2\"\n";
+
+  // converter that leaves a sub-process behind and never ends
+  private static final String HANGING_CONVERTER = "#!/bin/sh\n" + "sleep 600 &\n" + "echo $! > \"$2\"\n"
+    + "wait\n";
+
+  private Path basePath;
+  private ConversionExecutor executor;
+
+  @BeforeMethod
+  public void setUp() throws IOException {
+    basePath = TestsHelper.createBaseTempDir(ConversionExecutorTest.class, false);
+    executor = new ConversionExecutor(4);
+    executor.setToolLimit(TOOL, 3);
+    executor.setToolTimeout(TOOL, 30);
+  }
+
+  @AfterMethod
+  public void cleanUp() {
+    executor.shutdown();
+    FSUtils.deletePathQuietly(basePath);
+  }
+
+  private Path script(String name, String content) throws IOException {
+    Path script = basePath.resolve(name);
+    Files.write(script, content.getBytes(StandardCharsets.UTF_8));
+    Files.setPosixFilePermissions(script, PosixFilePermissions.fromString("rwx------"));
+    return script;
+  }
+
+  @Test
+  public void testFilesAreConvertedConcurrentlyAndReturnedInOrder() throws IOException {
+    Path converter = script("convert.sh", CONVERTER);
+    Path spoolParent = basePath.resolve("spool");
+    List<Path> inputs = new ArrayList<>();
+    List<ConversionExecutor.Conversion> conversions = new ArrayList<>();
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+
+    for (int i = 0; i < 20; i++) {
+      Path input = basePath.resolve((i == 7 ? "fail" : "file") + i + ".txt");
+      Files.write(input, ("content " + i).getBytes(StandardCharsets.UTF_8));
+      inputs.add(input);
+      conversions.add(output -> {
+        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+        try {
+          return executor.execute(TOOL, List.of(converter.toString(), input.toString(), output.toString()));
+        } finally {
+          running.decrementAndGet();
+        }
+      });
+    }
+
+    List<Path> converted = new ArrayList<>();
+    try (ConversionExecutor.Conversions<Path> conversionResults = executor.convert(TOOL, spoolParent, "txt", inputs,
+      conversions)) {
+      for (ConversionExecutor.Result<Path> result : conversionResults) {
+        converted.add(result.getKey());
+        if (result.getKey().getFileName().toString().startsWith("fail")) {
+          Assert.assertTrue(result.getError() instanceof CommandException);
+          Assert.assertEquals(((CommandException) result.getError()).getExitCode(), 3);
+          Assert.assertNull(result.getOutput());
+        } else {
+          Assert.assertNull(result.getError());
+          Assert.assertEquals(Files.readAllBytes(result.getOutput()), Files.readAllBytes(result.getKey()));
+        }
+      }
+    }
+
+    Assert.assertEquals(converted, inputs);
+    Assert.assertTrue(maxRunning.get() > 1, "conversions did not run concurrently");
+    Assert.assertTrue(maxRunning.get() <= 3, "tool limit exceeded: " + maxRunning.get());
+    try (var spools = Files.list(spoolParent)) {
+      Assert.assertEquals(spools.count(), 0L);
+    }
+  }
+
+  @Test
+  public void testTimeoutKillsTheProcessTree() throws IOException, InterruptedException {
+    Path converter = script("hang.sh", HANGING_CONVERTER);
+    Path pidFile = basePath.resolve("pid");
+    executor.setToolTimeout(TOOL, 1);
+
+    long start = System.nanoTime();
+    Assert.assertThrows(CommandException.class,
+      () -> executor.execute(TOOL, List.of(converter.toString(), "input", pidFile.toString())));
+    Assert.assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 20);
+
+    long pid = Long.parseLong(new String(Files.readAllBytes(pidFile), StandardCharsets.UTF_8).trim());
+    Optional<ProcessHandle> child = ProcessHandle.of(pid);
+    for (int i = 0; i < 50 && child.isPresent() && child.get().isAlive(); i++) {
+      Thread.sleep(100);
+    }
+    Assert.assertFalse(child.isPresent() && child.get().isAlive(), "sub-process of the converter still running");
+  }
+}
@@ -0,0 +1,208 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.base.ingest.v2.steps;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.roda.core.TestsHelper;
+import org.roda.core.common.FixityCache;
+import org.roda.core.common.PremisV3Utils;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.v2.ip.StoragePath;
+import org.roda.core.data.v2.ip.metadata.Fixity;
+import org.roda.core.storage.Binary;
+import org.roda.core.storage.DefaultBinary;
+import org.roda.core.storage.DefaultStoragePath;
+import org.roda.core.storage.InputStreamContentPayload;
+import org.roda.core.storage.fs.FSUtils;
+import org.roda.core.storage.fs.FileStorageService;
+import org.roda.core.util.FileUtility;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_DEV, RodaConstants.TEST_GROUP_TRAVIS})
+public class SinglePassContentReaderTest {
+  private static final List<String> ALGORITHMS = Arrays.asList("MD5", "SHA-1", "SHA-256");
+  private static final int[] SIZES = {0, 100, 1048576, 3 * 1048576 + 7};
+
+  private Path basePath;
+  private FileStorageService storage;
+  private final List<StoragePath> files = new ArrayList<>();
+  private final Map<StoragePath, byte[]> contents = new HashMap<>();
+  private final AtomicLong bytesRead = new AtomicLong();
+  private long totalSize;
+
+  @BeforeMethod
+  public void setUp() throws IOException, RODAException {
+    basePath = TestsHelper.createBaseTempDir(SinglePassContentReaderTest.class, false);
+    storage = new FileStorageService(basePath.resolve("storage"));
+    storage.createContainer(DefaultStoragePath.parse("aip"));
+    FixityCache.clear();
+
+    Random random = new Random(1);
+    for (int i = 0; i < SIZES.length; i++) {
+      byte[] content = new byte[SIZES[i]];
+      random.nextBytes(content);
+      StoragePath path = DefaultStoragePath.parse("aip", "representations", "rep1", "data", "file" + i);
+      storage.createBinary(path, new InputStreamContentPayload(() -> new ByteArrayInputStream(content)), false);
+      files.add(path);
+      contents.put(path, content);
+      totalSize += content.length;
+    }
+  }
+
+  @AfterMethod
+  public void cleanUp() {
+    FixityCache.clear();
+    FSUtils.deletePathQuietly(basePath);
+  }
+
+  /**
+   * @return the binary, counting the bytes read from its content
+   */
+  private Binary getBinary(StoragePath path) throws RODAException {
+    Binary binary = storage.getBinary(path);
+    InputStreamContentPayload content = new InputStreamContentPayload(
+      () -> new FilterInputStream(binary.getContent().createInputStream()) {
+        @Override
+        public int read() throws IOException {
+          int b = super.read();
+          if (b != -1) {
+            bytesRead.incrementAndGet();
+          }
+          return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+          int read = super.read(b, off, len);
+          if (read > 0) {
+            bytesRead.addAndGet(read);
+          }
+          return read;
+        }
+      });
+    return new DefaultBinary(path, content, binary.getSizeInBytes(), binary.isReference(),
+      binary.getContentDigest());
+  }
+
+  /**
+   * Does what the PREMIS skeleton step does with the content of each file.
+   */
+  private void createFixities() throws RODAException, IOException, NoSuchAlgorithmException {
+    for (StoragePath path : files) {
+      Map<String, String> expected = FileUtility.checksums(new ByteArrayInputStream(contents.get(path)), ALGORITHMS);
+      for (Fixity fixity : PremisV3Utils.calculateFixities(getBinary(path), ALGORITHMS, "test")) {
+        Assert.assertEquals(fixity.getMessageDigest(), expected.get(fixity.getMessageDigestAlgorithm()));
+      }
+    }
+  }
+
+  @Test
+  public void testEachFileIsReadOnceForAllSteps() throws RODAException, IOException, NoSuchAlgorithmException {
+    List<Long> otherStepBytes = new ArrayList<>();
+    IngestContentConsumer otherStep = new IngestContentConsumer() {
+      private long size;
+
+      @Override
+      public boolean start(Binary binary) {
+        size = 0;
+        return true;
+      }
+
+      @Override
+      public void update(byte[] buffer, int offset, int length) {
+        size += length;
+      }
+
+      @Override
+      public void end() {
+        otherStepBytes.add(size);
+      }
+
+      @Override
+      public void abort() {
+        // do nothing
+      }
+    };
+
+    SinglePassContentReader reader = new SinglePassContentReader(
+      Arrays.asList(new FixityContentConsumer(ALGORITHMS), otherStep));
+    for (StoragePath path : files) {
+      reader.read(getBinary(path));
+    }
+    createFixities();
+
+    Assert.assertEquals(bytesRead.get(), totalSize);
+    Assert.assertEquals(otherStepBytes.stream().mapToLong(Long::longValue).sum(), totalSize);
+  }
+
+  @Test
+  public void testStepsReadTheFilesWithoutSinglePass() throws RODAException, IOException, NoSuchAlgorithmException {
+    // reading for one step, and then computing the fixity, reads every file twice
+    SinglePassContentReader reader = new SinglePassContentReader(Arrays.asList(new IngestContentConsumer() {
+      @Override
+      public boolean start(Binary binary) {
+        return true;
+      }
+
+      @Override
+      public void update(byte[] buffer, int offset, int length) {
+        // do nothing
+      }
+
+      @Override
+      public void end() {
+        // do nothing
+      }
+
+      @Override
+      public void abort() {
+        // do nothing
+      }
+    }));
+    for (StoragePath path : files) {
+      reader.read(getBinary(path));
+    }
+    createFixities();
+
+    Assert.assertEquals(bytesRead.get(), 2 * totalSize);
+  }
+
+  @Test
+  public void testFilesWithKnownFixityAreNotRead() throws RODAException, IOException, NoSuchAlgorithmException {
+    for (StoragePath path : files) {
+      FixityCache.put(path, contents.get(path).length,
+        FileUtility.checksums(new ByteArrayInputStream(contents.get(path)), ALGORITHMS));
+    }
+
+    SinglePassContentReader reader = new SinglePassContentReader(
+      Arrays.asList(new FixityContentConsumer(ALGORITHMS)));
+    for (StoragePath path : files) {
+      Assert.assertEquals(reader.read(getBinary(path)), 0L);
+    }
+    createFixities();
+
+    Assert.assertEquals(bytesRead.get(), 0L);
+  }
+}
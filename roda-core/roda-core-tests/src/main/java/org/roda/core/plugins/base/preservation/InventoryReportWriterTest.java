@@ -0,0 +1,127 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.base.preservation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import org.roda.core.TestsHelper;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.storage.fs.FSUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_DEV, RodaConstants.TEST_GROUP_TRAVIS})
+public class InventoryReportWriterTest {
+  private static final List<String> HEADER = List.of("aipId", "fileId");
+
+  private Path basePath;
+  private Path output;
+
+  @BeforeMethod
+  public void setUp() throws IOException {
+    basePath = TestsHelper.createBaseTempDir(InventoryReportWriterTest.class, false);
+    output = basePath.resolve("report.csv.gz");
+  }
+
+  @AfterMethod
+  public void cleanUp() {
+    FSUtils.deletePathQuietly(basePath);
+  }
+
+  private static List<List<String>> records(String aipId, int count) {
+    List<List<String>> records = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      records.add(List.of(aipId, "file" + i));
+    }
+    return records;
+  }
+
+  private List<String> readReport() throws IOException {
+    try (BufferedReader reader = new BufferedReader(
+      new InputStreamReader(new GZIPInputStream(Files.newInputStream(output)), StandardCharsets.UTF_8))) {
+      return reader.lines().collect(Collectors.toList());
+    }
+  }
+
+  @Test
+  public void testReportIsResumedFromTheLastCheckpoint() throws IOException {
+    InventoryReportWriter writer = new InventoryReportWriter(output, "node1", true);
+    writer.write("aip1", records("aip1", 2));
+    writer.write("aip2", records("aip2", 2));
+    writer.close();
+
+    // a job that stops without a checkpoint, after writing a lot
+    InventoryReportWriter stopped = new InventoryReportWriter(output, "node1", true);
+    Assert.assertTrue(stopped.isWritten("aip1"));
+    stopped.write("aip3", records("aip3", 200_000));
+
+    InventoryReportWriter resumed = new InventoryReportWriter(output, "node1", true);
+    Assert.assertTrue(resumed.isWritten("aip1"));
+    Assert.assertTrue(resumed.isWritten("aip2"));
+    Assert.assertFalse(resumed.isWritten("aip3"));
+    resumed.write("aip3", records("aip3", 1));
+    resumed.close();
+
+    Assert.assertEquals(InventoryReportWriter.finish(output, HEADER, true), output);
+    Assert.assertEquals(readReport(),
+      List.of("aipId,fileId", "aip1,file0", "aip1,file1", "aip2,file0", "aip2,file1", "aip3,file0"));
+    try (var files = Files.list(basePath)) {
+      Assert.assertEquals(files.collect(Collectors.toList()), List.of(output));
+    }
+  }
+
+  @Test
+  public void testPartsOfEachNodeAreMerged() throws IOException {
+    InventoryReportWriter node1 = new InventoryReportWriter(output, "node1", true);
+    node1.write("aip1", records("aip1", 1));
+    node1.close();
+
+    // nodes do not write to the same file, and skip the AIPs of the others
+    InventoryReportWriter node2 = new InventoryReportWriter(output, "node2", true);
+    Assert.assertTrue(node2.isWritten("aip1"));
+    node2.write("aip2", records("aip2", 1));
+    node2.close();
+
+    InventoryReportWriter.finish(output, HEADER, true);
+    Assert.assertEquals(readReport(), List.of("aipId,fileId", "aip1,file0", "aip2,file0"));
+  }
+
+  @Test
+  public void testWritersAreClosedWhenReleasedByAllWorkers() throws IOException {
+    Path uncompressed = basePath.resolve("report.csv");
+    InventoryReportWriter writer = InventoryReportWriter.acquire("job1", uncompressed, false);
+    Assert.assertSame(InventoryReportWriter.acquire("job1", uncompressed, false), writer);
+    writer.write("aip1", records("aip1", 1));
+    InventoryReportWriter.release("job1");
+
+    // still used by the other worker
+    writer.write("aip2", records("aip2", 1));
+    InventoryReportWriter.release("job1");
+
+    // e.g. the next block of the job, or the same job after failing
+    InventoryReportWriter reopened = InventoryReportWriter.acquire("job1", uncompressed, false);
+    Assert.assertNotSame(reopened, writer);
+    Assert.assertTrue(reopened.isWritten("aip2"));
+    InventoryReportWriter.release("job1");
+
+    InventoryReportWriter.finish(uncompressed, HEADER, false);
+    Assert.assertEquals(Files.readAllLines(uncompressed, StandardCharsets.UTF_8),
+      List.of("aipId,fileId", "aip1,file0", "aip2,file0"));
+  }
+}
@@ -0,0 +1,294 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.orchestrate;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.pekko.actor.ActorRef;
+import org.apache.pekko.actor.ActorSystem;
+import org.apache.pekko.actor.Props;
+import org.apache.pekko.testkit.javadsl.TestKit;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.util.NamedList;
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.TestsHelper;
+import org.roda.core.common.pekko.Messages;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.common.RodaConstants.NodeType;
+import org.roda.core.data.exceptions.AuthorizationDeniedException;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.exceptions.RequestNotValidException;
+import org.roda.core.data.v2.ip.StoragePath;
+import org.roda.core.data.v2.jobs.Job;
+import org.roda.core.data.v2.jobs.Job.JOB_STATE;
+import org.roda.core.data.v2.jobs.JobStats;
+import org.roda.core.index.IndexModelObserver;
+import org.roda.core.index.IndexTestUtils;
+import org.roda.core.model.ModelService;
+import org.roda.core.plugins.PluginHelper;
+import org.roda.core.plugins.base.DummyPlugin;
+import org.roda.core.plugins.orchestrate.pekko.PekkoJobStateInfoActor;
+import org.roda.core.storage.Binary;
+import org.roda.core.storage.ContentPayload;
+import org.roda.core.storage.StorageService;
+import org.roda.core.storage.StorageServiceWrapper;
+import org.roda.core.storage.fs.FSUtils;
+import org.roda.core.storage.fs.FileStorageService;
+import org.roda.core.util.IdUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Job progress written through {@link JobsHelper}, counting the job JSON writes
+ * that reach storage and the job documents sent to the index.
+ */
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_DEV, RodaConstants.TEST_GROUP_TRAVIS})
+public class JobProgressPersisterTest {
+  private static final int ITEMS = 100000;
+  private static final int MAX_PENDING_UPDATES = 1000;
+  private static final long MAX_DELAY = 2000;
+  private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+  private Path basePath;
+  private CountingStorageService storage;
+  private CountingSolrClient index;
+  private ModelService model;
+
+  private final AtomicLong clock = new AtomicLong();
+  private DummyPlugin plugin;
+
+  @BeforeClass
+  public void setUp() throws IOException, RODAException {
+    basePath = TestsHelper.createBaseTempDir(JobProgressPersisterTest.class, true);
+    RodaCoreFactory.instantiateTest(true, false, false, false, false, false, false);
+
+    storage = new CountingStorageService(new FileStorageService(basePath.resolve("storage")),
+      RodaCoreFactory.getNodeType());
+    index = new CountingSolrClient();
+    model = new ModelService(storage, RodaCoreFactory.getEventsManager(), RodaCoreFactory.getNodeType(), "");
+    model.addModelObserver(new IndexModelObserver(index, model));
+  }
+
+  @AfterClass
+  public void cleanUp() {
+    IndexTestUtils.resetIndex();
+    RodaCoreFactory.shutdown();
+    FSUtils.deletePathQuietly(basePath);
+  }
+
+  @BeforeMethod
+  public void createJob() throws RODAException {
+    Job job = new Job();
+    job.setId(IdUtils.createUUID());
+    job.setName(job.getId());
+    model.createOrUpdateJob(job);
+
+    Map<String, String> parameters = new HashMap<>();
+    parameters.put(RodaConstants.PLUGIN_PARAMS_JOB_ID, job.getId());
+    plugin = new DummyPlugin();
+    plugin.setParameterValues(parameters);
+
+    clock.set(0);
+    storage.jobWrites.set(0);
+    index.jobAdds.set(0);
+  }
+
+  private JobProgressPersister newPersister() {
+    return new JobProgressPersister((p, info) -> JobsHelper.updateJobInformation(p, model, info), MAX_PENDING_UPDATES,
+      MAX_DELAY, clock::get);
+  }
+
+  private JobStats writtenJobStats() throws RODAException {
+    return PluginHelper.getJob(plugin, model).getJobStats();
+  }
+
+  private void assertEveryWriteIsIndexed() {
+    Assert.assertEquals(index.jobAdds.get(), storage.jobWrites.get());
+  }
+
+  private static JobPluginInfo info(int success, int failure) {
+    SimpleJobPluginInfo info = new SimpleJobPluginInfo();
+    info.setSourceObjectsCount(ITEMS);
+    info.setSourceObjectsProcessedWithSuccess(success);
+    info.setSourceObjectsProcessedWithFailure(failure);
+    info.setCompletionPercentage((success + failure) * 100 / ITEMS);
+    return info;
+  }
+
+  private long runJob(JobProgressPersister persister, long millisPerItem, int failedItem) {
+    int failures = 0;
+    persister.update(plugin, info(0, 0));
+    for (int i = 1; i <= ITEMS; i++) {
+      clock.addAndGet(millisPerItem);
+      if (i == failedItem) {
+        failures++;
+      }
+      persister.update(plugin, info(i - failures, failures));
+    }
+    persister.flush();
+    return clock.get();
+  }
+
+  @Test
+  public void testFastJobIsBoundedByPendingUpdates() throws RODAException {
+    JobProgressPersister persister = newPersister();
+    long elapsed = runJob(persister, 1, 50000);
+
+    // first update, failure, completion and one every N updates
+    long bound = ITEMS / MAX_PENDING_UPDATES + elapsed / MAX_DELAY + 3;
+    Assert.assertTrue(storage.jobWrites.get() <= bound, storage.jobWrites.get() + " writes > " + bound);
+    Assert.assertEquals(writtenJobStats().getSourceObjectsProcessedWithSuccess(), ITEMS - 1);
+    Assert.assertEquals(writtenJobStats().getSourceObjectsProcessedWithFailure(), 1);
+    Assert.assertFalse(persister.hasPendingUpdates());
+    assertEveryWriteIsIndexed();
+  }
+
+  @Test
+  public void testSlowJobIsBoundedByDelay() throws RODAException {
+    JobProgressPersister persister = newPersister();
+    long elapsed = runJob(persister, 100, -1);
+
+    long bound = ITEMS / MAX_PENDING_UPDATES + elapsed / MAX_DELAY + 3;
+    Assert.assertTrue(storage.jobWrites.get() <= bound, storage.jobWrites.get() + " writes > " + bound);
+    Assert.assertTrue(storage.jobWrites.get() >= elapsed / MAX_DELAY);
+    Assert.assertEquals(writtenJobStats().getSourceObjectsProcessedWithSuccess(), ITEMS);
+    assertEveryWriteIsIndexed();
+  }
+
+  @Test
+  public void testFailureAndCompletionAreWrittenImmediately() throws RODAException {
+    JobProgressPersister persister = newPersister();
+    Assert.assertTrue(persister.update(plugin, info(0, 0)));
+    Assert.assertFalse(persister.update(plugin, info(1, 0)));
+    Assert.assertTrue(persister.update(plugin, info(1, 1)));
+    Assert.assertEquals(writtenJobStats().getSourceObjectsProcessedWithFailure(), 1);
+    Assert.assertFalse(persister.update(plugin, info(1, 2)));
+    Assert.assertTrue(persister.update(plugin, info(ITEMS - 2, 2)));
+    Assert.assertEquals(writtenJobStats().getSourceObjectsProcessedWithSuccess(), ITEMS - 2);
+    Assert.assertEquals(storage.jobWrites.get(), 3);
+    assertEveryWriteIsIndexed();
+  }
+
+  @Test
+  public void testFlushWritesLatestPendingUpdate() throws RODAException {
+    JobProgressPersister persister = newPersister();
+    persister.update(plugin, info(0, 0));
+    persister.update(plugin, info(10, 0));
+    persister.update(plugin, info(20, 0));
+    Assert.assertTrue(persister.hasPendingUpdates());
+    Assert.assertEquals(writtenJobStats().getSourceObjectsProcessedWithSuccess(), 0);
+
+    persister.flush();
+    Assert.assertEquals(writtenJobStats().getSourceObjectsProcessedWithSuccess(), 20);
+    Assert.assertEquals(storage.jobWrites.get(), 2);
+
+    // nothing pending, nothing written
+    persister.flush();
+    Assert.assertEquals(storage.jobWrites.get(), 2);
+    assertEveryWriteIsIndexed();
+  }
+
+  @Test
+  public void testActorWritesPendingProgressBeforeChangingTheJobState() throws RODAException {
+    ModelService factoryModel = RodaCoreFactory.getModelService();
+    Job job = new Job();
+    job.setId(IdUtils.createUUID());
+    job.setName(job.getId());
+    factoryModel.createOrUpdateJob(job);
+
+    Map<String, String> parameters = new HashMap<>();
+    parameters.put(RodaConstants.PLUGIN_PARAMS_JOB_ID, job.getId());
+    DummyPlugin jobPlugin = new DummyPlugin();
+    jobPlugin.setParameterValues(parameters);
+
+    CountingSolrClient jobIndex = new CountingSolrClient();
+    IndexModelObserver observer = new IndexModelObserver(jobIndex, factoryModel);
+    factoryModel.addModelObserver(observer);
+    ActorSystem system = ActorSystem.create("JobProgressPersisterTest");
+    try {
+      TestKit probe = new TestKit(system);
+      ActorRef actor = system.actorOf(Props.create(PekkoJobStateInfoActor.class, jobPlugin, probe.getRef(),
+        probe.getRef(), job.getId(), 1, 1));
+      actor.tell(Messages.newJobInfoUpdated(jobPlugin, info(0, 0)), ActorRef.noSender());
+      actor.tell(Messages.newJobInfoUpdated(jobPlugin, info(10, 0)), ActorRef.noSender());
+      actor.tell(Messages.newJobInfoUpdated(jobPlugin, info(20, 0)), ActorRef.noSender());
+      actor.tell(Messages.newJobStateUpdated(jobPlugin, JOB_STATE.STARTED), ActorRef.noSender());
+
+      probe.awaitCond(TIMEOUT, Duration.ofMillis(50), "job state was not updated",
+        () -> jobIndex.jobAdds.get() >= 3 && stateOf(jobPlugin, factoryModel) == JOB_STATE.STARTED);
+
+      // the progress kept by the persister reaches the job before its new state
+      Job written = PluginHelper.getJob(jobPlugin, factoryModel);
+      Assert.assertEquals(written.getJobStats().getSourceObjectsProcessedWithSuccess(), 20);
+      // first update, flush of the pending updates and the state change
+      Assert.assertEquals(jobIndex.jobAdds.get(), 3);
+    } finally {
+      factoryModel.removeModelObserver(observer);
+      TestKit.shutdownActorSystem(system);
+    }
+  }
+
+  private static JOB_STATE stateOf(DummyPlugin jobPlugin, ModelService jobModel) {
+    try {
+      return PluginHelper.getJob(jobPlugin, jobModel).getState();
+    } catch (RODAException e) {
+      return null;
+    }
+  }
+
+  private static class CountingStorageService extends StorageServiceWrapper {
+    private final AtomicInteger jobWrites = new AtomicInteger();
+
+    CountingStorageService(StorageService storageService, NodeType nodeType) {
+      super(storageService, nodeType);
+    }
+
+    @Override
+    public Binary updateBinaryContent(StoragePath storagePath, ContentPayload payload, boolean asReference,
+      boolean createIfNotExists)
+      throws GenericException, NotFoundException, RequestNotValidException, AuthorizationDeniedException {
+      if (RodaConstants.STORAGE_CONTAINER_JOB.equals(storagePath.getContainerName())) {
+        jobWrites.incrementAndGet();
+      }
+      return super.updateBinaryContent(storagePath, payload, asReference, createIfNotExists);
+    }
+  }
+
+  private static class CountingSolrClient extends SolrClient {
+    private static final long serialVersionUID = -2613904378813478916L;
+
+    private final AtomicInteger jobAdds = new AtomicInteger();
+
+    @Override
+    public NamedList<Object> request(SolrRequest<?> request, String collection) {
+      if (request instanceof UpdateRequest update && RodaConstants.INDEX_JOB.equals(collection)
+        && update.getDocuments() != null) {
+        jobAdds.addAndGet(update.getDocuments().size());
+      }
+      return new NamedList<>();
+    }
+
+    @Override
+    public void close() {
+      // nothing to close
+    }
+  }
+}
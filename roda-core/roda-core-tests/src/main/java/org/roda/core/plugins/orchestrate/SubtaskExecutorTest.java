@@ -0,0 +1,110 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.orchestrate;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.RODAException;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_DEV, RodaConstants.TEST_GROUP_TRAVIS})
+public class SubtaskExecutorTest {
+  private SubtaskExecutor executor;
+
+  @BeforeClass
+  public void setUp() {
+    executor = new SubtaskExecutor(3);
+  }
+
+  @AfterClass
+  public void cleanUp() {
+    executor.shutdown();
+  }
+
+  @Test
+  public void testSubtasksRunAtTheSameTime() throws RODAException {
+    // each representation only ends once all of them have started
+    CountDownLatch started = new CountDownLatch(4);
+    List<String> representations = Arrays.asList("rep1", "rep2", "rep3", "rep4");
+
+    List<String> results = executor.process(representations, representation -> {
+      started.countDown();
+      try {
+        if (!started.await(10, TimeUnit.SECONDS)) {
+          throw new GenericException("Sub-tasks were not run at the same time");
+        }
+      } catch (InterruptedException e) {
+        throw new GenericException(e);
+      }
+      return representation + " identified";
+    });
+
+    Assert.assertEquals(results,
+      Arrays.asList("rep1 identified", "rep2 identified", "rep3 identified", "rep4 identified"));
+  }
+
+  @Test
+  public void testSubtasksRunOnVirtualThreads() throws RODAException {
+    SubtaskExecutor virtualExecutor = SubtaskExecutor.newVirtualThreadExecutor(3);
+    CountDownLatch started = new CountDownLatch(4);
+    try {
+      List<Boolean> virtual = virtualExecutor.process(Arrays.asList("rep1", "rep2", "rep3", "rep4"), representation -> {
+        started.countDown();
+        try {
+          if (!started.await(10, TimeUnit.SECONDS)) {
+            throw new GenericException("Sub-tasks were not run at the same time");
+          }
+        } catch (InterruptedException e) {
+          throw new GenericException(e);
+        }
+        return Thread.currentThread().isVirtual();
+      });
+
+      // one of the sub-tasks is processed by the calling (platform) thread
+      Assert.assertEquals(virtual.stream().filter(Boolean::booleanValue).count(), 3L);
+    } finally {
+      virtualExecutor.shutdown();
+    }
+  }
+
+  @Test
+  public void testSubtasksStopAfterFailure() {
+    AtomicInteger processed = new AtomicInteger();
+    List<Integer> files = Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+
+    try {
+      executor.process(files, file -> {
+        processed.incrementAndGet();
+        if (file == 1) {
+          throw new GenericException("Could not check fixity of file " + file);
+        }
+        try {
+          Thread.sleep(100);
+        } catch (InterruptedException e) {
+          throw new GenericException(e);
+        }
+        return file;
+      });
+      Assert.fail("The failure of a sub-task should be thrown");
+    } catch (RODAException e) {
+      Assert.assertEquals(e.getMessage(), "Could not check fixity of file 1");
+    }
+
+    // the sub-tasks that were already running end, but no other starts
+    Assert.assertTrue(processed.get() < files.size());
+  }
+}
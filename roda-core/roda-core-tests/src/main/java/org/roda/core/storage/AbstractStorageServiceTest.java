@@ -15,6 +15,7 @@ import static org.testng.AssertJUnit.assertTrue;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
@@ -753,6 +754,39 @@ public abstract class AbstractStorageServiceTest<T extends StorageService> {
     getStorage().deleteContainer(containerStoragePath);
   }
 
+  public void testDirectAccessToDirectory() throws RODAException, IOException {
+    // create container
+    final StoragePath containerStoragePath = StorageTestUtils.generateRandomContainerStoragePath();
+    getStorage().createContainer(containerStoragePath);
+
+    // create directory with small binaries, also in a sub-directory
+    final StoragePath directoryStoragePath = StorageTestUtils
+      .generateRandomResourceStoragePathUnder(containerStoragePath);
+    getStorage().createDirectory(directoryStoragePath);
+    final StoragePath binaryStoragePath = StorageTestUtils.generateRandomResourceStoragePathUnder(directoryStoragePath);
+    getStorage().createBinary(binaryStoragePath, new StringContentPayload("binary"), false);
+    final StoragePath subDirectoryStoragePath = StorageTestUtils
+      .generateRandomResourceStoragePathUnder(directoryStoragePath);
+    getStorage().createDirectory(subDirectoryStoragePath);
+    final StoragePath subBinaryStoragePath = StorageTestUtils
+      .generateRandomResourceStoragePathUnder(subDirectoryStoragePath);
+    getStorage().createBinary(subBinaryStoragePath, new StringContentPayload("sub-binary"), false);
+
+    // all binaries are in the directory given
+    try (DirectResourceAccess directAccess = getStorage().getDirectAccess(directoryStoragePath)) {
+      Path directory = directAccess.getPath();
+      assertTrue(Files.isDirectory(directory));
+      assertEquals("binary", new String(Files.readAllBytes(directory.resolve(binaryStoragePath.getName())),
+        StandardCharsets.UTF_8));
+      assertEquals("sub-binary", new String(Files.readAllBytes(
+        directory.resolve(subDirectoryStoragePath.getName()).resolve(subBinaryStoragePath.getName())),
+        StandardCharsets.UTF_8));
+    }
+
+    // cleanup
+    getStorage().deleteContainer(containerStoragePath);
+  }
+
   // TODO test copy from different storage
 
   public void testMoveContainerToSameStorage() throws RODAException, IOException {
@@ -0,0 +1,154 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.fs;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+
+import org.apache.commons.io.IOUtils;
+import org.roda.core.TestsHelper;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.v2.ip.StoragePath;
+import org.roda.core.storage.AbstractStorageServiceTest;
+import org.roda.core.storage.BinaryVersion;
+import org.roda.core.storage.StorageTestUtils;
+import org.roda.core.storage.StringContentPayload;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the deduplicating File System based StorageService
+ *
+ * @see DeduplicatingFileStorageService
+ */
+public class DeduplicatingFileStorageServiceTest extends AbstractStorageServiceTest<DeduplicatingFileStorageService> {
+
+  private static final String TRASH = "trash";
+
+  private static Path basePath;
+  private static DeduplicatingFileStorageService storage;
+
+  @BeforeMethod
+  public static void setUp() throws Exception {
+    basePath = TestsHelper.createBaseTempDir(DeduplicatingFileStorageServiceTest.class, true);
+    storage = new DeduplicatingFileStorageService(basePath.resolve("storage"), TRASH,
+      basePath.resolve("storage" + DeduplicatingFileStorageService.BLOBS_SUFFIX));
+  }
+
+  @Override
+  protected DeduplicatingFileStorageService getStorage() {
+    return storage;
+  }
+
+  @Override
+  public void cleanUp() {
+    FSUtils.deletePathQuietly(basePath);
+  }
+
+  @Override
+  @Test
+  public void testClassInstantiation() throws RODAException {
+    assertTrue(storage.getBlobStore().isEnabled());
+  }
+
+  @Test
+  public void testDeduplication() throws RODAException, IOException {
+    ContentAddressedBlobStore blobStore = storage.getBlobStore();
+    String content = "the same content, stored many times";
+    String digest = FSUtils.computeContentDigest(writeTemp(content), RodaConstants.SHA256);
+
+    final StoragePath containerStoragePath = StorageTestUtils.generateRandomContainerStoragePath();
+    storage.createContainer(containerStoragePath);
+    StoragePath first = StorageTestUtils.generateRandomResourceStoragePathUnder(containerStoragePath);
+    StoragePath second = StorageTestUtils.generateRandomResourceStoragePathUnder(containerStoragePath);
+    storage.createBinary(first, new StringContentPayload(content), false);
+    storage.createBinary(second, new StringContentPayload(content), false);
+
+    // both binaries share the same blob
+    assertTrue(Files.isSameFile(storage.resolve(first), storage.resolve(second)));
+    assertEquals(2, blobStore.getReferenceCount(digest));
+    assertEquals(1, blobStore.getDeduplicatedFiles());
+
+    // versions and copies are links too
+    BinaryVersion version = storage.createBinaryVersion(first, new HashMap<>());
+    StoragePath copy = StorageTestUtils.generateRandomResourceStoragePathUnder(containerStoragePath);
+    storage.copy(storage, first, copy);
+    assertEquals(4, blobStore.getReferenceCount(digest));
+
+    // updating one binary does not change the others
+    storage.updateBinaryContent(first, new StringContentPayload("new content"), false, false);
+    assertEquals(3, blobStore.getReferenceCount(digest));
+    assertEquals(content, new String(Files.readAllBytes(storage.resolve(second))));
+    try (InputStream versionContent = storage.getBinaryVersion(first, version.getId()).getBinary().getContent()
+      .createInputStream()) {
+      assertEquals(content, IOUtils.toString(versionContent, StandardCharsets.UTF_8));
+    }
+
+    // revert links back to the blob
+    storage.revertBinaryVersion(first, version.getId());
+    assertTrue(Files.isSameFile(storage.resolve(first), storage.resolve(second)));
+
+    // deleted binaries still reference the blob while in the trash
+    storage.deleteContainer(containerStoragePath);
+    assertTrue(blobStore.getReferenceCount(digest) > 0);
+    assertEquals(0, blobStore.collectGarbage());
+
+    // once purged, the blob is collected
+    FSUtils.deletePath(basePath.resolve(TRASH));
+    FSUtils.deletePathQuietly(basePath.resolve("storage" + FileStorageService.HISTORY_SUFFIX));
+    assertTrue(blobStore.collectGarbage() > 0);
+    assertEquals(0, blobStore.getReferenceCount(digest));
+    assertFalse(FSUtils.exists(blobStore.getBlobPath(digest)));
+  }
+
+  @Test
+  public void testSharedContentIsNotWrittenInPlace() throws RODAException, IOException {
+    String content = "content shared by two AIPs";
+    final StoragePath containerStoragePath = StorageTestUtils.generateRandomContainerStoragePath();
+    storage.createContainer(containerStoragePath);
+    StoragePath first = StorageTestUtils.generateRandomResourceStoragePathUnder(containerStoragePath);
+    StoragePath second = StorageTestUtils.generateRandomResourceStoragePathUnder(containerStoragePath);
+    storage.createBinary(first, new StringContentPayload(content), false);
+    storage.createBinary(second, new StringContentPayload(content), false);
+    assertTrue(Files.isSameFile(storage.resolve(first), storage.resolve(second)));
+
+    // writers opening a linked file are refused instead of changing both
+    if (!"root".equals(System.getProperty("user.name"))) {
+      try (OutputStream out = Files.newOutputStream(storage.resolve(first))) {
+        out.write("changed in place".getBytes(StandardCharsets.UTF_8));
+        fail("Shared content should not be writable");
+      } catch (AccessDeniedException e) {
+        // expected
+      }
+    }
+    assertEquals(content, new String(Files.readAllBytes(storage.resolve(second)), StandardCharsets.UTF_8));
+
+    // while the storage replaces it
+    storage.updateBinaryContent(first, new StringContentPayload("updated"), false, false);
+    assertEquals("updated", new String(Files.readAllBytes(storage.resolve(first)), StandardCharsets.UTF_8));
+    assertEquals(content, new String(Files.readAllBytes(storage.resolve(second)), StandardCharsets.UTF_8));
+  }
+
+  private static Path writeTemp(String content) throws IOException {
+    Path file = basePath.resolve("content.tmp");
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+}
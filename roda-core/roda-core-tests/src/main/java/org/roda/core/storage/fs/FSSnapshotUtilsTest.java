@@ -0,0 +1,90 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.fs;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.roda.core.TestsHelper;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_DEV, RodaConstants.TEST_GROUP_TRAVIS})
+public class FSSnapshotUtilsTest {
+  private Path basePath;
+  private Path source;
+
+  @BeforeMethod
+  public void setUp() throws IOException {
+    basePath = TestsHelper.createBaseTempDir(FSSnapshotUtilsTest.class, false);
+    source = basePath.resolve("aip");
+    Files.createDirectories(source.resolve("representations").resolve("rep1").resolve("data"));
+    Files.writeString(source.resolve("aip.json"), "{}", StandardCharsets.UTF_8);
+    Files.writeString(source.resolve("representations").resolve("rep1").resolve("data").resolve("file.txt"), "data",
+      StandardCharsets.UTF_8);
+  }
+
+  @AfterMethod
+  public void cleanUp() {
+    FSUtils.deletePathQuietly(basePath);
+  }
+
+  @Test
+  public void testSnapshotSharesFiles() throws IOException, GenericException, NotFoundException {
+    Path target = basePath.resolve("disposal-bin").resolve("aip");
+    FSSnapshotUtils.Progress progress = FSSnapshotUtils.snapshot(source, target, FileCopyMode.HARDLINK, false, true);
+
+    Assert.assertEquals(progress.getSharedFiles(), 2);
+    Assert.assertEquals(progress.getCopiedFiles(), 0);
+    Path file = target.resolve("representations").resolve("rep1").resolve("data").resolve("file.txt");
+    Assert.assertTrue(Files.isSameFile(file,
+      source.resolve("representations").resolve("rep1").resolve("data").resolve("file.txt")));
+
+    // new files only, leaving what is already in the snapshot
+    Files.writeString(source.resolve("event.xml"), "<event/>", StandardCharsets.UTF_8);
+    progress = FSSnapshotUtils.snapshot(source, target, FileCopyMode.HARDLINK, false, false);
+    Assert.assertEquals(progress.getSharedFiles(), 1);
+    Assert.assertEquals(progress.getSkippedFiles(), 2);
+
+    // deleting the snapshot releases nothing of what the source still has
+    FSUtils.deletePath(source.resolve("event.xml"));
+    Assert.assertEquals(FSSnapshotUtils.deleteSnapshot(target), "<event/>".length());
+    Assert.assertFalse(Files.exists(target));
+    Assert.assertTrue(Files.exists(source.resolve("aip.json")));
+  }
+
+  @Test
+  public void testSnapshotCopiesAndVerifiesFiles() throws IOException, GenericException {
+    Path target = basePath.resolve("copy");
+    Files.createDirectories(target);
+    Files.writeString(target.resolve("aip.json"), "{\"old\":true}", StandardCharsets.UTF_8);
+    Files.writeString(target.resolve("other.txt"), "other", StandardCharsets.UTF_8);
+
+    FSSnapshotUtils.Progress progress = FSSnapshotUtils.snapshot(source, target, FileCopyMode.COPY, true, true);
+
+    Assert.assertEquals(progress.getSharedFiles(), 0);
+    Assert.assertEquals(progress.getCopiedFiles(), 2);
+    Assert.assertEquals(progress.getCopiedBytes(), "{}".length() + "data".length());
+    Assert.assertEquals(Files.readString(target.resolve("aip.json"), StandardCharsets.UTF_8), "{}");
+    Assert.assertFalse(Files.isSameFile(target.resolve("aip.json"), source.resolve("aip.json")));
+    Assert.assertEquals(Files.getLastModifiedTime(target.resolve("aip.json")),
+      Files.getLastModifiedTime(source.resolve("aip.json")));
+    // files that are not in the source are kept
+    Assert.assertTrue(Files.exists(target.resolve("other.txt")));
+    try (var files = Files.list(target)) {
+      Assert.assertEquals(files.count(), 3);
+    }
+  }
+}
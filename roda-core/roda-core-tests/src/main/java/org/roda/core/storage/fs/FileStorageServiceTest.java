@@ -8,17 +8,24 @@
 package org.roda.core.storage.fs;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
 
 import org.roda.core.TestsHelper;
 import org.roda.core.data.exceptions.GenericException;
 import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.v2.ip.StoragePath;
 import org.roda.core.storage.AbstractStorageServiceTest;
+import org.roda.core.storage.BinaryVersion;
 import org.roda.core.storage.StorageService;
+import org.roda.core.storage.StorageTestUtils;
+import org.roda.core.storage.StringContentPayload;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.testng.Assert;
@@ -140,6 +147,55 @@ public class FileStorageServiceTest extends AbstractStorageServiceTest<FileStora
     }
   }
 
+  @Test
+  public void testBinaryVersionsAreCopiedByDefault() throws RODAException, IOException {
+    Path tempPath = Files.createTempDirectory("_" + getClass().getSimpleName());
+    try {
+      FileStorageService defaultStorage = new FileStorageService(tempPath.resolve("storage"));
+      Assert.assertEquals(defaultStorage.getVersionCopyMode(), FileCopyMode.COPY);
+
+      final StoragePath containerStoragePath = StorageTestUtils.generateRandomContainerStoragePath();
+      defaultStorage.createContainer(containerStoragePath);
+      final StoragePath binaryStoragePath = StorageTestUtils
+        .generateRandomResourceStoragePathUnder(containerStoragePath);
+      defaultStorage.createBinary(binaryStoragePath, new StringContentPayload("first"), false);
+
+      BinaryVersion version = defaultStorage.createBinaryVersion(binaryStoragePath, new HashMap<>());
+      Path versionPath = Paths.get(version.getBinary().getContent().getURI());
+      Assert.assertFalse(Files.isSameFile(defaultStorage.resolve(binaryStoragePath), versionPath));
+      Assert.assertEquals(FSUtils.getLinkCount(versionPath), 1);
+    } finally {
+      FSUtils.deletePath(tempPath);
+    }
+  }
+
+  @Test
+  public void testHardLinkedBinaryVersions() throws RODAException, IOException {
+    storage.setVersionCopyMode(FileCopyMode.HARDLINK);
+
+    final StoragePath containerStoragePath = StorageTestUtils.generateRandomContainerStoragePath();
+    storage.createContainer(containerStoragePath);
+    final StoragePath binaryStoragePath = StorageTestUtils.generateRandomResourceStoragePathUnder(containerStoragePath);
+    storage.createBinary(binaryStoragePath, new StringContentPayload("first"), false);
+    Path binaryPath = storage.resolve(binaryStoragePath);
+
+    // version shares the content of the binary
+    BinaryVersion version = storage.createBinaryVersion(binaryStoragePath, new HashMap<>());
+    Path versionPath = Paths.get(version.getBinary().getContent().getURI());
+    Assert.assertTrue(Files.isSameFile(binaryPath, versionPath));
+
+    // updating the binary does not change the version
+    storage.updateBinaryContent(binaryStoragePath, new StringContentPayload("second"), false, false);
+    Assert.assertFalse(Files.isSameFile(binaryPath, versionPath));
+    Assert.assertEquals(new String(Files.readAllBytes(versionPath), StandardCharsets.UTF_8), "first");
+    Assert.assertEquals(new String(Files.readAllBytes(binaryPath), StandardCharsets.UTF_8), "second");
+
+    // reverting shares the content again
+    storage.revertBinaryVersion(binaryStoragePath, version.getId());
+    Assert.assertTrue(Files.isSameFile(binaryPath, versionPath));
+    Assert.assertEquals(new String(Files.readAllBytes(binaryPath), StandardCharsets.UTF_8), "first");
+  }
+
   // TODO test get binary while IO Error occurs
   // TODO test create binary as reference while IO Error occurs
   // TODO test update binary while IO Error occurs
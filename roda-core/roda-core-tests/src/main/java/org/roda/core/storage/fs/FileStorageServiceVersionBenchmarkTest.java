@@ -0,0 +1,124 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.fs;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.roda.core.TestsHelper;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.v2.ip.StoragePath;
+import org.roda.core.storage.BinaryVersion;
+import org.roda.core.storage.StorageTestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.SkipException;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Compares latency and space used by binary version creation with each
+ * {@link FileCopyMode}. Only runs with <code>-Droda.test.benchmark=true</code>;
+ * the 5 GB case also needs <code>-Droda.test.benchmark.large=true</code>.
+ * Space is measured as the change of unallocated space of the file system and
+ * is only approximate.
+ */
+@Test(groups = {RodaConstants.TEST_GROUP_ALL})
+public class FileStorageServiceVersionBenchmarkTest {
+  private static final Logger LOGGER = LoggerFactory.getLogger(FileStorageServiceVersionBenchmarkTest.class);
+
+  private static final long KB = 1024L;
+  private static final long MB = 1024L * KB;
+  private static final long GB = 1024L * MB;
+
+  private Path basePath;
+
+  @BeforeClass
+  public void setUp() throws IOException {
+    if (!Boolean.getBoolean("roda.test.benchmark")) {
+      throw new SkipException("Benchmarks only run with -Droda.test.benchmark=true");
+    }
+    basePath = TestsHelper.createBaseTempDir(getClass(), true);
+  }
+
+  @AfterClass
+  public void tearDown() {
+    if (basePath != null) {
+      FSUtils.deletePathQuietly(basePath);
+    }
+  }
+
+  @Test
+  public void benchmarkBinaryVersions() throws RODAException, IOException {
+    List<Long> sizes = new ArrayList<>(Arrays.asList(KB, 10 * MB));
+    if (Boolean.getBoolean("roda.test.benchmark.large")) {
+      sizes.add(5 * GB);
+    }
+
+    StringBuilder report = new StringBuilder(
+      String.format("%n%-10s %12s %10s %14s %18s%n", "mode", "size", "versions", "ms/version", "bytes/version"));
+    for (long size : sizes) {
+      Path content = writeContent(basePath.resolve("content-" + size), size);
+      int versions = size < MB ? 100 : (size < GB ? 10 : 2);
+
+      for (FileCopyMode mode : FileCopyMode.values()) {
+        Path storagePath = basePath.resolve(mode + "-" + size).resolve(RodaConstants.CORE_STORAGE_FOLDER);
+        Files.createDirectories(storagePath.getParent());
+        FileStorageService storage = new FileStorageService(storagePath, RodaConstants.TRASH_CONTAINER);
+        storage.setVersionCopyMode(mode);
+
+        StoragePath containerStoragePath = StorageTestUtils.generateRandomContainerStoragePath();
+        storage.createContainer(containerStoragePath);
+        StoragePath binaryStoragePath = StorageTestUtils.generateRandomResourceStoragePathUnder(containerStoragePath);
+        storage.createBinary(binaryStoragePath, new FSPathContentPayload(content), false);
+
+        FileStore fileStore = Files.getFileStore(storagePath);
+        long unallocatedBefore = fileStore.getUnallocatedSpace();
+        long start = System.nanoTime();
+        BinaryVersion version = null;
+        for (int i = 0; i < versions; i++) {
+          version = storage.createBinaryVersion(binaryStoragePath, new HashMap<>());
+        }
+        long elapsed = System.nanoTime() - start;
+        long used = unallocatedBefore - fileStore.getUnallocatedSpace();
+
+        assertEquals(Long.valueOf(size), version.getBinary().getSizeInBytes());
+        report.append(String.format("%-10s %12d %10d %14.3f %18d%n", mode, size, versions,
+          elapsed / 1_000_000.0 / versions, Math.max(0, used) / versions));
+
+        FSUtils.deletePathQuietly(storagePath.getParent());
+      }
+      Files.delete(content);
+    }
+
+    LOGGER.info("Binary version creation{}", report);
+  }
+
+  private static Path writeContent(Path path, long size) throws IOException {
+    byte[] buffer = new byte[(int) Math.min(size, MB)];
+    new Random(size).nextBytes(buffer);
+    try (OutputStream outputStream = Files.newOutputStream(path)) {
+      for (long written = 0; written < size; written += buffer.length) {
+        outputStream.write(buffer, 0, (int) Math.min(buffer.length, size - written));
+      }
+    }
+    return path;
+  }
+}
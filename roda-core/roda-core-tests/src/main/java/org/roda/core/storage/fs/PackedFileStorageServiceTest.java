@@ -0,0 +1,218 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.fs;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.roda.core.TestsHelper;
+import org.roda.core.common.iterables.CloseableIterable;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.v2.ip.StoragePath;
+import org.roda.core.storage.AbstractStorageServiceTest;
+import org.roda.core.storage.Binary;
+import org.roda.core.storage.Resource;
+import org.roda.core.storage.StorageTestUtils;
+import org.roda.core.storage.StringContentPayload;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the packed File System based StorageService, packing the
+ * small binaries of all containers
+ *
+ * @see PackedFileStorageService
+ */
+public class PackedFileStorageServiceTest extends AbstractStorageServiceTest<PackedFileStorageService> {
+
+  private static final String TRASH = "trash";
+  private static final int MAX_OBJECT_SIZE = 4096;
+  private static final long MAX_SEGMENT_SIZE = 64 * 1024;
+
+  private static Path basePath;
+  private static PackedFileStorageService storage;
+
+  @BeforeMethod
+  public static void setUp() throws Exception {
+    basePath = TestsHelper.createBaseTempDir(PackedFileStorageServiceTest.class, true);
+    storage = newStorage();
+  }
+
+  private static PackedFileStorageService newStorage() throws RODAException {
+    return new PackedFileStorageService(basePath.resolve("storage"), TRASH,
+      basePath.resolve("storage" + PackedFileStorageService.PACKED_SUFFIX), null, MAX_OBJECT_SIZE, MAX_SEGMENT_SIZE);
+  }
+
+  @Override
+  protected PackedFileStorageService getStorage() {
+    return storage;
+  }
+
+  @Override
+  public void cleanUp() {
+    try {
+      storage.getStore().close();
+    } catch (IOException e) {
+      // do nothing
+    }
+    FSUtils.deletePathQuietly(basePath);
+  }
+
+  @Override
+  @Test
+  public void testClassInstantiation() throws RODAException {
+    assertEquals(0, storage.getStore().getObjectCount());
+  }
+
+  @Test
+  public void testSmallBinariesArePacked() throws RODAException, IOException {
+    final StoragePath containerStoragePath = StorageTestUtils.generateRandomContainerStoragePath();
+    storage.createContainer(containerStoragePath);
+
+    StoragePath small = StorageTestUtils.generateRandomResourceStoragePathUnder(containerStoragePath);
+    StoragePath big = StorageTestUtils.generateRandomResourceStoragePathUnder(containerStoragePath);
+    String smallContent = RandomStringUtils.randomAlphanumeric(MAX_OBJECT_SIZE);
+    String bigContent = RandomStringUtils.randomAlphanumeric(MAX_OBJECT_SIZE + 1);
+    storage.createBinary(small, new StringContentPayload(smallContent), false);
+    storage.createBinary(big, new StringContentPayload(bigContent), false);
+
+    assertTrue(storage.getStore().contains(String.join("/", small.asList())));
+    assertFalse(FSUtils.exists(storage.resolve(small)));
+    assertTrue(FSUtils.exists(storage.resolve(big)));
+    assertEquals(smallContent, read(storage.getBinary(small)));
+    assertEquals(bigContent, read(storage.getBinary(big)));
+
+    // growing over the threshold turns the packed binary into a file
+    storage.updateBinaryContent(small, new StringContentPayload(bigContent), false, false);
+    assertFalse(storage.getStore().contains(String.join("/", small.asList())));
+    assertEquals(bigContent, read(storage.getBinary(small)));
+
+    try (CloseableIterable<Resource> resources = storage.listResourcesUnderContainer(containerStoragePath, false)) {
+      List<StoragePath> listed = new ArrayList<>();
+      resources.forEach(resource -> listed.add(resource.getStoragePath()));
+      assertEquals(2, listed.size());
+    }
+  }
+
+  @Test
+  public void testPackedBinariesAreListedAsTheyAreIterated() throws RODAException, IOException {
+    final StoragePath containerStoragePath = StorageTestUtils.generateRandomContainerStoragePath();
+    storage.createContainer(containerStoragePath);
+    StoragePath first = StorageTestUtils.generateRandomResourceStoragePathUnder(containerStoragePath);
+    storage.createBinary(first, new StringContentPayload("first"), false);
+
+    // keys are not copied when the listing is created, but read from the index
+    try (CloseableIterable<Resource> resources = storage.listResourcesUnderContainer(containerStoragePath, true)) {
+      StoragePath second = StorageTestUtils.generateRandomResourceStoragePathUnder(containerStoragePath);
+      storage.createBinary(second, new StringContentPayload("second"), false);
+
+      List<StoragePath> listed = new ArrayList<>();
+      resources.forEach(resource -> listed.add(resource.getStoragePath()));
+      assertEquals(2, listed.size());
+      assertTrue(listed.contains(second));
+    }
+  }
+
+  @Test
+  public void testStoreIsRebuiltWhenReopened() throws RODAException, IOException {
+    final StoragePath containerStoragePath = StorageTestUtils.generateRandomContainerStoragePath();
+    storage.createContainer(containerStoragePath);
+
+    StoragePath kept = StorageTestUtils.generateRandomResourceStoragePathUnder(containerStoragePath);
+    StoragePath updated = StorageTestUtils.generateRandomResourceStoragePathUnder(containerStoragePath);
+    StoragePath deleted = StorageTestUtils.generateRandomResourceStoragePathUnder(containerStoragePath);
+    storage.createBinary(kept, new StringContentPayload("kept"), false);
+    storage.createBinary(updated, new StringContentPayload("v1"), false);
+    storage.createBinary(deleted, new StringContentPayload("deleted"), false);
+    storage.updateBinaryContent(updated, new StringContentPayload("v2"), false, false);
+    storage.deleteResource(deleted);
+
+    storage.getStore().close();
+    storage = newStorage();
+
+    assertEquals(2, storage.getStore().getObjectCount());
+    assertEquals("kept", read(storage.getBinary(kept)));
+    assertEquals("v2", read(storage.getBinary(updated)));
+    assertFalse(storage.exists(deleted));
+    assertEquals(Long.valueOf(2), storage.countResourcesUnderContainer(containerStoragePath, false));
+  }
+
+  @Test
+  public void testCompactionReclaimsDeadSpace() throws RODAException, IOException {
+    final StoragePath containerStoragePath = StorageTestUtils.generateRandomContainerStoragePath();
+    storage.createContainer(containerStoragePath);
+
+    List<StoragePath> binaries = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      StoragePath binary = StorageTestUtils.generateRandomResourceStoragePathUnder(containerStoragePath);
+      storage.createBinary(binary, new StringContentPayload(RandomStringUtils.randomAlphanumeric(1000)), false);
+      binaries.add(binary);
+    }
+
+    // overwrite everything many times and delete half of the binaries
+    for (int round = 0; round < 5; round++) {
+      for (StoragePath binary : binaries) {
+        storage.updateBinaryContent(binary, new StringContentPayload(binary.getName() + round), false, false);
+      }
+    }
+    for (int i = 0; i < binaries.size(); i += 2) {
+      storage.deleteResource(binaries.get(i));
+    }
+
+    PackedObjectStore store = storage.getStore();
+    store.rollOver();
+    long before = store.getTotalSize();
+    assertTrue(store.compact(0.5) > 0);
+    assertTrue(store.getTotalSize() < before);
+
+    storage.getStore().close();
+    storage = newStorage();
+    for (int i = 0; i < binaries.size(); i++) {
+      StoragePath binary = binaries.get(i);
+      if (i % 2 == 0) {
+        assertFalse(storage.exists(binary));
+      } else {
+        assertEquals(binary.getName() + 4, read(storage.getBinary(binary)));
+      }
+    }
+  }
+
+  @Test
+  public void testDirectoryWithPackedBinariesIsCopied() throws RODAException, IOException {
+    final StoragePath containerStoragePath = StorageTestUtils.generateRandomContainerStoragePath();
+    storage.createContainer(containerStoragePath);
+    StoragePath directory = StorageTestUtils.generateRandomResourceStoragePathUnder(containerStoragePath);
+    storage.createDirectory(directory);
+    StoragePath binary = StorageTestUtils.generateRandomResourceStoragePathUnder(directory);
+    storage.createBinary(binary, new StringContentPayload("packed"), false);
+
+    // to a folder (e.g. the attachments of a notification)
+    Path folder = basePath.resolve("copy");
+    storage.copy(storage, directory, folder, null);
+    assertEquals("packed", new String(Files.readAllBytes(folder.resolve(binary.getName())), StandardCharsets.UTF_8));
+
+    // to a storage that does not pack
+    FileStorageService other = new FileStorageService(basePath.resolve("other"), TRASH);
+    other.copy(storage, containerStoragePath, containerStoragePath);
+    assertEquals("packed", read(other.getBinary(binary)));
+  }
+
+  private static String read(Binary binary) throws IOException {
+    return IOUtils.toString(binary.getContent().createInputStream(), "UTF-8");
+  }
+}
@@ -0,0 +1,203 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.s3;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.roda.core.TestsHelper;
+import org.roda.core.common.iterables.CloseableIterable;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.v2.ip.StoragePath;
+import org.roda.core.storage.AbstractStorageServiceTest;
+import org.roda.core.storage.Binary;
+import org.roda.core.storage.Container;
+import org.roda.core.storage.ContentPayload;
+import org.roda.core.storage.DirectResourceAccess;
+import org.roda.core.storage.InputStreamContentPayload;
+import org.roda.core.storage.StorageTestUtils;
+import org.roda.core.storage.fs.FSUtils;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the S3 based StorageService. They run against the in-process
+ * {@link S3TestServer}, or against an S3-compatible service (e.g. MinIO) with an
+ * existing bucket when the <code>roda.test.s3.endpoint</code> system property
+ * is set, together with <code>roda.test.s3.bucket</code>,
+ * <code>roda.test.s3.access_key</code> and <code>roda.test.s3.secret_key</code>.
+ *
+ * @see S3StorageService
+ */
+public class S3StorageServiceTest extends AbstractStorageServiceTest<S3StorageService> {
+
+  private static final long MB = 1024L * 1024L;
+
+  private static S3TestServer server;
+  private static Path basePath;
+  private static S3StorageService storage;
+
+  @BeforeMethod
+  public static void setUp() throws Exception {
+    basePath = TestsHelper.createBaseTempDir(S3StorageServiceTest.class, true);
+    storage = new S3StorageService(createConfig(basePath.resolve("cache")));
+  }
+
+  @AfterClass
+  public static void tearDown() {
+    if (server != null) {
+      server.close();
+      server = null;
+    }
+  }
+
+  private static S3Config createConfig(Path cacheDirectory) throws IOException {
+    String endpoint = System.getProperty("roda.test.s3.endpoint");
+    S3Config config;
+    if (endpoint != null) {
+      config = new S3Config(URI.create(endpoint), System.getProperty("roda.test.s3.bucket", "roda-test"),
+        System.getProperty("roda.test.s3.access_key"), System.getProperty("roda.test.s3.secret_key"));
+    } else {
+      if (server == null) {
+        server = new S3TestServer("roda-test");
+      }
+      config = new S3Config(server.getEndpoint(), server.getBucket(), "test", "test");
+    }
+    String run = basePath.getFileName().toString();
+    config.setPrefix("test-" + run + "/storage");
+    config.setHistoryPrefix("test-" + run + "/history");
+    config.setPartSize(5 * MB);
+    config.setCacheDirectory(cacheDirectory);
+    return config;
+  }
+
+  @Override
+  protected S3StorageService getStorage() {
+    return storage;
+  }
+
+  @Override
+  public void cleanUp() {
+    if (storage != null) {
+      try (CloseableIterable<Container> containers = storage.listContainers()) {
+        for (Container container : containers) {
+          storage.deleteContainer(container.getStoragePath());
+        }
+      } catch (RODAException | IOException e) {
+        // best effort, every run uses its own prefix
+      }
+      FSUtils.deletePathQuietly(basePath);
+    }
+  }
+
+  @Override
+  @Test
+  public void testClassInstantiation() throws RODAException {
+    assertTrue(storage.getConfig().getPrefix().endsWith("/storage/"));
+  }
+
+  @Test
+  public void testMultipartBinaryAndDirectAccess() throws RODAException, IOException {
+    final StoragePath containerStoragePath = StorageTestUtils.generateRandomContainerStoragePath();
+    storage.createContainer(containerStoragePath);
+
+    // three and a half parts
+    byte[] content = new byte[(int) (17.5 * MB)];
+    for (int i = 0; i < content.length; i++) {
+      content[i] = (byte) (i % 251);
+    }
+    Path source = basePath.resolve("source.bin");
+    Files.write(source, content);
+    ContentPayload payload = new InputStreamContentPayload(() -> Files.newInputStream(source));
+
+    StoragePath binaryStoragePath = StorageTestUtils.generateRandomResourceStoragePathUnder(containerStoragePath);
+    Binary binary = storage.createBinary(binaryStoragePath, payload, false);
+    assertEquals(Long.valueOf(content.length), binary.getSizeInBytes());
+
+    // ranged parallel download
+    Path target = basePath.resolve("target.bin");
+    storage.getBinary(binaryStoragePath).getContent().writeToPath(target);
+    assertTrue(IOUtils.contentEquals(Files.newInputStream(source), Files.newInputStream(target)));
+
+    // cached local copy keeps the file name
+    try (DirectResourceAccess directAccess = storage.getDirectAccess(binaryStoragePath)) {
+      Path cached = directAccess.getPath();
+      assertEquals(binaryStoragePath.getName(), cached.getFileName().toString());
+      try (InputStream expected = Files.newInputStream(source); InputStream actual = Files.newInputStream(cached)) {
+        assertTrue(IOUtils.contentEquals(expected, actual));
+      }
+    }
+
+    // server side copy
+    StoragePath copyStoragePath = StorageTestUtils.generateRandomResourceStoragePathUnder(containerStoragePath);
+    storage.copy(storage, binaryStoragePath, copyStoragePath);
+    assertEquals(Long.valueOf(content.length), storage.getBinary(copyStoragePath).getSizeInBytes());
+  }
+
+  @Test
+  public void testOpenDirectAccessIsNotEvicted() throws RODAException, IOException {
+    S3Config config = createConfig(basePath.resolve("small-cache"));
+    config.setCacheMaxSize(MB);
+    S3StorageService smallCacheStorage = new S3StorageService(config);
+
+    final StoragePath containerStoragePath = StorageTestUtils.generateRandomContainerStoragePath();
+    smallCacheStorage.createContainer(containerStoragePath);
+    byte[] content = new byte[(int) (0.75 * MB)];
+    List<StoragePath> binaryStoragePaths = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      StoragePath binaryStoragePath = StorageTestUtils.generateRandomResourceStoragePathUnder(containerStoragePath);
+      smallCacheStorage.createBinary(binaryStoragePath,
+        new InputStreamContentPayload(() -> new ByteArrayInputStream(content)), false);
+      binaryStoragePaths.add(binaryStoragePath);
+    }
+
+    Path first;
+    try (DirectResourceAccess firstAccess = smallCacheStorage.getDirectAccess(binaryStoragePaths.get(0))) {
+      first = firstAccess.getPath();
+      // caching the second binary goes over the maximum size
+      try (DirectResourceAccess secondAccess = smallCacheStorage.getDirectAccess(binaryStoragePaths.get(1))) {
+        secondAccess.getPath();
+        assertTrue(Files.exists(first));
+      }
+    }
+
+    // once released it can be evicted
+    try (DirectResourceAccess thirdAccess = smallCacheStorage.getDirectAccess(binaryStoragePaths.get(2))) {
+      thirdAccess.getPath();
+    }
+    assertFalse(Files.exists(first));
+  }
+
+  @Test
+  public void testDeletingAMissingResource() throws RODAException {
+    final StoragePath containerStoragePath = StorageTestUtils.generateRandomContainerStoragePath();
+    storage.createContainer(containerStoragePath);
+    StoragePath missingStoragePath = StorageTestUtils.generateRandomResourceStoragePathUnder(containerStoragePath);
+    try {
+      storage.deleteResource(missingStoragePath);
+      fail("Deleting a missing resource should throw NotFoundException");
+    } catch (NotFoundException e) {
+      // expected
+    }
+    assertFalse(storage.exists(missingStoragePath));
+  }
+}
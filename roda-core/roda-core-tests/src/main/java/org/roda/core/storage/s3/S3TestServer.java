@@ -0,0 +1,367 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.s3;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.codec.binary.Hex;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-process fake of the subset of the S3 REST API used by {@link S3Client}, so
+ * that {@link S3StorageService} can be tested without an object store.
+ * Requests are not authenticated and objects are kept in memory.
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+public class S3TestServer implements AutoCloseable {
+  private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d*)");
+
+  private final String bucket;
+  private final HttpServer server;
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+  private final NavigableMap<String, StoredObject> objects = new ConcurrentSkipListMap<>();
+  private final Map<String, Map<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+
+  public S3TestServer(String bucket) throws IOException {
+    this.bucket = bucket;
+    this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/", this::handle);
+    server.setExecutor(executor);
+    server.start();
+  }
+
+  public URI getEndpoint() {
+    return URI.create("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort());
+  }
+
+  public String getBucket() {
+    return bucket;
+  }
+
+  public int getNumberOfObjects() {
+    return objects.size();
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      String path = exchange.getRequestURI().getPath();
+      String bucketPath = "/" + bucket + "/";
+      if (!path.startsWith(bucketPath)) {
+        sendError(exchange, 404, "NoSuchBucket");
+        return;
+      }
+      String key = path.substring(bucketPath.length());
+      Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+      String method = exchange.getRequestMethod();
+
+      if (key.isEmpty() && "GET".equals(method)) {
+        list(exchange, query);
+      } else if ("HEAD".equals(method) || "GET".equals(method)) {
+        get(exchange, key, "HEAD".equals(method));
+      } else if ("PUT".equals(method)) {
+        put(exchange, key, query);
+      } else if ("POST".equals(method) && query.containsKey("uploads")) {
+        String uploadId = UUID.randomUUID().toString();
+        uploads.put(uploadId, new ConcurrentHashMap<>());
+        sendXml(exchange, "<InitiateMultipartUploadResult><UploadId>" + uploadId
+          + "</UploadId></InitiateMultipartUploadResult>");
+      } else if ("POST".equals(method) && query.containsKey("uploadId")) {
+        completeUpload(exchange, key, query.get("uploadId"));
+      } else if ("DELETE".equals(method)) {
+        if (query.containsKey("uploadId")) {
+          uploads.remove(query.get("uploadId"));
+        } else {
+          objects.remove(key);
+        }
+        exchange.sendResponseHeaders(204, -1);
+      } else {
+        sendError(exchange, 405, "MethodNotAllowed");
+      }
+    } catch (RuntimeException e) {
+      sendError(exchange, 500, e.getMessage());
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private void list(HttpExchange exchange, Map<String, String> query) throws IOException {
+    String prefix = query.getOrDefault("prefix", "");
+    String delimiter = query.get("delimiter");
+    int maxKeys = Integer.parseInt(query.getOrDefault("max-keys", "1000"));
+    String token = query.get("continuation-token");
+
+    StringBuilder contents = new StringBuilder();
+    StringBuilder commonPrefixes = new StringBuilder();
+    String last = null;
+    boolean lastIsPrefix = false;
+    boolean truncated = false;
+    int count = 0;
+    // the token is the last listed key or common prefix, marked with K or P
+    String skipPrefix = token != null && token.startsWith("P") ? token.substring(1) : null;
+    NavigableMap<String, StoredObject> candidates = token == null ? objects.tailMap(prefix, true)
+      : objects.tailMap(token.substring(1), false);
+    for (Map.Entry<String, StoredObject> entry : candidates.entrySet()) {
+      String key = entry.getKey();
+      if (!key.startsWith(prefix)) {
+        break;
+      }
+      if (skipPrefix != null && key.startsWith(skipPrefix)) {
+        continue;
+      }
+      int index = delimiter == null ? -1 : key.indexOf(delimiter, prefix.length());
+      String commonPrefix = index < 0 ? null : key.substring(0, index + delimiter.length());
+      if (commonPrefix != null && commonPrefix.equals(last)) {
+        continue;
+      }
+      if (count == maxKeys) {
+        truncated = true;
+        break;
+      }
+      if (commonPrefix != null) {
+        commonPrefixes.append("<CommonPrefixes><Prefix>").append(escape(commonPrefix))
+          .append("</Prefix></CommonPrefixes>");
+        last = commonPrefix;
+        lastIsPrefix = true;
+      } else {
+        StoredObject object = entry.getValue();
+        contents.append("<Contents><Key>").append(escape(key)).append("</Key><LastModified>")
+          .append(object.lastModified).append("</LastModified><ETag>\"").append(object.etag)
+          .append("\"</ETag><Size>").append(object.content.length).append("</Size></Contents>");
+        last = key;
+        lastIsPrefix = false;
+      }
+      count++;
+    }
+
+    StringBuilder result = new StringBuilder("<ListBucketResult><IsTruncated>").append(truncated)
+      .append("</IsTruncated>");
+    if (truncated) {
+      String next = (lastIsPrefix ? "P" : "K") + last;
+      result.append("<NextContinuationToken>").append(escape(next)).append("</NextContinuationToken>");
+    }
+    result.append(contents).append(commonPrefixes).append("</ListBucketResult>");
+    sendXml(exchange, result.toString());
+  }
+
+  private void get(HttpExchange exchange, String key, boolean headOnly) throws IOException {
+    StoredObject object = objects.get(key);
+    if (object == null) {
+      sendError(exchange, 404, "NoSuchKey");
+      return;
+    }
+
+    int from = 0;
+    int to = object.content.length - 1;
+    int status = 200;
+    String range = exchange.getRequestHeaders().getFirst("Range");
+    if (range != null) {
+      Matcher matcher = RANGE.matcher(range);
+      if (!matcher.matches()) {
+        sendError(exchange, 416, "InvalidRange");
+        return;
+      }
+      from = Integer.parseInt(matcher.group(1));
+      if (!matcher.group(2).isEmpty()) {
+        to = Math.min(to, Integer.parseInt(matcher.group(2)));
+      }
+      status = 206;
+    }
+
+    exchange.getResponseHeaders().set("ETag", "\"" + object.etag + "\"");
+    if (headOnly) {
+      exchange.getResponseHeaders().set("Content-Length", Integer.toString(object.content.length));
+      exchange.sendResponseHeaders(status, -1);
+    } else {
+      int length = Math.max(0, to - from + 1);
+      exchange.sendResponseHeaders(status, length == 0 ? -1 : length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(object.content, from, length);
+      }
+    }
+  }
+
+  private void put(HttpExchange exchange, String key, Map<String, String> query) throws IOException {
+    String copySource = exchange.getRequestHeaders().getFirst("x-amz-copy-source");
+    byte[] content;
+    if (copySource != null) {
+      String sourceKey = URLDecoder.decode(copySource, StandardCharsets.UTF_8.name())
+        .substring(bucket.length() + 2);
+      StoredObject source = objects.get(sourceKey);
+      if (source == null) {
+        sendError(exchange, 404, "NoSuchKey");
+        return;
+      }
+      content = source.content;
+      String range = exchange.getRequestHeaders().getFirst("x-amz-copy-source-range");
+      if (range != null) {
+        Matcher matcher = RANGE.matcher(range);
+        if (!matcher.matches()) {
+          sendError(exchange, 400, "InvalidArgument");
+          return;
+        }
+        int from = Integer.parseInt(matcher.group(1));
+        int to = Integer.parseInt(matcher.group(2));
+        byte[] part = new byte[to - from + 1];
+        System.arraycopy(content, from, part, 0, part.length);
+        content = part;
+      }
+    } else {
+      content = readBody(exchange);
+    }
+
+    if (query.containsKey("uploadId")) {
+      Map<Integer, byte[]> parts = uploads.get(query.get("uploadId"));
+      if (parts == null) {
+        sendError(exchange, 404, "NoSuchUpload");
+        return;
+      }
+      parts.put(Integer.parseInt(query.get("partNumber")), content);
+      String etag = md5(content);
+      if (copySource != null) {
+        sendXml(exchange, "<CopyPartResult><ETag>\"" + etag + "\"</ETag></CopyPartResult>");
+      } else {
+        exchange.getResponseHeaders().set("ETag", "\"" + etag + "\"");
+        exchange.sendResponseHeaders(200, -1);
+      }
+    } else {
+      StoredObject object = new StoredObject(content);
+      objects.put(key, object);
+      if (copySource != null) {
+        sendXml(exchange, "<CopyObjectResult><ETag>\"" + object.etag + "\"</ETag></CopyObjectResult>");
+      } else {
+        exchange.getResponseHeaders().set("ETag", "\"" + object.etag + "\"");
+        exchange.sendResponseHeaders(200, -1);
+      }
+    }
+  }
+
+  private void completeUpload(HttpExchange exchange, String key, String uploadId) throws IOException {
+    Map<Integer, byte[]> parts = uploads.remove(uploadId);
+    if (parts == null) {
+      sendError(exchange, 404, "NoSuchUpload");
+      return;
+    }
+    readBody(exchange);
+    ByteArrayOutputStream content = new ByteArrayOutputStream();
+    for (int partNumber = 1; partNumber <= parts.size(); partNumber++) {
+      byte[] part = parts.get(partNumber);
+      if (part == null) {
+        sendError(exchange, 400, "InvalidPart");
+        return;
+      }
+      content.write(part);
+    }
+    StoredObject object = new StoredObject(content.toByteArray());
+    objects.put(key, object);
+    sendXml(exchange, "<CompleteMultipartUploadResult><Key>" + escape(key) + "</Key><ETag>\"" + object.etag
+      + "\"</ETag></CompleteMultipartUploadResult>");
+  }
+
+  private static Map<String, String> parseQuery(String rawQuery) throws IOException {
+    Map<String, String> query = new HashMap<>();
+    if (rawQuery != null && !rawQuery.isEmpty()) {
+      for (String parameter : rawQuery.split("&")) {
+        int index = parameter.indexOf('=');
+        String name = index < 0 ? parameter : parameter.substring(0, index);
+        String value = index < 0 ? "" : parameter.substring(index + 1);
+        query.put(URLDecoder.decode(name, StandardCharsets.UTF_8.name()),
+          URLDecoder.decode(value, StandardCharsets.UTF_8.name()));
+      }
+    }
+    return query;
+  }
+
+  private static byte[] readBody(HttpExchange exchange) throws IOException {
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    byte[] buffer = new byte[64 * 1024];
+    try (InputStream in = exchange.getRequestBody()) {
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        body.write(buffer, 0, read);
+      }
+    }
+    return body.toByteArray();
+  }
+
+  private static void sendXml(HttpExchange exchange, String xml) throws IOException {
+    sendXml(exchange, 200, xml);
+  }
+
+  private static void sendXml(HttpExchange exchange, int status, String xml) throws IOException {
+    byte[] body = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + xml).getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/xml");
+    exchange.sendResponseHeaders(status, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  private static void sendError(HttpExchange exchange, int status, String code) throws IOException {
+    if ("HEAD".equals(exchange.getRequestMethod())) {
+      exchange.sendResponseHeaders(status, -1);
+    } else {
+      sendXml(exchange, status, "<Error><Code>" + escape(code) + "</Code><Message>" + escape(code)
+        + "</Message></Error>");
+    }
+  }
+
+  private static String escape(String value) {
+    return value == null ? ""
+      : value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+  }
+
+  private static String md5(byte[] content) {
+    try {
+      return Hex.encodeHexString(MessageDigest.getInstance("MD5").digest(content));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static class StoredObject {
+    private final byte[] content;
+    private final String etag;
+    private final String lastModified;
+
+    private StoredObject(byte[] content) {
+      this.content = content;
+      this.etag = md5(content);
+      this.lastModified = Instant.now().toString();
+    }
+  }
+}
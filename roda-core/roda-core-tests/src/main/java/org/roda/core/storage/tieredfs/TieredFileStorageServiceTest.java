@@ -0,0 +1,224 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.tieredfs;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.roda.core.TestsHelper;
+import org.roda.core.common.iterables.CloseableIterable;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.data.utils.JsonUtils;
+import org.roda.core.data.v2.ip.AIP;
+import org.roda.core.data.v2.ip.Representation;
+import org.roda.core.data.v2.ip.StoragePath;
+import org.roda.core.model.utils.ModelUtils;
+import org.roda.core.storage.AbstractStorageServiceTest;
+import org.roda.core.storage.Binary;
+import org.roda.core.storage.BinaryVersion;
+import org.roda.core.storage.ContentPayload;
+import org.roda.core.storage.DefaultStoragePath;
+import org.roda.core.storage.DirectResourceAccess;
+import org.roda.core.storage.RandomMockContentPayload;
+import org.roda.core.storage.Resource;
+import org.roda.core.storage.StorageTestUtils;
+import org.roda.core.storage.StringContentPayload;
+import org.roda.core.storage.fs.FSUtils;
+import org.roda.core.storage.fs.FileStorageService;
+import org.roda.core.util.IdUtils;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Iterables;
+
+/**
+ * Unit tests for the hot/cold tiered StorageService
+ *
+ * @see TieredFileStorageService
+ */
+public class TieredFileStorageServiceTest extends AbstractStorageServiceTest<TieredFileStorageService> {
+
+  private static Path basePath;
+  private static FileStorageService hotStorage;
+  private static FileStorageService coldStorage;
+  private static TieredFileStorageService storage;
+
+  @BeforeMethod
+  public static void setUp() throws Exception {
+    basePath = TestsHelper.createBaseTempDir(TieredFileStorageServiceTest.class, true);
+    hotStorage = new FileStorageService(basePath.resolve("storage"));
+    coldStorage = new FileStorageService(basePath.resolve("storage" + TieredFileStorageService.COLD_SUFFIX));
+    storage = new TieredFileStorageService(hotStorage, coldStorage, Duration.ofDays(30), true, 2, null);
+  }
+
+  @Override
+  protected TieredFileStorageService getStorage() {
+    return storage;
+  }
+
+  @Override
+  public void cleanUp() {
+    FSUtils.deletePathQuietly(basePath);
+  }
+
+  @Override
+  @Test
+  public void testClassInstantiation() throws RODAException {
+    assertEquals(hotStorage, storage.getHotStorage());
+    assertEquals(coldStorage, storage.getColdStorage());
+  }
+
+  @Test
+  public void testMigrateAndPromote() throws RODAException, IOException {
+    String aipId = IdUtils.createUUID();
+    String masterRepresentationId = "master";
+    String accessRepresentationId = "access";
+
+    AIP aip = new AIP();
+    aip.setId(aipId);
+    aip.setRepresentations(Arrays.asList(new Representation(masterRepresentationId, aipId, true, "MIXED"),
+      new Representation(accessRepresentationId, aipId, false, "MIXED")));
+    StoragePath aipMetadataPath = DefaultStoragePath.parse(ModelUtils.getAIPStoragePath(aipId),
+      RodaConstants.STORAGE_AIP_METADATA_FILENAME);
+    storage.createBinary(aipMetadataPath, new StringContentPayload(JsonUtils.getJsonFromObject(aip)), false);
+
+    StoragePath masterPath = ModelUtils.getFileStoragePath(aipId, masterRepresentationId, Collections.emptyList(),
+      "master.bin");
+    StoragePath accessPath = ModelUtils.getFileStoragePath(aipId, accessRepresentationId, Collections.emptyList(),
+      "access.bin");
+    ContentPayload masterPayload = new RandomMockContentPayload();
+    storage.createBinary(masterPath, masterPayload, false);
+    storage.createBinary(accessPath, new RandomMockContentPayload(), false);
+
+    // everything is old enough to be cold
+    FileTime old = FileTime.from(Instant.now().minus(Duration.ofDays(60)));
+    for (StoragePath path : Arrays.asList(aipMetadataPath, masterPath, accessPath)) {
+      Files.setLastModifiedTime(hotStorage.resolve(path), old);
+    }
+
+    // only the master binary is migrated
+    assertEquals(1, storage.migrateColdBinaries());
+    assertFalse(hotStorage.exists(masterPath));
+    assertTrue(coldStorage.exists(masterPath));
+    assertTrue(hotStorage.exists(accessPath));
+    assertTrue(hotStorage.exists(aipMetadataPath));
+    assertEquals(1, storage.getColdTierOccupancy().getBinaries());
+    assertEquals(2, storage.getHotTierOccupancy().getBinaries());
+
+    // cold binary is still visible
+    assertTrue(storage.hasBinary(masterPath));
+    StoragePath masterDataPath = ModelUtils.getRepresentationDataStoragePath(aipId, masterRepresentationId);
+    boolean listed = false;
+    try (CloseableIterable<Resource> resources = storage.listResourcesUnderDirectory(masterDataPath, true)) {
+      for (Resource resource : resources) {
+        listed |= resource.getStoragePath().equals(masterPath);
+      }
+    }
+    assertTrue(listed);
+    assertEquals(Long.valueOf(1), storage.countResourcesUnderDirectory(masterDataPath, true));
+
+    // first read is served from the cold tier
+    Binary binary = storage.getBinary(masterPath);
+    testBinaryContent(binary, masterPayload);
+    assertTrue(coldStorage.exists(masterPath));
+
+    // second read promotes it
+    binary = storage.getBinary(masterPath);
+    testBinaryContent(binary, masterPayload);
+    assertTrue(hotStorage.exists(masterPath));
+    assertFalse(coldStorage.exists(masterPath));
+    assertEquals(1, storage.getPromotedCount());
+
+    // promoted binary is young again, so it is not migrated back
+    assertEquals(0, storage.migrateColdBinaries());
+  }
+
+  @Test
+  public void testBinaryVersionsOnTheColdTierAreDeleted() throws RODAException, IOException {
+    StoragePath containerStoragePath = StorageTestUtils.generateRandomContainerStoragePath();
+    storage.createContainer(containerStoragePath);
+    coldStorage.createContainer(containerStoragePath);
+    StoragePath binaryPath = StorageTestUtils.generateRandomResourceStoragePathUnder(containerStoragePath);
+    coldStorage.createBinary(binaryPath, new StringContentPayload("cold"), false);
+    BinaryVersion version = coldStorage.createBinaryVersion(binaryPath, new HashMap<>());
+
+    try (CloseableIterable<BinaryVersion> versions = storage.listBinaryVersions(binaryPath)) {
+      assertEquals(1, Iterables.size(versions));
+    }
+
+    storage.deleteBinaryVersion(binaryPath, version.getId());
+    try (CloseableIterable<BinaryVersion> versions = storage.listBinaryVersions(binaryPath)) {
+      assertEquals(0, Iterables.size(versions));
+    }
+    try {
+      storage.getBinaryVersion(binaryPath, version.getId());
+      fail("Should have thrown NotFoundException");
+    } catch (NotFoundException e) {
+      // do nothing
+    }
+  }
+
+  @Test
+  public void testDirectAccessToDirectoryOnBothTiers() throws RODAException, IOException {
+    String aipId = IdUtils.createUUID();
+    String representationId = "master";
+
+    AIP aip = new AIP();
+    aip.setId(aipId);
+    aip.setRepresentations(Collections.singletonList(new Representation(representationId, aipId, true, "MIXED")));
+    StoragePath aipMetadataPath = DefaultStoragePath.parse(ModelUtils.getAIPStoragePath(aipId),
+      RodaConstants.STORAGE_AIP_METADATA_FILENAME);
+    storage.createBinary(aipMetadataPath, new StringContentPayload(JsonUtils.getJsonFromObject(aip)), false);
+
+    StoragePath oldPath = ModelUtils.getFileStoragePath(aipId, representationId, Arrays.asList("folder"), "old.bin");
+    StoragePath newPath = ModelUtils.getFileStoragePath(aipId, representationId, Collections.emptyList(),
+      "new.bin");
+    storage.createBinary(oldPath, new StringContentPayload("old"), false);
+    storage.createBinary(newPath, new StringContentPayload("new"), false);
+    Files.setLastModifiedTime(hotStorage.resolve(oldPath), FileTime.from(Instant.now().minus(Duration.ofDays(60))));
+    assertEquals(1, storage.migrateColdBinaries());
+
+    // a scan of the representation sees the files of both tiers
+    StoragePath dataPath = ModelUtils.getRepresentationDataStoragePath(aipId, representationId);
+    Path scanned;
+    try (DirectResourceAccess directAccess = storage.getDirectAccess(dataPath)) {
+      scanned = directAccess.getPath();
+      List<String> files = new ArrayList<>();
+      try (Stream<Path> walk = Files.walk(scanned)) {
+        walk.filter(Files::isRegularFile).forEach(file -> files.add(scanned.relativize(file).toString()));
+      }
+      Collections.sort(files);
+      assertEquals(Arrays.asList("folder/old.bin", "new.bin"), files);
+      assertEquals("old", new String(Files.readAllBytes(scanned.resolve("folder").resolve("old.bin")),
+        StandardCharsets.UTF_8));
+    }
+
+    // the merged view is gone, the tiers are untouched
+    assertFalse(FSUtils.exists(scanned));
+    assertTrue(coldStorage.exists(oldPath));
+    assertTrue(hotStorage.exists(newPath));
+  }
+}
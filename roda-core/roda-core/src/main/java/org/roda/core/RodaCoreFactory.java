@@ -41,6 +41,8 @@ import java.util.Optional;
 import java.util.ResourceBundle;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.function.Function;
@@ -86,7 +88,9 @@ import org.roda.core.common.PremisV3Utils;
 import org.roda.core.common.RodaUtils;
 import org.roda.core.common.iterables.CloseableIterable;
 import org.roda.core.common.monitor.TransferUpdateStatus;
+import org.roda.core.common.monitor.TransferredResourceUploads;
 import org.roda.core.common.monitor.TransferredResourcesScanner;
+import org.roda.core.common.notifications.NotificationOutbox;
 import org.roda.core.data.common.RodaConstants;
 import org.roda.core.data.common.RodaConstants.DistributedModeType;
 import org.roda.core.data.common.RodaConstants.NodeType;
@@ -134,6 +138,7 @@ import org.roda.core.index.IndexService;
 import org.roda.core.index.schema.Field;
 import org.roda.core.index.schema.SolrBootstrapUtils;
 import org.roda.core.index.schema.SolrCollectionRegistry;
+import org.roda.core.index.utils.LimitedSolrClient;
 import org.roda.core.index.utils.SolrUtils;
 import org.roda.core.index.utils.ZkController;
 import org.roda.core.migration.MigrationManager;
@@ -144,7 +149,9 @@ import org.roda.core.model.utils.UserUtility;
 import org.roda.core.plugins.PluginManager;
 import org.roda.core.plugins.PluginManagerException;
 import org.roda.core.plugins.PluginOrchestrator;
+import org.roda.core.plugins.base.characterization.SiegfriedPluginUtils;
 import org.roda.core.plugins.orchestrate.PekkoEmbeddedPluginOrchestrator;
+import org.roda.core.plugins.orchestrate.SubtaskExecutor;
 import org.roda.core.protocols.Protocol;
 import org.roda.core.protocols.ProtocolManager;
 import org.roda.core.protocols.ProtocolManagerException;
@@ -153,6 +160,7 @@ import org.roda.core.storage.Resource;
 import org.roda.core.storage.StorageService;
 import org.roda.core.storage.StorageServiceWrapper;
 import org.roda.core.storage.fs.FSUtils;
+import org.roda.core.storage.fs.FileCopyMode;
 import org.roda.core.storage.fs.FileStorageService;
 import org.roda.core.util.IdUtils;
 import org.slf4j.Logger;
@@ -178,7 +186,7 @@ public class RodaCoreFactory {
   private static final Logger LOGGER = LoggerFactory.getLogger(RodaCoreFactory.class);
 
   private static boolean instantiated = false;
-  private static boolean instantiatedWithoutErrors = true;
+  private static volatile boolean instantiatedWithoutErrors = true;
   private static NodeType nodeType;
   private static String instanceId = "";
   private static boolean migrationMode = false;
@@ -244,9 +252,11 @@ public class RodaCoreFactory {
 
   private static LdapUtility ldapUtility;
   private static Path rodaApacheDSDataDirectory = null;
+  private static boolean apacheDSStarted = false;
 
   // TransferredResources related objects
   private static TransferredResourcesScanner transferredResourcesScanner;
+  private static TransferredResourceUploads transferredResourceUploads;
 
   // Configuration related objects
   private static CompositeConfiguration rodaConfiguration = null;
@@ -497,85 +507,37 @@ public class RodaCoreFactory {
         }
         LOGGER.debug("Finished loading configurations");
 
-        // initialize working directory
-        initializeWorkingDirectory();
-        LOGGER.debug("Finished instantiating working directory");
-
-        // initialize reports directory
-        initializeReportsDirectory();
-        LOGGER.debug("Finished instantiating reports directory");
-
         // initialize metrics stuff
         initializeMetrics();
         LOGGER.debug("Finished instantiating metrics");
 
-        // instantiate events manager
-        instantiateEventsManager();
-        LOGGER.debug("Finished instantiating events manager");
-
-        // instantiate storage and model service
-        instantiateStorageAndModel();
-        LOGGER.debug("Finished instantiating storage & model");
-
-        // initialize disposal bin directory
-        initializeDisposalBinDirectory();
-        LOGGER.debug("Finished instantiating disposal bin directory");
-
-        // initialize file shallow temporary directory
-        initializeFileShallowTmpDirectoryPath();
-        LOGGER.debug("Finished instantiating Shallow temporary directory");
-
-        // initialize synchronization directory
-        initializeSynchronizationStateDir();
-        LOGGER.debug("Finished instantiating synchronization state directory");
-
-        // initialize synchronization directory
-        initializeJobAttachmentsDir();
-        LOGGER.debug("Finished instantiating Job attachments directory");
-
-        instantiateAccessTokens();
-        LOGGER.debug("Finished instantiating Access tokens");
-
-        instantiateDistributedMode();
-        LOGGER.debug("Finished instantiating distributed mode");
-
-        // instantiate solr and index service
-        instantiateSolrAndIndexService(nodeType);
-        LOGGER.debug("Finished instantiating solr & index");
-
-        instantiateNodeSpecificObjects(nodeType);
-        LOGGER.debug("Finished instantiating node specific objects");
-
-        // verify if is necessary to perform a model/index migration
-        MigrationManager migrationManager = new MigrationManager(dataPath);
-        if (NodeType.PRIMARY == nodeType
-          && migrationManager.isNecessaryToPerformMigration(getSolr(), tempIndexConfigsPath)) {
-          // migrationManager.setupModelMigrations();
-          // migrationManager.performModelMigrations();
-          throw new GenericException("It's necessary to do a model/index migration");
-        }
-        LOGGER.debug("Finished migration verification");
-
-        instantiateDefaultObjects();
-        LOGGER.debug("Finished instantiating default objects");
-
-        instantiateProtocolManager();
-        LOGGER.debug("Finished instantiating protocol manager");
-
-        // instantiate plugin manager
-        // 20160920 hsilva: this must be the last thing to be instantiated as
-        // problems may araise when instantiating objects at the same time the
-        // plugin manager is loading both internal & external plugins (it looks
-        // like Reflections is the blame)
-        instantiatePluginManager();
-        LOGGER.debug("Finished instantiating plugin manager");
-
-        // now that plugin manager is up, lets do some tasks that can only be
-        // done after it
-        if (nodeType == NodeType.PRIMARY && pluginOrchestrator != null) {
-          pluginOrchestrator.cleanUnfinishedJobsAsync();
-          LOGGER.debug("Finished clean unfinished jobs operation (doing jobs clean up asynchronously)");
+        // run the remaining steps, concurrently if configured
+        boolean parallel = getProperty(RodaConstants.CORE_STARTUP_PARALLEL_ENABLED, false);
+        boolean background = parallel && getProperty(RodaConstants.CORE_STARTUP_BACKGROUND_ENABLED, false);
+        StartupGraph startupGraph = buildStartupGraph(nodeType, background);
+        if (parallel) {
+          int threads = getProperty(RodaConstants.CORE_STARTUP_PARALLEL_THREADS,
+            RodaConstants.DEFAULT_STARTUP_PARALLEL_THREADS);
+          ExecutorService startupExecutor = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "roda-startup");
+            thread.setDaemon(true);
+            return thread;
+          });
+          try {
+            startupGraph.run(startupExecutor, metricsRegistry).whenComplete((result, e) -> {
+              startupExecutor.shutdown();
+              if (background) {
+                LOGGER.info("Finished background startup steps (times in ms: {})", startupGraph.getDurations());
+              }
+            });
+          } catch (Exception e) {
+            startupExecutor.shutdownNow();
+            throw e;
+          }
+        } else {
+          startupGraph.runSequentially(metricsRegistry);
         }
+        LOGGER.debug("Finished startup steps (times in ms: {})", startupGraph.getDurations());
 
         instantiated = true;
 
@@ -600,6 +562,99 @@ public class RodaCoreFactory {
     }
   }
 
+  /**
+   * Startup steps that follow the loading of the configurations, and the steps
+   * each one depends on. Independent steps may run concurrently (see
+   * {@code core.startup.parallel.enabled}).
+   *
+   * @param background
+   *          if true, the steps not needed to serve requests (plugin loading and
+   *          Siegfried warm-up) may finish after startup
+   */
+  static StartupGraph buildStartupGraph(NodeType nodeType, boolean background) {
+    StartupGraph graph = new StartupGraph();
+    graph.addStep("workingDirectory", RodaCoreFactory::initializeWorkingDirectory);
+    graph.addStep("reportsDirectory", RodaCoreFactory::initializeReportsDirectory);
+    graph.addStep("eventsManager", RodaCoreFactory::instantiateEventsManager);
+    graph.addStep("storageAndModel", RodaCoreFactory::instantiateStorageAndModel, "workingDirectory",
+      "eventsManager");
+    graph.addStep("disposalBinDirectory", RodaCoreFactory::initializeDisposalBinDirectory);
+    graph.addStep("fileShallowTmpDirectory", RodaCoreFactory::initializeFileShallowTmpDirectoryPath,
+      "workingDirectory");
+    graph.addStep("synchronizationStateDirectory", RodaCoreFactory::initializeSynchronizationStateDir);
+    graph.addStep("jobAttachmentsDirectory", RodaCoreFactory::initializeJobAttachmentsDir);
+    graph.addStep("accessTokens", RodaCoreFactory::instantiateAccessTokens);
+    graph.addStep("distributedMode", RodaCoreFactory::instantiateDistributedMode);
+    graph.addStep("solrAndIndex", () -> instantiateSolrAndIndexService(nodeType), "workingDirectory",
+      "storageAndModel");
+
+    if (INSTANTIATE_LDAP) {
+      graph.addStep("apacheDS", RodaCoreFactory::startApacheDS);
+      graph.addStep("apacheDSIndex", RodaCoreFactory::indexUsersAndGroupsFromApacheDS, "apacheDS", "solrAndIndex");
+    }
+
+    if (INSTANTIATE_SCANNER) {
+      graph.addStep("transferredResourcesScanner", RodaCoreFactory::instantiateTransferredResourcesScanner,
+        "solrAndIndex");
+    }
+
+    if (INSTANTIATE_PLUGIN_ORCHESTRATOR) {
+      graph.addStep("orchestrator", RodaCoreFactory::instantiateOrchestrator, "solrAndIndex", "reportsDirectory",
+        "jobAttachmentsDirectory");
+    }
+
+    graph.addStep("nodeSpecificObjects", () -> instantiateNodeSpecificObjects(nodeType), "solrAndIndex");
+    graph.addStep("migrationVerification", () -> verifyMigration(nodeType), "solrAndIndex");
+    graph.addStep("defaultObjects", RodaCoreFactory::instantiateDefaultObjects, "migrationVerification");
+    graph.addStep("protocolManager", RodaCoreFactory::instantiateProtocolManager);
+    // resume the delivery of notifications left in the outbox
+    graph.addStep("notificationOutbox", NotificationOutbox::getInstance, "solrAndIndex");
+
+    // 20160920 hsilva: plugin manager must be the last thing to be instantiated
+    // as problems may araise when instantiating objects at the same time the
+    // plugin manager is loading both internal & external plugins (it looks like
+    // Reflections is the blame)
+    String[] everythingElse = graph.getSteps().stream().map(StartupGraph.Step::getName).toArray(String[]::new);
+    if (background) {
+      graph.addBackgroundStep("pluginManager", RodaCoreFactory::instantiatePluginManager, everythingElse);
+    } else {
+      graph.addStep("pluginManager", RodaCoreFactory::instantiatePluginManager, everythingElse);
+    }
+
+    // now that plugin manager is up, lets do some tasks that can only be done
+    // after it
+    if (nodeType == NodeType.PRIMARY && INSTANTIATE_PLUGIN_ORCHESTRATOR) {
+      StartupGraph.Action cleanUnfinishedJobs = () -> {
+        if (pluginOrchestrator != null) {
+          pluginOrchestrator.cleanUnfinishedJobsAsync();
+          LOGGER.debug("Finished clean unfinished jobs operation (doing jobs clean up asynchronously)");
+        }
+      };
+      if (background) {
+        graph.addBackgroundStep("cleanUnfinishedJobs", cleanUnfinishedJobs, "pluginManager", "orchestrator");
+      } else {
+        graph.addStep("cleanUnfinishedJobs", cleanUnfinishedJobs, "pluginManager", "orchestrator");
+      }
+    }
+
+    if (background && INSTANTIATE_PLUGIN_MANAGER && (nodeType == NodeType.PRIMARY || nodeType == NodeType.WORKER)) {
+      // first identification is slow as the signature files are loaded
+      graph.addBackgroundStep("siegfriedWarmUp", SiegfriedPluginUtils::getVersion);
+    }
+
+    return graph;
+  }
+
+  private static void verifyMigration(NodeType nodeType) throws GenericException {
+    MigrationManager migrationManager = new MigrationManager(dataPath);
+    if (NodeType.PRIMARY == nodeType
+      && migrationManager.isNecessaryToPerformMigration(getSolr(), tempIndexConfigsPath)) {
+      // migrationManager.setupModelMigrations();
+      // migrationManager.performModelMigrations();
+      throw new GenericException("It's necessary to do a model/index migration");
+    }
+  }
+
   private static void initializeDisposalBinDirectory() {
     try {
       String disposalBinFolder = getConfigurationString("disposal_bin.folder", RodaConstants.CORE_DISPOSAL_BIN_FOLDER);
@@ -1000,7 +1055,7 @@ public class RodaCoreFactory {
     }
   }
 
-  private static void copyFilesFromClasspath(String classpathPrefix, Path destinationDirectory,
+  public static void copyFilesFromClasspath(String classpathPrefix, Path destinationDirectory,
     boolean removeClasspathPrefixFromFinalPath) {
     copyFilesFromClasspath(classpathPrefix, destinationDirectory, removeClasspathPrefixFromFinalPath,
       Collections.emptyList());
@@ -1146,12 +1201,26 @@ public class RodaCoreFactory {
   }
 
   private static void instantiateStorageAndModel() throws GenericException {
-    storage = new StorageServiceWrapper(instantiateStorage(), nodeType);
+    StorageService storageService = instantiateStorage();
+    if (storageService instanceof FileStorageService) {
+      configureFileStorage((FileStorageService) storageService);
+    }
+    storage = new StorageServiceWrapper(storageService, nodeType);
     LOGGER.debug("Finished instantiating storage...");
     model = new ModelService(storage, eventsManager, nodeType, instanceId);
     LOGGER.debug("Finished instantiating model...");
   }
 
+  private static void configureFileStorage(FileStorageService fileStorageService) {
+    String copyMode = getRodaConfiguration().getString("core.storage.filesystem.versions.copy_mode",
+      FileCopyMode.COPY.name());
+    try {
+      fileStorageService.setVersionCopyMode(FileCopyMode.valueOf(copyMode.toUpperCase()));
+    } catch (IllegalArgumentException e) {
+      LOGGER.warn("Unknown binary version copy mode '{}', using {}", copyMode, fileStorageService.getVersionCopyMode());
+    }
+  }
+
   private static StorageService instantiateStorage() throws GenericException {
     String newStorageService = getRodaConfiguration().getString(RodaConstants.CORE_STORAGE_NEW_SERVICE);
     if (StringUtils.isNotBlank(newStorageService)) {
@@ -1248,7 +1317,7 @@ public class RodaCoreFactory {
         }
 
         // instantiate index related object
-        index = new IndexService(solr, model, metricsRegistry, rodaConfiguration, nodeType);
+        index = new IndexService(new LimitedSolrClient(solr), model, metricsRegistry, rodaConfiguration, nodeType);
       }
     }
 
@@ -1505,22 +1574,6 @@ public class RodaCoreFactory {
   }
 
   private static void instantiateNodeSpecificObjects(NodeType nodeType) {
-    if (INSTANTIATE_LDAP) {
-      LOGGER.debug("Starting up ApacheDS");
-      startApacheDS();
-      LOGGER.debug("Finishing starting up ApacheDS");
-    }
-
-    if (INSTANTIATE_SCANNER) {
-      instantiateTransferredResourcesScanner();
-      LOGGER.debug("Finished instantiating transferred resource scanner");
-    }
-
-    if (INSTANTIATE_PLUGIN_ORCHESTRATOR) {
-      instantiateOrchestrator();
-      LOGGER.debug("Finished instantiating orchestrator");
-    }
-
     if (nodeType == NodeType.PRIMARY) {
       processPreservationEventTypeProperties();
     } else if (nodeType == NodeType.TEST && !INSTANTIATE_LDAP && INSTANTIATE_SOLR) {
@@ -1615,6 +1668,9 @@ public class RodaCoreFactory {
 
   public static void shutdown() {
     if (instantiated) {
+      if (model != null) {
+        model.shutdownModelObservers();
+      }
       if (INSTANTIATE_SOLR) {
         try {
           solr.close();
@@ -1634,6 +1690,11 @@ public class RodaCoreFactory {
       if (INSTANTIATE_PLUGIN_ORCHESTRATOR) {
         pluginOrchestrator.shutdown();
       }
+      NotificationOutbox.shutdownInstance();
+      SubtaskExecutor.shutdownInstance();
+      if (transferredResourceUploads != null) {
+        transferredResourceUploads.shutdown();
+      }
       if (nodeType == NodeType.TEST) {
         // final cleanup
         FSUtils.deletePathQuietly(workingDirectoryPath);
@@ -1739,15 +1800,24 @@ public class RodaCoreFactory {
       }
 
       createRoles(rodaConfig);
-      if (checkIfWriteIsAllowed(getNodeType())) {
-        indexUsersAndGroupsFromLDAP();
-      }
+      apacheDSStarted = true;
     } catch (final Exception e) {
       LOGGER.error("Error starting up embedded ApacheDS", e);
       instantiatedWithoutErrors = false;
     }
   }
 
+  private static void indexUsersAndGroupsFromApacheDS() {
+    if (apacheDSStarted && checkIfWriteIsAllowed(getNodeType())) {
+      try {
+        indexUsersAndGroupsFromLDAP();
+      } catch (final Exception e) {
+        LOGGER.error("Error indexing users and groups from embedded ApacheDS", e);
+        instantiatedWithoutErrors = false;
+      }
+    }
+  }
+
   private static void stopApacheDS() {
     try {
       RodaCoreFactory.ldapUtility.stopService();
@@ -1816,6 +1886,19 @@ public class RodaCoreFactory {
 
       transferredResourcesScanner = new TransferredResourcesScanner(transferredResourcesFolderPath, getIndexService(),
         nodeType);
+
+      Path uploadsFolderPath = dataPath
+        .resolve(getConfigurationString("transferredResources.uploads.folder", "transferred-resources-uploads"));
+      long maxChunkSize = getRodaConfigurationAsInt(1024, "transferredResources", "uploads", "max_chunk_size_mb")
+        * 1024L * 1024L;
+      long expiry = getRodaConfigurationAsInt(24, "transferredResources", "uploads", "expiry_hours") * 3600000L;
+      transferredResourceUploads = new TransferredResourceUploads(transferredResourcesScanner, uploadsFolderPath,
+        maxChunkSize, expiry);
+      int expiryCheckInterval = getRodaConfigurationAsInt(60, "transferredResources", "uploads",
+        "expiry_check_interval_minutes");
+      if (expiryCheckInterval > 0) {
+        transferredResourceUploads.scheduleRemovalOfExpiredUploads(expiryCheckInterval, TimeUnit.MINUTES);
+      }
     } catch (final Exception e) {
       LOGGER.error("Error starting Transferred Resources Scanner: " + e.getMessage(), e);
       instantiatedWithoutErrors = false;
@@ -1867,6 +1950,10 @@ public class RodaCoreFactory {
     return transferredResourcesScanner;
   }
 
+  public static TransferredResourceUploads getTransferredResourceUploads() {
+    return transferredResourceUploads;
+  }
+
   public static NodeType getNodeType() {
     return nodeType;
   }
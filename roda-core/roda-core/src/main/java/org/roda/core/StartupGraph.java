@@ -0,0 +1,285 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.roda.core.data.exceptions.GenericException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Startup steps and the steps each one depends on, so that independent steps
+ * can run concurrently.
+ *
+ * <p>
+ * Critical steps must all finish before startup is considered done, and the
+ * failure of any of them aborts startup: steps not yet started are skipped, the
+ * ones already running are waited for, and the error is rethrown. Background
+ * steps (e.g. warm-ups) may finish afterwards and their failures are only
+ * logged. A critical step cannot depend on a background step.
+ * </p>
+ *
+ * <p>
+ * The time taken by each step is kept and, if a metric registry is given,
+ * reported in the {@code RodaCoreFactory.startup.<step>TimeInMilis}
+ * histograms.
+ * </p>
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+public class StartupGraph {
+  private static final Logger LOGGER = LoggerFactory.getLogger(StartupGraph.class);
+
+  @FunctionalInterface
+  public interface Action {
+    void run() throws Exception;
+  }
+
+  public static class Step {
+    private final String name;
+    private final List<String> dependencies;
+    private final boolean critical;
+    private final Action action;
+
+    private Step(String name, List<String> dependencies, boolean critical, Action action) {
+      this.name = name;
+      this.dependencies = dependencies;
+      this.critical = critical;
+      this.action = action;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public List<String> getDependencies() {
+      return dependencies;
+    }
+
+    public boolean isCritical() {
+      return critical;
+    }
+  }
+
+  private final Map<String, Step> steps = new LinkedHashMap<>();
+  private final Map<String, Long> durations = new ConcurrentHashMap<>();
+
+  public StartupGraph addStep(String name, Action action, String... dependencies) {
+    return add(name, true, action, dependencies);
+  }
+
+  public StartupGraph addBackgroundStep(String name, Action action, String... dependencies) {
+    return add(name, false, action, dependencies);
+  }
+
+  private StartupGraph add(String name, boolean critical, Action action, String... dependencies) {
+    if (steps.containsKey(name)) {
+      throw new IllegalArgumentException("Startup step '" + name + "' already exists");
+    }
+    List<String> dependencyList = new ArrayList<>();
+    Collections.addAll(dependencyList, dependencies);
+    steps.put(name, new Step(name, Collections.unmodifiableList(dependencyList), critical, action));
+    return this;
+  }
+
+  public Collection<Step> getSteps() {
+    return Collections.unmodifiableCollection(steps.values());
+  }
+
+  /**
+   * @return time in milliseconds taken by each step that has finished so far
+   */
+  public Map<String, Long> getDurations() {
+    return Collections.unmodifiableMap(durations);
+  }
+
+  /**
+   * Checks that all dependencies exist, that critical steps do not depend on
+   * background steps and that there are no cycles.
+   *
+   * @return the steps in an order respecting their dependencies, keeping the
+   *         order in which they were added whenever possible
+   */
+  public List<String> validate() throws GenericException {
+    Map<String, Integer> missingDependencies = new HashMap<>();
+    Map<String, List<String>> dependents = new HashMap<>();
+    for (Step step : steps.values()) {
+      for (String dependency : step.dependencies) {
+        Step dependencyStep = steps.get(dependency);
+        if (dependencyStep == null) {
+          throw new GenericException(
+            "Startup step '" + step.name + "' depends on unknown step '" + dependency + "'");
+        }
+        if (step.critical && !dependencyStep.critical) {
+          throw new GenericException(
+            "Startup step '" + step.name + "' cannot depend on background step '" + dependency + "'");
+        }
+        dependents.computeIfAbsent(dependency, k -> new ArrayList<>()).add(step.name);
+      }
+      missingDependencies.put(step.name, step.dependencies.size());
+    }
+
+    List<String> order = new ArrayList<>();
+    List<String> ready = new ArrayList<>();
+    for (Step step : steps.values()) {
+      if (step.dependencies.isEmpty()) {
+        ready.add(step.name);
+      }
+    }
+
+    List<String> names = new ArrayList<>(steps.keySet());
+    while (!ready.isEmpty()) {
+      // the first added of the ready steps
+      String next = ready.get(0);
+      for (String candidate : ready) {
+        if (names.indexOf(candidate) < names.indexOf(next)) {
+          next = candidate;
+        }
+      }
+      ready.remove(next);
+      order.add(next);
+      for (String dependent : dependents.getOrDefault(next, Collections.emptyList())) {
+        if (missingDependencies.merge(dependent, -1, Integer::sum) == 0) {
+          ready.add(dependent);
+        }
+      }
+    }
+
+    if (order.size() < steps.size()) {
+      List<String> inCycle = new ArrayList<>(steps.keySet());
+      inCycle.removeAll(order);
+      throw new GenericException("Startup steps have cyclic dependencies: " + inCycle);
+    }
+    return order;
+  }
+
+  /**
+   * Runs the steps one at a time, in the order given by {@link #validate()}.
+   * Background steps are also waited for.
+   */
+  public void runSequentially(MetricRegistry metrics) throws Exception {
+    for (String name : validate()) {
+      Step step = steps.get(name);
+      if (step.critical) {
+        execute(step, metrics);
+      } else {
+        try {
+          execute(step, metrics);
+        } catch (Exception e) {
+          LOGGER.error("Error in background startup step '{}'", name, e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Runs each step in the executor as soon as the steps it depends on have
+   * finished, and returns when all critical steps have finished.
+   *
+   * @return completes when all background steps have finished
+   * @throws Exception
+   *           the error of the first critical step that failed
+   */
+  public CompletableFuture<Void> run(Executor executor, MetricRegistry metrics) throws Exception {
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    Map<String, CompletableFuture<Void>> futures = new HashMap<>();
+    List<CompletableFuture<Void>> critical = new ArrayList<>();
+    List<CompletableFuture<Void>> background = new ArrayList<>();
+
+    for (String name : validate()) {
+      Step step = steps.get(name);
+      CompletableFuture<?>[] dependencies = step.dependencies.stream().map(futures::get)
+        .toArray(CompletableFuture<?>[]::new);
+      CompletableFuture<Void> future = CompletableFuture.allOf(dependencies).thenRunAsync(() -> {
+        if (failure.get() != null) {
+          throw new CancellationException("Startup aborted, skipping step '" + name + "'");
+        }
+        try {
+          execute(step, metrics);
+        } catch (Exception e) {
+          throw new CompletionException(e);
+        }
+      }, executor);
+
+      if (step.critical) {
+        future = future.whenComplete((result, e) -> {
+          if (e != null) {
+            failure.compareAndSet(null, unwrap(e));
+          }
+        });
+        critical.add(future);
+      } else {
+        future = future.whenComplete((result, e) -> {
+          if (e != null && failure.get() == null) {
+            LOGGER.error("Error in background startup step '{}'", name, unwrap(e));
+          }
+        });
+        background.add(future);
+      }
+      futures.put(name, future);
+    }
+
+    try {
+      // waits for every critical step, even after a failure, so nothing is left
+      // running when aborting
+      CompletableFuture.allOf(critical.toArray(new CompletableFuture<?>[0])).join();
+    } catch (CompletionException | CancellationException e) {
+      // the error is kept in failure
+    }
+
+    Throwable error = failure.get();
+    if (error instanceof Exception) {
+      throw (Exception) error;
+    } else if (error instanceof Error) {
+      throw (Error) error;
+    } else if (error != null) {
+      throw new GenericException("Startup failed", error);
+    }
+
+    return CompletableFuture.allOf(background.toArray(new CompletableFuture<?>[0])).handle((result, e) -> null);
+  }
+
+  private void execute(Step step, MetricRegistry metrics) throws Exception {
+    long start = System.nanoTime();
+    try {
+      step.action.run();
+    } finally {
+      long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      durations.put(step.name, duration);
+      if (metrics != null) {
+        metrics.histogram(MetricRegistry.name(RodaCoreFactory.class.getSimpleName(), "startup",
+          step.name + "TimeInMilis")).update(duration);
+      }
+      LOGGER.debug("Startup step '{}' took {} ms", step.name, duration);
+    }
+  }
+
+  private static Throwable unwrap(Throwable e) {
+    Throwable cause = e;
+    while (cause instanceof CompletionException && cause.getCause() != null) {
+      cause = cause.getCause();
+    }
+    return cause;
+  }
+}
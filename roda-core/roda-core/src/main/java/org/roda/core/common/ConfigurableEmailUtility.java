@@ -57,7 +57,7 @@ public class ConfigurableEmailUtility {
       throw new MessagingException();
     }
 
-    Session session = Session.getDefaultInstance(props, authenticator);
+    Session session = Session.getInstance(props, authenticator);
     session.setDebug(false);
 
     Message msg = new MimeMessage(session);
@@ -0,0 +1,132 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.roda.core.data.v2.ip.StoragePath;
+
+/**
+ * Bounded, in-memory hand over of checksums computed while a binary was being
+ * written (e.g. during ingest) to the code that later creates its PREMIS
+ * fixity, so the binary does not have to be read again. Entries are used only
+ * once and only if the size of the binary did not change. The storage service
+ * of the node drops them whenever their binaries are written, reverted, moved
+ * or deleted, so a rewrite keeping the size cannot reuse stale checksums.
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+public final class FixityCache {
+  private static final int MAX_ENTRIES = 50000;
+
+  private static final Map<StoragePath, Entry> ENTRIES = new LinkedHashMap<StoragePath, Entry>(16, 0.75f, true) {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<StoragePath, Entry> eldest) {
+      return size() > MAX_ENTRIES;
+    }
+  };
+
+  private FixityCache() {
+    // do nothing
+  }
+
+  /**
+   * @param checksums
+   *          checksums by algorithm, as computed by
+   *          {@link org.roda.core.util.FileUtility#checksums(java.io.InputStream, Collection)}
+   */
+  public static void put(StoragePath storagePath, long sizeInBytes, Map<String, String> checksums) {
+    synchronized (ENTRIES) {
+      ENTRIES.put(storagePath, new Entry(sizeInBytes, new HashMap<>(checksums)));
+    }
+  }
+
+  /**
+   * @return the checksums of all the given algorithms or <code>null</code> if
+   *         they are not known
+   */
+  public static Map<String, String> take(StoragePath storagePath, Long sizeInBytes, Collection<String> algorithms) {
+    Entry entry;
+    synchronized (ENTRIES) {
+      entry = ENTRIES.remove(storagePath);
+    }
+
+    if (entry != null && sizeInBytes != null && entry.sizeInBytes == sizeInBytes
+      && entry.checksums.keySet().containsAll(algorithms)) {
+      Map<String, String> ret = new HashMap<>();
+      for (String algorithm : algorithms) {
+        ret.put(algorithm, entry.checksums.get(algorithm));
+      }
+      return ret;
+    }
+    return null;
+  }
+
+  /**
+   * @return true if the checksums of all the given algorithms are known, without
+   *         using them
+   */
+  public static boolean contains(StoragePath storagePath, Long sizeInBytes, Collection<String> algorithms) {
+    Entry entry;
+    synchronized (ENTRIES) {
+      entry = ENTRIES.get(storagePath);
+    }
+    return entry != null && sizeInBytes != null && entry.sizeInBytes == sizeInBytes
+      && entry.checksums.keySet().containsAll(algorithms);
+  }
+
+  /**
+   * Forget the checksums of the binary at the given path, as its content
+   * changed.
+   */
+  public static void invalidate(StoragePath storagePath) {
+    synchronized (ENTRIES) {
+      ENTRIES.remove(storagePath);
+    }
+  }
+
+  /**
+   * Forget the checksums of the binary at the given path and of all binaries
+   * under it (e.g. a directory that was deleted or moved).
+   */
+  public static void invalidateRecursively(StoragePath storagePath) {
+    List<String> prefix = storagePath.asList();
+    synchronized (ENTRIES) {
+      Iterator<StoragePath> it = ENTRIES.keySet().iterator();
+      while (it.hasNext()) {
+        List<String> path = it.next().asList();
+        if (path.size() >= prefix.size() && path.subList(0, prefix.size()).equals(prefix)) {
+          it.remove();
+        }
+      }
+    }
+  }
+
+  public static void clear() {
+    synchronized (ENTRIES) {
+      ENTRIES.clear();
+    }
+  }
+
+  private static final class Entry {
+    private final long sizeInBytes;
+    private final Map<String, String> checksums;
+
+    private Entry(long sizeInBytes, Map<String, String> checksums) {
+      this.sizeInBytes = sizeInBytes;
+      this.checksums = checksums;
+    }
+  }
+}
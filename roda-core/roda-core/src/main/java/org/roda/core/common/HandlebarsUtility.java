@@ -11,11 +11,16 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
 
 import org.roda.core.data.exceptions.GenericException;
 
 import com.github.jknack.handlebars.Handlebars;
 import com.github.jknack.handlebars.Template;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 
 public class HandlebarsUtility {
   private static final Handlebars HANDLEBARS = new Handlebars();
@@ -24,6 +29,18 @@ public class HandlebarsUtility {
   private static final String CONDITION_AND = "&&";
   private static final String CONDITION_OR = "||";
 
+  /**
+   * Compiled templates, by their source, as the same few templates are applied
+   * over and over.
+   */
+  private static final LoadingCache<String, Template> TEMPLATES = CacheBuilder.newBuilder().maximumSize(200)
+    .build(new CacheLoader<String, Template>() {
+      @Override
+      public Template load(String template) throws IOException {
+        return getHandlebars().compileInline(template);
+      }
+    });
+
   private HandlebarsUtility() {
     super();
   }
@@ -65,10 +82,17 @@ public class HandlebarsUtility {
 
   public static String executeHandlebars(String template, Map<String, ?> scopes) throws GenericException {
     try {
-      Template templ = getHandlebars().compileInline(template);
+      Template templ = TEMPLATES.get(template);
       return templ.apply(scopes);
     } catch (IOException e) {
       throw new GenericException(e);
+    } catch (ExecutionException e) {
+      throw new GenericException(e.getCause());
+    } catch (UncheckedExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
     }
   }
 
@@ -71,6 +71,7 @@ import org.roda.core.data.v2.user.User;
 import org.roda.core.data.v2.validation.ValidationException;
 import org.roda.core.index.IndexService;
 import org.roda.core.index.utils.SolrUtils;
+import org.roda.core.model.MetadataBatch;
 import org.roda.core.model.ModelService;
 import org.roda.core.model.utils.ModelUtils;
 import org.roda.core.plugins.Plugin;
@@ -135,16 +136,20 @@ public final class PremisV3Utils {
   public static List<Fixity> calculateFixities(Binary binary, Collection<String> algorithms, String originator)
     throws IOException, NoSuchAlgorithmException {
     List<Fixity> ret = new ArrayList<>();
-    try (InputStream stream = binary.getContent().createInputStream()) {
-      Map<String, String> checksums = FileUtility.checksums(stream, algorithms);
-
-      for (Entry<String, String> entry : checksums.entrySet()) {
-        String algorithm = entry.getKey();
-        String checksum = entry.getValue();
-        ret.add(new Fixity(algorithm, checksum, originator));
+    // checksums may have been computed while the binary was written
+    Map<String, String> checksums = FixityCache.take(binary.getStoragePath(), binary.getSizeInBytes(), algorithms);
+    if (checksums == null) {
+      try (InputStream stream = binary.getContent().createInputStream()) {
+        checksums = FileUtility.checksums(stream, algorithms);
       }
     }
 
+    for (Entry<String, String> entry : checksums.entrySet()) {
+      String algorithm = entry.getKey();
+      String checksum = entry.getValue();
+      ret.add(new Fixity(algorithm, checksum, originator));
+    }
+
     return ret;
   }
 
@@ -985,47 +990,69 @@ public final class PremisV3Utils {
   public static void updateFormatPreservationMetadata(ModelService model, String aipId, String representationId,
     List<String> fileDirectoryPath, String fileId, String format, String version, String pronom, String mime,
     String username, boolean notify) {
-    Binary premisBin;
+    try {
+      ContentPayload premisFilePayload = updatedFormatPreservationFile(model, aipId, representationId,
+        fileDirectoryPath, fileId, format, version, pronom, mime, username);
+      String id = IdUtils.getPreservationFileId(fileId, RODAInstanceUtils.getLocalInstanceIdentifier());
+      model.updatePreservationMetadata(id, PreservationMetadataType.FILE, aipId, representationId, fileDirectoryPath,
+        fileId, premisFilePayload, username, notify);
+    } catch (RODAException | IOException e) {
+      LOGGER.error("PREMIS will not be updated due to an error", e);
+    }
+  }
 
+  /**
+   * Same as
+   * {@link #updateFormatPreservationMetadata(ModelService, String, String, List, String, String, String, String, String, String, boolean)}
+   * but leaving the update of the AIP metadata to the given batch.
+   */
+  public static void updateFormatPreservationMetadata(ModelService model, MetadataBatch batch, String aipId,
+    String representationId, List<String> fileDirectoryPath, String fileId, String format, String version,
+    String pronom, String mime, String username) {
     try {
-      try {
-        premisBin = model.retrievePreservationFile(aipId, representationId, fileDirectoryPath, fileId);
-      } catch (NotFoundException e) {
-        LOGGER.debug("PREMIS object skeleton does not exist yet. Creating PREMIS object!");
-        List<String> algorithms = RodaCoreFactory.getFixityAlgorithms();
+      ContentPayload premisFilePayload = updatedFormatPreservationFile(model, aipId, representationId,
+        fileDirectoryPath, fileId, format, version, pronom, mime, username);
+      String id = IdUtils.getPreservationFileId(fileId, RODAInstanceUtils.getLocalInstanceIdentifier());
+      batch.updatePreservationMetadata(id, PreservationMetadataType.FILE, aipId, representationId, fileDirectoryPath,
+        fileId, premisFilePayload);
+    } catch (RODAException | IOException e) {
+      LOGGER.error("PREMIS will not be updated due to an error", e);
+    }
+  }
 
-        if (fileId == null) {
-          PremisSkeletonPluginUtils.createPremisSkeletonOnRepresentation(model, aipId, representationId, algorithms,
-            username);
-        } else {
-          // File file;
-          // if (shallow) {
-          // file = model.retrieveFileInsideManifest(aipId, representationId,
-          // fileDirectoryPath, fileId);
-          // } else {
-          // file = model.retrieveFile(aipId, representationId, fileDirectoryPath,
-          // fileId);
-          // }
-          File file = model.retrieveFile(aipId, representationId, fileDirectoryPath, fileId);
-          PremisSkeletonPluginUtils.createPremisSkeletonOnFile(model, file, algorithms, username);
-        }
+  private static ContentPayload updatedFormatPreservationFile(ModelService model, String aipId,
+    String representationId, List<String> fileDirectoryPath, String fileId, String format, String version,
+    String pronom, String mime, String username) throws RODAException, IOException {
+    Binary premisBin;
+    try {
+      premisBin = model.retrievePreservationFile(aipId, representationId, fileDirectoryPath, fileId);
+    } catch (NotFoundException e) {
+      LOGGER.debug("PREMIS object skeleton does not exist yet. Creating PREMIS object!");
+      List<String> algorithms = RodaCoreFactory.getFixityAlgorithms();
 
-        premisBin = model.retrievePreservationFile(aipId, representationId, fileDirectoryPath, fileId);
-        LOGGER.debug("PREMIS object skeleton created");
+      if (fileId == null) {
+        PremisSkeletonPluginUtils.createPremisSkeletonOnRepresentation(model, aipId, representationId, algorithms,
+          username);
+      } else {
+        // File file;
+        // if (shallow) {
+        // file = model.retrieveFileInsideManifest(aipId, representationId,
+        // fileDirectoryPath, fileId);
+        // } else {
+        // file = model.retrieveFile(aipId, representationId, fileDirectoryPath,
+        // fileId);
+        // }
+        File file = model.retrieveFile(aipId, representationId, fileDirectoryPath, fileId);
+        PremisSkeletonPluginUtils.createPremisSkeletonOnFile(model, file, algorithms, username);
       }
 
-      gov.loc.premis.v3.File premisFile = binaryToFile(premisBin.getContent(), false);
-      PremisV3Utils.updateFileFormat(premisFile, format, version, pronom, mime);
-
-      PreservationMetadataType type = PreservationMetadataType.FILE;
-      String id = IdUtils.getPreservationFileId(fileId, RODAInstanceUtils.getLocalInstanceIdentifier());
-
-      ContentPayload premisFilePayload = fileToBinary(premisFile);
-      model.updatePreservationMetadata(id, type, aipId, representationId, fileDirectoryPath, fileId, premisFilePayload,
-        username, notify);
-    } catch (RODAException | IOException e) {
-      LOGGER.error("PREMIS will not be updated due to an error", e);
+      premisBin = model.retrievePreservationFile(aipId, representationId, fileDirectoryPath, fileId);
+      LOGGER.debug("PREMIS object skeleton created");
     }
+
+    gov.loc.premis.v3.File premisFile = binaryToFile(premisBin.getContent(), false);
+    PremisV3Utils.updateFileFormat(premisFile, format, version, pronom, mime);
+    return fileToBinary(premisFile);
   }
 
   public static Representation binaryToRepresentation(ContentPayload payload, boolean validate)
@@ -0,0 +1,480 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common.monitor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.commons.lang3.StringUtils;
+import org.roda.core.data.exceptions.AlreadyExistsException;
+import org.roda.core.data.exceptions.AuthorizationDeniedException;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.RequestNotValidException;
+import org.roda.core.data.utils.JsonUtils;
+import org.roda.core.data.v2.ip.TransferredResource;
+import org.roda.core.data.v2.ip.TransferredResourceUpload;
+import org.roda.core.storage.fs.FSUtils;
+import org.roda.core.util.FileUtility;
+import org.roda.core.util.IdUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resumable uploads of files into the transfer area, in chunks.
+ *
+ * <p>
+ * Each upload has a folder of its own, outside the transfer area, with its
+ * description and the chunks received so far. Chunks can be sent in any order,
+ * at the same time and again (e.g. after a dropped connection); each one is
+ * written to a temporary file and then renamed, with the checksum computed by
+ * the server in its name, so a chunk is either complete or absent. When the
+ * upload is completed the chunks are joined and the file is moved into the
+ * transfer area and indexed at once. Uploads without new chunks for a while
+ * expire and are removed by {@link #removeExpiredUploads()}, which can be
+ * scheduled with {@link #scheduleRemovalOfExpiredUploads(long, TimeUnit)}.
+ * </p>
+ *
+ * <p>
+ * Chunks are received under the read lock of their upload and the upload is
+ * completed or removed under its write lock, so the chunks are not changed
+ * while they are joined. Once an upload is being completed, which is marked
+ * by a file in its folder, no more chunks are accepted and it cannot be
+ * deleted.
+ * </p>
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+public class TransferredResourceUploads {
+  private static final Logger LOGGER = LoggerFactory.getLogger(TransferredResourceUploads.class);
+
+  public static final String CHECKSUM_ALGORITHM = "SHA-256";
+
+  private static final String UPLOAD_FILE = "upload.json";
+  private static final String COMPLETING_FILE = "completing";
+  private static final String CHUNK_PREFIX = "chunk-";
+  private static final String TEMP_SUFFIX = ".part";
+  private static final int BUFFER_SIZE = 1048576;
+
+  private final TransferredResourcesScanner scanner;
+  private final Path uploadsPath;
+  private final long maxChunkSize;
+  private final long expiryMillis;
+  private final Map<String, ReentrantReadWriteLock> locks = new ConcurrentHashMap<>();
+  private ScheduledExecutorService expiryScheduler;
+
+  /**
+   * @param uploadsPath
+   *          folder of the uploads, preferably in the same file system as the
+   *          transfer area so that completed files are moved instead of
+   *          copied
+   * @param expiryMillis
+   *          time after the last chunk after which an upload is removed
+   */
+  public TransferredResourceUploads(TransferredResourcesScanner scanner, Path uploadsPath, long maxChunkSize,
+    long expiryMillis) throws IOException {
+    this.scanner = scanner;
+    this.uploadsPath = Files.createDirectories(uploadsPath);
+    this.maxChunkSize = maxChunkSize;
+    this.expiryMillis = expiryMillis;
+  }
+
+  public long getMaxChunkSize() {
+    return maxChunkSize;
+  }
+
+  /**
+   * Periodically run {@link #removeExpiredUploads()} in a background thread.
+   */
+  public synchronized void scheduleRemovalOfExpiredUploads(long interval, TimeUnit unit) {
+    if (expiryScheduler == null) {
+      expiryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "transferred-resource-uploads-expiry");
+        thread.setDaemon(true);
+        return thread;
+      });
+      expiryScheduler.scheduleWithFixedDelay(() -> {
+        try {
+          removeExpiredUploads();
+        } catch (RuntimeException e) {
+          LOGGER.error("Error removing expired uploads", e);
+        }
+      }, interval, interval, unit);
+    }
+  }
+
+  public synchronized void shutdown() {
+    if (expiryScheduler != null) {
+      expiryScheduler.shutdownNow();
+      expiryScheduler = null;
+    }
+  }
+
+  public TransferredResourceUpload createUpload(String username, String parentUUID, String fileName, long fileSize,
+    long chunkSize) throws RequestNotValidException, GenericException {
+    if (StringUtils.isBlank(fileName) || fileName.contains("/") || fileName.contains("\\") || ".".equals(fileName)
+      || "..".equals(fileName)) {
+      throw new RequestNotValidException("Invalid file name: " + fileName);
+    }
+    if (fileSize < 0 || chunkSize <= 0 || chunkSize > maxChunkSize) {
+      throw new RequestNotValidException(
+        "File size must not be negative and chunk size must be between 1 and " + maxChunkSize + " bytes");
+    }
+    if (TransferredResourceUpload.getNumberOfChunks(fileSize, chunkSize) > Integer.MAX_VALUE) {
+      throw new RequestNotValidException(
+        "A file of " + fileSize + " bytes needs more than " + Integer.MAX_VALUE + " chunks of " + chunkSize + " bytes");
+    }
+
+    TransferredResourceUpload upload = new TransferredResourceUpload();
+    upload.setId(IdUtils.createUUID());
+    upload.setUsername(username);
+    upload.setParentUUID(StringUtils.isNotBlank(parentUUID) ? parentUUID : null);
+    upload.setFileName(fileName);
+    upload.setFileSize(fileSize);
+    upload.setChunkSize(chunkSize);
+    upload.setCreatedOn(new Date());
+
+    try {
+      Path uploadPath = Files.createDirectory(uploadsPath.resolve(upload.getId()));
+      Path temp = uploadPath.resolve(UPLOAD_FILE + TEMP_SUFFIX);
+      JsonUtils.writeObjectToFile(upload, temp);
+      Files.move(temp, uploadPath.resolve(UPLOAD_FILE), StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw new GenericException("Could not create upload of " + fileName, e);
+    }
+
+    upload.setExpiresOn(new Date(System.currentTimeMillis() + expiryMillis));
+    return upload;
+  }
+
+  /**
+   * @return the upload, with the chunks received so far
+   */
+  public TransferredResourceUpload retrieveUpload(String username, String uploadId)
+    throws NotFoundException, GenericException, AuthorizationDeniedException {
+    Path uploadPath = getUploadPath(uploadId);
+    TransferredResourceUpload upload = readUpload(uploadPath, username);
+    upload.setChunks(listChunks(uploadPath, uploadId));
+    try {
+      upload.setExpiresOn(new Date(Files.getLastModifiedTime(uploadPath).toMillis() + expiryMillis));
+    } catch (NoSuchFileException e) {
+      throw new NotFoundException("Upload not found: " + uploadId);
+    } catch (IOException e) {
+      throw new GenericException("Could not read upload " + uploadId, e);
+    }
+    return upload;
+  }
+
+  /**
+   * Receives one chunk of the file, replacing it if it was already received.
+   *
+   * @param expectedChecksum
+   *          SHA-256 of the chunk, in hexadecimal, as computed by the client, or
+   *          null if it should not be verified
+   * @return the chunk, with the checksum computed by the server
+   */
+  public TransferredResourceUpload.Chunk putChunk(String username, String uploadId, int index, InputStream content,
+    String expectedChecksum)
+    throws NotFoundException, GenericException, AuthorizationDeniedException, RequestNotValidException {
+    Path uploadPath = getUploadPath(uploadId);
+    TransferredResourceUpload upload = readUpload(uploadPath, username);
+
+    if (index < 0 || index >= upload.getNumberOfChunks()) {
+      throw new RequestNotValidException(
+        "Chunk " + index + " is not between 0 and " + (upload.getNumberOfChunks() - 1));
+    }
+    long expectedSize = Math.min(upload.getChunkSize(), upload.getFileSize() - index * upload.getChunkSize());
+
+    Lock lock = getLock(uploadId).readLock();
+    lock.lock();
+    Path temp = uploadPath.resolve(CHUNK_PREFIX + index + "." + IdUtils.createUUID() + TEMP_SUFFIX);
+    try {
+      checkNotCompleting(uploadPath, uploadId);
+      MessageDigest digest = MessageDigest.getInstance(CHECKSUM_ALGORITHM);
+      long size;
+      try (OutputStream out = new DigestOutputStream(Files.newOutputStream(temp, StandardOpenOption.CREATE_NEW),
+        digest)) {
+        size = copy(content, out, expectedSize + 1);
+      }
+
+      if (size != expectedSize) {
+        throw new RequestNotValidException(
+          "Chunk " + index + " must have " + expectedSize + " bytes, but " + (size > expectedSize ? "more" : size)
+            + " were received");
+      }
+
+      String checksum = FileUtility.byteArrayToHexString(digest.digest());
+      if (StringUtils.isNotBlank(expectedChecksum) && !expectedChecksum.equalsIgnoreCase(checksum)) {
+        throw new RequestNotValidException(
+          "Checksum of chunk " + index + " does not match: expected " + expectedChecksum + " but got " + checksum);
+      }
+
+      Path chunkPath = uploadPath.resolve(CHUNK_PREFIX + index + "-" + checksum);
+      Files.move(temp, chunkPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      removeOtherVersions(uploadPath, index, chunkPath);
+      return new TransferredResourceUpload.Chunk(index, size, checksum);
+    } catch (NoSuchFileException e) {
+      throw new NotFoundException("Upload not found: " + uploadId);
+    } catch (IOException | NoSuchAlgorithmException e) {
+      throw new GenericException("Could not receive chunk " + index + " of upload " + uploadId, e);
+    } finally {
+      FSUtils.deletePathQuietly(temp);
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Joins the chunks and creates the file in the transfer area, removing the
+   * upload.
+   */
+  public TransferredResource completeUpload(String username, String uploadId) throws NotFoundException,
+    GenericException, AuthorizationDeniedException, RequestNotValidException, AlreadyExistsException {
+    Path uploadPath = getUploadPath(uploadId);
+    TransferredResourceUpload upload = readUpload(uploadPath, username);
+
+    Path completing = uploadPath.resolve(COMPLETING_FILE);
+    try {
+      Files.createFile(completing);
+    } catch (FileAlreadyExistsException e) {
+      throw new RequestNotValidException("Upload " + uploadId + " is already being completed");
+    } catch (NoSuchFileException e) {
+      throw new NotFoundException("Upload not found: " + uploadId);
+    } catch (IOException e) {
+      throw new GenericException("Could not complete upload " + uploadId, e);
+    }
+
+    // waits for the chunks being received, no more are accepted from now on
+    ReentrantReadWriteLock lock = getLock(uploadId);
+    lock.writeLock().lock();
+    Path assembled = uploadPath.resolve("assembled" + TEMP_SUFFIX);
+    try {
+      List<TransferredResourceUpload.Chunk> chunks = listChunks(uploadPath, uploadId);
+      if (chunks.size() != upload.getNumberOfChunks()) {
+        throw new RequestNotValidException(
+          "Upload " + uploadId + " has " + chunks.size() + " of " + upload.getNumberOfChunks() + " chunks");
+      }
+
+      try (FileChannel out = FileChannel.open(assembled, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+        for (TransferredResourceUpload.Chunk chunk : chunks) {
+          Path chunkPath = uploadPath.resolve(CHUNK_PREFIX + chunk.getIndex() + "-" + chunk.getChecksum());
+          try (FileChannel in = FileChannel.open(chunkPath, StandardOpenOption.READ)) {
+            long position = 0;
+            while (position < chunk.getSize()) {
+              position += in.transferTo(position, chunk.getSize() - position, out);
+            }
+          }
+        }
+      }
+
+      TransferredResource resource = scanner.createFile(upload.getParentUUID(), upload.getFileName(), assembled);
+      FSUtils.deletePathQuietly(uploadPath);
+      locks.remove(uploadId, lock);
+      return resource;
+    } catch (IOException e) {
+      throw new GenericException("Could not join the chunks of upload " + uploadId, e);
+    } finally {
+      FSUtils.deletePathQuietly(assembled);
+      FSUtils.deletePathQuietly(completing);
+      lock.writeLock().unlock();
+    }
+  }
+
+  public void deleteUpload(String username, String uploadId)
+    throws NotFoundException, GenericException, AuthorizationDeniedException, RequestNotValidException {
+    Path uploadPath = getUploadPath(uploadId);
+    readUpload(uploadPath, username);
+
+    ReentrantReadWriteLock lock = getLock(uploadId);
+    lock.writeLock().lock();
+    try {
+      checkNotCompleting(uploadPath, uploadId);
+      FSUtils.deletePathQuietly(uploadPath);
+      locks.remove(uploadId, lock);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Removes the uploads that did not receive chunks for longer than the expiry
+   * time.
+   *
+   * @return the number of removed uploads
+   */
+  public int removeExpiredUploads() {
+    int removed = 0;
+    long now = System.currentTimeMillis();
+    try (DirectoryStream<Path> uploads = Files.newDirectoryStream(uploadsPath)) {
+      for (Path uploadPath : uploads) {
+        String uploadId = uploadPath.getFileName().toString();
+        ReentrantReadWriteLock lock = getLock(uploadId);
+        // an upload receiving chunks or being completed is not expired
+        if (lock.writeLock().tryLock()) {
+          try {
+            if (isExpired(uploadPath, now) && !FSUtils.exists(uploadPath.resolve(COMPLETING_FILE))) {
+              LOGGER.info("Removing expired upload {}", uploadId);
+              FSUtils.deletePathQuietly(uploadPath);
+              locks.remove(uploadId, lock);
+              removed++;
+            } else if (!FSUtils.exists(uploadPath)) {
+              locks.remove(uploadId, lock);
+            }
+          } finally {
+            lock.writeLock().unlock();
+          }
+        }
+      }
+    } catch (IOException e) {
+      LOGGER.warn("Could not remove expired uploads", e);
+    }
+    return removed;
+  }
+
+  private ReentrantReadWriteLock getLock(String uploadId) {
+    return locks.computeIfAbsent(uploadId, id -> new ReentrantReadWriteLock());
+  }
+
+  private boolean isExpired(Path uploadPath, long now) {
+    try {
+      return now - Files.getLastModifiedTime(uploadPath).toMillis() > expiryMillis;
+    } catch (IOException e) {
+      LOGGER.debug("Could not check upload {}", uploadPath, e);
+      return false;
+    }
+  }
+
+  private static void checkNotCompleting(Path uploadPath, String uploadId) throws RequestNotValidException {
+    if (FSUtils.exists(uploadPath.resolve(COMPLETING_FILE))) {
+      throw new RequestNotValidException("Upload " + uploadId + " is being completed");
+    }
+  }
+
+  private Path getUploadPath(String uploadId) throws NotFoundException {
+    // upload ids are UUIDs, anything else could point outside the uploads
+    if (StringUtils.isBlank(uploadId) || !uploadId.matches("[0-9a-fA-F-]+")) {
+      throw new NotFoundException("Upload not found: " + uploadId);
+    }
+
+    Path uploadPath = uploadsPath.resolve(uploadId);
+    if (!FSUtils.exists(uploadPath)) {
+      throw new NotFoundException("Upload not found: " + uploadId);
+    }
+    // removed by the next run of removeExpiredUploads
+    if (isExpired(uploadPath, System.currentTimeMillis()) && !FSUtils.exists(uploadPath.resolve(COMPLETING_FILE))) {
+      throw new NotFoundException("Upload has expired: " + uploadId);
+    }
+    return uploadPath;
+  }
+
+  private TransferredResourceUpload readUpload(Path uploadPath, String username)
+    throws NotFoundException, GenericException, AuthorizationDeniedException {
+    Path uploadFile = uploadPath.resolve(UPLOAD_FILE);
+    if (!FSUtils.exists(uploadFile)) {
+      throw new NotFoundException("Upload not found: " + uploadPath.getFileName());
+    }
+
+    TransferredResourceUpload upload = JsonUtils.readObjectFromFile(uploadFile, TransferredResourceUpload.class);
+    if (!StringUtils.equals(upload.getUsername(), username)) {
+      throw new AuthorizationDeniedException("Upload " + upload.getId() + " belongs to another user");
+    }
+    return upload;
+  }
+
+  /**
+   * @return the complete chunks received so far, ordered by index
+   */
+  private static List<TransferredResourceUpload.Chunk> listChunks(Path uploadPath, String uploadId)
+    throws NotFoundException, GenericException {
+    TreeMap<Integer, TransferredResourceUpload.Chunk> chunks = new TreeMap<>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(uploadPath, CHUNK_PREFIX + "*")) {
+      for (Path file : files) {
+        TransferredResourceUpload.Chunk chunk = parseChunk(file);
+        if (chunk != null) {
+          chunks.put(chunk.getIndex(), chunk);
+        }
+      }
+    } catch (NoSuchFileException e) {
+      throw new NotFoundException("Upload not found: " + uploadId);
+    } catch (IOException e) {
+      throw new GenericException("Could not list the chunks of upload " + uploadId, e);
+    }
+    return new ArrayList<>(chunks.values());
+  }
+
+  /**
+   * @return the chunk of a file named chunk-INDEX-CHECKSUM, or null if the file
+   *         is not a complete chunk
+   */
+  private static TransferredResourceUpload.Chunk parseChunk(Path file) throws IOException {
+    String name = file.getFileName().toString();
+    if (name.endsWith(TEMP_SUFFIX)) {
+      return null;
+    }
+
+    String[] parts = name.substring(CHUNK_PREFIX.length()).split("-", 2);
+    if (parts.length != 2 || !StringUtils.isNumeric(parts[0])) {
+      return null;
+    }
+    return new TransferredResourceUpload.Chunk(Integer.parseInt(parts[0]), Files.size(file), parts[1]);
+  }
+
+  /**
+   * Removes the previous versions of a chunk that was received again, with
+   * other content.
+   */
+  private static void removeOtherVersions(Path uploadPath, int index, Path chunkPath) throws IOException {
+    List<Path> versions = new ArrayList<>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(uploadPath, CHUNK_PREFIX + index + "-*")) {
+      for (Path file : files) {
+        if (!file.equals(chunkPath) && !file.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+          versions.add(file);
+        }
+      }
+    }
+    versions.forEach(FSUtils::deletePathQuietly);
+  }
+
+  /**
+   * Copies up to limit bytes.
+   *
+   * @return the number of bytes copied
+   */
+  private static long copy(InputStream in, OutputStream out, long limit) throws IOException {
+    byte[] buffer = new byte[(int) Math.min(BUFFER_SIZE, Math.max(1, limit))];
+    long copied = 0;
+    int read;
+    while (copied < limit && (read = in.read(buffer, 0, (int) Math.min(buffer.length, limit - copied))) != -1) {
+      out.write(buffer, 0, read);
+      copied += read;
+    }
+    return copied;
+  }
+}
@@ -120,6 +120,80 @@ public class TransferredResourcesScanner {
     }
   }
 
+  /**
+   * Creates a file of the transfer area from a complete file outside it (e.g.
+   * an upload assembled from its chunks), moving it so that the file is never
+   * seen partially written. The file is first staged next to its final name
+   * and then linked to it, which fails if the name was taken meanwhile.
+   */
+  public TransferredResource createFile(String parentUUID, String fileName, Path source)
+    throws GenericException, NotFoundException, AlreadyExistsException, AuthorizationDeniedException {
+    Path parentPath;
+
+    RodaCoreFactory.checkIfWriteIsAllowedAndIfFalseThrowException(nodeType);
+
+    if (StringUtils.isNotBlank(parentUUID)) {
+      TransferredResource parent = index.retrieve(TransferredResource.class, parentUUID, fieldsToReturn);
+      parentPath = basePath.resolve(parent.getRelativePath());
+    } else {
+      parentPath = basePath;
+    }
+
+    Path file = parentPath.resolve(fileName);
+    Path staged = parentPath.resolve("." + fileName + "." + IdUtils.createUUID() + ".tmp");
+    try {
+      Files.createDirectories(parentPath);
+      if (FSUtils.exists(file)) {
+        throw new FileAlreadyExistsException(file.toString());
+      }
+
+      try {
+        Files.move(source, staged, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        // source is in another file system, so it is copied next to the file
+        Files.copy(source, staged);
+      }
+
+      claimName(staged, file);
+      Files.deleteIfExists(source);
+
+      BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+      TransferredResource resource = createTransferredResource(file, attrs, attrs.size(), basePath, new Date());
+      index.create(TransferredResource.class, resource);
+      return resource;
+    } catch (FileAlreadyExistsException e) {
+      LOGGER.error("Cannot create file", e);
+      throw new AlreadyExistsException(file.toString());
+    } catch (IOException e) {
+      LOGGER.error("Cannot create file", e);
+      throw new GenericException("Cannot create file", e);
+    } finally {
+      FSUtils.deletePathQuietly(staged);
+    }
+  }
+
+  /**
+   * Gives the name of the file to the staged file, without replacing a file
+   * created with that name by someone else.
+   */
+  private static void claimName(Path staged, Path file) throws IOException {
+    try {
+      Files.createLink(file, staged);
+    } catch (FileAlreadyExistsException e) {
+      throw e;
+    } catch (UnsupportedOperationException | FileSystemException e) {
+      // without hard links, an empty placeholder claims the name and is then
+      // replaced by the staged file
+      Files.createFile(file);
+      try {
+        Files.move(staged, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      } catch (IOException | RuntimeException e2) {
+        Files.deleteIfExists(file);
+        throw e2;
+      }
+    }
+  }
+
   public InputStream retrieveFile(String path) throws NotFoundException, RequestNotValidException, GenericException {
     InputStream ret;
     Path p = basePath.resolve(path);
@@ -10,14 +10,13 @@ package org.roda.core.common.notifications;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
-import jakarta.mail.MessagingException;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.roda.core.RodaCoreFactory;
-import org.roda.core.common.ConfigurableEmailUtility;
 import org.roda.core.common.HandlebarsUtility;
 import org.roda.core.data.common.RodaConstants;
 import org.roda.core.data.exceptions.GenericException;
@@ -36,6 +35,7 @@ public class EmailNotificationProcessor implements NotificationProcessor {
   private Map<String, Object> scope;
   private String templateName;
   private String localeString;
+  private NotificationDelivery delivery;
 
   public EmailNotificationProcessor(String templateName) {
     this.scope = new HashMap<>();
@@ -92,29 +92,37 @@ public class EmailNotificationProcessor implements NotificationProcessor {
       }
 
       scope.remove(RECIPIENT);
-      ConfigurableEmailUtility emailUtility = new ConfigurableEmailUtility(processedNotification.getFromUser(),
-        processedNotification.getSubject());
-
-      for (String recipient : recipients) {
-        String modifiedBody = getUpdatedMessageBody(model, notification, recipient, template, scope);
-        String host = RodaCoreFactory.getRodaConfigurationAsString("core", "email", "host");
-        if (StringUtils.isNotBlank(host)) {
-          LOGGER.debug("Sending email ...");
-          emailUtility.sendMail(recipient, modifiedBody);
-          LOGGER.debug("Email sent");
-          processedNotification.setState(NotificationState.COMPLETED);
-        } else {
+
+      String host = RodaCoreFactory.getRodaConfigurationAsString("core", "email", "host");
+      if (StringUtils.isBlank(host)) {
+        if (!recipients.isEmpty()) {
           processedNotification.setState(NotificationState.FAILED);
           LOGGER.debug("SMTP not defined, cannot send emails");
         }
+      } else if (!recipients.isEmpty()) {
+        // the e-mails are sent in the background, by the outbox
+        Map<String, String> messages = new LinkedHashMap<>();
+        for (String recipient : recipients) {
+          messages.put(recipient, getUpdatedMessageBody(model, notification, recipient, template, scope));
+        }
+        LOGGER.debug("Queueing {} emails ...", messages.size());
+        delivery = NotificationDelivery.email(processedNotification.getId(), processedNotification.getFromUser(),
+          processedNotification.getSubject(), messages);
       }
-    } catch (IOException | MessagingException | GenericException e) {
+    } catch (IOException | GenericException e) {
       processedNotification.setState(NotificationState.FAILED);
-      LOGGER.debug("Error sending e-mail: {}", e.getMessage());
+      LOGGER.debug("Error preparing e-mail: {}", e.getMessage());
     }
     return processedNotification;
   }
 
+  @Override
+  public void notificationCreated(ModelService model, Notification notification) {
+    if (delivery != null) {
+      NotificationOutbox.getInstance().deliver(notification, delivery);
+    }
+  }
+
   private String getUpdatedMessageBody(ModelService model, Notification notification, String recipient, String template,
     Map<String, Object> scopes) throws GenericException {
 
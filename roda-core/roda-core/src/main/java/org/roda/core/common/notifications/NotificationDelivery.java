@@ -0,0 +1,162 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common.notifications;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A notification waiting in the {@link NotificationOutbox} to be delivered,
+ * with everything needed to deliver it.
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+public class NotificationDelivery implements Serializable {
+  private static final long serialVersionUID = 2484917311538235129L;
+
+  public enum Type {
+    HTTP, EMAIL
+  }
+
+  private String id;
+  private String notificationId;
+  private Type type;
+  private String endpoint;
+  private String content;
+  private String fromUser;
+  private String subject;
+  private Map<String, String> messages = new LinkedHashMap<>();
+  private int attempts = 0;
+  private long nextAttempt = 0;
+
+  public NotificationDelivery() {
+    super();
+  }
+
+  /**
+   * @return a delivery of content posted to an HTTP endpoint
+   */
+  public static NotificationDelivery http(String notificationId, String endpoint, String content) {
+    NotificationDelivery delivery = new NotificationDelivery();
+    delivery.setNotificationId(notificationId);
+    delivery.setType(Type.HTTP);
+    delivery.setEndpoint(endpoint);
+    delivery.setContent(content);
+    return delivery;
+  }
+
+  /**
+   * @param messages
+   *          the message body of each recipient
+   * @return a delivery of e-mails
+   */
+  public static NotificationDelivery email(String notificationId, String fromUser, String subject,
+    Map<String, String> messages) {
+    NotificationDelivery delivery = new NotificationDelivery();
+    delivery.setNotificationId(notificationId);
+    delivery.setType(Type.EMAIL);
+    delivery.setFromUser(fromUser);
+    delivery.setSubject(subject);
+    delivery.setMessages(new LinkedHashMap<>(messages));
+    return delivery;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public void setId(String id) {
+    this.id = id;
+  }
+
+  public String getNotificationId() {
+    return notificationId;
+  }
+
+  public void setNotificationId(String notificationId) {
+    this.notificationId = notificationId;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public void setType(Type type) {
+    this.type = type;
+  }
+
+  public String getEndpoint() {
+    return endpoint;
+  }
+
+  public void setEndpoint(String endpoint) {
+    this.endpoint = endpoint;
+  }
+
+  public String getContent() {
+    return content;
+  }
+
+  public void setContent(String content) {
+    this.content = content;
+  }
+
+  public String getFromUser() {
+    return fromUser;
+  }
+
+  public void setFromUser(String fromUser) {
+    this.fromUser = fromUser;
+  }
+
+  public String getSubject() {
+    return subject;
+  }
+
+  public void setSubject(String subject) {
+    this.subject = subject;
+  }
+
+  /**
+   * @return the message body of each recipient not delivered yet
+   */
+  public Map<String, String> getMessages() {
+    return messages;
+  }
+
+  public void setMessages(Map<String, String> messages) {
+    this.messages = messages;
+  }
+
+  public int getAttempts() {
+    return attempts;
+  }
+
+  public void setAttempts(int attempts) {
+    this.attempts = attempts;
+  }
+
+  /**
+   * @return when the delivery is to be attempted next, in milliseconds since
+   *         the epoch
+   */
+  public long getNextAttempt() {
+    return nextAttempt;
+  }
+
+  public void setNextAttempt(long nextAttempt) {
+    this.nextAttempt = nextAttempt;
+  }
+
+  @Override
+  public String toString() {
+    return "NotificationDelivery [id=" + id + ", notificationId=" + notificationId + ", type=" + type + ", endpoint="
+      + endpoint + ", attempts=" + attempts + "]";
+  }
+}
@@ -0,0 +1,436 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common.notifications;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import jakarta.mail.MessagingException;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.common.ConfigurableEmailUtility;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.AuthorizationDeniedException;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.utils.JsonUtils;
+import org.roda.core.data.v2.notifications.Notification;
+import org.roda.core.data.v2.notifications.NotificationState;
+import org.roda.core.model.ModelService;
+import org.roda.core.util.IdUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Delivers notifications in the background, so that jobs do not wait for slow
+ * mail servers or HTTP endpoints.
+ *
+ * <p>
+ * Each delivery is first written to the outbox, a folder of the node, and
+ * removed once delivered, so deliveries survive restarts. Failed deliveries are
+ * retried later, with a delay that doubles on each attempt, until they are
+ * given up and moved to the failed folder of the outbox. The state of the
+ * notification is updated when its delivery is done.
+ * </p>
+ *
+ * <p>
+ * HTTP notifications are posted through a pool of connections, and at most a
+ * few deliveries go to the same endpoint (or mail server) at a time
+ * ({@code core.notification.outbox.*}).
+ * </p>
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+public class NotificationOutbox {
+  private static final Logger LOGGER = LoggerFactory.getLogger(NotificationOutbox.class);
+
+  private static final String DELIVERY_EXTENSION = ".json";
+  private static final String TEMP_PREFIX = ".";
+  private static final String FAILED_FOLDER = "failed";
+  private static final String EMAIL_ENDPOINT = "smtp";
+  private static final long BUSY_ENDPOINT_DELAY_MILLIS = 500;
+  private static final String HTTP_METRICS_NAME = HTTPNotificationProcessor.class.getSimpleName();
+
+  private enum Outcome {
+    DELIVERED, RETRY, FAILED
+  }
+
+  private static NotificationOutbox instance;
+
+  private final Path directory;
+  private final int maxPerEndpoint;
+  private final int maxAttempts;
+  private final long retryDelayMillis;
+  private final long maxRetryDelayMillis;
+  private final ScheduledExecutorService dispatcher;
+  private final CloseableHttpClient httpClient;
+  private final Map<String, Semaphore> endpointPermits = new ConcurrentHashMap<>();
+  private final Set<String> scheduled = ConcurrentHashMap.newKeySet();
+  private volatile ModelService model;
+
+  /**
+   * @param directory
+   *          the outbox folder
+   * @param threads
+   *          deliveries done at the same time
+   * @param maxPerEndpoint
+   *          deliveries done at the same time to each endpoint
+   * @param maxAttempts
+   *          attempts before a delivery is given up
+   * @param retryDelayMillis
+   *          delay before the first retry, doubled on each retry
+   * @param maxRetryDelayMillis
+   *          maximum delay between retries
+   * @param httpTimeout
+   *          timeout of HTTP connections and requests, in milliseconds
+   */
+  public NotificationOutbox(Path directory, int threads, int maxPerEndpoint, int maxAttempts, long retryDelayMillis,
+    long maxRetryDelayMillis, int httpTimeout) {
+    this.directory = directory;
+    this.maxPerEndpoint = Math.max(1, maxPerEndpoint);
+    this.maxAttempts = Math.max(1, maxAttempts);
+    this.retryDelayMillis = retryDelayMillis;
+    this.maxRetryDelayMillis = maxRetryDelayMillis;
+
+    AtomicInteger count = new AtomicInteger();
+    this.dispatcher = Executors.newScheduledThreadPool(Math.max(1, threads), runnable -> {
+      Thread thread = new Thread(runnable, "notification-outbox-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+    connectionManager.setDefaultMaxPerRoute(this.maxPerEndpoint);
+    connectionManager.setMaxTotal(Math.max(threads, this.maxPerEndpoint));
+    RequestConfig requestConfig = RequestConfig.custom().setSocketTimeout(httpTimeout).setConnectTimeout(httpTimeout)
+      .setConnectionRequestTimeout(httpTimeout).build();
+    this.httpClient = HttpClients.custom().setConnectionManager(connectionManager)
+      .setDefaultRequestConfig(requestConfig).build();
+  }
+
+  /**
+   * @return the outbox of this node, started on first use
+   */
+  public static synchronized NotificationOutbox getInstance() {
+    if (instance == null) {
+      Path directory = RodaCoreFactory.getDataPath().resolve(RodaConstants.CORE_NOTIFICATION_OUTBOX_FOLDER);
+      instance = new NotificationOutbox(directory,
+        RodaCoreFactory.getProperty(RodaConstants.NOTIFICATION_OUTBOX_THREADS, 4),
+        RodaCoreFactory.getProperty(RodaConstants.NOTIFICATION_OUTBOX_MAX_PER_ENDPOINT, 2),
+        RodaCoreFactory.getProperty(RodaConstants.NOTIFICATION_OUTBOX_MAX_ATTEMPTS, 10),
+        TimeUnit.SECONDS.toMillis(RodaCoreFactory.getProperty(RodaConstants.NOTIFICATION_OUTBOX_RETRY_DELAY, 30)),
+        TimeUnit.SECONDS.toMillis(RodaCoreFactory.getProperty(RodaConstants.NOTIFICATION_OUTBOX_MAX_RETRY_DELAY, 3600)),
+        RodaCoreFactory.getProperty(RodaConstants.NOTIFICATION_HTTP_TIMEOUT, 10000));
+      instance.start(RodaCoreFactory.getModelService());
+    }
+    return instance;
+  }
+
+  public static synchronized void shutdownInstance() {
+    if (instance != null) {
+      instance.shutdown();
+      instance = null;
+    }
+  }
+
+  /**
+   * Starts delivering, beginning with the deliveries left in the outbox.
+   *
+   * @param model
+   *          where the state of delivered notifications is updated
+   */
+  public void start(ModelService model) {
+    this.model = model;
+    List<NotificationDelivery> pending = load();
+    if (!pending.isEmpty()) {
+      LOGGER.info("Resuming the delivery of {} notifications", pending.size());
+    }
+    pending.forEach(this::schedule);
+  }
+
+  public void shutdown() {
+    dispatcher.shutdownNow();
+    try {
+      httpClient.close();
+    } catch (IOException e) {
+      LOGGER.debug("Error closing HTTP client", e);
+    }
+  }
+
+  /**
+   * Adds a delivery to the outbox, to be delivered as soon as possible. If it
+   * cannot be added, the notification is marked as failed.
+   */
+  public void deliver(Notification notification, NotificationDelivery delivery) {
+    try {
+      enqueue(delivery);
+    } catch (GenericException e) {
+      LOGGER.error("Could not add notification {} to the outbox", notification.getId(), e);
+      notification.setState(NotificationState.FAILED);
+      updateNotificationState(notification.getId(), NotificationState.FAILED);
+    }
+  }
+
+  /**
+   * Adds a delivery to the outbox, delivered as soon as possible if the outbox
+   * is started.
+   */
+  public void enqueue(NotificationDelivery delivery) throws GenericException {
+    if (delivery.getId() == null) {
+      delivery.setId(IdUtils.createUUID());
+    }
+    write(delivery);
+    if (model != null) {
+      schedule(delivery);
+    }
+  }
+
+  private void schedule(NotificationDelivery delivery) {
+    if (scheduled.add(delivery.getId())) {
+      reschedule(delivery, delivery.getNextAttempt() - System.currentTimeMillis());
+    }
+  }
+
+  private void reschedule(NotificationDelivery delivery, long delayMillis) {
+    dispatcher.schedule(() -> attempt(delivery), Math.max(0, delayMillis), TimeUnit.MILLISECONDS);
+  }
+
+  private void attempt(NotificationDelivery delivery) {
+    Semaphore permits = endpointPermits.computeIfAbsent(getEndpointKey(delivery),
+      key -> new Semaphore(maxPerEndpoint));
+    if (!permits.tryAcquire()) {
+      reschedule(delivery, BUSY_ENDPOINT_DELAY_MILLIS);
+      return;
+    }
+
+    Outcome outcome;
+    try {
+      outcome = NotificationDelivery.Type.HTTP.equals(delivery.getType()) ? deliverHttp(delivery)
+        : deliverEmail(delivery);
+    } catch (RuntimeException e) {
+      LOGGER.warn("Error delivering {}", delivery, e);
+      outcome = Outcome.RETRY;
+    } finally {
+      permits.release();
+    }
+
+    delivery.setAttempts(delivery.getAttempts() + 1);
+    if (Outcome.DELIVERED.equals(outcome)) {
+      LOGGER.debug("Delivered {}", delivery);
+      remove(delivery, false);
+      updateNotificationState(delivery.getNotificationId(), NotificationState.COMPLETED);
+    } else if (Outcome.FAILED.equals(outcome) || delivery.getAttempts() >= maxAttempts) {
+      LOGGER.warn("Giving up {}", delivery);
+      remove(delivery, true);
+      updateNotificationState(delivery.getNotificationId(), NotificationState.FAILED);
+    } else {
+      long delay = getRetryDelay(delivery.getAttempts());
+      LOGGER.debug("Will retry {} in {} ms", delivery, delay);
+      delivery.setNextAttempt(System.currentTimeMillis() + delay);
+      try {
+        write(delivery);
+      } catch (GenericException e) {
+        LOGGER.warn("Could not update {} in the outbox", delivery, e);
+      }
+      reschedule(delivery, delay);
+    }
+  }
+
+  private long getRetryDelay(int attempts) {
+    long delay = retryDelayMillis << Math.min(attempts - 1, 30);
+    if (delay <= 0 || delay > maxRetryDelayMillis) {
+      delay = maxRetryDelayMillis;
+    }
+    // spread the retries of deliveries that failed together
+    return delay + ThreadLocalRandom.current().nextLong(delay / 10 + 1);
+  }
+
+  private Outcome deliverHttp(NotificationDelivery delivery) {
+    Outcome outcome;
+    HttpPost post = new HttpPost(delivery.getEndpoint());
+    post.setEntity(
+      new StringEntity(delivery.getContent(), ContentType.create("application/json", RodaConstants.DEFAULT_ENCODING)));
+    try (CloseableHttpResponse response = httpClient.execute(post)) {
+      int status = response.getStatusLine().getStatusCode();
+      // the response is consumed so that the connection goes back to the pool
+      String responseTxt = response.getEntity() != null ? EntityUtils.toString(response.getEntity()) : null;
+      if (status >= HttpStatus.SC_OK && status < HttpStatus.SC_MULTIPLE_CHOICES) {
+        LOGGER.debug("HTTP response: {}", responseTxt);
+        outcome = Outcome.DELIVERED;
+      } else {
+        LOGGER.debug("HTTP POST of {} returned {}", delivery, status);
+        outcome = isPermanentFailure(status) ? Outcome.FAILED : Outcome.RETRY;
+      }
+    } catch (IOException | IllegalArgumentException e) {
+      LOGGER.debug("HTTP POST error: {}", e.getMessage());
+      outcome = Outcome.RETRY;
+    }
+
+    MetricRegistry metrics = RodaCoreFactory.getMetrics();
+    if (metrics != null) {
+      boolean delivered = Outcome.DELIVERED.equals(outcome);
+      metrics.counter(MetricRegistry.name(HTTP_METRICS_NAME,
+        delivered ? "notificationSentWithSuccess" : "notificationSentWithFailure")).inc();
+      metrics.histogram(MetricRegistry.name(HTTP_METRICS_NAME, "notificationSentWithSuccessHistogram"))
+        .update(metrics.counter(MetricRegistry.name(HTTP_METRICS_NAME, "notificationSentWithSuccess")).getCount());
+      metrics.histogram(MetricRegistry.name(HTTP_METRICS_NAME, "notificationSentWithFailureHistogram"))
+        .update(metrics.counter(MetricRegistry.name(HTTP_METRICS_NAME, "notificationSentWithFailure")).getCount());
+    }
+    return outcome;
+  }
+
+  private static boolean isPermanentFailure(int status) {
+    return status >= HttpStatus.SC_BAD_REQUEST && status < HttpStatus.SC_INTERNAL_SERVER_ERROR
+      && status != HttpStatus.SC_REQUEST_TIMEOUT && status != 429;
+  }
+
+  private Outcome deliverEmail(NotificationDelivery delivery) {
+    String host = RodaCoreFactory.getRodaConfigurationAsString("core", "email", "host");
+    if (StringUtils.isBlank(host)) {
+      LOGGER.debug("SMTP not defined, cannot send emails");
+      return Outcome.FAILED;
+    }
+
+    ConfigurableEmailUtility emailUtility = new ConfigurableEmailUtility(delivery.getFromUser(),
+      delivery.getSubject());
+    // recipients already sent to are removed, so that retries do not send to
+    // them again
+    Iterator<Map.Entry<String, String>> messages = delivery.getMessages().entrySet().iterator();
+    while (messages.hasNext()) {
+      Map.Entry<String, String> message = messages.next();
+      try {
+        LOGGER.debug("Sending email ...");
+        emailUtility.sendMail(message.getKey(), message.getValue());
+        LOGGER.debug("Email sent");
+        messages.remove();
+      } catch (MessagingException | IOException e) {
+        LOGGER.debug("Error sending e-mail: {}", e.getMessage());
+        return Outcome.RETRY;
+      }
+    }
+    return Outcome.DELIVERED;
+  }
+
+  private static String getEndpointKey(NotificationDelivery delivery) {
+    if (NotificationDelivery.Type.EMAIL.equals(delivery.getType())) {
+      return EMAIL_ENDPOINT;
+    }
+    try {
+      URI uri = new URI(delivery.getEndpoint());
+      return uri.getScheme() + "://" + uri.getAuthority();
+    } catch (URISyntaxException | NullPointerException e) {
+      return String.valueOf(delivery.getEndpoint());
+    }
+  }
+
+  private void updateNotificationState(String notificationId, NotificationState state) {
+    if (model == null) {
+      return;
+    }
+    try {
+      Notification notification = model.retrieveNotification(notificationId);
+      notification.setState(state);
+      model.updateNotification(notification);
+    } catch (NotFoundException e) {
+      LOGGER.debug("Notification {} no longer exists", notificationId);
+    } catch (GenericException | AuthorizationDeniedException e) {
+      LOGGER.warn("Could not update the state of notification {}", notificationId, e);
+    }
+  }
+
+  private void write(NotificationDelivery delivery) throws GenericException {
+    Path file = directory.resolve(delivery.getId() + DELIVERY_EXTENSION);
+    Path temp = directory.resolve(TEMP_PREFIX + delivery.getId() + DELIVERY_EXTENSION + System.nanoTime());
+    try {
+      Files.createDirectories(directory);
+      Files.writeString(temp, JsonUtils.getJsonFromObject(delivery), StandardCharsets.UTF_8,
+        StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.SYNC);
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      try {
+        Files.deleteIfExists(temp);
+      } catch (IOException e1) {
+        // do nothing
+      }
+      throw new GenericException("Could not write " + delivery + " to the outbox", e);
+    }
+  }
+
+  private void remove(NotificationDelivery delivery, boolean failed) {
+    scheduled.remove(delivery.getId());
+    Path file = directory.resolve(delivery.getId() + DELIVERY_EXTENSION);
+    try {
+      if (failed) {
+        Path failedDirectory = Files.createDirectories(directory.resolve(FAILED_FOLDER));
+        Files.move(file, failedDirectory.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+      } else {
+        Files.deleteIfExists(file);
+      }
+    } catch (IOException e) {
+      LOGGER.warn("Could not remove {} from the outbox", delivery, e);
+    }
+  }
+
+  private List<NotificationDelivery> load() {
+    List<NotificationDelivery> pending = new ArrayList<>();
+    List<Path> files;
+    try (Stream<Path> stream = Files.list(Files.createDirectories(directory))) {
+      files = stream.filter(Files::isRegularFile).collect(Collectors.toList());
+    } catch (IOException e) {
+      LOGGER.error("Could not list the notification outbox {}", directory, e);
+      return pending;
+    }
+
+    for (Path file : files) {
+      String fileName = file.getFileName().toString();
+      try {
+        if (fileName.startsWith(TEMP_PREFIX)) {
+          // not completely written
+          Files.deleteIfExists(file);
+        } else if (fileName.endsWith(DELIVERY_EXTENSION)) {
+          pending.add(JsonUtils.getObjectFromJson(file, NotificationDelivery.class));
+        }
+      } catch (IOException | GenericException e) {
+        LOGGER.warn("Could not read notification delivery {}", file, e);
+      }
+    }
+    return pending;
+  }
+}
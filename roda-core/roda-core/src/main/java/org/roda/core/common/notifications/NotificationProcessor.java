@@ -13,4 +13,12 @@ import org.roda.core.model.ModelService;
 @FunctionalInterface
 public interface NotificationProcessor {
   Notification processNotification(ModelService model, Notification notification);
+
+  /**
+   * Called once the processed notification is stored, e.g. to deliver it in the
+   * background.
+   */
+  default void notificationCreated(ModelService model, Notification notification) {
+    // do nothing
+  }
 }
@@ -18,6 +18,7 @@ import org.roda.core.common.pekko.messages.events.EventUserCreated;
 import org.roda.core.common.pekko.messages.events.EventUserDeleted;
 import org.roda.core.common.pekko.messages.events.EventUserUpdated;
 import org.roda.core.common.pekko.messages.jobs.JobCleanup;
+import org.roda.core.common.pekko.messages.jobs.JobInfoFlush;
 import org.roda.core.common.pekko.messages.jobs.JobInfoUpdated;
 import org.roda.core.common.pekko.messages.jobs.JobInitEnded;
 import org.roda.core.common.pekko.messages.jobs.JobSourceObjectsUpdated;
@@ -107,6 +108,10 @@ public class Messages {
     return new JobInfoUpdated(plugin, jobPluginInfo);
   }
 
+  public static JobInfoFlush newJobInfoFlush() {
+    return new JobInfoFlush();
+  }
+
   public static JobSourceObjectsUpdated newJobSourceObjectsUpdated(Map<String, String> oldToNewIds) {
     return new JobSourceObjectsUpdated(oldToNewIds);
   }
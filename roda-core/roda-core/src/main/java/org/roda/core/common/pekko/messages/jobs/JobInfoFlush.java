@@ -0,0 +1,31 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common.pekko.messages.jobs;
+
+import java.io.Serial;
+
+import org.roda.core.common.pekko.messages.AbstractMessage;
+
+/**
+ * Sent to the job state actor when pending job progress must be written.
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+public class JobInfoFlush extends AbstractMessage {
+  @Serial
+  private static final long serialVersionUID = 4383419645361725390L;
+
+  public JobInfoFlush() {
+    super();
+  }
+
+  @Override
+  public String toString() {
+    return "JobInfoFlush []";
+  }
+}
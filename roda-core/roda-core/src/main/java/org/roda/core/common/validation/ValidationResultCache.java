@@ -0,0 +1,110 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common.validation;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import org.apache.commons.lang3.StringUtils;
+import org.roda.core.storage.fs.FSUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Remembers, on disk, the documents that were found valid against a schema, by
+ * the digest of their content.
+ *
+ * <p>
+ * There is a folder for each schema type and version, holding a folder named
+ * after the fingerprint of the schema, with an empty file for each valid
+ * digest. Digests are looked up on disk, so the memory used does not grow with
+ * the number of documents, and no log needs to be compacted. When a schema
+ * changes, its fingerprint changes, so the documents of that schema (and only
+ * those) are validated again, and the folder of the previous fingerprint is
+ * removed.
+ * </p>
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+class ValidationResultCache {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ValidationResultCache.class);
+
+  private static final String NO_VERSION = "-";
+
+  private final Path directory;
+  // fingerprint folders whose previous fingerprints were already removed
+  private final Set<Path> prepared = ConcurrentHashMap.newKeySet();
+
+  ValidationResultCache(Path directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * @return whether the document with the given content digest was found valid
+   *         against this version of the schema
+   */
+  boolean isValid(String schemaType, String schemaVersion, String schemaFingerprint, String contentDigest) {
+    Path folder = getFolder(schemaType, schemaVersion, schemaFingerprint);
+    prepare(folder);
+    return Files.exists(getMarker(folder, contentDigest));
+  }
+
+  void putValid(String schemaType, String schemaVersion, String schemaFingerprint, String contentDigest) {
+    Path folder = getFolder(schemaType, schemaVersion, schemaFingerprint);
+    prepare(folder);
+    Path marker = getMarker(folder, contentDigest);
+    try {
+      Files.createDirectories(marker.getParent());
+      Files.createFile(marker);
+    } catch (FileAlreadyExistsException e) {
+      // remembered by another thread
+    } catch (IOException e) {
+      LOGGER.warn("Could not remember validation result in {}", marker, e);
+    }
+  }
+
+  private Path getFolder(String schemaType, String schemaVersion, String schemaFingerprint) {
+    return directory.resolve(encode(schemaType))
+      .resolve(StringUtils.isBlank(schemaVersion) ? NO_VERSION : encode(schemaVersion))
+      .resolve(encode(schemaFingerprint));
+  }
+
+  private static Path getMarker(Path folder, String contentDigest) {
+    // spread over sub-folders, to keep folders small
+    return folder.resolve(encode(StringUtils.left(contentDigest, 2))).resolve(encode(contentDigest));
+  }
+
+  /**
+   * Removes the results of previous versions of the schema, once per
+   * fingerprint.
+   */
+  private void prepare(Path folder) {
+    if (prepared.add(folder) && Files.isDirectory(folder.getParent())) {
+      try (Stream<Path> siblings = Files.list(folder.getParent())) {
+        siblings.filter(sibling -> !sibling.equals(folder)).forEach(sibling -> {
+          prepared.remove(sibling);
+          FSUtils.deletePathQuietly(sibling);
+        });
+      } catch (IOException e) {
+        LOGGER.warn("Could not remove validation results of previous schemas in {}", folder.getParent(), e);
+      }
+    }
+  }
+
+  private static String encode(String name) {
+    // dots are encoded too, so that no name is a relative path
+    return URLEncoder.encode(name, StandardCharsets.UTF_8).replace(".", "%2E");
+  }
+}
@@ -7,27 +7,15 @@
  */
 package org.roda.core.common.validation;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
-import javax.xml.parsers.SAXParserFactory;
-import javax.xml.transform.Source;
-import javax.xml.transform.sax.SAXSource;
-import javax.xml.transform.stream.StreamSource;
-import javax.xml.validation.Schema;
-import javax.xml.validation.Validator;
-
-import org.apache.commons.io.input.BOMInputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.roda.core.RodaCoreFactory;
-import org.roda.core.common.RodaEntityResolver;
 import org.roda.core.data.common.RodaConstants;
 import org.roda.core.data.exceptions.AuthorizationDeniedException;
 import org.roda.core.data.exceptions.GenericException;
@@ -47,12 +35,6 @@ import org.roda.core.storage.Binary;
 import org.roda.core.storage.ContentPayload;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
-import org.xml.sax.SAXParseException;
-import org.xml.sax.XMLReader;
-import org.xml.sax.helpers.DefaultHandler;
-import org.xml.sax.helpers.XMLReaderFactory;
 
 /**
  *
@@ -71,6 +53,8 @@ import org.xml.sax.helpers.XMLReaderFactory;
 public class ValidationUtils {
   private static final Logger LOGGER = LoggerFactory.getLogger(ValidationUtils.class);
 
+  private static final String PREMIS_SCHEMA = "premis-v2-0";
+
   /** Private empty constructor */
   private ValidationUtils() {
     // do nothing
@@ -84,41 +68,54 @@ public class ValidationUtils {
     report.setValid(true);
     List<DescriptiveMetadata> descriptiveMetadata = aip.getDescriptiveMetadata();
     List<Pair<String, String>> schemasInfo = new ArrayList<>();
+    List<Binary> binaries = new ArrayList<>();
+    List<Future<ValidationReport>> dmReports = new ArrayList<>();
+
+    // validate all at the same time
     for (DescriptiveMetadata dm : descriptiveMetadata) {
-      StoragePath storagePath = ModelUtils.getDescriptiveMetadataStoragePath(dm);
-      Binary binary = model.getStorage().getBinary(storagePath);
+      Binary binary = model.getStorage().getBinary(ModelUtils.getDescriptiveMetadataStoragePath(dm));
+      binaries.add(binary);
+
+      if (validateDescriptiveMetadata) {
+        String metadataType = fallbackMetadataType;
+        String metadataVersion = fallbackMetadataVersion;
+        if (!forceDescriptiveMetadataType && dm.getType() != null) {
+          metadataType = dm.getType();
+          metadataVersion = dm.getVersion();
+        }
+        dmReports.add(
+          XMLValidationService.getInstance().submit(binary.getContent(), metadataType, metadataVersion, false));
 
-      if (forceDescriptiveMetadataType) {
-        if (validateDescriptiveMetadata) {
-          ValidationReport dmReport = validateDescriptiveBinary(binary.getContent(), fallbackMetadataType,
-            fallbackMetadataVersion, false);
-          consolidateReports(report, dmReport);
-          if (schemasInfo.isEmpty()) {
-            schemasInfo.add(Pair.of(fallbackMetadataType, fallbackMetadataVersion));
-          }
+        Pair<String, String> pair = Pair.of(metadataType, metadataVersion);
+        if (!schemasInfo.contains(pair)) {
+          schemasInfo.add(pair);
         }
+      }
+    }
+
+    for (Future<ValidationReport> dmReport : dmReports) {
+      try {
+        consolidateReports(report, dmReport.get());
+      } catch (ExecutionException e) {
+        throw new GenericException("Error validating descriptive metadata of AIP " + aip.getId(), e.getCause());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new GenericException("Interrupted while validating descriptive metadata of AIP " + aip.getId(), e);
+      }
+    }
 
+    if (forceDescriptiveMetadataType) {
+      for (int i = 0; i < descriptiveMetadata.size(); i++) {
+        DescriptiveMetadata dm = descriptiveMetadata.get(i);
         // XXX review why should a validation method update data
         Map<String, String> properties = new HashMap<>();
         properties.put(RodaConstants.VERSION_ACTION, RodaConstants.VersionAction.METADATA_TYPE_FORCED.toString());
 
-        model.updateDescriptiveMetadata(aip.getId(), dm.getId(), binary.getContent(), fallbackMetadataType,
+        model.updateDescriptiveMetadata(aip.getId(), dm.getId(), binaries.get(i).getContent(), fallbackMetadataType,
           fallbackMetadataVersion, properties, username);
         report.setValid(true);
 
-        LOGGER.debug("{} valid for metadata type {}", storagePath, fallbackMetadataType);
-
-      } else if (validateDescriptiveMetadata) {
-        String metadataType = dm.getType() != null ? dm.getType() : fallbackMetadataType;
-        String metadataVersion = dm.getType() != null ? dm.getVersion() : fallbackMetadataVersion;
-        ValidationReport dmReport = validateDescriptiveBinary(binary.getContent(), metadataType, metadataVersion,
-          false);
-        consolidateReports(report, dmReport);
-
-        Pair<String, String> pair = Pair.of(metadataType, metadataVersion);
-        if (!schemasInfo.contains(pair)) {
-          schemasInfo.add(pair);
-        }
+        LOGGER.debug("{} valid for metadata type {}", binaries.get(i).getStoragePath(), fallbackMetadataType);
       }
     }
 
@@ -140,36 +137,7 @@ public class ValidationUtils {
   }
 
   public static ValidationReport isXMLValid(ContentPayload xmlPayload) {
-    ValidationReport ret = new ValidationReport();
-
-    SAXParserFactory factory = SAXParserFactory.newInstance();
-    factory.setValidating(false);
-    factory.setNamespaceAware(true);
-
-    RodaErrorHandler errorHandler = new RodaErrorHandler();
-
-    try (Reader reader = new InputStreamReader(new BOMInputStream(xmlPayload.createInputStream()))) {
-      XMLReader xmlReader = XMLReaderFactory.createXMLReader();
-      xmlReader.setEntityResolver(new RodaEntityResolver());
-      InputSource inputSource = new InputSource(reader);
-
-      xmlReader.setErrorHandler(errorHandler);
-      xmlReader.parse(inputSource);
-      ret.setValid(errorHandler.getErrors().isEmpty());
-      for (SAXParseException saxParseException : errorHandler.getErrors()) {
-        ret.addIssue(convertSAXParseException(saxParseException));
-      }
-    } catch (SAXException e) {
-      ret.setValid(false);
-      for (SAXParseException saxParseException : errorHandler.getErrors()) {
-        ret.addIssue(convertSAXParseException(saxParseException));
-      }
-    } catch (IOException e) {
-      ret.setValid(false);
-      ret.setMessage(e.getMessage());
-    }
-
-    return ret;
+    return XMLValidationService.getInstance().validateSyntax(xmlPayload);
   }
 
   /**
@@ -229,14 +197,6 @@ public class ValidationUtils {
     return ret;
   }
 
-  private static ValidationIssue convertSAXParseException(SAXParseException e) {
-    ValidationIssue issue = new ValidationIssue();
-    issue.setMessage(e.getMessage());
-    issue.setLineNumber(e.getLineNumber());
-    issue.setColumnNumber(e.getColumnNumber());
-    return issue;
-  }
-
   /**
    * Validates preservation medatada (e.g. against its schema, but other
    * strategies may be used)
@@ -265,55 +225,8 @@ public class ValidationUtils {
    */
   public static ValidationReport validateDescriptiveBinary(ContentPayload descriptiveMetadataPayload,
     String descriptiveMetadataType, String descriptiveMetadataVersion, boolean failIfNoSchema) {
-    ValidationReport ret = new ValidationReport();
-    Optional<Schema> xmlSchema = RodaCoreFactory.getRodaSchema(descriptiveMetadataType, descriptiveMetadataVersion);
-
-    try {
-      if (xmlSchema.isPresent()) {
-        RodaErrorHandler errorHandler = new RodaErrorHandler();
-
-        try (InputStreamReader inputStreamReader = new InputStreamReader(
-          new BOMInputStream(descriptiveMetadataPayload.createInputStream()))) {
-
-          XMLReader xmlReader = XMLReaderFactory.createXMLReader();
-          xmlReader.setEntityResolver(new RodaEntityResolver());
-          InputSource inputSource = new InputSource(inputStreamReader);
-          Source source = new SAXSource(xmlReader, inputSource);
-
-          Validator validator = xmlSchema.get().newValidator();
-          validator.setErrorHandler(errorHandler);
-          validator.validate(source);
-          ret.setValid(errorHandler.getErrors().isEmpty());
-          for (SAXParseException saxParseException : errorHandler.getErrors()) {
-            ret.addIssue(convertSAXParseException(saxParseException));
-          }
-        } catch (SAXException e) {
-          LOGGER.debug("Error validating descriptive binary " + descriptiveMetadataType, e);
-          ret.setValid(false);
-          for (SAXParseException saxParseException : errorHandler.getErrors()) {
-            ret.addIssue(convertSAXParseException(saxParseException));
-          }
-        }
-      } else {
-        if (failIfNoSchema) {
-          LOGGER.error(
-            "Will fail validating descriptive metadata with type '{}' and version '{}' because couldn't find its schema",
-            descriptiveMetadataType, descriptiveMetadataVersion);
-          ret.setValid(false);
-          ret.setMessage("No schema to validate " + descriptiveMetadataType);
-        } else {
-          LOGGER.debug("Found no schema do validate descriptive metadata but will try to validate XML syntax...");
-          ret = isXMLValid(descriptiveMetadataPayload);
-        }
-      }
-    } catch (IOException e) {
-      LOGGER.error("Error validating descriptive metadata", e);
-      ret.setValid(false);
-      ret.setMessage(e.getMessage());
-    }
-
-    return ret;
-
+    return XMLValidationService.getInstance().validate(descriptiveMetadataPayload, descriptiveMetadataType,
+      descriptiveMetadataVersion, failIfNoSchema);
   }
 
   /**
@@ -324,69 +237,15 @@ public class ValidationUtils {
    * @param failIfNoSchema
    */
   public static ValidationReport validatePreservationBinary(Binary binary, boolean failIfNoSchema) {
-    ValidationReport report = new ValidationReport();
-    Optional<Schema> xmlSchema = RodaCoreFactory.getRodaSchema("premis-v2-0", null);
+    if (RodaCoreFactory.getRodaSchema(PREMIS_SCHEMA, null).isPresent()) {
+      return XMLValidationService.getInstance().validate(binary.getContent(), PREMIS_SCHEMA, null, true);
+    }
 
-    if (xmlSchema.isPresent()) {
-      try (InputStream inputStream = binary.getContent().createInputStream()) {
-        Source xmlFile = new StreamSource(inputStream);
-        Validator validator = xmlSchema.get().newValidator();
-        RodaErrorHandler errorHandler = new RodaErrorHandler();
-        validator.setErrorHandler(errorHandler);
-        try {
-          validator.validate(xmlFile);
-          report.setValid(errorHandler.getErrors().isEmpty());
-          for (SAXParseException saxParseException : errorHandler.getErrors()) {
-            report.addIssue(convertSAXParseException(saxParseException));
-          }
-        } catch (SAXException e) {
-          LOGGER.error("Error validating preservation binary " + binary.getStoragePath(), e);
-          report.setValid(false);
-          for (SAXParseException saxParseException : errorHandler.getErrors()) {
-            report.addIssue(convertSAXParseException(saxParseException));
-          }
-        }
-      } catch (IOException e) {
-        report.setValid(false);
-        report.setMessage(e.getMessage());
-      }
-    } else if (failIfNoSchema) {
+    ValidationReport report = new ValidationReport();
+    if (failIfNoSchema) {
       report.setValid(false);
       report.setMessage("No schema to validate PREMIS");
     }
-
     return report;
   }
-
-  private static class RodaErrorHandler extends DefaultHandler {
-    List<SAXParseException> errors;
-
-    public RodaErrorHandler() {
-      errors = new ArrayList<>();
-    }
-
-    @Override
-    public void warning(SAXParseException e) {
-      errors.add(e);
-    }
-
-    @Override
-    public void error(SAXParseException e) {
-      errors.add(e);
-    }
-
-    @Override
-    public void fatalError(SAXParseException e) {
-      errors.add(e);
-    }
-
-    public List<SAXParseException> getErrors() {
-      return errors;
-    }
-
-    public void setErrors(List<SAXParseException> errors) {
-      this.errors = errors;
-    }
-
-  }
 }
@@ -0,0 +1,386 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.common.validation;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.Validator;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BOMInputStream;
+import org.apache.commons.lang3.StringUtils;
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.common.RodaEntityResolver;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.v2.validation.ValidationIssue;
+import org.roda.core.data.v2.validation.ValidationReport;
+import org.roda.core.storage.ContentPayload;
+import org.roda.core.util.FileUtility;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Validates XML documents, against the schemas installed in the repository or
+ * just for well-formedness.
+ *
+ * <p>
+ * XML readers and validators are kept in bounded pools, of as many as the
+ * documents validated at the same time ({@code core.validation.threads}), and
+ * reused by whichever thread validates next, virtual threads included, instead
+ * of being created for every document. Documents can be validated several at a
+ * time on a pool of threads of the node. The documents found valid against a
+ * schema are remembered, by content digest, in the validation cache directory,
+ * so they are not validated again until their schema changes
+ * ({@code core.validation.cache.*}).
+ * </p>
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+public class XMLValidationService {
+  private static final Logger LOGGER = LoggerFactory.getLogger(XMLValidationService.class);
+
+  private static final String DIGEST_ALGORITHM = "SHA-256";
+  private static final DefaultHandler NO_CONTENT_HANDLER = new DefaultHandler();
+  private static final Set<String> SCHEMA_REFERENCES = Set.of("import", "include", "redefine", "override");
+
+  private static XMLValidationService instance;
+
+  private final SAXParserFactory parserFactory;
+  private final int poolSize;
+  private final BlockingQueue<XMLReader> readers;
+  private final Map<String, BlockingQueue<PooledValidator>> validators = new ConcurrentHashMap<>();
+  private final Map<Schema, String> schemaFingerprints = Collections.synchronizedMap(new WeakHashMap<>());
+  private final ValidationResultCache resultCache;
+  private final ExecutorService executor;
+
+  /**
+   * @param threads
+   *          documents validated at the same time by {@link #submit}, and
+   *          readers and validators of each schema kept for reuse
+   * @param cacheDirectory
+   *          where to remember valid documents, or {@code null} to always
+   *          validate them
+   */
+  public XMLValidationService(int threads, Path cacheDirectory) {
+    parserFactory = SAXParserFactory.newInstance();
+    parserFactory.setValidating(false);
+    parserFactory.setNamespaceAware(true);
+    resultCache = cacheDirectory != null ? new ValidationResultCache(cacheDirectory) : null;
+    poolSize = Math.max(1, threads);
+    readers = new ArrayBlockingQueue<>(poolSize);
+    AtomicInteger count = new AtomicInteger();
+    executor = Executors.newFixedThreadPool(poolSize, runnable -> {
+      Thread thread = new Thread(runnable, "xml-validation-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * @return the validation service of this node
+   */
+  public static synchronized XMLValidationService getInstance() {
+    if (instance == null) {
+      int threads = RodaCoreFactory.getProperty(RodaConstants.CORE_VALIDATION_THREADS,
+        Runtime.getRuntime().availableProcessors());
+      Path cacheDirectory = null;
+      if (RodaCoreFactory.getProperty(RodaConstants.CORE_VALIDATION_CACHE_ENABLED, true)
+        && RodaCoreFactory.getDataPath() != null) {
+        cacheDirectory = RodaCoreFactory.getDataPath().resolve(RodaConstants.CORE_VALIDATION_CACHE_FOLDER);
+      }
+      instance = new XMLValidationService(threads, cacheDirectory);
+    }
+    return instance;
+  }
+
+  /**
+   * Validates a document against the schema of its type and version, like
+   * {@link #validate}, on the pool of this service.
+   */
+  public Future<ValidationReport> submit(ContentPayload payload, String schemaType, String schemaVersion,
+    boolean failIfNoSchema) {
+    return executor.submit(() -> validate(payload, schemaType, schemaVersion, failIfNoSchema));
+  }
+
+  /**
+   * Validates a document against the schema of its type and version. If there
+   * is no such schema, the document is only checked for well-formedness, unless
+   * failIfNoSchema is set.
+   */
+  public ValidationReport validate(ContentPayload payload, String schemaType, String schemaVersion,
+    boolean failIfNoSchema) {
+    Optional<Schema> schema = RodaCoreFactory.getRodaSchema(schemaType, schemaVersion);
+    if (schema.isPresent()) {
+      return validate(payload, schema.get(), schemaType, schemaVersion);
+    } else if (failIfNoSchema) {
+      LOGGER.error("Will fail validating metadata with type '{}' and version '{}' because couldn't find its schema",
+        schemaType, schemaVersion);
+      ValidationReport ret = new ValidationReport();
+      ret.setValid(false);
+      ret.setMessage("No schema to validate " + schemaType);
+      return ret;
+    } else {
+      LOGGER.debug("Found no schema do validate metadata but will try to validate XML syntax...");
+      return validateSyntax(payload);
+    }
+  }
+
+  private ValidationReport validate(ContentPayload payload, Schema schema, String schemaType, String schemaVersion) {
+    ValidationReport ret = new ValidationReport();
+    String fingerprint = resultCache != null ? getFingerprint(schema, schemaType, schemaVersion) : null;
+    MessageDigest messageDigest = null;
+    if (fingerprint != null) {
+      // a first pass, only reading the document, spares validating it again
+      try (InputStream inputStream = payload.createInputStream()) {
+        String digest = FileUtility.checksum(inputStream, DIGEST_ALGORITHM);
+        if (resultCache.isValid(schemaType, schemaVersion, fingerprint, digest)) {
+          return ret;
+        }
+        messageDigest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+      } catch (IOException | NoSuchAlgorithmException e) {
+        LOGGER.error("Error validating metadata", e);
+        ret.setValid(false);
+        ret.setMessage(e.getMessage());
+        return ret;
+      }
+    }
+
+    RodaErrorHandler errorHandler = new RodaErrorHandler();
+    String poolKey = schemaType + RodaConstants.METADATA_VERSION_SEPARATOR + schemaVersion;
+    try (InputStream payloadStream = payload.createInputStream()) {
+      // the digest remembered is the one of the content that was validated
+      InputStream inputStream = messageDigest != null ? new DigestInputStream(payloadStream, messageDigest)
+        : payloadStream;
+      XMLReader reader = takeReader();
+      PooledValidator validator = takeValidator(poolKey, schema);
+      validator.validator().setErrorHandler(errorHandler);
+      validator.validator().validate(new SAXSource(reader, getInputSource(inputStream)));
+      // given back only if used without failing, after which they may be broken
+      readers.offer(reader);
+      validators.get(poolKey).offer(validator);
+      ret.setValid(errorHandler.getErrors().isEmpty());
+      if (ret.isValid() && messageDigest != null) {
+        IOUtils.consume(inputStream);
+        resultCache.putValid(schemaType, schemaVersion, fingerprint,
+          FileUtility.byteArrayToHexString(messageDigest.digest()));
+      }
+    } catch (SAXException | ParserConfigurationException | IOException e) {
+      LOGGER.debug("Error validating metadata " + schemaType, e);
+      ret.setValid(false);
+      if (errorHandler.getErrors().isEmpty()) {
+        ret.setMessage(e.getMessage());
+      }
+    }
+    addIssues(ret, errorHandler);
+    return ret;
+  }
+
+  /**
+   * Checks that a document is well-formed.
+   */
+  public ValidationReport validateSyntax(ContentPayload payload) {
+    ValidationReport ret = new ValidationReport();
+    RodaErrorHandler errorHandler = new RodaErrorHandler();
+    try (InputStream inputStream = payload.createInputStream()) {
+      XMLReader reader = takeReader();
+      reader.setContentHandler(NO_CONTENT_HANDLER);
+      reader.setErrorHandler(errorHandler);
+      reader.parse(getInputSource(inputStream));
+      readers.offer(reader);
+      ret.setValid(errorHandler.getErrors().isEmpty());
+    } catch (SAXException | ParserConfigurationException e) {
+      ret.setValid(false);
+    } catch (IOException e) {
+      ret.setValid(false);
+      ret.setMessage(e.getMessage());
+    }
+    addIssues(ret, errorHandler);
+    return ret;
+  }
+
+  private static InputSource getInputSource(InputStream inputStream) {
+    return new InputSource(new InputStreamReader(new BOMInputStream(inputStream)));
+  }
+
+  /**
+   * @return a reader from the pool, or a new one if none is free, to be given
+   *         back to the pool once used
+   */
+  private XMLReader takeReader() throws SAXException, ParserConfigurationException {
+    XMLReader reader = readers.poll();
+    if (reader == null) {
+      reader = parserFactory.newSAXParser().getXMLReader();
+      reader.setEntityResolver(new RodaEntityResolver());
+    }
+    return reader;
+  }
+
+  /**
+   * @return a validator of the schema from the pool of its type and version, or
+   *         a new one if none is free, to be given back to that pool once used
+   */
+  private PooledValidator takeValidator(String poolKey, Schema schema) {
+    BlockingQueue<PooledValidator> pool = validators.computeIfAbsent(poolKey,
+      key -> new ArrayBlockingQueue<>(poolSize));
+    PooledValidator validator = pool.poll();
+    // the validators of a schema since reloaded are dropped
+    while (validator != null && validator.schema() != schema) {
+      validator = pool.poll();
+    }
+    if (validator == null) {
+      validator = new PooledValidator(schema, schema.newValidator());
+    }
+    validator.validator().reset();
+    return validator;
+  }
+
+  /**
+   * @return the digest of the schema file and of the schemas it imports or
+   *         includes, which changes with any of them, or {@code null} if the
+   *         schema file cannot be read
+   */
+  private String getFingerprint(Schema schema, String schemaType, String schemaVersion) {
+    // not computed under the lock of the map, as it reads the schema files
+    String fingerprint = schemaFingerprints.get(schema);
+    if (fingerprint == null) {
+      fingerprint = computeFingerprint(schemaType, schemaVersion);
+      if (fingerprint != null) {
+        schemaFingerprints.put(schema, fingerprint);
+      }
+    }
+    return fingerprint;
+  }
+
+  private String computeFingerprint(String schemaType, String schemaVersion) {
+    String schemaFile = RodaConstants.CORE_SCHEMAS_FOLDER + "/" + schemaType.toLowerCase() + ".xsd";
+    if (StringUtils.isNotEmpty(schemaVersion)) {
+      schemaFile = RodaConstants.CORE_SCHEMAS_FOLDER + "/" + schemaType.toLowerCase()
+        + RodaConstants.METADATA_VERSION_SEPARATOR + schemaVersion.toLowerCase() + ".xsd";
+    }
+    // same fallback as the schemas, to the schema of the type
+    try (InputStream schemaStream = RodaCoreFactory.getConfigurationFileAsStream(schemaFile,
+      RodaConstants.CORE_SCHEMAS_FOLDER + "/" + schemaType.toLowerCase() + ".xsd")) {
+      if (schemaStream == null) {
+        return null;
+      }
+      MessageDigest messageDigest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+      addToFingerprint(messageDigest, IOUtils.toByteArray(schemaStream), new HashSet<>());
+      return FileUtility.byteArrayToHexString(messageDigest.digest());
+    } catch (IOException | NoSuchAlgorithmException | SAXException | ParserConfigurationException e) {
+      LOGGER.warn("Could not compute the fingerprint of the schema of {} {}", schemaType, schemaVersion, e);
+      return null;
+    }
+  }
+
+  /**
+   * Adds a schema, and then the schemas it refers to, resolved like
+   * {@link ResourceResolver} does, to a fingerprint.
+   */
+  private void addToFingerprint(MessageDigest messageDigest, byte[] schemaContent, Set<String> visited)
+    throws IOException, SAXException, ParserConfigurationException {
+    messageDigest.update(schemaContent);
+
+    List<String> locations = new ArrayList<>();
+    XMLReader reader = parserFactory.newSAXParser().getXMLReader();
+    // some schemas (e.g. xml.xsd) declare a DTD, which is not needed here
+    reader.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+    reader.setContentHandler(new DefaultHandler() {
+      @Override
+      public void startElement(String uri, String localName, String qName, Attributes attributes) {
+        if (RodaConstants.W3C_XML_SCHEMA_NS_URI.equals(uri) && SCHEMA_REFERENCES.contains(localName)
+          && attributes.getValue("schemaLocation") != null) {
+          locations.add(attributes.getValue("schemaLocation"));
+        }
+      }
+    });
+    reader.parse(new InputSource(new ByteArrayInputStream(schemaContent)));
+
+    for (String location : locations) {
+      String fileName = FilenameUtils.getName(location);
+      if (visited.add(fileName)) {
+        messageDigest.update(fileName.getBytes(StandardCharsets.UTF_8));
+        try (InputStream referenced = RodaCoreFactory
+          .getConfigurationFileAsStream(RodaConstants.CORE_SCHEMAS_FOLDER + "/" + fileName)) {
+          if (referenced != null) {
+            addToFingerprint(messageDigest, IOUtils.toByteArray(referenced), visited);
+          }
+        }
+      }
+    }
+  }
+
+  private static void addIssues(ValidationReport report, RodaErrorHandler errorHandler) {
+    for (SAXParseException saxParseException : errorHandler.getErrors()) {
+      ValidationIssue issue = new ValidationIssue();
+      issue.setMessage(saxParseException.getMessage());
+      issue.setLineNumber(saxParseException.getLineNumber());
+      issue.setColumnNumber(saxParseException.getColumnNumber());
+      report.addIssue(issue);
+    }
+  }
+
+  private record PooledValidator(Schema schema, Validator validator) {
+  }
+
+  private static class RodaErrorHandler extends DefaultHandler {
+    private final List<SAXParseException> errors = new ArrayList<>();
+
+    @Override
+    public void warning(SAXParseException e) {
+      errors.add(e);
+    }
+
+    @Override
+    public void error(SAXParseException e) {
+      errors.add(e);
+    }
+
+    @Override
+    public void fatalError(SAXParseException e) {
+      errors.add(e);
+    }
+
+    public List<SAXParseException> getErrors() {
+      return errors;
+    }
+  }
+}
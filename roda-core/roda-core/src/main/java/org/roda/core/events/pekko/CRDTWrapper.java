@@ -8,6 +8,7 @@
 package org.roda.core.events.pekko;
 
 import java.io.Serial;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -42,9 +43,21 @@ public class CRDTWrapper extends AbstractReplicatedData<CRDTWrapper>
   public CRDTWrapper() {
   }
 
+  /**
+   * Creates the wrapper that marks an object as deleted, so the deletion is
+   * replicated (and expires) like any other change.
+   */
+  public static CRDTWrapper deletion(String instanceId, long timeinmillis) {
+    return new CRDTWrapper(null, Collections.emptyMap(), true, instanceId, timeinmillis);
+  }
+
   @Override
   public String getId() {
-    return rodaObject.getId();
+    return rodaObject != null ? rodaObject.getId() : null;
+  }
+
+  public boolean isDeletion() {
+    return rodaObject == null;
   }
 
   public IsRODAObject getRodaObject() {
@@ -71,6 +84,10 @@ public class CRDTWrapper extends AbstractReplicatedData<CRDTWrapper>
     this.timeinmillis = timeinmillis;
   }
 
+  public boolean isSameVersion(CRDTWrapper that) {
+    return that != null && timeinmillis == that.getTimeinmillis() && instanceId.equals(that.getInstanceId());
+  }
+
   @Override
   public CRDTWrapper mergeData(CRDTWrapper that) {
     if (!this.instanceId.equals(that.getInstanceId()) && this.timeinmillis > that.getTimeinmillis()) {
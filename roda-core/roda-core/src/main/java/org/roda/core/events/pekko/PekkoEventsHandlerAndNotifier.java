@@ -77,8 +77,11 @@ public class PekkoEventsHandlerAndNotifier extends AbstractEventsHandler impleme
     String writeConsistency = RodaCoreFactory.getProperty("core.events.pekko.writeConsistency", "");
     int writeConsistencyTimeoutInSeconds = RodaCoreFactory
       .getProperty("core.events.pekko.writeConsistencyTimeoutInSeconds", 3);
+    int cacheTtlInSeconds = RodaCoreFactory.getProperty("core.events.pekko.cacheTtlInSeconds", 3600);
+    int cacheMaxEntries = RodaCoreFactory.getProperty("core.events.pekko.cacheMaxEntries", 10000);
     return eventsSystem.actorOf(Props.create(PekkoEventsHandlerAndNotifierActor.class, (EventsHandler) this,
-      writeConsistency, writeConsistencyTimeoutInSeconds), "eventsNotifierAndHandlerActor");
+      writeConsistency, writeConsistencyTimeoutInSeconds, cacheTtlInSeconds, cacheMaxEntries),
+      "eventsNotifierAndHandlerActor");
   }
 
   @Override
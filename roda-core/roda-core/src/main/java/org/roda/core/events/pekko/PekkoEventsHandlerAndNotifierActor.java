@@ -7,23 +7,22 @@
  */
 package org.roda.core.events.pekko;
 
-import java.io.Serial;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Date;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
-import org.apache.pekko.actor.AbstractActor;
+import org.apache.pekko.actor.AbstractActorWithTimers;
 import org.apache.pekko.actor.ActorRef;
 import org.apache.pekko.cluster.Cluster;
+import org.apache.pekko.cluster.UniqueAddress;
 import org.apache.pekko.cluster.ddata.DistributedData;
-import org.apache.pekko.cluster.ddata.GSet;
-import org.apache.pekko.cluster.ddata.GSetKey;
 import org.apache.pekko.cluster.ddata.Key;
 import org.apache.pekko.cluster.ddata.ORMap;
+import org.apache.pekko.cluster.ddata.ORMapKey;
 import org.apache.pekko.cluster.ddata.Replicator;
 import org.apache.pekko.cluster.ddata.Replicator.Changed;
 import org.apache.pekko.cluster.ddata.Replicator.Update;
@@ -38,39 +37,66 @@ import org.roda.core.data.common.SecureString;
 import org.roda.core.data.v2.user.Group;
 import org.roda.core.data.v2.user.User;
 import org.roda.core.events.EventsHandler;
+import org.roda.core.model.ModelService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import scala.Option;
 import scala.concurrent.duration.Duration;
 
-public class PekkoEventsHandlerAndNotifierActor extends AbstractActor {
+/**
+ * Replicates user and group changes between instances.
+ *
+ * All changes are kept in a single replicated map, keyed by object, holding the
+ * latest change of each object (deletions included). The map is bounded: every
+ * node periodically drops the entries older than the cache TTL and, when the map
+ * grows over the maximum number of entries, drops the oldest ones. Dropping an
+ * entry does not trigger any invalidation, so the TTL and maximum number of
+ * entries must leave enough room for changes to reach all nodes.
+ */
+public class PekkoEventsHandlerAndNotifierActor extends AbstractActorWithTimers {
   private static final Logger LOGGER = LoggerFactory.getLogger(PekkoEventsHandlerAndNotifierActor.class);
 
-  private static final String CACHE_PREFIX = "cache-";
   private static final String USER_KEY_PREFIX = "user-";
   private static final String GROUP_KEY_PREFIX = "group-";
   private static final String RODA_OBJECT_OTHER_INFO_PASSWORD = "password";
+  private static final int DEFAULT_CACHE_TTL_IN_SECONDS = 3600;
+  private static final int DEFAULT_CACHE_MAX_ENTRIES = 10000;
+  private static final long MAX_COMPACTION_INTERVAL_IN_SECONDS = 60;
+
+  static final Key<ORMap<String, CRDTWrapper>> OBJECTS_KEY = ORMapKey.create("eventsObjects");
 
   private final ActorRef replicator = DistributedData.get(context().system()).replicator();
   private final Cluster cluster = Cluster.get(context().system());
-  private final Key<GSet<ObjectKey>> objectKeysKey = GSetKey.create("objectKeys");
   private final Replicator.WriteConsistency writeConsistency;
+  private final long cacheTtlInMillis;
+  private final int cacheMaxEntries;
   private EventsHandler eventsHandler;
   private String instanceSenderId;
-  private Set<ObjectKey> objectKeys = new HashSet<>();
+  private long lastTimeinmillis = 0;
+  // latest change seen of each object, to only handle each change once
+  private Map<String, CRDTWrapper> seenObjects = new HashMap<>();
+
+  public PekkoEventsHandlerAndNotifierActor(final EventsHandler eventsHandler, final String writeConsistency,
+    final int writeConsistencyTimeoutInSeconds) {
+    this(eventsHandler, writeConsistency, writeConsistencyTimeoutInSeconds, DEFAULT_CACHE_TTL_IN_SECONDS,
+      DEFAULT_CACHE_MAX_ENTRIES);
+  }
 
   public PekkoEventsHandlerAndNotifierActor(final EventsHandler eventsHandler, final String writeConsistency,
-                                            final int writeConsistencyTimeoutInSeconds) {
+    final int writeConsistencyTimeoutInSeconds, final int cacheTtlInSeconds, final int cacheMaxEntries) {
     this.eventsHandler = eventsHandler;
     this.instanceSenderId = self().toString();
     this.writeConsistency = instantiateWriteConsistency(writeConsistency, writeConsistencyTimeoutInSeconds);
+    this.cacheTtlInMillis = TimeUnit.SECONDS.toMillis(Math.max(1, cacheTtlInSeconds));
+    this.cacheMaxEntries = Math.max(1, cacheMaxEntries);
   }
 
   private Replicator.WriteConsistency instantiateWriteConsistency(String writeConsistency,
     final int writeConsistencyTimeoutInSeconds) {
     if ("WriteAll".equalsIgnoreCase(writeConsistency)) {
       return new Replicator.WriteAll(Duration.create(writeConsistencyTimeoutInSeconds, TimeUnit.SECONDS));
+    } else if ("WriteLocal".equalsIgnoreCase(writeConsistency)) {
+      return Replicator.writeLocal();
     } else {
       return new Replicator.WriteMajority(Duration.create(writeConsistencyTimeoutInSeconds, TimeUnit.SECONDS));
     }
@@ -79,8 +105,13 @@ public class PekkoEventsHandlerAndNotifierActor extends AbstractActor {
 
   @Override
   public void preStart() {
-    Replicator.Subscribe<GSet<ObjectKey>> subscribe = new Replicator.Subscribe<>(objectKeysKey, getSelf());
+    Replicator.Subscribe<ORMap<String, CRDTWrapper>> subscribe = new Replicator.Subscribe<>(OBJECTS_KEY, getSelf());
     replicator.tell(subscribe, ActorRef.noSender());
+
+    long compactionInterval = Math.min(TimeUnit.MILLISECONDS.toSeconds(cacheTtlInMillis),
+      MAX_COMPACTION_INTERVAL_IN_SECONDS);
+    getTimers().startTimerWithFixedDelay(Compact.INSTANCE, Compact.INSTANCE,
+      java.time.Duration.ofSeconds(compactionInterval));
   }
 
   @Override
@@ -90,6 +121,7 @@ public class PekkoEventsHandlerAndNotifierActor extends AbstractActor {
       .match(EventGroupCreated.class, e -> handleGroupCreated(e))
       .match(EventGroupUpdated.class, e -> handleGroupUpdated(e))
       .match(EventGroupDeleted.class, e -> handleGroupDeleted(e)).match(Replicator.Changed.class, c -> handleChanged(c))
+      .match(Compact.class, c -> handleCompact())
       .match(Replicator.UpdateSuccess.class, e -> handleUpdateSuccess(e))
       .match(Replicator.UpdateFailure.class, e -> handleUpdateFailure(e)).matchAny(msg -> {
         LOGGER.warn("Received unknown message '{}'", msg);
@@ -107,60 +139,47 @@ public class PekkoEventsHandlerAndNotifierActor extends AbstractActor {
   }
 
   private void handleChanged(Replicator.Changed<?> e) {
-    if (e.key().equals(objectKeysKey)) {
-      handleObjectKeysChanged((Replicator.Changed<GSet<ObjectKey>>) e);
-    } else if (e.key() instanceof ObjectKey) {
-      handleObjectChanged((Changed<ORMap<String, CRDTWrapper>>) e);
+    if (e.key().equals(OBJECTS_KEY)) {
+      handleObjectsChanged((Changed<ORMap<String, CRDTWrapper>>) e);
     }
   }
 
-  private void handleObjectKeysChanged(Replicator.Changed<GSet<ObjectKey>> e) {
-    Set<ObjectKey> newKeys = e.dataValue().getElements();
-    Set<ObjectKey> keysToSubscribe = new HashSet<>(newKeys);
-    keysToSubscribe.removeAll(objectKeys);
-    keysToSubscribe.forEach(keyToSubscribe -> {
-      // subscribe to get notifications of when objects with this name are
-      // added or removed
-      replicator.tell(new Replicator.Subscribe<>(keyToSubscribe, self()), self());
+  private void handleObjectsChanged(Replicator.Changed<ORMap<String, CRDTWrapper>> e) {
+    Map<String, CRDTWrapper> objects = e.dataValue().getEntries();
+
+    // entries no longer in the map were compacted away, which is not a change
+    seenObjects.keySet().retainAll(objects.keySet());
+
+    objects.forEach((objectId, wrapper) -> {
+      CRDTWrapper previous = seenObjects.put(objectId, wrapper);
+      if (!wrapper.isSameVersion(previous) && !wrapper.getInstanceId().equals(instanceSenderId)) {
+        handleObjectChanged(objectId, wrapper);
+      }
     });
-    objectKeys = newKeys;
-
-    // 20180925 hsilva: to improve GC
-    keysToSubscribe = null;
-  }
-
-  private void handleObjectChanged(Replicator.Changed<ORMap<String, CRDTWrapper>> e) {
-    String objectId = e.key().id().replaceFirst(CACHE_PREFIX, "");
-    Option<CRDTWrapper> option = e.dataValue().get(objectId);
-    if (option.isDefined()) {
-      CRDTWrapper wrapper = (CRDTWrapper) option.get();
-      if (!wrapper.getInstanceId().equals(instanceSenderId)) {
-        if (objectId.startsWith(USER_KEY_PREFIX)) {
-          try (
-            SecureString password = new SecureString(getUserPasswordFromRodaUserOtherInfoMap(wrapper).toCharArray())) {
-            if (!wrapper.isUpdate()) {
-              eventsHandler.handleUserCreated(RodaCoreFactory.getModelService(), (User) wrapper.getRodaObject(),
-                password);
-            } else {
-              eventsHandler.handleUserUpdated(RodaCoreFactory.getModelService(), (User) wrapper.getRodaObject(),
-                password);
-            }
-          }
-        } else if (objectId.startsWith(GROUP_KEY_PREFIX)) {
+  }
+
+  private void handleObjectChanged(String objectId, CRDTWrapper wrapper) {
+    ModelService model = RodaCoreFactory.getModelService();
+    if (objectId.startsWith(USER_KEY_PREFIX)) {
+      if (wrapper.isDeletion()) {
+        eventsHandler.handleUserDeleted(model, objectId.replaceFirst(USER_KEY_PREFIX, ""));
+      } else {
+        String password = getUserPasswordFromRodaUserOtherInfoMap(wrapper);
+        try (SecureString securePassword = password != null ? new SecureString(password.toCharArray()) : null) {
           if (!wrapper.isUpdate()) {
-            eventsHandler.handleGroupCreated(RodaCoreFactory.getModelService(), (Group) wrapper.getRodaObject());
+            eventsHandler.handleUserCreated(model, (User) wrapper.getRodaObject(), securePassword);
           } else {
-            eventsHandler.handleGroupUpdated(RodaCoreFactory.getModelService(), (Group) wrapper.getRodaObject());
+            eventsHandler.handleUserUpdated(model, (User) wrapper.getRodaObject(), securePassword);
           }
         }
       }
-    } else {
-      // this is a deletion
-      if (objectId.startsWith(USER_KEY_PREFIX)) {
-        eventsHandler.handleUserDeleted(RodaCoreFactory.getModelService(), objectId.replaceFirst(USER_KEY_PREFIX, ""));
-      } else if (objectId.startsWith(GROUP_KEY_PREFIX)) {
-        eventsHandler.handleGroupDeleted(RodaCoreFactory.getModelService(),
-          objectId.replaceFirst(GROUP_KEY_PREFIX, ""));
+    } else if (objectId.startsWith(GROUP_KEY_PREFIX)) {
+      if (wrapper.isDeletion()) {
+        eventsHandler.handleGroupDeleted(model, objectId.replaceFirst(GROUP_KEY_PREFIX, ""));
+      } else if (!wrapper.isUpdate()) {
+        eventsHandler.handleGroupCreated(model, (Group) wrapper.getRodaObject());
+      } else {
+        eventsHandler.handleGroupUpdated(model, (Group) wrapper.getRodaObject());
       }
     }
   }
@@ -169,7 +188,7 @@ public class PekkoEventsHandlerAndNotifierActor extends AbstractActor {
     String key = USER_KEY_PREFIX + e.getUser().getId();
     Map<String, Object> rodaObjectOtherInfo = new HashMap<>();
     putObjectInCache(key,
-      new CRDTWrapper(e.getUser(), rodaObjectOtherInfo, false, instanceSenderId, new Date().getTime()));
+      new CRDTWrapper(e.getUser(), rodaObjectOtherInfo, false, instanceSenderId, nextTimeinmillis()));
   }
 
   private String getUserPasswordFromRodaUserOtherInfoMap(CRDTWrapper wrapper) {
@@ -186,67 +205,87 @@ public class PekkoEventsHandlerAndNotifierActor extends AbstractActor {
     String key = USER_KEY_PREFIX + e.getUser().getId();
     Map<String, Object> rodaObjectOtherInfo = new HashMap<>();
     putObjectInCache(key,
-      new CRDTWrapper(e.getUser(), rodaObjectOtherInfo, true, instanceSenderId, new Date().getTime()));
+      new CRDTWrapper(e.getUser(), rodaObjectOtherInfo, true, instanceSenderId, nextTimeinmillis()));
   }
 
   private void handleUserDeleted(EventUserDeleted e) {
     String key = USER_KEY_PREFIX + e.getId();
-    evictObjectFromCache(key);
+    putObjectInCache(key, CRDTWrapper.deletion(instanceSenderId, nextTimeinmillis()));
   }
 
   private void handleGroupCreated(EventGroupCreated e) {
     String key = GROUP_KEY_PREFIX + e.getGroup().getId();
     putObjectInCache(key,
-      new CRDTWrapper(e.getGroup(), Collections.emptyMap(), false, instanceSenderId, new Date().getTime()));
+      new CRDTWrapper(e.getGroup(), Collections.emptyMap(), false, instanceSenderId, nextTimeinmillis()));
   }
 
   private void handleGroupUpdated(EventGroupUpdated e) {
     String key = GROUP_KEY_PREFIX + e.getGroup().getId();
     putObjectInCache(key,
-      new CRDTWrapper(e.getGroup(), Collections.emptyMap(), true, instanceSenderId, new Date().getTime()));
+      new CRDTWrapper(e.getGroup(), Collections.emptyMap(), true, instanceSenderId, nextTimeinmillis()));
   }
 
   private void handleGroupDeleted(EventGroupDeleted e) {
     String key = GROUP_KEY_PREFIX + e.getId();
-    evictObjectFromCache(key);
+    putObjectInCache(key, CRDTWrapper.deletion(instanceSenderId, nextTimeinmillis()));
   }
 
-  private void putObjectInCache(String key, CRDTWrapper value) {
-    ObjectKey objectKey = dataKey(key);
-    if (!objectKeys.contains(objectKey)) {
-      Update<GSet<ObjectKey>> update1 = new Update<>(objectKeysKey, GSet.create(), writeConsistency,
-        curr -> curr.add(objectKey));
-      replicator.tell(update1, self());
-    }
-
-    Update<ORMap<String, CRDTWrapper>> update = new Update<>(dataKey(key), ORMap.create(), writeConsistency,
-      curr -> curr.put(cluster.selfUniqueAddress(), key, value));
+  private void handleCompact() {
+    long expiredBefore = System.currentTimeMillis() - cacheTtlInMillis;
+    UniqueAddress node = cluster.selfUniqueAddress();
+    Update<ORMap<String, CRDTWrapper>> update = new Update<>(OBJECTS_KEY, ORMap.create(), Replicator.writeLocal(),
+      curr -> compact(curr, node, expiredBefore, cacheMaxEntries));
     replicator.tell(update, self());
   }
 
-  private void evictObjectFromCache(String key) {
-    ObjectKey objectKey = dataKey(key);
-    if (!objectKeys.contains(objectKey)) {
-      Update<GSet<ObjectKey>> update1 = new Update<>(objectKeysKey, GSet.create(), writeConsistency,
-        curr -> curr.add(objectKey));
-      replicator.tell(update1, self());
-    }
-
-    Update<ORMap<String, CRDTWrapper>> update = new Update<>(objectKey, ORMap.create(), writeConsistency,
-      curr -> curr.remove(cluster.selfUniqueAddress(), key));
+  private void putObjectInCache(String key, CRDTWrapper value) {
+    UniqueAddress node = cluster.selfUniqueAddress();
+    // compacting in batches, as sorting the entries on each update would be
+    // too expensive
+    int compactionThreshold = cacheMaxEntries + Math.max(1, cacheMaxEntries / 10);
+    long expiredBefore = value.getTimeinmillis() - cacheTtlInMillis;
+    Update<ORMap<String, CRDTWrapper>> update = new Update<>(OBJECTS_KEY, ORMap.create(), writeConsistency, curr -> {
+      ORMap<String, CRDTWrapper> updated = curr.put(node, key, value);
+      return updated.size() > compactionThreshold ? compact(updated, node, expiredBefore, cacheMaxEntries) : updated;
+    });
     replicator.tell(update, self());
   }
 
-  private ObjectKey dataKey(String entryKey) {
-    return new ObjectKey(CACHE_PREFIX + entryKey);
+  /**
+   * Timestamps of the changes of this instance, strictly increasing so that
+   * every change has its own version.
+   */
+  private long nextTimeinmillis() {
+    lastTimeinmillis = Math.max(System.currentTimeMillis(), lastTimeinmillis + 1);
+    return lastTimeinmillis;
   }
 
-  public static class ObjectKey extends Key<ORMap<String, CRDTWrapper>> {
-    @Serial
-    private static final long serialVersionUID = 4859356839497209682L;
+  /**
+   * Removes from the map the entries older than {@code expiredBefore} and then,
+   * if there are still more than {@code maxEntries}, the oldest ones.
+   */
+  static ORMap<String, CRDTWrapper> compact(ORMap<String, CRDTWrapper> map, UniqueAddress node, long expiredBefore,
+    int maxEntries) {
+    List<Map.Entry<String, CRDTWrapper>> entries = new ArrayList<>(map.getEntries().entrySet());
+    entries.sort(Comparator.comparingLong(entry -> entry.getValue().getTimeinmillis()));
+
+    ORMap<String, CRDTWrapper> compacted = map;
+    int size = entries.size();
+    for (Map.Entry<String, CRDTWrapper> entry : entries) {
+      if (entry.getValue().getTimeinmillis() >= expiredBefore && size <= maxEntries) {
+        break;
+      }
+      compacted = compacted.remove(node, entry.getKey());
+      size--;
+    }
 
-    public ObjectKey(String eventKey) {
-      super(eventKey);
+    if (size < entries.size()) {
+      LOGGER.debug("Compacted events objects from {} to {} entries", entries.size(), size);
     }
+    return compacted;
+  }
+
+  private enum Compact {
+    INSTANCE
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,138 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.index;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coalesces index commit requests. Requests made while a commit round is
+ * waiting or running are joined into the next round, which commits each
+ * requested collection only once, so many concurrent requests result in a
+ * bounded number of commits (and new searchers).
+ *
+ * <p>
+ * A request is only completed by a round that started after it was made, so
+ * whatever was indexed before the request is visible when its future
+ * completes. Retrieving a document by id does not need a commit at all, as it
+ * uses Solr real-time get.
+ * </p>
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+public class IndexCommitCoordinator {
+  private static final Logger LOGGER = LoggerFactory.getLogger(IndexCommitCoordinator.class);
+
+  @FunctionalInterface
+  public interface Committer {
+    void commit(String collection) throws Exception;
+  }
+
+  private final Committer committer;
+  private final long delayMillis;
+  private final ScheduledExecutorService executor;
+
+  private final Object lock = new Object();
+  private Set<String> pendingCollections = new LinkedHashSet<>();
+  private List<CompletableFuture<Void>> pendingRequests = new ArrayList<>();
+  private boolean roundScheduled = false;
+  private long commits = 0;
+
+  /**
+   * @param delayMillis
+   *          time to wait for more requests before starting a commit round
+   */
+  public IndexCommitCoordinator(Committer committer, long delayMillis) {
+    this.committer = committer;
+    this.delayMillis = Math.max(0, delayMillis);
+    this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "index-commit-coordinator");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * @return a future that completes when all the given collections have been
+   *         committed by a commit round started after this request
+   */
+  public CompletableFuture<Void> requestCommit(Collection<String> collections) {
+    CompletableFuture<Void> future = new CompletableFuture<>();
+    if (collections.isEmpty()) {
+      future.complete(null);
+      return future;
+    }
+
+    synchronized (lock) {
+      pendingCollections.addAll(collections);
+      pendingRequests.add(future);
+      if (!roundScheduled) {
+        roundScheduled = true;
+        executor.schedule(this::commitRound, delayMillis, TimeUnit.MILLISECONDS);
+      }
+    }
+    return future;
+  }
+
+  private void commitRound() {
+    Set<String> collections;
+    List<CompletableFuture<Void>> requests;
+    synchronized (lock) {
+      collections = pendingCollections;
+      requests = pendingRequests;
+      pendingCollections = new LinkedHashSet<>();
+      pendingRequests = new ArrayList<>();
+      roundScheduled = false;
+    }
+
+    Exception error = null;
+    for (String collection : collections) {
+      try {
+        committer.commit(collection);
+        synchronized (lock) {
+          commits++;
+        }
+      } catch (Exception e) {
+        LOGGER.error("Error committing into collection: {}", collection, e);
+        error = e;
+      }
+    }
+
+    LOGGER.debug("Committed {} collection(s) for {} request(s)", collections.size(), requests.size());
+    for (CompletableFuture<Void> request : requests) {
+      if (error == null) {
+        request.complete(null);
+      } else {
+        request.completeExceptionally(error);
+      }
+    }
+  }
+
+  /**
+   * @return number of collection commits done so far
+   */
+  public long getCommits() {
+    synchronized (lock) {
+      return commits;
+    }
+  }
+
+  public void shutdown() {
+    executor.shutdown();
+  }
+}
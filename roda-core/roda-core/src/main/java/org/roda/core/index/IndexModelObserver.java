@@ -18,6 +18,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.StreamSupport;
@@ -999,6 +1000,31 @@ public class IndexModelObserver implements ModelObserver {
     return ret;
   }
 
+  @Override
+  public ReturnWithExceptions<Void, ModelObserver> filesCreated(List<File> files) {
+    ReturnWithExceptions<Void, ModelObserver> ret = new ReturnWithExceptions<>(this);
+    // the AIP and its ancestors are retrieved once for all its files
+    Map<String, List<File>> filesByAip = new LinkedHashMap<>();
+    for (File file : files) {
+      filesByAip.computeIfAbsent(file.getAipId(), k -> new ArrayList<>()).add(file);
+    }
+
+    for (Map.Entry<String, List<File>> entry : filesByAip.entrySet()) {
+      try {
+        AIP aip = model.retrieveAIP(entry.getKey());
+        List<String> ancestors = SolrUtils.getAncestors(aip.getParentId(), model);
+        for (File file : entry.getValue()) {
+          indexFile(aip, file, ancestors, true).addTo(ret);
+        }
+      } catch (RequestNotValidException | NotFoundException | GenericException | AuthorizationDeniedException e) {
+        LOGGER.error("Error indexing files of AIP: {}", entry.getKey(), e);
+        ret.add(e);
+      }
+    }
+
+    return ret;
+  }
+
   @Override
   public ReturnWithExceptions<Void, ModelObserver> fileUpdated(File file) {
     ReturnWithExceptions<Void, ModelObserver> ret = fileDeleted(file.getAipId(), file.getRepresentationId(),
@@ -14,10 +14,14 @@ import java.io.InputStreamReader;
 import java.io.Serializable;
 import java.nio.file.NoSuchFileException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.function.Consumer;
 
 import org.apache.commons.configuration.Configuration;
@@ -76,6 +80,7 @@ import org.roda.core.data.v2.user.User;
 import org.roda.core.index.utils.IndexResultIterator;
 import org.roda.core.index.utils.IterableIndexResult;
 import org.roda.core.index.utils.SolrUtils;
+import org.roda.core.model.ModelNotificationDispatcher;
 import org.roda.core.model.ModelObserver;
 import org.roda.core.model.ModelService;
 import org.roda.core.model.utils.ModelUtils;
@@ -93,10 +98,16 @@ public class IndexService {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(IndexService.class);
 
+  // indexed classes whose id is also the key of their model notifications
+  private static final List<Class<? extends IsIndexed>> NOTIFIED_BY_ID = Arrays.asList(IndexedAIP.class,
+    IndexedDIP.class, Job.class, IndexedRisk.class, RiskIncidence.class, RepresentationInformation.class,
+    Notification.class, LogEntry.class, DisposalConfirmation.class);
+
   private final SolrClient solrClient;
   private final ModelService model;
   private final IndexModelObserver observer;
   private final NodeType nodeType;
+  private final IndexCommitCoordinator commitCoordinator;
 
   public IndexService(SolrClient index, ModelService model, MetricRegistry metricRegistry,
     Configuration rodaConfiguration, NodeType nodeType) {
@@ -104,9 +115,18 @@ public class IndexService {
     this.solrClient = index;
     this.model = model;
     this.nodeType = nodeType;
+    this.commitCoordinator = new IndexCommitCoordinator(collection -> SolrUtils.commitOrFail(index, collection),
+      rodaConfiguration.getLong("core.index.commit.coalescing_delay_ms", 0L));
 
     observer = new IndexModelObserver(this.getSolrClient(), this.model);
-    model.addModelObserver(observer);
+    if (rodaConfiguration.getBoolean("core.index.observer.async.enabled", false)) {
+      model.addModelObserver(new ModelNotificationDispatcher(observer,
+        rodaConfiguration.getInt("core.index.observer.async.threads", 4),
+        rodaConfiguration.getInt("core.index.observer.async.queue_size", 1000),
+        rodaConfiguration.getInt("core.index.observer.async.max_batch_size", 100)));
+    } else {
+      model.addModelObserver(observer);
+    }
 
     configIterableIndexResult(metricRegistry, rodaConfiguration);
   }
@@ -200,14 +220,37 @@ public class IndexService {
 
   public <T extends IsIndexed> T retrieve(Class<T> returnClass, String id, List<String> fieldsToReturn)
     throws NotFoundException, GenericException {
+    awaitModelObservers(returnClass, id);
     return SolrUtils.retrieve(getSolrClient(), returnClass, id, fieldsToReturn);
   }
 
   public <T extends IsIndexed> List<T> retrieve(Class<T> returnClass, List<String> ids, List<String> fieldsToReturn)
     throws NotFoundException, GenericException {
+    if (NOTIFIED_BY_ID.contains(returnClass)) {
+      for (String id : new LinkedHashSet<>(ids)) {
+        model.awaitModelObservers(id);
+      }
+    } else {
+      model.awaitModelObservers();
+    }
     return SolrUtils.retrieve(getSolrClient(), returnClass, ids, fieldsToReturn);
   }
 
+  /**
+   * Waits for the model changes still being indexed asynchronously that the
+   * retrieved object may depend on: only the ones about that object when its id
+   * is the key of its notifications, all the ones queued so far otherwise (e.g.
+   * files, whose notifications are keyed by AIP id). Neither stops other
+   * notifications from being queued, nor takes their errors.
+   */
+  private void awaitModelObservers(Class<? extends IsIndexed> returnClass, String id) {
+    if (NOTIFIED_BY_ID.contains(returnClass)) {
+      model.awaitModelObservers(id);
+    } else {
+      model.awaitModelObservers();
+    }
+  }
+
   public void reindexAIPs()
     throws RequestNotValidException, GenericException, NotFoundException, AuthorizationDeniedException {
     RodaCoreFactory.checkIfWriteIsAllowedAndIfFalseThrowException(nodeType);
@@ -636,15 +679,45 @@ public class IndexService {
       }
     }
 
-    SolrUtils.commit(getSolrClient(), classToCommit);
-  }
+    // changes still being indexed asynchronously must be part of the commit
+    model.awaitModelObservers();
 
+    try {
+      requestCommit(classToCommit).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new GenericException("Interrupted while waiting for index commit", e);
+    } catch (ExecutionException e) {
+      throw new GenericException("Error committing index", e.getCause());
+    }
+  }
+
+  /**
+   * Waits until everything indexed so far in the given classes is visible to
+   * searches. Commits are coalesced with the ones requested concurrently, see
+   * {@link IndexCommitCoordinator}. There is no need to commit before
+   * retrieving an object by id, as that uses real-time get. Both wait for the
+   * model changes still being indexed asynchronously, see
+   * {@link ModelNotificationDispatcher}.
+   */
   @SafeVarargs
   public final void commit(Class<? extends IsIndexed>... classToCommit)
     throws GenericException, AuthorizationDeniedException {
     commit(false, classToCommit);
   }
 
+  /**
+   * Same as {@link #commit(Class...)} but without waiting for the commit, for
+   * callers that only want the changes to be visible soon (e.g. in the UI).
+   */
+  @SafeVarargs
+  public final CompletableFuture<Void> requestCommit(Class<? extends IsIndexed>... classToCommit)
+    throws GenericException, AuthorizationDeniedException {
+    RodaCoreFactory.checkIfWriteIsAllowedAndIfFalseThrowException(nodeType);
+
+    return commitCoordinator.requestCommit(SolrUtils.getIndexNames(Arrays.asList(classToCommit)));
+  }
+
   public <T extends IsIndexed> List<String> suggest(Class<T> returnClass, String field, String query, User user,
     boolean allowPartial, boolean justActive) throws GenericException {
     return SolrUtils.suggest(getSolrClient(), returnClass, field, query, justActive, user, allowPartial);
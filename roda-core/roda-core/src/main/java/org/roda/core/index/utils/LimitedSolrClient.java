@@ -0,0 +1,52 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.index.utils;
+
+import java.io.IOException;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.util.NamedList;
+import org.roda.core.util.ResourceLimits;
+
+/**
+ * Solr client that limits the concurrent requests of plugins running on
+ * virtual threads (see {@link ResourceLimits}). Every request of a Solr client,
+ * whatever its kind (query, update, commit, ...), goes through
+ * {@link #request(SolrRequest, String)}.
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+public class LimitedSolrClient extends SolrClient {
+  private static final long serialVersionUID = 5096712385590313571L;
+
+  private final SolrClient solrClient;
+
+  public LimitedSolrClient(SolrClient solrClient) {
+    super();
+    this.solrClient = solrClient;
+  }
+
+  public SolrClient getWrappedSolrClient() {
+    return solrClient;
+  }
+
+  @Override
+  public NamedList<Object> request(SolrRequest<?> request, String collection) throws SolrServerException,
+    IOException {
+    try (ResourceLimits.Permit permit = ResourceLimits.acquire(ResourceLimits.Resource.INDEX)) {
+      return solrClient.request(request, collection);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    solrClient.close();
+  }
+}
@@ -8,6 +8,7 @@
 package org.roda.core.index.utils;
 
 import dev.failsafe.Failsafe;
+import dev.failsafe.FailsafeException;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.Serializable;
@@ -31,7 +32,9 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
+import java.util.SortedSet;
 import java.util.TimeZone;
+import java.util.TreeSet;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
 
@@ -286,7 +289,7 @@ public class SolrUtils {
     query.setParam("q.op", DEFAULT_QUERY_PARSER_OPERATOR);
     query.setQuery(parseFilter(filter));
     if (hasPermissionFilters(classToRetrieve)) {
-      query.addFilterQuery(getFilterQueries(user, justActive, classToRetrieve));
+      getFilterQueries(user, justActive, classToRetrieve).forEach(query::addFilterQuery);
     }
 
     query.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
@@ -337,7 +340,7 @@ public class SolrUtils {
     query.setFields(fieldsToReturn.toArray(new String[fieldsToReturn.size()]));
     parseAndConfigureFacets(facets, query);
     if (hasPermissionFilters(classToRetrieve)) {
-      query.addFilterQuery(getFilterQueries(user, justActive, classToRetrieve));
+      getFilterQueries(user, justActive, classToRetrieve).forEach(query::addFilterQuery);
     }
 
     try {
@@ -1193,50 +1196,80 @@ public class SolrUtils {
    * Roda user > Apache Solr filter query
    * ____________________________________________________________________________________________________________________
    */
-  private static <T extends IsIndexed> String getFilterQueries(User user, boolean justActive,
+  /**
+   * Gets the filter queries that restrict a search to what the user can read
+   * and, if asked, to active objects.
+   *
+   * Each restriction is a filter query of its own and permission filters are
+   * canonical (sorted and without duplicates), so that Solr caches and reuses
+   * them across searches. By default each user and group clause is also cached
+   * on its own, so users sharing a group share its cached documents, and users
+   * in many groups do not cache their (rarely reused) combination. If an
+   * access-control post-filter is installed in Solr, it can be used instead
+   * (see core.index.permission_filter.* properties).
+   */
+  public static <T extends IsIndexed> List<String> getFilterQueries(User user, boolean justActive,
     Class<T> classToRetrieve) {
-
-    StringBuilder fq = new StringBuilder();
+    List<String> filterQueries = new ArrayList<>();
 
     // TODO find a better way to define admin super powers
     if (user != null && !RodaConstants.ADMIN.equals(user.getName())) {
-      fq.append("(");
-      String usersKey = RodaConstants.INDEX_PERMISSION_USERS_PREFIX + PermissionType.READ;
-      appendExactMatch(fq, usersKey, user.getId(), true, false);
+      filterQueries.add(getPermissionFilterQuery(user.getId(), new TreeSet<>(user.getGroups())));
+    }
 
-      String groupsKey = RodaConstants.INDEX_PERMISSION_GROUPS_PREFIX + PermissionType.READ;
-      appendValuesUsingOROperatorForQuery(fq, groupsKey, new ArrayList<>(user.getGroups()), true);
+    if (justActive && SolrCollection.hasStateFilter(classToRetrieve)) {
+      StringBuilder fq = new StringBuilder();
+      appendExactMatch(fq, RodaConstants.INDEX_STATE, SolrUtils.formatEnum(AIPState.ACTIVE), true, false);
+      filterQueries.add(fq.toString());
+    }
 
-      fq.append(")");
+    return filterQueries;
+  }
+
+  private static String getPermissionFilterQuery(String userId, SortedSet<String> groups) {
+    String usersKey = RodaConstants.INDEX_PERMISSION_USERS_PREFIX + PermissionType.READ;
+    String groupsKey = RodaConstants.INDEX_PERMISSION_GROUPS_PREFIX + PermissionType.READ;
+    StringBuilder fq = new StringBuilder();
+
+    String postFilterParser = RodaCoreFactory.getProperty(RodaConstants.CORE_INDEX_PERMISSION_FILTER_POST_FILTER_PARSER,
+      "");
+    if (StringUtils.isNotBlank(postFilterParser)) {
+      fq.append("{!").append(postFilterParser).append(" cache=false cost=200 ");
+      appendLocalParam(fq, "usersField", usersKey);
+      appendLocalParam(fq, "groupsField", groupsKey);
+      appendLocalParam(fq, "user", userId);
+      appendLocalParam(fq, "groups", String.join(",", groups));
+      return fq.append("}").toString();
     }
 
-    if (justActive && SolrCollection.hasStateFilter(classToRetrieve)) {
-      appendExactMatch(fq, RodaConstants.INDEX_STATE, SolrUtils.formatEnum(AIPState.ACTIVE), true, true);
+    boolean cacheClauses = RodaCoreFactory.getProperty(RodaConstants.CORE_INDEX_PERMISSION_FILTER_CACHE_CLAUSES, true);
+    int maxCachedGroups = RodaCoreFactory.getProperty(RodaConstants.CORE_INDEX_PERMISSION_FILTER_MAX_CACHED_GROUPS, 20);
+    if (cacheClauses && groups.size() > maxCachedGroups) {
+      fq.append("{!cache=false}");
     }
 
+    appendPermissionClause(fq, usersKey, userId, cacheClauses);
+    for (String group : groups) {
+      fq.append(" OR ");
+      appendPermissionClause(fq, groupsKey, group, cacheClauses);
+    }
     return fq.toString();
   }
 
-  private static void appendValuesUsingOROperatorForQuery(StringBuilder ret, String key, List<String> values,
-    boolean prependWithOrIfNeeded) {
-    if (!values.isEmpty()) {
-      if (prependWithOrIfNeeded) {
-        appendOROperator(ret, true);
-      } else {
-        appendANDOperator(ret, true);
-      }
-
-      ret.append("(");
-      for (int i = 0; i < values.size(); i++) {
-        if (i != 0) {
-          ret.append(" OR ");
-        }
-        appendExactMatch(ret, key, values.get(i), true, false);
-      }
-      ret.append(")");
+  private static void appendPermissionClause(StringBuilder fq, String key, String value, boolean cached) {
+    if (cached) {
+      fq.append("filter(");
+      appendExactMatch(fq, key, value, true, false);
+      fq.append(")");
+    } else {
+      appendExactMatch(fq, key, value, true, false);
     }
   }
 
+  private static void appendLocalParam(StringBuilder fq, String name, String value) {
+    fq.append(name).append("='").append(value.replace("\\", "\\\\").replace("'", "\\'")).append("' ");
+  }
+
   /*
    * Apache Solr helper methods
    * ____________________________________________________________________________________________________________________
@@ -1256,7 +1289,26 @@ public class SolrUtils {
     }
   }
 
+  /**
+   * Soft commits one collection, failing if the commit still fails after the
+   * retries instead of only logging it. Used by the commit coalescer of
+   * {@link org.roda.core.index.IndexService}, whose callers wait for the
+   * changes to be visible.
+   */
+  public static void commitOrFail(SolrClient index, String collection) throws GenericException {
+    try {
+      Failsafe.with(RetryPolicyBuilder.getInstance().getRetryPolicy())
+        .run(() -> index.commit(collection, false, true, true));
+    } catch (FailsafeException e) {
+      throw new GenericException("Error committing into collection: " + collection, e.getCause());
+    }
+  }
+
   public static void commit(SolrClient index, List<Class<? extends IsIndexed>> resultClasses) throws GenericException {
+    commit(index, getIndexNames(resultClasses).toArray(new String[] {}));
+  }
+
+  public static List<String> getIndexNames(List<Class<? extends IsIndexed>> resultClasses) throws GenericException {
     List<String> collections = new ArrayList<>();
     for (Class<? extends IsIndexed> resultClass : resultClasses) {
       try {
@@ -1265,8 +1317,7 @@ public class SolrUtils {
         throw new GenericException(e);
       }
     }
-
-    commit(index, collections.toArray(new String[] {}));
+    return collections;
   }
 
   @SafeVarargs
@@ -1595,7 +1646,7 @@ public class SolrUtils {
     query.setParam("q.op", DEFAULT_QUERY_PARSER_OPERATOR);
     query.setQuery(queryBuilder.toString());
     if (hasPermissionFilters(classToRetrieve)) {
-      query.addFilterQuery(getFilterQueries(user, justActive, classToRetrieve));
+      getFilterQueries(user, justActive, classToRetrieve).forEach(query::addFilterQuery);
     }
     parseAndConfigureFacets(new Facets(new SimpleFacetParameter(field)), query);
     List<String> suggestions = new ArrayList<>();
@@ -0,0 +1,157 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.model;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.roda.core.data.exceptions.AlreadyExistsException;
+import org.roda.core.data.exceptions.AuthorizationDeniedException;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.RequestNotValidException;
+import org.roda.core.data.v2.ip.File;
+import org.roda.core.data.v2.ip.metadata.OtherMetadata;
+import org.roda.core.data.v2.ip.metadata.PreservationMetadata;
+import org.roda.core.data.v2.ip.metadata.PreservationMetadata.PreservationMetadataType;
+import org.roda.core.storage.ContentPayload;
+
+/**
+ * Other metadata and preservation metadata updates, and file creations, of many
+ * files of the same AIPs (e.g. the results of a format identification or of a
+ * conversion).
+ *
+ * <p>
+ * Each update writes its own binary right away, but the AIP metadata
+ * (aip.json), and the update dates of the AIP and of the changed
+ * representations, are only updated by {@link #flush()}, once per AIP, instead
+ * of once per update as {@link ModelService#createOrUpdateOtherMetadata},
+ * {@link ModelService#updatePreservationMetadata} and
+ * {@link ModelService#createFile} do.
+ * </p>
+ *
+ * <p>
+ * A batch may be shared by the threads processing different parts of the same
+ * AIPs, to be flushed once they are all done.
+ * </p>
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+public class MetadataBatch implements AutoCloseable {
+  private final ModelService model;
+  private final String username;
+  private final boolean notify;
+
+  // changed AIPs and, for each one, its changed representations
+  private final Map<String, Set<String>> changed = new LinkedHashMap<>();
+  // not synchronized, flushing writes to the storage and would pin a virtual thread
+  private final ReentrantLock lock = new ReentrantLock();
+
+  public MetadataBatch(ModelService model, String username, boolean notify) {
+    this.model = model;
+    this.username = username;
+    this.notify = notify;
+  }
+
+  public OtherMetadata createOrUpdateOtherMetadata(String aipId, String representationId,
+    List<String> fileDirectoryPath, String fileId, String fileSuffix, String type, ContentPayload payload)
+    throws RequestNotValidException, GenericException, NotFoundException, AuthorizationDeniedException {
+    OtherMetadata om = model.storeOtherMetadata(aipId, representationId, fileDirectoryPath, fileId, fileSuffix, type,
+      payload);
+    if (notify) {
+      model.notifyOtherMetadataCreated(om).failOnError();
+    }
+
+    lock.lock();
+    try {
+      Set<String> representations = changed.computeIfAbsent(aipId, k -> new HashSet<>());
+      if (representationId != null) {
+        representations.add(representationId);
+      }
+    } finally {
+      lock.unlock();
+    }
+    return om;
+  }
+
+  public PreservationMetadata updatePreservationMetadata(String id, PreservationMetadataType type, String aipId,
+    String representationId, List<String> fileDirectoryPath, String fileId, ContentPayload payload)
+    throws GenericException, NotFoundException, RequestNotValidException, AuthorizationDeniedException {
+    PreservationMetadata pm = model.storePreservationMetadata(id, type, aipId, representationId, fileDirectoryPath,
+      fileId, payload);
+    if (notify) {
+      model.notifyPreservationMetadataUpdated(pm).failOnError();
+    }
+
+    if (aipId != null) {
+      lock.lock();
+      try {
+        changed.computeIfAbsent(aipId, k -> new HashSet<>());
+      } finally {
+        lock.unlock();
+      }
+    }
+    return pm;
+  }
+
+  public File createFile(String aipId, String representationId, List<String> directoryPath, String fileId,
+    ContentPayload payload) throws RequestNotValidException, GenericException, AlreadyExistsException,
+    AuthorizationDeniedException, NotFoundException {
+    File file = model.storeFile(aipId, representationId, directoryPath, fileId, payload);
+    if (notify) {
+      model.notifyFileCreated(file).failOnError();
+    }
+
+    lock.lock();
+    try {
+      changed.computeIfAbsent(aipId, k -> new HashSet<>()).add(representationId);
+    } finally {
+      lock.unlock();
+    }
+    return file;
+  }
+
+  /**
+   * @return number of AIPs whose metadata will be updated by the next flush
+   */
+  public int getChangedAIPCount() {
+    lock.lock();
+    try {
+      return changed.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Updates the metadata of each AIP changed since the previous flush.
+   */
+  public void flush() throws RequestNotValidException, NotFoundException, GenericException,
+    AuthorizationDeniedException {
+    lock.lock();
+    try {
+      while (!changed.isEmpty()) {
+        Map.Entry<String, Set<String>> entry = changed.entrySet().iterator().next();
+        model.changeAIPAndRepresentationsUpdateOn(entry.getKey(), entry.getValue(), username, notify);
+        changed.remove(entry.getKey());
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void close() throws RequestNotValidException, NotFoundException, GenericException,
+    AuthorizationDeniedException {
+    flush();
+  }
+}
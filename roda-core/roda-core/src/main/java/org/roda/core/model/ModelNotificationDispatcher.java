@@ -0,0 +1,371 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.model;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+import org.roda.core.common.ReturnWithExceptionsWrapper;
+import org.roda.core.data.exceptions.ReturnWithExceptions;
+import org.roda.core.data.v2.ip.File;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Delivers the notifications of a {@link ModelObservable} to one observer in
+ * background threads, so that model changes do not wait for the observer (e.g.
+ * for the index).
+ *
+ * <p>
+ * Notifications are queued in shards chosen by the key of the notified object
+ * (the AIP id for AIPs and everything inside them), and each shard is delivered
+ * in order by its own thread, so notifications about the same object are never
+ * reordered. Queues are bounded: when a shard is full the notifying thread
+ * waits. Consecutive file creations of the same AIP are delivered as one
+ * {@link ModelObserver#filesCreated(List)} call.
+ * </p>
+ *
+ * <p>
+ * {@link #await(String)} waits for the notifications already queued in the
+ * shard of a key, without stopping the other shards or the notifying threads.
+ * Errors, including the exceptions thrown by the observer, cannot be returned
+ * to the notifying thread, so they are kept with the key they belong to until
+ * {@link #flush(String)} or {@link #flush()} returns them. Notifications made
+ * from the delivery threads (i.e. by the observer itself) are delivered right
+ * away to avoid waiting on themselves.
+ * </p>
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+public class ModelNotificationDispatcher {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ModelNotificationDispatcher.class);
+
+  private static final int MAX_KEPT_FAILURES = 1000;
+
+  private final ModelObserver observer;
+  private final List<Shard> shards = new ArrayList<>();
+  private final Set<Thread> workers = ConcurrentHashMap.newKeySet();
+  private final int maxBatchSize;
+
+  private final AtomicLong pending = new AtomicLong(0);
+  private final AtomicLong delivered = new AtomicLong(0);
+  private final List<Failure> failures = new ArrayList<>();
+  private volatile boolean running = true;
+
+  private static class Notification {
+    private final String key;
+    private final Function<ModelObserver, ReturnWithExceptions<?, ?>> action;
+    private final File createdFile;
+
+    Notification(String key, Function<ModelObserver, ReturnWithExceptions<?, ?>> action, File createdFile) {
+      this.key = key;
+      this.action = action;
+      this.createdFile = createdFile;
+    }
+  }
+
+  private static class Failure {
+    private final String key;
+    private final ReturnWithExceptions<?, ?> ret;
+
+    Failure(String key, ReturnWithExceptions<?, ?> ret) {
+      this.key = key;
+      this.ret = ret;
+    }
+  }
+
+  private static class Shard {
+    private final BlockingQueue<Notification> queue;
+    private final AtomicLong queued = new AtomicLong(0);
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition deliveredChanged = lock.newCondition();
+    private long delivered = 0;
+    private Thread thread;
+
+    Shard(int queueCapacity) {
+      this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    void delivered(int notifications) {
+      lock.lock();
+      try {
+        delivered += notifications;
+        deliveredChanged.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    void await(long target) throws InterruptedException {
+      lock.lock();
+      try {
+        while (delivered < target) {
+          deliveredChanged.await();
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * @param shards
+   *          number of delivery threads
+   * @param queueCapacity
+   *          maximum number of queued notifications of each shard
+   * @param maxBatchSize
+   *          maximum number of notifications taken from a shard at once
+   */
+  public ModelNotificationDispatcher(ModelObserver observer, int shards, int queueCapacity, int maxBatchSize) {
+    this.observer = observer;
+    this.maxBatchSize = Math.max(1, maxBatchSize);
+    for (int i = 0; i < Math.max(1, shards); i++) {
+      Shard shard = new Shard(Math.max(1, queueCapacity));
+      shard.thread = new Thread(() -> deliverLoop(shard),
+        "model-notifications-" + observer.getClass().getSimpleName() + "-" + i);
+      shard.thread.setDaemon(true);
+      this.shards.add(shard);
+      this.workers.add(shard.thread);
+      shard.thread.start();
+    }
+  }
+
+  public ModelObserver getObserver() {
+    return observer;
+  }
+
+  public void dispatch(String key, Function<ModelObserver, ReturnWithExceptions<?, ?>> action) {
+    enqueue(new Notification(key, action, null));
+  }
+
+  public void dispatchFileCreated(String key, File file) {
+    enqueue(new Notification(key, o -> o.fileCreated(file), file));
+  }
+
+  int getShard(String key) {
+    return Math.floorMod(key == null ? 0 : key.hashCode(), shards.size());
+  }
+
+  private void enqueue(Notification notification) {
+    if (!running || workers.contains(Thread.currentThread())) {
+      deliver(notification.key, notification.action);
+      return;
+    }
+
+    Shard shard = shards.get(getShard(notification.key));
+    pending.incrementAndGet();
+    shard.queued.incrementAndGet();
+    try {
+      shard.queue.put(notification);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      LOGGER.warn("Interrupted while queueing a notification, delivering it right away");
+      deliver(notification.key, notification.action);
+      done(shard, 1);
+    }
+  }
+
+  private void deliverLoop(Shard shard) {
+    List<Notification> batch = new ArrayList<>();
+    while (running || !shard.queue.isEmpty()) {
+      try {
+        Notification first = shard.queue.poll(100, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        shard.queue.drainTo(batch, maxBatchSize - 1);
+        deliver(shard, batch);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      } catch (RuntimeException e) {
+        LOGGER.error("Error delivering notifications to {}", observer.getClass().getSimpleName(), e);
+      } finally {
+        batch.clear();
+      }
+    }
+  }
+
+  private void deliver(Shard shard, List<Notification> batch) {
+    List<File> createdFiles = new ArrayList<>();
+    String createdFilesKey = null;
+    for (Notification notification : batch) {
+      if (!createdFiles.isEmpty()
+        && (notification.createdFile == null || !Objects.equals(notification.key, createdFilesKey))) {
+        deliverCreatedFiles(createdFilesKey, createdFiles);
+        done(shard, createdFiles.size());
+        createdFiles = new ArrayList<>();
+      }
+
+      if (notification.createdFile != null) {
+        createdFiles.add(notification.createdFile);
+        createdFilesKey = notification.key;
+      } else {
+        deliver(notification.key, notification.action);
+        done(shard, 1);
+      }
+    }
+
+    if (!createdFiles.isEmpty()) {
+      deliverCreatedFiles(createdFilesKey, createdFiles);
+      done(shard, createdFiles.size());
+    }
+  }
+
+  private void done(Shard shard, int notifications) {
+    pending.addAndGet(-notifications);
+    delivered.addAndGet(notifications);
+    shard.delivered(notifications);
+  }
+
+  private void deliverCreatedFiles(String key, List<File> files) {
+    if (files.size() == 1) {
+      deliver(key, o -> o.fileCreated(files.get(0)));
+    } else {
+      deliver(key, o -> o.filesCreated(files));
+    }
+  }
+
+  private void deliver(String key, Function<ModelObserver, ReturnWithExceptions<?, ?>> action) {
+    try {
+      ReturnWithExceptions<?, ?> ret = action.apply(observer);
+      if (ret != null && !ret.getExceptions().isEmpty()) {
+        addFailure(key, ret);
+      }
+    } catch (Exception e) {
+      LOGGER.error("Error invoking method in observer {}", observer.getClass().getSimpleName(), e);
+      addFailure(key, new ReturnWithExceptions<>(observer).add(e));
+    }
+  }
+
+  private void addFailure(String key, ReturnWithExceptions<?, ?> ret) {
+    synchronized (failures) {
+      if (failures.size() >= MAX_KEPT_FAILURES) {
+        Failure dropped = failures.remove(0);
+        LOGGER.warn("Too many notification errors kept, dropping the ones of {}: {}", dropped.key,
+          dropped.ret.getExceptions());
+      }
+      failures.add(new Failure(key, ret));
+    }
+  }
+
+  /**
+   * Waits until the notifications queued so far in the shard of the given key
+   * are delivered. Notifications of other shards, and notifications queued
+   * meanwhile, are not waited for.
+   */
+  public void await(String key) {
+    await(shards.get(getShard(key)));
+  }
+
+  /**
+   * Waits until the notifications queued so far in all shards are delivered.
+   */
+  public void await() {
+    for (Shard shard : shards) {
+      await(shard);
+    }
+  }
+
+  private void await(Shard shard) {
+    if (workers.contains(Thread.currentThread())) {
+      return;
+    }
+
+    try {
+      shard.await(shard.queued.get());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      LOGGER.warn("Interrupted while waiting for notifications to be delivered");
+    }
+  }
+
+  /**
+   * Waits like {@link #await(String)} and takes the errors of the given key.
+   *
+   * @return the errors of the notifications about the given key not yet
+   *         returned by a flush
+   */
+  public ReturnWithExceptionsWrapper flush(String key) {
+    await(key);
+    return takeFailures(key, false);
+  }
+
+  /**
+   * Waits like {@link #await()} and takes all errors.
+   *
+   * @return the errors of the notifications not yet returned by a flush
+   */
+  public ReturnWithExceptionsWrapper flush() {
+    await();
+    return takeFailures(null, true);
+  }
+
+  private ReturnWithExceptionsWrapper takeFailures(String key, boolean all) {
+    ReturnWithExceptionsWrapper ret = new ReturnWithExceptionsWrapper();
+    synchronized (failures) {
+      for (Iterator<Failure> it = failures.iterator(); it.hasNext();) {
+        Failure failure = it.next();
+        if (all || Objects.equals(failure.key, key)) {
+          ret.addToList(failure.ret);
+          it.remove();
+        }
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * @return number of notifications queued but not yet delivered
+   */
+  public long getPending() {
+    return pending.get();
+  }
+
+  /**
+   * @return number of notifications delivered so far
+   */
+  public long getDelivered() {
+    return delivered.get();
+  }
+
+  /**
+   * Delivers the queued notifications and stops the delivery threads. Later
+   * notifications are delivered right away.
+   */
+  public void shutdown() {
+    running = false;
+    for (Shard shard : shards) {
+      try {
+        shard.thread.join(TimeUnit.SECONDS.toMillis(30));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+
+    // notifications queued while stopping
+    for (Shard shard : shards) {
+      List<Notification> remaining = new ArrayList<>();
+      shard.queue.drainTo(remaining);
+      deliver(shard, remaining);
+    }
+  }
+}
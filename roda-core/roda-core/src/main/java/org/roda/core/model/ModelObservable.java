@@ -9,6 +9,8 @@ package org.roda.core.model;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 
 import org.roda.core.common.ReturnWithExceptionsWrapper;
@@ -35,11 +37,13 @@ import org.slf4j.Logger;
 
 public abstract class ModelObservable {
   private final List<ModelObserver> observers;
+  private final Map<ModelObserver, ModelNotificationDispatcher> dispatchers;
   private Logger logger;
 
   public ModelObservable(Logger logger) {
     super();
     this.observers = new ArrayList<>();
+    this.dispatchers = new ConcurrentHashMap<>();
     this.logger = logger;
   }
 
@@ -47,13 +51,94 @@ public abstract class ModelObservable {
     observers.add(observer);
   }
 
+  /**
+   * Adds an observer that is notified asynchronously, in the order of the
+   * notifications about each object.
+   *
+   * @see ModelNotificationDispatcher
+   */
+  public void addModelObserver(ModelNotificationDispatcher dispatcher) {
+    dispatchers.put(dispatcher.getObserver(), dispatcher);
+    observers.add(dispatcher.getObserver());
+  }
+
   public void removeModelObserver(ModelObserver observer) {
     observers.remove(observer);
+    ModelNotificationDispatcher dispatcher = dispatchers.remove(observer);
+    if (dispatcher != null) {
+      dispatcher.shutdown();
+    }
+  }
+
+  /**
+   * For callers that must observe their own changes: waits until the
+   * asynchronous observers have been notified of the changes made so far to
+   * the objects with the given key (e.g. an AIP id).
+   */
+  public void awaitModelObservers(String key) {
+    for (ModelNotificationDispatcher dispatcher : dispatchers.values()) {
+      dispatcher.await(key);
+    }
+  }
+
+  /**
+   * Waits until the asynchronous observers have been notified of all changes
+   * made so far.
+   */
+  public void awaitModelObservers() {
+    for (ModelNotificationDispatcher dispatcher : dispatchers.values()) {
+      dispatcher.await();
+    }
   }
 
-  private ReturnWithExceptionsWrapper notifyObserversSafely(Function<ModelObserver, ReturnWithExceptions<?, ?>> func) {
+  /**
+   * Waits like {@link #awaitModelObservers(String)}.
+   *
+   * @return the errors of the asynchronous notifications about the objects with
+   *         the given key since the previous flush
+   */
+  public ReturnWithExceptionsWrapper flushModelObservers(String key) {
+    ReturnWithExceptionsWrapper wrapper = new ReturnWithExceptionsWrapper();
+    for (ModelNotificationDispatcher dispatcher : dispatchers.values()) {
+      dispatcher.flush(key).getList().forEach(wrapper::addToList);
+    }
+    return wrapper;
+  }
+
+  /**
+   * Waits like {@link #awaitModelObservers()}.
+   *
+   * @return the errors of all asynchronous notifications since the previous
+   *         flush
+   */
+  public ReturnWithExceptionsWrapper flushModelObservers() {
+    ReturnWithExceptionsWrapper wrapper = new ReturnWithExceptionsWrapper();
+    for (ModelNotificationDispatcher dispatcher : dispatchers.values()) {
+      dispatcher.flush().getList().forEach(wrapper::addToList);
+    }
+    return wrapper;
+  }
+
+  public void shutdownModelObservers() {
+    for (ModelNotificationDispatcher dispatcher : dispatchers.values()) {
+      dispatcher.shutdown();
+      ReturnWithExceptionsWrapper failures = dispatcher.flush();
+      if (!failures.hasNoExceptions()) {
+        logger.error("Errors notifying {} not returned by a flush: {}",
+          dispatcher.getObserver().getClass().getSimpleName(), failures.printStackTraces());
+      }
+    }
+  }
+
+  private ReturnWithExceptionsWrapper notifyObserversSafely(String key,
+    Function<ModelObserver, ReturnWithExceptions<?, ?>> func) {
     ReturnWithExceptionsWrapper wrapper = new ReturnWithExceptionsWrapper();
     for (ModelObserver observer : observers) {
+      ModelNotificationDispatcher dispatcher = dispatchers.get(observer);
+      if (dispatcher != null) {
+        dispatcher.dispatch(key, func);
+        continue;
+      }
       try {
         wrapper.addToList(func.apply(observer));
       } catch (Exception e) {
@@ -64,224 +149,254 @@ public abstract class ModelObservable {
     return wrapper;
   }
 
+  private static String getKey(PreservationMetadata pm) {
+    return pm.getAipId() != null ? pm.getAipId() : pm.getId();
+  }
+
   public ReturnWithExceptionsWrapper notifyAipCreated(AIP aip) {
-    return notifyObserversSafely(observer -> observer.aipCreated(aip));
+    return notifyObserversSafely(aip.getId(), observer -> observer.aipCreated(aip));
   }
 
   public ReturnWithExceptionsWrapper notifyAipUpdated(AIP aip) {
-    return notifyObserversSafely(observer -> observer.aipUpdated(aip));
+    return notifyObserversSafely(aip.getId(), observer -> observer.aipUpdated(aip));
   }
 
   public ReturnWithExceptionsWrapper notifyAipUpdatedOnChanged(AIP aip) {
-    return notifyObserversSafely(observer -> observer.aipUpdatedOn(aip));
+    return notifyObserversSafely(aip.getId(), observer -> observer.aipUpdatedOn(aip));
   }
 
   public ReturnWithExceptionsWrapper notifyAipDestroyed(AIP aip) {
-    return notifyObserversSafely(observer -> observer.aipDestroyed(aip));
+    return notifyObserversSafely(aip.getId(), observer -> observer.aipDestroyed(aip));
   }
 
   public ReturnWithExceptionsWrapper notifyAipMoved(AIP aip, String oldParentId, String newParentId) {
-    return notifyObserversSafely(observer -> observer.aipMoved(aip, oldParentId, newParentId));
+    return notifyObserversSafely(aip.getId(), observer -> observer.aipMoved(aip, oldParentId, newParentId));
   }
 
   public ReturnWithExceptionsWrapper notifyAipStateUpdated(AIP aip) {
-    return notifyObserversSafely(observer -> observer.aipStateUpdated(aip));
+    return notifyObserversSafely(aip.getId(), observer -> observer.aipStateUpdated(aip));
   }
 
   public ReturnWithExceptionsWrapper notifyAipInstanceIdUpdated(AIP aip) {
-    return notifyObserversSafely(observer -> observer.aipInstanceIdUpdated(aip));
+    return notifyObserversSafely(aip.getId(), observer -> observer.aipInstanceIdUpdated(aip));
   }
 
   public ReturnWithExceptionsWrapper notifyAipDeleted(String aipId) {
-    return notifyObserversSafely(observer -> observer.aipDeleted(aipId, true));
+    return notifyObserversSafely(aipId, observer -> observer.aipDeleted(aipId, true));
   }
 
   public ReturnWithExceptionsWrapper notifyDescriptiveMetadataCreated(DescriptiveMetadata descriptiveMetadata) {
-    return notifyObserversSafely(observer -> observer.descriptiveMetadataCreated(descriptiveMetadata));
+    return notifyObserversSafely(descriptiveMetadata.getAipId(),
+      observer -> observer.descriptiveMetadataCreated(descriptiveMetadata));
   }
 
   public ReturnWithExceptionsWrapper notifyDescriptiveMetadataUpdated(DescriptiveMetadata descriptiveMetadata) {
-    return notifyObserversSafely(observer -> observer.descriptiveMetadataUpdated(descriptiveMetadata));
+    return notifyObserversSafely(descriptiveMetadata.getAipId(),
+      observer -> observer.descriptiveMetadataUpdated(descriptiveMetadata));
   }
 
   public ReturnWithExceptionsWrapper notifyDescriptiveMetadataDeleted(String aipId, String representationId,
     String descriptiveMetadataBinaryId) {
-    return notifyObserversSafely(
+    return notifyObserversSafely(aipId,
       observer -> observer.descriptiveMetadataDeleted(aipId, representationId, descriptiveMetadataBinaryId));
   }
 
   public ReturnWithExceptionsWrapper notifyRepresentationCreated(Representation representation) {
-    return notifyObserversSafely(observer -> observer.representationCreated(representation));
+    return notifyObserversSafely(representation.getAipId(), observer -> observer.representationCreated(representation));
   }
 
   public ReturnWithExceptionsWrapper notifyRepresentationUpdated(Representation representation) {
-    return notifyObserversSafely(observer -> observer.representationUpdated(representation));
+    return notifyObserversSafely(representation.getAipId(), observer -> observer.representationUpdated(representation));
   }
 
   public ReturnWithExceptionsWrapper notifyRepresentationDeleted(String aipId, String representationId) {
-    return notifyObserversSafely(observer -> observer.representationDeleted(aipId, representationId, true));
+    return notifyObserversSafely(aipId, observer -> observer.representationDeleted(aipId, representationId, true));
   }
 
   public ReturnWithExceptionsWrapper notifyRepresentationUpdatedOnChanged(Representation representation) {
-    return notifyObserversSafely(observer -> observer.representationUpdatedOn(representation));
+    return notifyObserversSafely(representation.getAipId(),
+      observer -> observer.representationUpdatedOn(representation));
   }
 
   public ReturnWithExceptionsWrapper notifyFileCreated(File file) {
-    return notifyObserversSafely(observer -> observer.fileCreated(file));
+    ReturnWithExceptionsWrapper wrapper = new ReturnWithExceptionsWrapper();
+    for (ModelObserver observer : observers) {
+      ModelNotificationDispatcher dispatcher = dispatchers.get(observer);
+      if (dispatcher != null) {
+        // may be delivered together with other created files
+        dispatcher.dispatchFileCreated(file.getAipId(), file);
+        continue;
+      }
+      try {
+        wrapper.addToList(observer.fileCreated(file));
+      } catch (Exception e) {
+        logger.error("Error invoking method in observer {}", observer.getClass().getSimpleName(), e);
+      }
+    }
+    return wrapper;
   }
 
   public ReturnWithExceptionsWrapper notifyFileUpdated(File file) {
-    return notifyObserversSafely(observer -> observer.fileUpdated(file));
+    return notifyObserversSafely(file.getAipId(), observer -> observer.fileUpdated(file));
   }
 
   public ReturnWithExceptionsWrapper notifyFileDeleted(String aipId, String representationId,
     List<String> fileDirectoryPath, String fileId) {
-    return notifyObserversSafely(
+    return notifyObserversSafely(aipId,
       observer -> observer.fileDeleted(aipId, representationId, fileDirectoryPath, fileId, true));
   }
 
   public ReturnWithExceptionsWrapper notifyLogEntryCreated(LogEntry entry) {
-    return notifyObserversSafely(observer -> observer.logEntryCreated(entry));
+    return notifyObserversSafely(entry.getId(), observer -> observer.logEntryCreated(entry));
   }
 
   public ReturnWithExceptionsWrapper notifyUserCreated(User user) {
-    return notifyObserversSafely(observer -> observer.userCreated(user));
+    return notifyObserversSafely(user.getId(), observer -> observer.userCreated(user));
   }
 
   public ReturnWithExceptionsWrapper notifyUserUpdated(User user) {
-    return notifyObserversSafely(observer -> observer.userUpdated(user));
+    return notifyObserversSafely(user.getId(), observer -> observer.userUpdated(user));
   }
 
   public ReturnWithExceptionsWrapper notifyUserDeleted(String userID) {
-    return notifyObserversSafely(observer -> observer.userDeleted(userID));
+    return notifyObserversSafely(userID, observer -> observer.userDeleted(userID));
   }
 
   public ReturnWithExceptionsWrapper notifyGroupCreated(Group group) {
-    return notifyObserversSafely(observer -> observer.groupCreated(group));
+    return notifyObserversSafely(group.getId(), observer -> observer.groupCreated(group));
   }
 
   public ReturnWithExceptionsWrapper notifyGroupUpdated(Group group) {
-    return notifyObserversSafely(observer -> observer.groupUpdated(group));
+    return notifyObserversSafely(group.getId(), observer -> observer.groupUpdated(group));
   }
 
   public ReturnWithExceptionsWrapper notifyGroupDeleted(String groupID) {
-    return notifyObserversSafely(observer -> observer.groupDeleted(groupID));
+    return notifyObserversSafely(groupID, observer -> observer.groupDeleted(groupID));
   }
 
   public ReturnWithExceptionsWrapper notifyPreservationMetadataCreated(
     PreservationMetadata preservationMetadataBinary) {
-    return notifyObserversSafely(observer -> observer.preservationMetadataCreated(preservationMetadataBinary));
+    return notifyObserversSafely(getKey(preservationMetadataBinary),
+      observer -> observer.preservationMetadataCreated(preservationMetadataBinary));
   }
 
   public ReturnWithExceptionsWrapper notifyPreservationMetadataUpdated(
     PreservationMetadata preservationMetadataBinary) {
-    return notifyObserversSafely(observer -> observer.preservationMetadataUpdated(preservationMetadataBinary));
+    return notifyObserversSafely(getKey(preservationMetadataBinary),
+      observer -> observer.preservationMetadataUpdated(preservationMetadataBinary));
   }
 
   public ReturnWithExceptionsWrapper notifyPreservationMetadataDeleted(PreservationMetadata pm) {
-    return notifyObserversSafely(observer -> observer.preservationMetadataDeleted(pm));
+    return notifyObserversSafely(getKey(pm), observer -> observer.preservationMetadataDeleted(pm));
   }
 
   public ReturnWithExceptionsWrapper notifyOtherMetadataCreated(OtherMetadata otherMetadataBinary) {
-    return notifyObserversSafely(observer -> observer.otherMetadataCreated(otherMetadataBinary));
+    return notifyObserversSafely(otherMetadataBinary.getAipId(),
+      observer -> observer.otherMetadataCreated(otherMetadataBinary));
   }
 
   public ReturnWithExceptionsWrapper notifyJobCreatedOrUpdated(Job job, boolean reindexJobReports) {
-    return notifyObserversSafely(observer -> observer.jobCreatedOrUpdated(job, reindexJobReports));
+    return notifyObserversSafely(job.getId(), observer -> observer.jobCreatedOrUpdated(job, reindexJobReports));
   }
 
   public ReturnWithExceptionsWrapper notifyJobDeleted(String jobId) {
-    return notifyObserversSafely(observer -> observer.jobDeleted(jobId));
+    return notifyObserversSafely(jobId, observer -> observer.jobDeleted(jobId));
   }
 
   public ReturnWithExceptionsWrapper notifyJobReportCreatedOrUpdated(Report jobReport, Job cachedJob) {
-    return notifyObserversSafely(observer -> observer.jobReportCreatedOrUpdated(jobReport, cachedJob));
+    return notifyObserversSafely(jobReport.getId(),
+      observer -> observer.jobReportCreatedOrUpdated(jobReport, cachedJob));
   }
 
   public ReturnWithExceptionsWrapper notifyJobReportDeleted(String jobReportId) {
-    return notifyObserversSafely(observer -> observer.jobReportDeleted(jobReportId));
+    return notifyObserversSafely(jobReportId, observer -> observer.jobReportDeleted(jobReportId));
   }
 
   public ReturnWithExceptionsWrapper notifyAipPermissionsUpdated(AIP aip) {
-    return notifyObserversSafely(observer -> observer.aipPermissionsUpdated(aip));
+    return notifyObserversSafely(aip.getId(), observer -> observer.aipPermissionsUpdated(aip));
   }
 
   public ReturnWithExceptionsWrapper notifyDipPermissionsUpdated(DIP dip) {
-    return notifyObserversSafely(observer -> observer.dipPermissionsUpdated(dip));
+    return notifyObserversSafely(dip.getId(), observer -> observer.dipPermissionsUpdated(dip));
   }
 
   public ReturnWithExceptionsWrapper notifyDipInstanceIdUpdated(DIP dip) {
-    return notifyObserversSafely(observer -> observer.dipInstanceIdUpdated(dip));
+    return notifyObserversSafely(dip.getId(), observer -> observer.dipInstanceIdUpdated(dip));
   }
 
   public ReturnWithExceptionsWrapper notifyTransferredResourceDeleted(String transferredResourceID) {
-    return notifyObserversSafely(observer -> observer.transferredResourceDeleted(transferredResourceID));
+    return notifyObserversSafely(transferredResourceID,
+      observer -> observer.transferredResourceDeleted(transferredResourceID));
   }
 
   public ReturnWithExceptionsWrapper notifyRiskCreatedOrUpdated(Risk risk, int incidences, boolean commit) {
-    return notifyObserversSafely(observer -> observer.riskCreatedOrUpdated(risk, incidences, commit));
+    return notifyObserversSafely(risk.getId(), observer -> observer.riskCreatedOrUpdated(risk, incidences, commit));
   }
 
   public ReturnWithExceptionsWrapper notifyRiskDeleted(String riskId, boolean commit) {
-    return notifyObserversSafely(observer -> observer.riskDeleted(riskId, commit));
+    return notifyObserversSafely(riskId, observer -> observer.riskDeleted(riskId, commit));
   }
 
   public ReturnWithExceptionsWrapper notifyRiskIncidenceCreatedOrUpdated(RiskIncidence riskIncidence, boolean commit) {
-    return notifyObserversSafely(observer -> observer.riskIncidenceCreatedOrUpdated(riskIncidence, commit));
+    return notifyObserversSafely(riskIncidence.getId(),
+      observer -> observer.riskIncidenceCreatedOrUpdated(riskIncidence, commit));
   }
 
   public ReturnWithExceptionsWrapper notifyRiskIncidenceDeleted(String riskIncidenceId, boolean commit) {
-    return notifyObserversSafely(observer -> observer.riskIncidenceDeleted(riskIncidenceId, commit));
+    return notifyObserversSafely(riskIncidenceId, observer -> observer.riskIncidenceDeleted(riskIncidenceId, commit));
   }
 
   public ReturnWithExceptionsWrapper notifyRepresentationInformationCreatedOrUpdated(RepresentationInformation ri,
     boolean commit) {
-    return notifyObserversSafely(observer -> observer.representationInformationCreatedOrUpdated(ri, commit));
+    return notifyObserversSafely(ri.getId(),
+      observer -> observer.representationInformationCreatedOrUpdated(ri, commit));
   }
 
   public ReturnWithExceptionsWrapper notifyRepresentationInformationDeleted(String representationInformationId,
     boolean commit) {
-    return notifyObserversSafely(
+    return notifyObserversSafely(representationInformationId,
       observer -> observer.representationInformationDeleted(representationInformationId, commit));
   }
 
   public ReturnWithExceptionsWrapper notifyNotificationCreatedOrUpdated(Notification notification) {
-    return notifyObserversSafely(observer -> observer.notificationCreatedOrUpdated(notification));
+    return notifyObserversSafely(notification.getId(), observer -> observer.notificationCreatedOrUpdated(notification));
   }
 
   public ReturnWithExceptionsWrapper notifyNotificationDeleted(String notificationId) {
-    return notifyObserversSafely(observer -> observer.notificationDeleted(notificationId));
+    return notifyObserversSafely(notificationId, observer -> observer.notificationDeleted(notificationId));
   }
 
   public ReturnWithExceptionsWrapper notifyDIPCreated(DIP dip, boolean commit) {
-    return notifyObserversSafely(observer -> observer.dipCreated(dip, commit));
+    return notifyObserversSafely(dip.getId(), observer -> observer.dipCreated(dip, commit));
   }
 
   public ReturnWithExceptionsWrapper notifyDIPUpdated(DIP dip, boolean commit) {
-    return notifyObserversSafely(observer -> observer.dipUpdated(dip, commit));
+    return notifyObserversSafely(dip.getId(), observer -> observer.dipUpdated(dip, commit));
   }
 
   public ReturnWithExceptionsWrapper notifyDIPDeleted(String dipId, boolean commit) {
-    return notifyObserversSafely(observer -> observer.dipDeleted(dipId, commit));
+    return notifyObserversSafely(dipId, observer -> observer.dipDeleted(dipId, commit));
   }
 
   public ReturnWithExceptionsWrapper notifyDIPFileCreated(DIPFile file) {
-    return notifyObserversSafely(observer -> observer.dipFileCreated(file));
+    return notifyObserversSafely(file.getDipId(), observer -> observer.dipFileCreated(file));
   }
 
   public ReturnWithExceptionsWrapper notifyDIPFileUpdated(DIPFile file) {
-    return notifyObserversSafely(observer -> observer.dipFileUpdated(file));
+    return notifyObserversSafely(file.getDipId(), observer -> observer.dipFileUpdated(file));
   }
 
   public ReturnWithExceptionsWrapper notifyDIPFileDeleted(String dipId, List<String> path, String fileId) {
-    return notifyObserversSafely(observer -> observer.dipFileDeleted(dipId, path, fileId));
+    return notifyObserversSafely(dipId, observer -> observer.dipFileDeleted(dipId, path, fileId));
   }
 
   public ReturnWithExceptionsWrapper notifyDisposalConfirmationCreatedOrUpdated(DisposalConfirmation confirmation) {
-    return notifyObserversSafely(observer -> observer.disposalConfirmationCreateOrUpdate(confirmation));
+    return notifyObserversSafely(confirmation.getId(),
+      observer -> observer.disposalConfirmationCreateOrUpdate(confirmation));
   }
 
   public ReturnWithExceptionsWrapper notifyDisposalConfirmationDeleted(String disposalConfirmationId, boolean commit) {
-    return notifyObserversSafely(observer -> observer.disposalConfirmationDeleted(disposalConfirmationId, commit));
+    return notifyObserversSafely(disposalConfirmationId,
+      observer -> observer.disposalConfirmationDeleted(disposalConfirmationId, commit));
   }
 }
@@ -63,6 +63,18 @@ public interface ModelObserver {
 
   public ReturnWithExceptions<Void, ModelObserver> fileCreated(File file);
 
+  /**
+   * Batch of {@link #fileCreated(File)}, used when notifications are delivered
+   * asynchronously. Observers can override it to share work between the files.
+   */
+  public default ReturnWithExceptions<Void, ModelObserver> filesCreated(List<File> files) {
+    ReturnWithExceptions<Void, ModelObserver> ret = new ReturnWithExceptions<>(this);
+    for (File file : files) {
+      fileCreated(file).addTo(ret);
+    }
+    return ret;
+  }
+
   public ReturnWithExceptions<Void, ModelObserver> fileUpdated(File file);
 
   public ReturnWithExceptions<Void, ModelObserver> fileDeleted(String aipId, String representationId,
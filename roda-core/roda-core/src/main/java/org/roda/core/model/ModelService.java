@@ -1153,6 +1153,38 @@ public class ModelService extends ModelObservable {
     }
   }
 
+  /**
+   * Updates the AIP metadata once for changes made to the AIP and to some of its
+   * representations, setting the update date of all of them.
+   *
+   * @param representationIds
+   *          the changed representations, may be empty if only the AIP changed
+   */
+  void changeAIPAndRepresentationsUpdateOn(String aipId, Set<String> representationIds, String updatedBy,
+    boolean notify) throws RequestNotValidException, NotFoundException, GenericException, AuthorizationDeniedException {
+    RodaCoreFactory.checkIfWriteIsAllowedAndIfFalseThrowException(nodeType);
+
+    AIP aip = retrieveAIP(aipId);
+    List<Representation> changedRepresentations = new ArrayList<>();
+    Date now = new Date();
+    for (Representation representation : aip.getRepresentations()) {
+      if (representationIds.contains(representation.getId())) {
+        representation.setUpdatedOn(now);
+        representation.setUpdatedBy(updatedBy);
+        changedRepresentations.add(representation);
+      }
+    }
+
+    AIP updatedAIP = updateAIPMetadata(aip, updatedBy);
+
+    if (notify) {
+      for (Representation representation : changedRepresentations) {
+        notifyRepresentationUpdatedOnChanged(representation).failOnError();
+      }
+      notifyAipUpdatedOnChanged(updatedAIP).failOnError();
+    }
+  }
+
   public Representation updateRepresentation(String aipId, String representationId, boolean original, String type,
     StorageService sourceStorage, StoragePath sourcePath, String updatedBy) throws RequestNotValidException,
     NotFoundException, GenericException, AuthorizationDeniedException, ValidationException {
@@ -1284,6 +1316,23 @@ public class ModelService extends ModelObservable {
   public File createFile(String aipId, String representationId, List<String> directoryPath, String fileId,
     ContentPayload contentPayload, String createdBy, boolean notify) throws RequestNotValidException, GenericException,
     AlreadyExistsException, AuthorizationDeniedException, NotFoundException {
+    File file = storeFile(aipId, representationId, directoryPath, fileId, contentPayload);
+
+    changeRepresentationUpdateOn(aipId, representationId, createdBy, notify);
+
+    if (notify) {
+      notifyFileCreated(file).failOnError();
+    }
+
+    return file;
+  }
+
+  /**
+   * Creates the binary of a file without updating the representation metadata.
+   */
+  File storeFile(String aipId, String representationId, List<String> directoryPath, String fileId,
+    ContentPayload contentPayload) throws RequestNotValidException, GenericException, AlreadyExistsException,
+    AuthorizationDeniedException, NotFoundException {
     boolean asReference = false;
     RodaCoreFactory.checkIfWriteIsAllowedAndIfFalseThrowException(nodeType);
 
@@ -1294,13 +1343,6 @@ public class ModelService extends ModelObservable {
     final Binary createdBinary = storage.createBinary(filePath, contentPayload, asReference);
     File file = ResourceParseUtils.convertResourceToFile(createdBinary);
     file.setInstanceId(RODAInstanceUtils.getLocalInstanceIdentifier());
-
-    changeRepresentationUpdateOn(aipId, representationId, createdBy, notify);
-
-    if (notify) {
-      notifyFileCreated(file).failOnError();
-    }
-
     return file;
   }
 
@@ -1729,17 +1771,8 @@ public class ModelService extends ModelObservable {
     boolean notify) throws GenericException, NotFoundException, RequestNotValidException, AuthorizationDeniedException {
     RodaCoreFactory.checkIfWriteIsAllowedAndIfFalseThrowException(nodeType);
 
-    PreservationMetadata pm = new PreservationMetadata();
-    pm.setId(id);
-    pm.setType(type);
-    pm.setAipId(aipId);
-    pm.setRepresentationId(representationId);
-    pm.setFileDirectoryPath(fileDirectoryPath);
-    pm.setFileId(fileId);
-    pm.setInstanceId(RODAInstanceUtils.getLocalInstanceIdentifier());
-
-    StoragePath binaryPath = ModelUtils.getPreservationMetadataStoragePath(pm);
-    storage.updateBinaryContent(binaryPath, payload, false, true);
+    PreservationMetadata pm = storePreservationMetadata(id, type, aipId, representationId, fileDirectoryPath, fileId,
+      payload);
 
     AIP updatedAIP = null;
     if (aipId != null) {
@@ -1757,6 +1790,27 @@ public class ModelService extends ModelObservable {
     return pm;
   }
 
+  /**
+   * Writes the preservation metadata binary without updating the AIP metadata
+   * (see {@link MetadataBatch}).
+   */
+  PreservationMetadata storePreservationMetadata(String id, PreservationMetadataType type, String aipId,
+    String representationId, List<String> fileDirectoryPath, String fileId, ContentPayload payload)
+    throws GenericException, NotFoundException, RequestNotValidException, AuthorizationDeniedException {
+    PreservationMetadata pm = new PreservationMetadata();
+    pm.setId(id);
+    pm.setType(type);
+    pm.setAipId(aipId);
+    pm.setRepresentationId(representationId);
+    pm.setFileDirectoryPath(fileDirectoryPath);
+    pm.setFileId(fileId);
+    pm.setInstanceId(RODAInstanceUtils.getLocalInstanceIdentifier());
+
+    StoragePath binaryPath = ModelUtils.getPreservationMetadataStoragePath(pm);
+    storage.updateBinaryContent(binaryPath, payload, false, true);
+    return pm;
+  }
+
   public void deletePreservationMetadata(PreservationMetadata pm, boolean notify)
     throws NotFoundException, GenericException, AuthorizationDeniedException, RequestNotValidException {
     RodaCoreFactory.checkIfWriteIsAllowedAndIfFalseThrowException(nodeType);
@@ -1965,19 +2019,8 @@ public class ModelService extends ModelObservable {
     throws RequestNotValidException, GenericException, NotFoundException, AuthorizationDeniedException {
     RodaCoreFactory.checkIfWriteIsAllowedAndIfFalseThrowException(nodeType);
 
-    StoragePath binaryPath = ModelUtils.getOtherMetadataStoragePath(aipId, representationId, fileDirectoryPath, fileId,
-      fileSuffix, type);
-    boolean asReference = false;
-    boolean createIfNotExists = true;
-
-    try {
-      storage.createBinary(binaryPath, payload, asReference);
-    } catch (AlreadyExistsException e) {
-      storage.updateBinaryContent(binaryPath, payload, asReference, createIfNotExists);
-    }
-
-    String id = IdUtils.getOtherMetadataId(aipId, representationId, fileDirectoryPath, fileId);
-    OtherMetadata om = new OtherMetadata(id, type, aipId, representationId, fileDirectoryPath, fileId, fileSuffix);
+    OtherMetadata om = storeOtherMetadata(aipId, representationId, fileDirectoryPath, fileId, fileSuffix, type,
+      payload);
 
     if (notify) {
       notifyOtherMetadataCreated(om).failOnError();
@@ -1996,6 +2039,28 @@ public class ModelService extends ModelObservable {
     return om;
   }
 
+  /**
+   * Writes the other metadata binary without updating the AIP metadata (see
+   * {@link MetadataBatch}).
+   */
+  OtherMetadata storeOtherMetadata(String aipId, String representationId, List<String> fileDirectoryPath,
+    String fileId, String fileSuffix, String type, ContentPayload payload)
+    throws RequestNotValidException, GenericException, NotFoundException, AuthorizationDeniedException {
+    StoragePath binaryPath = ModelUtils.getOtherMetadataStoragePath(aipId, representationId, fileDirectoryPath, fileId,
+      fileSuffix, type);
+    boolean asReference = false;
+    boolean createIfNotExists = true;
+
+    try {
+      storage.createBinary(binaryPath, payload, asReference);
+    } catch (AlreadyExistsException e) {
+      storage.updateBinaryContent(binaryPath, payload, asReference, createIfNotExists);
+    }
+
+    String id = IdUtils.getOtherMetadataId(aipId, representationId, fileDirectoryPath, fileId);
+    return new OtherMetadata(id, type, aipId, representationId, fileDirectoryPath, fileId, fileSuffix);
+  }
+
   public void deleteOtherMetadata(String aipId, String representationId, List<String> fileDirectoryPath, String fileId,
     String fileSuffix, String type, String username)
     throws GenericException, NotFoundException, AuthorizationDeniedException, RequestNotValidException {
@@ -2955,6 +3020,10 @@ public class ModelService extends ModelObservable {
       throw new GenericException(e);
     }
 
+    if (processor != null) {
+      processor.notificationCreated(this, notification);
+    }
+
     return notification;
   }
 
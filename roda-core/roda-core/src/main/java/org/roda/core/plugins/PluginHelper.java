@@ -108,8 +108,10 @@ import org.roda.core.plugins.base.notifications.GenericJobNotification;
 import org.roda.core.plugins.base.notifications.JobNotification;
 import org.roda.core.plugins.orchestrate.IngestJobPluginInfo;
 import org.roda.core.plugins.orchestrate.JobPluginInfo;
+import org.roda.core.plugins.orchestrate.JobsHelper;
 import org.roda.core.plugins.orchestrate.MultipleJobPluginInfo;
 import org.roda.core.plugins.orchestrate.SimpleJobPluginInfo;
+import org.roda.core.plugins.orchestrate.SubtaskExecutor;
 import org.roda.core.storage.ContentPayload;
 import org.roda.core.storage.DefaultStoragePath;
 import org.roda.core.storage.StorageService;
@@ -285,6 +287,29 @@ public final class PluginHelper {
     return processObjects(plugin, null, perObjectLogic, null, index, model, storage, liteList);
   }
 
+  /**
+   * Processes the parts of one object (e.g. the representations of an AIP) at
+   * the same time, in the calling worker and in the sub-task pool of this node,
+   * unless sub-task processing is disabled for the plugin
+   * ({@code core.orchestrator.subtasks.enabled}). It only returns when all the
+   * parts are done, so the locks and the report of the object stay with the
+   * calling worker, and the results are to be merged by it.
+   *
+   * @return the result of each sub-task, in the order of the sub-tasks
+   */
+  public static <T extends IsRODAObject, S, R> List<R> processSubtasks(Plugin<T> plugin, List<S> subtasks,
+    RODASubtaskProcessingLogic<S, R> logic) throws RODAException {
+    if (subtasks.size() > 1 && JobsHelper.isSubtaskProcessingEnabled(plugin)) {
+      return SubtaskExecutor.getInstance().process(subtasks, logic);
+    } else {
+      List<R> results = new ArrayList<>();
+      for (S subtask : subtasks) {
+        results.add(logic.process(subtask));
+      }
+      return results;
+    }
+  }
+
   public static Report processVoids(Plugin<Void> plugin, RODAProcessingLogic<Void> logic, IndexService index,
     ModelService model, StorageService storage) throws PluginException {
     return processVoids(plugin, logic, index, model, storage, 0);
@@ -0,0 +1,25 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins;
+
+import org.roda.core.data.exceptions.RODAException;
+
+/**
+ * Processing of one part of an object (e.g. one representation of an AIP),
+ * possibly at the same time as the other parts of the same object (see
+ * {@link PluginHelper#processSubtasks}).
+ *
+ * @param <S>
+ *          the part of the object
+ * @param <R>
+ *          the result of processing it
+ */
+@FunctionalInterface
+public interface RODASubtaskProcessingLogic<S, R> {
+  public R process(S subtask) throws RODAException;
+}
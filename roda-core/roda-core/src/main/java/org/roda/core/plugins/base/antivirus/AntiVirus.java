@@ -29,6 +29,24 @@ public interface AntiVirus {
    */
   public VirusCheckResult checkForVirus(Path path) throws RuntimeException;
 
+  /**
+   * Performs a virus check on the specified path on behalf of a job, which
+   * allows the anti-virus to use work already done for the same job.
+   *
+   * @param path
+   *          a path to scan.
+   * @param jobId
+   *          the id of the job the check is part of.
+   *
+   * @return the results of the virus check as a {@link VirusCheckResult}.
+   *
+   * @throws RuntimeException
+   *           if some problem prevented the virus check from run a normal test.
+   */
+  public default VirusCheckResult checkForVirus(Path path, String jobId) throws RuntimeException {
+    return checkForVirus(path);
+  }
+
   public String getVersion();
 
 }
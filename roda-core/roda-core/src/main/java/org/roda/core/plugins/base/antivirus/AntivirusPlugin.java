@@ -160,7 +160,7 @@ public class AntivirusPlugin extends AbstractPlugin<AIP> {
       StoragePath aipPath = ModelUtils.getAIPStoragePath(aip.getId());
 
       directAccess = storage.getDirectAccess(aipPath);
-      virusCheckResult = getAntiVirus().checkForVirus(directAccess.getPath());
+      virusCheckResult = getAntiVirus().checkForVirus(directAccess.getPath(), job.getId());
       reportState = virusCheckResult.isClean() ? PluginState.SUCCESS : PluginState.FAILURE;
       reportItem.setPluginState(reportState).setPluginDetails(virusCheckResult.getReport());
 
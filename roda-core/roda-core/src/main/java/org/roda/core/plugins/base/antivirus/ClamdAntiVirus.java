@@ -0,0 +1,659 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.base.antivirus;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.lang3.StringUtils;
+import org.roda.core.RodaCoreFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Virus checks files by talking to a running clamd over its UNIX or TCP socket,
+ * so that the signature database is loaded once by the daemon instead of once
+ * per scanned AIP.
+ *
+ * <p>
+ * By default each file is sent to clamd with {@code INSTREAM}, several files at
+ * a time, over a pool of {@code IDSESSION} connections, so clamd does not need
+ * access to the storage. When clamd runs on the same host and can read the
+ * storage, {@code MULTISCAN} can be used instead, and clamd scans the whole
+ * path with its own threads.
+ * </p>
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+public class ClamdAntiVirus implements AntiVirus {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ClamdAntiVirus.class);
+
+  private static final String CONFIG_PREFIX = "core.plugins.internal.virus_check.clamd.";
+  private static final int CHUNK_SIZE = 64 * 1024;
+  // clamd closes idle sessions after its own CommandReadTimeout
+  private static final long MAX_IDLE_MILLIS = 4000;
+
+  private final SocketAddress address;
+  private final int connections;
+  private final long maxFileSize;
+  private final int timeoutMillis;
+  private final boolean multiscan;
+
+  private static final int MAX_STREAMED_VERDICTS = 50000;
+
+  // verdicts of files scanned while someone else was reading them, by job and
+  // file, until the job ends
+  private static final Map<StreamedFile, StreamedVerdict> STREAMED_VERDICTS = new LinkedHashMap<>(16, 0.75f, true) {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<StreamedFile, StreamedVerdict> eldest) {
+      return size() > MAX_STREAMED_VERDICTS;
+    }
+  };
+
+  private final LinkedBlockingDeque<Session> idleSessions = new LinkedBlockingDeque<>();
+  private ExecutorService executor;
+
+  public ClamdAntiVirus() {
+    Configuration configuration = RodaCoreFactory.getRodaConfiguration();
+    String socket = configuration.getString(CONFIG_PREFIX + "socket", "");
+    if (StringUtils.isNotBlank(socket)) {
+      this.address = UnixDomainSocketAddress.of(socket);
+    } else {
+      this.address = new InetSocketAddress(configuration.getString(CONFIG_PREFIX + "host", "localhost"),
+        configuration.getInt(CONFIG_PREFIX + "port", 3310));
+    }
+    this.connections = Math.max(1, configuration.getInt(CONFIG_PREFIX + "connections", 4));
+    this.maxFileSize = configuration.getLong(CONFIG_PREFIX + "max_file_size_mb", 100) * 1024 * 1024;
+    this.timeoutMillis = configuration.getInt(CONFIG_PREFIX + "timeout_ms", 60000);
+    this.multiscan = "multiscan".equalsIgnoreCase(configuration.getString(CONFIG_PREFIX + "mode", "instream"));
+  }
+
+  /**
+   * @param maxFileSize
+   *          size in bytes above which files are not sent to clamd and are
+   *          reported as not clean, or 0 for no limit
+   */
+  public ClamdAntiVirus(SocketAddress address, int connections, long maxFileSize, int timeoutMillis,
+    boolean multiscan) {
+    this.address = address;
+    this.connections = Math.max(1, connections);
+    this.maxFileSize = maxFileSize;
+    this.timeoutMillis = timeoutMillis;
+    this.multiscan = multiscan;
+  }
+
+  /**
+   * Performs a virus check on the specified path.
+   *
+   * @param path
+   *          a file or directory to scan.
+   *
+   * @return the results of the virus check as a {@link VirusCheckResult}.
+   *
+   * @throws RuntimeException
+   *           if clamd could not be reached or did not answer.
+   * @see AntiVirus
+   */
+  @Override
+  public VirusCheckResult checkForVirus(Path path) throws RuntimeException {
+    return checkForVirus(path, null);
+  }
+
+  /**
+   * Performs a virus check on the specified path, using the verdicts of files
+   * streamed to clamd by the same job that have not changed since.
+   *
+   * @see #startStreamScan(String, Path, long)
+   */
+  @Override
+  public VirusCheckResult checkForVirus(Path path, String jobId) throws RuntimeException {
+    LOGGER.debug("Executing clamd virus scan in {}", path);
+    try {
+      List<Verdict> verdicts = multiscan ? multiscan(path) : instream(path, jobId);
+      return toResult(verdicts);
+    } catch (IOException e) {
+      throw new IllegalStateException("Error scanning " + path + " with clamd at " + address + ": " + e.getMessage(),
+        e);
+    }
+  }
+
+  /**
+   * Starts scanning a file whose content is being read by someone else (e.g.
+   * the single pass over the files of an ingest), so that it does not have to
+   * be read again. The verdict is used, once, by the next
+   * {@link #checkForVirus(Path, String)} of the same job that includes the
+   * file, if neither its size nor its modification time changed meanwhile, and
+   * is dropped when the job ends.
+   *
+   * @return the scan to give the content to, or null if the file cannot be
+   *         scanned this way (clamd scans whole paths or the file is over the
+   *         size limit)
+   * @see #clearStreamedVerdicts(String)
+   */
+  public StreamScan startStreamScan(String jobId, Path file, long size) throws IOException {
+    if (multiscan || (maxFileSize > 0 && size > maxFileSize)) {
+      return null;
+    }
+    FileTime lastModified = Files.getLastModifiedTime(file);
+
+    Session session = idleSessions.poll();
+    while (session != null && session.isIdleFor(MAX_IDLE_MILLIS)) {
+      session.close();
+      session = idleSessions.poll();
+    }
+    if (session == null) {
+      session = new Session(address, timeoutMillis, true);
+    }
+
+    try {
+      session.startInstream();
+    } catch (IOException e) {
+      session.close();
+      throw e;
+    }
+    return new StreamScan(new StreamedFile(jobId, file.toAbsolutePath().normalize()), size, lastModified, session);
+  }
+
+  /**
+   * Content of one file given to clamd as it is read.
+   */
+  public class StreamScan {
+    private final StreamedFile file;
+    private final long size;
+    private final FileTime lastModified;
+    private final Session session;
+    private String reply = null;
+
+    private StreamScan(StreamedFile file, long size, FileTime lastModified, Session session) {
+      this.file = file;
+      this.size = size;
+      this.lastModified = lastModified;
+      this.session = session;
+    }
+
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+      if (reply == null) {
+        try {
+          session.writeChunk(buffer, offset, length);
+        } catch (IOException e) {
+          // clamd stops reading and answers when the stream exceeds its limit
+          reply = session.readReply();
+          if (reply == null) {
+            abort();
+            throw e;
+          }
+        }
+      }
+    }
+
+    /**
+     * Waits for the verdict of clamd and keeps it for the next check of the
+     * file.
+     */
+    public void end() throws IOException {
+      try {
+        String verdict = reply != null ? session.stripRequestId(reply) : session.endInstream();
+        synchronized (STREAMED_VERDICTS) {
+          STREAMED_VERDICTS.put(file,
+            new StreamedVerdict(size, lastModified, StringUtils.removeStart(verdict, "stream: ")));
+        }
+        releaseSession(session, verdict);
+      } catch (IOException e) {
+        abort();
+        throw e;
+      }
+    }
+
+    public void abort() {
+      session.close();
+    }
+  }
+
+  private static String takeStreamedVerdict(String jobId, Path file, long size) throws IOException {
+    StreamedVerdict verdict;
+    synchronized (STREAMED_VERDICTS) {
+      verdict = STREAMED_VERDICTS.remove(new StreamedFile(jobId, file.toAbsolutePath().normalize()));
+    }
+    if (verdict != null && verdict.size == size && verdict.lastModified.equals(Files.getLastModifiedTime(file))) {
+      return verdict.reply;
+    }
+    return null;
+  }
+
+  /**
+   * Drops the verdicts of the files streamed by a job that were not used by a
+   * virus check, e.g. because the job ended or failed before it.
+   */
+  public static void clearStreamedVerdicts(String jobId) {
+    synchronized (STREAMED_VERDICTS) {
+      STREAMED_VERDICTS.keySet().removeIf(file -> file.jobId().equals(jobId));
+    }
+  }
+
+  @Override
+  public String getVersion() {
+    try {
+      return withSession(session -> session.command("zVERSION"));
+    } catch (IOException e) {
+      LOGGER.warn("Could not get clamd version from {}: {}", address, e.getMessage());
+      return "1.0";
+    }
+  }
+
+  /**
+   * Closes the pooled connections and stops the scanning threads.
+   */
+  public synchronized void close() {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+    Session session;
+    while ((session = idleSessions.poll()) != null) {
+      session.close();
+    }
+  }
+
+  private List<Verdict> instream(Path path, String jobId) throws IOException {
+    List<Path> files;
+    try (Stream<Path> walk = Files.walk(path)) {
+      files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+    }
+
+    List<Future<Verdict>> futures = new ArrayList<>();
+    ExecutorService scanners = getExecutor();
+    for (Path file : files) {
+      futures.add(scanners.submit(() -> scanFile(file, jobId)));
+    }
+
+    List<Verdict> verdicts = new ArrayList<>();
+    try {
+      for (Future<Verdict> future : futures) {
+        verdicts.add(future.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      futures.forEach(future -> future.cancel(true));
+      throw new IOException("Interrupted while scanning", e);
+    } catch (ExecutionException e) {
+      futures.forEach(future -> future.cancel(true));
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+    return verdicts;
+  }
+
+  private Verdict scanFile(Path file, String jobId) throws IOException {
+    long size = Files.size(file);
+    if (maxFileSize > 0 && size > maxFileSize) {
+      return new Verdict(file, "file size " + size + " exceeds the scanning limit of " + maxFileSize + " bytes ERROR");
+    }
+
+    String streamed = jobId != null ? takeStreamedVerdict(jobId, file, size) : null;
+    if (streamed != null) {
+      return new Verdict(file, streamed);
+    }
+
+    String reply = withSession(session -> {
+      try (InputStream in = Files.newInputStream(file)) {
+        return session.instream(in);
+      }
+    });
+    return new Verdict(file, StringUtils.removeStart(reply, "stream: "));
+  }
+
+  private List<Verdict> multiscan(Path path) throws IOException {
+    List<Verdict> verdicts = new ArrayList<>();
+    // MULTISCAN is not allowed inside a session, so it has a connection of its own
+    try (Session session = new Session(address, timeoutMillis, false)) {
+      session.send("zMULTISCAN " + path.toAbsolutePath());
+      String reply;
+      while ((reply = session.readReply()) != null) {
+        int separator = reply.lastIndexOf(": ");
+        if (separator > 0) {
+          verdicts.add(new Verdict(Path.of(reply.substring(0, separator)), reply.substring(separator + 2)));
+        } else {
+          verdicts.add(new Verdict(path, reply));
+        }
+      }
+    }
+    return verdicts;
+  }
+
+  @FunctionalInterface
+  private interface SessionCommand {
+    String run(Session session) throws IOException;
+  }
+
+  /**
+   * Runs a command with an idle pooled session, or a new one, retrying once with
+   * a new session if the pooled one was closed by clamd meanwhile.
+   */
+  private String withSession(SessionCommand command) throws IOException {
+    Session session = idleSessions.poll();
+    while (session != null && session.isIdleFor(MAX_IDLE_MILLIS)) {
+      session.close();
+      session = idleSessions.poll();
+    }
+
+    boolean pooled = session != null;
+    if (session == null) {
+      session = new Session(address, timeoutMillis, true);
+    }
+
+    String reply;
+    try {
+      reply = command.run(session);
+    } catch (IOException e) {
+      session.close();
+      if (!pooled) {
+        throw e;
+      }
+      LOGGER.debug("Pooled clamd session failed, retrying with a new one", e);
+      session = new Session(address, timeoutMillis, true);
+      try {
+        reply = command.run(session);
+      } catch (IOException e2) {
+        session.close();
+        throw e2;
+      }
+    }
+
+    releaseSession(session, reply);
+    return reply;
+  }
+
+  private void releaseSession(Session session, String reply) {
+    // clamd may close the session after an error
+    if (reply.endsWith("ERROR") || idleSessions.size() >= connections || !idleSessions.offer(session)) {
+      session.close();
+    }
+  }
+
+  private synchronized ExecutorService getExecutor() {
+    if (executor == null) {
+      AtomicInteger count = new AtomicInteger();
+      executor = Executors.newFixedThreadPool(connections, runnable -> {
+        Thread thread = new Thread(runnable, "clamd-scanner-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    return executor;
+  }
+
+  private static VirusCheckResult toResult(List<Verdict> verdicts) {
+    StringBuilder report = new StringBuilder();
+    int infected = 0;
+    int errors = 0;
+    for (Verdict verdict : verdicts) {
+      if (verdict.isInfected()) {
+        infected++;
+      } else if (!verdict.isClean()) {
+        errors++;
+      } else {
+        continue;
+      }
+      report.append(verdict.file).append(": ").append(verdict.reply).append(System.lineSeparator());
+    }
+
+    report.append("----------- SCAN SUMMARY -----------").append(System.lineSeparator());
+    report.append("Scanned files: ").append(verdicts.size()).append(System.lineSeparator());
+    report.append("Infected files: ").append(infected).append(System.lineSeparator());
+    if (errors > 0) {
+      report.append("Not scanned files: ").append(errors).append(System.lineSeparator());
+    }
+    return new VirusCheckResult(infected == 0 && errors == 0, report.toString());
+  }
+
+  private record StreamedFile(String jobId, Path file) {
+  }
+
+  private static class StreamedVerdict {
+    private final long size;
+    private final FileTime lastModified;
+    private final String reply;
+
+    StreamedVerdict(long size, FileTime lastModified, String reply) {
+      this.size = size;
+      this.lastModified = lastModified;
+      this.reply = reply;
+    }
+  }
+
+  /**
+   * The clamd reply for one file, without the request id and stream name.
+   */
+  private static class Verdict {
+    private final Path file;
+    private final String reply;
+
+    Verdict(Path file, String reply) {
+      this.file = file;
+      this.reply = reply;
+    }
+
+    boolean isClean() {
+      return "OK".equals(reply) || reply.endsWith(" OK");
+    }
+
+    boolean isInfected() {
+      return reply.endsWith(" FOUND");
+    }
+  }
+
+  /**
+   * A connection to clamd, using the null terminated ({@code z} prefixed)
+   * commands. Reads and writes go through a selector so that they honour the
+   * timeout on both TCP and UNIX sockets.
+   */
+  private static class Session implements AutoCloseable {
+    private final SocketChannel channel;
+    private final Selector selector;
+    private final SelectionKey key;
+    private final int timeoutMillis;
+    private final boolean idSession;
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(8192);
+    private long lastUsed = System.currentTimeMillis();
+
+    Session(SocketAddress address, int timeoutMillis, boolean idSession) throws IOException {
+      this.timeoutMillis = timeoutMillis;
+      this.idSession = idSession;
+      this.channel = SocketChannel.open(address);
+      try {
+        channel.configureBlocking(false);
+        this.selector = Selector.open();
+      } catch (IOException e) {
+        channel.close();
+        throw e;
+      }
+      try {
+        this.key = channel.register(selector, 0);
+        readBuffer.flip();
+        if (idSession) {
+          send("zIDSESSION");
+        }
+      } catch (IOException e) {
+        selector.close();
+        channel.close();
+        throw e;
+      }
+    }
+
+    boolean isIdleFor(long millis) {
+      return System.currentTimeMillis() - lastUsed > millis;
+    }
+
+    String command(String command) throws IOException {
+      send(command);
+      return expectReply();
+    }
+
+    String instream(InputStream in) throws IOException {
+      startInstream();
+      byte[] chunk = new byte[CHUNK_SIZE];
+      boolean writing = false;
+      try {
+        int read;
+        while ((read = in.read(chunk)) != -1) {
+          writing = true;
+          writeChunk(chunk, 0, read);
+          writing = false;
+        }
+        writing = true;
+        write(ByteBuffer.allocate(4));
+      } catch (IOException e) {
+        if (!writing) {
+          throw e;
+        }
+        // clamd stops reading and answers when the stream exceeds its limit
+        String reply = readReply();
+        if (reply == null) {
+          throw e;
+        }
+        return stripRequestId(reply);
+      }
+      return expectReply();
+    }
+
+    void startInstream() throws IOException {
+      send("zINSTREAM");
+    }
+
+    void writeChunk(byte[] buffer, int offset, int length) throws IOException {
+      // chunks are limited in size so that clamd can answer as soon as the
+      // stream exceeds its limit
+      for (int start = offset; start < offset + length; start += CHUNK_SIZE) {
+        int chunkLength = Math.min(CHUNK_SIZE, offset + length - start);
+        ByteBuffer header = ByteBuffer.allocate(4).putInt(chunkLength);
+        header.flip();
+        write(header);
+        write(ByteBuffer.wrap(buffer, start, chunkLength));
+      }
+    }
+
+    String endInstream() throws IOException {
+      write(ByteBuffer.allocate(4));
+      return expectReply();
+    }
+
+    void send(String command) throws IOException {
+      write(ByteBuffer.wrap((command + '\0').getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * @return the next reply, or null if clamd closed the connection
+     */
+    String readReply() throws IOException {
+      ByteArrayOutputStream reply = new ByteArrayOutputStream();
+      while (true) {
+        while (readBuffer.hasRemaining()) {
+          byte b = readBuffer.get();
+          if (b == 0) {
+            lastUsed = System.currentTimeMillis();
+            return reply.toString(StandardCharsets.UTF_8).trim();
+          }
+          reply.write(b);
+        }
+
+        readBuffer.clear();
+        int read = channel.read(readBuffer);
+        while (read == 0) {
+          await(SelectionKey.OP_READ);
+          read = channel.read(readBuffer);
+        }
+        readBuffer.flip();
+        if (read < 0) {
+          return reply.size() > 0 ? reply.toString(StandardCharsets.UTF_8).trim() : null;
+        }
+      }
+    }
+
+    private String expectReply() throws IOException {
+      String reply = readReply();
+      if (reply == null) {
+        throw new EOFException("clamd closed the connection");
+      }
+      return stripRequestId(reply);
+    }
+
+    String stripRequestId(String reply) {
+      if (idSession) {
+        int separator = reply.indexOf(": ");
+        if (separator > 0 && StringUtils.isNumeric(reply.substring(0, separator))) {
+          return reply.substring(separator + 2);
+        }
+      }
+      return reply;
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+      while (buffer.hasRemaining()) {
+        if (channel.write(buffer) == 0) {
+          await(SelectionKey.OP_WRITE);
+        }
+      }
+    }
+
+    private void await(int operation) throws IOException {
+      key.interestOps(operation);
+      if (selector.select(timeoutMillis) == 0) {
+        throw new SocketTimeoutException("No answer from clamd in " + timeoutMillis + " ms");
+      }
+      selector.selectedKeys().clear();
+    }
+
+    @Override
+    public void close() {
+      try {
+        if (idSession && channel.isOpen()) {
+          send("zEND");
+        }
+      } catch (IOException e) {
+        // connection is being closed anyway
+      }
+      try {
+        selector.close();
+        channel.close();
+      } catch (IOException e) {
+        LOGGER.debug("Error closing clamd connection", e);
+      }
+    }
+  }
+}
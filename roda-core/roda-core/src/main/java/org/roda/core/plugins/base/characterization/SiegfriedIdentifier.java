@@ -0,0 +1,227 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.base.characterization;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.io.IOUtils;
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.plugins.PluginException;
+import org.roda.core.storage.fs.FSUtils;
+import org.roda.core.util.Base64;
+import org.roda.core.util.HTTPUtility;
+import org.roda.core.util.ResourceLimits;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Identifies many files with Siegfried, handing each identified file to a
+ * handler as soon as it is read from the Siegfried output, so that the output
+ * of large representations is never held in memory at once.
+ *
+ * <p>
+ * In standalone mode all paths of a call are identified by a single
+ * {@code sf} process, which reads them from a temporary list file given with
+ * {@code -f} and writes its output to another temporary file, read once the
+ * process ended. In server mode each path is a request to the Siegfried
+ * server.
+ * </p>
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+public class SiegfriedIdentifier {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SiegfriedIdentifier.class);
+
+  private static final int MAX_ERROR_OUTPUT = 4096;
+
+  @FunctionalInterface
+  public interface Handler {
+    void handle(JsonNode file) throws RODAException;
+  }
+
+  private final boolean serverMode;
+  private final String binary;
+  private final String server;
+
+  public SiegfriedIdentifier(boolean serverMode, String binary, String server) {
+    this.serverMode = serverMode;
+    this.binary = binary;
+    this.server = server;
+  }
+
+  public static SiegfriedIdentifier fromConfiguration() {
+    Configuration configuration = RodaCoreFactory.getRodaConfiguration();
+    return new SiegfriedIdentifier(
+      "server".equalsIgnoreCase(configuration.getString("core.tools.siegfried.mode", "server")),
+      configuration.getString("core.tools.siegfried.binary", "sf"),
+      configuration.getString("core.tools.siegfried.server", "http://localhost:5138"));
+  }
+
+  /**
+   * Identifies the given files or directories (recursively).
+   *
+   * @param handler
+   *          called with the Siegfried output of each identified file, in the
+   *          order they are identified
+   */
+  public void identify(List<Path> paths, Handler handler) throws RODAException {
+    if (paths.isEmpty()) {
+      return;
+    }
+
+    if (serverMode) {
+      for (Path path : paths) {
+        String endpoint = String.format("%s/identify/%s?base64=true&format=json", server,
+          new String(Base64.encode(path.toString().getBytes())));
+        String json = HTTPUtility.doGet(endpoint);
+        try (InputStream in = new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8))) {
+          parseFiles(in, handler);
+        } catch (IOException e) {
+          throw new PluginException("Error reading Siegfried output: " + e.getMessage(), e);
+        }
+      }
+    } else {
+      identifyWithProcess(paths, handler);
+    }
+  }
+
+  private void identifyWithProcess(List<Path> paths, Handler handler) throws RODAException {
+    Path output = null;
+    try {
+      output = Files.createTempFile("siegfried", ".json");
+      // the handler (which writes to storage and index) is only called after
+      // the process permit is released, so no other resource is waited for
+      // while holding it
+      try (ResourceLimits.Permit permit = ResourceLimits.acquire(ResourceLimits.Resource.PROCESS)) {
+        runProcess(paths, output);
+      }
+      try (InputStream in = Files.newInputStream(output)) {
+        parseFiles(in, handler);
+      }
+    } catch (IOException e) {
+      throw new PluginException("Error reading Siegfried output: " + e.getMessage(), e);
+    } finally {
+      if (output != null) {
+        FSUtils.deletePathQuietly(output);
+      }
+    }
+  }
+
+  private void runProcess(List<Path> paths, Path output) throws RODAException {
+    Path pathList = null;
+    try {
+      List<String> command = new ArrayList<>(Arrays.asList(binary, "-json=true", "-z=false"));
+      if (paths.size() > 1) {
+        // one path per line, identified as if given as arguments
+        pathList = Files.createTempFile("siegfried", ".txt");
+        List<String> lines = new ArrayList<>();
+        for (Path path : paths) {
+          lines.add(path.toAbsolutePath().toString());
+        }
+        Files.write(pathList, lines, StandardCharsets.UTF_8);
+        command.add("-f");
+        command.add(pathList.toString());
+      } else {
+        command.add(paths.get(0).toAbsolutePath().toString());
+      }
+      LOGGER.debug("Executing {} on {} paths", command, paths.size());
+      runCommand(command, output);
+    } catch (IOException e) {
+      throw new PluginException("Error while executing Siegfried: " + e.getMessage(), e);
+    } finally {
+      if (pathList != null) {
+        FSUtils.deletePathQuietly(pathList);
+      }
+    }
+  }
+
+  private void runCommand(List<String> command, Path output) throws RODAException, IOException {
+    Process process = new ProcessBuilder(command).redirectOutput(output.toFile()).start();
+    process.getOutputStream().close();
+
+    StringBuilder errorOutput = new StringBuilder();
+    Thread errorReader = new Thread(() -> {
+      try (InputStream err = process.getErrorStream()) {
+        for (String line : IOUtils.readLines(err, StandardCharsets.UTF_8)) {
+          LOGGER.debug("Siegfried: {}", line);
+          synchronized (errorOutput) {
+            if (errorOutput.length() < MAX_ERROR_OUTPUT) {
+              errorOutput.append(line).append(System.lineSeparator());
+            }
+          }
+        }
+      } catch (IOException e) {
+        LOGGER.debug("Error reading Siegfried error output", e);
+      }
+    }, "siegfried-error");
+    errorReader.setDaemon(true);
+    errorReader.start();
+
+    boolean completed = false;
+    try {
+      int exitValue = process.waitFor();
+      errorReader.join();
+      if (exitValue != 0) {
+        synchronized (errorOutput) {
+          throw new PluginException(
+            "Error while executing Siegfried: terminated with error code " + exitValue + " " + errorOutput);
+        }
+      }
+      completed = true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new PluginException("Interrupted while executing Siegfried", e);
+    } finally {
+      if (!completed) {
+        process.destroyForcibly();
+      }
+    }
+  }
+
+  /**
+   * Reads the {@code files} of a Siegfried JSON output one at a time.
+   */
+  static void parseFiles(InputStream in, Handler handler) throws IOException, RODAException {
+    ObjectMapper mapper = new ObjectMapper(new JsonFactory());
+    try (JsonParser parser = mapper.getFactory().createParser(in)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new GenericException("Unexpected Siegfried output");
+      }
+
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        JsonToken value = parser.nextToken();
+        if ("files".equals(field) && value == JsonToken.START_ARRAY) {
+          while (parser.nextToken() == JsonToken.START_OBJECT) {
+            JsonNode file = mapper.readTree(parser);
+            handler.handle(file);
+          }
+        } else {
+          parser.skipChildren();
+        }
+      }
+    }
+  }
+}
@@ -9,6 +9,7 @@ package org.roda.core.plugins.base.characterization;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -36,6 +37,7 @@ import org.roda.core.data.v2.jobs.PluginType;
 import org.roda.core.data.v2.jobs.Report;
 import org.roda.core.data.v2.validation.ValidationException;
 import org.roda.core.index.IndexService;
+import org.roda.core.model.MetadataBatch;
 import org.roda.core.model.ModelService;
 import org.roda.core.plugins.AbstractAIPComponentsPlugin;
 import org.roda.core.plugins.Plugin;
@@ -123,12 +125,7 @@ public class SiegfriedPlugin<T extends IsRODAObject> extends AbstractAIPComponen
               // SIP UPDATE
               if (AIPState.INGEST_PROCESSING.equals(aip.getState())) {
                 if (aip.getRepresentations() != null && !aip.getRepresentations().isEmpty()) {
-                  for (Representation representation : aip.getRepresentations()) {
-                    LOGGER.debug("Processing representation {} of AIP {}", representation.getId(), aip.getId());
-                    sources.addAll(SiegfriedPluginUtils.runSiegfriedOnRepresentation(model, representation,
-                      cachedJob.getId(), cachedJob.getUsername()));
-                    model.notifyRepresentationUpdated(representation).failOnError();
-                  }
+                  sources.addAll(runSiegfriedOnRepresentations(model, aip, aip.getRepresentations(), cachedJob));
 
                   jobPluginInfo.incrementObjectsProcessedWithSuccess();
                   reportItem.setPluginState(PluginState.SUCCESS);
@@ -144,12 +141,7 @@ public class SiegfriedPlugin<T extends IsRODAObject> extends AbstractAIPComponen
             } else {
               // SIP CREATE
               if (aip.getRepresentations() != null && !aip.getRepresentations().isEmpty()) {
-                for (Representation representation : aip.getRepresentations()) {
-                  LOGGER.debug("Processing representation {} of AIP {}", representation.getId(), aip.getId());
-                  sources.addAll(SiegfriedPluginUtils.runSiegfriedOnRepresentation(model, representation,
-                    cachedJob.getId(), cachedJob.getUsername()));
-                  model.notifyRepresentationUpdated(representation).failOnError();
-                }
+                sources.addAll(runSiegfriedOnRepresentations(model, aip, aip.getRepresentations(), cachedJob));
 
                 jobPluginInfo.incrementObjectsProcessedWithSuccess();
                 reportItem.setPluginState(PluginState.SUCCESS);
@@ -159,8 +151,7 @@ public class SiegfriedPlugin<T extends IsRODAObject> extends AbstractAIPComponen
                   .setPluginDetails("Skipped because no representation was found for this AIP");
               }
             }
-          } catch (PluginException | NotFoundException | GenericException | RequestNotValidException
-            | AuthorizationDeniedException e) {
+          } catch (RODAException e) {
             LOGGER.error("Error running Siegfried {}: {}", aip.getId(), e.getMessage(), e);
 
             jobPluginInfo.incrementObjectsProcessedWithFailure();
@@ -179,12 +170,9 @@ public class SiegfriedPlugin<T extends IsRODAObject> extends AbstractAIPComponen
                   r -> aipData.get(RodaConstants.RODA_OBJECT_REPRESENTATION).contains(IdUtils.getRepresentationId(r)))
                 .collect(Collectors.toList());
 
-              for (Representation representation : filteredList) {
+              if (!filteredList.isEmpty()) {
                 try {
-                  LOGGER.debug("Processing representation {} of AIP {}", representation.getId(), aip.getId());
-                  sources.addAll(SiegfriedPluginUtils.runSiegfriedOnRepresentation(model, representation,
-                    cachedJob.getId(), cachedJob.getUsername()));
-                  model.notifyRepresentationUpdated(representation).failOnError();
+                  sources.addAll(runSiegfriedOnRepresentations(model, aip, filteredList, cachedJob));
                   state = PluginState.SUCCESS;
                 } catch (RODAException e) {
                   state = PluginState.FAILURE;
@@ -220,6 +208,42 @@ public class SiegfriedPlugin<T extends IsRODAObject> extends AbstractAIPComponen
     return report;
   }
 
+  /**
+   * Identifies the representations of an AIP at the same time (see
+   * {@link PluginHelper#processSubtasks}), updating the AIP metadata once they
+   * are all done. Representations with shallow files share a temporary copy of
+   * the AIP, so they are identified one at a time.
+   */
+  private List<LinkingIdentifier> runSiegfriedOnRepresentations(ModelService model, AIP aip,
+    List<Representation> representations, Job cachedJob) throws RODAException {
+    List<LinkingIdentifier> sources = new ArrayList<>();
+
+    if (representations.stream().anyMatch(r -> Boolean.TRUE.equals(r.getHasShallowFiles()))) {
+      for (Representation representation : representations) {
+        LOGGER.debug("Processing representation {} of AIP {}", representation.getId(), aip.getId());
+        sources.addAll(SiegfriedPluginUtils.runSiegfriedOnRepresentation(model, representation, cachedJob.getId(),
+          cachedJob.getUsername()));
+        model.notifyRepresentationUpdated(representation).failOnError();
+      }
+    } else {
+      try (MetadataBatch batch = new MetadataBatch(model, cachedJob.getUsername(), true)) {
+        List<List<LinkingIdentifier>> representationSources = PluginHelper.processSubtasks(this, representations,
+          representation -> {
+            LOGGER.debug("Processing representation {} of AIP {}", representation.getId(), aip.getId());
+            return SiegfriedPluginUtils.runSiegfriedOnRepresentation(model, batch, representation, cachedJob.getId(),
+              cachedJob.getUsername());
+          });
+        representationSources.forEach(sources::addAll);
+      }
+
+      for (Representation representation : representations) {
+        model.notifyRepresentationUpdated(representation).failOnError();
+      }
+    }
+
+    return sources;
+  }
+
   @Override
   public Report executeOnRepresentation(IndexService index, ModelService model, StorageService storage, Report report,
     JobPluginInfo jobPluginInfo, List<Representation> list, Job cachedJob) {
@@ -265,6 +289,17 @@ public class SiegfriedPlugin<T extends IsRODAObject> extends AbstractAIPComponen
   public Report executeOnFile(IndexService index, ModelService model, StorageService storage, Report report,
     JobPluginInfo jobPluginInfo, List<File> list, Job cachedJob) {
 
+    // identify all files at once
+    Map<String, List<LinkingIdentifier>> identified = new HashMap<>();
+    String batchError = null;
+    try {
+      identified = SiegfriedPluginUtils.runSiegfriedOnFiles(model, list, cachedJob.getUsername());
+    } catch (PluginException | NotFoundException | GenericException | RequestNotValidException
+      | AuthorizationDeniedException e) {
+      LOGGER.error("Error running Siegfried on {} files: {}", list.size(), e.getMessage(), e);
+      batchError = e.getMessage();
+    }
+
     for (File file : list) {
       List<LinkingIdentifier> sources = new ArrayList<>();
 
@@ -273,17 +308,18 @@ public class SiegfriedPlugin<T extends IsRODAObject> extends AbstractAIPComponen
       LOGGER.debug("Processing file {} from representation {} of AIP {}", file.getId(), file.getRepresentationId(),
         file.getAipId());
 
-      try {
-        sources.addAll(SiegfriedPluginUtils.runSiegfriedOnFile(model, file, cachedJob.getUsername()));
+      List<LinkingIdentifier> fileSources = identified.get(IdUtils.getFileId(file));
+      if (fileSources != null) {
+        sources.addAll(fileSources);
         jobPluginInfo.incrementObjectsProcessedWithSuccess();
         reportItem.setPluginState(PluginState.SUCCESS);
-      } catch (PluginException | NotFoundException | GenericException | RequestNotValidException
-        | AuthorizationDeniedException e) {
-        LOGGER.error("Error running Siegfried on file {}: {}", file.getId(), e.getMessage(), e);
+      } else {
+        String error = batchError != null ? batchError : "file was not identified";
+        LOGGER.error("Error running Siegfried on file {}: {}", file.getId(), error);
 
         jobPluginInfo.incrementObjectsProcessedWithFailure();
         reportItem.setPluginState(PluginState.FAILURE)
-          .setPluginDetails("Error running Siegfried on file " + file.getId() + ": " + e.getMessage());
+          .setPluginDetails("Error running Siegfried on file " + file.getId() + ": " + error);
       }
 
       try {
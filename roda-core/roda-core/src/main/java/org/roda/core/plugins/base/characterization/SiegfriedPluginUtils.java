@@ -12,11 +12,15 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.roda.core.RodaCoreFactory;
 import org.roda.core.common.PremisV3Utils;
@@ -24,6 +28,7 @@ import org.roda.core.data.common.RodaConstants;
 import org.roda.core.data.exceptions.AuthorizationDeniedException;
 import org.roda.core.data.exceptions.GenericException;
 import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.RODAException;
 import org.roda.core.data.exceptions.RequestNotValidException;
 import org.roda.core.data.utils.JsonUtils;
 import org.roda.core.data.v2.IsRODAObject;
@@ -33,6 +38,7 @@ import org.roda.core.data.v2.ip.StoragePath;
 import org.roda.core.data.v2.ip.metadata.LinkingIdentifier;
 import org.roda.core.data.v2.jobs.Job;
 import org.roda.core.data.v2.jobs.PluginType;
+import org.roda.core.model.MetadataBatch;
 import org.roda.core.model.ModelService;
 import org.roda.core.model.utils.ModelUtils;
 import org.roda.core.plugins.PluginException;
@@ -46,6 +52,7 @@ import org.roda.core.util.Base64;
 import org.roda.core.util.CommandException;
 import org.roda.core.util.CommandUtility;
 import org.roda.core.util.HTTPUtility;
+import org.roda.core.util.IdUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -144,6 +151,21 @@ public class SiegfriedPluginUtils {
   public static <T extends IsRODAObject> List<LinkingIdentifier> runSiegfriedOnRepresentation(ModelService model,
     Representation representation, String jobId, String username) throws GenericException, RequestNotValidException,
     NotFoundException, AuthorizationDeniedException, PluginException {
+    return runSiegfriedOnRepresentation(model, null, representation, jobId, username);
+  }
+
+  /**
+   * Identifies the files of a representation, leaving the update of the AIP
+   * metadata to the given batch, e.g. one shared by all the representations of
+   * an AIP that are identified at the same time.
+   *
+   * @param batch
+   *          the batch to update the metadata with, or {@code null} to update
+   *          the AIP metadata before returning
+   */
+  public static <T extends IsRODAObject> List<LinkingIdentifier> runSiegfriedOnRepresentation(ModelService model,
+    MetadataBatch batch, Representation representation, String jobId, String username) throws GenericException,
+    RequestNotValidException, NotFoundException, AuthorizationDeniedException, PluginException {
     StoragePath representationDataPath = ModelUtils.getRepresentationDataStoragePath(representation.getAipId(),
       representation.getId());
     StorageService storageService;
@@ -153,7 +175,7 @@ public class SiegfriedPluginUtils {
         ModelUtils.getAIPStoragePath(representation.getAipId()));
       try (DirectResourceAccess directAccess = tmpStorageService.getDirectAccess(representationDataPath)) {
         Path representationFsPath = directAccess.getPath();
-        return runSiegfriedOnRepresentationOrFile(model, representation.getAipId(), representation.getId(),
+        return runSiegfriedOnRepresentationOrFile(model, batch, representation.getAipId(), representation.getId(),
           new ArrayList<>(), null, representationFsPath, username);
       } catch (IOException e) {
         throw new GenericException(e);
@@ -170,7 +192,7 @@ public class SiegfriedPluginUtils {
     } else {
       try (DirectResourceAccess directAccess = model.getStorage().getDirectAccess(representationDataPath)) {
         Path representationFsPath = directAccess.getPath();
-        return runSiegfriedOnRepresentationOrFile(model, representation.getAipId(), representation.getId(),
+        return runSiegfriedOnRepresentationOrFile(model, batch, representation.getAipId(), representation.getId(),
           new ArrayList<>(), null, representationFsPath, username);
       } catch (IOException e) {
         throw new GenericException(e);
@@ -185,7 +207,7 @@ public class SiegfriedPluginUtils {
 
     try (DirectResourceAccess directAccess = model.getStorage().getDirectAccess(fileStoragePath)) {
       Path filePath = directAccess.getPath();
-      List<LinkingIdentifier> sources = runSiegfriedOnRepresentationOrFile(model, file.getAipId(),
+      List<LinkingIdentifier> sources = runSiegfriedOnRepresentationOrFile(model, null, file.getAipId(),
         file.getRepresentationId(), file.getPath(), file.getId(), filePath, username);
       model.notifyFileUpdated(file).failOnError();
       return sources;
@@ -194,62 +216,162 @@ public class SiegfriedPluginUtils {
     }
   }
 
+  /**
+   * Identifies the given files with a single Siegfried run and updates their
+   * metadata, touching the metadata of each AIP once.
+   *
+   * @return the sources of each identified file, by file UUID (see
+   *         {@link IdUtils#getFileId(File)}). Files that Siegfried did not
+   *         identify are missing.
+   */
+  public static Map<String, List<LinkingIdentifier>> runSiegfriedOnFiles(ModelService model, List<File> files,
+    String username) throws GenericException, RequestNotValidException, NotFoundException,
+    AuthorizationDeniedException, PluginException {
+    Map<String, List<LinkingIdentifier>> sources = new HashMap<>();
+    Map<String, File> filesByPath = new HashMap<>();
+    Map<String, Path> basePaths = new HashMap<>();
+    List<Path> paths = new ArrayList<>();
+    List<DirectResourceAccess> directAccesses = new ArrayList<>();
+
+    try (MetadataBatch batch = new MetadataBatch(model, username, true)) {
+      for (File file : files) {
+        DirectResourceAccess directAccess = model.getStorage().getDirectAccess(ModelUtils.getFileStoragePath(file));
+        directAccesses.add(directAccess);
+        Path path = directAccess.getPath();
+        if (FSUtils.exists(path)) {
+          String key = normalize(path.toString());
+          filesByPath.put(key, file);
+          basePaths.put(key, path);
+          paths.add(path);
+        }
+      }
+
+      SiegfriedIdentifier.fromConfiguration().identify(paths, node -> {
+        String key = normalize(node.get("filename").asText());
+        File file = filesByPath.get(key);
+        if (file != null) {
+          LinkingIdentifier source = updateMetadata(model, batch, file.getAipId(), file.getRepresentationId(),
+            file.getPath(), file.getId(), basePaths.get(key), node, username);
+          sources.computeIfAbsent(IdUtils.getFileId(file), k -> new ArrayList<>()).add(source);
+        } else {
+          LOGGER.warn("Siegfried identified an unexpected file {}", key);
+        }
+      });
+    } catch (RODAException e) {
+      throw asPluginException(e);
+    } finally {
+      for (DirectResourceAccess directAccess : directAccesses) {
+        IOUtils.closeQuietly(directAccess);
+      }
+    }
+
+    for (File file : files) {
+      if (sources.containsKey(IdUtils.getFileId(file))) {
+        model.notifyFileUpdated(file).failOnError();
+      }
+    }
+    return sources;
+  }
+
   private static <T extends IsRODAObject> List<LinkingIdentifier> runSiegfriedOnRepresentationOrFile(ModelService model,
-    String aipId, String representationId, List<String> fileDirectoryPath, String fileId, Path path, String username)
-    throws RequestNotValidException, GenericException, NotFoundException, AuthorizationDeniedException,
-    PluginException {
+    MetadataBatch sharedBatch, String aipId, String representationId, List<String> fileDirectoryPath, String fileId,
+    Path path, String username) throws RequestNotValidException, GenericException, NotFoundException,
+    AuthorizationDeniedException, PluginException {
     List<LinkingIdentifier> sources = new ArrayList<>();
 
     if (FSUtils.exists(path)) {
-      String siegfriedOutput = SiegfriedPluginUtils.runSiegfriedOnPath(path);
-      final JsonNode jsonObject = JsonUtils.parseJson(siegfriedOutput);
-      final JsonNode files = jsonObject.get("files");
-
-      for (JsonNode file : files) {
-        Path fullFsPath = Paths.get(FilenameUtils.normalize(file.get("filename").asText()));
-        Path relativeFsPath = path.relativize(fullFsPath);
-        String jsonFileId = fullFsPath.getFileName().toString();
-
-        List<String> jsonFilePath = new ArrayList<>(fileDirectoryPath);
-        if (fileId != null) {
-          jsonFilePath.add(fileId);
+      if (sharedBatch != null) {
+        try {
+          SiegfriedIdentifier.fromConfiguration().identify(Collections.singletonList(path),
+            node -> sources.add(updateMetadata(model, sharedBatch, aipId, representationId, fileDirectoryPath, fileId,
+              path, node, username)));
+        } catch (RODAException e) {
+          throw asPluginException(e);
         }
-
-        for (int j = 0; j < relativeFsPath.getNameCount()
-          && StringUtils.isNotBlank(relativeFsPath.getName(j).toString()); j++) {
-          jsonFilePath.add(relativeFsPath.getName(j).toString());
+      } else {
+        try (MetadataBatch batch = new MetadataBatch(model, username, true)) {
+          SiegfriedIdentifier.fromConfiguration().identify(Collections.singletonList(path), node -> sources.add(
+            updateMetadata(model, batch, aipId, representationId, fileDirectoryPath, fileId, path, node, username)));
+        } catch (RODAException e) {
+          throw asPluginException(e);
         }
+      }
+    }
 
-        jsonFilePath.remove(jsonFilePath.size() - 1);
-
-        ContentPayload payload = new StringContentPayload(file.toString());
-        model.createOrUpdateOtherMetadata(aipId, representationId, jsonFilePath, jsonFileId,
-          SiegfriedPlugin.FILE_SUFFIX, RodaConstants.OTHER_METADATA_TYPE_SIEGFRIED, payload, username, false);
-
-        sources.add(PluginHelper.getLinkingIdentifier(aipId, representationId, jsonFilePath, jsonFileId,
-          RodaConstants.PRESERVATION_LINKING_OBJECT_SOURCE));
+    return sources;
+  }
 
-        // Update PREMIS files
-        final JsonNode matches = file.get("matches");
-        for (JsonNode match : matches) {
-          String format = null;
-          String version = null;
-          String pronom = null;
-          String mime = null;
+  /**
+   * Stores the Siegfried output of one file and updates its PREMIS format.
+   *
+   * @param path
+   *          the path given to Siegfried, i.e. the file itself or one of the
+   *          directories containing it
+   */
+  private static LinkingIdentifier updateMetadata(ModelService model, MetadataBatch batch, String aipId,
+    String representationId, List<String> fileDirectoryPath, String fileId, Path path, JsonNode file, String username)
+    throws RequestNotValidException, GenericException, NotFoundException, AuthorizationDeniedException {
+    Path fullFsPath = Paths.get(FilenameUtils.normalize(file.get("filename").asText()));
+    Path relativeFsPath = path.relativize(fullFsPath);
+    String jsonFileId = fullFsPath.getFileName().toString();
+
+    List<String> jsonFilePath = new ArrayList<>(fileDirectoryPath);
+    if (fileId != null) {
+      jsonFilePath.add(fileId);
+    }
 
-          if ("pronom".equalsIgnoreCase(match.get("ns").textValue())) {
-            format = match.get("format").textValue();
-            version = match.get("version").textValue();
-            pronom = match.get("id").textValue();
-            mime = match.get("mime").textValue();
-          }
+    for (int j = 0; j < relativeFsPath.getNameCount()
+      && StringUtils.isNotBlank(relativeFsPath.getName(j).toString()); j++) {
+      jsonFilePath.add(relativeFsPath.getName(j).toString());
+    }
 
-          PremisV3Utils.updateFormatPreservationMetadata(model, aipId, representationId, jsonFilePath, jsonFileId,
-            format, version, pronom, mime, username, true);
-        }
+    jsonFilePath.remove(jsonFilePath.size() - 1);
+
+    ContentPayload payload = new StringContentPayload(file.toString());
+    batch.createOrUpdateOtherMetadata(aipId, representationId, jsonFilePath, jsonFileId, SiegfriedPlugin.FILE_SUFFIX,
+      RodaConstants.OTHER_METADATA_TYPE_SIEGFRIED, payload);
+
+    // Update PREMIS files, with the last match as it used to be written last
+    final JsonNode matches = file.get("matches");
+    if (matches != null && matches.size() > 0) {
+      JsonNode match = matches.get(matches.size() - 1);
+      String format = null;
+      String version = null;
+      String pronom = null;
+      String mime = null;
+
+      if ("pronom".equalsIgnoreCase(match.get("ns").textValue())) {
+        format = match.get("format").textValue();
+        version = match.get("version").textValue();
+        pronom = match.get("id").textValue();
+        mime = match.get("mime").textValue();
       }
+
+      PremisV3Utils.updateFormatPreservationMetadata(model, batch, aipId, representationId, jsonFilePath, jsonFileId,
+        format, version, pronom, mime, username);
     }
 
-    return sources;
+    return PluginHelper.getLinkingIdentifier(aipId, representationId, jsonFilePath, jsonFileId,
+      RodaConstants.PRESERVATION_LINKING_OBJECT_SOURCE);
+  }
+
+  private static String normalize(String path) {
+    return Paths.get(FilenameUtils.normalize(path)).toAbsolutePath().normalize().toString();
+  }
+
+  private static PluginException asPluginException(RODAException e) throws RequestNotValidException,
+    GenericException, NotFoundException, AuthorizationDeniedException {
+    if (e instanceof PluginException) {
+      return (PluginException) e;
+    } else if (e instanceof RequestNotValidException) {
+      throw (RequestNotValidException) e;
+    } else if (e instanceof GenericException) {
+      throw (GenericException) e;
+    } else if (e instanceof NotFoundException) {
+      throw (NotFoundException) e;
+    } else if (e instanceof AuthorizationDeniedException) {
+      throw (AuthorizationDeniedException) e;
+    }
+    return new PluginException("Error while executing Siegfried: " + e.getMessage(), e);
   }
 }
@@ -54,6 +54,7 @@ import org.roda.core.data.v2.validation.ValidationException;
 import org.roda.core.data.v2.validation.ValidationIssue;
 import org.roda.core.data.v2.validation.ValidationReport;
 import org.roda.core.index.IndexService;
+import org.roda.core.model.MetadataBatch;
 import org.roda.core.model.ModelService;
 import org.roda.core.model.utils.ModelUtils;
 import org.roda.core.plugins.AbstractAIPComponentsPlugin;
@@ -251,8 +252,11 @@ public abstract class AbstractConvertPlugin<T extends IsRODAObject> extends Abst
             reportItem.setOutcomeObjectClass(DIP.class.getName());
           }
 
+          List<File> filesToConvert = new ArrayList<>();
+          List<ConversionExecutor.Conversion> conversions = new ArrayList<>();
+
           try (CloseableIterable<OptionalWithCause<File>> allFiles = model.listFilesUnder(aip.getId(),
-            representation.getId(), true)) {
+            representation.getId(), true); MetadataBatch batch = new MetadataBatch(model, job.getUsername(), notify)) {
             LOGGER.debug("Processing representation {}", representation);
 
             for (OptionalWithCause<File> oFile : allFiles) {
@@ -278,82 +282,9 @@ public abstract class AbstractConvertPlugin<T extends IsRODAObject> extends Abst
 
                     if (doPluginExecute(fileFormat, filePronom, fileMimetype, applicableTo, convertableTo,
                       pronomToExtension, mimetypeToExtension)) {
-
-                      fileFormat = getNewFileFormat(fileFormat, filePronom, fileMimetype, applicableTo,
-                        pronomToExtension, mimetypeToExtension);
-
-                      StoragePath fileStoragePath = ModelUtils.getFileStoragePath(file);
-                      DirectResourceAccess directAccess = storage.getDirectAccess(fileStoragePath);
-
-                      LOGGER.debug("Running a ConvertPlugin ({} to {}) on {}", fileFormat, outputFormat, file.getId());
-                      try {
-                        Path pluginResult = Files.createTempFile(getWorkingDirectory(), "converted",
-                          "." + FilenameUtils.normalize(getOutputFormat()));
-                        String result = executePlugin(directAccess.getPath(), pluginResult, fileFormat);
-
-                        newFileId = file.getId().replaceFirst("[.][^.]+$", "." + outputFormat);
-                        ContentPayload payload = new FSPathContentPayload(pluginResult);
-
-                        if (createDIP) {
-                          FileLink fileLink = new FileLink(file.getAipId(), file.getRepresentationId(), file.getPath(),
-                            file.getId());
-                          List<FileLink> links = new ArrayList<>();
-                          links.add(fileLink);
-
-                          DIP dip = new DIP();
-                          dip.setId(IdUtils.createUUID());
-                          dip.setFileIds(links);
-                          dip.setPermissions(aip.getPermissions());
-                          dip.setTitle(dipTitle);
-                          dip.setDescription(dipDescription);
-                          dip.setType(RodaConstants.DIP_TYPE_CONVERSION);
-                          dip = model.createDIP(dip, true);
-                          newRepresentationID = dip.getId();
-
-                          DIPFile f = model.createDIPFile(newRepresentationID, file.getPath(), newFileId,
-                            directAccess.getPath().toFile().length(), payload, notify);
-                          newDIPFiles.add(f);
-                        } else {
-                          // create a new representation if it does not exist
-                          if (!newRepresentations.contains(newRepresentationID)) {
-                            LOGGER.debug("Creating a new representation {} on AIP {}", newRepresentationID,
-                              aip.getId());
-                            boolean original = false;
-                            newRepresentations.add(newRepresentationID);
-                            String newRepresentationType = representation.getType();
-
-                            if (StringUtils.isNotBlank(representationType)) {
-                              newRepresentationType = representationType;
-                            }
-
-                            model.createRepresentation(aip.getId(), newRepresentationID, original,
-                              newRepresentationType, notify, job.getUsername());
-                            reportItem.setSourceAndOutcomeObjectId(reportItem.getSourceObjectId(),
-                              IdUtils.getRepresentationId(representation.getAipId(), newRepresentationID));
-                          }
-
-                          File f = model.createFile(aip.getId(), newRepresentationID, file.getPath(), newFileId,
-                            payload, job.getUsername(), notify);
-                          newFiles.add(f);
-                        }
-
-                        alteredFiles.add(file);
-                        IOUtils.closeQuietly(directAccess);
-
-                        Report fileReportItem = PluginHelper.initPluginReportItem(this, file.getId(), File.class,
-                          AIPState.ACTIVE);
-                        fileReportItem.setPluginState(pluginResultState).setPluginDetails(result);
-                        reportItem.addReport(fileReportItem);
-
-                      } catch (CommandException e) {
-                        pluginResultState = PluginState.FAILURE;
-                        reportState = pluginResultState;
-                        reportItem.setPluginState(pluginResultState).addPluginDetails(getOutputMessage(e));
-
-                        LOGGER.debug("Conversion ({} to {}) failed on file {} of representation {} from AIP {}",
-                          fileFormat, outputFormat, file.getId(), representation.getId(), aip.getId());
-                      }
-
+                      filesToConvert.add(file);
+                      conversions.add(getConversion(storage, file, getNewFileFormat(fileFormat, filePronom,
+                        fileMimetype, applicableTo, pronomToExtension, mimetypeToExtension)));
                     } else {
                       unchangedFiles.add(file);
 
@@ -372,6 +303,77 @@ public abstract class AbstractConvertPlugin<T extends IsRODAObject> extends Abst
               }
             }
 
+            try (ConversionExecutor.Conversions<File> converted = convert(filesToConvert, conversions)) {
+              for (ConversionExecutor.Result<File> conversion : converted) {
+                File file = conversion.getKey();
+                if (conversion.getError() instanceof CommandException) {
+                  pluginResultState = PluginState.FAILURE;
+                  reportState = pluginResultState;
+                  reportItem.setPluginState(pluginResultState)
+                    .addPluginDetails(getOutputMessage((CommandException) conversion.getError()));
+
+                  LOGGER.debug("Conversion (to {}) failed on file {} of representation {} from AIP {}", outputFormat,
+                    file.getId(), representation.getId(), aip.getId());
+                  continue;
+                } else if (conversion.getError() != null) {
+                  throw new GenericException(
+                    "Error converting file " + file.getId() + ": " + conversion.getError().getMessage(),
+                    conversion.getError());
+                }
+
+                String newFileId = file.getId().replaceFirst("[.][^.]+$", "." + outputFormat);
+                ContentPayload payload = new FSPathContentPayload(conversion.getOutput());
+
+                if (createDIP) {
+                  FileLink fileLink = new FileLink(file.getAipId(), file.getRepresentationId(), file.getPath(),
+                    file.getId());
+                  List<FileLink> links = new ArrayList<>();
+                  links.add(fileLink);
+
+                  DIP dip = new DIP();
+                  dip.setId(IdUtils.createUUID());
+                  dip.setFileIds(links);
+                  dip.setPermissions(aip.getPermissions());
+                  dip.setTitle(dipTitle);
+                  dip.setDescription(dipDescription);
+                  dip.setType(RodaConstants.DIP_TYPE_CONVERSION);
+                  dip = model.createDIP(dip, true);
+                  newRepresentationID = dip.getId();
+
+                  DIPFile f = model.createDIPFile(newRepresentationID, file.getPath(), newFileId,
+                    Files.size(conversion.getOutput()), payload, notify);
+                  newDIPFiles.add(f);
+                } else {
+                  // create a new representation if it does not exist
+                  if (!newRepresentations.contains(newRepresentationID)) {
+                    LOGGER.debug("Creating a new representation {} on AIP {}", newRepresentationID, aip.getId());
+                    boolean original = false;
+                    newRepresentations.add(newRepresentationID);
+                    String newRepresentationType = representation.getType();
+
+                    if (StringUtils.isNotBlank(representationType)) {
+                      newRepresentationType = representationType;
+                    }
+
+                    model.createRepresentation(aip.getId(), newRepresentationID, original, newRepresentationType,
+                      notify, job.getUsername());
+                    reportItem.setSourceAndOutcomeObjectId(reportItem.getSourceObjectId(),
+                      IdUtils.getRepresentationId(representation.getAipId(), newRepresentationID));
+                  }
+
+                  File f = batch.createFile(aip.getId(), newRepresentationID, file.getPath(), newFileId, payload);
+                  newFiles.add(f);
+                }
+
+                alteredFiles.add(file);
+
+                Report fileReportItem = PluginHelper.initPluginReportItem(this, file.getId(), File.class,
+                  AIPState.ACTIVE);
+                fileReportItem.setPluginState(pluginResultState).setPluginDetails(conversion.getDetails());
+                reportItem.addReport(fileReportItem);
+              }
+            }
+
             reportItem.setPluginState(pluginResultState);
 
             if (reportState.equals(PluginState.SUCCESS)) {
@@ -388,8 +390,7 @@ public abstract class AbstractConvertPlugin<T extends IsRODAObject> extends Abst
 
             // add unchanged files to the new representation if created
             if (!alteredFiles.isEmpty() && !createDIP) {
-              createNewFilesOnRepresentation(storage, model, unchangedFiles, newRepresentationID, job.getUsername(),
-                notify);
+              createNewFilesOnRepresentation(storage, batch, unchangedFiles, newRepresentationID);
             }
 
           } catch (RuntimeException | NotFoundException | GenericException | RequestNotValidException
@@ -465,8 +466,11 @@ public abstract class AbstractConvertPlugin<T extends IsRODAObject> extends Abst
       ValidationReport validationReport = new ValidationReport();
       boolean hasNonPdfFiles = false;
 
+      List<File> filesToConvert = new ArrayList<>();
+      List<ConversionExecutor.Conversion> conversions = new ArrayList<>();
+
       try (CloseableIterable<OptionalWithCause<File>> allFiles = model.listFilesUnder(representation.getAipId(),
-        representation.getId(), true)) {
+        representation.getId(), true); MetadataBatch batch = new MetadataBatch(model, job.getUsername(), notify)) {
         LOGGER.debug("Processing representation {}", representation);
 
         for (OptionalWithCause<File> oFile : allFiles) {
@@ -492,83 +496,9 @@ public abstract class AbstractConvertPlugin<T extends IsRODAObject> extends Abst
 
                 if (doPluginExecute(fileFormat, filePronom, fileMimetype, applicableTo, convertableTo,
                   pronomToExtension, mimetypeToExtension)) {
-
-                  fileFormat = getNewFileFormat(fileFormat, filePronom, fileMimetype, applicableTo, pronomToExtension,
-                    mimetypeToExtension);
-
-                  StoragePath fileStoragePath = ModelUtils.getFileStoragePath(file);
-                  DirectResourceAccess directAccess = storage.getDirectAccess(fileStoragePath);
-
-                  LOGGER.debug("Running a ConvertPlugin ({} to {}) on {}", fileFormat, outputFormat, file.getId());
-                  try {
-                    Path pluginResult = Files.createTempFile(getWorkingDirectory(), "converted",
-                      "." + FilenameUtils.normalize(getOutputFormat()));
-                    String result = executePlugin(directAccess.getPath(), pluginResult, fileFormat);
-                    ContentPayload payload = new FSPathContentPayload(pluginResult);
-
-                    if (!newRepresentations.contains(newRepresentationID)) {
-                      LOGGER.debug("Creating a new representation {} on AIP {}", newRepresentationID, aipId);
-                      boolean original = false;
-                      newRepresentations.add(newRepresentationID);
-
-                      if (createDIP) {
-                        FileLink fileLink = new FileLink(file.getAipId(), file.getRepresentationId(), file.getPath(),
-                          file.getId());
-                        List<FileLink> links = new ArrayList<>();
-                        links.add(fileLink);
-
-                        AIP aip = model.retrieveAIP(aipId);
-
-                        DIP dip = new DIP();
-                        dip.setId(IdUtils.createUUID());
-                        dip.setFileIds(links);
-                        dip.setPermissions(aip.getPermissions());
-                        dip.setTitle(dipTitle);
-                        dip.setDescription(dipDescription);
-                        dip.setType(RodaConstants.DIP_TYPE_CONVERSION);
-                        dip = model.createDIP(dip, true);
-                        newRepresentationID = dip.getId();
-                      } else {
-                        // INFO will be a parameter
-                        String newRepresentationType = RodaConstants.REPRESENTATION_TYPE_MIXED;
-
-                        if (StringUtils.isNotBlank(representationType)) {
-                          newRepresentationType = representationType;
-                        }
-
-                        model.createRepresentation(aipId, newRepresentationID, original, newRepresentationType, notify,
-                          job.getUsername());
-                        reportItem.setSourceAndOutcomeObjectId(reportItem.getSourceObjectId(),
-                          IdUtils.getRepresentationId(representation.getAipId(), newRepresentationID));
-                      }
-                    }
-
-                    newFileId = file.getId().replaceFirst("[.][^.]+$", "." + outputFormat);
-                    if (createDIP) {
-                      DIPFile f = model.createDIPFile(newRepresentationID, file.getPath(), newFileId,
-                        directAccess.getPath().toFile().length(), payload, notify);
-                      newDIPFiles.add(f);
-                    } else {
-                      File newFile = model.createFile(aipId, newRepresentationID, file.getPath(), newFileId, payload,
-                        job.getUsername(), notify);
-                      newFiles.add(newFile);
-                    }
-
-                    alteredFiles.add(file);
-                    IOUtils.closeQuietly(directAccess);
-
-                    Report fileReportItem = PluginHelper.initPluginReportItem(this, file.getId(), File.class,
-                      AIPState.ACTIVE);
-                    fileReportItem.setPluginState(PluginState.SUCCESS).setPluginDetails(result);
-                    reportItem.addReport(fileReportItem);
-
-                  } catch (CommandException e) {
-                    reportState = PluginState.FAILURE;
-                    reportItem.setPluginState(reportState).addPluginDetails(getOutputMessage(e));
-
-                    LOGGER.debug("Conversion ({} to {}) failed on file {} of representation {} from AIP {}", fileFormat,
-                      outputFormat, file.getId(), representation.getId(), representation.getAipId());
-                  }
+                  filesToConvert.add(file);
+                  conversions.add(getConversion(storage, file, getNewFileFormat(fileFormat, filePronom, fileMimetype,
+                    applicableTo, pronomToExtension, mimetypeToExtension)));
                 } else {
                   unchangedFiles.add(file);
 
@@ -586,6 +516,81 @@ public abstract class AbstractConvertPlugin<T extends IsRODAObject> extends Abst
           }
         }
 
+        try (ConversionExecutor.Conversions<File> converted = convert(filesToConvert, conversions)) {
+          for (ConversionExecutor.Result<File> conversion : converted) {
+            File file = conversion.getKey();
+            if (conversion.getError() instanceof CommandException) {
+              reportState = PluginState.FAILURE;
+              reportItem.setPluginState(reportState)
+                .addPluginDetails(getOutputMessage((CommandException) conversion.getError()));
+
+              LOGGER.debug("Conversion (to {}) failed on file {} of representation {} from AIP {}", outputFormat,
+                file.getId(), representation.getId(), representation.getAipId());
+              continue;
+            } else if (conversion.getError() != null) {
+              throw new GenericException(
+                "Error converting file " + file.getId() + ": " + conversion.getError().getMessage(),
+                conversion.getError());
+            }
+
+            ContentPayload payload = new FSPathContentPayload(conversion.getOutput());
+
+            if (!newRepresentations.contains(newRepresentationID)) {
+              LOGGER.debug("Creating a new representation {} on AIP {}", newRepresentationID, aipId);
+              boolean original = false;
+              newRepresentations.add(newRepresentationID);
+
+              if (createDIP) {
+                FileLink fileLink = new FileLink(file.getAipId(), file.getRepresentationId(), file.getPath(),
+                  file.getId());
+                List<FileLink> links = new ArrayList<>();
+                links.add(fileLink);
+
+                AIP aip = model.retrieveAIP(aipId);
+
+                DIP dip = new DIP();
+                dip.setId(IdUtils.createUUID());
+                dip.setFileIds(links);
+                dip.setPermissions(aip.getPermissions());
+                dip.setTitle(dipTitle);
+                dip.setDescription(dipDescription);
+                dip.setType(RodaConstants.DIP_TYPE_CONVERSION);
+                dip = model.createDIP(dip, true);
+                newRepresentationID = dip.getId();
+              } else {
+                // INFO will be a parameter
+                String newRepresentationType = RodaConstants.REPRESENTATION_TYPE_MIXED;
+
+                if (StringUtils.isNotBlank(representationType)) {
+                  newRepresentationType = representationType;
+                }
+
+                model.createRepresentation(aipId, newRepresentationID, original, newRepresentationType, notify,
+                  job.getUsername());
+                reportItem.setSourceAndOutcomeObjectId(reportItem.getSourceObjectId(),
+                  IdUtils.getRepresentationId(representation.getAipId(), newRepresentationID));
+              }
+            }
+
+            String newFileId = file.getId().replaceFirst("[.][^.]+$", "." + outputFormat);
+            if (createDIP) {
+              DIPFile f = model.createDIPFile(newRepresentationID, file.getPath(), newFileId,
+                Files.size(conversion.getOutput()), payload, notify);
+              newDIPFiles.add(f);
+            } else {
+              File newFile = batch.createFile(aipId, newRepresentationID, file.getPath(), newFileId, payload);
+              newFiles.add(newFile);
+            }
+
+            alteredFiles.add(file);
+
+            Report fileReportItem = PluginHelper.initPluginReportItem(this, file.getId(), File.class,
+              AIPState.ACTIVE);
+            fileReportItem.setPluginState(PluginState.SUCCESS).setPluginDetails(conversion.getDetails());
+            reportItem.addReport(fileReportItem);
+          }
+        }
+
         reportItem.setPluginState(reportState);
         if (reportState.equals(PluginState.SUCCESS) && ignoreFiles && !validationReport.getIssues().isEmpty()) {
           reportItem.setHtmlPluginDetails(true)
@@ -605,8 +610,7 @@ public abstract class AbstractConvertPlugin<T extends IsRODAObject> extends Abst
           if (createDIP) {
             createNewFilesOnDIP(storage, model, unchangedFiles, newRepresentationID, notify);
           } else {
-            createNewFilesOnRepresentation(storage, model, unchangedFiles, newRepresentationID, job.getUsername(),
-              notify);
+            createNewFilesOnRepresentation(storage, batch, unchangedFiles, newRepresentationID);
           }
         }
 
@@ -839,9 +843,38 @@ public abstract class AbstractConvertPlugin<T extends IsRODAObject> extends Abst
     return report;
   }
 
+  /**
+   * Converts a file. It may be called for several files of a representation at
+   * the same time, from the threads of the {@link ConversionExecutor}.
+   */
   public abstract String executePlugin(Path inputPath, Path outputPath, String fileFormat)
     throws UnsupportedOperationException, IOException, CommandException;
 
+  /**
+   * @return the name of the tool in the {@code core.tools.<tool>} settings, e.g.
+   *         for its {@code maxProcesses} and {@code timeout}
+   */
+  protected String getToolName() {
+    return getClass().getSimpleName().toLowerCase();
+  }
+
+  private ConversionExecutor.Conversion getConversion(StorageService storage, File file, String fileFormat)
+    throws RequestNotValidException {
+    StoragePath fileStoragePath = ModelUtils.getFileStoragePath(file);
+    return output -> {
+      try (DirectResourceAccess directAccess = storage.getDirectAccess(fileStoragePath)) {
+        LOGGER.debug("Running a ConvertPlugin ({} to {}) on {}", fileFormat, outputFormat, file.getId());
+        return executePlugin(directAccess.getPath(), output, fileFormat);
+      }
+    };
+  }
+
+  private ConversionExecutor.Conversions<File> convert(List<File> files,
+    List<ConversionExecutor.Conversion> conversions) throws IOException {
+    return ConversionExecutor.getInstance().convert(getToolName(), getWorkingDirectory(),
+      FilenameUtils.normalize(getOutputFormat()), files, conversions);
+  }
+
   private void createPremisSkeletonOnRepresentation(ModelService model, String aipId, Representation representation,
     String username) throws RequestNotValidException, GenericException, NotFoundException, AuthorizationDeniedException,
     ValidationException, IOException {
@@ -1106,16 +1139,15 @@ public abstract class AbstractConvertPlugin<T extends IsRODAObject> extends Abst
     return newFileFormat;
   }
 
-  private void createNewFilesOnRepresentation(StorageService storage, ModelService model, List<File> unchangedFiles,
-    String newRepresentationID, String username, boolean notify)
-    throws RequestNotValidException, GenericException, NotFoundException, AuthorizationDeniedException,
-    UnsupportedOperationException, IOException, AlreadyExistsException {
+  private void createNewFilesOnRepresentation(StorageService storage, MetadataBatch batch, List<File> unchangedFiles,
+    String newRepresentationID) throws RequestNotValidException, GenericException, NotFoundException,
+    AuthorizationDeniedException, UnsupportedOperationException, IOException, AlreadyExistsException {
     for (File f : unchangedFiles) {
       StoragePath fileStoragePath = ModelUtils.getFileStoragePath(f);
       Binary binary = storage.getBinary(fileStoragePath);
       Path uriPath = Paths.get(binary.getContent().getURI());
       ContentPayload payload = new FSPathContentPayload(uriPath);
-      model.createFile(f.getAipId(), newRepresentationID, f.getPath(), f.getId(), payload, username, notify);
+      batch.createFile(f.getAipId(), newRepresentationID, f.getPath(), f.getId(), payload);
     }
   }
 
@@ -17,6 +17,7 @@ import org.roda.core.data.exceptions.InvalidParameterException;
 import org.roda.core.data.v2.IsRODAObject;
 import org.roda.core.data.v2.jobs.PluginParameter;
 import org.roda.core.data.v2.jobs.PluginParameter.PluginParameterType;
+import org.roda.core.util.CommandException;
 
 /**
  * @deprecated It will be removed in the next major version.
@@ -62,6 +63,16 @@ public abstract class CommandConvertPlugin<T extends IsRODAObject> extends Abstr
     commandArguments = args;
   }
 
+  /**
+   * Executes a command of the tool, killing it (and its sub-processes) after the
+   * configured {@code core.tools.<tool>.timeout}.
+   *
+   * @return the output of the command
+   */
+  protected String executeCommand(List<String> command) throws CommandException {
+    return ConversionExecutor.getInstance().execute(getToolName(), command);
+  }
+
   @Override
   public List<PluginParameter> getParameters() {
     return this.orderParameters(this.getDefaultParameters());
@@ -0,0 +1,409 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.base.conversion;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.io.IOUtils;
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.storage.fs.FSUtils;
+import org.roda.core.util.CommandException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the conversions of the conversion plugins on a pool shared by all jobs
+ * of the node, so that the number of external processes running at the same
+ * time is bounded by the number of cores (or by configuration), both for the
+ * whole node and for each tool.
+ *
+ * <p>
+ * The conversions of a representation are run several at a time, but their
+ * results are handed back in the order they were given, so that the caller can
+ * keep storing them from a single thread. Each conversion writes its output to
+ * a spool directory in local temporary storage, which is removed when the
+ * conversions are closed.
+ * </p>
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+public class ConversionExecutor {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ConversionExecutor.class);
+
+  private static final String ALL_PLUGINS = "convert.allplugins";
+  private static final long DEFAULT_TIMEOUT_SECONDS = 3600;
+
+  private static ConversionExecutor instance;
+
+  /**
+   * Converts a file, writing the result to the given output path.
+   */
+  @FunctionalInterface
+  public interface Conversion {
+    /**
+     * @return the details to add to the report of the file
+     */
+    String convert(Path output) throws RODAException, IOException;
+  }
+
+  private final int maxProcesses;
+  private final Configuration configuration;
+  private final Map<String, Integer> toolLimits = new ConcurrentHashMap<>();
+  private final Map<String, Long> toolTimeouts = new ConcurrentHashMap<>();
+  private final Map<String, Semaphore> toolPermits = new ConcurrentHashMap<>();
+  private final ExecutorService executor;
+
+  public ConversionExecutor(int maxProcesses) {
+    this(maxProcesses, null);
+  }
+
+  private ConversionExecutor(int maxProcesses, Configuration configuration) {
+    this.maxProcesses = Math.max(1, maxProcesses);
+    this.configuration = configuration;
+    AtomicInteger count = new AtomicInteger();
+    this.executor = Executors.newFixedThreadPool(this.maxProcesses, runnable -> {
+      Thread thread = new Thread(runnable, "conversion-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * @return the executor of this node, configured by
+   *         {@code core.tools.convert.allplugins.maxProcesses}
+   */
+  public static synchronized ConversionExecutor getInstance() {
+    if (instance == null) {
+      Configuration configuration = RodaCoreFactory.getRodaConfiguration();
+      int maxProcesses = Runtime.getRuntime().availableProcessors();
+      if (configuration != null) {
+        maxProcesses = configuration.getInt(toolKey(ALL_PLUGINS, "maxProcesses"), maxProcesses);
+      }
+      instance = new ConversionExecutor(maxProcesses, configuration);
+    }
+    return instance;
+  }
+
+  private static String toolKey(String tool, String key) {
+    return "core.tools." + tool + "." + key;
+  }
+
+  /**
+   * Sets the maximum number of conversions of a tool that run at the same
+   * time, instead of the configured {@code core.tools.<tool>.maxProcesses}.
+   */
+  public void setToolLimit(String tool, int limit) {
+    toolLimits.put(tool, Math.max(1, limit));
+    toolPermits.remove(tool);
+  }
+
+  /**
+   * Sets the time after which the commands of a tool are killed, instead of the
+   * configured {@code core.tools.<tool>.timeout}.
+   */
+  public void setToolTimeout(String tool, long seconds) {
+    toolTimeouts.put(tool, seconds);
+  }
+
+  public int getToolLimit(String tool) {
+    return toolLimits.computeIfAbsent(tool, t -> {
+      int limit = maxProcesses;
+      if (configuration != null) {
+        limit = configuration.getInt(toolKey(t, "maxProcesses"), limit);
+      }
+      return Math.max(1, Math.min(limit, maxProcesses));
+    });
+  }
+
+  public long getToolTimeout(String tool) {
+    return toolTimeouts.computeIfAbsent(tool, t -> {
+      long timeout = DEFAULT_TIMEOUT_SECONDS;
+      if (configuration != null) {
+        timeout = configuration.getLong(toolKey(t, "timeout"),
+          configuration.getLong(toolKey(ALL_PLUGINS, "timeout"), timeout));
+      }
+      return timeout;
+    });
+  }
+
+  /**
+   * Starts converting the given files with a tool.
+   *
+   * @param spoolParent
+   *          directory where the spool directory of the outputs is created,
+   *          unless {@code core.tools.convert.allplugins.spoolDirectory} is set
+   * @param outputExtension
+   *          extension of the output files
+   */
+  public <K> Conversions<K> convert(String tool, Path spoolParent, String outputExtension, List<K> keys,
+    List<Conversion> conversions) throws IOException {
+    String spoolDirectory = configuration != null ? configuration.getString(toolKey(ALL_PLUGINS, "spoolDirectory"), "")
+      : "";
+    Path parent = spoolDirectory.isEmpty() ? spoolParent : Paths.get(spoolDirectory);
+    Files.createDirectories(parent);
+    Path spool = Files.createTempDirectory(parent, "conversion");
+    Semaphore permits = toolPermits.computeIfAbsent(tool, t -> new Semaphore(getToolLimit(t)));
+    return new Conversions<>(spool, outputExtension, permits, getToolLimit(tool), keys, conversions);
+  }
+
+  /**
+   * Executes a command of a tool, killing it and all its sub-processes if it
+   * takes longer than the tool timeout or if the conversion is cancelled.
+   *
+   * @return the output of the command (with its error output)
+   */
+  public String execute(String tool, List<String> command) throws CommandException {
+    LOGGER.debug("Executing {}", command);
+    Process process;
+    try {
+      process = new ProcessBuilder(command).redirectErrorStream(true).start();
+    } catch (IOException e) {
+      throw new CommandException("Error executing command " + command + " - " + e.getMessage(), e);
+    }
+
+    StringBuffer output = new StringBuffer();
+    Thread outputReader = new Thread(() -> {
+      try (InputStream in = process.getInputStream()) {
+        output.append(IOUtils.toString(in, StandardCharsets.UTF_8));
+      } catch (IOException e) {
+        LOGGER.debug("Error reading output of {}", command, e);
+      }
+    }, "conversion-output");
+    outputReader.setDaemon(true);
+    outputReader.start();
+
+    try {
+      long timeout = getToolTimeout(tool);
+      if (timeout <= 0) {
+        process.waitFor();
+      } else if (!process.waitFor(timeout, TimeUnit.SECONDS)) {
+        destroyProcessTree(process);
+        throw new CommandException("Command " + command + " killed after " + timeout + " seconds");
+      }
+      // sub-processes left behind may keep the output open
+      outputReader.join(TimeUnit.SECONDS.toMillis(10));
+    } catch (InterruptedException e) {
+      destroyProcessTree(process);
+      Thread.currentThread().interrupt();
+      throw new CommandException("Command " + command + " was cancelled", e);
+    }
+
+    int exitValue = process.exitValue();
+    if (exitValue != 0) {
+      throw new CommandException("Command " + command + " terminated with error code " + exitValue, exitValue,
+        output.toString());
+    }
+    return output.toString();
+  }
+
+  private static void destroyProcessTree(Process process) {
+    process.descendants().forEach(ProcessHandle::destroyForcibly);
+    process.destroyForcibly();
+  }
+
+  /**
+   * Stops the pool; conversions still running are interrupted.
+   */
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Result of the conversion of one file.
+   */
+  public static class Result<K> {
+    private final K key;
+    private final Path output;
+    private final String details;
+    private final Exception error;
+
+    Result(K key, Path output, String details, Exception error) {
+      this.key = key;
+      this.output = output;
+      this.details = details;
+      this.error = error;
+    }
+
+    public K getKey() {
+      return key;
+    }
+
+    /**
+     * @return the converted file, which is deleted when the next result is
+     *         requested
+     */
+    public Path getOutput() {
+      return output;
+    }
+
+    public String getDetails() {
+      return details;
+    }
+
+    /**
+     * @return why the conversion failed, or null if it succeeded
+     */
+    public Exception getError() {
+      return error;
+    }
+  }
+
+  /**
+   * The results of the conversions, in the order the files were given. Only as
+   * many conversions as the tool limit are started ahead of the result being
+   * read, so that the spool holds few outputs at a time.
+   */
+  public class Conversions<K> implements Iterable<Result<K>>, AutoCloseable {
+    private final Path spool;
+    private final String outputExtension;
+    private final Semaphore permits;
+    private final int window;
+    private final List<K> keys;
+    private final List<Conversion> conversions;
+    private final Deque<ConversionTask> running = new ArrayDeque<>();
+    private int submitted = 0;
+    private Result<K> previous = null;
+
+    Conversions(Path spool, String outputExtension, Semaphore permits, int window, List<K> keys,
+      List<Conversion> conversions) {
+      this.spool = spool;
+      this.outputExtension = outputExtension;
+      this.permits = permits;
+      this.window = window;
+      this.keys = keys;
+      this.conversions = conversions;
+    }
+
+    @Override
+    public Iterator<Result<K>> iterator() {
+      return new Iterator<Result<K>>() {
+        @Override
+        public boolean hasNext() {
+          return !running.isEmpty() || submitted < conversions.size();
+        }
+
+        @Override
+        public Result<K> next() {
+          if (!hasNext()) {
+            throw new NoSuchElementException();
+          }
+          return nextResult();
+        }
+      };
+    }
+
+    private Result<K> nextResult() {
+      deletePreviousOutput();
+      try {
+        if (running.isEmpty()) {
+          permits.acquire();
+          submitNext();
+        }
+        while (running.size() < window && submitted < conversions.size() && permits.tryAcquire()) {
+          submitNext();
+        }
+        previous = running.removeFirst().get();
+        return previous;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while waiting for conversions", e);
+      } catch (ExecutionException e) {
+        throw new IllegalStateException("Conversion failed unexpectedly: " + e.getCause().getMessage(), e.getCause());
+      }
+    }
+
+    private void submitNext() {
+      ConversionTask task = new ConversionTask(keys.get(submitted), conversions.get(submitted));
+      submitted++;
+      running.addLast(task);
+      try {
+        executor.execute(task);
+      } catch (RuntimeException e) {
+        running.removeLast();
+        task.releasePermit();
+        throw e;
+      }
+    }
+
+    private void deletePreviousOutput() {
+      if (previous != null && previous.getOutput() != null) {
+        try {
+          Files.deleteIfExists(previous.getOutput());
+        } catch (IOException e) {
+          LOGGER.debug("Could not delete spooled conversion output {}", previous.getOutput(), e);
+        }
+      }
+      previous = null;
+    }
+
+    /**
+     * Cancels the conversions not read yet and removes the spool directory.
+     */
+    @Override
+    public void close() {
+      for (ConversionTask task : running) {
+        task.cancel(true);
+        // tasks cancelled before they started never release their permit
+        task.releasePermit();
+      }
+      running.clear();
+      submitted = conversions.size();
+      previous = null;
+      FSUtils.deletePathQuietly(spool);
+    }
+
+    private class ConversionTask extends FutureTask<Result<K>> {
+      private final AtomicBoolean permitReleased = new AtomicBoolean(false);
+
+      ConversionTask(K key, Conversion conversion) {
+        super(() -> {
+          Path output = Files.createTempFile(spool, "converted", "." + outputExtension);
+          try {
+            return new Result<>(key, output, conversion.convert(output), null);
+          } catch (RODAException | IOException | RuntimeException e) {
+            Files.deleteIfExists(output);
+            return new Result<>(key, null, null, e);
+          }
+        });
+      }
+
+      @Override
+      protected void done() {
+        releasePermit();
+      }
+
+      void releasePermit() {
+        if (permitReleased.compareAndSet(false, true)) {
+          permits.release();
+        }
+      }
+    }
+  }
+}
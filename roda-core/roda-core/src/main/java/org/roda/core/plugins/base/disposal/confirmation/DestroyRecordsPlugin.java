@@ -12,7 +12,6 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
@@ -53,7 +52,7 @@ import org.roda.core.plugins.PluginHelper;
 import org.roda.core.storage.Binary;
 import org.roda.core.storage.StorageService;
 import org.roda.core.storage.StringContentPayload;
-import org.roda.core.util.CommandException;
+import org.roda.core.storage.fs.FSSnapshotUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -139,13 +138,13 @@ public class DestroyRecordsPlugin extends AbstractPlugin<DisposalConfirmation> {
     JobPluginInfo jobPluginInfo, DisposalConfirmation disposalConfirmation) {
 
     // iterate over the AIP list
-    // copy the AIP using rsync to the disposal bin and another place
+    // snapshot the AIP to the disposal bin
     // mark the AIP as destroyed
     // add executedOn and executedBy on the AIP
     // Apply stylesheet over the descriptive metadata
     // Remove representations
     // add preservation event
-    // copy the preservation event using rsync to the disposal bin
+    // snapshot the preservation event to the disposal bin
 
     // IF any of this steps fails for any AIP the process continues and destroys as
     // much as it can
@@ -251,7 +250,7 @@ public class DestroyRecordsPlugin extends AbstractPlugin<DisposalConfirmation> {
       }
 
       reportItem.setPluginDetails(outcomeText);
-    } catch (IOException | CommandException | RequestNotValidException | GenericException | AuthorizationDeniedException
+    } catch (IOException | RequestNotValidException | GenericException | AuthorizationDeniedException
       | NotFoundException | AlreadyExistsException e) {
       LOGGER.error("Failed to destroy AIP '{}': {}", aip.getId(), e.getMessage(), e);
       state = PluginState.FAILURE;
@@ -265,12 +264,11 @@ public class DestroyRecordsPlugin extends AbstractPlugin<DisposalConfirmation> {
       null, null, state, outcomeText, "", cachedJob.getUsername(), true);
 
     // copy the preservation event to the AIP in the disposal bin
-    // using the --ignore-existing flag in the rsync process, copying only the new
+    // without replacing existing files, copying only the new
     // preservation event, leaving the remaining AIP structure intact
     try {
-      DisposalConfirmationPluginUtils.copyAIPToDisposalBin(aip, disposalConfirmation.getId(),
-        Arrays.asList("-r", "--ignore-existing"));
-    } catch (RequestNotValidException | GenericException | CommandException e) {
+      DisposalConfirmationPluginUtils.copyAIPToDisposalBin(aip, disposalConfirmation.getId(), false);
+    } catch (RequestNotValidException | GenericException e) {
       LOGGER.error("Failed to copy preservation event: {}", e.getMessage(), e);
     }
 
@@ -292,12 +290,13 @@ public class DestroyRecordsPlugin extends AbstractPlugin<DisposalConfirmation> {
   }
 
   private void testAndExecuteCopyAIP2DisposalBin(AIP aip, String disposalConfirmationId)
-    throws GenericException, CommandException, RequestNotValidException {
+    throws GenericException, RequestNotValidException {
     // test if the AIP was copied to disposal bin
     if (!DisposalConfirmationPluginUtils.aipExistsInDisposalBin(aip.getId(), disposalConfirmationId)) {
       // Copy AIP to disposal bin
-      DisposalConfirmationPluginUtils.copyAIPToDisposalBin(aip, disposalConfirmationId,
-        Collections.singletonList("-r"));
+      FSSnapshotUtils.Progress progress = DisposalConfirmationPluginUtils.copyAIPToDisposalBin(aip,
+        disposalConfirmationId, true);
+      LOGGER.info("Copied AIP {} to disposal bin: {}", aip.getId(), progress);
     }
   }
 
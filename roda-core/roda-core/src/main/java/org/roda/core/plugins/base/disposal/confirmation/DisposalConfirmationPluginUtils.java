@@ -35,9 +35,8 @@ import org.roda.core.index.IndexService;
 import org.roda.core.index.utils.IterableIndexResult;
 import org.roda.core.model.utils.ModelUtils;
 import org.roda.core.storage.DefaultStoragePath;
+import org.roda.core.storage.fs.FSSnapshotUtils;
 import org.roda.core.storage.fs.FSUtils;
-import org.roda.core.storage.rsync.RsyncUtils;
-import org.roda.core.util.CommandException;
 
 /**
  * @author Miguel Guimarães <mguimaraes@keep.pt>
@@ -55,8 +54,15 @@ public class DisposalConfirmationPluginUtils {
     return FSUtils.exists(disposalBinPath);
   }
 
-  public static void copyAIPToDisposalBin(AIP aip, String disposalConfirmationId, List<String> rsyncOptions)
-    throws RequestNotValidException, GenericException, CommandException {
+  /**
+   * Snapshots an AIP into the disposal bin, sharing its files with the storage
+   * where possible (see {@link FSSnapshotUtils}).
+   *
+   * @param replaceExisting
+   *          if files of the AIP already in the disposal bin are replaced
+   */
+  public static FSSnapshotUtils.Progress copyAIPToDisposalBin(AIP aip, String disposalConfirmationId,
+    boolean replaceExisting) throws RequestNotValidException, GenericException {
     StoragePath aipStoragePath = ModelUtils.getAIPStoragePath(aip.getId());
     Path aipPath = FSUtils.getEntityPath(RodaCoreFactory.getStoragePath(), aipStoragePath);
 
@@ -64,11 +70,15 @@ public class DisposalConfirmationPluginUtils {
     Path disposalBinPath = RodaCoreFactory.getDisposalBinDirectoryPath().resolve(disposalConfirmationId)
       .resolve(RodaConstants.CORE_AIP_FOLDER).resolve(aipStoragePath.getName());
 
-    RsyncUtils.executeRsync(aipPath, disposalBinPath, rsyncOptions);
+    return FSSnapshotUtils.snapshot(aipPath, disposalBinPath, replaceExisting);
   }
 
-  public static void copyAIPFromDisposalBin(String aipId, String disposalConfirmationId, List<String> rsyncOptions)
-    throws RequestNotValidException, GenericException, CommandException {
+  /**
+   * Snapshots an AIP from the disposal bin back into the storage, replacing the
+   * files it has there.
+   */
+  public static FSSnapshotUtils.Progress copyAIPFromDisposalBin(String aipId, String disposalConfirmationId)
+    throws RequestNotValidException, GenericException {
     StoragePath aipStoragePath = ModelUtils.getAIPStoragePath(aipId);
     Path aipPath = FSUtils.getEntityPath(RodaCoreFactory.getStoragePath(), aipStoragePath);
 
@@ -76,7 +86,7 @@ public class DisposalConfirmationPluginUtils {
     Path disposalBinPath = RodaCoreFactory.getDisposalBinDirectoryPath().resolve(disposalConfirmationId)
       .resolve(RodaConstants.CORE_AIP_FOLDER).resolve(aipStoragePath.getName());
 
-    RsyncUtils.executeRsync(disposalBinPath, aipPath, rsyncOptions);
+    return FSSnapshotUtils.snapshot(disposalBinPath, aipPath, true);
   }
 
   public static DisposalConfirmation getDisposalConfirmation(String confirmationId, String title, long storageSize,
@@ -33,7 +33,7 @@ import org.roda.core.plugins.RODAObjectProcessingLogic;
 import org.roda.core.plugins.orchestrate.JobPluginInfo;
 import org.roda.core.plugins.PluginHelper;
 import org.roda.core.storage.StorageService;
-import org.roda.core.storage.fs.FSUtils;
+import org.roda.core.storage.fs.FSSnapshotUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -120,7 +120,7 @@ public class PermanentlyDeleteRecordsPlugin extends AbstractPlugin<DisposalConfi
     try {
       // disposal-bin/<disposalConfirmationId>/*
       Path disposalBinPath = RodaCoreFactory.getDisposalBinDirectoryPath().resolve(confirmation.getId());
-      FSUtils.deletePath(disposalBinPath);
+      FSSnapshotUtils.deleteSnapshot(disposalBinPath);
 
       confirmation.setState(DisposalConfirmationState.PERMANENTLY_DELETED);
 
@@ -42,8 +42,7 @@ import org.roda.core.plugins.orchestrate.JobPluginInfo;
 import org.roda.core.plugins.PluginHelper;
 import org.roda.core.storage.Binary;
 import org.roda.core.storage.StorageService;
-import org.roda.core.storage.fs.FSUtils;
-import org.roda.core.util.CommandException;
+import org.roda.core.storage.fs.FSSnapshotUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -146,7 +145,7 @@ public class RecoverDisposalConfirmationExecutionFailedPlugin extends AbstractPl
 
         Path disposalBinPath = RodaCoreFactory.getDisposalBinDirectoryPath().resolve(disposalConfirmation.getId());
         try {
-          FSUtils.deletePath(disposalBinPath);
+          FSSnapshotUtils.deleteSnapshot(disposalBinPath);
         } catch (NotFoundException | GenericException e) {
           LOGGER.error("Failed to delete disposal confirmation from disposal bin: {}", e.getMessage(), e);
         }
@@ -219,8 +218,7 @@ public class RecoverDisposalConfirmationExecutionFailedPlugin extends AbstractPl
       // Check if AIP exists in disposal bin
       if (DisposalConfirmationPluginUtils.aipExistsInDisposalBin(aipEntry.getAipId(), disposalConfirmation.getId())) {
         // Copy AIP from disposal bin to storage
-        DisposalConfirmationPluginUtils.copyAIPFromDisposalBin(aipEntry.getAipId(), disposalConfirmation.getId(),
-          Collections.singletonList("-r"));
+        DisposalConfirmationPluginUtils.copyAIPFromDisposalBin(aipEntry.getAipId(), disposalConfirmation.getId());
 
         // reindex the AIP
         AIP aip = model.retrieveAIP(aipEntry.getAipId());
@@ -238,7 +236,7 @@ public class RecoverDisposalConfirmationExecutionFailedPlugin extends AbstractPl
       }
 
       reportItem.setPluginDetails(outcomeText);
-    } catch (CommandException | RequestNotValidException | GenericException | NotFoundException
+    } catch (RequestNotValidException | GenericException | NotFoundException
       | AuthorizationDeniedException e) {
       processedWithErrors = true;
       LOGGER.error("Failed to recover AIP '{}': {}", aipEntry.getAipId(), e.getMessage(), e);
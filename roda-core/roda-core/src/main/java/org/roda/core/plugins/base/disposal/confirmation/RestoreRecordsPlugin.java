@@ -44,8 +44,7 @@ import org.roda.core.plugins.orchestrate.JobPluginInfo;
 import org.roda.core.plugins.PluginHelper;
 import org.roda.core.storage.Binary;
 import org.roda.core.storage.StorageService;
-import org.roda.core.storage.fs.FSUtils;
-import org.roda.core.util.CommandException;
+import org.roda.core.storage.fs.FSSnapshotUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -162,7 +161,7 @@ public class RestoreRecordsPlugin extends AbstractPlugin<DisposalConfirmation> {
       // disposal-bin/<disposalConfirmationId>/*
       Path disposalBinPath = RodaCoreFactory.getDisposalBinDirectoryPath().resolve(disposalConfirmation.getId());
       try {
-        FSUtils.deletePath(disposalBinPath);
+        FSSnapshotUtils.deleteSnapshot(disposalBinPath);
       } catch (NotFoundException | GenericException e) {
         LOGGER.error("Failed to delete disposal confirmation from disposal bin: {}", e.getMessage(), e);
       }
@@ -210,8 +209,9 @@ public class RestoreRecordsPlugin extends AbstractPlugin<DisposalConfirmation> {
 
     try {
       // Copy AIP from disposal bin to storage
-      DisposalConfirmationPluginUtils.copyAIPFromDisposalBin(aipEntry.getAipId(), disposalConfirmation.getId(),
-        Collections.singletonList("-r"));
+      FSSnapshotUtils.Progress progress = DisposalConfirmationPluginUtils.copyAIPFromDisposalBin(aipEntry.getAipId(),
+        disposalConfirmation.getId());
+      LOGGER.info("Copied AIP {} from disposal bin: {}", aipEntry.getAipId(), progress);
 
       // reindex the AIP
       AIP aip = model.retrieveAIP(aipEntry.getAipId());
@@ -228,7 +228,7 @@ public class RestoreRecordsPlugin extends AbstractPlugin<DisposalConfirmation> {
 
       reportItem.setPluginDetails(outcomeText);
 
-    } catch (CommandException | RequestNotValidException | GenericException | NotFoundException
+    } catch (RequestNotValidException | GenericException | NotFoundException
       | AuthorizationDeniedException e) {
       LOGGER.error("Failed to restore AIP '{}': {}", aipEntry.getAipId(), e.getMessage(), e);
       pluginState = PluginState.FAILURE;
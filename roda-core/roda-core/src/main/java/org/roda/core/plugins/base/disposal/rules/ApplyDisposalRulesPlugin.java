@@ -23,6 +23,10 @@ import org.roda.core.data.exceptions.InvalidParameterException;
 import org.roda.core.data.exceptions.NotFoundException;
 import org.roda.core.data.exceptions.RequestNotValidException;
 import org.roda.core.data.v2.LiteOptionalWithCause;
+import org.roda.core.data.v2.index.filter.Filter;
+import org.roda.core.data.v2.index.filter.OneOfManyFilterParameter;
+import org.roda.core.data.v2.index.select.SelectedItemsFilter;
+import org.roda.core.data.v2.index.select.SelectedItemsList;
 import org.roda.core.data.v2.ip.AIP;
 import org.roda.core.data.v2.ip.AIPDisposalScheduleAssociationType;
 import org.roda.core.data.v2.ip.disposal.DisposalRule;
@@ -40,6 +44,7 @@ import org.roda.core.plugins.Plugin;
 import org.roda.core.plugins.PluginException;
 import org.roda.core.plugins.RODAObjectsProcessingLogic;
 import org.roda.core.plugins.orchestrate.JobPluginInfo;
+import org.roda.core.plugins.orchestrate.JobsHelper;
 import org.roda.core.plugins.PluginHelper;
 import org.roda.core.storage.StorageService;
 import org.slf4j.Logger;
@@ -52,6 +57,7 @@ public class ApplyDisposalRulesPlugin extends AbstractPlugin<AIP> {
   private static final Logger LOGGER = LoggerFactory.getLogger(ApplyDisposalRulesPlugin.class);
 
   private boolean overrideManualAssociations = false;
+  private boolean dryRun = false;
 
   private static final Map<String, PluginParameter> pluginParameters = new HashMap<>();
 
@@ -60,12 +66,17 @@ public class ApplyDisposalRulesPlugin extends AbstractPlugin<AIP> {
       new PluginParameter(RodaConstants.PLUGIN_PARAMS_DISPOSAL_SCHEDULE_OVERWRITE_MANUAL, "Override disposal schedule",
         PluginParameter.PluginParameterType.BOOLEAN, "false", true, false,
         "Overrides disposal schedules manually associated"));
+    pluginParameters.put(RodaConstants.PLUGIN_PARAMS_DISPOSAL_RULES_DRY_RUN,
+      new PluginParameter(RodaConstants.PLUGIN_PARAMS_DISPOSAL_RULES_DRY_RUN, "Dry run",
+        PluginParameter.PluginParameterType.BOOLEAN, "false", false, false,
+        "Reports how many AIPs each disposal rule would match without associating any disposal schedule"));
   }
 
   @Override
   public List<PluginParameter> getParameters() {
     ArrayList<PluginParameter> parameters = new ArrayList<>();
     parameters.add(pluginParameters.get(RodaConstants.PLUGIN_PARAMS_DISPOSAL_SCHEDULE_OVERWRITE_MANUAL));
+    parameters.add(pluginParameters.get(RodaConstants.PLUGIN_PARAMS_DISPOSAL_RULES_DRY_RUN));
     return parameters;
   }
 
@@ -76,6 +87,9 @@ public class ApplyDisposalRulesPlugin extends AbstractPlugin<AIP> {
       overrideManualAssociations = Boolean
         .parseBoolean(parameters.get(RodaConstants.PLUGIN_PARAMS_DISPOSAL_SCHEDULE_OVERWRITE_MANUAL));
     }
+    if (parameters.containsKey(RodaConstants.PLUGIN_PARAMS_DISPOSAL_RULES_DRY_RUN)) {
+      dryRun = Boolean.parseBoolean(parameters.get(RodaConstants.PLUGIN_PARAMS_DISPOSAL_RULES_DRY_RUN));
+    }
   }
 
   @Override
@@ -134,10 +148,42 @@ public class ApplyDisposalRulesPlugin extends AbstractPlugin<AIP> {
   @Override
   public Report beforeAllExecute(IndexService index, ModelService model, StorageService storage)
     throws PluginException {
-    // do nothing
+    if (dryRun) {
+      reportRuleMatches(index, model);
+    }
     return null;
   }
 
+  private void reportRuleMatches(IndexService index, ModelService model) {
+    try {
+      DisposalRules disposalRules = model.listDisposalRules();
+      Collections.sort(disposalRules.getObjects());
+
+      Job job = PluginHelper.getJob(this, index);
+      Filter scope;
+      if (job.getSourceObjects() instanceof SelectedItemsFilter<?> selectedItemsFilter) {
+        scope = new Filter(selectedItemsFilter.getFilter());
+      } else if (job.getSourceObjects() instanceof SelectedItemsList<?> selectedItemsList) {
+        scope = new Filter(new OneOfManyFilterParameter(RodaConstants.INDEX_UUID, selectedItemsList.getIds()));
+      } else {
+        scope = new Filter();
+      }
+
+      StringBuilder details = new StringBuilder("Dry run, no disposal schedule was associated.");
+      for (Map.Entry<DisposalRule, Long> entry : ApplyDisposalRulesPluginUtils
+        .countRuleMatches(disposalRules, scope, overrideManualAssociations, index).entrySet()) {
+        details.append(System.lineSeparator()).append("Disposal rule '").append(entry.getKey().getTitle())
+          .append("' would associate disposal schedule '").append(entry.getKey().getDisposalScheduleName())
+          .append("' to ").append(entry.getValue()).append(" AIP(s)");
+      }
+      LOGGER.info("{}", details);
+      JobsHelper.updateJobStateDetails(this, model, Optional.of(details.toString()));
+    } catch (RequestNotValidException | GenericException | AuthorizationDeniedException | NotFoundException
+      | IOException e) {
+      LOGGER.error("Failed to count disposal rule matches: {}", e.getMessage(), e);
+    }
+  }
+
   @Override
   public Report execute(IndexService index, ModelService model, StorageService storage,
     List<LiteOptionalWithCause> liteList) throws PluginException {
@@ -190,69 +236,87 @@ public class ApplyDisposalRulesPlugin extends AbstractPlugin<AIP> {
 
   private void processDisposalRules(List<AIP> aips, DisposalRules disposalRules, IndexService index, ModelService model,
     Report report, Job cachedJob, JobPluginInfo jobPluginInfo) {
+    // Check if manual associated schedules are to be overridden
+    List<AIP> candidates = new ArrayList<>();
+    for (AIP aip : aips) {
+      if (overrideManualAssociations
+        || !AIPDisposalScheduleAssociationType.MANUAL.equals(aip.getDisposalScheduleAssociationType())) {
+        candidates.add(aip);
+      }
+    }
+
+    // match all AIPs of the block at once, a query per rule instead of per AIP
+    Map<String, DisposalRule> rulesUsed = Collections.emptyMap();
+    String matchingError = null;
+    try {
+      rulesUsed = ApplyDisposalRulesPluginUtils.applyRules(candidates, disposalRules, index);
+    } catch (GenericException e) {
+      LOGGER.error("Failed to match disposal rules to AIPs: {}", e.getMessage(), e);
+      matchingError = e.getMessage();
+    }
+
     for (AIP aip : aips) {
       LOGGER.debug("Processing AIP: {}", aip.getId());
 
       Report reportItem = PluginHelper.initPluginReportItem(this, aip.getId(), AIP.class);
       PluginHelper.updatePartialJobReport(this, model, reportItem, false, cachedJob);
       PluginState state = PluginState.SUCCESS;
-      Optional<DisposalRule> disposalRuleUsed;
+      DisposalRule disposalRuleUsed = rulesUsed.get(aip.getId());
       String outcomeDetailsText = "";
 
-      try {
-        // Check if manual associated schedules are to be overridden
-        if (AIPDisposalScheduleAssociationType.MANUAL.equals(aip.getDisposalScheduleAssociationType())
-          && !overrideManualAssociations) {
-          state = PluginState.SKIPPED;
-          outcomeDetailsText = "Skipping associating disposal schedule to AIP '" + aip.getId()
-            + "' because the disposal schedule was manually associated";
-          reportItem.setPluginState(state).setPluginDetails(outcomeDetailsText);
-          jobPluginInfo.incrementObjectsProcessedWithSkipped();
-        } else {
-          disposalRuleUsed = ApplyDisposalRulesPluginUtils.applyRule(aip, disposalRules, index);
-
-          if (disposalRuleUsed.isPresent()) {
-            // Schedule was applied
-            try {
-              model.updateAIP(aip, cachedJob.getUsername());
-              outcomeDetailsText = "Disposal schedule '" + disposalRuleUsed.get().getDisposalScheduleName()
-                + "' was successfully associated to AIP '" + aip.getId() + "' via disposal rule '"
-                + disposalRuleUsed.get().getTitle() + "'";
-              reportItem.setPluginState(state).setPluginDetails(outcomeDetailsText);
-              jobPluginInfo.incrementObjectsProcessedWithSuccess();
-            } catch (GenericException | NotFoundException | RequestNotValidException | AuthorizationDeniedException e) {
-              LOGGER.error("Failed to associate disposal schedule to AIP {}: {}", aip.getId(), e.getMessage(), e);
-              state = PluginState.FAILURE;
-              reportItem.setPluginState(state).setPluginDetails(
-                "Failed to associate disposal schedule to AIP '" + aip.getId() + "': '" + e.getMessage() + "'");
-              jobPluginInfo.incrementObjectsProcessedWithFailure();
-            }
-          } else {
-            state = PluginState.SKIPPED;
-            outcomeDetailsText = "The AIP '" + aip.getId()
-              + "' did not match any disposal rule therefore the disposal schedule association was skipped";
-            reportItem.setPluginState(state).setPluginDetails(outcomeDetailsText);
-            jobPluginInfo.incrementObjectsProcessedWithSkipped();
-          }
-
-        }
-      } catch (GenericException | NotFoundException e) {
-        LOGGER.error("Failed to obtain index version of AIP '{}'", aip.getId(), e);
+      if (!candidates.contains(aip)) {
+        state = PluginState.SKIPPED;
+        outcomeDetailsText = "Skipping associating disposal schedule to AIP '" + aip.getId()
+          + "' because the disposal schedule was manually associated";
+        reportItem.setPluginState(state).setPluginDetails(outcomeDetailsText);
+        jobPluginInfo.incrementObjectsProcessedWithSkipped();
+      } else if (matchingError != null) {
         jobPluginInfo.incrementObjectsProcessedWithFailure();
         state = PluginState.FAILURE;
         reportItem.setPluginState(state)
-          .setPluginDetails("Error matching disposal rules to AIP '" + aip.getId() + "': " + e.getMessage());
+          .setPluginDetails("Error matching disposal rules to AIP '" + aip.getId() + "': " + matchingError);
+      } else if (disposalRuleUsed == null) {
+        state = PluginState.SKIPPED;
+        outcomeDetailsText = "The AIP '" + aip.getId()
+          + "' did not match any disposal rule therefore the disposal schedule association was skipped";
+        reportItem.setPluginState(state).setPluginDetails(outcomeDetailsText);
+        jobPluginInfo.incrementObjectsProcessedWithSkipped();
+      } else if (dryRun) {
+        state = PluginState.SKIPPED;
+        outcomeDetailsText = "Dry run: disposal schedule '" + disposalRuleUsed.getDisposalScheduleName()
+          + "' would be associated to AIP '" + aip.getId() + "' via disposal rule '" + disposalRuleUsed.getTitle()
+          + "'";
+        reportItem.setPluginState(state).setPluginDetails(outcomeDetailsText);
+        jobPluginInfo.incrementObjectsProcessedWithSkipped();
+      } else {
+        // Schedule was applied
+        try {
+          model.updateAIP(aip, cachedJob.getUsername());
+          outcomeDetailsText = "Disposal schedule '" + disposalRuleUsed.getDisposalScheduleName()
+            + "' was successfully associated to AIP '" + aip.getId() + "' via disposal rule '"
+            + disposalRuleUsed.getTitle() + "'";
+          reportItem.setPluginState(state).setPluginDetails(outcomeDetailsText);
+          jobPluginInfo.incrementObjectsProcessedWithSuccess();
+        } catch (GenericException | NotFoundException | RequestNotValidException | AuthorizationDeniedException e) {
+          LOGGER.error("Failed to associate disposal schedule to AIP {}: {}", aip.getId(), e.getMessage(), e);
+          state = PluginState.FAILURE;
+          reportItem.setPluginState(state).setPluginDetails(
+            "Failed to associate disposal schedule to AIP '" + aip.getId() + "': '" + e.getMessage() + "'");
+          jobPluginInfo.incrementObjectsProcessedWithFailure();
+        }
       }
 
       report.addReport(reportItem);
       PluginHelper.updatePartialJobReport(this, model, reportItem, true, cachedJob);
 
-      try {
-        PluginHelper.createPluginEvent(this, aip.getId(), model, index, null, null, state, outcomeDetailsText, true,
-          cachedJob);
-      } catch (ValidationException | RequestNotValidException | NotFoundException | GenericException
-        | AuthorizationDeniedException | AlreadyExistsException e) {
-        LOGGER.error("Error creating event: {}", e.getMessage(), e);
+      if (!dryRun) {
+        try {
+          PluginHelper.createPluginEvent(this, aip.getId(), model, index, null, null, state, outcomeDetailsText, true,
+            cachedJob);
+        } catch (ValidationException | RequestNotValidException | NotFoundException | GenericException
+          | AuthorizationDeniedException | AlreadyExistsException e) {
+          LOGGER.error("Error creating event: {}", e.getMessage(), e);
+        }
       }
     }
   }
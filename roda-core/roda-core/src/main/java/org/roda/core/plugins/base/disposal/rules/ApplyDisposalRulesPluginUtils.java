@@ -7,12 +7,27 @@
  */
 package org.roda.core.plugins.base.disposal.rules;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
+import org.roda.core.data.common.RodaConstants;
 import org.roda.core.data.exceptions.GenericException;
 import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.RequestNotValidException;
+import org.roda.core.data.v2.index.filter.Filter;
+import org.roda.core.data.v2.index.filter.FilterParameter;
+import org.roda.core.data.v2.index.filter.NotSimpleFilterParameter;
+import org.roda.core.data.v2.index.filter.OrFiltersParameters;
+import org.roda.core.data.v2.index.filter.SimpleFilterParameter;
 import org.roda.core.data.v2.ip.AIP;
 import org.roda.core.data.v2.ip.AIPDisposalScheduleAssociationType;
 import org.roda.core.data.v2.ip.IndexedAIP;
@@ -22,8 +37,14 @@ import org.roda.core.data.v2.ip.disposal.DisposalRules;
 import org.roda.core.data.v2.ip.disposal.aipMetadata.DisposalAIPMetadata;
 import org.roda.core.data.v2.ip.disposal.aipMetadata.DisposalScheduleAIPMetadata;
 import org.roda.core.index.IndexService;
+import org.roda.core.index.utils.IterableIndexResult;
 
 /**
+ * Disposal rules are evaluated in order and the first one that matches an AIP
+ * is the one used. The fields the rules look at are read for a set of AIPs
+ * with a single index request instead of one per AIP and rule, and the rules
+ * are compiled into index filters to count their matches in a dry run.
+ *
  * @author Miguel Guimarães <mguimaraes@keep.pt>
  */
 public class ApplyDisposalRulesPluginUtils {
@@ -33,50 +54,166 @@ public class ApplyDisposalRulesPluginUtils {
 
   public static Optional<DisposalRule> applyRule(AIP aip, DisposalRules disposalRules, IndexService index)
     throws NotFoundException, GenericException {
+    return Optional.ofNullable(applyRules(Collections.singletonList(aip), disposalRules, index).get(aip.getId()));
+  }
+
+  /**
+   * Finds the first matching rule of each AIP and sets its disposal schedule
+   * (without updating the AIP in the model).
+   *
+   * @return the rule used by AIP id, for the AIPs that matched a rule
+   */
+  public static Map<String, DisposalRule> applyRules(List<AIP> aips, DisposalRules disposalRules, IndexService index)
+    throws GenericException {
+    Map<String, AIP> remaining = new LinkedHashMap<>();
+    for (AIP aip : aips) {
+      remaining.put(aip.getId(), aip);
+    }
 
+    Map<String, IndexedAIP> indexedAIPs = retrieveMetadataFields(remaining.keySet(), disposalRules, index);
+    Map<String, DisposalRule> ret = new HashMap<>();
     for (DisposalRule rule : disposalRules.getObjects()) {
-      Optional<DisposalRule> used = Optional.empty();
-      if (ConditionType.IS_CHILD_OF.equals(rule.getType())) {
-        used = conditionTypeChildOf(aip, rule);
-      } else if (ConditionType.METADATA_FIELD.equals(rule.getType())) {
-        used = conditionTypeMetadataValue(aip, rule, index);
+      if (remaining.isEmpty()) {
+        break;
       }
 
-      if (used.isPresent()) {
-        return used;
+      for (String aipId : matchRule(remaining, indexedAIPs, rule)) {
+        AIP aip = remaining.remove(aipId);
+        aip.setDisposal(getDisposalAipMetadata(aip, rule));
+        ret.put(aipId, rule);
       }
     }
 
-    return Optional.empty();
+    return ret;
   }
 
-  private static Optional<DisposalRule> conditionTypeChildOf(AIP aip, DisposalRule rule) {
-    if (aip.getParentId() != null && aip.getParentId().equals(rule.getConditionKey())) {
-      DisposalAIPMetadata disposal = getDisposalAipMetadata(aip, rule);
-      aip.setDisposal(disposal);
-      return Optional.of(rule);
+  /**
+   * Gets, with a single real-time get (the AIPs may have been changed by
+   * previous ingest steps and not be searchable yet), the fields used by the
+   * metadata field rules.
+   */
+  private static Map<String, IndexedAIP> retrieveMetadataFields(Set<String> aipIds, DisposalRules disposalRules,
+    IndexService index) throws GenericException {
+    Set<String> fieldsToReturn = new LinkedHashSet<>();
+    fieldsToReturn.add(RodaConstants.INDEX_UUID);
+    for (DisposalRule rule : disposalRules.getObjects()) {
+      if (ConditionType.METADATA_FIELD.equals(rule.getType())) {
+        fieldsToReturn.add(rule.getConditionKey());
+      }
     }
 
-    return Optional.empty();
+    Map<String, IndexedAIP> ret = new HashMap<>();
+    if (fieldsToReturn.size() > 1 && !aipIds.isEmpty()) {
+      try {
+        for (IndexedAIP indexedAIP : index.retrieve(IndexedAIP.class, new ArrayList<>(aipIds),
+          new ArrayList<>(fieldsToReturn))) {
+          ret.put(indexedAIP.getId(), indexedAIP);
+        }
+      } catch (NotFoundException e) {
+        throw new GenericException("Error retrieving AIPs to match disposal rules", e);
+      }
+    }
+    return ret;
   }
 
-  private static Optional<DisposalRule> conditionTypeMetadataValue(AIP aip, DisposalRule rule, IndexService index)
-    throws NotFoundException, GenericException {
+  private static Set<String> matchRule(Map<String, AIP> aips, Map<String, IndexedAIP> indexedAIPs,
+    DisposalRule rule) {
+    Set<String> ret = new LinkedHashSet<>();
+    if (ConditionType.IS_CHILD_OF.equals(rule.getType())) {
+      // the parent is known without asking the index
+      for (AIP aip : aips.values()) {
+        if (aip.getParentId() != null && aip.getParentId().equals(rule.getConditionKey())) {
+          ret.add(aip.getId());
+        }
+      }
+    } else if (ConditionType.METADATA_FIELD.equals(rule.getType())) {
+      SimpleFilterParameter ruleParameter = getRuleFilterParameter(rule);
+      for (String aipId : aips.keySet()) {
+        IndexedAIP indexedAIP = indexedAIPs.get(aipId);
+        if (indexedAIP != null && hasValue(indexedAIP, ruleParameter)) {
+          ret.add(aipId);
+        }
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Counts, without changing anything, how many AIPs would be associated to a
+   * disposal schedule by each rule. AIPs matched by a rule are not counted for
+   * the rules that come after it.
+   *
+   * @param scope
+   *          the AIPs to consider
+   * @param overrideManualAssociations
+   *          if false, AIPs with a manually associated disposal schedule are not
+   *          counted
+   * @return number of AIPs matched by each rule, in rule order
+   */
+  public static Map<DisposalRule, Long> countRuleMatches(DisposalRules disposalRules, Filter scope,
+    boolean overrideManualAssociations, IndexService index) throws GenericException, RequestNotValidException {
+    Map<DisposalRule, Long> ret = new LinkedHashMap<>();
+    Map<DisposalRule, SimpleFilterParameter> ruleParameters = new LinkedHashMap<>();
+    Set<String> fieldsToReturn = new LinkedHashSet<>();
+    fieldsToReturn.add(RodaConstants.INDEX_UUID);
+    for (DisposalRule rule : disposalRules.getObjects()) {
+      ret.put(rule, 0L);
+      SimpleFilterParameter ruleParameter = getRuleFilterParameter(rule);
+      if (ruleParameter != null) {
+        ruleParameters.put(rule, ruleParameter);
+        fieldsToReturn.add(ruleParameter.getName());
+      }
+    }
 
-    IndexedAIP indexedAIP = index.retrieve(IndexedAIP.class, aip.getId(),
-      Collections.singletonList(rule.getConditionKey()));
+    if (ruleParameters.isEmpty()) {
+      return ret;
+    }
 
-    Map<String, Object> fields = indexedAIP.getFields();
-    Object o = fields.get(rule.getConditionKey());
-    String metadataValue = (String) o;
+    // only AIPs that may match a rule are read, each one is then counted for
+    // the first rule it really matches
+    Filter filter = new Filter(scope);
+    if (!overrideManualAssociations) {
+      filter.add(new NotSimpleFilterParameter(RodaConstants.AIP_DISPOSAL_SCHEDULE_ASSOCIATION_TYPE,
+        AIPDisposalScheduleAssociationType.MANUAL.name()));
+    }
+    filter.add(new OrFiltersParameters(new ArrayList<FilterParameter>(ruleParameters.values())));
+
+    try (IterableIndexResult<IndexedAIP> result = index.findAll(IndexedAIP.class, filter, false,
+      new ArrayList<>(fieldsToReturn))) {
+      for (IndexedAIP indexedAIP : result) {
+        for (Map.Entry<DisposalRule, SimpleFilterParameter> entry : ruleParameters.entrySet()) {
+          if (hasValue(indexedAIP, entry.getValue())) {
+            ret.merge(entry.getKey(), 1L, Long::sum);
+            break;
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new GenericException("Error counting disposal rule matches", e);
+    }
+    return ret;
+  }
 
-    if (metadataValue != null && metadataValue.equals(rule.getConditionValue())) {
-      DisposalAIPMetadata disposal = getDisposalAipMetadata(aip, rule);
-      aip.setDisposal(disposal);
-      return Optional.of(rule);
+  /**
+   * The index filter of a rule also matches analysed fields (e.g. title) whose
+   * value only contains the rule value or differs in case, so the value of the
+   * field must still be compared.
+   */
+  private static boolean hasValue(IndexedAIP indexedAIP, SimpleFilterParameter ruleParameter) {
+    Object value = indexedAIP.getFields().get(ruleParameter.getName());
+    if (value instanceof Collection) {
+      return ((Collection<?>) value).contains(ruleParameter.getValue());
     }
+    return ruleParameter.getValue() != null && ruleParameter.getValue().equals(value);
+  }
 
-    return Optional.empty();
+  private static SimpleFilterParameter getRuleFilterParameter(DisposalRule rule) {
+    if (ConditionType.IS_CHILD_OF.equals(rule.getType())) {
+      return new SimpleFilterParameter(RodaConstants.AIP_PARENT_ID, rule.getConditionKey());
+    } else if (ConditionType.METADATA_FIELD.equals(rule.getType())) {
+      return new SimpleFilterParameter(rule.getConditionKey(), rule.getConditionValue());
+    }
+    return null;
   }
 
   private static DisposalAIPMetadata getDisposalAipMetadata(AIP aip, DisposalRule rule) {
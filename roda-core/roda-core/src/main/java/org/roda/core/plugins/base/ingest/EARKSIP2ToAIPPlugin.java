@@ -17,7 +17,7 @@ import java.util.Map;
 import java.util.Optional;
 
 import org.apache.commons.io.FilenameUtils;
-import org.roda.core.RodaCoreFactory;
+import org.apache.commons.lang3.StringUtils;
 import org.roda.core.data.common.RodaConstants;
 import org.roda.core.data.exceptions.AlreadyExistsException;
 import org.roda.core.data.exceptions.AuthorizationDeniedException;
@@ -140,9 +140,14 @@ public class EARKSIP2ToAIPPlugin extends SIPToAIPPlugin {
     Job cachedJob, Optional<String> computedSearchScope, boolean forceSearchScope, Path jobWorkingDirectory) {
     SIP sip = null;
     AIP aip = null;
+    Path extractionDirectory = null;
 
     try {
-      sip = new EARKSIP().parse(earkSIPPath, FSUtils.createRandomDirectory(jobWorkingDirectory));
+      long parseStart = System.nanoTime();
+      extractionDirectory = FSUtils.createRandomDirectory(jobWorkingDirectory);
+      sip = new EARKSIP().parse(earkSIPPath, extractionDirectory);
+      SIPFileMaterializer materializer = SIPFileMaterializer.forSIP(sip, extractionDirectory);
+      materializer.addStageTime(SIPFileMaterializer.STAGE_PARSE, System.nanoTime() - parseStart);
       reportItem.setSourceObjectOriginalIds(sip.getIds());
       reportItem.setIngestType(sip.getStatus().toString());
 
@@ -151,9 +156,9 @@ public class EARKSIP2ToAIPPlugin extends SIPToAIPPlugin {
         if (IPEnums.IPStatus.NEW == sip.getStatus()) {
           parentId = PluginHelper.getComputedParent(model, index, sip.getAncestors(), computedSearchScope,
             forceSearchScope, cachedJob.getId());
-          aip = processNewSIP(index, model, reportItem, sip, parentId, transferredResource.getUUID());
+          aip = processNewSIP(index, model, reportItem, sip, parentId, transferredResource.getUUID(), materializer);
         } else if (IPEnums.IPStatus.UPDATE == sip.getStatus()) {
-          aip = processUpdateSIP(index, model, sip, computedSearchScope, forceSearchScope);
+          aip = processUpdateSIP(index, model, sip, computedSearchScope, forceSearchScope, materializer);
         } else {
           throw new GenericException("Unknown IP Status: " + sip.getStatus());
         }
@@ -171,7 +176,11 @@ public class EARKSIP2ToAIPPlugin extends SIPToAIPPlugin {
           reportItem.setPluginDetails(String.format("Parent with id '%s' not found", parentId));
         }
         createWellformedEventSuccess(model, index, transferredResource, aip, cachedJob);
-        LOGGER.debug("Done with converting {} to AIP {}", earkSIPPath, aip.getId());
+        LOGGER.debug("Done with converting {} to AIP {}. {}", earkSIPPath, aip.getId(), materializer.getSummary());
+        if (StringUtils.isNotBlank(reportItem.getPluginDetails())) {
+          reportItem.addPluginDetails("\n");
+        }
+        reportItem.addPluginDetails(materializer.getSummary());
       } else {
         reportItem.setPluginState(PluginState.FAILURE).setHtmlPluginDetails(true)
           .setPluginDetails(sip.getValidationReport().toHtml(true, true, true, false, false));
@@ -182,28 +191,24 @@ public class EARKSIP2ToAIPPlugin extends SIPToAIPPlugin {
       reportItem.setPluginState(PluginState.FAILURE).setPluginDetails(e.getMessage());
       LOGGER.error("Error converting {} to AIP", earkSIPPath, e);
     } finally {
-      if (sip != null) {
-        Path transferredResourcesAbsolutePath = RodaCoreFactory.getTransferredResourcesScanner().getBasePath()
-          .toAbsolutePath();
-        if (!sip.getBasePath().toAbsolutePath().toString().startsWith(transferredResourcesAbsolutePath.toString())) {
-          FSUtils.deletePathQuietly(sip.getBasePath());
-        }
+      if (extractionDirectory != null) {
+        FSUtils.deletePathQuietly(extractionDirectory);
       }
     }
   }
 
   private AIP processNewSIP(IndexService index, ModelService model, Report reportItem, SIP sip,
-    Optional<String> computedParentId, String ingestSIPUUID)
+    Optional<String> computedParentId, String ingestSIPUUID, SIPFileMaterializer materializer)
     throws NotFoundException, GenericException, RequestNotValidException, AuthorizationDeniedException,
     AlreadyExistsException, ValidationException, LockingException {
     String jobUsername = PluginHelper.getJobUsername(this, index);
     return EARKSIP2ToAIPPluginUtils.earkSIPToAIP(sip, jobUsername, model, sip.getIds(), reportItem.getJobId(),
-      computedParentId, ingestSIPUUID, this);
+      computedParentId, ingestSIPUUID, this, materializer);
   }
 
   private AIP processUpdateSIP(IndexService index, ModelService model, SIP sip, Optional<String> searchScope,
-    boolean forceSearchScope) throws GenericException, RequestNotValidException, NotFoundException,
-    AuthorizationDeniedException, AlreadyExistsException, ValidationException, LockingException {
+    boolean forceSearchScope, SIPFileMaterializer materializer) throws GenericException, RequestNotValidException,
+    NotFoundException, AuthorizationDeniedException, AlreadyExistsException, ValidationException, LockingException {
     String searchScopeString = searchScope.orElse(null);
 
     List<FilterParameter> possibleStates = new ArrayList<>();
@@ -244,7 +249,7 @@ public class EARKSIP2ToAIPPlugin extends SIPToAIPPlugin {
 
     // Update the AIP
     return EARKSIP2ToAIPPluginUtils.earkSIPToAIPUpdate(sip, indexedAIP, model, jobUsername, searchScope, jobId, null,
-      this);
+      this, materializer);
   }
 
   @Override
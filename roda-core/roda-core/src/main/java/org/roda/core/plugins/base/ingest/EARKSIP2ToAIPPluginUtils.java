@@ -9,6 +9,7 @@ package org.roda.core.plugins.base.ingest;
 
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -71,6 +72,14 @@ public class EARKSIP2ToAIPPluginUtils {
     String ingestJobId, Optional<String> parentId, String ingestSIPUUID, Plugin<?> plugin)
     throws RequestNotValidException, NotFoundException, GenericException, AlreadyExistsException,
     AuthorizationDeniedException, ValidationException, LockingException {
+    return earkSIPToAIP(sip, username, model, ingestSIPIds, ingestJobId, parentId, ingestSIPUUID, plugin,
+      SIPFileMaterializer.forSIP(sip));
+  }
+
+  public static AIP earkSIPToAIP(SIP sip, String username, ModelService model, List<String> ingestSIPIds,
+    String ingestJobId, Optional<String> parentId, String ingestSIPUUID, Plugin<?> plugin,
+    SIPFileMaterializer materializer) throws RequestNotValidException, NotFoundException, GenericException,
+    AlreadyExistsException, AuthorizationDeniedException, ValidationException, LockingException {
 
     AIPState state = AIPState.INGEST_PROCESSING;
     Permissions permissions = new Permissions();
@@ -84,11 +93,12 @@ public class EARKSIP2ToAIPPluginUtils {
     PluginHelper.acquireObjectLock(aip, plugin);
 
     // process IP information
-    processIPInformation(model, sip, aip.getId(), notify, false, username);
+    processIPInformation(model, sip, aip.getId(), notify, false, username, materializer);
 
     // process IPRepresentation information
     for (IPRepresentation representation : sip.getRepresentations()) {
-      processIPRepresentationInformation(model, representation, aip.getId(), notify, false, username, null);
+      processIPRepresentationInformation(model, representation, aip.getId(), notify, false, username, null,
+        materializer);
     }
 
     // INFO 20190509 hsilva: this is required as the previous instructions
@@ -109,6 +119,14 @@ public class EARKSIP2ToAIPPluginUtils {
     Optional<String> searchScope, String ingestJobId, Report reportItem, Plugin<?> plugin)
     throws RequestNotValidException, NotFoundException, GenericException, AlreadyExistsException,
     AuthorizationDeniedException, ValidationException, LockingException {
+    return earkSIPToAIPUpdate(sip, indexedAIP, model, username, searchScope, ingestJobId, reportItem, plugin,
+      SIPFileMaterializer.forSIP(sip));
+  }
+
+  public static AIP earkSIPToAIPUpdate(SIP sip, IndexedAIP indexedAIP, ModelService model, String username,
+    Optional<String> searchScope, String ingestJobId, Report reportItem, Plugin<?> plugin,
+    SIPFileMaterializer materializer) throws RequestNotValidException, NotFoundException, GenericException,
+    AlreadyExistsException, AuthorizationDeniedException, ValidationException, LockingException {
     boolean notify = false;
     AIP aip;
 
@@ -120,11 +138,12 @@ public class EARKSIP2ToAIPPluginUtils {
     }
 
     // process IP information
-    processIPInformation(model, sip, indexedAIP.getId(), notify, true, username);
+    processIPInformation(model, sip, indexedAIP.getId(), notify, true, username, materializer);
 
     // process IPRepresentation information
     for (IPRepresentation representation : sip.getRepresentations()) {
-      processIPRepresentationInformation(model, representation, indexedAIP.getId(), notify, true, username, reportItem);
+      processIPRepresentationInformation(model, representation, indexedAIP.getId(), notify, true, username, reportItem,
+        materializer);
     }
 
     aip = model.retrieveAIP(indexedAIP.getId());
@@ -144,8 +163,10 @@ public class EARKSIP2ToAIPPluginUtils {
   }
 
   private static void processIPInformation(ModelService model, SIP sip, String aipId, boolean notify, boolean update,
-    String username) throws RequestNotValidException, GenericException, AlreadyExistsException,
-    AuthorizationDeniedException, NotFoundException, ValidationException {
+    String username, SIPFileMaterializer materializer) throws RequestNotValidException, GenericException,
+    AlreadyExistsException, AuthorizationDeniedException, NotFoundException, ValidationException {
+    long start = System.nanoTime();
+
     // process descriptive metadata
     processDescriptiveMetadata(model, aipId, null, sip.getDescriptiveMetadata(), notify, update, username);
 
@@ -160,6 +181,8 @@ public class EARKSIP2ToAIPPluginUtils {
 
     // process schemas
     processSchemas(model, sip.getSchemas(), aipId, null, update);
+
+    materializer.addStageTime(SIPFileMaterializer.STAGE_METADATA, System.nanoTime() - start);
   }
 
   private static void processDescriptiveMetadata(ModelService model, String aipId, String representationId,
@@ -294,8 +317,10 @@ public class EARKSIP2ToAIPPluginUtils {
   }
 
   private static void processIPRepresentationInformation(ModelService model, IPRepresentation sr, String aipId,
-    boolean notify, boolean update, String username, Report reportItem) throws RequestNotValidException,
-    GenericException, AlreadyExistsException, AuthorizationDeniedException, NotFoundException, ValidationException {
+    boolean notify, boolean update, String username, Report reportItem, SIPFileMaterializer materializer)
+    throws RequestNotValidException, GenericException, AlreadyExistsException, AuthorizationDeniedException,
+    NotFoundException, ValidationException {
+    long start = System.nanoTime();
     String representationType = getType(sr);
     boolean isOriginal = RepresentationStatus.getORIGINAL().equals(sr.getStatus());
 
@@ -334,54 +359,41 @@ public class EARKSIP2ToAIPPluginUtils {
 
     // process representation files
     boolean hasShallowFile = false;
+    final String representationId = representation.getId();
+    List<IPFileInterface> dataFiles = new ArrayList<>();
+    List<File> writtenFiles = new ArrayList<>();
     for (IPFileInterface file : sr.getData()) {
-      List<String> directoryPath = null;
-      String fileId = null;
-      ContentPayload payload = null;
       if (file instanceof IPFileShallow) {
         if (((IPFileShallow) file).getFileLocation() != null) {
           // this is an actual shallow file
-          fileId = RodaConstants.RODA_MANIFEST_EXTERNAL_FILES;
-          directoryPath = file.getRelativeFolders();
-          payload = processIPFileShallow(aipId, representation.getId(), (IPFileShallow) file);
+          ContentPayload payload = processIPFileShallow(aipId, representationId, (IPFileShallow) file);
+          writtenFiles.add(createOrUpdateFile(model, aipId, representationId, file.getRelativeFolders(),
+            RodaConstants.RODA_MANIFEST_EXTERNAL_FILES, payload, notify, update, username));
           hasShallowFile = true;
         } else {
           // this is an empty folder
-          final StoragePath emptyDirectoryStoragePath = ModelUtils.getDirectoryStoragePath(aipId,
-            representation.getId(), file.getRelativeFolders());
+          final StoragePath emptyDirectoryStoragePath = ModelUtils.getDirectoryStoragePath(aipId, representationId,
+            file.getRelativeFolders());
           model.getStorage().createDirectory(emptyDirectoryStoragePath);
           // TODO jgomes 2022-03-09: Create model service method to create empty directory
         }
-
       } else {
-        fileId = file.getFileName();
-        directoryPath = file.getRelativeFolders();
-        payload = new FSPathContentPayload(file.getPath());
+        dataFiles.add(file);
       }
+    }
+    materializer.addStageTime(SIPFileMaterializer.STAGE_METADATA, System.nanoTime() - start);
 
-      if (payload != null) {
+    // data files are written in parallel
+    writtenFiles.addAll(materializer.materialize(dataFiles, (file, payload) -> createOrUpdateFile(model, aipId,
+      representationId, file.getRelativeFolders(), file.getFileName(), payload, notify, update, username)));
 
-        try {
-          final File createdFile = model.createFile(aipId, representation.getId(), directoryPath, fileId, payload,
-            username, notify);
-          if (reportItem != null && update) {
-            reportItem.getSipInformation().addFileData(aipId, IdUtils.getRepresentationId(representation), createdFile);
-          }
-        } catch (final AlreadyExistsException e) {
-          if (update) {
-            final File updatedFile = model.updateFile(aipId, representation.getId(), directoryPath, fileId, payload,
-              true, username, notify);
-            if (reportItem != null) {
-              reportItem.getSipInformation().addFileData(aipId, IdUtils.getRepresentationId(representation),
-                updatedFile);
-            }
-          } else {
-            throw e;
-          }
-        }
+    if (reportItem != null && update) {
+      for (File writtenFile : writtenFiles) {
+        reportItem.getSipInformation().addFileData(aipId, IdUtils.getRepresentationId(representation), writtenFile);
       }
     }
 
+    start = System.nanoTime();
     if (hasShallowFile) {
       model.changeRepresentationShallowFileFlag(aipId, representation.getId(), true, username, false);
     }
@@ -391,6 +403,22 @@ public class EARKSIP2ToAIPPluginUtils {
 
     // process representation schemas
     processSchemas(model, sr.getSchemas(), aipId, representation.getId(), false);
+    materializer.addStageTime(SIPFileMaterializer.STAGE_METADATA, System.nanoTime() - start);
+  }
+
+  private static File createOrUpdateFile(ModelService model, String aipId, String representationId,
+    List<String> directoryPath, String fileId, ContentPayload payload, boolean notify, boolean update, String username)
+    throws RequestNotValidException, GenericException, AlreadyExistsException, AuthorizationDeniedException,
+    NotFoundException {
+    try {
+      return model.createFile(aipId, representationId, directoryPath, fileId, payload, username, notify);
+    } catch (final AlreadyExistsException e) {
+      if (update) {
+        return model.updateFile(aipId, representationId, directoryPath, fileId, payload, true, username, notify);
+      } else {
+        throw e;
+      }
+    }
   }
 
   private static ContentPayload processIPFileShallow(String aipId, String representationId, IPFileShallow file)
@@ -0,0 +1,365 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.base.ingest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.common.FixityCache;
+import org.roda.core.data.exceptions.AlreadyExistsException;
+import org.roda.core.data.exceptions.AuthorizationDeniedException;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.RequestNotValidException;
+import org.roda.core.data.v2.ip.File;
+import org.roda.core.model.utils.ModelUtils;
+import org.roda.core.storage.ContentPayload;
+import org.roda.core.util.FileUtility;
+import org.roda_project.commons_ip2.model.IPFileInterface;
+import org.roda_project.commons_ip2.model.SIP;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the data files of a SIP into storage, in parallel and, when safe, by
+ * moving or hard linking them instead of copying. The fixity of each file is
+ * computed in the same pass and handed over to the PREMIS skeleton through the
+ * {@link FixityCache}. Time spent in each ingest stage is collected to be added
+ * to the job report.
+ *
+ * <p>
+ * Files of SIPs known to have been extracted into a folder created for them,
+ * which is deleted afterwards, may be moved. Files of any other SIP, e.g. a
+ * folder in the transfer area, are copied, unless hard links are allowed, in
+ * which case transfer area files must not be changed in place after the
+ * ingest.
+ * </p>
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+public class SIPFileMaterializer {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SIPFileMaterializer.class);
+
+  private static final String CONFIG_PREFIX = "core.ingest.materialization";
+  private static final int DEFAULT_THREADS = 4;
+
+  public static final String STAGE_PARSE = "parse";
+  public static final String STAGE_METADATA = "metadata";
+  public static final String STAGE_DATA = "data";
+
+  public enum Mode {
+    /** always copy */
+    COPY,
+    /** move files of extracted SIPs, copy otherwise */
+    AUTO,
+    /** move files of extracted SIPs, hard link otherwise */
+    LINK
+  }
+
+  private static ExecutorService executor;
+  private static int threads;
+
+  private final Mode mode;
+  private final boolean temporarySource;
+  private final List<String> fixityAlgorithms;
+
+  private final Map<String, Long> stageTimes = Collections.synchronizedMap(new LinkedHashMap<>());
+  private final AtomicInteger movedFiles = new AtomicInteger(0);
+  private final AtomicInteger linkedFiles = new AtomicInteger(0);
+  private final AtomicInteger copiedFiles = new AtomicInteger(0);
+  private final AtomicLong bytes = new AtomicLong(0);
+
+  public SIPFileMaterializer(Mode mode, boolean temporarySource, List<String> fixityAlgorithms) {
+    this.mode = mode;
+    this.temporarySource = temporarySource;
+    this.fixityAlgorithms = fixityAlgorithms;
+  }
+
+  /**
+   * Materializer with the configured mode and fixity algorithms for the given
+   * SIP, whose files are never moved.
+   */
+  public static SIPFileMaterializer forSIP(SIP sip) {
+    return forSIP(sip, null);
+  }
+
+  /**
+   * Materializer with the configured mode and fixity algorithms for the given
+   * SIP.
+   *
+   * @param extractionDirectory
+   *          the folder created for the parser to extract the SIP into, and
+   *          deleted after the ingest, or null if there is none
+   */
+  public static SIPFileMaterializer forSIP(SIP sip, Path extractionDirectory) {
+    Mode mode = Mode.AUTO;
+    String configuredMode = RodaCoreFactory.getRodaConfiguration().getString(CONFIG_PREFIX + ".mode", Mode.AUTO.name());
+    try {
+      mode = Mode.valueOf(configuredMode.toUpperCase());
+    } catch (IllegalArgumentException e) {
+      LOGGER.warn("Unknown SIP materialization mode '{}', using {}", configuredMode, mode);
+    }
+    return new SIPFileMaterializer(mode, isExtractedInto(sip, extractionDirectory),
+      RodaCoreFactory.getFixityAlgorithms());
+  }
+
+  /**
+   * @return if the SIP is inside the folder it was extracted into, and not in
+   *         the transfer area, so that its files may be moved out of it. When
+   *         in doubt, false.
+   */
+  public static boolean isExtractedInto(SIP sip, Path extractionDirectory) {
+    if (extractionDirectory == null || sip.getBasePath() == null) {
+      return false;
+    }
+    try {
+      Path basePath = sip.getBasePath().toRealPath();
+      Path transferredResourcesPath = RodaCoreFactory.getTransferredResourcesScanner().getBasePath().toRealPath();
+      return basePath.startsWith(extractionDirectory.toRealPath()) && !basePath.startsWith(transferredResourcesPath);
+    } catch (IOException e) {
+      LOGGER.debug("Could not resolve the path of SIP {}, its files will not be moved", sip.getBasePath(), e);
+      return false;
+    }
+  }
+
+  private static synchronized ExecutorService getExecutor() {
+    if (executor == null) {
+      threads = RodaCoreFactory.getRodaConfiguration().getInt(CONFIG_PREFIX + ".threads", DEFAULT_THREADS);
+      AtomicInteger counter = new AtomicInteger(0);
+      executor = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+        Thread thread = new Thread(r, "sip-materialization-" + counter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    return executor;
+  }
+
+  public void addStageTime(String stage, long nanos) {
+    stageTimes.merge(stage, nanos, Long::sum);
+  }
+
+  /**
+   * Write the given SIP files, in parallel if there are several.
+   *
+   * @return the written files, in the same order
+   */
+  public List<File> materialize(List<IPFileInterface> sipFiles, SIPFileWriter writer)
+    throws RequestNotValidException, GenericException, AlreadyExistsException, AuthorizationDeniedException,
+    NotFoundException {
+    long start = System.nanoTime();
+    try {
+      ExecutorService pool = getExecutor();
+      List<File> ret = new ArrayList<>();
+      if (sipFiles.size() <= 1 || threads <= 1) {
+        for (IPFileInterface sipFile : sipFiles) {
+          ret.add(materialize(sipFile, writer));
+        }
+        return ret;
+      }
+
+      List<Future<File>> futures = new ArrayList<>();
+      for (IPFileInterface sipFile : sipFiles) {
+        futures.add(pool.submit(() -> materialize(sipFile, writer)));
+      }
+
+      Throwable failure = null;
+      for (Future<File> future : futures) {
+        try {
+          ret.add(future.get());
+        } catch (ExecutionException e) {
+          if (failure == null) {
+            failure = e.getCause();
+            futures.forEach(f -> f.cancel(false));
+          }
+        } catch (CancellationException e) {
+          // a previous file failed
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          futures.forEach(f -> f.cancel(true));
+          throw new GenericException("Interrupted while writing SIP files", e);
+        }
+      }
+
+      if (failure != null) {
+        rethrow(failure);
+      }
+      return ret;
+    } finally {
+      addStageTime(STAGE_DATA, System.nanoTime() - start);
+    }
+  }
+
+  private File materialize(IPFileInterface sipFile, SIPFileWriter writer) throws RequestNotValidException,
+    GenericException, AlreadyExistsException, AuthorizationDeniedException, NotFoundException {
+    SIPFileContentPayload payload = new SIPFileContentPayload(sipFile.getPath());
+    File file = writer.write(sipFile, payload);
+    if (payload.checksums != null) {
+      FixityCache.put(ModelUtils.getFileStoragePath(file), payload.size, payload.checksums);
+    }
+    return file;
+  }
+
+  private static void rethrow(Throwable failure) throws RequestNotValidException, GenericException,
+    AlreadyExistsException, AuthorizationDeniedException, NotFoundException {
+    if (failure instanceof RequestNotValidException) {
+      throw (RequestNotValidException) failure;
+    } else if (failure instanceof GenericException) {
+      throw (GenericException) failure;
+    } else if (failure instanceof AlreadyExistsException) {
+      throw (AlreadyExistsException) failure;
+    } else if (failure instanceof AuthorizationDeniedException) {
+      throw (AuthorizationDeniedException) failure;
+    } else if (failure instanceof NotFoundException) {
+      throw (NotFoundException) failure;
+    } else if (failure instanceof RuntimeException) {
+      throw (RuntimeException) failure;
+    } else if (failure instanceof Error) {
+      throw (Error) failure;
+    } else {
+      throw new GenericException("Could not write SIP file", failure);
+    }
+  }
+
+  /**
+   * @return a summary of the time spent in each stage and of how files were
+   *         written, e.g. to be added to the job report
+   */
+  public String getSummary() {
+    StringBuilder summary = new StringBuilder("Stages:");
+    synchronized (stageTimes) {
+      stageTimes.forEach((stage, nanos) -> summary.append(String.format(" %s %.3f s;", stage, nanos / 1e9)));
+    }
+    summary.append(String.format(" %d data files, %s (%d moved, %d linked, %d copied)",
+      movedFiles.get() + linkedFiles.get() + copiedFiles.get(), FileUtils.byteCountToDisplaySize(bytes.get()),
+      movedFiles.get(), linkedFiles.get(), copiedFiles.get()));
+    return summary.toString();
+  }
+
+  @FunctionalInterface
+  public interface SIPFileWriter {
+    File write(IPFileInterface sipFile, ContentPayload payload) throws RequestNotValidException, GenericException,
+      AlreadyExistsException, AuthorizationDeniedException, NotFoundException;
+  }
+
+  /**
+   * Payload that writes the SIP file in the cheapest safe way, computing its
+   * checksums on the way.
+   */
+  private class SIPFileContentPayload implements ContentPayload {
+    private final Path source;
+    private Map<String, String> checksums = null;
+    private long size = 0;
+
+    private SIPFileContentPayload(Path source) {
+      this.source = source;
+    }
+
+    @Override
+    public InputStream createInputStream() throws IOException {
+      return Files.newInputStream(source);
+    }
+
+    @Override
+    public URI getURI() throws IOException, UnsupportedOperationException {
+      return source.toUri();
+    }
+
+    @Override
+    public void writeToPath(Path target) throws IOException {
+      if (mode != Mode.COPY && temporarySource && move(target)) {
+        movedFiles.incrementAndGet();
+        computeChecksums(target);
+      } else if (mode == Mode.LINK && !temporarySource && link(target)) {
+        linkedFiles.incrementAndGet();
+        computeChecksums(target);
+      } else {
+        copy(target);
+        copiedFiles.incrementAndGet();
+      }
+      size = Files.size(target);
+      bytes.addAndGet(size);
+    }
+
+    private boolean move(Path target) throws IOException {
+      try {
+        Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+      } catch (AtomicMoveNotSupportedException e) {
+        // e.g. on another file system
+        return false;
+      }
+    }
+
+    private boolean link(Path target) throws IOException {
+      Path linkPath = target.resolveSibling(target.getFileName() + ".temp" + System.nanoTime());
+      try {
+        Files.createLink(linkPath, source);
+        Files.move(linkPath, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+      } catch (UnsupportedOperationException | FileSystemException e) {
+        // e.g. on another file system
+        LOGGER.debug("Could not link {}, copying instead", source, e);
+        return false;
+      } finally {
+        Files.deleteIfExists(linkPath);
+      }
+    }
+
+    private void copy(Path target) throws IOException {
+      if (fixityAlgorithms.isEmpty()) {
+        Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+        return;
+      }
+
+      Path tempPath = target.resolveSibling(target.getFileName() + ".temp" + System.nanoTime());
+      try {
+        try (InputStream in = Files.newInputStream(source); OutputStream out = Files.newOutputStream(tempPath)) {
+          checksums = FileUtility.copyAndChecksums(in, out, fixityAlgorithms);
+        }
+        Files.move(tempPath, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (NoSuchAlgorithmException e) {
+        throw new IOException(e);
+      } finally {
+        Files.deleteIfExists(tempPath);
+      }
+    }
+
+    private void computeChecksums(Path target) throws IOException {
+      if (!fixityAlgorithms.isEmpty()) {
+        try {
+          checksums = FileUtility.checksums(Files.newInputStream(target), fixityAlgorithms);
+        } catch (NoSuchAlgorithmException e) {
+          throw new IOException(e);
+        }
+      }
+    }
+  }
+}
@@ -49,9 +49,12 @@ import org.roda.core.plugins.RODAObjectsProcessingLogic;
 import org.roda.core.plugins.orchestrate.IngestJobPluginInfo;
 import org.roda.core.plugins.orchestrate.JobPluginInfo;
 import org.roda.core.plugins.PluginHelper;
+import org.roda.core.plugins.base.antivirus.ClamdAntiVirus;
+import org.roda.core.plugins.base.ingest.v2.steps.IngestContentConsumer;
 import org.roda.core.plugins.base.ingest.v2.steps.IngestStep;
 import org.roda.core.plugins.base.ingest.v2.steps.IngestStepBundle;
 import org.roda.core.plugins.base.ingest.v2.steps.IngestStepsUtils;
+import org.roda.core.plugins.base.ingest.v2.steps.SinglePassContentReader;
 import org.roda.core.plugins.base.notifications.JobNotification;
 import org.roda.core.storage.StorageService;
 import org.slf4j.Logger;
@@ -75,6 +78,8 @@ public abstract class DefaultIngestPlugin extends AbstractPlugin<TransferredReso
   public static final String END_DESCRIPTION = "The ingest process has ended.";
   public static final PreservationEventType END_TYPE = PreservationEventType.INGEST_END;
 
+  private static final String SINGLE_PASS_PROPERTY = "core.ingest.single_pass_reads";
+
   protected static final int INITIAL_TOTAL_STEPS = 10;
   protected int totalSteps = INITIAL_TOTAL_STEPS;
 
@@ -171,6 +176,10 @@ public abstract class DefaultIngestPlugin extends AbstractPlugin<TransferredReso
 
       List<IngestStep> steps = getIngestSteps();
 
+      if (RodaCoreFactory.getRodaConfiguration().getBoolean(SINGLE_PASS_PROPERTY, false)) {
+        readContentInSinglePass(model, steps, aips, cachedJob.getId());
+      }
+
       for (IngestStep step : steps) {
         IngestStepBundle bundle = new IngestStepBundle(this, index, model, storage, jobPluginInfo,
           getPluginParameter(step.getParameterName()), getParameterValues(), resources, aips, cachedJob,
@@ -203,6 +212,9 @@ public abstract class DefaultIngestPlugin extends AbstractPlugin<TransferredReso
   public Report afterAllExecute(IndexService index, ModelService model, StorageService storage) throws PluginException {
     LOGGER.debug("Doing stuff in afterAllExecute");
 
+    // verdicts streamed during the single pass that no virus check used
+    ClamdAntiVirus.clearStreamedVerdicts(PluginHelper.getJobId(this));
+
     try {
       index.commitAIPs();
       boolean skipFixParents = RodaCoreFactory.getRodaConfiguration()
@@ -226,6 +238,29 @@ public abstract class DefaultIngestPlugin extends AbstractPlugin<TransferredReso
     return null;
   }
 
+  /**
+   * Reads the content of each file once for all the steps that would read it
+   * (e.g. virus check and PREMIS fixity), handing the results over to them.
+   */
+  private void readContentInSinglePass(ModelService model, List<IngestStep> steps, List<AIP> aips, String jobId) {
+    List<IngestContentConsumer> consumers = new ArrayList<>();
+    for (IngestStep step : steps) {
+      if (PluginHelper.verifyIfStepShouldBePerformed(this, getPluginParameter(step.getParameterName()),
+        !step.usesCorePlugin() ? step.getPluginName() : null)) {
+        IngestStepsUtils.createContentConsumer(step, jobId).ifPresent(consumers::add);
+      }
+    }
+
+    if (!consumers.isEmpty() && !aips.isEmpty()) {
+      try {
+        long bytesRead = new SinglePassContentReader(consumers).read(model, aips);
+        LOGGER.debug("Read {} bytes of {} AIPs in a single pass", bytesRead, aips.size());
+      } finally {
+        consumers.forEach(IngestContentConsumer::close);
+      }
+    }
+  }
+
   private Report transformTransferredResourceIntoAnAIP(IndexService index, ModelService model, StorageService storage,
     List<TransferredResource> transferredResources) {
     Report report = null;
@@ -0,0 +1,77 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.base.ingest.v2.steps;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+
+import org.roda.core.plugins.base.antivirus.ClamdAntiVirus;
+import org.roda.core.storage.Binary;
+
+/**
+ * Streams the content of each file to clamd for the virus check step, which
+ * then uses the verdicts instead of sending the files again. Only files stored
+ * in the file system are streamed, as the virus check identifies files by
+ * their path, and only the virus check of the same job uses them.
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+public class ClamdContentConsumer implements IngestContentConsumer {
+  private final ClamdAntiVirus antiVirus;
+  private final String jobId;
+  private ClamdAntiVirus.StreamScan scan;
+
+  public ClamdContentConsumer(ClamdAntiVirus antiVirus, String jobId) {
+    this.antiVirus = antiVirus;
+    this.jobId = jobId;
+  }
+
+  @Override
+  public boolean start(Binary binary) throws IOException {
+    URI uri;
+    try {
+      uri = binary.getContent().getURI();
+    } catch (UnsupportedOperationException e) {
+      return false;
+    }
+    if (uri == null || !"file".equals(uri.getScheme()) || binary.getSizeInBytes() == null) {
+      return false;
+    }
+
+    scan = antiVirus.startStreamScan(jobId, Path.of(uri), binary.getSizeInBytes());
+    return scan != null;
+  }
+
+  @Override
+  public void update(byte[] buffer, int offset, int length) throws IOException {
+    scan.write(buffer, offset, length);
+  }
+
+  @Override
+  public void end() throws IOException {
+    try {
+      scan.end();
+    } finally {
+      scan = null;
+    }
+  }
+
+  @Override
+  public void abort() {
+    if (scan != null) {
+      scan.abort();
+      scan = null;
+    }
+  }
+
+  @Override
+  public void close() {
+    antiVirus.close();
+  }
+}
@@ -0,0 +1,77 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.base.ingest.v2.steps;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.roda.core.common.FixityCache;
+import org.roda.core.storage.Binary;
+import org.roda.core.util.FileUtility;
+
+/**
+ * Computes the checksums of each file for the PREMIS skeleton step, handing
+ * them over through the {@link FixityCache}. Files whose checksums are already
+ * known (e.g. computed while the SIP was written into storage) are skipped.
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+public class FixityContentConsumer implements IngestContentConsumer {
+  private final Collection<String> algorithms;
+  private final Map<String, MessageDigest> digests = new LinkedHashMap<>();
+  private Binary binary;
+  private long size;
+
+  public FixityContentConsumer(Collection<String> algorithms) throws NoSuchAlgorithmException {
+    this.algorithms = algorithms;
+    for (String algorithm : algorithms) {
+      digests.put(algorithm, MessageDigest.getInstance(algorithm));
+    }
+  }
+
+  @Override
+  public boolean start(Binary binary) {
+    if ((binary.getContentDigest() != null && !binary.getContentDigest().isEmpty())
+      || FixityCache.contains(binary.getStoragePath(), binary.getSizeInBytes(), algorithms)) {
+      return false;
+    }
+
+    this.binary = binary;
+    this.size = 0;
+    digests.values().forEach(MessageDigest::reset);
+    return true;
+  }
+
+  @Override
+  public void update(byte[] buffer, int offset, int length) {
+    for (MessageDigest digest : digests.values()) {
+      digest.update(buffer, offset, length);
+    }
+    size += length;
+  }
+
+  @Override
+  public void end() {
+    Map<String, String> checksums = new HashMap<>();
+    for (Entry<String, MessageDigest> entry : digests.entrySet()) {
+      checksums.put(entry.getKey(), FileUtility.byteArrayToHexString(entry.getValue().digest()));
+    }
+    FixityCache.put(binary.getStoragePath(), size, checksums);
+    binary = null;
+  }
+
+  @Override
+  public void abort() {
+    binary = null;
+  }
+}
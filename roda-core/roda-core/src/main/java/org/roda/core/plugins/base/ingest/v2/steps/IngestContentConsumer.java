@@ -0,0 +1,50 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.base.ingest.v2.steps;
+
+import java.io.IOException;
+
+import org.roda.core.storage.Binary;
+
+/**
+ * Work of an ingest step done on the content of each file while it is read by
+ * the {@link SinglePassContentReader}, e.g. computing the checksums that the
+ * PREMIS skeleton step will use, instead of the step reading the file again.
+ *
+ * <p>
+ * The results are handed over to the step, which still creates its own report
+ * and events. If the consumer fails for a file, the step reads it as usual.
+ * </p>
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+public interface IngestContentConsumer {
+  /**
+   * @return true if the content of the binary is needed
+   */
+  boolean start(Binary binary) throws IOException;
+
+  void update(byte[] buffer, int offset, int length) throws IOException;
+
+  /**
+   * All the content of the binary was given.
+   */
+  void end() throws IOException;
+
+  /**
+   * The content of the binary could not be read till the end.
+   */
+  void abort();
+
+  /**
+   * All the files were read.
+   */
+  default void close() {
+    // do nothing
+  }
+}
@@ -7,11 +7,13 @@
  */
 package org.roda.core.plugins.base.ingest.v2.steps;
 
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 
 import org.roda.core.RodaCoreFactory;
@@ -32,6 +34,9 @@ import org.roda.core.data.v2.jobs.Report;
 import org.roda.core.model.LiteRODAObjectFactory;
 import org.roda.core.plugins.Plugin;
 import org.roda.core.plugins.PluginException;
+import org.roda.core.plugins.base.antivirus.AntivirusPlugin;
+import org.roda.core.plugins.base.antivirus.ClamdAntiVirus;
+import org.roda.core.plugins.base.characterization.PremisSkeletonPlugin;
 import org.roda.core.plugins.orchestrate.IngestJobPluginInfo;
 import org.roda.core.plugins.PluginHelper;
 import org.slf4j.Logger;
@@ -39,6 +44,7 @@ import org.slf4j.LoggerFactory;
 
 public class IngestStepsUtils {
   private static final Logger LOGGER = LoggerFactory.getLogger(IngestStepsUtils.class);
+  private static final String ANTIVIRUS_CLASSNAME_PROPERTY = "core.plugins.internal.virus_check.antiVirusClassname";
 
   public static void executePlugin(IngestStepBundle bundle, IngestStep step) {
     if (!step.needsAips() || !bundle.getAips().isEmpty()) {
@@ -89,6 +95,24 @@ public class IngestStepsUtils {
     // return null;
   }
 
+  /**
+   * @return the work of the step that can be done while the files are read in
+   *         a single pass, if any
+   */
+  public static Optional<IngestContentConsumer> createContentConsumer(IngestStep step, String jobId) {
+    if (PremisSkeletonPlugin.class.getName().equals(step.getPluginName())) {
+      try {
+        return Optional.of(new FixityContentConsumer(RodaCoreFactory.getFixityAlgorithms()));
+      } catch (NoSuchAlgorithmException e) {
+        LOGGER.warn("Fixity of the files will be computed by the step itself", e);
+      }
+    } else if (AntivirusPlugin.class.getName().equals(step.getPluginName()) && ClamdAntiVirus.class.getName()
+      .equals(RodaCoreFactory.getRodaConfiguration().getString(ANTIVIRUS_CLASSNAME_PROPERTY, ""))) {
+      return Optional.of(new ClamdContentConsumer(new ClamdAntiVirus(), jobId));
+    }
+    return Optional.empty();
+  }
+
   public static void mergeReports(IngestJobPluginInfo jobPluginInfo, Report pluginReport) {
     if (pluginReport != null) {
       for (Report reportItem : pluginReport.getReports()) {
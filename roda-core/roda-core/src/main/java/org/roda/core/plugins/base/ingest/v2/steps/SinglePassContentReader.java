@@ -0,0 +1,144 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.base.ingest.v2.steps;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.roda.core.common.iterables.CloseableIterable;
+import org.roda.core.data.exceptions.AuthorizationDeniedException;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.RequestNotValidException;
+import org.roda.core.data.v2.common.OptionalWithCause;
+import org.roda.core.data.v2.ip.AIP;
+import org.roda.core.data.v2.ip.File;
+import org.roda.core.data.v2.ip.Representation;
+import org.roda.core.model.ModelService;
+import org.roda.core.model.utils.ModelUtils;
+import org.roda.core.storage.Binary;
+import org.roda.core.storage.StorageService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the content of each file once, giving it to all the
+ * {@link IngestContentConsumer}s of the ingest steps that will need it, so
+ * that each step does not read all the files again.
+ *
+ * <p>
+ * Files that no consumer needs are not read. Failures are logged and leave the
+ * work to the steps themselves.
+ * </p>
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+public class SinglePassContentReader {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SinglePassContentReader.class);
+
+  // reads files in 1Mbyte chunks, like the checksums of FileUtility
+  private static final int BUFFER_SIZE = 1048576;
+
+  private final List<IngestContentConsumer> consumers;
+  private final byte[] buffer = new byte[BUFFER_SIZE];
+
+  public SinglePassContentReader(List<IngestContentConsumer> consumers) {
+    this.consumers = consumers;
+  }
+
+  /**
+   * Reads the files of all the representations of the AIPs.
+   *
+   * @return the number of bytes read
+   */
+  public long read(ModelService model, List<AIP> aips) {
+    long bytesRead = 0;
+    for (AIP aip : aips) {
+      for (Representation representation : aip.getRepresentations()) {
+        try (CloseableIterable<OptionalWithCause<File>> files = model.listFilesUnder(aip.getId(),
+          representation.getId(), true)) {
+          for (OptionalWithCause<File> file : files) {
+            if (file.isPresent() && !file.get().isDirectory()) {
+              bytesRead += read(model.getStorage(), file.get());
+            }
+          }
+        } catch (IOException | RequestNotValidException | GenericException | NotFoundException
+          | AuthorizationDeniedException e) {
+          LOGGER.warn("Could not read the files of representation {} of AIP {} in a single pass",
+            representation.getId(), aip.getId(), e);
+        }
+      }
+    }
+    return bytesRead;
+  }
+
+  private long read(StorageService storage, File file) {
+    try {
+      return read(storage.getBinary(ModelUtils.getFileStoragePath(file)));
+    } catch (RequestNotValidException | GenericException | NotFoundException | AuthorizationDeniedException e) {
+      LOGGER.warn("Could not read file {} in a single pass", file, e);
+      return 0;
+    }
+  }
+
+  /**
+   * Reads the content of the binary, if any consumer needs it.
+   *
+   * @return the number of bytes read
+   */
+  public long read(Binary binary) {
+    List<IngestContentConsumer> active = new ArrayList<>();
+    for (IngestContentConsumer consumer : consumers) {
+      try {
+        if (consumer.start(binary)) {
+          active.add(consumer);
+        }
+      } catch (IOException | RuntimeException e) {
+        LOGGER.warn("Could not start {} for {}", consumer.getClass().getSimpleName(), binary.getStoragePath(), e);
+      }
+    }
+
+    long bytesRead = 0;
+    if (active.isEmpty()) {
+      return bytesRead;
+    }
+
+    try (InputStream inputStream = binary.getContent().createInputStream()) {
+      int read;
+      while (!active.isEmpty() && (read = inputStream.read(buffer)) != -1) {
+        bytesRead += read;
+        for (Iterator<IngestContentConsumer> it = active.iterator(); it.hasNext();) {
+          IngestContentConsumer consumer = it.next();
+          try {
+            consumer.update(buffer, 0, read);
+          } catch (IOException | RuntimeException e) {
+            LOGGER.warn("{} failed for {}", consumer.getClass().getSimpleName(), binary.getStoragePath(), e);
+            consumer.abort();
+            it.remove();
+          }
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      LOGGER.warn("Could not read {} in a single pass", binary.getStoragePath(), e);
+      active.forEach(IngestContentConsumer::abort);
+      return bytesRead;
+    }
+
+    for (IngestContentConsumer consumer : active) {
+      try {
+        consumer.end();
+      } catch (IOException | RuntimeException e) {
+        LOGGER.warn("{} failed for {}", consumer.getClass().getSimpleName(), binary.getStoragePath(), e);
+      }
+    }
+    return bytesRead;
+  }
+}
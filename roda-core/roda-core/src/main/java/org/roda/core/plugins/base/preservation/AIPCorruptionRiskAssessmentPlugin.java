@@ -131,128 +131,28 @@ public class AIPCorruptionRiskAssessmentPlugin extends AbstractPlugin<AIP> {
     List<LinkingIdentifier> sources = new ArrayList<>();
     ValidationReport validationReport = new ValidationReport();
     if (aip.getRepresentations() != null && !aip.getRepresentations().isEmpty()) {
-      for (Representation r : aip.getRepresentations()) {
-        LOGGER.debug("Checking fixity for files in representation {} of AIP {}", r.getId(), aip.getId());
-
-        try (CloseableIterable<OptionalWithCause<File>> allFiles = model.listFilesUnder(aip.getId(), r.getId(), true)) {
-          for (OptionalWithCause<File> oFile : allFiles) {
-            if (oFile.isPresent()) {
-              File file = oFile.get();
-
-              if (!file.isDirectory()) {
-                if (FSUtils.isManifestOfExternalFiles(file.getId())) {
-                  StorageService tmpStorageService = ModelUtils.resolveTemporaryResourceShallow(job.getId(), storage,
-                    ModelUtils.getAIPStoragePath(aip.getId()));
-                  for (OptionalWithCause<File> fileShallow : model.listExternalFilesUnder(file)) {
-                    processFilesShallow(index, model, tmpStorageService, validationReport, sources, aipFailed, aip,
-                      fileShallow.get());
-                  }
-                  try {
-                    if (!job.getPluginType().equals(PluginType.INGEST)) {
-                      ModelUtils.removeTemporaryResourceShallow(job.getId(), ModelUtils.getAIPStoragePath(aip.getId()));
-                    }
-                  } catch (IOException e) {
-                    LOGGER.error("Error on removing temporary AIP " + aip.getId(), e);
-                  }
-                } else {
-                  StoragePath storagePath = ModelUtils.getFileStoragePath(file);
-                  Binary currentFileBinary = storage.getBinary(storagePath);
-                  List<Fixity> fixities = null;
-
-                  try {
-                    Binary premisFile = model.retrievePreservationFile(file);
-                    fixities = PremisV3Utils.extractFixities(premisFile);
-                  } catch (NotFoundException e) {
-                    ValidationIssue issue = new ValidationIssue(
-                      "File " + file.getId() + " of representation " + file.getRepresentationId() + " of AIP "
-                        + file.getAipId() + " was found but the PREMIS file does not exist");
-                    validationReport.addIssue(issue);
-                  }
-
-                  sources.add(PluginHelper.getLinkingIdentifier(aip.getId(), file.getRepresentationId(), file.getPath(),
-                    file.getId(), RodaConstants.PRESERVATION_LINKING_OBJECT_SOURCE));
-
-                  if (fixities != null) {
-                    boolean passedFixity = true;
-
-                    // get all necessary hash algorithms
-                    Set<String> algorithms = new HashSet<>();
-                    for (Fixity f : fixities) {
-                      algorithms.add(f.getMessageDigestAlgorithm());
-                    }
-
-                    // calculate hashes
-                    try {
-                      Map<String, String> checksums = FileUtility
-                        .checksums(currentFileBinary.getContent().createInputStream(), algorithms);
-
-                      for (Fixity f : fixities) {
-                        String checksum = checksums.get(f.getMessageDigestAlgorithm());
-
-                        if (!f.getMessageDigest().trim().equalsIgnoreCase(checksum.trim())) {
-                          passedFixity = false;
-
-                          String fileEntry = file.getRepresentationId()
-                            + (file.getPath().isEmpty() ? "" : '/' + String.join("/", file.getPath())) + '/'
-                            + file.getId();
-                          ValidationIssue issue = new ValidationIssue(
-                            fileEntry + " (Checksums: [" + f.getMessageDigest().trim() + ", " + checksum.trim() + "])");
-                          validationReport.addIssue(issue);
-
-                          break;
-                        }
-                      }
-                    } catch (NoSuchAlgorithmException | IOException e) {
-                      passedFixity = false;
-                      ValidationIssue issue = new ValidationIssue("Could not check fixity: " + e.getMessage());
-                      validationReport.addIssue(issue);
-                      LOGGER.debug("Could not check fixity", e);
-                    }
-
-                    if (passedFixity) {
-                      updateIncidence(model, index, file.getAipId(), file.getRepresentationId(), file.getPath(),
-                        file.getId(), risks.get(0));
-                    } else {
-                      aipFailed = true;
-                      createIncidence(model, index, file.getAipId(), file.getRepresentationId(), file.getPath(),
-                        file.getId(), risks.get(0));
-                    }
-                  } else {
-                    aipFailed = true;
-                    createIncidence(model, index, file.getAipId(), file.getRepresentationId(), file.getPath(),
-                      file.getId(), risks.get(0));
-                  }
-                }
-              }
-            }
-          }
-
-          CloseableIterable<OptionalWithCause<PreservationMetadata>> pmList = model
-            .listPreservationMetadata(aip.getId(), r.getId());
-
-          for (OptionalWithCause<PreservationMetadata> opm : pmList) {
-            if (opm.isPresent()) {
-              PreservationMetadata pm = opm.get();
-              if (PreservationMetadataType.FILE.equals(pm.getType())) {
-                try {
-                  model.retrieveFile(pm.getAipId(), pm.getRepresentationId(), pm.getFileDirectoryPath(),
-                    pm.getFileId());
-                } catch (NotFoundException e) {
-                  ValidationIssue issue = new ValidationIssue(
-                    "File " + pm.getFileId() + " of representation " + pm.getRepresentationId() + " of AIP "
-                      + pm.getAipId() + " was not found but the PREMIS file exists");
-                  validationReport.addIssue(issue);
-                  aipFailed = true;
-                  createIncidence(model, index, aip.getId(), pm.getRepresentationId(), pm.getFileDirectoryPath(),
-                    pm.getFileId(), risks.get(0));
-                }
-              }
-            }
-          }
-        } catch (IOException | RODAException e) {
-          LOGGER.error("Error processing representation {}", r.getId(), e);
+      List<RepresentationFixity> results = new ArrayList<>();
+      if (aip.getRepresentations().stream().anyMatch(r -> Boolean.TRUE.equals(r.getHasShallowFiles()))) {
+        // representations with shallow files share a temporary copy of the AIP
+        for (Representation r : aip.getRepresentations()) {
+          results.add(checkRepresentationFixity(index, model, storage, job, aip, r));
+        }
+      } else {
+        try {
+          results = PluginHelper.processSubtasks(this, aip.getRepresentations(),
+            r -> checkRepresentationFixity(index, model, storage, job, aip, r));
+        } catch (RODAException e) {
+          LOGGER.error("Error checking fixity of AIP {}", aip.getId(), e);
+          validationReport.addIssue(new ValidationIssue("Could not check fixity: " + e.getMessage()));
+          aipFailed = true;
         }
       }
+
+      for (RepresentationFixity result : results) {
+        aipFailed |= result.failed;
+        sources.addAll(result.sources);
+        result.validationReport.getIssues().forEach(validationReport::addIssue);
+      }
     } else {
       aipSkipped = true;
     }
@@ -285,6 +185,146 @@ public class AIPCorruptionRiskAssessmentPlugin extends AbstractPlugin<AIP> {
     }
   }
 
+  /**
+   * Checks the fixity of the files of one representation, which may be done at
+   * the same time as the other representations of the AIP.
+   */
+  private RepresentationFixity checkRepresentationFixity(IndexService index, ModelService model,
+    StorageService storage, Job job, AIP aip, Representation r) {
+    RepresentationFixity result = new RepresentationFixity();
+    LOGGER.debug("Checking fixity for files in representation {} of AIP {}", r.getId(), aip.getId());
+
+    try (CloseableIterable<OptionalWithCause<File>> allFiles = model.listFilesUnder(aip.getId(), r.getId(), true)) {
+      for (OptionalWithCause<File> oFile : allFiles) {
+        if (oFile.isPresent()) {
+          File file = oFile.get();
+
+          if (!file.isDirectory()) {
+            if (FSUtils.isManifestOfExternalFiles(file.getId())) {
+              StorageService tmpStorageService = ModelUtils.resolveTemporaryResourceShallow(job.getId(), storage,
+                ModelUtils.getAIPStoragePath(aip.getId()));
+              for (OptionalWithCause<File> fileShallow : model.listExternalFilesUnder(file)) {
+                processFilesShallow(index, model, tmpStorageService, result.validationReport, result.sources,
+                  result.failed, aip, fileShallow.get());
+              }
+              try {
+                if (!job.getPluginType().equals(PluginType.INGEST)) {
+                  ModelUtils.removeTemporaryResourceShallow(job.getId(), ModelUtils.getAIPStoragePath(aip.getId()));
+                }
+              } catch (IOException e) {
+                LOGGER.error("Error on removing temporary AIP " + aip.getId(), e);
+              }
+            } else {
+              StoragePath storagePath = ModelUtils.getFileStoragePath(file);
+              Binary currentFileBinary = storage.getBinary(storagePath);
+              List<Fixity> fixities = null;
+
+              try {
+                Binary premisFile = model.retrievePreservationFile(file);
+                fixities = PremisV3Utils.extractFixities(premisFile);
+              } catch (NotFoundException e) {
+                ValidationIssue issue = new ValidationIssue(
+                  "File " + file.getId() + " of representation " + file.getRepresentationId() + " of AIP "
+                    + file.getAipId() + " was found but the PREMIS file does not exist");
+                result.validationReport.addIssue(issue);
+              }
+
+              result.sources.add(PluginHelper.getLinkingIdentifier(aip.getId(), file.getRepresentationId(),
+                file.getPath(), file.getId(), RodaConstants.PRESERVATION_LINKING_OBJECT_SOURCE));
+
+              if (fixities != null) {
+                boolean passedFixity = true;
+
+                // get all necessary hash algorithms
+                Set<String> algorithms = new HashSet<>();
+                for (Fixity f : fixities) {
+                  algorithms.add(f.getMessageDigestAlgorithm());
+                }
+
+                // calculate hashes
+                try {
+                  Map<String, String> checksums = FileUtility
+                    .checksums(currentFileBinary.getContent().createInputStream(), algorithms);
+
+                  for (Fixity f : fixities) {
+                    String checksum = checksums.get(f.getMessageDigestAlgorithm());
+
+                    if (!f.getMessageDigest().trim().equalsIgnoreCase(checksum.trim())) {
+                      passedFixity = false;
+
+                      String fileEntry = file.getRepresentationId()
+                        + (file.getPath().isEmpty() ? "" : '/' + String.join("/", file.getPath())) + '/'
+                        + file.getId();
+                      ValidationIssue issue = new ValidationIssue(
+                        fileEntry + " (Checksums: [" + f.getMessageDigest().trim() + ", " + checksum.trim() + "])");
+                      result.validationReport.addIssue(issue);
+
+                      break;
+                    }
+                  }
+                } catch (NoSuchAlgorithmException | IOException e) {
+                  passedFixity = false;
+                  ValidationIssue issue = new ValidationIssue("Could not check fixity: " + e.getMessage());
+                  result.validationReport.addIssue(issue);
+                  LOGGER.debug("Could not check fixity", e);
+                }
+
+                if (passedFixity) {
+                  updateIncidence(model, index, file.getAipId(), file.getRepresentationId(), file.getPath(),
+                    file.getId(), risks.get(0));
+                } else {
+                  result.failed = true;
+                  createIncidence(model, index, file.getAipId(), file.getRepresentationId(), file.getPath(),
+                    file.getId(), risks.get(0));
+                }
+              } else {
+                result.failed = true;
+                createIncidence(model, index, file.getAipId(), file.getRepresentationId(), file.getPath(),
+                  file.getId(), risks.get(0));
+              }
+            }
+          }
+        }
+      }
+
+      CloseableIterable<OptionalWithCause<PreservationMetadata>> pmList = model
+        .listPreservationMetadata(aip.getId(), r.getId());
+
+      for (OptionalWithCause<PreservationMetadata> opm : pmList) {
+        if (opm.isPresent()) {
+          PreservationMetadata pm = opm.get();
+          if (PreservationMetadataType.FILE.equals(pm.getType())) {
+            try {
+              model.retrieveFile(pm.getAipId(), pm.getRepresentationId(), pm.getFileDirectoryPath(),
+                pm.getFileId());
+            } catch (NotFoundException e) {
+              ValidationIssue issue = new ValidationIssue(
+                "File " + pm.getFileId() + " of representation " + pm.getRepresentationId() + " of AIP "
+                  + pm.getAipId() + " was not found but the PREMIS file exists");
+              result.validationReport.addIssue(issue);
+              result.failed = true;
+              createIncidence(model, index, aip.getId(), pm.getRepresentationId(), pm.getFileDirectoryPath(),
+                pm.getFileId(), risks.get(0));
+            }
+          }
+        }
+      }
+    } catch (IOException | RODAException e) {
+      LOGGER.error("Error processing representation {}", r.getId(), e);
+    }
+    return result;
+  }
+
+  /**
+   * The outcome of checking the fixity of one representation, to be merged
+   * into the outcome of its AIP.
+   */
+  private static class RepresentationFixity {
+    private boolean failed = false;
+    private final List<LinkingIdentifier> sources = new ArrayList<>();
+    private final ValidationReport validationReport = new ValidationReport();
+  }
+
   private void processFilesShallow(IndexService index, ModelService model, StorageService storage,
     ValidationReport validationReport, List<LinkingIdentifier> sources, boolean aipFailed, AIP aip, File file)
     throws RequestNotValidException, GenericException, NotFoundException, AuthorizationDeniedException,
@@ -7,10 +7,7 @@
  */
 package org.roda.core.plugins.base.preservation;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -22,8 +19,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVPrinter;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.roda.core.RodaCoreFactory;
@@ -52,20 +47,19 @@ import org.roda.core.plugins.orchestrate.JobPluginInfo;
 import org.roda.core.plugins.orchestrate.JobsHelper;
 import org.roda.core.storage.StorageService;
 import org.roda.core.storage.fs.FSUtils;
-import org.roda.core.util.IdUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class InventoryReportPlugin extends AbstractPlugin<AIP> {
   private static final Logger LOGGER = LoggerFactory.getLogger(InventoryReportPlugin.class);
 
-  public static final String EXPORT_CSV_TEMP_FOLDER = "CSV";
   public static final String CSV_FILE_FIELDS = "parameter.csv.file.fields";
   public static final String CSV_FILE_OUTPUT = "parameter.csv.file.output";
   public static final String CSV_FILE_HEADERS = "parameter.csv.file.headers";
   public static final String CSV_FILE_OUTPUT_DATA = "parameter.csv.file.output.data";
   public static final String CSV_FILE_OUTPUT_DESCRIPTIVE = "parameter.csv.file.output.descriptive";
   public static final String CSV_FILE_OTHER_METADATA_TYPES = "parameter.csv.file.output.other";
+  public static final String CSV_FILE_COMPRESS = "parameter.csv.file.compress";
 
   public static final String CSV_FIELD_SIP_ID = "sipId";
   public static final String CSV_FIELD_AIP_ID = "aipId";
@@ -94,6 +88,8 @@ public class InventoryReportPlugin extends AbstractPlugin<AIP> {
   public static final String CSV_DEFAULT_OUTPUT = "/tmp/output.csv";
   public static final String CSV_DEFAULT_HEADERS = "true";
   public static final String CSV_DEFAULT_OTHER_METADATA = "ApacheTika,Siegfried";
+  public static final String CSV_DEFAULT_COMPRESS = "true";
+  private static final String GZIP_EXTENSION = ".gz";
 
   private List<String> fields = null;
   private Path output;
@@ -101,6 +97,7 @@ public class InventoryReportPlugin extends AbstractPlugin<AIP> {
   private boolean outputDataInformation;
   private boolean outputDescriptiveMetadataInformation;
   private List<String> otherMetadataTypes;
+  private boolean compress = Boolean.parseBoolean(CSV_DEFAULT_COMPRESS);
   private static Map<String, PluginParameter> pluginParameters = new HashMap<>();
 
   // TODO -> add plugin parameter type "LIST"...
@@ -110,7 +107,10 @@ public class InventoryReportPlugin extends AbstractPlugin<AIP> {
       "List of file attributes to include in the inventory export. The example includes all the possible options. Remove attributes as necessary."));
     pluginParameters.put(CSV_FILE_OUTPUT,
       new PluginParameter(CSV_FILE_OUTPUT, "Report file path", PluginParameterType.STRING, CSV_DEFAULT_OUTPUT, true,
-        false, "The full path and file name on the server where the inventory report file should be created."));
+        false,
+        "The full path and file name on the server where the inventory report file should be created. If a "
+          + "previous job creating the same file did not finish, the report is resumed, skipping the AIPs already "
+          + "in it."));
     pluginParameters.put(CSV_FILE_HEADERS,
       new PluginParameter(CSV_FILE_HEADERS, "Include header line", PluginParameterType.BOOLEAN, CSV_DEFAULT_HEADERS,
         true, false, "Include a header line in the CSV inventory report."));
@@ -125,6 +125,9 @@ public class InventoryReportPlugin extends AbstractPlugin<AIP> {
       new PluginParameter(CSV_FILE_OTHER_METADATA_TYPES, "Include other metadata files", PluginParameterType.STRING,
         CSV_DEFAULT_OTHER_METADATA, true, false,
         "Include in the inventory report information about other metadata files that exist inside AIPs."));
+    pluginParameters.put(CSV_FILE_COMPRESS,
+      new PluginParameter(CSV_FILE_COMPRESS, "Compress report", PluginParameterType.BOOLEAN, CSV_DEFAULT_COMPRESS,
+        true, false, "Compress the inventory report with gzip, adding the .gz extension to the file name if missing."));
   }
 
   @Override
@@ -163,13 +166,14 @@ public class InventoryReportPlugin extends AbstractPlugin<AIP> {
     parameters.add(pluginParameters.get(CSV_FILE_FIELDS));
     PluginParameter outputPluginParameter = pluginParameters.get(CSV_FILE_OUTPUT);
     SimpleDateFormat df = new SimpleDateFormat(RodaConstants.DEFAULT_DATETIME_FORMAT);
-    String reportName = "inventory_report_" + df.format(new Date()) + ".csv";
+    String reportName = "inventory_report_" + df.format(new Date()) + ".csv" + GZIP_EXTENSION;
     outputPluginParameter.setDefaultValue(RodaCoreFactory.getReportsDirectory().resolve(reportName).toString());
     parameters.add(outputPluginParameter);
     parameters.add(pluginParameters.get(CSV_FILE_HEADERS));
     parameters.add(pluginParameters.get(CSV_FILE_OUTPUT_DATA));
     parameters.add(pluginParameters.get(CSV_FILE_OUTPUT_DESCRIPTIVE));
     parameters.add(pluginParameters.get(CSV_FILE_OTHER_METADATA_TYPES));
+    parameters.add(pluginParameters.get(CSV_FILE_COMPRESS));
     return parameters;
   }
 
@@ -208,71 +212,62 @@ public class InventoryReportPlugin extends AbstractPlugin<AIP> {
         otherMetadataTypes.addAll(Arrays.asList(otherMetadataSTR.split(",")));
       }
     }
+    if (parameters.containsKey(CSV_FILE_COMPRESS)) {
+      compress = Boolean.parseBoolean(parameters.get(CSV_FILE_COMPRESS));
+    }
   }
 
   @Override
   public Report execute(IndexService index, ModelService model, StorageService storage,
     List<LiteOptionalWithCause> liteList) throws PluginException {
-
-    Path jobCSVTempFolder = getJobCSVTempFolder();
-    Path csvTempFile = jobCSVTempFolder.resolve(IdUtils.createUUID() + ".csv");
-
-    CSVFormat csvFileFormat = CSVFormat.DEFAULT.withRecordSeparator("\n");
-    try (BufferedWriter fileWriter = Files.newBufferedWriter(csvTempFile);
-      CSVPrinter csvFilePrinter = new CSVPrinter(fileWriter, csvFileFormat)) {
+    InventoryReportWriter writer = acquireReport();
+    try {
       return PluginHelper.processObjects(this, new RODAObjectProcessingLogic<AIP>() {
         @Override
-
         public void process(IndexService index, ModelService model, StorageService storage, Report report,
           Job cachedJob, JobPluginInfo jobPluginInfo, Plugin<AIP> plugin, AIP object) {
-          processAIP(model, storage, jobPluginInfo, csvFilePrinter, object);
+          processAIP(index, model, storage, jobPluginInfo, writer, object);
         }
       }, index, model, storage, liteList);
-    } catch (IOException e) {
-      throw new PluginException("Unable to create/write to CSVPrinter", e);
+    } finally {
+      releaseReport();
     }
   }
 
-  private void processAIP(ModelService model, StorageService storage, JobPluginInfo jobPluginInfo,
-    CSVPrinter csvFilePrinter, AIP aip) {
-    if (csvFilePrinter == null) {
-      LOGGER.warn("CSVPrinter is NULL! Skipping...");
+  private void processAIP(IndexService index, ModelService model, StorageService storage, JobPluginInfo jobPluginInfo,
+    InventoryReportWriter writer, AIP aip) {
+    if (writer.isWritten(aip.getId())) {
+      jobPluginInfo.incrementObjectsProcessedWithSkipped();
       return;
     }
 
     try {
+      List<InventoryReportPluginUtils.InventoryEntry> entries = new ArrayList<>();
       if (outputDataInformation && aip.getRepresentations() != null) {
-        List<List<String>> dataInformation = InventoryReportPluginUtils.getDataInformation(fields, aip, model, storage);
-        csvFilePrinter.printRecords(dataInformation);
+        entries.addAll(InventoryReportPluginUtils.getDataInformation(aip, index, model));
       }
       if (outputDescriptiveMetadataInformation && aip.getDescriptiveMetadata() != null) {
-        List<List<String>> dataInformation = InventoryReportPluginUtils.getDescriptiveMetadataInformation(fields, aip,
-          model, storage);
-        csvFilePrinter.printRecords(dataInformation);
+        entries.addAll(InventoryReportPluginUtils.getDescriptiveMetadataInformation(aip));
       }
       if (otherMetadataTypes != null && !otherMetadataTypes.isEmpty()) {
         for (String otherMetadataType : otherMetadataTypes) {
-          List<List<String>> otherMetadataInformation = InventoryReportPluginUtils.getOtherMetadataInformation(fields,
-            otherMetadataType, aip, model, storage);
-          csvFilePrinter.printRecords(otherMetadataInformation);
+          entries.addAll(InventoryReportPluginUtils.getOtherMetadataInformation(otherMetadataType, aip, model));
         }
       }
+      writer.write(aip.getId(), InventoryReportPluginUtils.getRecords(fields, aip, entries, storage));
       jobPluginInfo.incrementObjectsProcessedWithSuccess();
     } catch (IOException e) {
       LOGGER.error("Error writing CSV file", e);
       jobPluginInfo.incrementObjectsProcessedWithFailure();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      jobPluginInfo.incrementObjectsProcessedWithFailure();
     }
   }
 
   @Override
   public Report beforeAllExecute(IndexService index, ModelService model, StorageService storage)
     throws PluginException {
-    try {
-      Path jobCSVTempFolder = getJobCSVTempFolder();
-      Files.createDirectories(jobCSVTempFolder);
-    } catch (IOException e) {
-      LOGGER.error("Error while creating plugin working dir", e);
-    }
     try {
       Path reportsFolder = RodaCoreFactory.getRodaHomePath().resolve(RodaConstants.CORE_REPORT_FOLDER);
       if (FSUtils.exists(reportsFolder)) {
@@ -281,45 +276,47 @@ public class InventoryReportPlugin extends AbstractPlugin<AIP> {
     } catch (IOException e) {
       LOGGER.error("Error while creating report dir", e);
     }
+    // fails the job right away if the report cannot be written
+    acquireReport();
+    releaseReport();
     return new Report();
   }
 
-  private Path getJobCSVTempFolder() {
-    Path wd = RodaCoreFactory.getWorkingDirectory();
-    Path csvExportTempFolder = wd.resolve(InventoryReportPlugin.EXPORT_CSV_TEMP_FOLDER);
-    return csvExportTempFolder.resolve(PluginHelper.getJobId(this));
+  private Path getReport() {
+    Path report = output;
+    if (compress && !report.getFileName().toString().endsWith(GZIP_EXTENSION)) {
+      report = report.resolveSibling(report.getFileName() + GZIP_EXTENSION);
+    }
+    return report;
+  }
+
+  private InventoryReportWriter acquireReport() throws PluginException {
+    Path report = getReport();
+    try {
+      return InventoryReportWriter.acquire(PluginHelper.getJobId(this), report, compress);
+    } catch (IOException e) {
+      throw new PluginException("Unable to create/write to inventory report " + report, e);
+    }
+  }
+
+  private void releaseReport() {
+    try {
+      InventoryReportWriter.release(PluginHelper.getJobId(this));
+    } catch (IOException e) {
+      // the AIPs written since the last checkpoint are written again when resuming
+      LOGGER.error("Error while closing the inventory report {}", getReport(), e);
+    }
   }
 
   @Override
   public Report afterAllExecute(IndexService index, ModelService model, StorageService storage) throws PluginException {
-    CSVFormat csvFileFormat = CSVFormat.DEFAULT.withRecordSeparator("\n");
-    Path csvTempFolder = getJobCSVTempFolder();
-
-    if (csvTempFolder != null) {
-      List<Path> partials = new ArrayList<>();
-      try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(csvTempFolder);
-        FileWriter fileWriter = new FileWriter(output.toFile());
-        CSVPrinter csvFilePrinter = new CSVPrinter(fileWriter, csvFileFormat)) {
-        if (enableHeaders) {
-          csvFilePrinter.printRecord(fields);
-        }
-        for (Path path : directoryStream) {
-          partials.add(path);
-        }
-      } catch (IOException e) {
-        LOGGER.error("Error while merging partial CSVs", e);
-      }
-      try {
-        InventoryReportPluginUtils.mergeFiles(partials, output);
-        FSUtils.deletePathQuietly(csvTempFolder);
-        try {
-          JobsHelper.createJobAttachment(PluginHelper.getJobId(this), output);
-        } catch (AuthorizationDeniedException | GenericException | NotFoundException | RequestNotValidException e) {
-          LOGGER.error("Error while creating attached files", e);
-        }
-      } catch (IOException e) {
-        LOGGER.error("Error while merging partial CSVs", e);
-      }
+    try {
+      Path report = InventoryReportWriter.finish(getReport(), enableHeaders ? fields : null, compress);
+      JobsHelper.createJobAttachment(PluginHelper.getJobId(this), report);
+    } catch (IOException e) {
+      LOGGER.error("Error while finishing the inventory report", e);
+    } catch (AuthorizationDeniedException | GenericException | NotFoundException | RequestNotValidException e) {
+      LOGGER.error("Error while creating attached files", e);
     }
     return new Report();
   }
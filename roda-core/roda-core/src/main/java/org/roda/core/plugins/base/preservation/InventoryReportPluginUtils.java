@@ -8,29 +8,42 @@
 package org.roda.core.plugins.base.preservation;
 
 import java.io.IOException;
-import java.nio.channels.FileChannel;
-import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
+import java.io.InputStream;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.lang3.StringUtils;
+import org.roda.core.RodaCoreFactory;
 import org.roda.core.common.PremisV3Utils;
 import org.roda.core.common.iterables.CloseableIterable;
+import org.roda.core.data.common.RodaConstants;
 import org.roda.core.data.exceptions.AuthorizationDeniedException;
 import org.roda.core.data.exceptions.GenericException;
 import org.roda.core.data.exceptions.NotFoundException;
 import org.roda.core.data.exceptions.RequestNotValidException;
 import org.roda.core.data.v2.common.OptionalWithCause;
+import org.roda.core.data.v2.index.filter.Filter;
+import org.roda.core.data.v2.index.filter.SimpleFilterParameter;
 import org.roda.core.data.v2.ip.AIP;
 import org.roda.core.data.v2.ip.File;
+import org.roda.core.data.v2.ip.IndexedFile;
 import org.roda.core.data.v2.ip.Representation;
 import org.roda.core.data.v2.ip.StoragePath;
 import org.roda.core.data.v2.ip.metadata.DescriptiveMetadata;
 import org.roda.core.data.v2.ip.metadata.Fixity;
 import org.roda.core.data.v2.ip.metadata.OtherMetadata;
+import org.roda.core.index.IndexService;
 import org.roda.core.model.ModelService;
 import org.roda.core.model.utils.ModelUtils;
 import org.roda.core.storage.Binary;
@@ -40,194 +53,188 @@ import org.roda.core.util.FileUtility;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Builds the records of the inventory report of an AIP.
+ *
+ * <p>
+ * The data files are listed from the index, along with the fixity information
+ * of their PREMIS files, falling back to storage if the AIP is not indexed.
+ * Checksums that are not known (and those of metadata files, which have no
+ * fixity information) are computed on a pool shared by all inventory report
+ * jobs of the node, configured by
+ * {@code core.plugins.internal.inventory_report.checksum_threads}.
+ * </p>
+ */
 public class InventoryReportPluginUtils {
   private static final Logger LOGGER = LoggerFactory.getLogger(InventoryReportPluginUtils.class);
 
+  private static final List<String> INDEXED_FILE_FIELDS = Arrays.asList(RodaConstants.INDEX_UUID,
+    RodaConstants.INDEX_ID, RodaConstants.FILE_PATH, RodaConstants.FILE_REPRESENTATION_ID, RodaConstants.FILE_AIP_ID,
+    RodaConstants.FILE_ISDIRECTORY, RodaConstants.FILE_HASH);
+
+  private static ExecutorService checksumExecutor;
+
   private InventoryReportPluginUtils() {
     // do nothing
   }
 
-  public static void mergeFiles(List<Path> files, Path mergedFile) throws IOException {
-    try (FileChannel out = FileChannel.open(mergedFile, StandardOpenOption.APPEND, StandardOpenOption.WRITE)) {
-      for (Path path : files) {
-        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
-          for (long p = 0, l = in.size(); p < l;) {
-            p += in.transferTo(p, l - p, out);
-          }
-        }
-      }
-    } catch (IOException e) {
-      throw e;
+  /**
+   * A line of the report, before its checksums are known.
+   */
+  public static class InventoryEntry {
+    private final String aipId;
+    private final String representationId;
+    private final String filePath;
+    private final String fileId;
+    private final boolean directory;
+    private final String type;
+    private final StoragePath storagePath;
+    private final Map<String, String> checksums = new HashMap<>();
+
+    InventoryEntry(String aipId, String representationId, String filePath, String fileId, boolean directory,
+      String type, StoragePath storagePath) {
+      this.aipId = aipId;
+      this.representationId = representationId;
+      this.filePath = filePath;
+      this.fileId = fileId;
+      this.directory = directory;
+      this.type = type;
+      this.storagePath = storagePath;
     }
   }
 
-  public static List<List<String>> getDataInformation(List<String> fields, AIP aip, ModelService model,
-    StorageService storage) {
-    List<List<String>> dataInformation = new ArrayList<>();
-    for (Representation representation : aip.getRepresentations()) {
-      boolean recursive = true;
-      try (CloseableIterable<OptionalWithCause<File>> representationFiles = model.listFilesUnder(aip.getId(),
-        representation.getId(), recursive)) {
-        for (OptionalWithCause<File> subfile : representationFiles) {
-          if (subfile.isPresent()) {
-            dataInformation.add(retrieveFileInfo(fields, subfile.get(), aip, model, storage));
-          } else {
-            LOGGER.error("Cannot retrieve file information", subfile.getCause());
-          }
-        }
-      } catch (NotFoundException | GenericException | RequestNotValidException | AuthorizationDeniedException
-        | IOException e) {
-        LOGGER.error("Error retrieving files of representation '{}' of AIP '{}': " + e.getMessage(),
-          representation.getId(), aip.getId());
-      }
+  private static synchronized ExecutorService getChecksumExecutor() {
+    if (checksumExecutor == null) {
+      int threads = RodaCoreFactory.getProperty("core.plugins.internal.inventory_report.checksum_threads",
+        Runtime.getRuntime().availableProcessors());
+      AtomicInteger count = new AtomicInteger();
+      checksumExecutor = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+        Thread thread = new Thread(runnable, "inventory-checksum-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
     }
-    return dataInformation;
+    return checksumExecutor;
   }
 
-  public static List<List<String>> getDescriptiveMetadataInformation(List<String> fields, AIP aip, ModelService model,
-    StorageService storage) {
-    List<List<String>> descriptiveMetadataInformation = new ArrayList<>();
-    for (DescriptiveMetadata dm : aip.getDescriptiveMetadata()) {
-      descriptiveMetadataInformation.add(retrieveDescriptiveMetadataInfo(fields, aip, dm, storage));
+  public static List<InventoryEntry> getDataInformation(AIP aip, IndexService index, ModelService model) {
+    List<InventoryEntry> entries = new ArrayList<>();
+    Filter filter = new Filter(new SimpleFilterParameter(RodaConstants.FILE_AIP_ID, aip.getId()));
+    try (CloseableIterable<IndexedFile> files = index.findAll(IndexedFile.class, filter, false, INDEXED_FILE_FIELDS)) {
+      for (IndexedFile file : files) {
+        InventoryEntry entry = new InventoryEntry(file.getAipId(), file.getRepresentationId(),
+          FSUtils.asString(file.getPath()), file.getId(), file.isDirectory(),
+          InventoryReportPlugin.CSV_LINE_TYPE.DATA.toString(), ModelUtils.getFileStoragePath(file.getAipId(),
+            file.getRepresentationId(), file.getPath(), file.getId()));
+        addIndexedChecksums(entry, file.getHash());
+        entries.add(entry);
+      }
+    } catch (GenericException | RequestNotValidException | IOException e) {
+      LOGGER.error("Error listing the indexed files of AIP '{}'", aip.getId(), e);
     }
 
-    if (aip.getRepresentations() != null) {
-      for (Representation r : aip.getRepresentations()) {
-        for (DescriptiveMetadata dm : r.getDescriptiveMetadata()) {
-          descriptiveMetadataInformation.add(retrieveDescriptiveMetadataInfo(fields, aip, dm, storage));
-        }
+    if (entries.isEmpty()) {
+      for (Representation representation : aip.getRepresentations()) {
+        entries.addAll(getStoredDataInformation(aip, representation, model));
       }
     }
+    return entries;
+  }
 
-    return descriptiveMetadataInformation;
+  /**
+   * Adds the checksums of an indexed file, each formatted as
+   * {@code <digest> (<algorithm>[, <originator>])}.
+   */
+  private static void addIndexedChecksums(InventoryEntry entry, List<String> hashes) {
+    if (hashes != null) {
+      for (String hash : hashes) {
+        int start = hash.indexOf(" (");
+        if (start > 0 && hash.endsWith(")")) {
+          String algorithm = StringUtils.substringBefore(hash.substring(start + 2, hash.length() - 1), ",");
+          entry.checksums.put(algorithm.trim().toUpperCase(), hash.substring(0, start));
+        }
+      }
+    }
   }
 
-  private static List<String> retrieveDescriptiveMetadataInfo(List<String> fields, AIP aip, DescriptiveMetadata dm,
-    StorageService storage) {
-    List<String> fileInfo = new ArrayList<>();
-    Map<String, String> fixities = null;
-    for (String fieldName : fields) {
-      if (fieldName.equalsIgnoreCase(InventoryReportPlugin.CSV_FIELD_SIP_ID)) {
-        fileInfo.add(FSUtils.asString(aip.getIngestSIPIds()));
-      } else if (fieldName.equalsIgnoreCase(InventoryReportPlugin.CSV_FIELD_AIP_ID)) {
-        fileInfo.add(dm.getAipId());
-      } else if (fieldName.equalsIgnoreCase(InventoryReportPlugin.CSV_FIELD_REPRESENTATION_ID)) {
-        fileInfo.add(dm.getRepresentationId());
-      } else if (fieldName.equalsIgnoreCase(InventoryReportPlugin.CSV_FIELD_FILE_PATH)) {
-        fileInfo.add("");
-      } else if (fieldName.equalsIgnoreCase(InventoryReportPlugin.CSV_FIELD_FILE_ID)) {
-        fileInfo.add(dm.getId());
-      } else if (fieldName.equalsIgnoreCase(InventoryReportPlugin.CSV_FIELD_PARENT_ID)) {
-        fileInfo.add(aip.getParentId());
-      } else if (fieldName.equalsIgnoreCase(InventoryReportPlugin.CSV_FIELD_ISDIRECTORY)) {
-        fileInfo.add("false");
-      } else if (InventoryReportPlugin.CHECKSUM_ALGORITHMS.contains(fieldName.toUpperCase())) {
-        if (fixities == null) {
-          try {
-            StoragePath descriptiveMetadataStoragePath = ModelUtils.getDescriptiveMetadataStoragePath(dm);
-            Binary descriptiveMetadataBinary = storage.getBinary(descriptiveMetadataStoragePath);
-            fixities = FileUtility.checksums(descriptiveMetadataBinary.getContent().createInputStream(),
-              InventoryReportPlugin.CHECKSUM_ALGORITHMS);
-          } catch (IOException | GenericException | RequestNotValidException | NotFoundException
-            | AuthorizationDeniedException | NoSuchAlgorithmException e) {
-            LOGGER.error("Error while calculating fixities for descriptive metadata '" + dm.getId() + "' of AIP '"
-              + dm.getAipId() + "': " + e.getMessage(), e);
+  private static List<InventoryEntry> getStoredDataInformation(AIP aip, Representation representation,
+    ModelService model) {
+    List<InventoryEntry> entries = new ArrayList<>();
+    boolean recursive = true;
+    try (CloseableIterable<OptionalWithCause<File>> representationFiles = model.listFilesUnder(aip.getId(),
+      representation.getId(), recursive)) {
+      for (OptionalWithCause<File> subfile : representationFiles) {
+        if (subfile.isPresent()) {
+          File file = subfile.get();
+          InventoryEntry entry = new InventoryEntry(file.getAipId(), file.getRepresentationId(),
+            FSUtils.asString(file.getPath()), file.getId(), file.isDirectory(),
+            InventoryReportPlugin.CSV_LINE_TYPE.DATA.toString(), ModelUtils.getFileStoragePath(file));
+          if (!file.isDirectory()) {
+            addPreservationChecksums(entry, file, model);
           }
-        }
-        if (fixities != null) {
-          fileInfo.add(fixities.containsKey(fieldName) ? fixities.get(fieldName) : "");
+          entries.add(entry);
         } else {
-          fileInfo.add("");
+          LOGGER.error("Cannot retrieve file information", subfile.getCause());
         }
-      } else if (fieldName.equalsIgnoreCase(InventoryReportPlugin.CSV_FILE_TYPE)) {
-        fileInfo.add(InventoryReportPlugin.CSV_LINE_TYPE.METADATA_DESCRIPTIVE.toString());
-      } else {
-        fileInfo.add("");
       }
+    } catch (NotFoundException | GenericException | RequestNotValidException | AuthorizationDeniedException
+      | IOException e) {
+      LOGGER.error("Error retrieving files of representation '{}' of AIP '{}': " + e.getMessage(),
+        representation.getId(), aip.getId());
     }
-
-    return fileInfo;
+    return entries;
   }
 
-  public static List<String> retrieveFileInfo(List<String> fields, File file, AIP aip, ModelService model,
-    StorageService storage) {
-
-    List<String> fileInfo = new ArrayList<>();
-    List<Fixity> fixities = null;
-
-    for (String fieldName : fields) {
-      if (fieldName.equalsIgnoreCase(InventoryReportPlugin.CSV_FIELD_SIP_ID)) {
-        fileInfo.add(FSUtils.asString(aip.getIngestSIPIds()));
-      } else if (fieldName.equalsIgnoreCase(InventoryReportPlugin.CSV_FIELD_AIP_ID)) {
-        fileInfo.add(file.getAipId());
-      } else if (fieldName.equalsIgnoreCase(InventoryReportPlugin.CSV_FIELD_REPRESENTATION_ID)) {
-        fileInfo.add(file.getRepresentationId());
-      } else if (fieldName.equalsIgnoreCase(InventoryReportPlugin.CSV_FIELD_FILE_PATH)) {
-        fileInfo.add(FSUtils.asString(file.getPath()));
-      } else if (fieldName.equalsIgnoreCase(InventoryReportPlugin.CSV_FIELD_FILE_ID)) {
-        fileInfo.add(file.getId());
-      } else if (fieldName.equalsIgnoreCase(InventoryReportPlugin.CSV_FIELD_PARENT_ID)) {
-        fileInfo.add(aip.getParentId());
-      } else if (fieldName.equalsIgnoreCase(InventoryReportPlugin.CSV_FIELD_ISDIRECTORY)) {
-        fileInfo.add(String.valueOf(file.isDirectory()));
-      } else if (InventoryReportPlugin.CHECKSUM_ALGORITHMS.contains(fieldName.toUpperCase())) {
-        if (!file.isDirectory()) {
-          if (fixities == null) {
-            try {
-              fixities = PremisV3Utils.extractFixities(model.retrievePreservationFile(file));
-            } catch (GenericException | RequestNotValidException | NotFoundException | AuthorizationDeniedException
-              | IOException e) {
-              LOGGER.error("Error extracting fixities from premis file.", e);
-            }
-          }
-
-          if (fixities != null) {
-            fileInfo.add(getFixity(fieldName, fixities, file, storage));
-          } else {
-            fileInfo.add("");
-          }
+  private static void addPreservationChecksums(InventoryEntry entry, File file, ModelService model) {
+    try {
+      for (Fixity fixity : PremisV3Utils.extractFixities(model.retrievePreservationFile(file))) {
+        if (fixity.getMessageDigestAlgorithm() != null && StringUtils.isNotBlank(fixity.getMessageDigest())) {
+          entry.checksums.put(fixity.getMessageDigestAlgorithm().toUpperCase(), fixity.getMessageDigest());
         }
-      } else if (fieldName.equalsIgnoreCase(InventoryReportPlugin.CSV_FILE_TYPE)) {
-        fileInfo.add(InventoryReportPlugin.CSV_LINE_TYPE.DATA.toString());
-      } else {
-        fileInfo.add("");
       }
+    } catch (GenericException | RequestNotValidException | NotFoundException | AuthorizationDeniedException
+      | IOException e) {
+      LOGGER.error("Error extracting fixities from premis file.", e);
     }
-
-    return fileInfo;
   }
 
-  private static String getFixity(String fixityAlgorithm, List<Fixity> fixities, File file, StorageService storage) {
-    String fixity = "";
-    if (fixities != null && !fixities.isEmpty()) {
-      for (Fixity f : fixities) {
-        if (f.getMessageDigestAlgorithm() != null && f.getMessageDigestAlgorithm().equalsIgnoreCase(fixityAlgorithm)) {
-          fixity = f.getMessageDigest();
-          break;
-        }
+  public static List<InventoryEntry> getDescriptiveMetadataInformation(AIP aip) {
+    List<InventoryEntry> entries = new ArrayList<>();
+    List<DescriptiveMetadata> descriptiveMetadata = new ArrayList<>(aip.getDescriptiveMetadata());
+    if (aip.getRepresentations() != null) {
+      for (Representation representation : aip.getRepresentations()) {
+        descriptiveMetadata.addAll(representation.getDescriptiveMetadata());
       }
     }
-    if (StringUtils.isBlank(fixity)) {
+
+    for (DescriptiveMetadata dm : descriptiveMetadata) {
       try {
-        Binary binary = storage.getBinary(ModelUtils.getFileStoragePath(file));
-        fixity = FileUtility.checksum(binary.getContent().createInputStream(), fixityAlgorithm);
-      } catch (NoSuchAlgorithmException | IOException | GenericException | RequestNotValidException | NotFoundException
-        | AuthorizationDeniedException e) {
-        fixity = "";
+        entries.add(new InventoryEntry(dm.getAipId(), dm.getRepresentationId(), "", dm.getId(), false,
+          InventoryReportPlugin.CSV_LINE_TYPE.METADATA_DESCRIPTIVE.toString(),
+          ModelUtils.getDescriptiveMetadataStoragePath(dm)));
+      } catch (RequestNotValidException e) {
+        LOGGER.error("Error getting the storage path of descriptive metadata '{}' of AIP '{}'", dm.getId(),
+          dm.getAipId(), e);
       }
     }
-    return fixity;
+    return entries;
   }
 
-  public static List<List<String>> getOtherMetadataInformation(List<String> fields, String otherMetadataType, AIP aip,
-    ModelService model, StorageService storage) {
-    List<List<String>> otherMetadataInformation = new ArrayList<>();
+  public static List<InventoryEntry> getOtherMetadataInformation(String otherMetadataType, AIP aip,
+    ModelService model) {
+    List<InventoryEntry> entries = new ArrayList<>();
 
     try (CloseableIterable<OptionalWithCause<OtherMetadata>> otherMetadatas = model.listOtherMetadata(aip.getId(),
       otherMetadataType, true)) {
       for (OptionalWithCause<OtherMetadata> otherMetadata : otherMetadatas) {
         if (otherMetadata.isPresent()) {
-          otherMetadataInformation.add(retrieveOtherMetadataInfo(fields, otherMetadata.get(), aip, storage));
+          OtherMetadata om = otherMetadata.get();
+          entries.add(new InventoryEntry(om.getAipId(), om.getRepresentationId(),
+            FSUtils.asString(om.getFileDirectoryPath()),
+            om.getFileId() + (om.getFileSuffix() != null ? om.getFileSuffix() : ""), false,
+            InventoryReportPlugin.CSV_LINE_TYPE.METADATA_OTHER.toString() + "_" + om.getType().toUpperCase(),
+            ModelUtils.getOtherMetadataStoragePath(om.getAipId(), om.getRepresentationId(),
+              om.getFileDirectoryPath(), om.getFileId(), om.getFileSuffix(), om.getType())));
         } else {
           LOGGER.error("Cannot retrieve other metadata information", otherMetadata.getCause());
         }
@@ -237,57 +244,84 @@ public class InventoryReportPluginUtils {
       LOGGER.error("Error retrieving other metadata.", e);
     }
 
-    return otherMetadataInformation;
+    return entries;
   }
 
-  private static List<String> retrieveOtherMetadataInfo(List<String> fields, OtherMetadata otherMetadata, AIP aip,
-    StorageService storage) {
+  /**
+   * Computes the checksums of the entries that are asked for and not known, all
+   * at the same time on the checksum pool, and builds the records of the
+   * entries.
+   */
+  public static List<List<String>> getRecords(List<String> fields, AIP aip, List<InventoryEntry> entries,
+    StorageService storage) throws InterruptedException {
+    Set<String> algorithms = new LinkedHashSet<>();
+    for (String fieldName : fields) {
+      if (InventoryReportPlugin.CHECKSUM_ALGORITHMS.contains(fieldName.toUpperCase())) {
+        algorithms.add(fieldName.toUpperCase());
+      }
+    }
+
+    List<Future<Map<String, String>>> checksums = new ArrayList<>();
+    for (InventoryEntry entry : entries) {
+      Set<String> missing = new LinkedHashSet<>(algorithms);
+      missing.removeAll(entry.checksums.keySet());
+      if (entry.directory || missing.isEmpty()) {
+        checksums.add(null);
+      } else {
+        checksums.add(getChecksumExecutor().submit(() -> computeChecksums(entry, missing, storage)));
+      }
+    }
+
+    List<List<String>> records = new ArrayList<>();
+    for (int i = 0; i < entries.size(); i++) {
+      InventoryEntry entry = entries.get(i);
+      if (checksums.get(i) != null) {
+        try {
+          entry.checksums.putAll(checksums.get(i).get());
+        } catch (ExecutionException e) {
+          LOGGER.error("Error while calculating fixities of '{}': {}", entry.storagePath, e.getCause().getMessage(),
+            e.getCause());
+        }
+      }
+      records.add(getRecord(fields, aip, entry));
+    }
+    return records;
+  }
+
+  private static Map<String, String> computeChecksums(InventoryEntry entry, Set<String> algorithms,
+    StorageService storage) throws GenericException, RequestNotValidException, NotFoundException,
+    AuthorizationDeniedException, IOException, NoSuchAlgorithmException {
+    Binary binary = storage.getBinary(entry.storagePath);
+    try (InputStream inputStream = binary.getContent().createInputStream()) {
+      return FileUtility.checksums(inputStream, algorithms);
+    }
+  }
+
+  private static List<String> getRecord(List<String> fields, AIP aip, InventoryEntry entry) {
     List<String> fileInfo = new ArrayList<>();
-    Map<String, String> fixities = null;
     for (String fieldName : fields) {
       if (fieldName.equalsIgnoreCase(InventoryReportPlugin.CSV_FIELD_SIP_ID)) {
         fileInfo.add(FSUtils.asString(aip.getIngestSIPIds()));
       } else if (fieldName.equalsIgnoreCase(InventoryReportPlugin.CSV_FIELD_AIP_ID)) {
-        fileInfo.add(otherMetadata.getAipId());
+        fileInfo.add(entry.aipId);
       } else if (fieldName.equalsIgnoreCase(InventoryReportPlugin.CSV_FIELD_REPRESENTATION_ID)) {
-        fileInfo.add(otherMetadata.getRepresentationId());
+        fileInfo.add(entry.representationId);
       } else if (fieldName.equalsIgnoreCase(InventoryReportPlugin.CSV_FIELD_FILE_PATH)) {
-        fileInfo.add(FSUtils.asString(otherMetadata.getFileDirectoryPath()));
+        fileInfo.add(entry.filePath);
       } else if (fieldName.equalsIgnoreCase(InventoryReportPlugin.CSV_FIELD_FILE_ID)) {
-        fileInfo.add(
-          otherMetadata.getFileId() + (otherMetadata.getFileSuffix() != null ? otherMetadata.getFileSuffix() : ""));
+        fileInfo.add(entry.fileId);
       } else if (fieldName.equalsIgnoreCase(InventoryReportPlugin.CSV_FIELD_PARENT_ID)) {
         fileInfo.add(aip.getParentId());
       } else if (fieldName.equalsIgnoreCase(InventoryReportPlugin.CSV_FIELD_ISDIRECTORY)) {
-        fileInfo.add("false");
+        fileInfo.add(String.valueOf(entry.directory));
       } else if (InventoryReportPlugin.CHECKSUM_ALGORITHMS.contains(fieldName.toUpperCase())) {
-        if (fixities == null) {
-          try {
-            Binary otherMetadataBinary = storage.getBinary(ModelUtils.getOtherMetadataStoragePath(
-              otherMetadata.getAipId(), otherMetadata.getRepresentationId(), otherMetadata.getFileDirectoryPath(),
-              otherMetadata.getFileId(), otherMetadata.getFileSuffix(), otherMetadata.getType()));
-            fixities = FileUtility.checksums(otherMetadataBinary.getContent().createInputStream(),
-              InventoryReportPlugin.CHECKSUM_ALGORITHMS);
-          } catch (IOException | GenericException | RequestNotValidException | NotFoundException
-            | AuthorizationDeniedException | NoSuchAlgorithmException e) {
-            LOGGER.error(
-              "Error while calculating fixities for other metadata '" + otherMetadata.getId() + ": " + e.getMessage(),
-              e);
-          }
-        }
-        if (fixities != null) {
-          fileInfo.add(fixities.containsKey(fieldName) ? fixities.get(fieldName) : "");
-        } else {
-          fileInfo.add("");
-        }
+        fileInfo.add(entry.checksums.getOrDefault(fieldName.toUpperCase(), ""));
       } else if (fieldName.equalsIgnoreCase(InventoryReportPlugin.CSV_FILE_TYPE)) {
-        fileInfo.add(
-          InventoryReportPlugin.CSV_LINE_TYPE.METADATA_OTHER.toString() + "_" + otherMetadata.getType().toUpperCase());
+        fileInfo.add(entry.type);
       } else {
         fileInfo.add("");
       }
     }
-
     return fileInfo;
   }
 }
@@ -0,0 +1,322 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.base.preservation;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes an inventory report, a single CSV file optionally compressed with
+ * gzip, as the AIPs are processed.
+ *
+ * <p>
+ * Each node writes the AIPs it processes to its own part file next to the
+ * report, so that nodes never write to the same file. The records of each AIP
+ * are written together. Every so often, and whenever the last worker of the
+ * node releases the writer, the part is checkpointed: what was written is
+ * flushed to disk (ending a gzip member, as a gzip file may hold several) and
+ * the AIPs written since the previous checkpoint are added to a progress file
+ * next to the part. {@link #finish(Path, List, boolean)}, called once all AIPs
+ * are processed, concatenates the header and the checkpointed content of all
+ * parts into the report and removes the parts.
+ * </p>
+ *
+ * <p>
+ * If the job ends before the report is finished (e.g. it fails or is stopped),
+ * the parts are kept and a new job writing to the same file resumes the report:
+ * each part is cut back to its last checkpoint and the AIPs already in any part
+ * are skipped.
+ * </p>
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+public class InventoryReportWriter {
+  private static final Logger LOGGER = LoggerFactory.getLogger(InventoryReportWriter.class);
+
+  private static final CSVFormat CSV_FORMAT = CSVFormat.DEFAULT.withRecordSeparator("\n");
+  private static final String PART_SUFFIX = ".part";
+  private static final String PROGRESS_SUFFIX = ".progress";
+  private static final String MERGE_SUFFIX = ".merge";
+  private static final String CHECKPOINT_PREFIX = "#";
+  private static final int CHECKPOINT_AIPS = 1000;
+  private static final long CHECKPOINT_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private static final String NODE_ID = getNodeId();
+
+  // writers of the jobs running on this node, while used by a worker
+  private static final Map<String, InventoryReportWriter> WRITERS = new HashMap<>();
+  private static final ReentrantLock WRITERS_LOCK = new ReentrantLock();
+
+  private final Path part;
+  private final Path progress;
+  private final boolean compress;
+  private final Set<String> written = new HashSet<>();
+  private final List<String> uncheckpointed = new ArrayList<>();
+  private final FileChannel channel;
+  private final OutputStream fileStream;
+  private final ReentrantLock lock = new ReentrantLock();
+  private CSVPrinter printer;
+  private long lastCheckpoint;
+  private int users = 0;
+
+  InventoryReportWriter(Path output, String nodeId, boolean compress) throws IOException {
+    this.part = output.resolveSibling(output.getFileName() + "." + nodeId + PART_SUFFIX);
+    this.progress = getProgress(part);
+    this.compress = compress;
+
+    long offset = 0;
+    if (Files.exists(progress) && Files.exists(part)) {
+      offset = readProgress(progress, written);
+    } else {
+      Files.deleteIfExists(progress);
+    }
+    for (Path otherPart : listParts(output)) {
+      if (!otherPart.equals(part)) {
+        readProgress(getProgress(otherPart), written);
+      }
+    }
+    if (!written.isEmpty()) {
+      LOGGER.info("Resuming inventory report {}, which already has {} AIPs", output, written.size());
+    }
+
+    channel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    channel.truncate(offset);
+    channel.position(offset);
+    fileStream = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+    startSegment();
+  }
+
+  private static String getNodeId() {
+    String host;
+    try {
+      host = InetAddress.getLocalHost().getHostName();
+    } catch (UnknownHostException e) {
+      host = "localhost";
+    }
+    return (host + "-" + ProcessHandle.current().pid()).replaceAll("[^A-Za-z0-9_.-]", "_");
+  }
+
+  /**
+   * Gets the writer of the report of a job on this node, opening it if no other
+   * worker of the job is using it. Each call must be followed by a
+   * {@link #release(String)} once the worker is done with the writer.
+   */
+  public static InventoryReportWriter acquire(String jobId, Path output, boolean compress) throws IOException {
+    WRITERS_LOCK.lock();
+    try {
+      InventoryReportWriter writer = WRITERS.get(jobId);
+      if (writer == null) {
+        writer = new InventoryReportWriter(output, NODE_ID, compress);
+        WRITERS.put(jobId, writer);
+      }
+      writer.users++;
+      return writer;
+    } finally {
+      WRITERS_LOCK.unlock();
+    }
+  }
+
+  /**
+   * Releases the writer of the report of a job. When no other worker of the job
+   * is using it, the writer is checkpointed and closed, so no writer is left
+   * open once the workers are done, whether the job ends, fails or is stopped.
+   */
+  public static void release(String jobId) throws IOException {
+    InventoryReportWriter writer;
+    WRITERS_LOCK.lock();
+    try {
+      writer = WRITERS.get(jobId);
+      if (writer == null || --writer.users > 0) {
+        return;
+      }
+      WRITERS.remove(jobId);
+    } finally {
+      WRITERS_LOCK.unlock();
+    }
+    writer.close();
+  }
+
+  /**
+   * Writes the report from the checkpointed content of the parts of all nodes,
+   * and removes the parts.
+   *
+   * @return the report
+   */
+  public static Path finish(Path output, List<String> header, boolean compress) throws IOException {
+    List<Path> parts = listParts(output);
+    Path merge = output.resolveSibling(output.getFileName() + MERGE_SUFFIX);
+    try {
+      try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(merge), BUFFER_SIZE)) {
+        if (header != null) {
+          try (CSVPrinter headerPrinter = newPrinter(out, compress)) {
+            headerPrinter.printRecord(header);
+          }
+        }
+        for (Path part : parts) {
+          long length = readProgress(getProgress(part), new HashSet<>());
+          try (InputStream in = Files.newInputStream(part)) {
+            IOUtils.copyLarge(in, out, 0, length);
+          }
+        }
+      }
+      Files.move(merge, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(merge);
+    }
+
+    for (Path part : parts) {
+      Files.deleteIfExists(getProgress(part));
+      Files.deleteIfExists(part);
+    }
+    return output;
+  }
+
+  private static List<Path> listParts(Path output) throws IOException {
+    String prefix = output.getFileName() + ".";
+    try (Stream<Path> files = Files.list(output.toAbsolutePath().getParent())) {
+      return files.filter(file -> {
+        String name = file.getFileName().toString();
+        return name.startsWith(prefix) && name.endsWith(PART_SUFFIX);
+      }).map(file -> output.resolveSibling(file.getFileName())).sorted().collect(Collectors.toList());
+    }
+  }
+
+  private static Path getProgress(Path part) {
+    return part.resolveSibling(part.getFileName() + PROGRESS_SUFFIX);
+  }
+
+  /**
+   * @return whether the records of the AIP are already in the report
+   */
+  public boolean isWritten(String aipId) {
+    lock.lock();
+    try {
+      return written.contains(aipId) || uncheckpointed.contains(aipId);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public void write(String aipId, List<List<String>> records) throws IOException {
+    lock.lock();
+    try {
+      printer.printRecords(records);
+      uncheckpointed.add(aipId);
+      if (uncheckpointed.size() >= CHECKPOINT_AIPS
+        || System.nanoTime() - lastCheckpoint >= CHECKPOINT_INTERVAL_NANOS) {
+        checkpoint();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Writes a checkpoint and closes the part, leaving it to be merged into the
+   * report or resumed.
+   */
+  void close() throws IOException {
+    lock.lock();
+    try {
+      checkpoint();
+      printer.close();
+      channel.close();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void checkpoint() throws IOException {
+    printer.close();
+    fileStream.flush();
+    channel.force(false);
+
+    StringBuilder lines = new StringBuilder();
+    for (String aipId : uncheckpointed) {
+      lines.append(aipId).append('\n');
+    }
+    lines.append(CHECKPOINT_PREFIX).append(channel.position()).append('\n');
+    Files.writeString(progress, lines, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND,
+      StandardOpenOption.SYNC);
+    written.addAll(uncheckpointed);
+    uncheckpointed.clear();
+    startSegment();
+  }
+
+  private void startSegment() throws IOException {
+    printer = newPrinter(fileStream, compress);
+    lastCheckpoint = System.nanoTime();
+  }
+
+  private static CSVPrinter newPrinter(OutputStream out, boolean compress) throws IOException {
+    OutputStream stream = CloseShieldOutputStream.wrap(out);
+    if (compress) {
+      stream = new GZIPOutputStream(stream, BUFFER_SIZE);
+    }
+    return new CSVPrinter(new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8)), CSV_FORMAT);
+  }
+
+  /**
+   * Reads the AIPs written to a part up to its last checkpoint.
+   *
+   * @return the size of the part at the last checkpoint
+   */
+  private static long readProgress(Path progress, Set<String> written) throws IOException {
+    if (!Files.exists(progress)) {
+      return 0;
+    }
+
+    long offset = 0;
+    List<String> aipIds = new ArrayList<>();
+    List<String> lines = new ArrayList<>(List.of(Files.readString(progress, StandardCharsets.UTF_8).split("\n", -1)));
+    // the last line is either empty or was not completely written
+    lines.remove(lines.size() - 1);
+    for (String line : lines) {
+      if (line.startsWith(CHECKPOINT_PREFIX)) {
+        offset = Long.parseLong(line.substring(CHECKPOINT_PREFIX.length()));
+        written.addAll(aipIds);
+        aipIds.clear();
+      } else {
+        aipIds.add(line);
+      }
+    }
+    return offset;
+  }
+}
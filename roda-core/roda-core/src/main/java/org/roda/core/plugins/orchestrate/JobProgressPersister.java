@@ -0,0 +1,123 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.orchestrate;
+
+import java.util.function.LongSupplier;
+
+import org.roda.core.plugins.Plugin;
+
+/**
+ * Keeps the latest job progress in memory and writes it (i.e. updates the job
+ * in storage and index) at most every <code>maxPendingUpdates</code> updates or
+ * <code>maxDelayMillis</code> milliseconds. The first update, the first failure
+ * and the completion are written right away.
+ *
+ * <p>
+ * Not thread safe, it is meant to be used by a single actor, which must call
+ * {@link #flush()} when the delay expires and before any other change to the
+ * job, so no more than one flush window can be lost.
+ * </p>
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+public class JobProgressPersister {
+
+  @FunctionalInterface
+  public interface JobInfoWriter {
+    void write(Plugin<?> plugin, JobPluginInfo jobPluginInfo);
+  }
+
+  private final JobInfoWriter writer;
+  private final int maxPendingUpdates;
+  private final long maxDelayMillis;
+  private final LongSupplier clock;
+
+  private Plugin<?> pendingPlugin = null;
+  private JobPluginInfo pendingInfo = null;
+  private int pendingUpdates = 0;
+  private long pendingSince = 0;
+  private JobPluginInfo lastWrittenInfo = null;
+  private long writes = 0;
+
+  public JobProgressPersister(JobInfoWriter writer, int maxPendingUpdates, long maxDelayMillis) {
+    this(writer, maxPendingUpdates, maxDelayMillis, System::currentTimeMillis);
+  }
+
+  public JobProgressPersister(JobInfoWriter writer, int maxPendingUpdates, long maxDelayMillis, LongSupplier clock) {
+    this.writer = writer;
+    this.maxPendingUpdates = Math.max(1, maxPendingUpdates);
+    this.maxDelayMillis = maxDelayMillis;
+    this.clock = clock;
+  }
+
+  /**
+   * @return true if the progress was written, false if it is pending and
+   *         {@link #flush()} must be called within {@link #getMaxDelayMillis()}
+   */
+  public boolean update(Plugin<?> plugin, JobPluginInfo jobPluginInfo) {
+    pendingPlugin = plugin;
+    pendingInfo = jobPluginInfo;
+    if (pendingUpdates++ == 0) {
+      pendingSince = clock.getAsLong();
+    }
+
+    if (mustBeWrittenNow(jobPluginInfo) || pendingUpdates >= maxPendingUpdates
+      || clock.getAsLong() - pendingSince >= maxDelayMillis) {
+      flush();
+      return true;
+    }
+    return false;
+  }
+
+  private boolean mustBeWrittenNow(JobPluginInfo jobPluginInfo) {
+    return lastWrittenInfo == null || isComplete(jobPluginInfo)
+      || (lastWrittenInfo.getSourceObjectsProcessedWithFailure() == 0
+        && jobPluginInfo.getSourceObjectsProcessedWithFailure() > 0);
+  }
+
+  // completion percentage is 100 while the number of objects is still unknown,
+  // so it cannot be used here
+  private static boolean isComplete(JobPluginInfo jobPluginInfo) {
+    int processed = jobPluginInfo.getSourceObjectsProcessedWithSuccess()
+      + jobPluginInfo.getSourceObjectsProcessedWithPartialSuccess()
+      + jobPluginInfo.getSourceObjectsProcessedWithFailure() + jobPluginInfo.getSourceObjectsProcessedWithSkipped();
+    return jobPluginInfo.getSourceObjectsCount() > 0 && processed >= jobPluginInfo.getSourceObjectsCount();
+  }
+
+  /**
+   * Write the pending progress, if any.
+   */
+  public void flush() {
+    if (pendingInfo != null) {
+      JobPluginInfo info = pendingInfo;
+      Plugin<?> plugin = pendingPlugin;
+      pendingInfo = null;
+      pendingPlugin = null;
+      pendingUpdates = 0;
+
+      writer.write(plugin, info);
+      lastWrittenInfo = info;
+      writes++;
+    }
+  }
+
+  public boolean hasPendingUpdates() {
+    return pendingInfo != null;
+  }
+
+  public long getMaxDelayMillis() {
+    return maxDelayMillis;
+  }
+
+  /**
+   * @return number of times the progress was written
+   */
+  public long getWrites() {
+    return writes;
+  }
+}
@@ -64,6 +64,7 @@ import org.roda.core.plugins.Plugin;
 import org.roda.core.plugins.PluginHelper;
 import org.roda.core.storage.fs.FSUtils;
 import org.roda.core.storage.utils.RODAInstanceUtils;
+import org.roda.core.util.ResourceLimits;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -79,6 +80,16 @@ public final class JobsHelper {
   private static final String MAX_LIMITED_JOBS_IN_PARALLEL_PROPERTY = "core.orchestrator.max_limited_jobs_in_parallel";
   private static final String NUMBER_OF_LIMITED_JOB_WORKERS_PROPERTY = "core.orchestrator.nr_of_limited_jobs_workers";
   private static final int DEFAULT_NUMBER_OF_LIMITED_JOBS_WORKERS = 1;
+  private static final String WORKER_THREADS_PROPERTY = "core.orchestrator.worker_threads";
+  private static final String VIRTUAL_WORKER_THREADS = "VIRTUAL";
+  private static final int DEFAULT_NUMBER_OF_VIRTUAL_JOBS_WORKERS = 256;
+  private static final String MAX_STORAGE_OPERATIONS_PROPERTY = "core.orchestrator.virtual_threads.max_storage_operations";
+  private static final String MAX_INDEX_REQUESTS_PROPERTY = "core.orchestrator.virtual_threads.max_index_requests";
+  private static final String MAX_PROCESSES_PROPERTY = "core.orchestrator.virtual_threads.max_processes";
+  private static final int DEFAULT_MAX_STORAGE_OPERATIONS = 128;
+  private static final int DEFAULT_MAX_INDEX_REQUESTS = 32;
+  private static final String NUMBER_OF_SUBTASK_WORKERS_PROPERTY = "core.orchestrator.nr_of_subtask_workers";
+  private static final String SUBTASKS_ENABLED_PROPERTY = "core.orchestrator.subtasks.enabled";
 
   private static final String LINE_SEPARATOR = System.lineSeparator();
 
@@ -105,15 +116,52 @@ public final class JobsHelper {
   }
 
   public static int getNumberOfJobsWorkers() {
-    int defaultNumberOfJobsWorkers = Runtime.getRuntime().availableProcessors();
+    int defaultNumberOfJobsWorkers = isVirtualThreadWorkersEnabled() ? DEFAULT_NUMBER_OF_VIRTUAL_JOBS_WORKERS
+      : Runtime.getRuntime().availableProcessors();
     return RodaCoreFactory.getRodaConfiguration().getInt(NUMBER_OF_JOB_WORKERS_PROPERTY, defaultNumberOfJobsWorkers);
   }
 
+  /**
+   * @return true if plugins run on virtual threads, i.e. if a blocked worker
+   *         does not keep a platform thread busy
+   */
+  public static boolean isVirtualThreadWorkersEnabled() {
+    return VIRTUAL_WORKER_THREADS
+      .equalsIgnoreCase(RodaCoreFactory.getRodaConfiguration().getString(WORKER_THREADS_PROPERTY, "PLATFORM"));
+  }
+
+  /**
+   * Limits the storage operations, index requests and external processes of
+   * the plugins running on virtual threads.
+   */
+  public static void configureResourceLimits() {
+    if (isVirtualThreadWorkersEnabled()) {
+      ResourceLimits.setLimit(ResourceLimits.Resource.STORAGE,
+        RodaCoreFactory.getRodaConfiguration().getInt(MAX_STORAGE_OPERATIONS_PROPERTY, DEFAULT_MAX_STORAGE_OPERATIONS));
+      ResourceLimits.setLimit(ResourceLimits.Resource.INDEX,
+        RodaCoreFactory.getRodaConfiguration().getInt(MAX_INDEX_REQUESTS_PROPERTY, DEFAULT_MAX_INDEX_REQUESTS));
+      ResourceLimits.setLimit(ResourceLimits.Resource.PROCESS, RodaCoreFactory.getRodaConfiguration()
+        .getInt(MAX_PROCESSES_PROPERTY, Runtime.getRuntime().availableProcessors()));
+    } else {
+      ResourceLimits.clearLimits();
+    }
+  }
+
   public static int getNumberOfLimitedJobsWorkers() {
     return RodaCoreFactory.getRodaConfiguration().getInt(NUMBER_OF_LIMITED_JOB_WORKERS_PROPERTY,
       DEFAULT_NUMBER_OF_LIMITED_JOBS_WORKERS);
   }
 
+  public static int getNumberOfSubtaskWorkers() {
+    return RodaCoreFactory.getRodaConfiguration().getInt(NUMBER_OF_SUBTASK_WORKERS_PROPERTY, getNumberOfJobsWorkers());
+  }
+
+  public static <T extends IsRODAObject> boolean isSubtaskProcessingEnabled(Plugin<T> plugin) {
+    return RodaCoreFactory.getRodaConfiguration().getBoolean(
+      SUBTASKS_ENABLED_PROPERTY + "." + plugin.getClass().getName(),
+      RodaCoreFactory.getRodaConfiguration().getBoolean(SUBTASKS_ENABLED_PROPERTY, true));
+  }
+
   /**
    * 20190527 hsilva: this should only be used for tests
    */
@@ -76,6 +76,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
 
 import scala.concurrent.Await;
 import scala.concurrent.Future;
@@ -89,6 +90,10 @@ import scala.concurrent.duration.Duration;
 public class PekkoEmbeddedPluginOrchestrator implements PluginOrchestrator {
   private static final Logger LOGGER = LoggerFactory.getLogger(PekkoEmbeddedPluginOrchestrator.class);
 
+  private static final String VIRTUAL_THREAD_WORKERS_CONFIG = String.join("\n",
+    "pekko.actor.deployment.\"/jobsManager/JobsRouter/*/*/WorkersRouter/*\".dispatcher = virtual-io-dispatcher",
+    "pekko.actor.deployment.\"/jobsManager/LimitedJobsRouter/*/*/BackgroundWorkersRouter/*\".dispatcher = virtual-io-dispatcher");
+
   private final IndexService index;
   private final ModelService model;
 
@@ -114,6 +119,13 @@ public class PekkoEmbeddedPluginOrchestrator implements PluginOrchestrator {
     inErrorJobs = new ArrayList<>();
 
     Config pekkoConfig = PekkoUtils.getPekkoConfiguration("application.conf");
+    if (JobsHelper.isVirtualThreadWorkersEnabled()) {
+      // the workers block on storage, index and external tools, so they run on
+      // virtual threads, limited by resource instead of by thread pool size
+      pekkoConfig = ConfigFactory.parseString(VIRTUAL_THREAD_WORKERS_CONFIG).withFallback(pekkoConfig);
+      LOGGER.info("Running plugins of jobs workers on virtual threads");
+    }
+    JobsHelper.configureResourceLimits();
     jobsSystem = ActorSystem.create("JobsSystem", pekkoConfig);
     // 20170105 hsilva: subscribe all dead letter so they are logged
     jobsSystem.eventStream().subscribe(jobsSystem.actorOf(Props.create(DeadLetterActor.class)), AllDeadLetters.class);
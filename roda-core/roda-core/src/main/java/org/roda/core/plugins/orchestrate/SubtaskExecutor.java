@@ -0,0 +1,181 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.orchestrate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.RODAException;
+import org.roda.core.plugins.RODASubtaskProcessingLogic;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the parts of one object (e.g. the representations of a very large AIP)
+ * at the same time, so that a single object does not keep one worker busy
+ * while the others are idle.
+ *
+ * <p>
+ * The worker that asks for the parts to be processed also processes them,
+ * taking them one by one from the same list as the threads of this node's
+ * pool ({@code core.orchestrator.nr_of_subtask_workers}), and only returns
+ * when all of them are done. So, the locks and the report of the object stay
+ * with that worker, and the object is processed even if every thread of the
+ * pool is busy with the parts of other objects.
+ * </p>
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+public class SubtaskExecutor {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SubtaskExecutor.class);
+
+  private static SubtaskExecutor instance;
+
+  private final int threads;
+  private final ExecutorService executor;
+
+  public SubtaskExecutor(int threads) {
+    this.threads = Math.max(1, threads);
+    AtomicInteger count = new AtomicInteger();
+    executor = Executors.newFixedThreadPool(this.threads, runnable -> {
+      Thread thread = new Thread(runnable, "plugin-subtask-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  private SubtaskExecutor(int threads, ThreadFactory threadFactory) {
+    this.threads = Math.max(1, threads);
+    executor = Executors.newThreadPerTaskExecutor(threadFactory);
+  }
+
+  /**
+   * @return an executor that runs each helper on a new virtual thread, at most
+   *         {@code threads} helpers for each call of
+   *         {@link #process(List, RODASubtaskProcessingLogic)}
+   */
+  public static SubtaskExecutor newVirtualThreadExecutor(int threads) {
+    return new SubtaskExecutor(threads, Thread.ofVirtual().name("plugin-subtask-", 1).factory());
+  }
+
+  /**
+   * @return the sub-task executor of this node
+   */
+  public static synchronized SubtaskExecutor getInstance() {
+    if (instance == null) {
+      int threads = JobsHelper.getNumberOfSubtaskWorkers();
+      instance = JobsHelper.isVirtualThreadWorkersEnabled() ? newVirtualThreadExecutor(threads)
+        : new SubtaskExecutor(threads);
+    }
+    return instance;
+  }
+
+  public static synchronized void shutdownInstance() {
+    if (instance != null) {
+      instance.shutdown();
+      instance = null;
+    }
+  }
+
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Processes all the sub-tasks, some of them in the threads of this executor.
+   * After the first failure no more sub-tasks are started, and the failure is
+   * thrown once the ones already started are done.
+   *
+   * @return the result of each sub-task, in the order of the sub-tasks
+   */
+  public <S, R> List<R> process(List<S> subtasks, RODASubtaskProcessingLogic<S, R> logic) throws RODAException {
+    Object[] results = new Object[subtasks.size()];
+    AtomicInteger next = new AtomicInteger();
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    Runnable processing = () -> {
+      int index;
+      while (failure.get() == null && (index = next.getAndIncrement()) < subtasks.size()) {
+        try {
+          results[index] = logic.process(subtasks.get(index));
+        } catch (Throwable e) {
+          failure.compareAndSet(null, e);
+        }
+      }
+    };
+
+    int helpers = Math.min(subtasks.size(), threads + 1) - 1;
+    CountDownLatch helpersDone = new CountDownLatch(Math.max(0, helpers));
+    List<AtomicBoolean> helpersStarted = new ArrayList<>();
+    for (int i = 0; i < helpers; i++) {
+      AtomicBoolean started = new AtomicBoolean(false);
+      helpersStarted.add(started);
+      try {
+        executor.execute(() -> {
+          if (started.compareAndSet(false, true)) {
+            try {
+              processing.run();
+            } finally {
+              helpersDone.countDown();
+            }
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        LOGGER.debug("Could not schedule a sub-task helper, processing the sub-tasks in fewer threads", e);
+      }
+    }
+
+    processing.run();
+
+    // helpers that did not start yet have nothing left to do
+    for (AtomicBoolean started : helpersStarted) {
+      if (started.compareAndSet(false, true)) {
+        helpersDone.countDown();
+      }
+    }
+
+    boolean interrupted = false;
+    while (helpersDone.getCount() > 0) {
+      try {
+        helpersDone.await();
+      } catch (InterruptedException e) {
+        // the sub-tasks already started must end before the object is released
+        interrupted = true;
+        failure.compareAndSet(null, e);
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+
+    Throwable e = failure.get();
+    if (e instanceof RODAException) {
+      throw (RODAException) e;
+    } else if (e instanceof RuntimeException) {
+      throw (RuntimeException) e;
+    } else if (e instanceof Error) {
+      throw (Error) e;
+    } else if (e != null) {
+      throw new GenericException("Sub-task was interrupted", e);
+    }
+
+    @SuppressWarnings("unchecked")
+    List<R> ret = (List<R>) Arrays.asList(results);
+    return ret;
+  }
+}
@@ -7,6 +7,7 @@
  */
 package org.roda.core.plugins.orchestrate.pekko;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Optional;
 
@@ -14,10 +15,12 @@ import org.apache.pekko.actor.ActorRef;
 import org.apache.pekko.actor.Props;
 import org.apache.pekko.actor.Terminated;
 import org.apache.pekko.routing.RoundRobinPool;
+import org.roda.core.RodaCoreFactory;
 import org.roda.core.common.pekko.PekkoBaseActor;
 import org.roda.core.common.pekko.Messages;
 import org.roda.core.common.pekko.messages.AbstractMessage;
 import org.roda.core.common.pekko.messages.jobs.JobCleanup;
+import org.roda.core.common.pekko.messages.jobs.JobInfoFlush;
 import org.roda.core.common.pekko.messages.jobs.JobInfoUpdated;
 import org.roda.core.common.pekko.messages.jobs.JobInitEnded;
 import org.roda.core.common.pekko.messages.jobs.JobSourceObjectsUpdated;
@@ -47,6 +50,7 @@ import org.roda.core.plugins.PluginException;
 import org.roda.core.plugins.PluginHelper;
 import org.roda.core.plugins.orchestrate.JobInfo;
 import org.roda.core.plugins.orchestrate.JobPluginInfo;
+import org.roda.core.plugins.orchestrate.JobProgressPersister;
 import org.roda.core.plugins.orchestrate.JobsHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -57,6 +61,8 @@ import com.google.common.collect.Iterables;
 
 public class PekkoJobStateInfoActor extends PekkoBaseActor {
   private static final Logger LOGGER = LoggerFactory.getLogger(PekkoJobStateInfoActor.class);
+  private static final String JOB_PROGRESS_MAX_PENDING_UPDATES = "core.orchestrator.job_progress.max_pending_updates";
+  private static final String JOB_PROGRESS_MAX_DELAY = "core.orchestrator.job_progress.max_delay_ms";
 
   private JobInfo jobInfo;
   private Plugin<?> plugin;
@@ -67,6 +73,8 @@ public class PekkoJobStateInfoActor extends PekkoBaseActor {
   boolean stopping = false;
   boolean errorDuringBeforeAll = false;
   private String jobId;
+  private JobProgressPersister jobProgressPersister;
+  private boolean jobInfoFlushScheduled = false;
 
   // metrics
   // private Map<String, Histogram> stateMessagesMetrics;
@@ -94,6 +102,13 @@ public class PekkoJobStateInfoActor extends PekkoBaseActor {
 
     JobsHelper.createJobWorkingDirectory(jobId);
 
+    // job progress is written to storage and index at most every N updates or T
+    // milliseconds, instead of once per processed object
+    jobProgressPersister = new JobProgressPersister(
+      (p, info) -> JobsHelper.updateJobInformation(p, getModel(), info),
+      RodaCoreFactory.getRodaConfiguration().getInt(JOB_PROGRESS_MAX_PENDING_UPDATES, 1000),
+      RodaCoreFactory.getRodaConfiguration().getLong(JOB_PROGRESS_MAX_DELAY, 2000L));
+
     String className = PekkoJobStateInfoActor.class.getSimpleName();
     // stateMessagesMetrics = new HashMap<>();
     stateMessagesMetricsHistogram = getMetricRegistry()
@@ -111,6 +126,8 @@ public class PekkoJobStateInfoActor extends PekkoBaseActor {
       handleJobSourceObjectsUpdated(msg);
     } else if (msg instanceof JobInfoUpdated) {
       handleJobInfoUpdated(msg);
+    } else if (msg instanceof JobInfoFlush) {
+      handleJobInfoFlush(msg);
     } else if (msg instanceof JobStop) {
       handleJobStop(msg);
     } else if (msg instanceof Terminated) {
@@ -133,8 +150,16 @@ public class PekkoJobStateInfoActor extends PekkoBaseActor {
     }
   }
 
+  @Override
+  public void postStop() throws Exception {
+    jobProgressPersister.flush();
+    super.postStop();
+  }
+
   private void handleJobStateUpdated(JobStateUpdated message) {
     markMessageProcessingAsStarted(message);
+    // counters must be up to date before the state changes (e.g. to final)
+    jobProgressPersister.flush();
     Plugin<?> p = message.getPlugin() == null ? this.plugin : message.getPlugin();
     JobParallelism parallelism = null;
     try {
@@ -164,6 +189,7 @@ public class PekkoJobStateInfoActor extends PekkoBaseActor {
   private void handleJobStateDetailsUpdated(JobStateDetailsUpdated message) {
     markMessageProcessingAsStarted(message);
     Plugin<?> p = message.getPlugin() == null ? this.plugin : message.getPlugin();
+    jobProgressPersister.flush();
     JobsHelper.updateJobStateDetails(p, getModel(), message.getStateDetails());
     markMessageProcessingAsEnded(message);
   }
@@ -171,6 +197,7 @@ public class PekkoJobStateInfoActor extends PekkoBaseActor {
   private <T extends IsRODAObject> void handleJobSourceObjectsUpdated(Object msg) {
     JobSourceObjectsUpdated message = (JobSourceObjectsUpdated) msg;
     markMessageProcessingAsStarted(message);
+    jobProgressPersister.flush();
     try {
       Job job = PluginHelper.getJob(plugin, getModel());
       SelectedItems<?> sourceObjects = job.getSourceObjects();
@@ -200,7 +227,20 @@ public class PekkoJobStateInfoActor extends PekkoBaseActor {
     jobInfo.put(message.getPlugin(), message.getJobPluginInfo());
     JobPluginInfo infoUpdated = message.getJobPluginInfo().processJobPluginInformation(message.getPlugin(), jobInfo);
     jobInfo.setObjectsCount(infoUpdated.getSourceObjectsCount());
-    JobsHelper.updateJobInformation(message.getPlugin(), getModel(), infoUpdated);
+    if (!jobProgressPersister.update(message.getPlugin(), infoUpdated) && !jobInfoFlushScheduled) {
+      getContext().system().scheduler().scheduleOnce(
+        Duration.ofMillis(jobProgressPersister.getMaxDelayMillis()), getSelf(),
+        Messages.newJobInfoFlush(), getContext().system().dispatcher(), getSelf());
+      jobInfoFlushScheduled = true;
+    }
+    markMessageProcessingAsEnded(message);
+  }
+
+  private void handleJobInfoFlush(Object msg) {
+    JobInfoFlush message = (JobInfoFlush) msg;
+    markMessageProcessingAsStarted(message);
+    jobInfoFlushScheduled = false;
+    jobProgressPersister.flush();
     markMessageProcessingAsEnded(message);
   }
 
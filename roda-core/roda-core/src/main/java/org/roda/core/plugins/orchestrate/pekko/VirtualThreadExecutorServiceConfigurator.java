@@ -0,0 +1,43 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.plugins.orchestrate.pekko;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.pekko.dispatch.DispatcherPrerequisites;
+import org.apache.pekko.dispatch.ExecutorServiceConfigurator;
+import org.apache.pekko.dispatch.ExecutorServiceFactory;
+
+import com.typesafe.config.Config;
+
+/**
+ * Executor of a dispatcher that runs each task on a new virtual thread, so that
+ * the actors blocked on I/O (e.g. workers executing a plugin) do not keep a
+ * platform thread busy. Used in the dispatcher configuration as
+ * {@code executor = "org.roda.core.plugins.orchestrate.pekko.VirtualThreadExecutorServiceConfigurator"}.
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+public class VirtualThreadExecutorServiceConfigurator extends ExecutorServiceConfigurator {
+
+  public VirtualThreadExecutorServiceConfigurator(Config config, DispatcherPrerequisites prerequisites) {
+    super(config, prerequisites);
+  }
+
+  @Override
+  public ExecutorServiceFactory createExecutorServiceFactory(String id, ThreadFactory threadFactory) {
+    return new ExecutorServiceFactory() {
+      @Override
+      public ExecutorService createExecutorService() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(id + "-", 1).factory());
+      }
+    };
+  }
+}
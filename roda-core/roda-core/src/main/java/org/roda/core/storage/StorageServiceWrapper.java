@@ -7,11 +7,14 @@
  */
 package org.roda.core.storage;
 
+import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
 import org.roda.core.RodaCoreFactory;
+import org.roda.core.common.FixityCache;
 import org.roda.core.common.iterables.CloseableIterable;
 import org.roda.core.data.common.RodaConstants.NodeType;
 import org.roda.core.data.exceptions.AlreadyExistsException;
@@ -20,7 +23,26 @@ import org.roda.core.data.exceptions.GenericException;
 import org.roda.core.data.exceptions.NotFoundException;
 import org.roda.core.data.exceptions.RequestNotValidException;
 import org.roda.core.data.v2.ip.StoragePath;
+import org.roda.core.util.ResourceLimits;
 
+/**
+ * Storage service of the node, checking if writing is allowed and, for plugins
+ * running on virtual threads, limiting concurrent storage operations (see
+ * {@link ResourceLimits}).
+ *
+ * <p>
+ * Listings, which are read lazily, use a permit while each entry is read, and
+ * direct accesses while fetching their path. The content of binaries is not
+ * limited: it is read after the operation returns, through the payload of the
+ * binary, which is not wrapped because callers look at the type of binaries
+ * and payloads.
+ * </p>
+ *
+ * <p>
+ * Writes also drop the checksums kept in {@link FixityCache} for the binaries
+ * they change.
+ * </p>
+ */
 public class StorageServiceWrapper implements StorageService {
   private StorageService storageService;
   private NodeType nodeType;
@@ -37,88 +59,110 @@ public class StorageServiceWrapper implements StorageService {
 
   @Override
   public boolean exists(StoragePath storagePath) {
-    return storageService.exists(storagePath);
+    try (ResourceLimits.Permit permit = ResourceLimits.acquire(ResourceLimits.Resource.STORAGE)) {
+      return storageService.exists(storagePath);
+    }
   }
 
   @Override
   public CloseableIterable<Container> listContainers()
     throws GenericException, AuthorizationDeniedException, RequestNotValidException, NotFoundException {
-    return storageService.listContainers();
+    return listWithPermits(() -> storageService.listContainers());
   }
 
   @Override
   public Container createContainer(StoragePath storagePath)
     throws GenericException, AlreadyExistsException, AuthorizationDeniedException, RequestNotValidException {
     RodaCoreFactory.checkIfWriteIsAllowedAndIfFalseThrowException(nodeType);
-    return storageService.createContainer(storagePath);
+    try (ResourceLimits.Permit permit = ResourceLimits.acquire(ResourceLimits.Resource.STORAGE)) {
+      return storageService.createContainer(storagePath);
+    }
   }
 
   @Override
   public Container getContainer(StoragePath storagePath)
     throws GenericException, RequestNotValidException, NotFoundException, AuthorizationDeniedException {
-    return storageService.getContainer(storagePath);
+    try (ResourceLimits.Permit permit = ResourceLimits.acquire(ResourceLimits.Resource.STORAGE)) {
+      return storageService.getContainer(storagePath);
+    }
   }
 
   @Override
   public void deleteContainer(StoragePath storagePath)
     throws NotFoundException, GenericException, AuthorizationDeniedException {
     RodaCoreFactory.checkIfWriteIsAllowedAndIfFalseThrowException(nodeType);
-    storageService.deleteContainer(storagePath);
+    try (ResourceLimits.Permit permit = ResourceLimits.acquire(ResourceLimits.Resource.STORAGE)) {
+      storageService.deleteContainer(storagePath);
+    } finally {
+      FixityCache.invalidateRecursively(storagePath);
+    }
   }
 
   @Override
   public CloseableIterable<Resource> listResourcesUnderContainer(StoragePath storagePath, boolean recursive)
     throws NotFoundException, GenericException, AuthorizationDeniedException, RequestNotValidException {
-    return storageService.listResourcesUnderContainer(storagePath, recursive);
+    return listWithPermits(() -> storageService.listResourcesUnderContainer(storagePath, recursive));
   }
 
   @Override
   public Long countResourcesUnderContainer(StoragePath storagePath, boolean recursive)
     throws AuthorizationDeniedException, RequestNotValidException, NotFoundException, GenericException {
-    return storageService.countResourcesUnderContainer(storagePath, recursive);
+    try (ResourceLimits.Permit permit = ResourceLimits.acquire(ResourceLimits.Resource.STORAGE)) {
+      return storageService.countResourcesUnderContainer(storagePath, recursive);
+    }
   }
 
   @Override
   public Directory createDirectory(StoragePath storagePath)
     throws AlreadyExistsException, GenericException, AuthorizationDeniedException {
     RodaCoreFactory.checkIfWriteIsAllowedAndIfFalseThrowException(nodeType);
-    return storageService.createDirectory(storagePath);
+    try (ResourceLimits.Permit permit = ResourceLimits.acquire(ResourceLimits.Resource.STORAGE)) {
+      return storageService.createDirectory(storagePath);
+    }
   }
 
   @Override
   public Directory createRandomDirectory(StoragePath parentStoragePath) throws RequestNotValidException,
     GenericException, NotFoundException, AlreadyExistsException, AuthorizationDeniedException {
     RodaCoreFactory.checkIfWriteIsAllowedAndIfFalseThrowException(nodeType);
-    return storageService.createRandomDirectory(parentStoragePath);
+    try (ResourceLimits.Permit permit = ResourceLimits.acquire(ResourceLimits.Resource.STORAGE)) {
+      return storageService.createRandomDirectory(parentStoragePath);
+    }
   }
 
   @Override
   public Directory getDirectory(StoragePath storagePath)
     throws RequestNotValidException, NotFoundException, GenericException, AuthorizationDeniedException {
-    return storageService.getDirectory(storagePath);
+    try (ResourceLimits.Permit permit = ResourceLimits.acquire(ResourceLimits.Resource.STORAGE)) {
+      return storageService.getDirectory(storagePath);
+    }
   }
 
   @Override
   public boolean hasDirectory(StoragePath storagePath) {
-    return storageService.hasDirectory(storagePath);
+    try (ResourceLimits.Permit permit = ResourceLimits.acquire(ResourceLimits.Resource.STORAGE)) {
+      return storageService.hasDirectory(storagePath);
+    }
   }
 
   @Override
   public CloseableIterable<Resource> listResourcesUnderDirectory(StoragePath storagePath, boolean recursive)
     throws NotFoundException, GenericException, AuthorizationDeniedException, RequestNotValidException {
-    return storageService.listResourcesUnderDirectory(storagePath, recursive);
+    return listWithPermits(() -> storageService.listResourcesUnderDirectory(storagePath, recursive));
   }
 
   @Override
   public CloseableIterable<Resource> listResourcesUnderFile(StoragePath storagePath, boolean recursive)
     throws NotFoundException, GenericException, AuthorizationDeniedException, RequestNotValidException {
-    return storageService.listResourcesUnderFile(storagePath, recursive);
+    return listWithPermits(() -> storageService.listResourcesUnderFile(storagePath, recursive));
   }
 
   @Override
   public Long countResourcesUnderDirectory(StoragePath storagePath, boolean recursive)
     throws NotFoundException, GenericException, AuthorizationDeniedException, RequestNotValidException {
-    return storageService.countResourcesUnderDirectory(storagePath, recursive);
+    try (ResourceLimits.Permit permit = ResourceLimits.acquire(ResourceLimits.Resource.STORAGE)) {
+      return storageService.countResourcesUnderDirectory(storagePath, recursive);
+    }
   }
 
   @Override
@@ -126,25 +170,35 @@ public class StorageServiceWrapper implements StorageService {
     throws GenericException, AlreadyExistsException, RequestNotValidException, AuthorizationDeniedException,
     NotFoundException {
     RodaCoreFactory.checkIfWriteIsAllowedAndIfFalseThrowException(nodeType);
-    return storageService.createBinary(storagePath, payload, asReference);
+    try (ResourceLimits.Permit permit = ResourceLimits.acquire(ResourceLimits.Resource.STORAGE)) {
+      return storageService.createBinary(storagePath, payload, asReference);
+    } finally {
+      FixityCache.invalidate(storagePath);
+    }
   }
 
   @Override
   public Binary createRandomBinary(StoragePath parentStoragePath, ContentPayload payload, boolean asReference)
     throws GenericException, RequestNotValidException, AuthorizationDeniedException, NotFoundException {
     RodaCoreFactory.checkIfWriteIsAllowedAndIfFalseThrowException(nodeType);
-    return storageService.createRandomBinary(parentStoragePath, payload, asReference);
+    try (ResourceLimits.Permit permit = ResourceLimits.acquire(ResourceLimits.Resource.STORAGE)) {
+      return storageService.createRandomBinary(parentStoragePath, payload, asReference);
+    }
   }
 
   @Override
   public Binary getBinary(StoragePath storagePath)
     throws GenericException, RequestNotValidException, NotFoundException, AuthorizationDeniedException {
-    return storageService.getBinary(storagePath);
+    try (ResourceLimits.Permit permit = ResourceLimits.acquire(ResourceLimits.Resource.STORAGE)) {
+      return storageService.getBinary(storagePath);
+    }
   }
 
   @Override
   public boolean hasBinary(StoragePath storagePath) {
-    return storageService.hasBinary(storagePath);
+    try (ResourceLimits.Permit permit = ResourceLimits.acquire(ResourceLimits.Resource.STORAGE)) {
+      return storageService.hasBinary(storagePath);
+    }
   }
 
   @Override
@@ -152,20 +206,30 @@ public class StorageServiceWrapper implements StorageService {
     boolean createIfNotExists)
     throws GenericException, NotFoundException, RequestNotValidException, AuthorizationDeniedException {
     RodaCoreFactory.checkIfWriteIsAllowedAndIfFalseThrowException(nodeType);
-    return storageService.updateBinaryContent(storagePath, payload, asReference, createIfNotExists);
+    try (ResourceLimits.Permit permit = ResourceLimits.acquire(ResourceLimits.Resource.STORAGE)) {
+      return storageService.updateBinaryContent(storagePath, payload, asReference, createIfNotExists);
+    } finally {
+      FixityCache.invalidate(storagePath);
+    }
   }
 
   @Override
   public void deleteResource(StoragePath storagePath)
     throws NotFoundException, GenericException, AuthorizationDeniedException {
     RodaCoreFactory.checkIfWriteIsAllowedAndIfFalseThrowException(nodeType);
-    storageService.deleteResource(storagePath);
+    try (ResourceLimits.Permit permit = ResourceLimits.acquire(ResourceLimits.Resource.STORAGE)) {
+      storageService.deleteResource(storagePath);
+    } finally {
+      FixityCache.invalidateRecursively(storagePath);
+    }
   }
 
   @Override
   public Class<? extends Entity> getEntity(StoragePath storagePath)
     throws GenericException, RequestNotValidException, AuthorizationDeniedException, NotFoundException {
-    return storageService.getEntity(storagePath);
+    try (ResourceLimits.Permit permit = ResourceLimits.acquire(ResourceLimits.Resource.STORAGE)) {
+      return storageService.getEntity(storagePath);
+    }
   }
 
   @Override
@@ -173,14 +237,20 @@ public class StorageServiceWrapper implements StorageService {
     throws AlreadyExistsException, GenericException, RequestNotValidException, NotFoundException,
     AuthorizationDeniedException {
     RodaCoreFactory.checkIfWriteIsAllowedAndIfFalseThrowException(nodeType);
-    storageService.copy(fromService, fromStoragePath, toStoragePath);
+    try (ResourceLimits.Permit permit = ResourceLimits.acquire(ResourceLimits.Resource.STORAGE)) {
+      storageService.copy(fromService, fromStoragePath, toStoragePath);
+    } finally {
+      FixityCache.invalidateRecursively(toStoragePath);
+    }
   }
 
   @Override
   public void copy(StorageService fromService, StoragePath fromStoragePath, Path toPath, String resource)
     throws AlreadyExistsException, GenericException, AuthorizationDeniedException {
     RodaCoreFactory.checkIfWriteIsAllowedAndIfFalseThrowException(nodeType);
-    storageService.copy(fromService, fromStoragePath, toPath, resource);
+    try (ResourceLimits.Permit permit = ResourceLimits.acquire(ResourceLimits.Resource.STORAGE)) {
+      storageService.copy(fromService, fromStoragePath, toPath, resource);
+    }
   }
 
   @Override
@@ -188,45 +258,82 @@ public class StorageServiceWrapper implements StorageService {
     throws AlreadyExistsException, GenericException, RequestNotValidException, NotFoundException,
     AuthorizationDeniedException {
     RodaCoreFactory.checkIfWriteIsAllowedAndIfFalseThrowException(nodeType);
-    storageService.move(fromService, fromStoragePath, toStoragePath);
+    try (ResourceLimits.Permit permit = ResourceLimits.acquire(ResourceLimits.Resource.STORAGE)) {
+      storageService.move(fromService, fromStoragePath, toStoragePath);
+    } finally {
+      FixityCache.invalidateRecursively(fromStoragePath);
+      FixityCache.invalidateRecursively(toStoragePath);
+    }
   }
 
   @Override
   public DirectResourceAccess getDirectAccess(StoragePath storagePath) {
-    return storageService.getDirectAccess(storagePath);
+    final DirectResourceAccess directAccess;
+    try (ResourceLimits.Permit permit = ResourceLimits.acquire(ResourceLimits.Resource.STORAGE)) {
+      directAccess = storageService.getDirectAccess(storagePath);
+    }
+    if (directAccess == null) {
+      return null;
+    }
+
+    // the path may be fetched (e.g. downloaded) only when asked for
+    return new DirectResourceAccess() {
+      @Override
+      public Path getPath()
+        throws GenericException, RequestNotValidException, AuthorizationDeniedException, NotFoundException {
+        try (ResourceLimits.Permit permit = ResourceLimits.acquire(ResourceLimits.Resource.STORAGE)) {
+          return directAccess.getPath();
+        }
+      }
+
+      @Override
+      public void close() throws IOException {
+        directAccess.close();
+      }
+    };
   }
 
   @Override
   public CloseableIterable<BinaryVersion> listBinaryVersions(StoragePath storagePath)
     throws GenericException, RequestNotValidException, NotFoundException, AuthorizationDeniedException {
-    return storageService.listBinaryVersions(storagePath);
+    return listWithPermits(() -> storageService.listBinaryVersions(storagePath));
   }
 
   @Override
   public BinaryVersion getBinaryVersion(StoragePath storagePath, String version)
     throws RequestNotValidException, NotFoundException, GenericException {
-    return storageService.getBinaryVersion(storagePath, version);
+    try (ResourceLimits.Permit permit = ResourceLimits.acquire(ResourceLimits.Resource.STORAGE)) {
+      return storageService.getBinaryVersion(storagePath, version);
+    }
   }
 
   @Override
   public BinaryVersion createBinaryVersion(StoragePath storagePath, Map<String, String> properties)
     throws RequestNotValidException, NotFoundException, GenericException, AuthorizationDeniedException {
     RodaCoreFactory.checkIfWriteIsAllowedAndIfFalseThrowException(nodeType);
-    return storageService.createBinaryVersion(storagePath, properties);
+    try (ResourceLimits.Permit permit = ResourceLimits.acquire(ResourceLimits.Resource.STORAGE)) {
+      return storageService.createBinaryVersion(storagePath, properties);
+    }
   }
 
   @Override
   public void revertBinaryVersion(StoragePath storagePath, String version)
     throws NotFoundException, RequestNotValidException, GenericException, AuthorizationDeniedException {
     RodaCoreFactory.checkIfWriteIsAllowedAndIfFalseThrowException(nodeType);
-    storageService.revertBinaryVersion(storagePath, version);
+    try (ResourceLimits.Permit permit = ResourceLimits.acquire(ResourceLimits.Resource.STORAGE)) {
+      storageService.revertBinaryVersion(storagePath, version);
+    } finally {
+      FixityCache.invalidate(storagePath);
+    }
   }
 
   @Override
   public void deleteBinaryVersion(StoragePath storagePath, String version)
     throws NotFoundException, GenericException, RequestNotValidException, AuthorizationDeniedException {
     RodaCoreFactory.checkIfWriteIsAllowedAndIfFalseThrowException(nodeType);
-    storageService.deleteBinaryVersion(storagePath, version);
+    try (ResourceLimits.Permit permit = ResourceLimits.acquire(ResourceLimits.Resource.STORAGE)) {
+      storageService.deleteBinaryVersion(storagePath, version);
+    }
   }
 
   @Override
@@ -243,7 +350,63 @@ public class StorageServiceWrapper implements StorageService {
 
   @Override
   public List<StoragePath> getShallowFiles(StoragePath storagePath) throws NotFoundException, GenericException {
-    return storageService.getShallowFiles(storagePath);
+    try (ResourceLimits.Permit permit = ResourceLimits.acquire(ResourceLimits.Resource.STORAGE)) {
+      return storageService.getShallowFiles(storagePath);
+    }
   }
 
+  /**
+   * Get a listing, using a storage permit while it is created and while each
+   * of its entries is read, but not in between, as listings that are never
+   * closed must not keep a permit.
+   */
+  private static <T> CloseableIterable<T> listWithPermits(Listing<T> listing)
+    throws GenericException, RequestNotValidException, NotFoundException, AuthorizationDeniedException {
+    final CloseableIterable<T> listed;
+    try (ResourceLimits.Permit permit = ResourceLimits.acquire(ResourceLimits.Resource.STORAGE)) {
+      listed = listing.list();
+    }
+
+    return new CloseableIterable<T>() {
+      @Override
+      public Iterator<T> iterator() {
+        final Iterator<T> it;
+        try (ResourceLimits.Permit permit = ResourceLimits.acquire(ResourceLimits.Resource.STORAGE)) {
+          it = listed.iterator();
+        }
+
+        return new Iterator<T>() {
+          @Override
+          public boolean hasNext() {
+            try (ResourceLimits.Permit permit = ResourceLimits.acquire(ResourceLimits.Resource.STORAGE)) {
+              return it.hasNext();
+            }
+          }
+
+          @Override
+          public T next() {
+            try (ResourceLimits.Permit permit = ResourceLimits.acquire(ResourceLimits.Resource.STORAGE)) {
+              return it.next();
+            }
+          }
+
+          @Override
+          public void remove() {
+            it.remove();
+          }
+        };
+      }
+
+      @Override
+      public void close() throws IOException {
+        listed.close();
+      }
+    };
+  }
+
+  @FunctionalInterface
+  private interface Listing<T> {
+    CloseableIterable<T> list()
+      throws GenericException, RequestNotValidException, NotFoundException, AuthorizationDeniedException;
+  }
 }
@@ -0,0 +1,296 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.fs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.IOUtils;
+import org.roda.core.data.common.RodaConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Store of file contents addressed by their SHA-256 digest.
+ *
+ * <p>
+ * Each distinct content is kept once, at
+ * <code>&lt;blobs&gt;/ab/cd/abcd...</code>, and every file with that content is
+ * a hard link to the same blob. The link count of a blob is its reference count
+ * plus one: deleting (or trashing) a file drops a reference and blobs that are
+ * no longer referenced are removed by {@link #collectGarbage()}.
+ * </p>
+ *
+ * <p>
+ * Linked files share their content, so they must never be modified in place
+ * but replaced (written to a temporary file and moved), as done by
+ * {@link #write(InputStream, Path, boolean)} and
+ * {@link FSUtils#safeUpdate(InputStream, Path)}: opening a linked file for
+ * writing changes the content of every AIP sharing its blob. To make such
+ * writers fail instead, blobs (and so all the files linked to them) have no
+ * write permission. This does not stop processes running as root.
+ * </p>
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+public class ContentAddressedBlobStore {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ContentAddressedBlobStore.class);
+
+  private static final String LINK_COUNT_ATTRIBUTE = "unix:nlink";
+  private static final String TEMP_SUFFIX = ".dedup";
+
+  private final Path blobsPath;
+  private final boolean linkCountSupported;
+  private volatile boolean enabled;
+
+  private final AtomicLong deduplicatedFiles = new AtomicLong(0);
+  private final AtomicLong deduplicatedBytes = new AtomicLong(0);
+
+  public ContentAddressedBlobStore(Path blobsPath) throws IOException {
+    this.blobsPath = blobsPath;
+    Files.createDirectories(blobsPath);
+    boolean supported = true;
+    try {
+      getLinkCount(blobsPath);
+    } catch (UnsupportedOperationException | IllegalArgumentException e) {
+      LOGGER.warn("File system of {} does not report link counts, deduplication is disabled", blobsPath);
+      supported = false;
+    }
+    this.linkCountSupported = supported;
+    this.enabled = supported;
+  }
+
+  public Path getBlobsPath() {
+    return blobsPath;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * @return number of stored files that turned out to be duplicates
+   */
+  public long getDeduplicatedFiles() {
+    return deduplicatedFiles.get();
+  }
+
+  /**
+   * @return bytes that did not have to be stored again
+   */
+  public long getDeduplicatedBytes() {
+    return deduplicatedBytes.get();
+  }
+
+  public Path getBlobPath(String digest) {
+    return blobsPath.resolve(digest.substring(0, 2)).resolve(digest.substring(2, 4)).resolve(digest);
+  }
+
+  /**
+   * Deduplicate a file: if its content is already stored, the file is replaced
+   * by a link to the existing blob, otherwise it becomes the blob of its
+   * content.
+   *
+   * @return the SHA-256 digest of the file content or <code>null</code> if the
+   *         file could not be deduplicated (and was kept as it is)
+   */
+  public String store(Path file) throws IOException {
+    if (!enabled) {
+      return null;
+    }
+    return store(file, computeDigest(file));
+  }
+
+  /**
+   * Deduplicate a file whose SHA-256 digest is already known, e.g. returned by
+   * {@link #write(InputStream, Path, boolean)}.
+   *
+   * @see #store(Path)
+   */
+  public String store(Path file, String digest) throws IOException {
+    if (!enabled) {
+      return null;
+    }
+
+    Path blob = getBlobPath(digest);
+
+    // a concurrent garbage collection may remove the blob in between
+    for (int attempt = 0; attempt < 2; attempt++) {
+      try {
+        if (FSUtils.exists(blob)) {
+          if (!Files.isSameFile(blob, file)) {
+            replaceWithLink(blob, file);
+            deduplicatedFiles.incrementAndGet();
+            deduplicatedBytes.addAndGet(Files.size(file));
+          }
+        } else {
+          Files.createDirectories(blob.getParent());
+          Files.createLink(blob, file);
+          removeWritePermissions(blob);
+        }
+        return digest;
+      } catch (FileAlreadyExistsException | NoSuchFileException e) {
+        LOGGER.debug("Blob {} changed while storing {}, retrying", blob, file, e);
+      } catch (IOException | UnsupportedOperationException | SecurityException e) {
+        // e.g. blobs on another file system
+        LOGGER.warn("Could not link {} to the blob store, deduplication is disabled", file, e);
+        enabled = false;
+        return null;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Write a content to a file, computing its SHA-256 digest on the way so that
+   * it does not have to be read again by {@link #store(Path, String)}. The
+   * content is written to a temporary file that replaces the target, so an
+   * existing target that shares its content is not modified.
+   *
+   * @return the SHA-256 digest of the content
+   */
+  public static String write(InputStream content, Path target, boolean replaceExisting) throws IOException {
+    Path temp = target.resolveSibling(target.getFileName().toString() + TEMP_SUFFIX + System.nanoTime());
+    try {
+      MessageDigest messageDigest = MessageDigest.getInstance(RodaConstants.SHA256);
+      try (OutputStream out = new DigestOutputStream(Files.newOutputStream(temp, StandardOpenOption.CREATE_NEW),
+        messageDigest)) {
+        IOUtils.copyLarge(content, out);
+      }
+      if (replaceExisting) {
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } else {
+        Files.move(temp, target);
+      }
+      return Hex.encodeHexString(messageDigest.digest());
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException(e);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /**
+   * Make <code>target</code> share the content of <code>source</code>.
+   */
+  public void link(Path source, Path target, boolean replaceExisting) throws IOException {
+    if (replaceExisting) {
+      replaceWithLink(source, target);
+    } else {
+      Files.createLink(target, source);
+    }
+  }
+
+  /**
+   * @return if the file shares its content with other files or a blob
+   */
+  public boolean isShared(Path file) throws IOException {
+    // files linked before deduplication got disabled are still shared
+    return linkCountSupported && getLinkCount(file) > 1;
+  }
+
+  /**
+   * @return amount of files referencing the blob with the given digest
+   */
+  public int getReferenceCount(String digest) throws IOException {
+    Path blob = getBlobPath(digest);
+    return FSUtils.exists(blob) ? getLinkCount(blob) - 1 : 0;
+  }
+
+  /**
+   * Remove blobs that are no longer referenced by any file, i.e. whose files
+   * were deleted and, when trash is used, purged from the trash.
+   *
+   * @return the number of removed blobs
+   */
+  public long collectGarbage() {
+    final AtomicLong removed = new AtomicLong(0);
+    final AtomicLong freed = new AtomicLong(0);
+    try {
+      Files.walkFileTree(blobsPath, new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+          if (attrs.isRegularFile() && getLinkCount(file) <= 1) {
+            Files.deleteIfExists(file);
+            removed.incrementAndGet();
+            freed.addAndGet(attrs.size());
+            FSUtils.deleteEmptyAncestorsQuietly(file, blobsPath);
+          }
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException exc) {
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    } catch (IOException e) {
+      LOGGER.error("Error collecting unreferenced blobs under {}", blobsPath, e);
+    }
+    LOGGER.info("Removed {} unreferenced blobs ({} bytes)", removed.get(), freed.get());
+    return removed.get();
+  }
+
+  private static void replaceWithLink(Path source, Path target) throws IOException {
+    Path temp = target.resolveSibling(target.getFileName().toString() + TEMP_SUFFIX + System.nanoTime());
+    try {
+      Files.createLink(temp, source);
+      Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  private static void removeWritePermissions(Path blob) {
+    try {
+      Set<PosixFilePermission> permissions = new HashSet<>(Files.getPosixFilePermissions(blob));
+      permissions.removeAll(
+        EnumSet.of(PosixFilePermission.OWNER_WRITE, PosixFilePermission.GROUP_WRITE, PosixFilePermission.OTHERS_WRITE));
+      Files.setPosixFilePermissions(blob, permissions);
+    } catch (IOException | UnsupportedOperationException e) {
+      LOGGER.debug("Could not remove the write permissions of {}", blob, e);
+    }
+  }
+
+  private static int getLinkCount(Path path) throws IOException {
+    return (Integer) Files.getAttribute(path, LINK_COUNT_ATTRIBUTE);
+  }
+
+  private static String computeDigest(Path file) throws IOException {
+    try (InputStream inputStream = Files.newInputStream(file)) {
+      MessageDigest messageDigest = MessageDigest.getInstance(RodaConstants.SHA256);
+      byte[] buffer = new byte[64 * 1024];
+      int read;
+      while ((read = inputStream.read(buffer)) >= 0) {
+        messageDigest.update(buffer, 0, read);
+      }
+      return Hex.encodeHexString(messageDigest.digest());
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException(e);
+    }
+  }
+}
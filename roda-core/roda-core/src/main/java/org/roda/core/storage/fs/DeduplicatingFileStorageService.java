@@ -0,0 +1,304 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.fs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.lang3.StringUtils;
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.data.exceptions.AlreadyExistsException;
+import org.roda.core.data.exceptions.AuthorizationDeniedException;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.RequestNotValidException;
+import org.roda.core.data.v2.ip.StoragePath;
+import org.roda.core.storage.Binary;
+import org.roda.core.storage.ContentPayload;
+import org.roda.core.storage.StorageService;
+import org.roda.core.storage.StorageServiceWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link FileStorageService} that keeps each distinct binary content only once,
+ * in a {@link ContentAddressedBlobStore}.
+ *
+ * <p>
+ * Created and updated binaries are linked to the blob of their content, so
+ * identical files of different AIPs, DIPs or ingests share the same disk
+ * blocks. Binary versions, reverts and copies inside this storage are made by
+ * linking instead of copying, which makes them nearly free in space and I/O.
+ * Deleted binaries keep referencing their blob until purged from the trash,
+ * after which the blob is removed by the garbage collection.
+ * </p>
+ *
+ * <p>
+ * The content of created and updated binaries is digested while it is written,
+ * never by reading the written file again. Binaries are written to a temporary
+ * file that then replaces the binary, because writing in place to a binary that
+ * is linked to a blob would change every AIP sharing that blob; see
+ * {@link ContentAddressedBlobStore} for how other writers are kept from doing
+ * so.
+ * </p>
+ *
+ * <p>
+ * The blob folder must be on the same file system as the storage.
+ * </p>
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+public class DeduplicatingFileStorageService extends FileStorageService {
+  private static final Logger LOGGER = LoggerFactory.getLogger(DeduplicatingFileStorageService.class);
+
+  public static final String BLOBS_SUFFIX = "-blobs";
+
+  private static final String CONFIG_PREFIX = "core.storage.dedup";
+
+  private final ContentAddressedBlobStore blobStore;
+  private ScheduledExecutorService garbageCollectionScheduler;
+
+  /**
+   * Constructor used when instantiated through
+   * <code>core.storage.new_service</code>. Blob folder and garbage collection
+   * interval are read from the <code>core.storage.dedup.*</code> properties.
+   */
+  public DeduplicatingFileStorageService(Path basePath, String trashDirName) throws GenericException {
+    this(basePath, trashDirName, getBlobsPathFromConfiguration(basePath));
+
+    long interval = getConfiguration().getLong(CONFIG_PREFIX + ".gc_interval_minutes", 0);
+    if (interval > 0) {
+      scheduleGarbageCollection(interval, TimeUnit.MINUTES);
+    }
+  }
+
+  public DeduplicatingFileStorageService(Path basePath, String trashDirName, Path blobsPath)
+    throws GenericException {
+    super(basePath, trashDirName);
+    try {
+      this.blobStore = new ContentAddressedBlobStore(blobsPath);
+    } catch (IOException e) {
+      throw new GenericException("Could not create blob folder " + blobsPath, e);
+    }
+  }
+
+  private static Configuration getConfiguration() {
+    return RodaCoreFactory.getRodaConfiguration();
+  }
+
+  private static Path getBlobsPathFromConfiguration(Path basePath) {
+    String blobsPath = getConfiguration().getString(CONFIG_PREFIX + ".blobs.path");
+    if (StringUtils.isNotBlank(blobsPath)) {
+      return Paths.get(blobsPath);
+    } else {
+      return basePath.resolveSibling(basePath.getFileName() + BLOBS_SUFFIX);
+    }
+  }
+
+  public ContentAddressedBlobStore getBlobStore() {
+    return blobStore;
+  }
+
+  /**
+   * Periodically remove unreferenced blobs in a background thread.
+   */
+  public synchronized void scheduleGarbageCollection(long interval, TimeUnit unit) {
+    if (garbageCollectionScheduler == null) {
+      garbageCollectionScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "dedup-storage-gc");
+        thread.setDaemon(true);
+        return thread;
+      });
+      garbageCollectionScheduler.scheduleWithFixedDelay(() -> {
+        try {
+          blobStore.collectGarbage();
+        } catch (RuntimeException e) {
+          LOGGER.error("Error collecting unreferenced blobs", e);
+        }
+      }, interval, interval, unit);
+    }
+  }
+
+  private void deduplicate(Path path) {
+    deduplicate(path, null);
+  }
+
+  private void deduplicate(Path path, String digest) {
+    try {
+      if (digest != null) {
+        blobStore.store(path, digest);
+      } else {
+        blobStore.store(path);
+      }
+    } catch (IOException e) {
+      LOGGER.warn("Could not deduplicate {}", path, e);
+    }
+  }
+
+  /**
+   * Payload writing its content with
+   * {@link ContentAddressedBlobStore#write(InputStream, Path, boolean)} and
+   * keeping the digest computed on the way.
+   */
+  private static class DigestingContentPayload implements ContentPayload {
+    private final ContentPayload payload;
+    private final boolean replaceExisting;
+    private String digest = null;
+
+    DigestingContentPayload(ContentPayload payload, boolean replaceExisting) {
+      this.payload = payload;
+      this.replaceExisting = replaceExisting;
+    }
+
+    @Override
+    public InputStream createInputStream() throws IOException {
+      return payload.createInputStream();
+    }
+
+    @Override
+    public void writeToPath(Path path) throws IOException {
+      try (InputStream content = payload.createInputStream()) {
+        digest = ContentAddressedBlobStore.write(content, path, replaceExisting);
+      }
+    }
+
+    @Override
+    public URI getURI() throws IOException, UnsupportedOperationException {
+      return payload.getURI();
+    }
+
+    String getDigest() {
+      return digest;
+    }
+  }
+
+  private void deduplicateTree(Path path) throws IOException {
+    Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+        if (attrs.isRegularFile()) {
+          deduplicate(file);
+        }
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  @Override
+  public Binary createBinary(StoragePath storagePath, ContentPayload payload, boolean asReference)
+    throws GenericException, AlreadyExistsException {
+    if (asReference || !blobStore.isEnabled()) {
+      return super.createBinary(storagePath, payload, asReference);
+    }
+
+    DigestingContentPayload digestingPayload = new DigestingContentPayload(payload, false);
+    Binary binary = super.createBinary(storagePath, digestingPayload, false);
+    deduplicate(resolve(storagePath), digestingPayload.getDigest());
+    return binary;
+  }
+
+  @Override
+  public Binary createRandomBinary(StoragePath parentStoragePath, ContentPayload payload, boolean asReference)
+    throws GenericException, RequestNotValidException {
+    if (asReference || !blobStore.isEnabled()) {
+      return super.createRandomBinary(parentStoragePath, payload, asReference);
+    }
+
+    // replaces the empty file reserving the random name
+    DigestingContentPayload digestingPayload = new DigestingContentPayload(payload, true);
+    Binary binary = super.createRandomBinary(parentStoragePath, digestingPayload, false);
+    deduplicate(resolve(binary.getStoragePath()), digestingPayload.getDigest());
+    return binary;
+  }
+
+  @Override
+  public Binary updateBinaryContent(StoragePath storagePath, ContentPayload payload, boolean asReference,
+    boolean createIfNotExists) throws GenericException, NotFoundException, RequestNotValidException {
+    if (asReference || !blobStore.isEnabled()) {
+      return super.updateBinaryContent(storagePath, payload, asReference, createIfNotExists);
+    }
+
+    DigestingContentPayload digestingPayload = new DigestingContentPayload(payload, true);
+    Binary binary = super.updateBinaryContent(storagePath, digestingPayload, false, createIfNotExists);
+    deduplicate(resolve(storagePath), digestingPayload.getDigest());
+    return binary;
+  }
+
+  @Override
+  protected void copyBinaryContent(Path sourcePath, Path targetPath, boolean replaceExisting) throws IOException {
+    if (!blobStore.isShared(sourcePath)) {
+      blobStore.store(sourcePath);
+    }
+
+    if (blobStore.isShared(sourcePath)) {
+      blobStore.link(sourcePath, targetPath, replaceExisting);
+    } else {
+      super.copyBinaryContent(sourcePath, targetPath, replaceExisting);
+    }
+  }
+
+  @Override
+  public void copy(StorageService fromService, StoragePath fromStoragePath, StoragePath toStoragePath)
+    throws AlreadyExistsException, GenericException, RequestNotValidException, NotFoundException,
+    AuthorizationDeniedException {
+    StorageService source = fromService instanceof StorageServiceWrapper
+      ? ((StorageServiceWrapper) fromService).getWrappedStorageService()
+      : fromService;
+
+    if (source == this && blobStore.isEnabled()) {
+      linkTree(resolve(fromStoragePath), resolve(toStoragePath));
+    } else {
+      super.copy(fromService, fromStoragePath, toStoragePath);
+      try {
+        deduplicateTree(resolve(toStoragePath));
+      } catch (IOException e) {
+        LOGGER.warn("Could not deduplicate {}", toStoragePath, e);
+      }
+    }
+  }
+
+  private void linkTree(Path sourcePath, Path targetPath)
+    throws AlreadyExistsException, GenericException, NotFoundException {
+    if (!FSUtils.exists(sourcePath)) {
+      throw new NotFoundException("Cannot copy because source path does not exist: " + sourcePath);
+    }
+    if (FSUtils.exists(targetPath)) {
+      throw new AlreadyExistsException("Cannot copy because target path already exists: " + targetPath);
+    }
+
+    try {
+      Files.createDirectories(targetPath.getParent());
+      Files.walkFileTree(sourcePath, new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+          Files.createDirectories(targetPath.resolve(sourcePath.relativize(dir).toString()));
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+          copyBinaryContent(file, targetPath.resolve(sourcePath.relativize(file).toString()), false);
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    } catch (IOException e) {
+      throw new GenericException("Error while linking " + sourcePath + " into " + targetPath, e);
+    }
+  }
+}
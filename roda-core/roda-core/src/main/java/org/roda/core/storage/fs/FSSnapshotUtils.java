@@ -0,0 +1,364 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.fs;
+
+import java.io.IOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Snapshots of directory trees, e.g. of AIPs moved to and restored from the
+ * disposal bin.
+ *
+ * <p>
+ * Within a file system, files are shared with the snapshot as hard links (or
+ * copy-on-write clones) instead of being copied, so a snapshot costs almost no
+ * space nor time. Across file systems, files are copied several at a time.
+ * Shared files stay shared only while they are not written in place, which the
+ * storage never does: it replaces binaries with new files and detaches hard
+ * linked content before updating it.
+ * </p>
+ *
+ * <p>
+ * Copies are checked against their source by size and modification time, and
+ * by checksum if {@code core.disposal_bin.verify_checksums} is set. Progress is
+ * logged regularly while a snapshot is taken.
+ * </p>
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+public final class FSSnapshotUtils {
+  private static final Logger LOGGER = LoggerFactory.getLogger(FSSnapshotUtils.class);
+
+  private static final String CHECKSUM_ALGORITHM = "SHA-256";
+  private static final String TEMP_SUFFIX = ".snapshot";
+  private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(30);
+  private static final int DEFAULT_COPY_THREADS = 4;
+
+  private static ExecutorService copyExecutor;
+
+  private FSSnapshotUtils() {
+    // do nothing
+  }
+
+  /**
+   * Snapshots a directory tree, the way the disposal bin is configured to
+   * ({@code core.disposal_bin.*}).
+   *
+   * @see #snapshot(Path, Path, FileCopyMode, boolean, boolean)
+   */
+  public static Progress snapshot(Path sourcePath, Path targetPath, boolean replaceExisting) throws GenericException {
+    return snapshot(sourcePath, targetPath, getCopyMode(),
+      RodaCoreFactory.getProperty(RodaConstants.CORE_DISPOSAL_BIN_VERIFY_CHECKSUMS, false), replaceExisting);
+  }
+
+  /**
+   * Snapshots a directory tree into another directory, which is created if
+   * needed. Files of the target that are not in the source are kept. Nothing is
+   * done if the source does not exist.
+   *
+   * @param copyMode
+   *          how files are shared with the snapshot where possible; files that
+   *          cannot be shared are copied
+   * @param verifyChecksums
+   *          if copies are to be checked by checksum too
+   * @param replaceExisting
+   *          if files already in the target are replaced, otherwise they are
+   *          left as they are
+   * @return what was done
+   */
+  public static Progress snapshot(Path sourcePath, Path targetPath, FileCopyMode copyMode, boolean verifyChecksums,
+    boolean replaceExisting) throws GenericException {
+    Progress progress = new Progress(sourcePath, targetPath);
+    if (!FSUtils.exists(sourcePath)) {
+      return progress;
+    }
+
+    List<Future<Void>> copies = new ArrayList<>();
+    try {
+      Files.createDirectories(targetPath);
+      boolean sameFileStore = Files.getFileStore(sourcePath).equals(Files.getFileStore(targetPath));
+      FileCopyMode mode = sameFileStore ? copyMode : FileCopyMode.COPY;
+
+      Files.walkFileTree(sourcePath, new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+          Files.createDirectories(targetPath.resolve(sourcePath.relativize(dir)));
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+          Path target = targetPath.resolve(sourcePath.relativize(file));
+          if (Files.exists(target, LinkOption.NOFOLLOW_LINKS)
+            && (!replaceExisting || Files.isSameFile(file, target))) {
+            progress.skipped(file);
+          } else if (attrs.isRegularFile() && share(file, target, mode)) {
+            progress.shared(file);
+          } else {
+            copies.add(getCopyExecutor().submit(() -> {
+              copy(file, target, attrs, verifyChecksums);
+              progress.copied(file, attrs.size());
+              return null;
+            }));
+          }
+          return FileVisitResult.CONTINUE;
+        }
+      });
+
+      for (Future<Void> copy : copies) {
+        copy.get();
+      }
+    } catch (IOException e) {
+      cancel(copies);
+      throw new GenericException("Could not snapshot " + sourcePath + " to " + targetPath, e);
+    } catch (ExecutionException e) {
+      cancel(copies);
+      Throwable cause = e.getCause();
+      if (cause instanceof GenericException) {
+        throw (GenericException) cause;
+      }
+      throw new GenericException("Could not snapshot " + sourcePath + " to " + targetPath, cause);
+    } catch (InterruptedException e) {
+      cancel(copies);
+      Thread.currentThread().interrupt();
+      throw new GenericException("Interrupted while snapshotting " + sourcePath + " to " + targetPath, e);
+    }
+
+    LOGGER.debug("Finished snapshot {}", progress);
+    return progress;
+  }
+
+  /**
+   * Deletes a snapshot, or any directory tree, logging how much space is
+   * actually released: files still shared with the storage release none.
+   *
+   * @return the bytes released
+   */
+  public static long deleteSnapshot(Path path) throws NotFoundException, GenericException {
+    AtomicLong releasedFiles = new AtomicLong();
+    AtomicLong releasedBytes = new AtomicLong();
+    AtomicLong sharedFiles = new AtomicLong();
+    try {
+      Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+          boolean shared = attrs.isRegularFile() && FSUtils.getLinkCount(file) > 1;
+          Files.delete(file);
+          if (shared) {
+            sharedFiles.incrementAndGet();
+          } else {
+            releasedFiles.incrementAndGet();
+            releasedBytes.addAndGet(attrs.size());
+          }
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+          if (exc != null) {
+            throw exc;
+          }
+          Files.delete(dir);
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    } catch (NoSuchFileException e) {
+      throw new NotFoundException("Could not delete path", e);
+    } catch (IOException e) {
+      throw new GenericException("Could not delete snapshot " + path, e);
+    }
+
+    LOGGER.info("Deleted {}: {} files released {} bytes, {} files are still shared", path, releasedFiles.get(),
+      releasedBytes.get(), sharedFiles.get());
+    return releasedBytes.get();
+  }
+
+  private static boolean share(Path file, Path target, FileCopyMode mode) throws IOException {
+    if (mode == FileCopyMode.COPY) {
+      return false;
+    }
+    Path sharedPath = Files.exists(target, LinkOption.NOFOLLOW_LINKS) ? getTempPath(target) : target;
+    boolean shared;
+    switch (mode) {
+      case HARDLINK:
+        try {
+          Files.createLink(sharedPath, file);
+          shared = true;
+        } catch (UnsupportedOperationException | FileSystemException e) {
+          // e.g. too many links to the file
+          LOGGER.debug("Could not link {}, it will be copied: {}", file, e.getMessage());
+          shared = false;
+        }
+        break;
+      case REFLINK:
+      case AUTO:
+        shared = FSUtils.reflink(file, sharedPath);
+        if (shared) {
+          // clones are new files, which must keep the dates of their source
+          Files.setLastModifiedTime(sharedPath, Files.getLastModifiedTime(file));
+        }
+        break;
+      default:
+        shared = false;
+    }
+    if (shared && !sharedPath.equals(target)) {
+      Files.move(sharedPath, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    return shared;
+  }
+
+  private static void copy(Path file, Path target, BasicFileAttributes attrs, boolean verifyChecksums)
+    throws IOException, GenericException {
+    Path copyPath = Files.exists(target, LinkOption.NOFOLLOW_LINKS) ? getTempPath(target) : target;
+    try {
+      Files.copy(file, copyPath, StandardCopyOption.COPY_ATTRIBUTES, LinkOption.NOFOLLOW_LINKS);
+      if (attrs.isRegularFile()) {
+        verify(file, copyPath, attrs, verifyChecksums);
+      }
+      if (!copyPath.equals(target)) {
+        Files.move(copyPath, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      }
+    } catch (IOException | GenericException e) {
+      Files.deleteIfExists(copyPath);
+      throw e;
+    }
+  }
+
+  private static void verify(Path file, Path copy, BasicFileAttributes attrs, boolean verifyChecksums)
+    throws IOException, GenericException {
+    BasicFileAttributes copyAttrs = Files.readAttributes(copy, BasicFileAttributes.class);
+    if (copyAttrs.size() != attrs.size() || !copyAttrs.lastModifiedTime().equals(attrs.lastModifiedTime())) {
+      throw new GenericException("Copy of " + file + " does not match its source: " + copyAttrs.size() + " bytes, "
+        + copyAttrs.lastModifiedTime() + " instead of " + attrs.size() + " bytes, " + attrs.lastModifiedTime());
+    }
+    if (verifyChecksums && !FSUtils.computeContentDigest(file, CHECKSUM_ALGORITHM)
+      .equals(FSUtils.computeContentDigest(copy, CHECKSUM_ALGORITHM))) {
+      throw new GenericException("Copy of " + file + " does not match the checksum of its source");
+    }
+  }
+
+  private static Path getTempPath(Path target) {
+    return target.resolveSibling(target.getFileName() + TEMP_SUFFIX + System.nanoTime());
+  }
+
+  private static void cancel(List<Future<Void>> copies) {
+    copies.forEach(copy -> copy.cancel(false));
+  }
+
+  private static FileCopyMode getCopyMode() {
+    String copyMode = RodaCoreFactory.getProperty(RodaConstants.CORE_DISPOSAL_BIN_COPY_MODE,
+      FileCopyMode.HARDLINK.name());
+    try {
+      return FileCopyMode.valueOf(copyMode.toUpperCase());
+    } catch (IllegalArgumentException e) {
+      LOGGER.warn("Unknown disposal bin copy mode '{}', using {}", copyMode, FileCopyMode.HARDLINK);
+      return FileCopyMode.HARDLINK;
+    }
+  }
+
+  private static synchronized ExecutorService getCopyExecutor() {
+    if (copyExecutor == null) {
+      int threads = RodaCoreFactory.getProperty(RodaConstants.CORE_DISPOSAL_BIN_COPY_THREADS, DEFAULT_COPY_THREADS);
+      AtomicInteger count = new AtomicInteger();
+      copyExecutor = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+        Thread thread = new Thread(runnable, "snapshot-copy-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    return copyExecutor;
+  }
+
+  /**
+   * Files shared, copied and skipped by a snapshot, logged as it goes.
+   */
+  public static class Progress {
+    private final Path sourcePath;
+    private final Path targetPath;
+    private final AtomicLong sharedFiles = new AtomicLong();
+    private final AtomicLong copiedFiles = new AtomicLong();
+    private final AtomicLong copiedBytes = new AtomicLong();
+    private final AtomicLong skippedFiles = new AtomicLong();
+    private final AtomicLong lastLog = new AtomicLong(System.nanoTime());
+
+    Progress(Path sourcePath, Path targetPath) {
+      this.sourcePath = sourcePath;
+      this.targetPath = targetPath;
+    }
+
+    public long getSharedFiles() {
+      return sharedFiles.get();
+    }
+
+    public long getCopiedFiles() {
+      return copiedFiles.get();
+    }
+
+    public long getCopiedBytes() {
+      return copiedBytes.get();
+    }
+
+    public long getSkippedFiles() {
+      return skippedFiles.get();
+    }
+
+    void shared(Path file) {
+      sharedFiles.incrementAndGet();
+      log(file);
+    }
+
+    void copied(Path file, long size) {
+      copiedFiles.incrementAndGet();
+      copiedBytes.addAndGet(size);
+      log(file);
+    }
+
+    void skipped(Path file) {
+      skippedFiles.incrementAndGet();
+      log(file);
+    }
+
+    private void log(Path file) {
+      long last = lastLog.get();
+      long now = System.nanoTime();
+      if (now - last >= PROGRESS_INTERVAL_NANOS && lastLog.compareAndSet(last, now)) {
+        LOGGER.info("Snapshot in progress, at {}: {}", file, this);
+      }
+    }
+
+    @Override
+    public String toString() {
+      return sourcePath + (targetPath != null ? " to " + targetPath : "") + ": " + getSharedFiles() + " files shared, "
+        + getCopiedFiles() + " files copied (" + getCopiedBytes() + " bytes), " + getSkippedFiles() + " files skipped";
+    }
+  }
+}
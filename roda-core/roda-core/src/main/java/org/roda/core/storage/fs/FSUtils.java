@@ -16,6 +16,7 @@ import java.nio.file.CopyOption;
 import java.nio.file.DirectoryNotEmptyException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
 import java.nio.file.FileVisitOption;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
@@ -33,6 +34,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Stream;
 
 import org.apache.commons.io.FileUtils;
@@ -64,6 +66,8 @@ import org.roda.core.storage.ExternalFileManifestContentPayload;
 import org.roda.core.storage.InputStreamContentPayload;
 import org.roda.core.storage.JsonContentPayload;
 import org.roda.core.storage.Resource;
+import org.roda.core.util.CommandException;
+import org.roda.core.util.CommandUtility;
 import org.roda.core.util.IdUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -83,6 +87,9 @@ public class FSUtils {
   public static final String SEPARATOR_REGEX = "/";
   public static final String SEPARATOR_REPLACEMENT = "%2F";
 
+  private static final String LINK_COUNT_ATTRIBUTE = "unix:nlink";
+  private static final Map<FileStore, Boolean> REFLINK_SUPPORT = new ConcurrentHashMap<>();
+
   public FSUtils() {
     // do nothing
   }
@@ -1017,6 +1024,63 @@ public class FSUtils {
     }
   }
 
+  /**
+   * @return the number of hard links to the file, or 1 if the file system does
+   *         not report it
+   */
+  public static int getLinkCount(Path file) throws IOException {
+    try {
+      return (Integer) Files.getAttribute(file, LINK_COUNT_ATTRIBUTE);
+    } catch (UnsupportedOperationException | IllegalArgumentException e) {
+      return 1;
+    }
+  }
+
+  /**
+   * Clones a file with a copy-on-write reflink (e.g. on btrfs or XFS), making
+   * source and target share their blocks until one of them is written. File
+   * systems that report reflinks as not supported are remembered and not
+   * tried again; other failures (e.g. a full disk or a target in another
+   * file system) only fail this clone.
+   *
+   * @param target
+   *          path of the clone, which must not exist
+   * @return true if the file was cloned, false if it could not be (and the
+   *         target was not created)
+   */
+  public static boolean reflink(Path source, Path target) throws IOException {
+    FileStore fileStore = Files.getFileStore(source);
+    if (Boolean.FALSE.equals(REFLINK_SUPPORT.get(fileStore))) {
+      return false;
+    }
+
+    try {
+      // untranslated messages, to tell why the clone failed
+      CommandUtility.execute("env", "LC_ALL=C", "cp", "--reflink=always", "--", source.toString(), target.toString());
+      REFLINK_SUPPORT.putIfAbsent(fileStore, Boolean.TRUE);
+      return true;
+    } catch (CommandException e) {
+      Files.deleteIfExists(target);
+      if (isReflinkNotSupported(e.getOutput())) {
+        if (REFLINK_SUPPORT.putIfAbsent(fileStore, Boolean.FALSE) == null) {
+          LOGGER.info("Reflinks are not available on {}, falling back to copies: {}", fileStore, e.getOutput());
+        }
+      } else {
+        LOGGER.debug("Could not clone {}, falling back to a copy: {}", source, e.getOutput());
+      }
+      return false;
+    }
+  }
+
+  /**
+   * @return true if cp failed because the file system cannot clone files
+   *         (EOPNOTSUPP, or ENOTTY on kernels without the clone ioctl)
+   */
+  private static boolean isReflinkNotSupported(String output) {
+    return output != null
+      && (output.contains("Operation not supported") || output.contains("Inappropriate ioctl for device"));
+  }
+
   /**
    * Related to Shallow files
    */
@@ -0,0 +1,36 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.fs;
+
+/**
+ * How {@link FileStorageService} duplicates binary content when creating and
+ * reverting binary versions.
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+public enum FileCopyMode {
+  /**
+   * Full copy of the content.
+   */
+  COPY,
+  /**
+   * Hard link to the same content, which is detached before the binary is
+   * updated. Versions cost no space until the binary changes.
+   */
+  HARDLINK,
+  /**
+   * Copy-on-write clone (e.g. btrfs or XFS reflink), falling back to a full
+   * copy where the file system does not support it.
+   */
+  REFLINK,
+  /**
+   * Copy-on-write clone of large binaries where supported, full copy
+   * otherwise.
+   */
+  AUTO
+}
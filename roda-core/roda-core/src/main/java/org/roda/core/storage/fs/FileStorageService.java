@@ -75,6 +75,8 @@ public class FileStorageService implements StorageService {
   public static final String HISTORY_SUFFIX = "-history";
   private static final String HISTORY_DATA_FOLDER = "data";
   private static final String HISTORY_METADATA_FOLDER = "metadata";
+  private static final String DETACHED_SUFFIX = ".detached";
+  private static final long REFLINK_MIN_SIZE = 1024L * 1024L;
 
   private final Path rodaDataPath;
   private final Path basePath;
@@ -83,6 +85,8 @@ public class FileStorageService implements StorageService {
   private final Path historyMetadataPath;
   private final Path trashPath;
 
+  private FileCopyMode versionCopyMode = FileCopyMode.COPY;
+
   public FileStorageService(Path basePath, boolean createTrash, String trashDirName, boolean createHistory)
     throws GenericException {
     this.basePath = basePath;
@@ -112,6 +116,19 @@ public class FileStorageService implements StorageService {
     this(basePath, null);
   }
 
+  public FileCopyMode getVersionCopyMode() {
+    return versionCopyMode;
+  }
+
+  /**
+   * Set how binary versions are created and reverted. Hard links should only be
+   * used if binaries are never changed in place, e.g. through
+   * {@link #getDirectAccess(StoragePath)}.
+   */
+  public void setVersionCopyMode(FileCopyMode versionCopyMode) {
+    this.versionCopyMode = versionCopyMode;
+  }
+
   private void initialize(Path path) throws GenericException {
     if (!FSUtils.exists(path)) {
       if (Files.isWritable(path.getParent())) {
@@ -471,11 +488,24 @@ public class FileStorageService implements StorageService {
       } else if (fileExists && !FSUtils.isFile(binaryPath)) {
         throw new GenericException("Looking for a binary but found something else");
       } else {
+        Path detachedPath = null;
         try {
+          // shared content (e.g. hard linked versions) must not be written over
+          if (fileExists && FSUtils.getLinkCount(binaryPath) > 1) {
+            detachedPath = binaryPath.resolveSibling(binaryPath.getFileName() + DETACHED_SUFFIX + System.nanoTime());
+            Files.move(binaryPath, detachedPath);
+          }
           payload.writeToPath(binaryPath);
-        } catch (IOException e) {
+        } catch (IOException | RuntimeException e) {
+          if (detachedPath != null) {
+            restoreDetachedContent(detachedPath, binaryPath);
+          }
           throw new GenericException("Could not update binary content", e);
         }
+
+        if (detachedPath != null) {
+          FSUtils.deletePathQuietly(detachedPath);
+        }
       }
 
       Resource resource = FSUtils.convertPathToResource(basePath, binaryPath);
@@ -534,11 +564,21 @@ public class FileStorageService implements StorageService {
     return FSUtils.getEntityPath(basePath, storagePath);
   }
 
+  /**
+   * @return true if everything under the storage path is in the files under
+   *         {@link #resolve(StoragePath)}, so that it can be copied or moved as
+   *         files
+   */
+  public boolean isResolvable(StoragePath storagePath) {
+    return true;
+  }
+
   @Override
   public void copy(StorageService fromService, StoragePath fromStoragePath, StoragePath toStoragePath)
     throws AlreadyExistsException, GenericException, RequestNotValidException, NotFoundException,
     AuthorizationDeniedException {
-    if (fromService instanceof FileStorageService) {
+    if (fromService instanceof FileStorageService
+      && ((FileStorageService) fromService).isResolvable(fromStoragePath)) {
       Path sourcePath = ((FileStorageService) fromService).resolve(fromStoragePath);
       Path targetPath = FSUtils.getEntityPath(basePath, toStoragePath);
       FSUtils.copy(sourcePath, targetPath, false);
@@ -566,7 +606,8 @@ public class FileStorageService implements StorageService {
   public void move(StorageService fromService, StoragePath fromStoragePath, StoragePath toStoragePath)
     throws AlreadyExistsException, GenericException, RequestNotValidException, NotFoundException,
     AuthorizationDeniedException {
-    if (fromService instanceof FileStorageService) {
+    if (fromService instanceof FileStorageService
+      && ((FileStorageService) fromService).isResolvable(fromStoragePath)) {
       Path sourcePath = ((FileStorageService) fromService).resolve(fromStoragePath);
       Path targetPath = FSUtils.getEntityPath(basePath, toStoragePath);
       FSUtils.move(sourcePath, targetPath, false);
@@ -750,7 +791,7 @@ public class FileStorageService implements StorageService {
       }
 
       // writing file
-      Files.copy(binPath, dataPath);
+      copyBinaryContent(binPath, dataPath, false);
 
       // Creating metadata
       DefaultBinaryVersion b = new DefaultBinaryVersion();
@@ -792,13 +833,64 @@ public class FileStorageService implements StorageService {
 
     try {
       // writing file
-      Files.copy(binVersionPath, binPath, StandardCopyOption.REPLACE_EXISTING);
+      copyBinaryContent(binVersionPath, binPath, true);
     } catch (IOException e) {
       throw new GenericException("Could not create binary", e);
     }
 
   }
 
+  /**
+   * Copy the content of a binary, used when creating and reverting binary
+   * versions. Depending on the {@link FileCopyMode}, the content may be shared
+   * instead of duplicated, as long as the target can later be replaced without
+   * changing the source.
+   */
+  protected void copyBinaryContent(Path sourcePath, Path targetPath, boolean replaceExisting) throws IOException {
+    Path copyPath = replaceExisting
+      ? targetPath.resolveSibling(targetPath.getFileName() + ".temp" + System.nanoTime())
+      : targetPath;
+    try {
+      if (!shareBinaryContent(sourcePath, copyPath)) {
+        Files.copy(sourcePath, copyPath);
+      }
+      if (replaceExisting) {
+        Files.move(copyPath, targetPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      }
+    } finally {
+      if (replaceExisting) {
+        Files.deleteIfExists(copyPath);
+      }
+    }
+  }
+
+  private boolean shareBinaryContent(Path sourcePath, Path targetPath) throws IOException {
+    switch (versionCopyMode) {
+      case HARDLINK:
+        try {
+          Files.createLink(targetPath, sourcePath);
+          return true;
+        } catch (UnsupportedOperationException e) {
+          return false;
+        }
+      case REFLINK:
+        return FSUtils.reflink(sourcePath, targetPath);
+      case AUTO:
+        // cloning is done by an external process, not worth it on small files
+        return Files.size(sourcePath) >= REFLINK_MIN_SIZE && FSUtils.reflink(sourcePath, targetPath);
+      default:
+        return false;
+    }
+  }
+
+  private static void restoreDetachedContent(Path detachedPath, Path binaryPath) {
+    try {
+      Files.move(detachedPath, binaryPath, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      LOGGER.error("Could not restore {} after a failed update", binaryPath, e);
+    }
+  }
+
   @Override
   public void deleteBinaryVersion(StoragePath storagePath, String version)
     throws NotFoundException, GenericException, RequestNotValidException {
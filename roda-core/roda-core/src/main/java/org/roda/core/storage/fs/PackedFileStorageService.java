@@ -0,0 +1,705 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.fs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.lang3.StringUtils;
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.common.iterables.CloseableIterable;
+import org.roda.core.common.iterables.CloseableIterables;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.exceptions.AlreadyExistsException;
+import org.roda.core.data.exceptions.AuthorizationDeniedException;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.RequestNotValidException;
+import org.roda.core.data.v2.ip.StoragePath;
+import org.roda.core.storage.Binary;
+import org.roda.core.storage.BinaryVersion;
+import org.roda.core.storage.ContentPayload;
+import org.roda.core.storage.DefaultBinary;
+import org.roda.core.storage.DefaultStoragePath;
+import org.roda.core.storage.DirectResourceAccess;
+import org.roda.core.storage.Directory;
+import org.roda.core.storage.Entity;
+import org.roda.core.storage.InputStreamContentPayload;
+import org.roda.core.storage.Resource;
+import org.roda.core.storage.StorageService;
+import org.roda.core.storage.StorageServiceWrapper;
+import org.roda.core.util.IdUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link FileStorageService} that keeps small binaries of some containers
+ * packed in a {@link PackedObjectStore} instead of one file each.
+ *
+ * <p>
+ * Risk incidences, job reports and preservation events are many and small, so
+ * one file per object wastes inodes and disk blocks and makes listing slow.
+ * Binaries of the packed containers that are not bigger than the size threshold
+ * are appended to segment files and listed from the in-memory index; bigger
+ * ones, references and everything in the other containers are stored as
+ * regular files. Containers and directories are always regular folders, so the
+ * packing is transparent to the callers of the {@link StorageService} API.
+ * </p>
+ *
+ * <p>
+ * Packed binaries are unpacked into regular files when a version of them is
+ * created, as versions are kept in the history folder. Deleted packed binaries
+ * are not moved to the trash, their space is reclaimed by the compaction of the
+ * segments. Packed binaries are not visible through {@link #resolve(StoragePath)}
+ * but {@link #getDirectAccess(StoragePath)} gives a temporary copy of them, or
+ * of the folders they are in.
+ * </p>
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+public class PackedFileStorageService extends FileStorageService {
+  private static final Logger LOGGER = LoggerFactory.getLogger(PackedFileStorageService.class);
+
+  public static final String PACKED_SUFFIX = "-packed";
+
+  private static final String CONFIG_PREFIX = "core.storage.packed";
+  private static final List<String> DEFAULT_CONTAINERS = Arrays.asList(RodaConstants.STORAGE_CONTAINER_RISK_INCIDENCE,
+    RodaConstants.STORAGE_CONTAINER_JOB_REPORT, RodaConstants.STORAGE_CONTAINER_PRESERVATION);
+  private static final int DEFAULT_MAX_OBJECT_SIZE = 4096;
+  private static final long DEFAULT_MAX_SEGMENT_SIZE = 64L * 1024 * 1024;
+  private static final double DEFAULT_COMPACTION_DEAD_RATIO = 0.5;
+
+  private static final String KEY_SEPARATOR = "/";
+
+  private final PackedObjectStore store;
+  private final Set<String> packedContainers;
+  private final int maxObjectSize;
+  private double compactionDeadRatio = DEFAULT_COMPACTION_DEAD_RATIO;
+  private ScheduledExecutorService compactionScheduler;
+
+  /**
+   * Constructor used when instantiated through
+   * <code>core.storage.new_service</code>. Packed containers, thresholds and
+   * compaction interval are read from the <code>core.storage.packed.*</code>
+   * properties.
+   */
+  public PackedFileStorageService(Path basePath, String trashDirName) throws GenericException {
+    this(basePath, trashDirName, getPackedPathFromConfiguration(basePath), getContainersFromConfiguration(),
+      getConfiguration().getInt(CONFIG_PREFIX + ".max_object_size", DEFAULT_MAX_OBJECT_SIZE),
+      getConfiguration().getLong(CONFIG_PREFIX + ".max_segment_size_mb", DEFAULT_MAX_SEGMENT_SIZE / 1024 / 1024) * 1024
+        * 1024);
+
+    compactionDeadRatio = getConfiguration().getDouble(CONFIG_PREFIX + ".compaction.dead_ratio",
+      DEFAULT_COMPACTION_DEAD_RATIO);
+    long interval = getConfiguration().getLong(CONFIG_PREFIX + ".compaction.interval_minutes", 60);
+    if (interval > 0) {
+      scheduleCompaction(interval, TimeUnit.MINUTES);
+    }
+  }
+
+  /**
+   * @param packedContainers
+   *          containers whose small binaries are packed, or null to pack small
+   *          binaries of all containers
+   */
+  public PackedFileStorageService(Path basePath, String trashDirName, Path packedPath, Set<String> packedContainers,
+    int maxObjectSize, long maxSegmentSize) throws GenericException {
+    super(basePath, trashDirName);
+    this.packedContainers = packedContainers;
+    this.maxObjectSize = maxObjectSize;
+    try {
+      this.store = new PackedObjectStore(packedPath, maxSegmentSize);
+    } catch (IOException e) {
+      throw new GenericException("Could not open packed object store " + packedPath, e);
+    }
+  }
+
+  private static Configuration getConfiguration() {
+    return RodaCoreFactory.getRodaConfiguration();
+  }
+
+  private static Path getPackedPathFromConfiguration(Path basePath) {
+    String packedPath = getConfiguration().getString(CONFIG_PREFIX + ".path");
+    if (StringUtils.isNotBlank(packedPath)) {
+      return Paths.get(packedPath);
+    } else {
+      return basePath.resolveSibling(basePath.getFileName() + PACKED_SUFFIX);
+    }
+  }
+
+  private static Set<String> getContainersFromConfiguration() {
+    String[] containers = getConfiguration().getStringArray(CONFIG_PREFIX + ".containers");
+    if (containers.length == 0) {
+      return new HashSet<>(DEFAULT_CONTAINERS);
+    }
+    return new HashSet<>(Arrays.asList(containers));
+  }
+
+  public PackedObjectStore getStore() {
+    return store;
+  }
+
+  /**
+   * Periodically compact the segments in a background thread.
+   */
+  public synchronized void scheduleCompaction(long interval, TimeUnit unit) {
+    if (compactionScheduler == null) {
+      compactionScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "packed-storage-compaction");
+        thread.setDaemon(true);
+        return thread;
+      });
+      compactionScheduler.scheduleWithFixedDelay(this::compact, interval, interval, unit);
+    }
+  }
+
+  /**
+   * Reclaims the space of overwritten and deleted packed binaries.
+   */
+  public void compact() {
+    try {
+      store.compact(compactionDeadRatio);
+    } catch (IOException | RuntimeException e) {
+      LOGGER.error("Error compacting packed object store {}", store.getSegmentsPath(), e);
+    }
+  }
+
+  private boolean isPackable(StoragePath storagePath) {
+    return !storagePath.isFromAContainer()
+      && (packedContainers == null || packedContainers.contains(storagePath.getContainerName()));
+  }
+
+  private static String getKey(StoragePath storagePath) {
+    return String.join(KEY_SEPARATOR, storagePath.asList());
+  }
+
+  private static String getPrefix(StoragePath storagePath) {
+    return getKey(storagePath) + KEY_SEPARATOR;
+  }
+
+  private boolean isPacked(StoragePath storagePath) {
+    return !storagePath.isFromAContainer() && store.contains(getKey(storagePath));
+  }
+
+  private boolean hasPackedUnder(StoragePath storagePath) {
+    return !store.list(getPrefix(storagePath)).isEmpty();
+  }
+
+  @Override
+  public boolean isResolvable(StoragePath storagePath) {
+    return !isPacked(storagePath) && !hasPackedUnder(storagePath);
+  }
+
+  private static StoragePath getStoragePath(String key) throws RequestNotValidException {
+    return DefaultStoragePath.parse(Arrays.asList(key.split(KEY_SEPARATOR)));
+  }
+
+  private Binary getPackedBinary(StoragePath storagePath) {
+    String key = getKey(storagePath);
+    return new DefaultBinary(storagePath, new PackedContentPayload(key), store.size(key), false, null);
+  }
+
+  private byte[] getPackedContent(StoragePath storagePath) throws GenericException, NotFoundException {
+    try {
+      byte[] content = store.get(getKey(storagePath));
+      if (content == null) {
+        throw new NotFoundException("Binary does not exist: " + storagePath);
+      }
+      return content;
+    } catch (IOException e) {
+      throw new GenericException("Could not read packed binary " + storagePath, e);
+    }
+  }
+
+  /**
+   * Reads the payload up to one byte over the size threshold, leaving the rest
+   * of the stream unread.
+   */
+  private byte[] readHead(InputStream in) throws IOException {
+    int limit = maxObjectSize + 1;
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[Math.min(8192, limit)];
+    int read;
+    while (out.size() < limit && (read = in.read(buffer, 0, Math.min(buffer.length, limit - out.size()))) != -1) {
+      out.write(buffer, 0, read);
+    }
+    return out.toByteArray();
+  }
+
+  private static ContentPayload remainingPayload(byte[] head, InputStream rest) {
+    return new InputStreamContentPayload(() -> new SequenceInputStream(new ByteArrayInputStream(head), rest));
+  }
+
+  private void createParentDirectories(StoragePath storagePath) throws IOException {
+    Path parent = resolve(storagePath).getParent();
+    if (!FSUtils.exists(parent)) {
+      Files.createDirectories(parent);
+    }
+  }
+
+  @Override
+  public boolean exists(StoragePath storagePath) {
+    return isPacked(storagePath) || super.exists(storagePath);
+  }
+
+  @Override
+  public void deleteContainer(StoragePath storagePath) throws NotFoundException, GenericException {
+    super.deleteContainer(storagePath);
+    removePackedUnder(storagePath);
+  }
+
+  private void removePackedUnder(StoragePath storagePath) throws GenericException {
+    try {
+      store.removeAll(getPrefix(storagePath));
+    } catch (IOException e) {
+      throw new GenericException("Could not delete packed binaries under " + storagePath, e);
+    }
+  }
+
+  private CloseableIterable<Resource> listPacked(StoragePath storagePath, boolean recursive) {
+    String prefix = getPrefix(storagePath);
+    Set<String> keys = store.list(prefix);
+    return new CloseableIterable<Resource>() {
+      @Override
+      public void close() {
+        // nothing to close, the keys are read from the index as they are needed
+      }
+
+      @Override
+      public Iterator<Resource> iterator() {
+        return keys.stream().filter(key -> recursive || key.indexOf(KEY_SEPARATOR, prefix.length()) < 0)
+          .map(PackedFileStorageService.this::getPackedResource).filter(Objects::nonNull).iterator();
+      }
+    };
+  }
+
+  private Resource getPackedResource(String key) {
+    try {
+      return getPackedBinary(getStoragePath(key));
+    } catch (RequestNotValidException e) {
+      LOGGER.warn("Ignoring packed binary with invalid key {}", key, e);
+      return null;
+    }
+  }
+
+  private long countPacked(StoragePath storagePath, boolean recursive) {
+    String prefix = getPrefix(storagePath);
+    return store.list(prefix).stream()
+      .filter(key -> recursive || key.indexOf(KEY_SEPARATOR, prefix.length()) < 0).count();
+  }
+
+  @Override
+  public CloseableIterable<Resource> listResourcesUnderContainer(StoragePath storagePath, boolean recursive)
+    throws NotFoundException, GenericException {
+    return CloseableIterables.concat(super.listResourcesUnderContainer(storagePath, recursive),
+      listPacked(storagePath, recursive));
+  }
+
+  @Override
+  public Long countResourcesUnderContainer(StoragePath storagePath, boolean recursive)
+    throws NotFoundException, GenericException {
+    return super.countResourcesUnderContainer(storagePath, recursive) + countPacked(storagePath, recursive);
+  }
+
+  @Override
+  public Directory createDirectory(StoragePath storagePath) throws AlreadyExistsException, GenericException {
+    if (isPacked(storagePath)) {
+      throw new AlreadyExistsException("Binary already exists: " + storagePath);
+    }
+    return super.createDirectory(storagePath);
+  }
+
+  @Override
+  public Directory getDirectory(StoragePath storagePath)
+    throws RequestNotValidException, NotFoundException, GenericException {
+    if (isPacked(storagePath)) {
+      throw new RequestNotValidException("Looking for a directory but found something else: " + storagePath);
+    }
+    return super.getDirectory(storagePath);
+  }
+
+  @Override
+  public CloseableIterable<Resource> listResourcesUnderDirectory(StoragePath storagePath, boolean recursive)
+    throws NotFoundException, GenericException {
+    return CloseableIterables.concat(super.listResourcesUnderDirectory(storagePath, recursive),
+      listPacked(storagePath, recursive));
+  }
+
+  @Override
+  public Long countResourcesUnderDirectory(StoragePath storagePath, boolean recursive)
+    throws NotFoundException, GenericException {
+    return super.countResourcesUnderDirectory(storagePath, recursive) + countPacked(storagePath, recursive);
+  }
+
+  @Override
+  public Binary createBinary(StoragePath storagePath, ContentPayload payload, boolean asReference)
+    throws GenericException, AlreadyExistsException {
+    if (asReference || !isPackable(storagePath)) {
+      return super.createBinary(storagePath, payload, asReference);
+    }
+
+    if (exists(storagePath)) {
+      throw new AlreadyExistsException("Binary already exists: " + storagePath);
+    }
+
+    try (InputStream in = payload.createInputStream()) {
+      byte[] content = readHead(in);
+      if (content.length > maxObjectSize) {
+        return super.createBinary(storagePath, remainingPayload(content, in), false);
+      }
+      createParentDirectories(storagePath);
+      if (!store.add(getKey(storagePath), content)) {
+        throw new AlreadyExistsException("Binary already exists: " + storagePath);
+      }
+      return getPackedBinary(storagePath);
+    } catch (IOException e) {
+      throw new GenericException("Could not create binary", e);
+    }
+  }
+
+  @Override
+  public Binary createRandomBinary(StoragePath parentStoragePath, ContentPayload payload, boolean asReference)
+    throws GenericException, RequestNotValidException {
+    StoragePath storagePath = DefaultStoragePath.parse(parentStoragePath, IdUtils.createUUID());
+    if (asReference || !isPackable(storagePath)) {
+      return super.createRandomBinary(parentStoragePath, payload, asReference);
+    }
+    try {
+      return createBinary(storagePath, payload, false);
+    } catch (AlreadyExistsException e) {
+      throw new GenericException("Could not create random binary under " + parentStoragePath, e);
+    }
+  }
+
+  @Override
+  public Binary updateBinaryContent(StoragePath storagePath, ContentPayload payload, boolean asReference,
+    boolean createIfNotExists) throws GenericException, NotFoundException, RequestNotValidException {
+    boolean packed = isPacked(storagePath);
+    if (asReference || !isPackable(storagePath) || (!packed && super.exists(storagePath))) {
+      // binaries kept as files (e.g. with versions) stay files
+      if (packed) {
+        deletePacked(storagePath);
+      }
+      return super.updateBinaryContent(storagePath, payload, asReference, createIfNotExists || packed);
+    }
+
+    if (!packed && !createIfNotExists) {
+      throw new NotFoundException("Binary does not exist: " + storagePath);
+    }
+
+    try (InputStream in = payload.createInputStream()) {
+      byte[] content = readHead(in);
+      if (content.length > maxObjectSize) {
+        if (packed) {
+          deletePacked(storagePath);
+        }
+        return super.updateBinaryContent(storagePath, remainingPayload(content, in), false, true);
+      }
+      createParentDirectories(storagePath);
+      store.put(getKey(storagePath), content);
+      return getPackedBinary(storagePath);
+    } catch (IOException e) {
+      throw new GenericException("Could not update binary content", e);
+    }
+  }
+
+  @Override
+  public Binary getBinary(StoragePath storagePath)
+    throws RequestNotValidException, NotFoundException, GenericException {
+    if (isPacked(storagePath)) {
+      return getPackedBinary(storagePath);
+    }
+    return super.getBinary(storagePath);
+  }
+
+  @Override
+  public void deleteResource(StoragePath storagePath) throws NotFoundException, GenericException {
+    if (isPacked(storagePath)) {
+      deletePacked(storagePath);
+    } else {
+      super.deleteResource(storagePath);
+      removePackedUnder(storagePath);
+    }
+  }
+
+  private void deletePacked(StoragePath storagePath) throws GenericException {
+    try {
+      store.remove(getKey(storagePath));
+    } catch (IOException e) {
+      throw new GenericException("Could not delete packed binary " + storagePath, e);
+    }
+  }
+
+  @Override
+  public void copy(StorageService fromService, StoragePath fromStoragePath, StoragePath toStoragePath)
+    throws AlreadyExistsException, GenericException, RequestNotValidException, NotFoundException,
+    AuthorizationDeniedException {
+    if (unwrap(fromService) != this) {
+      super.copy(fromService, fromStoragePath, toStoragePath);
+    } else if (isPacked(fromStoragePath)) {
+      copyPacked(fromStoragePath, toStoragePath);
+    } else {
+      FSUtils.copy(resolve(fromStoragePath), resolve(toStoragePath), false);
+      copyPackedUnder(fromStoragePath, toStoragePath);
+    }
+  }
+
+  @Override
+  public void copy(StorageService fromService, StoragePath fromStoragePath, Path toPath, String resource)
+    throws AlreadyExistsException, GenericException {
+    try {
+      StoragePath sourceStoragePath = StringUtils.isNotBlank(resource)
+        ? DefaultStoragePath.parse(fromStoragePath, resource)
+        : fromStoragePath;
+      if (isPacked(sourceStoragePath)) {
+        if (FSUtils.exists(toPath)) {
+          throw new AlreadyExistsException("Cannot copy because target path already exists: " + toPath);
+        }
+        Files.createDirectories(toPath.getParent());
+        Files.write(toPath, getPackedContent(sourceStoragePath));
+        return;
+      }
+
+      super.copy(fromService, fromStoragePath, toPath, resource);
+      if (hasPackedUnder(sourceStoragePath)) {
+        writePackedUnder(sourceStoragePath, toPath);
+      }
+    } catch (RequestNotValidException | NotFoundException | IOException e) {
+      throw new GenericException("Could not copy packed binary " + fromStoragePath, e);
+    }
+  }
+
+  /**
+   * Writes the packed binaries under the storage path into the folder that
+   * mirrors it, creating the folders they are in.
+   */
+  private void writePackedUnder(StoragePath storagePath, Path folder) throws IOException {
+    String prefix = getPrefix(storagePath);
+    for (String key : store.list(prefix)) {
+      byte[] content = store.get(key);
+      if (content != null) {
+        Path file = folder;
+        for (String part : key.substring(prefix.length()).split(KEY_SEPARATOR)) {
+          file = file.resolve(part);
+        }
+        Files.createDirectories(file.getParent());
+        Files.write(file, content);
+      }
+    }
+  }
+
+  @Override
+  public void move(StorageService fromService, StoragePath fromStoragePath, StoragePath toStoragePath)
+    throws AlreadyExistsException, GenericException, RequestNotValidException, NotFoundException,
+    AuthorizationDeniedException {
+    if (unwrap(fromService) != this) {
+      super.move(fromService, fromStoragePath, toStoragePath);
+    } else if (isPacked(fromStoragePath)) {
+      copyPacked(fromStoragePath, toStoragePath);
+      deletePacked(fromStoragePath);
+    } else {
+      FSUtils.move(resolve(fromStoragePath), resolve(toStoragePath), false);
+      copyPackedUnder(fromStoragePath, toStoragePath);
+      removePackedUnder(fromStoragePath);
+    }
+  }
+
+  private static StorageService unwrap(StorageService service) {
+    return service instanceof StorageServiceWrapper ? ((StorageServiceWrapper) service).getWrappedStorageService()
+      : service;
+  }
+
+  private void copyPacked(StoragePath fromStoragePath, StoragePath toStoragePath)
+    throws AlreadyExistsException, GenericException, NotFoundException {
+    byte[] content = getPackedContent(fromStoragePath);
+    if (!isPackable(toStoragePath) || content.length > maxObjectSize) {
+      super.createBinary(toStoragePath, new ByteArrayContentPayload(content), false);
+      return;
+    }
+    if (super.exists(toStoragePath)) {
+      throw new AlreadyExistsException("Binary already exists: " + toStoragePath);
+    }
+    try {
+      createParentDirectories(toStoragePath);
+      if (!store.add(getKey(toStoragePath), content)) {
+        throw new AlreadyExistsException("Binary already exists: " + toStoragePath);
+      }
+    } catch (IOException e) {
+      throw new GenericException("Could not copy packed binary " + fromStoragePath, e);
+    }
+  }
+
+  private void copyPackedUnder(StoragePath fromStoragePath, StoragePath toStoragePath)
+    throws AlreadyExistsException, GenericException, NotFoundException, RequestNotValidException {
+    String fromPrefix = getPrefix(fromStoragePath);
+    String toPrefix = getPrefix(toStoragePath);
+    for (String key : store.list(fromPrefix)) {
+      copyPacked(getStoragePath(key), getStoragePath(toPrefix + key.substring(fromPrefix.length())));
+    }
+  }
+
+  @Override
+  public Class<? extends Entity> getEntity(StoragePath storagePath) throws NotFoundException {
+    if (isPacked(storagePath)) {
+      return DefaultBinary.class;
+    }
+    return super.getEntity(storagePath);
+  }
+
+  /**
+   * Gives the file of a regular binary or folder as is. Packed binaries, and
+   * folders with packed binaries under them, are written to a temporary file or
+   * tree, removed when the access is closed.
+   */
+  @Override
+  public DirectResourceAccess getDirectAccess(StoragePath storagePath) {
+    if (isResolvable(storagePath)) {
+      return super.getDirectAccess(storagePath);
+    }
+
+    return new DirectResourceAccess() {
+      private Path temp = null;
+
+      @Override
+      public Path getPath() throws GenericException, NotFoundException {
+        if (temp == null) {
+          Path folder = null;
+          try {
+            folder = Files.createTempDirectory("packed");
+            Path target = folder.resolve(storagePath.getName());
+            if (isPacked(storagePath)) {
+              Files.write(target, getPackedContent(storagePath));
+            } else {
+              Path source = resolve(storagePath);
+              if (FSUtils.exists(source)) {
+                FSUtils.copy(source, target, false);
+              } else {
+                Files.createDirectories(target);
+              }
+              writePackedUnder(storagePath, target);
+            }
+            temp = target;
+          } catch (IOException | AlreadyExistsException e) {
+            if (folder != null) {
+              FSUtils.deletePathQuietly(folder);
+            }
+            throw new GenericException("Could not unpack " + storagePath, e);
+          }
+        }
+        return temp;
+      }
+
+      @Override
+      public void close() {
+        if (temp != null) {
+          FSUtils.deletePathQuietly(temp.getParent());
+        }
+      }
+    };
+  }
+
+  @Override
+  public BinaryVersion createBinaryVersion(StoragePath storagePath, Map<String, String> properties)
+    throws RequestNotValidException, NotFoundException, GenericException {
+    unpack(storagePath);
+    return super.createBinaryVersion(storagePath, properties);
+  }
+
+  @Override
+  public void revertBinaryVersion(StoragePath storagePath, String version)
+    throws NotFoundException, RequestNotValidException, GenericException {
+    unpack(storagePath);
+    super.revertBinaryVersion(storagePath, version);
+  }
+
+  /**
+   * Moves a packed binary into a regular file, as versions are kept as files.
+   */
+  private void unpack(StoragePath storagePath) throws GenericException, NotFoundException {
+    if (isPacked(storagePath)) {
+      try {
+        FSUtils.safeUpdate(new ByteArrayInputStream(getPackedContent(storagePath)), resolve(storagePath));
+      } catch (IOException e) {
+        throw new GenericException("Could not unpack binary " + storagePath, e);
+      }
+      deletePacked(storagePath);
+    }
+  }
+
+  private class PackedContentPayload implements ContentPayload {
+    private final String key;
+
+    PackedContentPayload(String key) {
+      this.key = key;
+    }
+
+    @Override
+    public InputStream createInputStream() throws IOException {
+      byte[] content = store.get(key);
+      if (content == null) {
+        throw new NoSuchFileException(key);
+      }
+      return new ByteArrayInputStream(content);
+    }
+
+    @Override
+    public void writeToPath(Path path) throws IOException {
+      try (InputStream in = createInputStream()) {
+        Files.copy(in, path, StandardCopyOption.REPLACE_EXISTING);
+      }
+    }
+
+    @Override
+    public URI getURI() throws UnsupportedOperationException {
+      throw new UnsupportedOperationException("Packed binaries have no URI: " + key);
+    }
+  }
+
+  private static class ByteArrayContentPayload implements ContentPayload {
+    private final byte[] content;
+
+    ByteArrayContentPayload(byte[] content) {
+      this.content = content;
+    }
+
+    @Override
+    public InputStream createInputStream() {
+      return new ByteArrayInputStream(content);
+    }
+
+    @Override
+    public void writeToPath(Path path) throws IOException {
+      Files.write(path, content);
+    }
+
+    @Override
+    public URI getURI() throws UnsupportedOperationException {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
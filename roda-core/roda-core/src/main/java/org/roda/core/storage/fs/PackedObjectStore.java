@@ -0,0 +1,545 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.fs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only store of small objects packed into segment files.
+ *
+ * <p>
+ * Each object is a record appended to the active segment, which is rolled
+ * over when it reaches the maximum segment size. Overwriting an object appends
+ * a new record and deleting it appends a tombstone, so the older records become
+ * dead space that {@link #compact(double)} reclaims by copying the live records
+ * of mostly dead segments into the active one. The index of live objects is
+ * kept in memory, sorted by key, and is rebuilt when the store is opened by
+ * reading all segments in order.
+ * </p>
+ *
+ * <p>
+ * Record layout: magic (int), type (byte), key length (int), data length
+ * (int), key (UTF-8), data and a CRC32 of everything from the type to the end
+ * of the data (int). A truncated or corrupted record, e.g. from a crash while
+ * appending, ends its segment.
+ * </p>
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+public class PackedObjectStore implements Closeable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(PackedObjectStore.class);
+
+  private static final int MAGIC = 0x524f4441;
+  private static final byte TYPE_PUT = 1;
+  private static final byte TYPE_DELETE = 2;
+  private static final int HEADER_LENGTH = 4 + 1 + 4 + 4;
+  private static final int TRAILER_LENGTH = 4;
+
+  private static final String SEGMENT_PREFIX = "segment-";
+  private static final String SEGMENT_SUFFIX = ".pack";
+
+  private final Path segmentsPath;
+  private final long maxSegmentSize;
+
+  private final NavigableMap<String, Location> index = new ConcurrentSkipListMap<>();
+  private final TreeMap<Long, Segment> segments = new TreeMap<>();
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private Segment active;
+
+  private static class Segment {
+    private final long id;
+    private final Path path;
+    private final FileChannel channel;
+    private long size;
+    private long deadBytes;
+
+    Segment(long id, Path path, FileChannel channel, long size) {
+      this.id = id;
+      this.path = path;
+      this.channel = channel;
+      this.size = size;
+    }
+
+    double getDeadRatio() {
+      return size == 0 ? 0 : (double) deadBytes / size;
+    }
+  }
+
+  private static class Location {
+    private final long segmentId;
+    private final long offset;
+    private final int recordLength;
+    private final int dataLength;
+
+    Location(long segmentId, long offset, int recordLength, int dataLength) {
+      this.segmentId = segmentId;
+      this.offset = offset;
+      this.recordLength = recordLength;
+      this.dataLength = dataLength;
+    }
+  }
+
+  private static class Record {
+    private final byte type;
+    private final String key;
+    private final byte[] data;
+    private final int length;
+
+    Record(byte type, String key, byte[] data, int length) {
+      this.type = type;
+      this.key = key;
+      this.data = data;
+      this.length = length;
+    }
+  }
+
+  public PackedObjectStore(Path segmentsPath, long maxSegmentSize) throws IOException {
+    this.segmentsPath = segmentsPath;
+    this.maxSegmentSize = maxSegmentSize;
+    Files.createDirectories(segmentsPath);
+    open();
+  }
+
+  public Path getSegmentsPath() {
+    return segmentsPath;
+  }
+
+  private void open() throws IOException {
+    List<Long> ids = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(segmentsPath,
+      SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+      for (Path path : stream) {
+        String name = path.getFileName().toString();
+        try {
+          ids.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+        } catch (NumberFormatException e) {
+          LOGGER.warn("Ignoring unexpected file in packed object store: {}", path);
+        }
+      }
+    }
+    ids.sort(null);
+
+    for (long id : ids) {
+      Path path = getSegmentPath(id);
+      FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      Segment segment = new Segment(id, path, channel, 0);
+      segments.put(id, segment);
+      load(segment);
+    }
+
+    if (segments.isEmpty()) {
+      active = newSegment(1);
+    } else {
+      active = segments.lastEntry().getValue();
+    }
+    LOGGER.info("Opened packed object store {} with {} object(s) in {} segment(s)", segmentsPath, index.size(),
+      segments.size());
+  }
+
+  private void load(Segment segment) throws IOException {
+    long fileSize = segment.channel.size();
+    long offset = 0;
+    while (offset < fileSize) {
+      Record record = readRecord(segment.channel, offset, fileSize);
+      if (record == null) {
+        LOGGER.warn("Truncating segment {} at invalid record on offset {} of {}", segment.path, offset, fileSize);
+        segment.channel.truncate(offset);
+        break;
+      }
+      apply(segment, offset, record);
+      offset += record.length;
+    }
+    segment.size = offset;
+  }
+
+  private void apply(Segment segment, long offset, Record record) {
+    Location previous;
+    if (record.type == TYPE_PUT) {
+      previous = index.put(record.key,
+        new Location(segment.id, offset, record.length, record.data.length));
+    } else {
+      previous = index.remove(record.key);
+      segment.deadBytes += record.length;
+    }
+    markDead(previous);
+  }
+
+  private void markDead(Location location) {
+    if (location != null) {
+      Segment segment = segments.get(location.segmentId);
+      if (segment != null) {
+        segment.deadBytes += location.recordLength;
+      }
+    }
+  }
+
+  private static Record readRecord(FileChannel channel, long offset, long fileSize) throws IOException {
+    if (fileSize - offset < HEADER_LENGTH + TRAILER_LENGTH) {
+      return null;
+    }
+    ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+    readFully(channel, header, offset);
+    header.flip();
+    int magic = header.getInt();
+    byte type = header.get();
+    int keyLength = header.getInt();
+    int dataLength = header.getInt();
+    if (magic != MAGIC || (type != TYPE_PUT && type != TYPE_DELETE) || keyLength <= 0 || dataLength < 0) {
+      return null;
+    }
+
+    long length = (long) HEADER_LENGTH + keyLength + dataLength + TRAILER_LENGTH;
+    if (fileSize - offset < length) {
+      return null;
+    }
+
+    ByteBuffer body = ByteBuffer.allocate(keyLength + dataLength + TRAILER_LENGTH);
+    readFully(channel, body, offset + HEADER_LENGTH);
+    body.flip();
+    byte[] key = new byte[keyLength];
+    byte[] data = new byte[dataLength];
+    body.get(key);
+    body.get(data);
+    int crc = body.getInt();
+
+    CRC32 checksum = new CRC32();
+    checksum.update(header.array(), 4, HEADER_LENGTH - 4);
+    checksum.update(key);
+    checksum.update(data);
+    if ((int) checksum.getValue() != crc) {
+      return null;
+    }
+    return new Record(type, new String(key, StandardCharsets.UTF_8), data, (int) length);
+  }
+
+  private static ByteBuffer encodeRecord(byte type, String key, byte[] data) {
+    byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + keyBytes.length + data.length + TRAILER_LENGTH);
+    buffer.putInt(MAGIC);
+    buffer.put(type);
+    buffer.putInt(keyBytes.length);
+    buffer.putInt(data.length);
+    buffer.put(keyBytes);
+    buffer.put(data);
+
+    CRC32 checksum = new CRC32();
+    checksum.update(buffer.array(), 4, buffer.position() - 4);
+    buffer.putInt((int) checksum.getValue());
+    buffer.flip();
+    return buffer;
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("Unexpected end of segment");
+      }
+    }
+  }
+
+  private Path getSegmentPath(long id) {
+    return segmentsPath.resolve(String.format("%s%012d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+  }
+
+  private Segment newSegment(long id) throws IOException {
+    Path path = getSegmentPath(id);
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+      StandardOpenOption.WRITE);
+    Segment segment = new Segment(id, path, channel, 0);
+    segments.put(id, segment);
+    return segment;
+  }
+
+  /**
+   * Appends a record to the active segment, rolling it over if needed. Must be
+   * called with the write lock held.
+   *
+   * @return offset of the record in the active segment
+   */
+  private long append(ByteBuffer record) throws IOException {
+    if (active.size > 0 && active.size + record.remaining() > maxSegmentSize) {
+      active.channel.force(false);
+      active = newSegment(active.id + 1);
+    }
+    long offset = active.size;
+    while (record.hasRemaining()) {
+      active.channel.write(record, offset + record.position());
+    }
+    active.size += record.limit();
+    return offset;
+  }
+
+  private void appendPut(String key, byte[] data) throws IOException {
+    ByteBuffer record = encodeRecord(TYPE_PUT, key, data);
+    int length = record.remaining();
+    long offset = append(record);
+    markDead(index.put(key, new Location(active.id, offset, length, data.length)));
+  }
+
+  private void appendDelete(String key) throws IOException {
+    ByteBuffer record = encodeRecord(TYPE_DELETE, key, new byte[0]);
+    int length = record.remaining();
+    append(record);
+    active.deadBytes += length;
+  }
+
+  /**
+   * Stores an object, replacing the previous one with the same key.
+   */
+  public void put(String key, byte[] data) throws IOException {
+    lock.writeLock().lock();
+    try {
+      appendPut(key, data);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Stores an object only if there is none with the same key.
+   *
+   * @return false if an object with the key already exists
+   */
+  public boolean add(String key, byte[] data) throws IOException {
+    lock.writeLock().lock();
+    try {
+      if (index.containsKey(key)) {
+        return false;
+      }
+      appendPut(key, data);
+      return true;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * @return the content of the object or null if there is no object with the
+   *         key
+   */
+  public byte[] get(String key) throws IOException {
+    lock.readLock().lock();
+    try {
+      Location location = index.get(key);
+      if (location == null) {
+        return null;
+      }
+      Segment segment = segments.get(location.segmentId);
+      ByteBuffer buffer = ByteBuffer.allocate(location.dataLength);
+      long keyLength = location.recordLength - HEADER_LENGTH - TRAILER_LENGTH - location.dataLength;
+      readFully(segment.channel, buffer, location.offset + HEADER_LENGTH + keyLength);
+      return buffer.array();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  public boolean contains(String key) {
+    return index.containsKey(key);
+  }
+
+  /**
+   * @return size of the object content or -1 if there is no object with the
+   *         key
+   */
+  public long size(String key) {
+    Location location = index.get(key);
+    return location == null ? -1 : location.dataLength;
+  }
+
+  /**
+   * @return true if the object existed
+   */
+  public boolean remove(String key) throws IOException {
+    lock.writeLock().lock();
+    try {
+      Location location = index.remove(key);
+      if (location == null) {
+        return false;
+      }
+      markDead(location);
+      appendDelete(key);
+      return true;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Removes all objects with keys starting with the prefix.
+   *
+   * @return number of removed objects
+   */
+  public int removeAll(String prefix) throws IOException {
+    lock.writeLock().lock();
+    try {
+      int removed = 0;
+      for (String key : list(prefix)) {
+        if (remove(key)) {
+          removed++;
+        }
+      }
+      return removed;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * @return keys starting with the prefix, in order, as a view of the index
+   *         that is read lazily and reflects objects added or removed meanwhile
+   */
+  public NavigableSet<String> list(String prefix) {
+    return index.subMap(prefix, true, prefix + Character.MAX_VALUE, false).navigableKeySet();
+  }
+
+  public int getObjectCount() {
+    return index.size();
+  }
+
+  public int getSegmentCount() {
+    lock.readLock().lock();
+    try {
+      return segments.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return total size of all segments, live and dead records included
+   */
+  public long getTotalSize() {
+    lock.readLock().lock();
+    try {
+      return segments.values().stream().mapToLong(s -> s.size).sum();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Rolls the active segment over, so that it can be compacted.
+   */
+  public void rollOver() throws IOException {
+    lock.writeLock().lock();
+    try {
+      if (active.size > 0) {
+        active.channel.force(false);
+        active = newSegment(active.id + 1);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Rewrites the live records of the segments, other than the active one, whose
+   * dead space is at least the given ratio, and deletes those segments. Segments
+   * are compacted one at a time, so readers and writers are only blocked while
+   * one segment is copied.
+   *
+   * @return number of bytes reclaimed
+   */
+  public long compact(double minDeadRatio) throws IOException {
+    List<Long> candidates = new ArrayList<>();
+    lock.readLock().lock();
+    try {
+      for (Segment segment : segments.values()) {
+        if (segment != active && segment.deadBytes > 0 && segment.getDeadRatio() >= minDeadRatio) {
+          candidates.add(segment.id);
+        }
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+
+    long reclaimed = 0;
+    for (long id : candidates) {
+      lock.writeLock().lock();
+      try {
+        Segment segment = segments.get(id);
+        if (segment != null && segment != active) {
+          reclaimed += compact(segment);
+        }
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+
+    if (reclaimed > 0) {
+      LOGGER.info("Compacted {} segment(s) of {}, reclaiming {} bytes", candidates.size(), segmentsPath, reclaimed);
+    }
+    return reclaimed;
+  }
+
+  private long compact(Segment segment) throws IOException {
+    // a tombstone must be kept while an older segment may hold the deleted
+    // record, otherwise the record would come back when the store is reopened
+    boolean oldest = segments.firstKey() == segment.id;
+    long before = getTotalSize();
+
+    long offset = 0;
+    while (offset < segment.size) {
+      Record record = readRecord(segment.channel, offset, segment.size);
+      if (record == null) {
+        throw new IOException("Invalid record in segment " + segment.path + " at offset " + offset);
+      }
+      Location location = index.get(record.key);
+      if (record.type == TYPE_PUT) {
+        if (location != null && location.segmentId == segment.id && location.offset == offset) {
+          appendPut(record.key, record.data);
+        }
+      } else if (!oldest && location == null) {
+        appendDelete(record.key);
+      }
+      offset += record.length;
+    }
+
+    active.channel.force(false);
+    segments.remove(segment.id);
+    segment.channel.close();
+    Files.deleteIfExists(segment.path);
+    return Math.max(0, before - getTotalSize());
+  }
+
+  @Override
+  public void close() throws IOException {
+    lock.writeLock().lock();
+    try {
+      for (Segment segment : segments.values()) {
+        if (segment.channel.isOpen()) {
+          segment.channel.force(false);
+          segment.channel.close();
+        }
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+}
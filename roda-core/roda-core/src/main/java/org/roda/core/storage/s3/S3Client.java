@@ -0,0 +1,486 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.s3;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Minimal client for the S3 REST API (path-style addressing, AWS Signature
+ * Version 4), covering the operations needed by {@link S3StorageService}.
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+public class S3Client implements Closeable {
+  private static final String UNSIGNED_PAYLOAD = "UNSIGNED-PAYLOAD";
+  private static final String ALGORITHM = "AWS4-HMAC-SHA256";
+  private static final String SERVICE = "s3";
+  private static final DateTimeFormatter AMZ_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'");
+  private static final DateTimeFormatter DATE_STAMP_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+  private final S3Config config;
+  private final String host;
+  private final PoolingHttpClientConnectionManager connectionManager;
+  private final CloseableHttpClient httpClient;
+
+  public S3Client(S3Config config) {
+    this.config = config;
+    URI endpoint = config.getEndpoint();
+    this.host = endpoint.getPort() == -1 ? endpoint.getHost() : endpoint.getHost() + ":" + endpoint.getPort();
+    this.connectionManager = new PoolingHttpClientConnectionManager();
+    // transfers and listings may run concurrently
+    connectionManager.setMaxTotal(config.getParallelism() * 4);
+    connectionManager.setDefaultMaxPerRoute(config.getParallelism() * 4);
+    this.httpClient = HttpClients.custom().setConnectionManager(connectionManager).build();
+  }
+
+  public S3Config getConfig() {
+    return config;
+  }
+
+  /**
+   * @return the object summary or <code>null</code> if the object does not exist
+   */
+  public S3ObjectSummary headObject(String key) throws IOException {
+    HttpHead request = new HttpHead();
+    try (CloseableHttpResponse response = execute(request, key, Collections.emptyMap(), Collections.emptyMap())) {
+      int status = response.getStatusLine().getStatusCode();
+      if (status == HttpStatus.SC_NOT_FOUND) {
+        return null;
+      }
+      checkStatus(response, key);
+      long size = Long.parseLong(response.getFirstHeader("Content-Length").getValue());
+      String etag = response.containsHeader("ETag") ? unquote(response.getFirstHeader("ETag").getValue()) : null;
+      return new S3ObjectSummary(key, size, etag, null);
+    }
+  }
+
+  /**
+   * Get the object content, or a range of it when <code>from</code> is not
+   * <code>null</code>. The returned stream must be closed.
+   *
+   * @throws FileNotFoundException
+   *           if the object does not exist
+   */
+  public InputStream getObject(String key, Long from, Long to) throws IOException {
+    HttpGet request = new HttpGet();
+    if (from != null) {
+      request.setHeader("Range", "bytes=" + from + "-" + (to != null ? to : ""));
+    }
+    final CloseableHttpResponse response = execute(request, key, Collections.emptyMap(), Collections.emptyMap());
+    try {
+      checkStatus(response, key);
+      return new FilterInputStream(response.getEntity().getContent()) {
+        @Override
+        public void close() throws IOException {
+          try {
+            super.close();
+          } finally {
+            response.close();
+          }
+        }
+      };
+    } catch (IOException | RuntimeException e) {
+      response.close();
+      throw e;
+    }
+  }
+
+  public void putObject(String key, HttpEntity entity) throws IOException {
+    HttpPut request = new HttpPut();
+    request.setEntity(entity);
+    executeAndConsume(request, key, Collections.emptyMap(), Collections.emptyMap());
+  }
+
+  public void putObject(String key, byte[] content, int length) throws IOException {
+    putObject(key, new ByteArrayEntity(content, 0, length, ContentType.APPLICATION_OCTET_STREAM));
+  }
+
+  public void deleteObject(String key) throws IOException {
+    executeAndConsume(new HttpDelete(), key, Collections.emptyMap(), Collections.emptyMap());
+  }
+
+  /**
+   * Server-side copy of objects up to 5 GB.
+   */
+  public void copyObject(String sourceKey, String targetKey) throws IOException {
+    executeAndConsume(new HttpPut(), targetKey, Collections.emptyMap(),
+      Collections.singletonMap("x-amz-copy-source", "/" + config.getBucket() + "/" + uriEncode(sourceKey, false)));
+  }
+
+  public S3ListPage listObjects(String prefix, String delimiter, String continuationToken, int maxKeys)
+    throws IOException {
+    Map<String, String> query = new TreeMap<>();
+    query.put("list-type", "2");
+    query.put("prefix", prefix);
+    query.put("max-keys", Integer.toString(maxKeys));
+    if (delimiter != null) {
+      query.put("delimiter", delimiter);
+    }
+    if (continuationToken != null) {
+      query.put("continuation-token", continuationToken);
+    }
+
+    Document document = executeForXml(new HttpGet(), "", query);
+    List<S3ObjectSummary> objects = new ArrayList<>();
+    NodeList contents = document.getElementsByTagName("Contents");
+    for (int i = 0; i < contents.getLength(); i++) {
+      Element content = (Element) contents.item(i);
+      objects.add(new S3ObjectSummary(getChildText(content, "Key"), Long.parseLong(getChildText(content, "Size")),
+        unquote(getChildText(content, "ETag")), getChildText(content, "LastModified")));
+    }
+
+    List<String> commonPrefixes = new ArrayList<>();
+    NodeList prefixes = document.getElementsByTagName("CommonPrefixes");
+    for (int i = 0; i < prefixes.getLength(); i++) {
+      commonPrefixes.add(getChildText((Element) prefixes.item(i), "Prefix"));
+    }
+
+    String nextToken = null;
+    if (Boolean.parseBoolean(getChildText(document.getDocumentElement(), "IsTruncated"))) {
+      nextToken = getChildText(document.getDocumentElement(), "NextContinuationToken");
+    }
+    return new S3ListPage(objects, commonPrefixes, nextToken);
+  }
+
+  public String createMultipartUpload(String key) throws IOException {
+    Document document = executeForXml(new HttpPost(), key, Collections.singletonMap("uploads", ""));
+    return getChildText(document.getDocumentElement(), "UploadId");
+  }
+
+  /**
+   * @return the ETag of the uploaded part
+   */
+  public String uploadPart(String key, String uploadId, int partNumber, byte[] content, int length)
+    throws IOException {
+    HttpPut request = new HttpPut();
+    request.setEntity(new ByteArrayEntity(content, 0, length, ContentType.APPLICATION_OCTET_STREAM));
+    try (CloseableHttpResponse response = execute(request, key, partQuery(uploadId, partNumber),
+      Collections.emptyMap())) {
+      checkStatus(response, key);
+      EntityUtils.consumeQuietly(response.getEntity());
+      return unquote(response.getFirstHeader("ETag").getValue());
+    }
+  }
+
+  /**
+   * Server-side copy of a byte range of an object into a part of a multipart
+   * upload.
+   *
+   * @return the ETag of the copied part
+   */
+  public String uploadPartCopy(String sourceKey, String key, String uploadId, int partNumber, long from, long to)
+    throws IOException {
+    Map<String, String> headers = new TreeMap<>();
+    headers.put("x-amz-copy-source", "/" + config.getBucket() + "/" + uriEncode(sourceKey, false));
+    headers.put("x-amz-copy-source-range", "bytes=" + from + "-" + to);
+    HttpPut request = new HttpPut();
+    try (CloseableHttpResponse response = execute(request, key, partQuery(uploadId, partNumber), headers)) {
+      checkStatus(response, key);
+      Document document = parseXml(response.getEntity());
+      return unquote(getChildText(document.getDocumentElement(), "ETag"));
+    }
+  }
+
+  public void completeMultipartUpload(String key, String uploadId, List<String> partETags) throws IOException {
+    StringBuilder body = new StringBuilder("<CompleteMultipartUpload>");
+    for (int i = 0; i < partETags.size(); i++) {
+      body.append("<Part><PartNumber>").append(i + 1).append("</PartNumber><ETag>\"").append(partETags.get(i))
+        .append("\"</ETag></Part>");
+    }
+    body.append("</CompleteMultipartUpload>");
+
+    HttpPost request = new HttpPost();
+    request.setEntity(new StringEntity(body.toString(), ContentType.APPLICATION_XML));
+    // a 200 response may still carry an error document
+    Document document = executeForXml(request, key, Collections.singletonMap("uploadId", uploadId));
+    if ("Error".equals(document.getDocumentElement().getTagName())) {
+      throw new IOException("Could not complete multipart upload of " + key + ": "
+        + getChildText(document.getDocumentElement(), "Message"));
+    }
+  }
+
+  public void abortMultipartUpload(String key, String uploadId) throws IOException {
+    executeAndConsume(new HttpDelete(), key, Collections.singletonMap("uploadId", uploadId), Collections.emptyMap());
+  }
+
+  public URI getObjectURI(String key) {
+    return URI.create(config.getEndpoint().toString().replaceAll("/+$", "") + getCanonicalURI(key));
+  }
+
+  @Override
+  public void close() throws IOException {
+    httpClient.close();
+    connectionManager.close();
+  }
+
+  private static Map<String, String> partQuery(String uploadId, int partNumber) {
+    Map<String, String> query = new TreeMap<>();
+    query.put("partNumber", Integer.toString(partNumber));
+    query.put("uploadId", uploadId);
+    return query;
+  }
+
+  private void executeAndConsume(HttpRequestBase request, String key, Map<String, String> query,
+    Map<String, String> headers) throws IOException {
+    try (CloseableHttpResponse response = execute(request, key, query, headers)) {
+      checkStatus(response, key);
+      EntityUtils.consumeQuietly(response.getEntity());
+    }
+  }
+
+  private Document executeForXml(HttpRequestBase request, String key, Map<String, String> query)
+    throws IOException {
+    try (CloseableHttpResponse response = execute(request, key, query, Collections.emptyMap())) {
+      checkStatus(response, key);
+      return parseXml(response.getEntity());
+    }
+  }
+
+  private CloseableHttpResponse execute(HttpRequestBase request, String key, Map<String, String> query,
+    Map<String, String> headers) throws IOException {
+    String canonicalURI = getCanonicalURI(key);
+    String canonicalQuery = getCanonicalQuery(query);
+    request.setURI(URI.create(config.getEndpoint().toString().replaceAll("/+$", "") + canonicalURI
+      + (canonicalQuery.isEmpty() ? "" : "?" + canonicalQuery)));
+    sign(request, canonicalURI, canonicalQuery, headers);
+    return httpClient.execute(request);
+  }
+
+  private void sign(HttpRequestBase request, String canonicalURI, String canonicalQuery, Map<String, String> headers)
+    throws IOException {
+    ZonedDateTime now = ZonedDateTime.now(ZoneOffset.UTC);
+    String amzDate = AMZ_DATE_FORMAT.format(now);
+    String dateStamp = DATE_STAMP_FORMAT.format(now);
+
+    Map<String, String> signedHeaders = new TreeMap<>(headers);
+    signedHeaders.put("host", host);
+    signedHeaders.put("x-amz-content-sha256", UNSIGNED_PAYLOAD);
+    signedHeaders.put("x-amz-date", amzDate);
+
+    StringBuilder canonicalHeaders = new StringBuilder();
+    for (Map.Entry<String, String> header : signedHeaders.entrySet()) {
+      canonicalHeaders.append(header.getKey()).append(':').append(header.getValue().trim()).append('\n');
+      if (!"host".equals(header.getKey())) {
+        request.setHeader(header.getKey(), header.getValue());
+      }
+    }
+    String signedHeaderNames = String.join(";", signedHeaders.keySet());
+
+    String canonicalRequest = request.getMethod() + "\n" + canonicalURI + "\n" + canonicalQuery + "\n"
+      + canonicalHeaders + "\n" + signedHeaderNames + "\n" + UNSIGNED_PAYLOAD;
+    String scope = dateStamp + "/" + config.getRegion() + "/" + SERVICE + "/aws4_request";
+    String stringToSign = ALGORITHM + "\n" + amzDate + "\n" + scope + "\n" + hex(sha256(canonicalRequest));
+
+    try {
+      byte[] signingKey = hmac(("AWS4" + config.getSecretKey()).getBytes(StandardCharsets.UTF_8), dateStamp);
+      signingKey = hmac(signingKey, config.getRegion());
+      signingKey = hmac(signingKey, SERVICE);
+      signingKey = hmac(signingKey, "aws4_request");
+      String signature = hex(hmac(signingKey, stringToSign));
+      request.setHeader("Authorization", ALGORITHM + " Credential=" + config.getAccessKey() + "/" + scope
+        + ", SignedHeaders=" + signedHeaderNames + ", Signature=" + signature);
+    } catch (GeneralSecurityException e) {
+      throw new IOException("Could not sign S3 request", e);
+    }
+  }
+
+  private String getCanonicalURI(String key) {
+    return "/" + uriEncode(config.getBucket(), true) + "/" + uriEncode(key, false);
+  }
+
+  private static String getCanonicalQuery(Map<String, String> query) {
+    Map<String, String> sorted = new TreeMap<>();
+    for (Map.Entry<String, String> parameter : query.entrySet()) {
+      sorted.put(uriEncode(parameter.getKey(), true), uriEncode(parameter.getValue(), true));
+    }
+    List<String> parameters = new ArrayList<>();
+    for (Map.Entry<String, String> parameter : sorted.entrySet()) {
+      parameters.add(parameter.getKey() + "=" + parameter.getValue());
+    }
+    return String.join("&", parameters);
+  }
+
+  /**
+   * URI encoding as defined by AWS Signature Version 4.
+   */
+  static String uriEncode(String value, boolean encodeSlash) {
+    StringBuilder encoded = new StringBuilder();
+    for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+      char c = (char) (b & 0xFF);
+      if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '_' || c == '-'
+        || c == '~' || c == '.' || (c == '/' && !encodeSlash)) {
+        encoded.append(c);
+      } else {
+        encoded.append('%').append(String.format("%02X", b & 0xFF));
+      }
+    }
+    return encoded.toString();
+  }
+
+  private static void checkStatus(CloseableHttpResponse response, String key) throws IOException {
+    int status = response.getStatusLine().getStatusCode();
+    if (status == HttpStatus.SC_NOT_FOUND) {
+      EntityUtils.consumeQuietly(response.getEntity());
+      throw new FileNotFoundException("S3 object not found: " + key);
+    } else if (status < 200 || status >= 300) {
+      String message = response.getEntity() != null
+        ? EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8)
+        : response.getStatusLine().getReasonPhrase();
+      throw new IOException("S3 request on '" + key + "' failed with status " + status + ": " + message);
+    }
+  }
+
+  private static Document parseXml(HttpEntity entity) throws IOException {
+    byte[] content = entity != null ? EntityUtils.toByteArray(entity) : new byte[0];
+    try (InputStream inputStream = new ByteArrayInputStream(content)) {
+      DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+      factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+      factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+      return factory.newDocumentBuilder().parse(inputStream);
+    } catch (ParserConfigurationException | SAXException e) {
+      throw new IOException("Could not parse S3 response", e);
+    }
+  }
+
+  private static String getChildText(Element parent, String tagName) {
+    NodeList children = parent.getElementsByTagName(tagName);
+    return children.getLength() > 0 ? children.item(0).getTextContent() : null;
+  }
+
+  private static String unquote(String etag) {
+    return etag == null ? null : StringUtils.strip(etag, "\"");
+  }
+
+  private static byte[] sha256(String value) throws IOException {
+    try {
+      return MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+    } catch (GeneralSecurityException e) {
+      throw new IOException(e);
+    }
+  }
+
+  private static byte[] hmac(byte[] key, String value) throws GeneralSecurityException {
+    Mac mac = Mac.getInstance("HmacSHA256");
+    mac.init(new SecretKeySpec(key, "HmacSHA256"));
+    return mac.doFinal(value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String hex(byte[] bytes) {
+    StringBuilder hex = new StringBuilder();
+    for (byte b : bytes) {
+      hex.append(String.format("%02x", b & 0xFF));
+    }
+    return hex.toString();
+  }
+
+  /**
+   * Summary of an object as returned by HEAD or list requests.
+   */
+  public static class S3ObjectSummary {
+    private final String key;
+    private final long size;
+    private final String etag;
+    private final String lastModified;
+
+    public S3ObjectSummary(String key, long size, String etag, String lastModified) {
+      this.key = key;
+      this.size = size;
+      this.etag = etag;
+      this.lastModified = lastModified;
+    }
+
+    public String getKey() {
+      return key;
+    }
+
+    public long getSize() {
+      return size;
+    }
+
+    public String getETag() {
+      return etag;
+    }
+
+    public Date getLastModified() {
+      return lastModified == null ? null : Date.from(ZonedDateTime.parse(lastModified).toInstant());
+    }
+  }
+
+  /**
+   * One page of a ListObjectsV2 response.
+   */
+  public static class S3ListPage {
+    private final List<S3ObjectSummary> objects;
+    private final List<String> commonPrefixes;
+    private final String nextContinuationToken;
+
+    public S3ListPage(List<S3ObjectSummary> objects, List<String> commonPrefixes, String nextContinuationToken) {
+      this.objects = objects;
+      this.commonPrefixes = commonPrefixes;
+      this.nextContinuationToken = nextContinuationToken;
+    }
+
+    public List<S3ObjectSummary> getObjects() {
+      return objects;
+    }
+
+    public List<String> getCommonPrefixes() {
+      return commonPrefixes;
+    }
+
+    public String getNextContinuationToken() {
+      return nextContinuationToken;
+    }
+  }
+}
@@ -0,0 +1,162 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.s3;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.lang3.StringUtils;
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.data.exceptions.GenericException;
+
+/**
+ * Settings of an S3-compatible object store.
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+public class S3Config {
+  private static final String CONFIG_PREFIX = "core.storage.s3";
+  private static final long MB = 1024L * 1024L;
+
+  private URI endpoint;
+  private String region = "us-east-1";
+  private String bucket;
+  private String accessKey;
+  private String secretKey;
+  private String prefix = "storage/";
+  private String historyPrefix = "storage-history/";
+  private long partSize = 16 * MB;
+  private int parallelism = 4;
+  private Path cacheDirectory;
+  private long cacheMaxSize = 10240 * MB;
+
+  public S3Config(URI endpoint, String bucket, String accessKey, String secretKey) {
+    this.endpoint = endpoint;
+    this.bucket = bucket;
+    this.accessKey = accessKey;
+    this.secretKey = secretKey;
+  }
+
+  /**
+   * Read settings from the <code>core.storage.s3.*</code> properties.
+   *
+   * @param defaultCacheDirectory
+   *          folder used for the local read-through cache when none is
+   *          configured
+   */
+  public static S3Config getS3ConfigFromRodaConfiguration(Path defaultCacheDirectory) throws GenericException {
+    Configuration configuration = RodaCoreFactory.getRodaConfiguration();
+    String endpoint = configuration.getString(CONFIG_PREFIX + ".endpoint");
+    String bucket = configuration.getString(CONFIG_PREFIX + ".bucket");
+    if (StringUtils.isBlank(endpoint) || StringUtils.isBlank(bucket)) {
+      throw new GenericException("Both " + CONFIG_PREFIX + ".endpoint and " + CONFIG_PREFIX + ".bucket must be set");
+    }
+
+    S3Config config = new S3Config(URI.create(endpoint), bucket,
+      configuration.getString(CONFIG_PREFIX + ".access_key", System.getenv("RODA_S3_ACCESS_KEY")),
+      configuration.getString(CONFIG_PREFIX + ".secret_key", System.getenv("RODA_S3_SECRET_KEY")));
+    config.setRegion(configuration.getString(CONFIG_PREFIX + ".region", config.getRegion()));
+    config.setPrefix(configuration.getString(CONFIG_PREFIX + ".prefix", config.getPrefix()));
+    config.setHistoryPrefix(configuration.getString(CONFIG_PREFIX + ".history_prefix", config.getHistoryPrefix()));
+    config.setPartSize(configuration.getLong(CONFIG_PREFIX + ".part_size_mb", config.getPartSize() / MB) * MB);
+    config.setParallelism(configuration.getInt(CONFIG_PREFIX + ".parallelism", config.getParallelism()));
+    String cacheDirectory = configuration.getString(CONFIG_PREFIX + ".cache.folder");
+    config.setCacheDirectory(
+      StringUtils.isNotBlank(cacheDirectory) ? Paths.get(cacheDirectory) : defaultCacheDirectory);
+    config.setCacheMaxSize(
+      configuration.getLong(CONFIG_PREFIX + ".cache.max_size_mb", config.getCacheMaxSize() / MB) * MB);
+    return config;
+  }
+
+  public URI getEndpoint() {
+    return endpoint;
+  }
+
+  public String getRegion() {
+    return region;
+  }
+
+  public void setRegion(String region) {
+    this.region = region;
+  }
+
+  public String getBucket() {
+    return bucket;
+  }
+
+  public String getAccessKey() {
+    return accessKey;
+  }
+
+  public String getSecretKey() {
+    return secretKey;
+  }
+
+  public String getPrefix() {
+    return prefix;
+  }
+
+  public void setPrefix(String prefix) {
+    this.prefix = normalizePrefix(prefix);
+  }
+
+  public String getHistoryPrefix() {
+    return historyPrefix;
+  }
+
+  public void setHistoryPrefix(String historyPrefix) {
+    this.historyPrefix = normalizePrefix(historyPrefix);
+  }
+
+  public long getPartSize() {
+    return partSize;
+  }
+
+  /**
+   * Size of each part of multipart uploads and ranged downloads. Binaries
+   * smaller than this are transferred with a single request. S3 requires parts
+   * of at least 5 MB.
+   */
+  public void setPartSize(long partSize) {
+    this.partSize = Math.max(5 * MB, partSize);
+  }
+
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  public void setParallelism(int parallelism) {
+    this.parallelism = Math.max(1, parallelism);
+  }
+
+  public Path getCacheDirectory() {
+    return cacheDirectory;
+  }
+
+  public void setCacheDirectory(Path cacheDirectory) {
+    this.cacheDirectory = cacheDirectory;
+  }
+
+  public long getCacheMaxSize() {
+    return cacheMaxSize;
+  }
+
+  public void setCacheMaxSize(long cacheMaxSize) {
+    this.cacheMaxSize = cacheMaxSize;
+  }
+
+  private static String normalizePrefix(String prefix) {
+    if (StringUtils.isBlank(prefix)) {
+      return "";
+    }
+    String normalized = StringUtils.strip(prefix.trim(), "/");
+    return normalized.isEmpty() ? "" : normalized + "/";
+  }
+}
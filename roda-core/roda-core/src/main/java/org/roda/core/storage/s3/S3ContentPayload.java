@@ -0,0 +1,124 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.s3;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.roda.core.storage.ContentPayload;
+
+/**
+ * Class that implements {@code ContentPayload} for S3 objects. Large objects
+ * are written to local paths with parallel ranged requests.
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+public class S3ContentPayload implements ContentPayload {
+
+  private final S3Client client;
+  private final ExecutorService executor;
+  private final String key;
+  private final long size;
+
+  public S3ContentPayload(S3Client client, ExecutorService executor, String key, long size) {
+    this.client = client;
+    this.executor = executor;
+    this.key = key;
+    this.size = size;
+  }
+
+  @Override
+  public InputStream createInputStream() throws IOException {
+    return client.getObject(key, null, null);
+  }
+
+  @Override
+  public void writeToPath(Path path) throws IOException {
+    long partSize = client.getConfig().getPartSize();
+    if (size <= partSize || executor == null) {
+      try (InputStream inputStream = createInputStream()) {
+        Files.copy(inputStream, path, StandardCopyOption.REPLACE_EXISTING);
+      }
+      return;
+    }
+
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+      StandardOpenOption.TRUNCATE_EXISTING)) {
+      List<Future<Void>> parts = new ArrayList<>();
+      for (long from = 0; from < size; from += partSize) {
+        final long start = from;
+        final long end = Math.min(size, from + partSize) - 1;
+        parts.add(executor.submit(() -> {
+          downloadRange(channel, start, end);
+          return null;
+        }));
+      }
+      waitFor(parts);
+    }
+  }
+
+  private void downloadRange(FileChannel channel, long from, long to) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+    long position = from;
+    try (InputStream inputStream = client.getObject(key, from, to);
+      ReadableByteChannel source = Channels.newChannel(inputStream)) {
+      while (source.read(buffer) >= 0) {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+          position += channel.write(buffer, position);
+        }
+        buffer.clear();
+      }
+    }
+    if (position != to + 1) {
+      throw new IOException("Incomplete range download of " + key + " [" + from + "-" + to + "]");
+    }
+  }
+
+  private static void waitFor(List<Future<Void>> futures) throws IOException {
+    IOException error = null;
+    for (Future<Void> future : futures) {
+      try {
+        if (error == null) {
+          future.get();
+        } else {
+          future.cancel(true);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        error = new IOException("Interrupted while downloading", e);
+      } catch (ExecutionException e) {
+        error = e.getCause() instanceof IOException ? (IOException) e.getCause()
+          : new IOException("Error while downloading", e.getCause());
+      }
+    }
+    if (error != null) {
+      throw error;
+    }
+  }
+
+  @Override
+  public URI getURI() throws IOException, UnsupportedOperationException {
+    return client.getObjectURI(key);
+  }
+
+}
@@ -0,0 +1,263 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.s3;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.codec.binary.Hex;
+import org.roda.core.storage.ContentPayload;
+import org.roda.core.storage.fs.FSUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local read-through cache of S3 objects, used to give tools that need a file
+ * on disk (format identification, anti-virus, conversion) access to binaries.
+ *
+ * <p>
+ * Objects are cached under <code>&lt;sha256 of key&gt;/&lt;etag&gt;/&lt;file
+ * name&gt;</code>, so that a changed object is never served stale and the
+ * original file name (and extension) is kept. The least recently used files are
+ * evicted when the cache grows over its maximum size, except those still pinned
+ * by a caller, which must {@link #release(Path)} them once done.
+ * </p>
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+public class S3LocalCache {
+  private static final Logger LOGGER = LoggerFactory.getLogger(S3LocalCache.class);
+
+  private static final String DOWNLOAD_SUFFIX = ".part";
+  private static final String TEMPORARY_PREFIX = "directory";
+
+  private final Path cacheDirectory;
+  private final long maxSize;
+  private final AtomicLong size = new AtomicLong(0);
+  private final Map<Path, Integer> pins = new ConcurrentHashMap<>();
+  private final ReentrantLock pinLock = new ReentrantLock();
+  private final ReentrantLock evictionLock = new ReentrantLock();
+
+  public S3LocalCache(Path cacheDirectory, long maxSize) throws IOException {
+    this.cacheDirectory = cacheDirectory;
+    this.maxSize = maxSize;
+    Files.createDirectories(cacheDirectory);
+    size.set(computeSize());
+  }
+
+  public Path getCacheDirectory() {
+    return cacheDirectory;
+  }
+
+  public long getSize() {
+    return size.get();
+  }
+
+  /**
+   * Get the local copy of an object, downloading it if it is not cached yet.
+   * The returned file is pinned, so that it is not evicted while in use, until
+   * it is given to {@link #release(Path)}.
+   */
+  public Path get(String key, String etag, String fileName, long objectSize, ContentPayload content)
+    throws IOException {
+    Path folder = cacheDirectory.resolve(sha256(key)).resolve(etag == null ? "none" : etag);
+    Path file = folder.resolve(FSUtils.encodePathPartial(fileName));
+
+    // pinned before looking, so that it cannot be evicted in between
+    pin(file);
+    try {
+      if (FSUtils.exists(file)) {
+        // mark as recently used
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        return file;
+      }
+
+      Files.createDirectories(folder);
+      Path download = Files.createTempFile(folder, "download", DOWNLOAD_SUFFIX);
+      try {
+        content.writeToPath(download);
+        Files.move(download, file, StandardCopyOption.ATOMIC_MOVE);
+        size.addAndGet(objectSize);
+      } catch (IOException e) {
+        Files.deleteIfExists(download);
+        if (!FSUtils.exists(file)) {
+          throw e;
+        }
+        // concurrently downloaded by another thread
+      }
+    } catch (IOException | RuntimeException e) {
+      release(file);
+      throw e;
+    }
+
+    if (size.get() > maxSize) {
+      evict();
+    }
+    return file;
+  }
+
+  /**
+   * Unpin a file returned by {@link #get(String, String, String, long, ContentPayload)},
+   * allowing it to be evicted.
+   */
+  public void release(Path file) {
+    pinLock.lock();
+    try {
+      pins.computeIfPresent(file, (path, count) -> count > 1 ? count - 1 : null);
+    } finally {
+      pinLock.unlock();
+    }
+  }
+
+  boolean isPinned(Path file) {
+    return pins.containsKey(file);
+  }
+
+  /**
+   * Create a temporary folder inside the cache folder, which is neither counted
+   * in the cache size nor evicted. The caller must delete it.
+   */
+  public Path createTemporaryDirectory() throws IOException {
+    return Files.createTempDirectory(cacheDirectory, TEMPORARY_PREFIX);
+  }
+
+  private void pin(Path file) {
+    pinLock.lock();
+    try {
+      pins.merge(file, 1, Integer::sum);
+    } finally {
+      pinLock.unlock();
+    }
+  }
+
+  private void evict() {
+    evictionLock.lock();
+    try {
+      if (size.get() > maxSize) {
+        evictLeastRecentlyUsed();
+      }
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  private void evictLeastRecentlyUsed() {
+
+    List<Path> files = new ArrayList<>();
+    try {
+      Files.walkFileTree(cacheDirectory, new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+          return isTemporaryDirectory(dir) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+          if (attrs.isRegularFile() && !file.getFileName().toString().endsWith(DOWNLOAD_SUFFIX)) {
+            files.add(file);
+          }
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException exc) {
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    } catch (IOException e) {
+      LOGGER.warn("Could not list the S3 cache folder {}", cacheDirectory, e);
+      return;
+    }
+
+    files.sort(Comparator.comparing(S3LocalCache::getLastModifiedTime));
+    // leave some room so that eviction does not run on every download
+    long target = maxSize * 9 / 10;
+    for (Path file : files) {
+      if (size.get() <= target) {
+        break;
+      }
+      // checked and deleted under the pin lock, so that it cannot be handed out in between
+      pinLock.lock();
+      try {
+        if (!pins.containsKey(file)) {
+          long fileSize = Files.size(file);
+          Files.delete(file);
+          size.addAndGet(-fileSize);
+          FSUtils.deleteEmptyAncestorsQuietly(file, cacheDirectory);
+        }
+      } catch (IOException e) {
+        LOGGER.debug("Could not evict {} from the S3 cache", file, e);
+      } finally {
+        pinLock.unlock();
+      }
+    }
+  }
+
+  private boolean isTemporaryDirectory(Path dir) {
+    return cacheDirectory.equals(dir.getParent()) && dir.getFileName().toString().startsWith(TEMPORARY_PREFIX);
+  }
+
+  private long computeSize() throws IOException {
+    final AtomicLong total = new AtomicLong(0);
+    Files.walkFileTree(cacheDirectory, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+        if (isTemporaryDirectory(dir)) {
+          // left behind by a direct access that was never closed
+          FSUtils.deletePathQuietly(dir);
+          return FileVisitResult.SKIP_SUBTREE;
+        }
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+        if (file.getFileName().toString().endsWith(DOWNLOAD_SUFFIX)) {
+          // left behind by an interrupted download
+          Files.deleteIfExists(file);
+        } else {
+          total.addAndGet(attrs.size());
+        }
+        return FileVisitResult.CONTINUE;
+      }
+    });
+    return total.get();
+  }
+
+  private static FileTime getLastModifiedTime(Path file) {
+    try {
+      return Files.getLastModifiedTime(file);
+    } catch (IOException e) {
+      return FileTime.fromMillis(0);
+    }
+  }
+
+  private static String sha256(String value) {
+    try {
+      return Hex.encodeHexString(MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
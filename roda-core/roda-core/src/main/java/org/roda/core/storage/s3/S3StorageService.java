@@ -0,0 +1,1040 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.s3;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.roda.core.common.iterables.CloseableIterable;
+import org.roda.core.common.iterables.CloseableIterables;
+import org.roda.core.data.exceptions.AlreadyExistsException;
+import org.roda.core.data.exceptions.AuthorizationDeniedException;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.RequestNotValidException;
+import org.roda.core.data.utils.JsonUtils;
+import org.roda.core.data.v2.ip.StoragePath;
+import org.roda.core.storage.Binary;
+import org.roda.core.storage.BinaryVersion;
+import org.roda.core.storage.Container;
+import org.roda.core.storage.ContentPayload;
+import org.roda.core.storage.DefaultBinary;
+import org.roda.core.storage.DefaultBinaryVersion;
+import org.roda.core.storage.DefaultContainer;
+import org.roda.core.storage.DefaultDirectory;
+import org.roda.core.storage.DefaultStoragePath;
+import org.roda.core.storage.DirectResourceAccess;
+import org.roda.core.storage.Directory;
+import org.roda.core.storage.Entity;
+import org.roda.core.storage.Resource;
+import org.roda.core.storage.StorageService;
+import org.roda.core.storage.StorageServiceUtils;
+import org.roda.core.storage.StorageServiceWrapper;
+import org.roda.core.storage.fs.FSUtils;
+import org.roda.core.storage.s3.S3Client.S3ListPage;
+import org.roda.core.storage.s3.S3Client.S3ObjectSummary;
+import org.roda.core.util.IdUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Storage service that keeps content in an S3-compatible object store.
+ *
+ * <p>
+ * Each storage path maps to the key <code>&lt;prefix&gt;container/dir/file</code>
+ * (path partials encoded as in {@link FSUtils}). Containers and directories are
+ * kept as zero-length marker objects whose key ends with a slash, but any
+ * object under a key prefix is enough for the directory to exist. Binary
+ * versions are kept under a separate history prefix, mirroring the history
+ * folder of {@link org.roda.core.storage.fs.FileStorageService}.
+ * </p>
+ *
+ * <p>
+ * Binaries larger than the configured part size are uploaded with parallel
+ * multipart uploads and written to local files with parallel ranged requests.
+ * Same-storage copies and moves are done server side. Tools that need a local
+ * file get it through {@link #getDirectAccess(StoragePath)}, which is backed by
+ * a size-bounded local read-through cache.
+ * </p>
+ *
+ * <p>
+ * There is no trash: deleted objects are gone unless versioning is enabled on
+ * the bucket. Binaries as reference and shallow files are not supported.
+ * </p>
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+public class S3StorageService implements StorageService {
+  private static final Logger LOGGER = LoggerFactory.getLogger(S3StorageService.class);
+
+  private static final String SEPARATOR = "/";
+  private static final String HISTORY_DATA = "data/";
+  private static final String HISTORY_METADATA = "metadata/";
+  private static final int LIST_PAGE_SIZE = 1000;
+  private static final long MAX_SINGLE_COPY_SIZE = 5L * 1024 * 1024 * 1024;
+  private static final int PARTS_PER_SIZE_STEP = 1000;
+  private static final int MAX_PART_SIZE = 1024 * 1024 * 1024;
+
+  private final S3Config config;
+  private final S3Client client;
+  private final S3LocalCache cache;
+  private final ExecutorService transferExecutor;
+
+  /**
+   * Constructor used when instantiated through
+   * <code>core.storage.new_service</code>. Object store location and transfer
+   * settings are read from the <code>core.storage.s3.*</code> properties. As
+   * objects are deleted right away, the trash folder is not used.
+   */
+  public S3StorageService(Path basePath, String trashDirName) throws GenericException {
+    this(S3Config.getS3ConfigFromRodaConfiguration(basePath.resolveSibling(basePath.getFileName() + "-s3-cache")));
+  }
+
+  public S3StorageService(S3Config config) throws GenericException {
+    if (config.getPrefix().isEmpty() || config.getHistoryPrefix().startsWith(config.getPrefix())
+      || config.getPrefix().startsWith(config.getHistoryPrefix())) {
+      throw new GenericException("S3 storage and history prefixes must be non-empty and distinct: '"
+        + config.getPrefix() + "', '" + config.getHistoryPrefix() + "'");
+    }
+
+    this.config = config;
+    this.client = new S3Client(config);
+    try {
+      this.cache = new S3LocalCache(config.getCacheDirectory(), config.getCacheMaxSize());
+    } catch (IOException e) {
+      throw new GenericException("Could not create S3 cache folder " + config.getCacheDirectory(), e);
+    }
+
+    AtomicInteger threadCounter = new AtomicInteger(0);
+    this.transferExecutor = Executors.newFixedThreadPool(config.getParallelism(), r -> {
+      Thread thread = new Thread(r, "s3-storage-transfer-" + threadCounter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  public S3Config getConfig() {
+    return config;
+  }
+
+  public S3Client getClient() {
+    return client;
+  }
+
+  // keys
+
+  private static String getRelativeKey(StoragePath storagePath) {
+    List<String> partials = new ArrayList<>();
+    for (String pathPartial : storagePath.asList()) {
+      partials.add(FSUtils.encodePathPartial(pathPartial));
+    }
+    return String.join(SEPARATOR, partials);
+  }
+
+  private String getKey(StoragePath storagePath) {
+    return config.getPrefix() + getRelativeKey(storagePath);
+  }
+
+  private String getDirectoryKey(StoragePath storagePath) {
+    return getKey(storagePath) + SEPARATOR;
+  }
+
+  private String getHistoryDataKey(StoragePath storagePath, String version) throws RequestNotValidException {
+    if (version.indexOf(FSUtils.VERSION_SEP) >= 0 || version.contains(SEPARATOR)) {
+      throw new RequestNotValidException("Cannot use '" + FSUtils.VERSION_SEP + "' in version " + version);
+    }
+    return config.getHistoryPrefix() + HISTORY_DATA + getRelativeKey(storagePath) + FSUtils.VERSION_SEP + version;
+  }
+
+  private String getHistoryMetadataKey(StoragePath storagePath, String version) throws RequestNotValidException {
+    return config.getHistoryPrefix() + HISTORY_METADATA
+      + StringUtils.removeStart(getHistoryDataKey(storagePath, version), config.getHistoryPrefix() + HISTORY_DATA)
+      + FSUtils.METADATA_SUFFIX;
+  }
+
+  private StoragePath getStoragePath(String key) throws RequestNotValidException {
+    String relativeKey = StringUtils.removeEnd(StringUtils.removeStart(key, config.getPrefix()), SEPARATOR);
+    List<String> partials = new ArrayList<>();
+    for (String pathPartial : relativeKey.split(SEPARATOR)) {
+      partials.add(FSUtils.decodePathPartial(pathPartial));
+    }
+    return DefaultStoragePath.parse(partials);
+  }
+
+  // object store queries
+
+  private S3ObjectSummary head(String key) throws GenericException {
+    try {
+      return client.headObject(key);
+    } catch (IOException e) {
+      throw new GenericException("Error getting S3 object " + key, e);
+    }
+  }
+
+  private boolean hasPrefix(String prefix) throws GenericException {
+    try {
+      S3ListPage page = client.listObjects(prefix, null, null, 1);
+      return !page.getObjects().isEmpty();
+    } catch (IOException e) {
+      throw new GenericException("Error listing S3 objects under " + prefix, e);
+    }
+  }
+
+  private boolean isBinary(StoragePath storagePath) throws GenericException {
+    return !storagePath.isFromAContainer() && head(getKey(storagePath)) != null;
+  }
+
+  private boolean isDirectory(StoragePath storagePath) throws GenericException {
+    return hasPrefix(getDirectoryKey(storagePath));
+  }
+
+  private void putMarker(String key) throws GenericException {
+    try {
+      client.putObject(key, new byte[0], 0);
+    } catch (IOException e) {
+      throw new GenericException("Error creating S3 object " + key, e);
+    }
+  }
+
+  private Binary toBinary(StoragePath storagePath, String key, long size) {
+    return new DefaultBinary(storagePath, new S3ContentPayload(client, transferExecutor, key, size), size, false,
+      null);
+  }
+
+  private CloseableIterable<Resource> list(StoragePath storagePath, boolean recursive) {
+    final String prefix = getDirectoryKey(storagePath);
+    return new CloseableIterable<Resource>() {
+      @Override
+      public Iterator<Resource> iterator() {
+        return new S3ResourceIterator(prefix, recursive);
+      }
+
+      @Override
+      public void close() {
+        // nothing to do
+      }
+    };
+  }
+
+  private Long count(StoragePath storagePath, boolean recursive) throws GenericException {
+    long count = 0;
+    try {
+      Iterator<Resource> iterator = new S3ResourceIterator(getDirectoryKey(storagePath), recursive);
+      while (iterator.hasNext()) {
+        iterator.next();
+        count++;
+      }
+    } catch (UncheckedIOException e) {
+      throw new GenericException("Error counting resources under " + storagePath, e.getCause());
+    }
+    return count;
+  }
+
+  private List<S3ObjectSummary> listAllObjects(String prefix) throws GenericException {
+    List<S3ObjectSummary> objects = new ArrayList<>();
+    String token = null;
+    try {
+      do {
+        S3ListPage page = client.listObjects(prefix, null, token, LIST_PAGE_SIZE);
+        objects.addAll(page.getObjects());
+        token = page.getNextContinuationToken();
+      } while (token != null);
+    } catch (IOException e) {
+      throw new GenericException("Error listing S3 objects under " + prefix, e);
+    }
+    return objects;
+  }
+
+  private void deleteObjects(List<String> keys) throws GenericException {
+    List<Future<Void>> deletes = new ArrayList<>();
+    for (String key : keys) {
+      deletes.add(transferExecutor.submit(() -> {
+        client.deleteObject(key);
+        return null;
+      }));
+    }
+    waitFor(deletes, "Error deleting S3 objects");
+  }
+
+  private void deleteTree(StoragePath storagePath) throws GenericException {
+    List<String> keys = new ArrayList<>();
+    String key = getKey(storagePath);
+    if (!storagePath.isFromAContainer() && head(key) != null) {
+      keys.add(key);
+    }
+    for (S3ObjectSummary object : listAllObjects(getDirectoryKey(storagePath))) {
+      keys.add(object.getKey());
+    }
+    deleteObjects(keys);
+  }
+
+  private void deleteHistory(StoragePath storagePath) throws GenericException, RequestNotValidException {
+    String relativeKey = getRelativeKey(storagePath);
+    List<String> keys = new ArrayList<>();
+    for (String historyPart : Arrays.asList(HISTORY_DATA, HISTORY_METADATA)) {
+      String base = config.getHistoryPrefix() + historyPart + relativeKey;
+      for (S3ObjectSummary object : listAllObjects(base)) {
+        String rest = object.getKey().substring(base.length());
+        // own versions or anything under the directory, but not siblings
+        // sharing the same name prefix
+        if (rest.startsWith(SEPARATOR) || (rest.indexOf(FSUtils.VERSION_SEP) == 0 && !rest.contains(SEPARATOR))) {
+          keys.add(object.getKey());
+        }
+      }
+    }
+    deleteObjects(keys);
+  }
+
+  // uploads
+
+  private void upload(String key, ContentPayload payload) throws GenericException {
+    try (InputStream inputStream = payload.createInputStream()) {
+      int partSize = (int) Math.min(config.getPartSize(), MAX_PART_SIZE);
+      byte[] buffer = new byte[partSize];
+      int length = readFully(inputStream, buffer);
+      if (length < partSize) {
+        client.putObject(key, new ByteArrayEntity(buffer, 0, length, ContentType.APPLICATION_OCTET_STREAM));
+      } else {
+        multipartUpload(key, inputStream, buffer, length, partSize);
+      }
+    } catch (IOException e) {
+      throw new GenericException("Error uploading S3 object " + key, e);
+    }
+  }
+
+  private void multipartUpload(String key, InputStream inputStream, byte[] firstPart, int firstPartLength,
+    int partSize) throws IOException, GenericException {
+    String uploadId = client.createMultipartUpload(key);
+    List<Future<String>> parts = new ArrayList<>();
+    // bounds both concurrent requests and buffered memory
+    Semaphore inFlight = new Semaphore(config.getParallelism());
+    try {
+      byte[] buffer = firstPart;
+      int length = firstPartLength;
+      int currentPartSize = partSize;
+      while (length > 0) {
+        final byte[] part = buffer;
+        final int partLength = length;
+        final int partNumber = parts.size() + 1;
+        inFlight.acquire();
+        parts.add(transferExecutor.submit(() -> {
+          try {
+            return client.uploadPart(key, uploadId, partNumber, part, partLength);
+          } finally {
+            inFlight.release();
+          }
+        }));
+
+        // S3 allows at most 10000 parts, so grow parts of very large binaries
+        if (partNumber % PARTS_PER_SIZE_STEP == 0) {
+          currentPartSize = (int) Math.min(2L * currentPartSize, MAX_PART_SIZE);
+        }
+        buffer = new byte[currentPartSize];
+        length = readFully(inputStream, buffer);
+      }
+
+      List<String> etags = waitFor(parts, "Error uploading parts of " + key);
+      client.completeMultipartUpload(key, uploadId, etags);
+    } catch (IOException | GenericException | RuntimeException e) {
+      abortQuietly(key, uploadId, parts);
+      throw e;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      abortQuietly(key, uploadId, parts);
+      throw new GenericException("Interrupted while uploading " + key, e);
+    }
+  }
+
+  private void abortQuietly(String key, String uploadId, List<? extends Future<?>> parts) {
+    for (Future<?> part : parts) {
+      part.cancel(true);
+    }
+    try {
+      client.abortMultipartUpload(key, uploadId);
+    } catch (IOException e) {
+      LOGGER.warn("Could not abort multipart upload {} of {}", uploadId, key, e);
+    }
+  }
+
+  private static int readFully(InputStream inputStream, byte[] buffer) throws IOException {
+    int length = 0;
+    int read;
+    while (length < buffer.length && (read = inputStream.read(buffer, length, buffer.length - length)) >= 0) {
+      length += read;
+    }
+    return length;
+  }
+
+  private static <T> List<T> waitFor(List<Future<T>> futures, String message) throws GenericException {
+    List<T> results = new ArrayList<>();
+    try {
+      for (Future<T> future : futures) {
+        results.add(future.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new GenericException(message, e);
+    } catch (ExecutionException e) {
+      futures.forEach(future -> future.cancel(true));
+      throw new GenericException(message, e.getCause());
+    }
+    return results;
+  }
+
+  // server side copies
+
+  private void copyObject(String sourceKey, String targetKey, long size) throws GenericException {
+    try {
+      if (size <= MAX_SINGLE_COPY_SIZE) {
+        client.copyObject(sourceKey, targetKey);
+      } else {
+        multipartCopy(sourceKey, targetKey, size);
+      }
+    } catch (IOException e) {
+      throw new GenericException("Error copying S3 object " + sourceKey + " to " + targetKey, e);
+    }
+  }
+
+  private void multipartCopy(String sourceKey, String targetKey, long size) throws IOException, GenericException {
+    long partSize = Math.max(config.getPartSize(), MAX_SINGLE_COPY_SIZE / 10);
+    String uploadId = client.createMultipartUpload(targetKey);
+    List<Future<String>> parts = new ArrayList<>();
+    try {
+      for (long from = 0; from < size; from += partSize) {
+        final long start = from;
+        final long end = Math.min(size, from + partSize) - 1;
+        final int partNumber = parts.size() + 1;
+        parts.add(transferExecutor
+          .submit(() -> client.uploadPartCopy(sourceKey, targetKey, uploadId, partNumber, start, end)));
+      }
+      client.completeMultipartUpload(targetKey, uploadId, waitFor(parts, "Error copying parts of " + sourceKey));
+    } catch (IOException | GenericException | RuntimeException e) {
+      abortQuietly(targetKey, uploadId, parts);
+      throw e;
+    }
+  }
+
+  private void copyTree(StoragePath fromStoragePath, StoragePath toStoragePath) throws GenericException {
+    String fromKey = getKey(fromStoragePath);
+    String toKey = getKey(toStoragePath);
+    S3ObjectSummary binary = fromStoragePath.isFromAContainer() ? null : head(fromKey);
+    if (binary != null) {
+      copyObject(fromKey, toKey, binary.getSize());
+    } else {
+      putMarker(toKey + SEPARATOR);
+      for (S3ObjectSummary object : listAllObjects(fromKey + SEPARATOR)) {
+        copyObject(object.getKey(), toKey + object.getKey().substring(fromKey.length()), object.getSize());
+      }
+    }
+  }
+
+  private StorageService unwrap(StorageService service) {
+    if (service instanceof StorageServiceWrapper) {
+      return ((StorageServiceWrapper) service).getWrappedStorageService();
+    }
+    return service;
+  }
+
+  // downloads
+
+  private void download(StoragePath storagePath, Path targetPath) throws GenericException, AlreadyExistsException {
+    if (FSUtils.exists(targetPath)) {
+      throw new AlreadyExistsException("Cannot copy because target path already exists: " + targetPath);
+    }
+
+    String key = getKey(storagePath);
+    try {
+      S3ObjectSummary binary = storagePath.isFromAContainer() ? null : client.headObject(key);
+      if (binary != null) {
+        Files.createDirectories(targetPath.getParent());
+        new S3ContentPayload(client, transferExecutor, key, binary.getSize()).writeToPath(targetPath);
+        return;
+      }
+
+      Files.createDirectories(targetPath);
+      List<Future<Void>> downloads = new ArrayList<>();
+      for (S3ObjectSummary object : listAllObjects(key + SEPARATOR)) {
+        List<String> relativePartials = Arrays.asList(object.getKey().substring(key.length() + 1).split(SEPARATOR));
+        Path target = targetPath;
+        for (String partial : relativePartials) {
+          target = target.resolve(partial);
+        }
+        if (object.getKey().endsWith(SEPARATOR)) {
+          Files.createDirectories(target);
+        } else {
+          final Path file = target;
+          // no executor for the payload itself, as it already runs inside one
+          downloads.add(transferExecutor.submit(() -> {
+            Files.createDirectories(file.getParent());
+            new S3ContentPayload(client, null, object.getKey(), object.getSize()).writeToPath(file);
+            return null;
+          }));
+        }
+      }
+      waitFor(downloads, "Error downloading " + key);
+    } catch (IOException e) {
+      throw new GenericException("Error downloading " + key + " into " + targetPath, e);
+    }
+  }
+
+  // StorageService
+
+  @Override
+  public boolean exists(StoragePath storagePath) {
+    try {
+      return isBinary(storagePath) || isDirectory(storagePath);
+    } catch (GenericException e) {
+      LOGGER.warn("Could not check if {} exists", storagePath, e);
+      return false;
+    }
+  }
+
+  @Override
+  public CloseableIterable<Container> listContainers() throws GenericException {
+    List<Container> containers = new ArrayList<>();
+    String token = null;
+    try {
+      do {
+        S3ListPage page = client.listObjects(config.getPrefix(), SEPARATOR, token, LIST_PAGE_SIZE);
+        for (String prefix : page.getCommonPrefixes()) {
+          containers.add(new DefaultContainer(getStoragePath(prefix)));
+        }
+        token = page.getNextContinuationToken();
+      } while (token != null);
+    } catch (IOException | RequestNotValidException e) {
+      throw new GenericException("Could not list containers", e);
+    }
+    return CloseableIterables.fromList(containers);
+  }
+
+  @Override
+  public Container createContainer(StoragePath storagePath) throws GenericException, AlreadyExistsException {
+    if (isDirectory(storagePath)) {
+      throw new AlreadyExistsException("Container already exists: " + storagePath);
+    }
+    putMarker(getDirectoryKey(storagePath));
+    return new DefaultContainer(storagePath);
+  }
+
+  @Override
+  public Container getContainer(StoragePath storagePath)
+    throws RequestNotValidException, NotFoundException, GenericException {
+    if (!storagePath.isFromAContainer()) {
+      throw new RequestNotValidException("Storage path is not from a container: " + storagePath);
+    }
+    if (!isDirectory(storagePath)) {
+      throw new NotFoundException("Container not found: " + storagePath);
+    }
+    return new DefaultContainer(storagePath);
+  }
+
+  @Override
+  public void deleteContainer(StoragePath storagePath) throws NotFoundException, GenericException {
+    if (!isDirectory(storagePath)) {
+      throw new NotFoundException("Container not found: " + storagePath);
+    }
+    deleteTree(storagePath);
+    try {
+      deleteHistory(storagePath);
+    } catch (RequestNotValidException e) {
+      throw new GenericException("Could not delete history of " + storagePath, e);
+    }
+  }
+
+  @Override
+  public CloseableIterable<Resource> listResourcesUnderContainer(StoragePath storagePath, boolean recursive)
+    throws NotFoundException, GenericException {
+    if (!isDirectory(storagePath)) {
+      throw new NotFoundException("Container not found: " + storagePath);
+    }
+    return list(storagePath, recursive);
+  }
+
+  @Override
+  public Long countResourcesUnderContainer(StoragePath storagePath, boolean recursive)
+    throws NotFoundException, GenericException {
+    if (!isDirectory(storagePath)) {
+      throw new NotFoundException("Container not found: " + storagePath);
+    }
+    return count(storagePath, recursive);
+  }
+
+  @Override
+  public Directory createDirectory(StoragePath storagePath) throws AlreadyExistsException, GenericException {
+    if (isBinary(storagePath) || isDirectory(storagePath)) {
+      throw new AlreadyExistsException("Directory already exists: " + storagePath);
+    }
+    putMarker(getDirectoryKey(storagePath));
+    return new DefaultDirectory(storagePath);
+  }
+
+  @Override
+  public Directory createRandomDirectory(StoragePath parentStoragePath)
+    throws RequestNotValidException, GenericException, NotFoundException, AlreadyExistsException {
+    return createDirectory(DefaultStoragePath.parse(parentStoragePath, IdUtils.createUUID()));
+  }
+
+  @Override
+  public Directory getDirectory(StoragePath storagePath)
+    throws RequestNotValidException, NotFoundException, GenericException {
+    if (storagePath.isFromAContainer()) {
+      throw new RequestNotValidException("Storage path is a container: " + storagePath);
+    }
+    if (isBinary(storagePath)) {
+      throw new RequestNotValidException("Storage path is a binary: " + storagePath);
+    }
+    if (!isDirectory(storagePath)) {
+      throw new NotFoundException("Directory not found: " + storagePath);
+    }
+    return new DefaultDirectory(storagePath);
+  }
+
+  @Override
+  public boolean hasDirectory(StoragePath storagePath) {
+    try {
+      return !storagePath.isFromAContainer() && isDirectory(storagePath);
+    } catch (GenericException e) {
+      LOGGER.warn("Could not check if {} is a directory", storagePath, e);
+      return false;
+    }
+  }
+
+  @Override
+  public CloseableIterable<Resource> listResourcesUnderDirectory(StoragePath storagePath, boolean recursive)
+    throws NotFoundException, GenericException {
+    if (!isDirectory(storagePath)) {
+      throw new NotFoundException("Directory not found: " + storagePath);
+    }
+    return list(storagePath, recursive);
+  }
+
+  @Override
+  public CloseableIterable<Resource> listResourcesUnderFile(StoragePath storagePath, boolean recursive) {
+    // shallow files are not supported
+    return CloseableIterables.empty();
+  }
+
+  @Override
+  public Long countResourcesUnderDirectory(StoragePath storagePath, boolean recursive)
+    throws NotFoundException, GenericException {
+    if (!isDirectory(storagePath)) {
+      throw new NotFoundException("Directory not found: " + storagePath);
+    }
+    return count(storagePath, recursive);
+  }
+
+  @Override
+  public Binary createBinary(StoragePath storagePath, ContentPayload payload, boolean asReference)
+    throws GenericException, AlreadyExistsException, RequestNotValidException {
+    if (asReference) {
+      throw new GenericException("Binaries as reference are not supported by the S3 storage");
+    }
+    if (storagePath.isFromAContainer()) {
+      throw new RequestNotValidException("Cannot create a binary as a container: " + storagePath);
+    }
+
+    String key = getKey(storagePath);
+    if (head(key) != null || isDirectory(storagePath)) {
+      throw new AlreadyExistsException("Binary already exists: " + storagePath);
+    }
+    upload(key, payload);
+    return toBinary(storagePath, key, head(key).getSize());
+  }
+
+  @Override
+  public Binary createRandomBinary(StoragePath parentStoragePath, ContentPayload payload, boolean asReference)
+    throws GenericException, RequestNotValidException {
+    try {
+      return createBinary(DefaultStoragePath.parse(parentStoragePath, IdUtils.createUUID()), payload, asReference);
+    } catch (AlreadyExistsException e) {
+      throw new GenericException("Random binary id collided", e);
+    }
+  }
+
+  @Override
+  public Binary updateBinaryContent(StoragePath storagePath, ContentPayload payload, boolean asReference,
+    boolean createIfNotExists) throws GenericException, NotFoundException, RequestNotValidException {
+    if (asReference) {
+      throw new GenericException("Binaries as reference are not supported by the S3 storage");
+    }
+
+    String key = getKey(storagePath);
+    if (!createIfNotExists && (storagePath.isFromAContainer() || head(key) == null)) {
+      throw new NotFoundException("Binary does not exist: " + storagePath);
+    }
+    upload(key, payload);
+    return toBinary(storagePath, key, head(key).getSize());
+  }
+
+  @Override
+  public Binary getBinary(StoragePath storagePath)
+    throws RequestNotValidException, NotFoundException, GenericException {
+    if (storagePath.isFromAContainer()) {
+      throw new RequestNotValidException("Storage path is a container: " + storagePath);
+    }
+
+    String key = getKey(storagePath);
+    S3ObjectSummary object = head(key);
+    if (object == null) {
+      if (isDirectory(storagePath)) {
+        throw new RequestNotValidException("Storage path is a directory: " + storagePath);
+      }
+      throw new NotFoundException("Binary not found: " + storagePath);
+    }
+    return toBinary(storagePath, key, object.getSize());
+  }
+
+  @Override
+  public boolean hasBinary(StoragePath storagePath) {
+    try {
+      return isBinary(storagePath);
+    } catch (GenericException e) {
+      LOGGER.warn("Could not check if {} is a binary", storagePath, e);
+      return false;
+    }
+  }
+
+  @Override
+  public void deleteResource(StoragePath storagePath) throws NotFoundException, GenericException {
+    if (!isBinary(storagePath) && !isDirectory(storagePath)) {
+      throw new NotFoundException("Entity was not found: " + storagePath);
+    }
+    deleteTree(storagePath);
+    try {
+      deleteHistory(storagePath);
+    } catch (RequestNotValidException e) {
+      throw new GenericException("Could not delete history of " + storagePath, e);
+    }
+  }
+
+  @Override
+  public Class<? extends Entity> getEntity(StoragePath storagePath) throws NotFoundException, GenericException {
+    if (isBinary(storagePath)) {
+      return DefaultBinary.class;
+    } else if (isDirectory(storagePath)) {
+      return storagePath.isFromAContainer() ? DefaultContainer.class : DefaultDirectory.class;
+    }
+    throw new NotFoundException("Entity was not found: " + storagePath);
+  }
+
+  @Override
+  public void copy(StorageService fromService, StoragePath fromStoragePath, StoragePath toStoragePath)
+    throws AlreadyExistsException, GenericException, RequestNotValidException, NotFoundException,
+    AuthorizationDeniedException {
+    if (unwrap(fromService) == this) {
+      if (!exists(fromStoragePath)) {
+        throw new NotFoundException("Entity was not found: " + fromStoragePath);
+      }
+      if (exists(toStoragePath)) {
+        throw new AlreadyExistsException("Cannot copy because target already exists: " + toStoragePath);
+      }
+      copyTree(fromStoragePath, toStoragePath);
+    } else {
+      Class<? extends Entity> rootEntity = fromService.getEntity(fromStoragePath);
+      StorageServiceUtils.copyBetweenStorageServices(fromService, fromStoragePath, this, toStoragePath, rootEntity);
+    }
+  }
+
+  @Override
+  public void copy(StorageService fromService, StoragePath fromStoragePath, Path toPath, String resource)
+    throws AlreadyExistsException, GenericException {
+    StoragePath sourceStoragePath = fromStoragePath;
+    if (StringUtils.isNotBlank(resource)) {
+      try {
+        sourceStoragePath = DefaultStoragePath.parse(fromStoragePath, resource);
+      } catch (RequestNotValidException e) {
+        throw new GenericException("Invalid resource to copy: " + resource, e);
+      }
+    }
+
+    if (exists(sourceStoragePath)) {
+      download(sourceStoragePath, toPath);
+    }
+  }
+
+  @Override
+  public void move(StorageService fromService, StoragePath fromStoragePath, StoragePath toStoragePath)
+    throws AlreadyExistsException, GenericException, RequestNotValidException, NotFoundException,
+    AuthorizationDeniedException {
+    if (unwrap(fromService) == this) {
+      // object stores have no rename, so copy server side and delete
+      copy(this, fromStoragePath, toStoragePath);
+      deleteTree(fromStoragePath);
+    } else {
+      Class<? extends Entity> rootEntity = fromService.getEntity(fromStoragePath);
+      StorageServiceUtils.moveBetweenStorageServices(fromService, fromStoragePath, this, toStoragePath, rootEntity);
+    }
+  }
+
+  @Override
+  public DirectResourceAccess getDirectAccess(final StoragePath storagePath) {
+    return new DirectResourceAccess() {
+      private Path temporaryDirectory = null;
+      private Path cachedFile = null;
+
+      @Override
+      public Path getPath() throws GenericException, NotFoundException {
+        if (cachedFile != null) {
+          return cachedFile;
+        }
+        String key = getKey(storagePath);
+        S3ObjectSummary object = storagePath.isFromAContainer() ? null : head(key);
+        try {
+          if (object != null) {
+            // pinned in the cache until closed
+            cachedFile = cache.get(key, object.getETag(), storagePath.getName(), object.getSize(),
+              new S3ContentPayload(client, transferExecutor, key, object.getSize()));
+            return cachedFile;
+          } else if (isDirectory(storagePath)) {
+            if (temporaryDirectory == null) {
+              temporaryDirectory = cache.createTemporaryDirectory();
+              try {
+                download(storagePath, temporaryDirectory.resolve(storagePath.getName()));
+              } catch (AlreadyExistsException e) {
+                throw new GenericException(e);
+              }
+            }
+            return temporaryDirectory.resolve(storagePath.getName());
+          }
+        } catch (IOException e) {
+          throw new GenericException("Could not get local access to " + storagePath, e);
+        }
+        throw new NotFoundException("Entity was not found: " + storagePath);
+      }
+
+      @Override
+      public void close() {
+        if (cachedFile != null) {
+          cache.release(cachedFile);
+          cachedFile = null;
+        }
+        if (temporaryDirectory != null) {
+          FSUtils.deletePathQuietly(temporaryDirectory);
+          temporaryDirectory = null;
+        }
+      }
+    };
+  }
+
+  @Override
+  public CloseableIterable<BinaryVersion> listBinaryVersions(StoragePath storagePath) throws GenericException {
+    String base = config.getHistoryPrefix() + HISTORY_DATA + getRelativeKey(storagePath) + FSUtils.VERSION_SEP;
+    List<BinaryVersion> versions = new ArrayList<>();
+    for (S3ObjectSummary object : listAllObjects(base)) {
+      String version = object.getKey().substring(base.length());
+      if (!version.isEmpty() && !version.contains(SEPARATOR) && version.indexOf(FSUtils.VERSION_SEP) < 0) {
+        try {
+          versions.add(getBinaryVersion(storagePath, version));
+        } catch (RequestNotValidException | NotFoundException e) {
+          LOGGER.warn("Could not get version {} of {}", version, storagePath, e);
+        }
+      }
+    }
+    return CloseableIterables.fromList(versions);
+  }
+
+  @Override
+  public BinaryVersion getBinaryVersion(StoragePath storagePath, String version)
+    throws RequestNotValidException, NotFoundException, GenericException {
+    String dataKey = getHistoryDataKey(storagePath, version);
+    S3ObjectSummary object = head(dataKey);
+    if (object == null) {
+      throw new NotFoundException("Cannot find version " + version + " of " + storagePath);
+    }
+
+    Binary binary = toBinary(storagePath, dataKey, object.getSize());
+    DefaultBinaryVersion binaryVersion;
+    try (InputStream metadata = client.getObject(getHistoryMetadataKey(storagePath, version), null, null)) {
+      binaryVersion = JsonUtils.getObjectFromJson(metadata, DefaultBinaryVersion.class);
+      binaryVersion.setBinary(binary);
+    } catch (FileNotFoundException e) {
+      binaryVersion = new DefaultBinaryVersion(binary, version, object.getLastModified(), Collections.emptyMap());
+    } catch (IOException e) {
+      throw new GenericException("Could not read metadata of version " + version + " of " + storagePath, e);
+    }
+    return binaryVersion;
+  }
+
+  @Override
+  public BinaryVersion createBinaryVersion(StoragePath storagePath, Map<String, String> properties)
+    throws RequestNotValidException, NotFoundException, GenericException {
+    String key = getKey(storagePath);
+    S3ObjectSummary object = storagePath.isFromAContainer() ? null : head(key);
+    if (object == null) {
+      if (isDirectory(storagePath)) {
+        throw new RequestNotValidException("Not a binary: " + storagePath);
+      }
+      throw new NotFoundException("Binary does not exist: " + storagePath);
+    }
+
+    String id = IdUtils.createUUID();
+    String dataKey = getHistoryDataKey(storagePath, id);
+    if (head(dataKey) != null) {
+      throw new GenericException("Binary version id collided: " + dataKey);
+    }
+    copyObject(key, dataKey, object.getSize());
+
+    DefaultBinaryVersion binaryVersion = new DefaultBinaryVersion();
+    binaryVersion.setId(id);
+    binaryVersion.setProperties(properties);
+    binaryVersion.setCreatedDate(new Date());
+    byte[] metadata = JsonUtils.getJsonFromObject(binaryVersion).getBytes(StandardCharsets.UTF_8);
+    try {
+      client.putObject(getHistoryMetadataKey(storagePath, id), metadata, metadata.length);
+    } catch (IOException e) {
+      throw new GenericException("Could not create metadata of version " + id + " of " + storagePath, e);
+    }
+
+    binaryVersion.setBinary(toBinary(storagePath, dataKey, object.getSize()));
+    return binaryVersion;
+  }
+
+  @Override
+  public void revertBinaryVersion(StoragePath storagePath, String version)
+    throws NotFoundException, RequestNotValidException, GenericException {
+    String key = getKey(storagePath);
+    if (storagePath.isFromAContainer() || head(key) == null) {
+      throw new NotFoundException("Binary does not exist: " + storagePath);
+    }
+
+    String dataKey = getHistoryDataKey(storagePath, version);
+    S3ObjectSummary versionObject = head(dataKey);
+    if (versionObject == null) {
+      throw new NotFoundException("Binary version does not exist: " + dataKey);
+    }
+    copyObject(dataKey, key, versionObject.getSize());
+  }
+
+  @Override
+  public void deleteBinaryVersion(StoragePath storagePath, String version)
+    throws NotFoundException, GenericException, RequestNotValidException {
+    String dataKey = getHistoryDataKey(storagePath, version);
+    if (head(dataKey) == null) {
+      throw new NotFoundException("Binary version does not exist: " + dataKey);
+    }
+    deleteObjects(Arrays.asList(dataKey, getHistoryMetadataKey(storagePath, version)));
+  }
+
+  @Override
+  public String getStoragePathAsString(StoragePath storagePath, boolean skipStoragePathContainer,
+    StoragePath anotherStoragePath, boolean skipAnotherStoragePathContainer) {
+    return FSUtils.getStoragePathAsString(storagePath, skipStoragePathContainer, anotherStoragePath,
+      skipAnotherStoragePathContainer);
+  }
+
+  @Override
+  public String getStoragePathAsString(StoragePath storagePath, boolean skipContainer) {
+    return FSUtils.getStoragePathAsString(storagePath, skipContainer);
+  }
+
+  @Override
+  public List<StoragePath> getShallowFiles(StoragePath storagePath) {
+    // shallow files are not supported
+    return Collections.emptyList();
+  }
+
+  /**
+   * Lazily iterates over the resources under a key prefix, fetching one page of
+   * the listing at a time. Non-recursive listings rely on the delimiter to get
+   * sub-directories, while recursive ones derive the directories from the keys
+   * as not every directory has a marker object.
+   */
+  private class S3ResourceIterator implements Iterator<Resource> {
+    private final String prefix;
+    private final boolean recursive;
+    private final Deque<Resource> buffer = new ArrayDeque<>();
+    private final Set<String> seenDirectories = new HashSet<>();
+    private String continuationToken = null;
+    private boolean lastPage = false;
+
+    S3ResourceIterator(String prefix, boolean recursive) {
+      this.prefix = prefix;
+      this.recursive = recursive;
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (buffer.isEmpty() && !lastPage) {
+        fetchPage();
+      }
+      return !buffer.isEmpty();
+    }
+
+    @Override
+    public Resource next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return buffer.poll();
+    }
+
+    private void fetchPage() {
+      try {
+        S3ListPage page = client.listObjects(prefix, recursive ? null : SEPARATOR, continuationToken,
+          LIST_PAGE_SIZE);
+        for (S3ObjectSummary object : page.getObjects()) {
+          String key = object.getKey();
+          if (!key.equals(prefix)) {
+            if (recursive) {
+              addDirectories(key);
+            }
+            if (!key.endsWith(SEPARATOR)) {
+              buffer.add(toBinary(getStoragePath(key), key, object.getSize()));
+            }
+          }
+        }
+        for (String commonPrefix : page.getCommonPrefixes()) {
+          buffer.add(new DefaultDirectory(getStoragePath(commonPrefix)));
+        }
+        continuationToken = page.getNextContinuationToken();
+        lastPage = continuationToken == null;
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      } catch (RequestNotValidException e) {
+        throw new UncheckedIOException(new IOException(e));
+      }
+    }
+
+    private void addDirectories(String key) throws RequestNotValidException {
+      int index = key.indexOf(SEPARATOR, prefix.length());
+      while (index >= 0) {
+        String directoryKey = key.substring(0, index + 1);
+        if (seenDirectories.add(directoryKey)) {
+          buffer.add(new DefaultDirectory(getStoragePath(directoryKey)));
+        }
+        index = key.indexOf(SEPARATOR, index + 1);
+      }
+    }
+  }
+}
@@ -499,7 +499,8 @@ public class ScatteredFileStorageService extends FileStorageService  {
   public void copy(StorageService fromService, StoragePath fromStoragePath, StoragePath toStoragePath)
           throws AlreadyExistsException, GenericException, RequestNotValidException, NotFoundException,
           AuthorizationDeniedException {
-    if (fromService instanceof FileStorageService) {
+    if (fromService instanceof FileStorageService
+            && ((FileStorageService) fromService).isResolvable(fromStoragePath)) {
       Path sourcePath = ((FileStorageService) fromService).resolve(fromStoragePath);
       Path targetPath = ScatteredFSUtils.getEntityPath(basePath, toStoragePath);
       FSUtils.copy(sourcePath, targetPath, false);
@@ -0,0 +1,40 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.tieredfs;
+
+import java.io.Serializable;
+
+/**
+ * Snapshot of the amount of binaries and bytes held by a storage tier.
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+public class TierOccupancy implements Serializable {
+  private static final long serialVersionUID = -4516328571630941183L;
+
+  private final long binaries;
+  private final long sizeInBytes;
+
+  public TierOccupancy(long binaries, long sizeInBytes) {
+    this.binaries = binaries;
+    this.sizeInBytes = sizeInBytes;
+  }
+
+  public long getBinaries() {
+    return binaries;
+  }
+
+  public long getSizeInBytes() {
+    return sizeInBytes;
+  }
+
+  @Override
+  public String toString() {
+    return "TierOccupancy [binaries=" + binaries + ", sizeInBytes=" + sizeInBytes + "]";
+  }
+}
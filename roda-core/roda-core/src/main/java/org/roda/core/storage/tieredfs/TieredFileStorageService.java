@@ -0,0 +1,855 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.core.storage.tieredfs;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.lang3.StringUtils;
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.common.iterables.CloseableIterable;
+import org.roda.core.common.iterables.CloseableIterables;
+import org.roda.core.data.exceptions.AlreadyExistsException;
+import org.roda.core.data.exceptions.AuthorizationDeniedException;
+import org.roda.core.data.exceptions.GenericException;
+import org.roda.core.data.exceptions.NotFoundException;
+import org.roda.core.data.exceptions.RequestNotValidException;
+import org.roda.core.data.v2.ip.AIP;
+import org.roda.core.data.v2.ip.Representation;
+import org.roda.core.data.v2.ip.StoragePath;
+import org.roda.core.model.utils.ModelUtils;
+import org.roda.core.model.utils.ResourceParseUtils;
+import org.roda.core.storage.Binary;
+import org.roda.core.storage.BinaryVersion;
+import org.roda.core.storage.Container;
+import org.roda.core.storage.ContentPayload;
+import org.roda.core.storage.DefaultStoragePath;
+import org.roda.core.storage.DirectResourceAccess;
+import org.roda.core.storage.Directory;
+import org.roda.core.storage.Entity;
+import org.roda.core.storage.Resource;
+import org.roda.core.storage.StorageService;
+import org.roda.core.storage.StorageServiceUtils;
+import org.roda.core.storage.StorageServiceWrapper;
+import org.roda.core.storage.fs.FSUtils;
+import org.roda.core.storage.fs.FileStorageService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.Striped;
+
+/**
+ * Storage service that spreads content over a hot (fast) and a cold (slow,
+ * cheap) {@link FileStorageService}.
+ *
+ * <p>
+ * All writes land on the hot tier. Metadata, <code>aip.json</code> and the data
+ * of non-original (access) representations are never moved, while the data of
+ * original representations (preservation masters) that was not modified for a
+ * configurable amount of time is migrated to the cold tier by
+ * {@link #migrateColdBinaries()}. Reads are served from whichever tier holds
+ * the binary and, optionally, binaries that keep being read are promoted back
+ * to the hot tier. A binary is not moved between the tiers while it is being
+ * written, deleted or looked up.
+ * </p>
+ *
+ * <p>
+ * Both tiers keep the same folder structure, so directories may exist on both
+ * of them and listings are the union of the two.
+ * </p>
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+public class TieredFileStorageService implements StorageService {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(TieredFileStorageService.class);
+
+  public static final String COLD_SUFFIX = "-cold";
+
+  private static final String CONFIG_PREFIX = "core.storage.tiered";
+
+  private final FileStorageService hotStorage;
+  private final FileStorageService coldStorage;
+  private final Duration coldMinAge;
+  private final boolean promoteOnRead;
+  private final int promoteAfterReads;
+
+  // moves between the tiers and the writes and reads of the same binary, by its
+  // path on the hot tier
+  private final Striped<Lock> binaryLocks = Striped.lazyWeakLock(1024);
+
+  private final Cache<String, AtomicInteger> coldReads = CacheBuilder.newBuilder().maximumSize(100000)
+    .expireAfterAccess(1, TimeUnit.HOURS).build();
+
+  private final AtomicLong migrated = new AtomicLong(0);
+  private final AtomicLong promoted = new AtomicLong(0);
+  private volatile TierOccupancy hotOccupancy = new TierOccupancy(0, 0);
+  private volatile TierOccupancy coldOccupancy = new TierOccupancy(0, 0);
+
+  private Counter migratedCounter;
+  private Counter promotedCounter;
+  private ScheduledExecutorService migrationScheduler;
+
+  /**
+   * Constructor used when instantiated through
+   * <code>core.storage.new_service</code>. Cold tier location and policy are
+   * read from the <code>core.storage.tiered.*</code> properties.
+   */
+  public TieredFileStorageService(Path basePath, String trashDirName) throws GenericException {
+    this(new FileStorageService(basePath, trashDirName),
+      new FileStorageService(getColdTierPathFromConfiguration(basePath), trashDirName),
+      Duration.ofDays(getConfiguration().getLong(CONFIG_PREFIX + ".cold.min_age_days", 30)),
+      getConfiguration().getBoolean(CONFIG_PREFIX + ".promote_on_read", false),
+      getConfiguration().getInt(CONFIG_PREFIX + ".promote_after_reads", 3), RodaCoreFactory.getMetrics());
+
+    long interval = getConfiguration().getLong(CONFIG_PREFIX + ".migration_interval_minutes", 0);
+    if (interval > 0) {
+      scheduleMigration(interval, TimeUnit.MINUTES);
+    }
+  }
+
+  public TieredFileStorageService(FileStorageService hotStorage, FileStorageService coldStorage, Duration coldMinAge,
+    boolean promoteOnRead, int promoteAfterReads, MetricRegistry metricRegistry) {
+    this.hotStorage = hotStorage;
+    this.coldStorage = coldStorage;
+    this.coldMinAge = coldMinAge;
+    this.promoteOnRead = promoteOnRead;
+    this.promoteAfterReads = Math.max(1, promoteAfterReads);
+
+    if (metricRegistry != null) {
+      registerMetrics(metricRegistry);
+    }
+  }
+
+  private static Configuration getConfiguration() {
+    return RodaCoreFactory.getRodaConfiguration();
+  }
+
+  private static Path getColdTierPathFromConfiguration(Path basePath) {
+    String coldPath = getConfiguration().getString(CONFIG_PREFIX + ".cold.path");
+    if (StringUtils.isNotBlank(coldPath)) {
+      return Paths.get(coldPath);
+    } else {
+      return basePath.resolveSibling(basePath.getFileName() + COLD_SUFFIX);
+    }
+  }
+
+  private void registerMetrics(MetricRegistry metricRegistry) {
+    String name = TieredFileStorageService.class.getSimpleName();
+    migratedCounter = metricRegistry.counter(MetricRegistry.name(name, "migratedToColdTier"));
+    promotedCounter = metricRegistry.counter(MetricRegistry.name(name, "promotedToHotTier"));
+    registerGauge(metricRegistry, MetricRegistry.name(name, "hotTierBinaries"), () -> hotOccupancy.getBinaries());
+    registerGauge(metricRegistry, MetricRegistry.name(name, "hotTierBytes"), () -> hotOccupancy.getSizeInBytes());
+    registerGauge(metricRegistry, MetricRegistry.name(name, "coldTierBinaries"), () -> coldOccupancy.getBinaries());
+    registerGauge(metricRegistry, MetricRegistry.name(name, "coldTierBytes"), () -> coldOccupancy.getSizeInBytes());
+  }
+
+  private static void registerGauge(MetricRegistry metricRegistry, String name, Gauge<Long> gauge) {
+    // replace gauges of a previous instance, e.g. after a re-instantiation
+    metricRegistry.remove(name);
+    metricRegistry.register(name, gauge);
+  }
+
+  /**
+   * Periodically run {@link #migrateColdBinaries()} in a background thread.
+   */
+  public synchronized void scheduleMigration(long interval, TimeUnit unit) {
+    if (migrationScheduler == null) {
+      migrationScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "tiered-storage-migration");
+        thread.setDaemon(true);
+        return thread;
+      });
+      migrationScheduler.scheduleWithFixedDelay(() -> {
+        try {
+          migrateColdBinaries();
+        } catch (RuntimeException e) {
+          LOGGER.error("Error migrating binaries to the cold tier", e);
+        }
+      }, interval, interval, unit);
+    }
+  }
+
+  public FileStorageService getHotStorage() {
+    return hotStorage;
+  }
+
+  public FileStorageService getColdStorage() {
+    return coldStorage;
+  }
+
+  public TierOccupancy getHotTierOccupancy() {
+    return hotOccupancy;
+  }
+
+  public TierOccupancy getColdTierOccupancy() {
+    return coldOccupancy;
+  }
+
+  public long getMigratedCount() {
+    return migrated.get();
+  }
+
+  public long getPromotedCount() {
+    return promoted.get();
+  }
+
+  /**
+   * Move the data of original representations that was not modified during the
+   * configured minimum age to the cold tier and refresh the tier occupancy
+   * metrics.
+   *
+   * @return the number of binaries that were moved to the cold tier
+   */
+  public long migrateColdBinaries() {
+    long count = 0;
+    FileTime threshold = FileTime.fromMillis(System.currentTimeMillis() - coldMinAge.toMillis());
+    Path aipContainerPath = hotStorage.resolve(getAIPContainerPath());
+
+    if (FSUtils.exists(aipContainerPath)) {
+      try (DirectoryStream<Path> aips = Files.newDirectoryStream(aipContainerPath)) {
+        for (Path aipPath : aips) {
+          count += migrateColdBinaries(aipPath.getFileName().toString(), threshold);
+        }
+      } catch (IOException e) {
+        LOGGER.error("Error listing AIPs while migrating binaries to the cold tier", e);
+      }
+    }
+
+    hotOccupancy = computeOccupancy(hotStorage);
+    coldOccupancy = computeOccupancy(coldStorage);
+    LOGGER.info("Migrated {} binaries to the cold tier (hot: {}, cold: {})", count, hotOccupancy, coldOccupancy);
+    return count;
+  }
+
+  private long migrateColdBinaries(String aipId, FileTime threshold) {
+    long count = 0;
+    try {
+      AIP aip = ResourceParseUtils.getAIPMetadata(hotStorage, aipId);
+      for (Representation representation : aip.getRepresentations()) {
+        if (representation.isOriginal()) {
+          StoragePath dataPath = ModelUtils.getRepresentationDataStoragePath(aipId, representation.getId());
+          count += migrateColdBinaries(hotStorage.resolve(dataPath), coldStorage.resolve(dataPath), threshold);
+        }
+      }
+    } catch (RequestNotValidException | GenericException | NotFoundException | AuthorizationDeniedException e) {
+      LOGGER.warn("Could not migrate binaries of AIP {} to the cold tier", aipId, e);
+    }
+    return count;
+  }
+
+  private long migrateColdBinaries(Path hotDataPath, Path coldDataPath, FileTime threshold) {
+    if (!FSUtils.isDirectory(hotDataPath)) {
+      return 0;
+    }
+
+    List<Path> candidates = new ArrayList<>();
+    try {
+      Files.walkFileTree(hotDataPath, new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+          if (attrs.isRegularFile() && attrs.lastModifiedTime().compareTo(threshold) < 0
+            && !FSUtils.isManifestOfExternalFiles(file)) {
+            candidates.add(file);
+          }
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    } catch (IOException e) {
+      LOGGER.warn("Could not list binaries under {}", hotDataPath, e);
+      return 0;
+    }
+
+    long count = 0;
+    for (Path file : candidates) {
+      Path target = coldDataPath.resolve(hotDataPath.relativize(file));
+      Lock lock = lockBinary(file);
+      try {
+        // the binary may have been rewritten or deleted since it was listed
+        if (isOlderThan(file, threshold)) {
+          FSUtils.move(file, target, false);
+          count++;
+          migrated.incrementAndGet();
+          if (migratedCounter != null) {
+            migratedCounter.inc();
+          }
+        }
+      } catch (AlreadyExistsException | GenericException | NotFoundException e) {
+        LOGGER.warn("Could not move {} to the cold tier", file, e);
+      } finally {
+        lock.unlock();
+      }
+    }
+    return count;
+  }
+
+  private static boolean isOlderThan(Path file, FileTime threshold) {
+    try {
+      return Files.getLastModifiedTime(file).compareTo(threshold) < 0;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  private Lock lockBinary(StoragePath storagePath) {
+    return lockBinary(hotStorage.resolve(storagePath));
+  }
+
+  private Lock lockBinary(Path hotPath) {
+    Lock lock = binaryLocks.get(hotPath);
+    lock.lock();
+    return lock;
+  }
+
+  private static TierOccupancy computeOccupancy(FileStorageService tier) {
+    final long[] occupancy = new long[2];
+    try {
+      Path root = tier.resolve(getAIPContainerPath()).getParent();
+      Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+          if (attrs.isRegularFile()) {
+            occupancy[0]++;
+            occupancy[1] += attrs.size();
+          }
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException exc) {
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    } catch (IOException e) {
+      LOGGER.warn("Could not compute tier occupancy", e);
+    }
+    return new TierOccupancy(occupancy[0], occupancy[1]);
+  }
+
+  private static StoragePath getAIPContainerPath() {
+    try {
+      return ModelUtils.getAIPContainerPath();
+    } catch (RequestNotValidException e) {
+      // AIP container path is a constant, so this should never happen
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private boolean isOnColdTierOnly(StoragePath storagePath) {
+    return !hotStorage.exists(storagePath) && coldStorage.exists(storagePath);
+  }
+
+  private FileStorageService getTier(StoragePath storagePath) {
+    return isOnColdTierOnly(storagePath) ? coldStorage : hotStorage;
+  }
+
+  private boolean promote(StoragePath storagePath) {
+    Path coldPath = coldStorage.resolve(storagePath);
+    Path hotPath = hotStorage.resolve(storagePath);
+    Lock lock = lockBinary(hotPath);
+    try {
+      if (!isOnColdTierOnly(storagePath)) {
+        // promoted, rewritten or deleted meanwhile
+        return hotStorage.exists(storagePath);
+      }
+      FSUtils.move(coldPath, hotPath, false);
+      // restart the ageing so that it is not migrated back on the next run
+      Files.setLastModifiedTime(hotPath, FileTime.fromMillis(System.currentTimeMillis()));
+      promoted.incrementAndGet();
+      if (promotedCounter != null) {
+        promotedCounter.inc();
+      }
+      return true;
+    } catch (AlreadyExistsException | GenericException | NotFoundException | IOException e) {
+      LOGGER.warn("Could not promote {} to the hot tier", storagePath, e);
+      return false;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void promoteIfOnColdTier(StoragePath storagePath) {
+    if (isOnColdTierOnly(storagePath)) {
+      promote(storagePath);
+    }
+  }
+
+  private boolean shouldPromote(StoragePath storagePath) {
+    if (!promoteOnRead) {
+      return false;
+    }
+
+    String key = FSUtils.getStoragePathAsString(storagePath, false);
+    AtomicInteger reads = coldReads.asMap().computeIfAbsent(key, k -> new AtomicInteger(0));
+    if (reads.incrementAndGet() >= promoteAfterReads) {
+      coldReads.invalidate(key);
+      return true;
+    }
+    return false;
+  }
+
+  private StorageService unwrap(StorageService service) {
+    if (service instanceof StorageServiceWrapper) {
+      return ((StorageServiceWrapper) service).getWrappedStorageService();
+    }
+    return service;
+  }
+
+  private CloseableIterable<Resource> union(CloseableIterable<Resource> hotResources, StoragePath storagePath,
+    boolean recursive, boolean isContainer)
+    throws NotFoundException, GenericException, AuthorizationDeniedException, RequestNotValidException {
+    if (!coldStorage.exists(storagePath)) {
+      return hotResources;
+    }
+
+    CloseableIterable<Resource> coldResources = isContainer
+      ? coldStorage.listResourcesUnderContainer(storagePath, recursive)
+      : coldStorage.listResourcesUnderDirectory(storagePath, recursive);
+    return CloseableIterables.concat(hotResources, CloseableIterables.filter(coldResources,
+      resource -> resource != null && !hotStorage.exists(resource.getStoragePath())));
+  }
+
+  private Long countUnion(Long hotCount, StoragePath storagePath, boolean recursive, boolean isContainer)
+    throws NotFoundException, GenericException, AuthorizationDeniedException, RequestNotValidException {
+    if (!coldStorage.exists(storagePath)) {
+      return hotCount;
+    }
+
+    long count = hotCount;
+    try (CloseableIterable<Resource> coldResources = isContainer
+      ? coldStorage.listResourcesUnderContainer(storagePath, recursive)
+      : coldStorage.listResourcesUnderDirectory(storagePath, recursive)) {
+      for (Resource resource : coldResources) {
+        if (resource != null && !hotStorage.exists(resource.getStoragePath())) {
+          count++;
+        }
+      }
+    } catch (IOException e) {
+      throw new GenericException("Could not count resources under " + storagePath, e);
+    }
+    return count;
+  }
+
+  @Override
+  public boolean exists(StoragePath storagePath) {
+    return hotStorage.exists(storagePath) || coldStorage.exists(storagePath);
+  }
+
+  @Override
+  public CloseableIterable<Container> listContainers() throws GenericException {
+    return hotStorage.listContainers();
+  }
+
+  @Override
+  public Container createContainer(StoragePath storagePath) throws GenericException, AlreadyExistsException {
+    return hotStorage.createContainer(storagePath);
+  }
+
+  @Override
+  public Container getContainer(StoragePath storagePath) throws RequestNotValidException, NotFoundException {
+    return hotStorage.getContainer(storagePath);
+  }
+
+  @Override
+  public void deleteContainer(StoragePath storagePath) throws NotFoundException, GenericException {
+    hotStorage.deleteContainer(storagePath);
+    if (coldStorage.exists(storagePath)) {
+      coldStorage.deleteContainer(storagePath);
+    }
+  }
+
+  @Override
+  public CloseableIterable<Resource> listResourcesUnderContainer(StoragePath storagePath, boolean recursive)
+    throws NotFoundException, GenericException, AuthorizationDeniedException, RequestNotValidException {
+    return union(hotStorage.listResourcesUnderContainer(storagePath, recursive), storagePath, recursive, true);
+  }
+
+  @Override
+  public Long countResourcesUnderContainer(StoragePath storagePath, boolean recursive)
+    throws NotFoundException, GenericException, AuthorizationDeniedException, RequestNotValidException {
+    return countUnion(hotStorage.countResourcesUnderContainer(storagePath, recursive), storagePath, recursive, true);
+  }
+
+  @Override
+  public Directory createDirectory(StoragePath storagePath) throws AlreadyExistsException, GenericException {
+    return hotStorage.createDirectory(storagePath);
+  }
+
+  @Override
+  public Directory createRandomDirectory(StoragePath parentStoragePath)
+    throws RequestNotValidException, GenericException, NotFoundException, AlreadyExistsException {
+    return hotStorage.createRandomDirectory(parentStoragePath);
+  }
+
+  @Override
+  public Directory getDirectory(StoragePath storagePath)
+    throws RequestNotValidException, NotFoundException, GenericException {
+    return getTier(storagePath).getDirectory(storagePath);
+  }
+
+  @Override
+  public boolean hasDirectory(StoragePath storagePath) {
+    return hotStorage.hasDirectory(storagePath) || coldStorage.hasDirectory(storagePath);
+  }
+
+  @Override
+  public CloseableIterable<Resource> listResourcesUnderDirectory(StoragePath storagePath, boolean recursive)
+    throws NotFoundException, GenericException, AuthorizationDeniedException, RequestNotValidException {
+    if (isOnColdTierOnly(storagePath)) {
+      return coldStorage.listResourcesUnderDirectory(storagePath, recursive);
+    }
+    return union(hotStorage.listResourcesUnderDirectory(storagePath, recursive), storagePath, recursive, false);
+  }
+
+  @Override
+  public CloseableIterable<Resource> listResourcesUnderFile(StoragePath storagePath, boolean recursive)
+    throws NotFoundException, GenericException {
+    return getTier(storagePath).listResourcesUnderFile(storagePath, recursive);
+  }
+
+  @Override
+  public Long countResourcesUnderDirectory(StoragePath storagePath, boolean recursive)
+    throws NotFoundException, GenericException, AuthorizationDeniedException, RequestNotValidException {
+    if (isOnColdTierOnly(storagePath)) {
+      return coldStorage.countResourcesUnderDirectory(storagePath, recursive);
+    }
+    return countUnion(hotStorage.countResourcesUnderDirectory(storagePath, recursive), storagePath, recursive, false);
+  }
+
+  @Override
+  public Binary createBinary(StoragePath storagePath, ContentPayload payload, boolean asReference)
+    throws GenericException, AlreadyExistsException {
+    Lock lock = lockBinary(storagePath);
+    try {
+      if (!asReference && coldStorage.exists(storagePath)) {
+        throw new AlreadyExistsException("Binary already exists: " + coldStorage.resolve(storagePath));
+      }
+      return hotStorage.createBinary(storagePath, payload, asReference);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public Binary createRandomBinary(StoragePath parentStoragePath, ContentPayload payload, boolean asReference)
+    throws GenericException, RequestNotValidException {
+    return hotStorage.createRandomBinary(parentStoragePath, payload, asReference);
+  }
+
+  @Override
+  public Binary updateBinaryContent(StoragePath storagePath, ContentPayload payload, boolean asReference,
+    boolean createIfNotExists) throws GenericException, NotFoundException, RequestNotValidException {
+    Lock lock = lockBinary(storagePath);
+    try {
+      if (!asReference && isOnColdTierOnly(storagePath)) {
+        // new content is hot content, so the stale cold copy is dropped
+        Binary binary = hotStorage.updateBinaryContent(storagePath, payload, asReference, true);
+        FSUtils.deletePathQuietly(coldStorage.resolve(storagePath));
+        return binary;
+      }
+      return hotStorage.updateBinaryContent(storagePath, payload, asReference, createIfNotExists);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public Binary getBinary(StoragePath storagePath)
+    throws RequestNotValidException, NotFoundException, GenericException {
+    Lock lock = lockBinary(storagePath);
+    try {
+      if (isOnColdTierOnly(storagePath)) {
+        if (shouldPromote(storagePath) && promote(storagePath)) {
+          return hotStorage.getBinary(storagePath);
+        }
+        return coldStorage.getBinary(storagePath);
+      }
+      return hotStorage.getBinary(storagePath);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public boolean hasBinary(StoragePath storagePath) {
+    return hotStorage.hasBinary(storagePath) || coldStorage.hasBinary(storagePath);
+  }
+
+  @Override
+  public void deleteResource(StoragePath storagePath) throws NotFoundException, GenericException {
+    Lock lock = lockBinary(storagePath);
+    try {
+      boolean onColdTier = coldStorage.exists(storagePath);
+      if (hotStorage.exists(storagePath) || !onColdTier) {
+        hotStorage.deleteResource(storagePath);
+      }
+      if (onColdTier) {
+        coldStorage.deleteResource(storagePath);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public Class<? extends Entity> getEntity(StoragePath storagePath) throws NotFoundException {
+    return getTier(storagePath).getEntity(storagePath);
+  }
+
+  @Override
+  public void copy(StorageService fromService, StoragePath fromStoragePath, StoragePath toStoragePath)
+    throws AlreadyExistsException, GenericException, RequestNotValidException, NotFoundException,
+    AuthorizationDeniedException {
+    StorageService source = unwrap(fromService);
+    if (source == this) {
+      if (coldStorage.exists(fromStoragePath)) {
+        // content spread over both tiers, so go through the merged view
+        StorageServiceUtils.copyBetweenStorageServices(this, fromStoragePath, hotStorage, toStoragePath,
+          getEntity(fromStoragePath));
+      } else {
+        hotStorage.copy(hotStorage, fromStoragePath, toStoragePath);
+      }
+    } else {
+      hotStorage.copy(fromService, fromStoragePath, toStoragePath);
+    }
+  }
+
+  @Override
+  public void copy(StorageService fromService, StoragePath fromStoragePath, Path toPath, String resource)
+    throws AlreadyExistsException, GenericException {
+    StoragePath sourceStoragePath = fromStoragePath;
+    if (StringUtils.isNotBlank(resource)) {
+      try {
+        sourceStoragePath = DefaultStoragePath.parse(fromStoragePath, resource);
+      } catch (RequestNotValidException e) {
+        throw new GenericException("Invalid resource to copy: " + resource, e);
+      }
+    }
+
+    boolean onHotTier = hotStorage.exists(sourceStoragePath);
+    boolean onColdTier = coldStorage.exists(sourceStoragePath);
+    if (onHotTier) {
+      hotStorage.copy(hotStorage, fromStoragePath, toPath, resource);
+    }
+    if (onColdTier) {
+      if (onHotTier) {
+        copyMissing(coldStorage.resolve(sourceStoragePath), toPath);
+      } else {
+        coldStorage.copy(coldStorage, fromStoragePath, toPath, resource);
+      }
+    }
+  }
+
+  private static void copyMissing(Path sourcePath, Path targetPath) throws GenericException {
+    try {
+      Files.walkFileTree(sourcePath, new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+          Files.createDirectories(targetPath.resolve(sourcePath.relativize(dir)));
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+          Path target = targetPath.resolve(sourcePath.relativize(file));
+          if (!FSUtils.exists(target)) {
+            Files.copy(file, target);
+          }
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    } catch (IOException e) {
+      throw new GenericException("Error while copying cold tier content into " + targetPath, e);
+    }
+  }
+
+  @Override
+  public void move(StorageService fromService, StoragePath fromStoragePath, StoragePath toStoragePath)
+    throws AlreadyExistsException, GenericException, RequestNotValidException, NotFoundException,
+    AuthorizationDeniedException {
+    StorageService source = unwrap(fromService);
+    if (source == this) {
+      // each tier keeps its own part of the moved content
+      boolean onColdTier = coldStorage.exists(fromStoragePath);
+      if (hotStorage.exists(fromStoragePath) || !onColdTier) {
+        hotStorage.move(hotStorage, fromStoragePath, toStoragePath);
+      }
+      if (onColdTier) {
+        coldStorage.move(coldStorage, fromStoragePath, toStoragePath);
+      }
+    } else {
+      hotStorage.move(fromService, fromStoragePath, toStoragePath);
+    }
+  }
+
+  /**
+   * Gives the path of the tier that holds the resource or, for folders with
+   * content on both tiers (e.g. a representation with some masters already
+   * migrated), a temporary merged tree of both, with links to the files of the
+   * tiers where possible and copies otherwise.
+   */
+  @Override
+  public DirectResourceAccess getDirectAccess(StoragePath storagePath) {
+    if (!hotStorage.exists(storagePath) || !coldStorage.exists(storagePath)) {
+      return getTier(storagePath).getDirectAccess(storagePath);
+    }
+
+    return new DirectResourceAccess() {
+      private Path temp = null;
+
+      @Override
+      public Path getPath() throws GenericException {
+        if (temp == null) {
+          Path folder = null;
+          try {
+            folder = Files.createTempDirectory("tiered");
+            Path target = folder.resolve(storagePath.getName());
+            linkOrCopyMissing(hotStorage.resolve(storagePath), target);
+            linkOrCopyMissing(coldStorage.resolve(storagePath), target);
+            temp = target;
+          } catch (IOException e) {
+            if (folder != null) {
+              FSUtils.deletePathQuietly(folder);
+            }
+            throw new GenericException("Could not merge the tiers of " + storagePath, e);
+          }
+        }
+        return temp;
+      }
+
+      @Override
+      public void close() {
+        if (temp != null) {
+          FSUtils.deletePathQuietly(temp.getParent());
+          temp = null;
+        }
+      }
+    };
+  }
+
+  /**
+   * Adds to the target tree the files of the source tree that it does not have
+   * yet, as hard links or, if the tiers are in different file systems, as
+   * copies.
+   */
+  private static void linkOrCopyMissing(Path sourcePath, Path targetPath) throws IOException {
+    Files.walkFileTree(sourcePath, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+        Files.createDirectories(targetPath.resolve(sourcePath.relativize(dir).toString()));
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+        Path target = targetPath.resolve(sourcePath.relativize(file).toString());
+        if (!FSUtils.exists(target)) {
+          try {
+            Files.createLink(target, file);
+          } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(file, target);
+          }
+        }
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  @Override
+  public CloseableIterable<BinaryVersion> listBinaryVersions(StoragePath storagePath)
+    throws GenericException, NotFoundException {
+    // history is written on the hot tier, but a tier may hold older versions
+    CloseableIterable<BinaryVersion> hotVersions = hotStorage.listBinaryVersions(storagePath);
+    CloseableIterable<BinaryVersion> coldVersions = coldStorage.listBinaryVersions(storagePath);
+    return CloseableIterables.concat(hotVersions, coldVersions);
+  }
+
+  @Override
+  public BinaryVersion getBinaryVersion(StoragePath storagePath, String version)
+    throws RequestNotValidException, NotFoundException, GenericException {
+    try {
+      return hotStorage.getBinaryVersion(storagePath, version);
+    } catch (NotFoundException e) {
+      return coldStorage.getBinaryVersion(storagePath, version);
+    }
+  }
+
+  @Override
+  public BinaryVersion createBinaryVersion(StoragePath storagePath, Map<String, String> properties)
+    throws RequestNotValidException, NotFoundException, GenericException {
+    // history is only kept on the hot tier
+    promoteIfOnColdTier(storagePath);
+    return hotStorage.createBinaryVersion(storagePath, properties);
+  }
+
+  @Override
+  public void revertBinaryVersion(StoragePath storagePath, String version)
+    throws NotFoundException, RequestNotValidException, GenericException {
+    promoteIfOnColdTier(storagePath);
+    hotStorage.revertBinaryVersion(storagePath, version);
+  }
+
+  @Override
+  public void deleteBinaryVersion(StoragePath storagePath, String version)
+    throws NotFoundException, GenericException, RequestNotValidException {
+    try {
+      hotStorage.deleteBinaryVersion(storagePath, version);
+    } catch (NotFoundException e) {
+      // versions listed from the cold tier
+      coldStorage.deleteBinaryVersion(storagePath, version);
+    }
+  }
+
+  @Override
+  public String getStoragePathAsString(StoragePath storagePath, boolean skipStoragePathContainer,
+    StoragePath anotherStoragePath, boolean skipAnotherStoragePathContainer) {
+    return hotStorage.getStoragePathAsString(storagePath, skipStoragePathContainer, anotherStoragePath,
+      skipAnotherStoragePathContainer);
+  }
+
+  @Override
+  public String getStoragePathAsString(StoragePath storagePath, boolean skipContainer) {
+    return hotStorage.getStoragePathAsString(storagePath, skipContainer);
+  }
+
+  @Override
+  public List<StoragePath> getShallowFiles(StoragePath storagePath) throws NotFoundException, GenericException {
+    List<StoragePath> storagePaths = new ArrayList<>(hotStorage.getShallowFiles(storagePath));
+    if (coldStorage.exists(storagePath)) {
+      for (StoragePath shallowFile : coldStorage.getShallowFiles(storagePath)) {
+        if (!hotStorage.exists(shallowFile)) {
+          storagePaths.add(shallowFile);
+        }
+      }
+    }
+    return storagePaths;
+  }
+}
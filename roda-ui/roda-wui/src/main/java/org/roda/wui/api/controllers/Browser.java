@@ -57,6 +57,7 @@ import org.roda.core.data.v2.ip.IndexedRepresentation;
 import org.roda.core.data.v2.ip.Permissions;
 import org.roda.core.data.v2.ip.Representation;
 import org.roda.core.data.v2.ip.TransferredResource;
+import org.roda.core.data.v2.ip.TransferredResourceUpload;
 import org.roda.core.data.v2.ip.disposal.DisposalHold;
 import org.roda.core.data.v2.ip.disposal.DisposalHolds;
 import org.roda.core.data.v2.ip.disposal.DisposalRule;
@@ -2035,6 +2036,105 @@ public class Browser extends RodaWuiController {
 
   }
 
+  public static TransferredResourceUpload createTransferredResourceUpload(User user, String parentUUID,
+    String fileName, long fileSize, long chunkSize)
+    throws AuthorizationDeniedException, GenericException, RequestNotValidException, NotFoundException {
+    final ControllerAssistant controllerAssistant = new ControllerAssistant() {};
+
+    // check user permissions
+    controllerAssistant.checkRoles(user);
+
+    UserUtility.checkTransferredResourceAccess(user, Arrays.asList(parentUUID));
+
+    // delegate
+    TransferredResourceUpload upload = BrowserHelper.createTransferredResourceUpload(user, parentUUID, fileName,
+      fileSize, chunkSize);
+
+    // register action
+    controllerAssistant.registerAction(user, LogEntryState.SUCCESS, RodaConstants.CONTROLLER_PATH_PARAM, parentUUID,
+      RodaConstants.CONTROLLER_FILENAME_PARAM, fileName, RodaConstants.CONTROLLER_ID_PARAM, upload.getId());
+
+    return upload;
+  }
+
+  public static TransferredResourceUpload retrieveTransferredResourceUpload(User user, String uploadId)
+    throws AuthorizationDeniedException, GenericException, NotFoundException {
+    final ControllerAssistant controllerAssistant = new ControllerAssistant() {};
+
+    // check user permissions
+    controllerAssistant.checkRoles(user);
+
+    LogEntryState state = LogEntryState.SUCCESS;
+
+    try {
+      // delegate
+      return BrowserHelper.retrieveTransferredResourceUpload(user, uploadId);
+    } catch (RODAException e) {
+      state = LogEntryState.FAILURE;
+      throw e;
+    } finally {
+      // register action
+      controllerAssistant.registerAction(user, state, RodaConstants.CONTROLLER_ID_PARAM, uploadId);
+    }
+  }
+
+  public static TransferredResourceUpload.Chunk uploadTransferredResourceChunk(User user, String uploadId, int index,
+    InputStream inputStream, String checksum)
+    throws AuthorizationDeniedException, GenericException, NotFoundException, RequestNotValidException {
+    final ControllerAssistant controllerAssistant = new ControllerAssistant() {};
+
+    // check user permissions
+    controllerAssistant.checkRoles(user);
+
+    // delegate (chunks are not registered one by one, only the upload)
+    return BrowserHelper.uploadTransferredResourceChunk(user, uploadId, index, inputStream, checksum);
+  }
+
+  public static TransferredResource completeTransferredResourceUpload(User user, String uploadId,
+    boolean forceCommit) throws AuthorizationDeniedException, GenericException, NotFoundException,
+    RequestNotValidException, AlreadyExistsException {
+    final ControllerAssistant controllerAssistant = new ControllerAssistant() {};
+
+    // check user permissions
+    controllerAssistant.checkRoles(user);
+
+    TransferredResourceUpload upload = BrowserHelper.retrieveTransferredResourceUpload(user, uploadId);
+    UserUtility.checkTransferredResourceAccess(user, Arrays.asList(upload.getParentUUID()));
+
+    // delegate
+    try {
+      TransferredResource transferredResource = BrowserHelper.completeTransferredResourceUpload(user, uploadId,
+        forceCommit);
+
+      // register action
+      controllerAssistant.registerAction(user, LogEntryState.SUCCESS, RodaConstants.CONTROLLER_PATH_PARAM,
+        upload.getParentUUID(), RodaConstants.CONTROLLER_FILENAME_PARAM, upload.getFileName(),
+        RodaConstants.CONTROLLER_SUCCESS_PARAM, true);
+
+      return transferredResource;
+    } catch (GenericException e) {
+      // register action
+      controllerAssistant.registerAction(user, LogEntryState.FAILURE, RodaConstants.CONTROLLER_PATH_PARAM,
+        upload.getParentUUID(), RodaConstants.CONTROLLER_FILENAME_PARAM, upload.getFileName(),
+        RodaConstants.CONTROLLER_SUCCESS_PARAM, false, RodaConstants.CONTROLLER_ERROR_PARAM, e.getMessage());
+      throw e;
+    }
+  }
+
+  public static void deleteTransferredResourceUpload(User user, String uploadId)
+    throws AuthorizationDeniedException, GenericException, NotFoundException, RequestNotValidException {
+    final ControllerAssistant controllerAssistant = new ControllerAssistant() {};
+
+    // check user permissions
+    controllerAssistant.checkRoles(user);
+
+    // delegate
+    BrowserHelper.deleteTransferredResourceUpload(user, uploadId);
+
+    // register action
+    controllerAssistant.registerAction(user, LogEntryState.SUCCESS, RodaConstants.CONTROLLER_ID_PARAM, uploadId);
+  }
+
   public static ConsumesOutputStream retrieveClassificationPlan(User user, String filename)
     throws GenericException, RequestNotValidException, NotFoundException, AuthorizationDeniedException {
     final ControllerAssistant controllerAssistant = new ControllerAssistant() {};
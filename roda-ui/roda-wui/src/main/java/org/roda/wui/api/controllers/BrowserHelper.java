@@ -105,6 +105,7 @@ import org.roda.core.data.v2.ip.Permissions;
 import org.roda.core.data.v2.ip.Representation;
 import org.roda.core.data.v2.ip.StoragePath;
 import org.roda.core.data.v2.ip.TransferredResource;
+import org.roda.core.data.v2.ip.TransferredResourceUpload;
 import org.roda.core.data.v2.ip.disposal.DisposalConfirmation;
 import org.roda.core.data.v2.ip.disposal.DisposalHold;
 import org.roda.core.data.v2.ip.disposal.DisposalRule;
@@ -2105,6 +2106,44 @@ public class BrowserHelper {
     return transferredResource;
   }
 
+  public static TransferredResourceUpload createTransferredResourceUpload(User user, String parentUUID,
+    String fileName, long fileSize, long chunkSize) throws GenericException, RequestNotValidException {
+    LOGGER.debug("createTransferredResourceUpload(path={}, name={}, size={})", parentUUID, fileName, fileSize);
+    return RodaCoreFactory.getTransferredResourceUploads().createUpload(user.getName(), parentUUID, fileName,
+      fileSize, chunkSize);
+  }
+
+  public static TransferredResourceUpload retrieveTransferredResourceUpload(User user, String uploadId)
+    throws GenericException, NotFoundException, AuthorizationDeniedException {
+    return RodaCoreFactory.getTransferredResourceUploads().retrieveUpload(user.getName(), uploadId);
+  }
+
+  public static TransferredResourceUpload.Chunk uploadTransferredResourceChunk(User user, String uploadId,
+    int index, InputStream inputStream, String checksum)
+    throws GenericException, NotFoundException, AuthorizationDeniedException, RequestNotValidException {
+    return RodaCoreFactory.getTransferredResourceUploads().putChunk(user.getName(), uploadId, index, inputStream,
+      checksum);
+  }
+
+  public static TransferredResource completeTransferredResourceUpload(User user, String uploadId,
+    boolean forceCommit) throws GenericException, NotFoundException, AuthorizationDeniedException,
+    RequestNotValidException, AlreadyExistsException {
+    LOGGER.debug("completeTransferredResourceUpload(id={})", uploadId);
+    TransferredResource transferredResource = RodaCoreFactory.getTransferredResourceUploads()
+      .completeUpload(user.getName(), uploadId);
+
+    if (forceCommit) {
+      RodaCoreFactory.getTransferredResourcesScanner().commit();
+    }
+
+    return transferredResource;
+  }
+
+  public static void deleteTransferredResourceUpload(User user, String uploadId)
+    throws GenericException, NotFoundException, AuthorizationDeniedException, RequestNotValidException {
+    RodaCoreFactory.getTransferredResourceUploads().deleteUpload(user.getName(), uploadId);
+  }
+
   protected static <T extends IsIndexed> void delete(User user, Class<T> returnClass, SelectedItems<T> ids)
     throws GenericException, RequestNotValidException, AuthorizationDeniedException {
     List<String> idList = consolidate(user, returnClass, ids);
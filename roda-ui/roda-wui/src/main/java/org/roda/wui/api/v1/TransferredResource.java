@@ -31,6 +31,7 @@ import org.roda.core.data.v2.index.filter.Filter;
 import org.roda.core.data.v2.index.select.SelectedItemsList;
 import org.roda.core.data.v2.index.sort.Sorter;
 import org.roda.core.data.v2.index.sublist.Sublist;
+import org.roda.core.data.v2.ip.TransferredResourceUpload;
 import org.roda.core.data.v2.ip.TransferredResources;
 import org.roda.core.data.v2.user.User;
 import org.roda.core.model.utils.UserUtility;
@@ -49,6 +50,7 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.DELETE;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.POST;
@@ -253,6 +255,138 @@ public class TransferredResource {
       .build();
   }
 
+  @POST
+  @Path("/uploads")
+  @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, ExtraMediaType.APPLICATION_JAVASCRIPT})
+  @JSONP(callback = RodaConstants.API_QUERY_DEFAULT_JSONP_CALLBACK, queryParam = RodaConstants.API_QUERY_KEY_JSONP_CALLBACK)
+  @Operation(summary = "Create chunked upload", description = "Starts the upload of a file in chunks, which can be sent in any order and again after a failure", responses = {
+    @ApiResponse(responseCode = "200", description = "OK", content = @Content(schema = @Schema(implementation = TransferredResourceUpload.class))),
+    @ApiResponse(responseCode = "400", description = "Invalid file name or sizes", content = @Content(schema = @Schema(implementation = ApiResponseMessage.class)))})
+  public Response createUpload(
+    @Parameter(description = "The id of the parent") @QueryParam(RodaConstants.TRANSFERRED_RESOURCE_PARENT_UUID) String parentUUID,
+    @Parameter(description = "The name of the file", required = true) @QueryParam(RodaConstants.API_QUERY_KEY_FILENAME) String fileName,
+    @Parameter(description = "The size of the file, in bytes", required = true) @QueryParam(RodaConstants.API_QUERY_PARAM_FILE_SIZE) long fileSize,
+    @Parameter(description = "The size of each chunk but the last, in bytes", required = true) @QueryParam(RodaConstants.API_QUERY_PARAM_CHUNK_SIZE) long chunkSize,
+    @Parameter(description = "Choose format in which to get the response", schema = @Schema(implementation = RodaConstants.APIMediaTypes.class)) @QueryParam(RodaConstants.API_QUERY_KEY_ACCEPT_FORMAT) String acceptFormat,
+    @Parameter(description = "JSONP callback name", required = false, schema = @Schema(defaultValue = RodaConstants.API_QUERY_DEFAULT_JSONP_CALLBACK)) @QueryParam(RodaConstants.API_QUERY_KEY_JSONP_CALLBACK) String jsonpCallbackName)
+    throws RODAException {
+    String mediaType = ApiUtils.getMediaType(acceptFormat, request);
+
+    // get user
+    User user = UserUtility.getApiUser(request);
+
+    // delegate action to controller
+    TransferredResourceUpload upload = Browser.createTransferredResourceUpload(user, parentUUID, fileName, fileSize,
+      chunkSize);
+    return Response.ok(upload, mediaType).build();
+  }
+
+  @GET
+  @Path("/uploads/{" + RodaConstants.API_PATH_PARAM_UPLOAD_ID + "}")
+  @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, ExtraMediaType.APPLICATION_JAVASCRIPT})
+  @JSONP(callback = RodaConstants.API_QUERY_DEFAULT_JSONP_CALLBACK, queryParam = RodaConstants.API_QUERY_KEY_JSONP_CALLBACK)
+  @Operation(summary = "Get chunked upload", description = "Gets an upload and the chunks already received, to resume it", responses = {
+    @ApiResponse(responseCode = "200", description = "OK", content = @Content(schema = @Schema(implementation = TransferredResourceUpload.class))),
+    @ApiResponse(responseCode = "404", description = "Not found", content = @Content(schema = @Schema(implementation = ApiResponseMessage.class)))})
+  public Response getUpload(
+    @Parameter(description = "The id of the upload", required = true) @PathParam(RodaConstants.API_PATH_PARAM_UPLOAD_ID) String uploadId,
+    @Parameter(description = "Choose format in which to get the response", schema = @Schema(implementation = RodaConstants.APIMediaTypes.class)) @QueryParam(RodaConstants.API_QUERY_KEY_ACCEPT_FORMAT) String acceptFormat,
+    @Parameter(description = "JSONP callback name", required = false, schema = @Schema(defaultValue = RodaConstants.API_QUERY_DEFAULT_JSONP_CALLBACK)) @QueryParam(RodaConstants.API_QUERY_KEY_JSONP_CALLBACK) String jsonpCallbackName)
+    throws RODAException {
+    String mediaType = ApiUtils.getMediaType(acceptFormat, request);
+
+    // get user
+    User user = UserUtility.getApiUser(request);
+
+    // delegate action to controller
+    TransferredResourceUpload upload = Browser.retrieveTransferredResourceUpload(user, uploadId);
+    return Response.ok(upload, mediaType).build();
+  }
+
+  @PUT
+  @Path("/uploads/{" + RodaConstants.API_PATH_PARAM_UPLOAD_ID + "}/chunks/{" + RodaConstants.API_PATH_PARAM_CHUNK_INDEX + "}")
+  @Consumes(MediaType.APPLICATION_OCTET_STREAM)
+  @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, ExtraMediaType.APPLICATION_JAVASCRIPT})
+  @JSONP(callback = RodaConstants.API_QUERY_DEFAULT_JSONP_CALLBACK, queryParam = RodaConstants.API_QUERY_KEY_JSONP_CALLBACK)
+  @Operation(summary = "Upload chunk", description = "Uploads one chunk of a file, replacing it if it was already uploaded", responses = {
+    @ApiResponse(responseCode = "200", description = "OK", content = @Content(schema = @Schema(implementation = TransferredResourceUpload.Chunk.class))),
+    @ApiResponse(responseCode = "400", description = "Invalid size or checksum, or upload being completed", content = @Content(schema = @Schema(implementation = ApiResponseMessage.class))),
+    @ApiResponse(responseCode = "404", description = "Not found", content = @Content(schema = @Schema(implementation = ApiResponseMessage.class)))})
+  public Response uploadChunk(
+    @Parameter(description = "The id of the upload", required = true) @PathParam(RodaConstants.API_PATH_PARAM_UPLOAD_ID) String uploadId,
+    @Parameter(description = "The index of the chunk, starting at 0", required = true) @PathParam(RodaConstants.API_PATH_PARAM_CHUNK_INDEX) int index,
+    @Parameter(description = "The SHA-256 of the chunk, in hexadecimal, to verify it") @QueryParam(RodaConstants.API_QUERY_PARAM_CHECKSUM) String checksum,
+    InputStream inputStream,
+    @Parameter(description = "Choose format in which to get the response", schema = @Schema(implementation = RodaConstants.APIMediaTypes.class)) @QueryParam(RodaConstants.API_QUERY_KEY_ACCEPT_FORMAT) String acceptFormat,
+    @Parameter(description = "JSONP callback name", required = false, schema = @Schema(defaultValue = RodaConstants.API_QUERY_DEFAULT_JSONP_CALLBACK)) @QueryParam(RodaConstants.API_QUERY_KEY_JSONP_CALLBACK) String jsonpCallbackName)
+    throws RODAException {
+    String mediaType = ApiUtils.getMediaType(acceptFormat, request);
+
+    // get user
+    User user = UserUtility.getApiUser(request);
+
+    // delegate action to controller
+    TransferredResourceUpload.Chunk chunk = Browser.uploadTransferredResourceChunk(user, uploadId, index,
+      inputStream, checksum);
+    return Response.ok(chunk, mediaType).build();
+  }
+
+  @POST
+  @Path("/uploads/{" + RodaConstants.API_PATH_PARAM_UPLOAD_ID + "}/complete")
+  @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, ExtraMediaType.APPLICATION_JAVASCRIPT})
+  @JSONP(callback = RodaConstants.API_QUERY_DEFAULT_JSONP_CALLBACK, queryParam = RodaConstants.API_QUERY_KEY_JSONP_CALLBACK)
+  @Operation(summary = "Complete chunked upload", description = "Joins the chunks of an upload and creates the file in the transfer area", responses = {
+    @ApiResponse(responseCode = "200", description = "OK", content = @Content(schema = @Schema(implementation = TransferredResource.class))),
+    @ApiResponse(responseCode = "400", description = "Missing chunks", content = @Content(schema = @Schema(implementation = ApiResponseMessage.class))),
+    @ApiResponse(responseCode = "404", description = "Not found", content = @Content(schema = @Schema(implementation = ApiResponseMessage.class))),
+    @ApiResponse(responseCode = "409", description = "Already exists", content = @Content(schema = @Schema(implementation = ApiResponseMessage.class)))})
+  public Response completeUpload(
+    @Parameter(description = "The id of the upload", required = true) @PathParam(RodaConstants.API_PATH_PARAM_UPLOAD_ID) String uploadId,
+    @Parameter(description = "Locale") @QueryParam(RodaConstants.LOCALE) String localeString,
+    @Parameter(description = "Commit after creation", schema = @Schema(defaultValue = "false")) @QueryParam(RodaConstants.API_QUERY_PARAM_COMMIT) String commitString,
+    @Parameter(description = "Choose format in which to get the response", schema = @Schema(implementation = RodaConstants.APIMediaTypes.class)) @QueryParam(RodaConstants.API_QUERY_KEY_ACCEPT_FORMAT) String acceptFormat,
+    @Parameter(description = "JSONP callback name", required = false, schema = @Schema(defaultValue = RodaConstants.API_QUERY_DEFAULT_JSONP_CALLBACK)) @QueryParam(RodaConstants.API_QUERY_KEY_JSONP_CALLBACK) String jsonpCallbackName)
+    throws RODAException {
+    String mediaType = ApiUtils.getMediaType(acceptFormat, request);
+
+    // get user
+    User user = UserUtility.getApiUser(request);
+
+    // delegate action to controller
+    try {
+      boolean forceCommit = false;
+      if (StringUtils.isNotBlank(commitString)) {
+        forceCommit = Boolean.parseBoolean(commitString);
+      }
+
+      org.roda.core.data.v2.ip.TransferredResource transferredResource = Browser
+        .completeTransferredResourceUpload(user, uploadId, forceCommit);
+      return Response.ok(transferredResource, mediaType).build();
+    } catch (AlreadyExistsException e) {
+      return Response.status(Status.CONFLICT).entity(new ApiResponseMessage(ApiResponseMessage.ERROR,
+        I18nUtility.getMessage("ui.upload.error.alreadyexists", e.getMessage(), localeString))).build();
+    }
+  }
+
+  @DELETE
+  @Path("/uploads/{" + RodaConstants.API_PATH_PARAM_UPLOAD_ID + "}")
+  @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, ExtraMediaType.APPLICATION_JAVASCRIPT})
+  @JSONP(callback = RodaConstants.API_QUERY_DEFAULT_JSONP_CALLBACK, queryParam = RodaConstants.API_QUERY_KEY_JSONP_CALLBACK)
+  @Operation(summary = "Delete chunked upload", description = "Cancels an upload, deleting the chunks already received", responses = {
+    @ApiResponse(responseCode = "204", description = "OK"),
+    @ApiResponse(responseCode = "400", description = "Being completed", content = @Content(schema = @Schema(implementation = ApiResponseMessage.class))),
+    @ApiResponse(responseCode = "404", description = "Not found", content = @Content(schema = @Schema(implementation = ApiResponseMessage.class)))})
+  public Response deleteUpload(
+    @Parameter(description = "The id of the upload", required = true) @PathParam(RodaConstants.API_PATH_PARAM_UPLOAD_ID) String uploadId)
+    throws RODAException {
+    // get user
+    User user = UserUtility.getApiUser(request);
+
+    // delegate action to controller
+    Browser.deleteTransferredResourceUpload(user, uploadId);
+    return Response.noContent().build();
+  }
+
   @GET
   @Path("/reindex")
   @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, ExtraMediaType.APPLICATION_JAVASCRIPT})
@@ -0,0 +1,226 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE file at the root of the source
+ * tree and available online at
+ *
+ * https://github.com/keeps/roda
+ */
+package org.roda.wui.api.v1;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.glassfish.jersey.jackson.JacksonFeature;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.servlet.ServletContainer;
+import org.glassfish.jersey.test.DeploymentContext;
+import org.glassfish.jersey.test.JerseyTestNg;
+import org.glassfish.jersey.test.ServletDeploymentContext;
+import org.glassfish.jersey.test.grizzly.GrizzlyWebTestContainerFactory;
+import org.glassfish.jersey.test.spi.TestContainerFactory;
+import org.roda.core.RodaCoreFactory;
+import org.roda.core.data.common.RodaConstants;
+import org.roda.core.data.utils.JsonUtils;
+import org.roda.core.data.v2.ip.TransferredResourceUpload;
+import org.roda.core.data.v2.user.User;
+import org.roda.core.model.utils.UserUtility;
+import org.roda.core.storage.fs.FSUtils;
+import org.roda.core.util.FileUtility;
+import org.roda.wui.api.exceptions.RodaExceptionMapper;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.ws.rs.client.Entity;
+import jakarta.ws.rs.client.WebTarget;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+/**
+ * Chunked uploads through the REST API, in a servlet container started for
+ * the test.
+ *
+ * @author Filiph Schaaf <filiph.schaaf@whitered.se>
+ */
+@Test(groups = {RodaConstants.TEST_GROUP_ALL, RodaConstants.TEST_GROUP_DEV, RodaConstants.TEST_GROUP_TRAVIS})
+public class TransferredResourceUploadsEndpointTest extends JerseyTestNg.ContainerPerClassTest {
+  private static final String USER_HEADER = "X-Test-User";
+  private static final String UPLOADER = "uploader";
+  private static final String VISITOR = "visitor";
+  private static final int CHUNK_SIZE = 1000;
+
+  private Path basePath;
+  private Path sips;
+
+  @Override
+  @BeforeClass
+  public void setUp() throws Exception {
+    basePath = Files.createTempDirectory("_" + getClass().getSimpleName());
+    System.setProperty(RodaConstants.INSTALL_FOLDER_SYSTEM_PROPERTY, basePath.toString());
+
+    boolean deploySolr = true;
+    boolean deployLdap = false;
+    boolean deployFolderMonitor = true;
+    boolean deployOrchestrator = false;
+    boolean deployPluginManager = false;
+    boolean deployDefaultResources = false;
+    RodaCoreFactory.instantiateTest(deploySolr, deployLdap, deployFolderMonitor, deployOrchestrator,
+      deployPluginManager, deployDefaultResources, false);
+
+    sips = RodaCoreFactory.getDataPath().resolve(RodaCoreFactory.getRodaConfiguration()
+      .getString("transferredResources.folder", RodaConstants.CORE_TRANSFERREDRESOURCE_FOLDER));
+    super.setUp();
+  }
+
+  @Override
+  @AfterClass
+  public void tearDown() throws Exception {
+    super.tearDown();
+    RodaCoreFactory.shutdown();
+    FSUtils.deletePath(basePath);
+  }
+
+  @Override
+  protected DeploymentContext configureDeployment() {
+    ResourceConfig config = new ResourceConfig(TransferredResource.class, RodaExceptionMapper.class,
+      JacksonFeature.class);
+    return ServletDeploymentContext.forServlet(new ServletContainer(config)).addFilter(TestUserFilter.class, "user")
+      .build();
+  }
+
+  @Override
+  protected TestContainerFactory getTestContainerFactory() {
+    return new GrizzlyWebTestContainerFactory();
+  }
+
+  @Test
+  public void testChunksAreSentAsOctetStreams() throws Exception {
+    byte[] content = randomContent(CHUNK_SIZE + 10);
+    TransferredResourceUpload upload = createUpload(UPLOADER, "streamed.bin", content.length);
+
+    for (int index = 0; index < 2; index++) {
+      byte[] chunk = Arrays.copyOfRange(content, index * CHUNK_SIZE,
+        Math.min(content.length, (index + 1) * CHUNK_SIZE));
+      Response response = uploadTarget(upload.getId() + "/chunks/" + index)
+        .queryParam(RodaConstants.API_QUERY_PARAM_CHECKSUM, checksum(chunk)).request()
+        .header(USER_HEADER, UPLOADER).put(Entity.entity(chunk, MediaType.APPLICATION_OCTET_STREAM));
+      Assert.assertEquals(response.getStatus(), 200);
+      TransferredResourceUpload.Chunk received = JsonUtils.getObjectFromJson(response.readEntity(String.class),
+        TransferredResourceUpload.Chunk.class);
+      Assert.assertEquals(received.getSize(), chunk.length);
+      Assert.assertEquals(received.getChecksum(), checksum(chunk));
+    }
+
+    // a damaged chunk is refused
+    Response damaged = uploadTarget(upload.getId() + "/chunks/0")
+      .queryParam(RodaConstants.API_QUERY_PARAM_CHECKSUM, checksum(new byte[] {1})).request()
+      .header(USER_HEADER, UPLOADER).put(Entity.entity(new byte[CHUNK_SIZE], MediaType.APPLICATION_OCTET_STREAM));
+    Assert.assertEquals(damaged.getStatus(), 400);
+
+    Response completed = uploadTarget(upload.getId() + "/complete").request().header(USER_HEADER, UPLOADER)
+      .post(Entity.text(""));
+    Assert.assertEquals(completed.getStatus(), 200);
+    Assert.assertEquals(Files.readAllBytes(sips.resolve("streamed.bin")), content);
+  }
+
+  @Test
+  public void testUploadsNeedTheTransferRole() {
+    Response response = uploadsTarget().queryParam(RodaConstants.API_QUERY_KEY_FILENAME, "denied.bin")
+      .queryParam(RodaConstants.API_QUERY_PARAM_FILE_SIZE, 10)
+      .queryParam(RodaConstants.API_QUERY_PARAM_CHUNK_SIZE, CHUNK_SIZE).request().header(USER_HEADER, VISITOR)
+      .post(Entity.text(""));
+    Assert.assertEquals(response.getStatus(), 401);
+  }
+
+  @Test
+  public void testCompletingOverAnExistingFileIsAConflict() throws Exception {
+    TransferredResourceUpload upload = createUpload(UPLOADER, "existing.bin", 10);
+    Assert.assertEquals(uploadTarget(upload.getId() + "/chunks/0").request().header(USER_HEADER, UPLOADER)
+      .put(Entity.entity(new byte[10], MediaType.APPLICATION_OCTET_STREAM)).getStatus(), 200);
+
+    Files.write(sips.resolve("existing.bin"), new byte[] {1, 2, 3});
+    Response response = uploadTarget(upload.getId() + "/complete").request().header(USER_HEADER, UPLOADER)
+      .post(Entity.text(""));
+    Assert.assertEquals(response.getStatus(), 409);
+    Assert.assertEquals(Files.readAllBytes(sips.resolve("existing.bin")), new byte[] {1, 2, 3});
+  }
+
+  @Test
+  public void testDeletedUploadHasNoContent() throws Exception {
+    TransferredResourceUpload upload = createUpload(UPLOADER, "deleted.bin", 10);
+
+    Response response = uploadTarget(upload.getId()).request().header(USER_HEADER, UPLOADER).delete();
+    Assert.assertEquals(response.getStatus(), 204);
+    Assert.assertFalse(response.hasEntity());
+
+    Response retrieved = uploadTarget(upload.getId()).request().header(USER_HEADER, UPLOADER).get();
+    Assert.assertEquals(retrieved.getStatus(), 404);
+  }
+
+  private TransferredResourceUpload createUpload(String username, String fileName, long fileSize) throws Exception {
+    Response response = uploadsTarget().queryParam(RodaConstants.API_QUERY_KEY_FILENAME, fileName)
+      .queryParam(RodaConstants.API_QUERY_PARAM_FILE_SIZE, fileSize)
+      .queryParam(RodaConstants.API_QUERY_PARAM_CHUNK_SIZE, CHUNK_SIZE).request().header(USER_HEADER, username)
+      .post(Entity.text(""));
+    Assert.assertEquals(response.getStatus(), 200);
+    return JsonUtils.getObjectFromJson(response.readEntity(String.class), TransferredResourceUpload.class);
+  }
+
+  private WebTarget uploadsTarget() {
+    return target(TransferredResource.ENDPOINT + "/uploads");
+  }
+
+  private WebTarget uploadTarget(String path) {
+    return uploadsTarget().path(path);
+  }
+
+  private static byte[] randomContent(int size) {
+    byte[] content = new byte[size];
+    new Random().nextBytes(content);
+    return content;
+  }
+
+  private static String checksum(byte[] bytes) throws IOException {
+    try {
+      return FileUtility.byteArrayToHexString(MessageDigest.getInstance("SHA-256").digest(bytes));
+    } catch (Exception e) {
+      throw new IOException(e);
+    }
+  }
+
+  /**
+   * Puts in the session the user named in the request header, as the
+   * authentication filters would, with the transfer role only for the
+   * uploader.
+   */
+  public static class TestUserFilter implements Filter {
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+      throws IOException, ServletException {
+      HttpServletRequest httpRequest = (HttpServletRequest) request;
+      String username = httpRequest.getHeader(USER_HEADER);
+      if (username != null) {
+        Set<String> roles = new HashSet<>();
+        if (UPLOADER.equals(username)) {
+          roles.add(RodaConstants.REPOSITORY_PERMISSIONS_TRANSFER_CREATE);
+        }
+        UserUtility.setUser(httpRequest,
+          new User(username, username, null, false, "", roles, roles, new HashSet<>()));
+      }
+      chain.doFilter(request, response);
+    }
+  }
+}